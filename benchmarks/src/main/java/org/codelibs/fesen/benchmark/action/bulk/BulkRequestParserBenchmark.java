@@ -0,0 +1,125 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.benchmark.action.bulk;
+
+import org.codelibs.fesen.action.bulk.BulkRequestParser;
+import org.codelibs.fesen.common.bytes.BytesArray;
+import org.codelibs.fesen.common.bytes.BytesReference;
+import org.codelibs.fesen.common.xcontent.XContentType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link BulkRequestParser#parse} on a bulk body of {@link #numberOfActions} actions, each of them a mix of index,
+ * update and delete operations in the proportions given by {@link #actions}, parsed on up to {@link #parallelism} threads.
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@SuppressWarnings("unused") //invoked by benchmarking framework
+public class BulkRequestParserBenchmark {
+
+    @Param({ "1000", "10000" })
+    private int numberOfActions;
+
+    @Param({ "index", "mixed" })
+    private String actions;
+
+    @Param({ "10" })
+    private int fieldsPerDocument;
+
+    @Param({ "1", "4" })
+    private int parallelism;
+
+    private BytesReference data;
+
+    private ExecutorService executor;
+
+    private BulkRequestParser parser;
+
+    @Setup
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(parallelism);
+        parser = new BulkRequestParser(false, executor, parallelism);
+        final Random random = new Random(0);
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < numberOfActions; i++) {
+            final int action = "mixed".equals(actions) ? random.nextInt(3) : 0;
+            if (action == 2) {
+                builder.append("{\"delete\":{\"_index\":\"index\",\"_id\":\"").append(i).append("\"}}\n");
+                continue;
+            }
+            if (action == 1) {
+                builder.append("{\"update\":{\"_index\":\"index\",\"_id\":\"").append(i).append("\"}}\n{\"doc\":");
+            } else {
+                builder.append("{\"index\":{\"_index\":\"index\",\"_id\":\"").append(i).append("\"}}\n");
+            }
+            builder.append('{');
+            for (int f = 0; f < fieldsPerDocument; f++) {
+                if (f > 0) {
+                    builder.append(',');
+                }
+                builder.append("\"field").append(f).append("\":");
+                if (f % 2 == 0) {
+                    builder.append(random.nextLong());
+                } else {
+                    builder.append('"').append(Long.toHexString(random.nextLong())).append('"');
+                }
+            }
+            builder.append('}');
+            if (action == 1) {
+                builder.append('}');
+            }
+            builder.append('\n');
+        }
+        data = new BytesArray(builder.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public void parse(Blackhole bh) throws IOException {
+        parser.parse(data, null, null, null, null, null, true, XContentType.JSON, bh::consume, bh::consume, bh::consume);
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.benchmark.common;
+
+import org.codelibs.fesen.common.Rounding;
+import org.codelibs.fesen.common.time.DateFormatter;
+import org.codelibs.fesen.core.TimeValue;
+import org.codelibs.fesen.search.aggregations.bucket.histogram.DateHistogramAggregationBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link Rounding.Prepared#round} the way the {@code date_histogram} aggregation calls it, once per collected
+ * date. The rounding is prepared for the {@link #range} covered by the dates, like the aggregation does with the min and
+ * max of the field, so the benchmark exercises the lookup tables built for small ranges as well as the generic path.
+ */
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@SuppressWarnings("unused") //invoked by benchmarking framework
+public class RoundingBenchmark {
+    private static final DateFormatter FORMATTER = DateFormatter.forPattern("date_optional_time");
+
+    @Param({ "2000-01-01 to 2020-01-01", // A super long range
+        "2000-10-01 to 2000-11-01", // A whole month which is pretty believable
+        "2000-10-29 to 2000-10-30", // A date right around daylight savings time.
+        "2000-06-01 to 2000-06-02"  // A date fully in one time zone. Should be much faster than above.
+    })
+    private String range;
+
+    @Param({ "calendar 1d", "calendar 1h", "calendar 1M", "fixed 1h", "fixed 1d" })
+    private String rounding;
+
+    @Param({ "UTC", "America/New_York" })
+    private String zone;
+
+    /**
+     * Milliseconds between two consecutive dates.
+     */
+    @Param({ "60000", "3600000" })
+    private long interval;
+
+    private static final int COUNT = 1000;
+
+    private long[] dates;
+
+    private Rounding.Prepared prepared;
+
+    @Setup
+    public void buildDates() {
+        final String[] r = range.split(" to ");
+        final long min = FORMATTER.parseMillis(r[0]);
+        final long max = FORMATTER.parseMillis(r[1]);
+        dates = new long[COUNT];
+        long date = min;
+        int d = 0;
+        while (d < COUNT) {
+            date += interval;
+            if (date > max) {
+                date = min;
+            }
+            dates[d++] = date;
+        }
+
+        final String[] spec = rounding.split(" ");
+        final Rounding.Builder builder;
+        if ("calendar".equals(spec[0])) {
+            builder = Rounding.builder(DateHistogramAggregationBuilder.DATE_FIELD_UNITS.get(spec[1]));
+        } else {
+            builder = Rounding.builder(TimeValue.parseTimeValue(spec[1], "rounding"));
+        }
+        prepared = builder.timeZone(ZoneId.of(zone)).build().prepare(min, max);
+    }
+
+    @Benchmark
+    public void round(Blackhole bh) {
+        final Rounding.Prepared rounder = prepared;
+        for (int i = 0; i < dates.length; i++) {
+            bh.consume(rounder.round(dates[i]));
+        }
+    }
+
+    @Benchmark
+    public void nextRoundingValue(Blackhole bh) {
+        final Rounding.Prepared rounder = prepared;
+        for (int i = 0; i < dates.length; i++) {
+            bh.consume(rounder.nextRoundingValue(dates[i]));
+        }
+    }
+}
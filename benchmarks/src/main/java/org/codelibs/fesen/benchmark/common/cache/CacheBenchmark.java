@@ -0,0 +1,158 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.benchmark.common.cache;
+
+import org.codelibs.fesen.common.cache.Cache;
+import org.codelibs.fesen.common.cache.CacheBuilder;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of {@link Cache} lookups from many threads, and the hit ratio it achieves on a skewed workload
+ * that is interleaved with scans.
+ * <p>
+ * {@link #get} only reads entries that are in the cache and therefore exercises the read path on its own, while
+ * {@link #computeIfAbsent} runs a workload where 90% of the accesses follow a Zipf-like distribution over a key space that
+ * is ten times the size of the cache and 10% of the accesses are one-off keys, which is what frequency-based admission
+ * protects against. The {@code hits} and {@code misses} counters report the resulting hit ratio.
+ * <p>
+ * {@link #admission} compares the plain LRU configuration of the cache, built exactly as before frequency-based admission
+ * existed, with the TinyLFU configuration that enables it.
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Threads(16)
+@SuppressWarnings("unused") //invoked by benchmarking framework
+public class CacheBenchmark {
+
+    private static final int NUMBER_OF_KEYS = 1 << 16;
+
+    @Param({ "10000" })
+    private int maximumSize;
+
+    /**
+     * {@code lru} builds the cache without touching admission, {@code tinylfu} enables frequency-based admission.
+     */
+    @Param({ "lru", "tinylfu" })
+    private String admission;
+
+    private Cache<Integer, Integer> cache;
+
+    // keys drawn from a Zipf-like distribution, with a fraction of one-off keys that simulate scans
+    private int[] keys;
+
+    @Setup
+    public void setUp() throws ExecutionException {
+        final CacheBuilder<Integer, Integer> builder = CacheBuilder.<Integer, Integer>builder().setMaximumWeight(maximumSize);
+        switch (admission) {
+            case "lru":
+                break;
+            case "tinylfu":
+                builder.setFrequencyBasedAdmission(true);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown admission [" + admission + "]");
+        }
+        cache = builder.build();
+        for (int i = 0; i < maximumSize; i++) {
+            cache.put(i, i);
+        }
+        final Random random = new Random(42);
+        final int keySpace = 10 * maximumSize;
+        keys = new int[NUMBER_OF_KEYS];
+        for (int i = 0; i < keys.length; i++) {
+            if (random.nextInt(10) == 0) {
+                keys[i] = keySpace + i;
+            } else {
+                // inverse transform sampling of a Zipf distribution with exponent 1
+                keys[i] = (int) Math.floor(Math.pow(keySpace, random.nextDouble())) - 1;
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ThreadState {
+        int index;
+
+        @Setup
+        public void setUp() {
+            index = new Random().nextInt(NUMBER_OF_KEYS);
+        }
+
+        int nextIndex() {
+            index = (index + 1) & (NUMBER_OF_KEYS - 1);
+            return index;
+        }
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class HitCounters {
+        public long hits;
+        public long misses;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            hits = 0;
+            misses = 0;
+        }
+    }
+
+    @Benchmark
+    public Integer get(ThreadState state) {
+        return cache.get(state.nextIndex() % maximumSize);
+    }
+
+    @Benchmark
+    public Integer computeIfAbsent(ThreadState state, HitCounters counters) throws ExecutionException {
+        final int key = keys[state.nextIndex()];
+        final boolean[] loaded = new boolean[1];
+        final Integer value = cache.computeIfAbsent(key, k -> {
+            loaded[0] = true;
+            return k;
+        });
+        if (loaded[0]) {
+            counters.misses++;
+        } else {
+            counters.hits++;
+        }
+        return value;
+    }
+}
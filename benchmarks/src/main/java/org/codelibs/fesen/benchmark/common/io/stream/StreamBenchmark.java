@@ -0,0 +1,161 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.benchmark.common.io.stream;
+
+import org.codelibs.fesen.common.bytes.BytesArray;
+import org.codelibs.fesen.common.bytes.BytesReference;
+import org.codelibs.fesen.common.io.stream.BytesStreamOutput;
+import org.codelibs.fesen.common.io.stream.StreamInput;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the variable-length integer and string encoding of {@link BytesStreamOutput} and {@link StreamInput}, which
+ * dominates the cost of serializing most transport messages. Each invocation writes or reads {@link #count} values.
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@SuppressWarnings("unused") //invoked by benchmarking framework
+public class StreamBenchmark {
+
+    @Param({ "1000" })
+    private int count;
+
+    /**
+     * The largest number of bits of the written integers, small values take a single byte while 32 bits take five.
+     */
+    @Param({ "7", "14", "32" })
+    private int bits;
+
+    @Param({ "ascii", "unicode" })
+    private String strings;
+
+    private int[] ints;
+    private long[] longs;
+    private String[] values;
+
+    private BytesStreamOutput output;
+    private BytesReference encodedInts;
+    private BytesReference encodedLongs;
+    private BytesReference encodedStrings;
+
+    @Setup
+    public void setUp() throws IOException {
+        final Random random = new Random(0);
+        ints = new int[count];
+        longs = new long[count];
+        values = new String[count];
+        for (int i = 0; i < count; i++) {
+            ints[i] = (int) (random.nextInt() & ((1L << bits) - 1));
+            longs[i] = random.nextLong() & ((1L << (2 * bits - 1)) - 1);
+            values[i] = randomString(random, 5 + random.nextInt(20), "unicode".equals(strings));
+        }
+        output = new BytesStreamOutput();
+        // copy the encoded bytes since the output is reused
+        encodedInts = new BytesArray(BytesReference.toBytes(writeVInts()));
+        encodedLongs = new BytesArray(BytesReference.toBytes(writeVLongs()));
+        encodedStrings = new BytesArray(BytesReference.toBytes(writeStrings()));
+    }
+
+    private static String randomString(Random random, int length, boolean unicode) {
+        final StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            if (unicode) {
+                // mix of two and three byte UTF-8 characters
+                builder.append((char) (0x80 + random.nextInt(0xd7ff - 0x80)));
+            } else {
+                builder.append((char) ('a' + random.nextInt(26)));
+            }
+        }
+        return builder.toString();
+    }
+
+    @Benchmark
+    public BytesReference writeVInts() throws IOException {
+        output.reset();
+        for (int value : ints) {
+            output.writeVInt(value);
+        }
+        return output.bytes();
+    }
+
+    @Benchmark
+    public BytesReference writeVLongs() throws IOException {
+        output.reset();
+        for (long value : longs) {
+            output.writeVLong(value);
+        }
+        return output.bytes();
+    }
+
+    @Benchmark
+    public BytesReference writeStrings() throws IOException {
+        output.reset();
+        for (String value : values) {
+            output.writeString(value);
+        }
+        return output.bytes();
+    }
+
+    @Benchmark
+    public void readVInts(Blackhole bh) throws IOException {
+        try (StreamInput input = encodedInts.streamInput()) {
+            for (int i = 0; i < count; i++) {
+                bh.consume(input.readVInt());
+            }
+        }
+    }
+
+    @Benchmark
+    public void readVLongs(Blackhole bh) throws IOException {
+        try (StreamInput input = encodedLongs.streamInput()) {
+            for (int i = 0; i < count; i++) {
+                bh.consume(input.readVLong());
+            }
+        }
+    }
+
+    @Benchmark
+    public void readStrings(Blackhole bh) throws IOException {
+        try (StreamInput input = encodedStrings.streamInput()) {
+            for (int i = 0; i < count; i++) {
+                bh.consume(input.readString());
+            }
+        }
+    }
+}
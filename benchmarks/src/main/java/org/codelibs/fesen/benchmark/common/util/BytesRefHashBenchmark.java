@@ -0,0 +1,104 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.benchmark.common.util;
+
+import org.apache.lucene.util.BytesRef;
+import org.codelibs.fesen.common.util.BigArrays;
+import org.codelibs.fesen.common.util.BytesRefHash;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures adding and looking up terms in a {@link BytesRefHash}, the way the {@code terms} aggregation assigns bucket
+ * ordinals to keyword values. Each invocation processes {@link #count} terms out of {@link #uniqueTerms} distinct ones.
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@SuppressWarnings("unused") //invoked by benchmarking framework
+public class BytesRefHashBenchmark {
+
+    @Param({ "100000" })
+    private int count;
+
+    @Param({ "100", "10000", "100000" })
+    private int uniqueTerms;
+
+    private BytesRef[] terms;
+    private BytesRefHash populated;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(0);
+        final BytesRef[] unique = new BytesRef[uniqueTerms];
+        for (int i = 0; i < uniqueTerms; i++) {
+            final byte[] bytes = new byte[8 + random.nextInt(24)];
+            random.nextBytes(bytes);
+            unique[i] = new BytesRef(bytes);
+        }
+        terms = new BytesRef[count];
+        for (int i = 0; i < count; i++) {
+            terms[i] = unique[random.nextInt(uniqueTerms)];
+        }
+        populated = new BytesRefHash(uniqueTerms, BigArrays.NON_RECYCLING_INSTANCE);
+        for (BytesRef term : unique) {
+            populated.add(term);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        populated.close();
+    }
+
+    @Benchmark
+    public long add() {
+        try (BytesRefHash hash = new BytesRefHash(1, BigArrays.NON_RECYCLING_INSTANCE)) {
+            for (BytesRef term : terms) {
+                hash.add(term);
+            }
+            return hash.size();
+        }
+    }
+
+    @Benchmark
+    public void find(Blackhole bh) {
+        for (BytesRef term : terms) {
+            bh.consume(populated.find(term));
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.benchmark.common.util;
+
+import org.codelibs.fesen.common.util.BigArrays;
+import org.codelibs.fesen.common.util.LongHash;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures adding and looking up keys in a {@link LongHash}, the way numeric {@code terms} and {@code date_histogram}
+ * aggregations assign bucket ordinals. Each invocation processes {@link #count} keys out of {@link #uniqueKeys} distinct ones.
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@SuppressWarnings("unused") //invoked by benchmarking framework
+public class LongHashBenchmark {
+
+    @Param({ "100000" })
+    private int count;
+
+    @Param({ "100", "10000", "100000" })
+    private int uniqueKeys;
+
+    private long[] keys;
+    private LongHash populated;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(0);
+        final long[] unique = new long[uniqueKeys];
+        for (int i = 0; i < uniqueKeys; i++) {
+            unique[i] = random.nextLong();
+        }
+        keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = unique[random.nextInt(uniqueKeys)];
+        }
+        populated = new LongHash(uniqueKeys, BigArrays.NON_RECYCLING_INSTANCE);
+        for (long key : unique) {
+            populated.add(key);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        populated.close();
+    }
+
+    @Benchmark
+    public long add() {
+        try (LongHash hash = new LongHash(1, BigArrays.NON_RECYCLING_INSTANCE)) {
+            for (long key : keys) {
+                hash.add(key);
+            }
+            return hash.size();
+        }
+    }
+
+    @Benchmark
+    public void find(Blackhole bh) {
+        for (long key : keys) {
+            bh.consume(populated.find(key));
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.benchmark.index.mapper;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.codelibs.fesen.Version;
+import org.codelibs.fesen.cluster.ClusterModule;
+import org.codelibs.fesen.cluster.metadata.IndexMetadata;
+import org.codelibs.fesen.common.bytes.BytesArray;
+import org.codelibs.fesen.common.bytes.BytesReference;
+import org.codelibs.fesen.common.compress.CompressedXContent;
+import org.codelibs.fesen.common.settings.Settings;
+import org.codelibs.fesen.common.xcontent.NamedXContentRegistry;
+import org.codelibs.fesen.common.xcontent.XContentType;
+import org.codelibs.fesen.index.IndexSettings;
+import org.codelibs.fesen.index.analysis.AnalysisRegistry;
+import org.codelibs.fesen.index.analysis.AnalyzerScope;
+import org.codelibs.fesen.index.analysis.IndexAnalyzers;
+import org.codelibs.fesen.index.analysis.NamedAnalyzer;
+import org.codelibs.fesen.index.mapper.DocumentMapper;
+import org.codelibs.fesen.index.mapper.MapperService;
+import org.codelibs.fesen.index.mapper.ParsedDocument;
+import org.codelibs.fesen.index.mapper.SourceToParse;
+import org.codelibs.fesen.index.similarity.SimilarityService;
+import org.codelibs.fesen.indices.IndicesModule;
+import org.codelibs.fesen.indices.mapper.MapperRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
+
+/**
+ * Measures {@link DocumentMapper#parse}, which turns the source of every indexed document into Lucene fields. The
+ * {@code mapped} variant parses a document whose fields are all in the mapping, the {@code dynamic} variant parses a
+ * document with the same fields against an empty mapping so that every field goes through dynamic mapping.
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@SuppressWarnings("unused") //invoked by benchmarking framework
+public class DocumentParserBenchmark {
+
+    private static final String MAPPING = "{\"_doc\":{\"properties\":{"
+        + "\"@timestamp\":{\"type\":\"date\"},"
+        + "\"message\":{\"type\":\"text\"},"
+        + "\"host\":{\"properties\":{\"name\":{\"type\":\"keyword\"},\"ip\":{\"type\":\"ip\"}}},"
+        + "\"status\":{\"type\":\"integer\"},"
+        + "\"bytes\":{\"type\":\"long\"},"
+        + "\"duration\":{\"type\":\"double\"},"
+        + "\"tags\":{\"type\":\"keyword\"}"
+        + "}}}";
+
+    private static final String DOCUMENT = "{\"@timestamp\":\"2020-10-29T12:34:56.789Z\","
+        + "\"message\":\"GET /search?q=benchmark HTTP/1.1 returned a response quickly\","
+        + "\"host\":{\"name\":\"web-01\",\"ip\":\"10.0.0.1\"},"
+        + "\"status\":200,"
+        + "\"bytes\":123456,"
+        + "\"duration\":0.125,"
+        + "\"tags\":[\"production\",\"web\",\"eu-west\"]}";
+
+    @Param({ "mapped", "dynamic" })
+    private String mapping;
+
+    private MapperService mapperService;
+    private DocumentMapper documentMapper;
+    private BytesReference source;
+
+    @Setup
+    public void setUp() throws IOException {
+        final Settings settings = Settings.builder()
+            .put(IndexMetadata.SETTING_VERSION_CREATED, Version.CURRENT)
+            .put(IndexMetadata.SETTING_NUMBER_OF_SHARDS, 1)
+            .put(IndexMetadata.SETTING_NUMBER_OF_REPLICAS, 0)
+            .build();
+        final IndexSettings indexSettings = new IndexSettings(IndexMetadata.builder("index").settings(settings).build(), settings);
+        final IndexAnalyzers indexAnalyzers = new IndexAnalyzers(
+            Collections.singletonMap(AnalysisRegistry.DEFAULT_ANALYZER_NAME,
+                new NamedAnalyzer(AnalysisRegistry.DEFAULT_ANALYZER_NAME, AnalyzerScope.INDEX, new StandardAnalyzer())),
+            emptyMap(), emptyMap());
+        final SimilarityService similarityService = new SimilarityService(indexSettings, null, emptyMap());
+        final MapperRegistry mapperRegistry = new IndicesModule(emptyList()).getMapperRegistry();
+        mapperService = new MapperService(indexSettings, indexAnalyzers,
+            new NamedXContentRegistry(ClusterModule.getNamedXWriteables()), similarityService, mapperRegistry, () -> null,
+            () -> false, null);
+        final String mappingSource = "mapped".equals(mapping) ? MAPPING : "{\"_doc\":{}}";
+        documentMapper = mapperService.merge(MapperService.SINGLE_MAPPING_NAME, new CompressedXContent(mappingSource),
+            MapperService.MergeReason.MAPPING_UPDATE);
+        source = new BytesArray(DOCUMENT.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        mapperService.close();
+    }
+
+    @Benchmark
+    public ParsedDocument parse() {
+        return documentMapper.parse(new SourceToParse("index", MapperService.SINGLE_MAPPING_NAME, "1", source, XContentType.JSON));
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.benchmark.index.seqno;
+
+import org.codelibs.fesen.index.seqno.ConcurrentLocalCheckpointTracker;
+import org.codelibs.fesen.index.seqno.LocalCheckpointTracker;
+import org.codelibs.fesen.index.seqno.SequenceNumbers;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link #threads} threads generating sequence numbers and marking them as processed and persisted in one
+ * {@link LocalCheckpointTracker}, the way write threads indexing into the same shard do. Each invocation processes
+ * {@link #operations} operations with a fresh tracker.
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@SuppressWarnings("unused") //invoked by benchmarking framework
+public class LocalCheckpointTrackerBenchmark {
+
+    @Param({ "synchronized", "concurrent" })
+    private String tracker;
+
+    @Param({ "1", "4", "16", "32" })
+    private int threads;
+
+    @Param({ "1000000" })
+    private int operations;
+
+    private ExecutorService executor;
+
+    @Setup
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    private LocalCheckpointTracker newTracker() {
+        switch (tracker) {
+            case "synchronized":
+                return new LocalCheckpointTracker(SequenceNumbers.NO_OPS_PERFORMED, SequenceNumbers.NO_OPS_PERFORMED);
+            case "concurrent":
+                return new ConcurrentLocalCheckpointTracker(SequenceNumbers.NO_OPS_PERFORMED, SequenceNumbers.NO_OPS_PERFORMED);
+            default:
+                throw new IllegalArgumentException("unknown tracker [" + tracker + "]");
+        }
+    }
+
+    @Benchmark
+    public long markSeqNos() throws Exception {
+        final LocalCheckpointTracker tracker = newTracker();
+        final CyclicBarrier barrier = new CyclicBarrier(threads);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final int operationsPerThread = operations / threads;
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                try {
+                    barrier.await();
+                    for (int i = 0; i < operationsPerThread; i++) {
+                        final long seqNo = tracker.generateSeqNo();
+                        tracker.markSeqNoAsProcessed(seqNo);
+                        tracker.markSeqNoAsPersisted(seqNo);
+                    }
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        if (tracker.getProcessedCheckpoint() != (long) operationsPerThread * threads - 1) {
+            throw new AssertionError("checkpoint [" + tracker.getProcessedCheckpoint() + "] didn't reach the last operation");
+        }
+        return tracker.getPersistedCheckpoint();
+    }
+}
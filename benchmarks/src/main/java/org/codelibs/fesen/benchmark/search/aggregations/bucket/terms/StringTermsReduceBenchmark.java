@@ -0,0 +1,114 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.benchmark.search.aggregations.bucket.terms;
+
+import org.apache.lucene.util.BytesRef;
+import org.codelibs.fesen.common.util.BigArrays;
+import org.codelibs.fesen.search.DocValueFormat;
+import org.codelibs.fesen.search.aggregations.BucketOrder;
+import org.codelibs.fesen.search.aggregations.InternalAggregation;
+import org.codelibs.fesen.search.aggregations.InternalAggregations;
+import org.codelibs.fesen.search.aggregations.bucket.terms.StringTerms;
+import org.codelibs.fesen.search.aggregations.pipeline.PipelineAggregator.PipelineTree;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@code InternalTerms#reduce} on {@link StringTerms} results coming from {@link #numShards} shards that each
+ * return {@link #shardSize} buckets out of a shared {@link #dictSize} terms, as the coordinating node does when a search
+ * with a {@code terms} aggregation completes.
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@SuppressWarnings("unused") //invoked by benchmarking framework
+public class StringTermsReduceBenchmark {
+
+    @Param({ "10", "100" })
+    private int numShards;
+
+    @Param({ "100", "1000" })
+    private int shardSize;
+
+    @Param({ "10000" })
+    private int dictSize;
+
+    @Param({ "10" })
+    private int topNSize;
+
+    private List<InternalAggregation> shardResults;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(0);
+        final BytesRef[] dict = new BytesRef[dictSize];
+        for (int i = 0; i < dictSize; i++) {
+            dict[i] = new BytesRef(Integer.toString(random.nextInt()));
+        }
+        shardResults = new ArrayList<>(numShards);
+        for (int shard = 0; shard < numShards; shard++) {
+            shardResults.add(newShardResult(random, dict));
+        }
+    }
+
+    private StringTerms newShardResult(Random random, BytesRef[] dict) {
+        final List<BytesRef> terms = new ArrayList<>(dictSize);
+        Collections.addAll(terms, dict);
+        Collections.shuffle(terms, random);
+        final List<StringTerms.Bucket> buckets = new ArrayList<>(shardSize);
+        for (int i = 0; i < shardSize; i++) {
+            buckets.add(new StringTerms.Bucket(terms.get(i), 1 + random.nextInt(1000), InternalAggregations.EMPTY, false, 0,
+                DocValueFormat.RAW));
+        }
+        // shards return their buckets sorted by term, the order used to merge them
+        buckets.sort(StringTerms.Bucket::compareKey);
+        return new StringTerms("terms", BucketOrder.key(true), BucketOrder.count(false), topNSize, 1, null, DocValueFormat.RAW,
+            shardSize, false, 0, buckets, 0);
+    }
+
+    /**
+     * Reducing adjusts the doc count errors of the shard buckets in place, which is a no-op here since all errors are zero,
+     * so the same shard results can be reduced on every invocation.
+     */
+    @Benchmark
+    public InternalAggregation reduce() {
+        final InternalAggregation.ReduceContext context = InternalAggregation.ReduceContext.forFinalReduction(
+            BigArrays.NON_RECYCLING_INSTANCE, null, b -> {}, PipelineTree.EMPTY);
+        return shardResults.get(0).reduce(shardResults, context);
+    }
+}
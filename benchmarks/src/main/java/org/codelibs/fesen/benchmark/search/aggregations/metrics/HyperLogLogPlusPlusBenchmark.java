@@ -0,0 +1,109 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.benchmark.search.aggregations.metrics;
+
+import com.carrotsearch.hppc.BitMixer;
+import org.codelibs.fesen.common.util.BigArrays;
+import org.codelibs.fesen.search.aggregations.metrics.HyperLogLogPlusPlus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures collecting hashes into, and merging, the {@link HyperLogLogPlusPlus} sketches backing the {@code cardinality}
+ * aggregation. With few distinct values per bucket the sketches stay in linear counting mode, with many they are upgraded
+ * to HyperLogLog, so the {@link #cardinality} parameter covers both representations.
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@SuppressWarnings("unused") //invoked by benchmarking framework
+public class HyperLogLogPlusPlusBenchmark {
+
+    @Param({ "14" })
+    private int precision;
+
+    @Param({ "1", "100" })
+    private int buckets;
+
+    @Param({ "100", "100000" })
+    private int cardinality;
+
+    @Param({ "100000" })
+    private int count;
+
+    private long[] hashes;
+    private HyperLogLogPlusPlus populated;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(0);
+        hashes = new long[count];
+        for (int i = 0; i < count; i++) {
+            hashes[i] = BitMixer.mix64(random.nextInt(cardinality));
+        }
+        populated = newSketch();
+    }
+
+    @TearDown
+    public void tearDown() {
+        populated.close();
+    }
+
+    private HyperLogLogPlusPlus newSketch() {
+        final HyperLogLogPlusPlus counts = new HyperLogLogPlusPlus(precision, BigArrays.NON_RECYCLING_INSTANCE, 1);
+        for (int i = 0; i < hashes.length; i++) {
+            counts.collect(i % buckets, hashes[i]);
+        }
+        return counts;
+    }
+
+    @Benchmark
+    public long collect() {
+        try (HyperLogLogPlusPlus counts = newSketch()) {
+            return counts.cardinality(0);
+        }
+    }
+
+    @Benchmark
+    public long merge() {
+        try (HyperLogLogPlusPlus merged = new HyperLogLogPlusPlus(precision, BigArrays.NON_RECYCLING_INSTANCE, 1)) {
+            for (long bucket = 0; bucket < buckets; bucket++) {
+                merged.merge(0, populated, bucket);
+            }
+            return merged.cardinality(0);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.benchmark.search.aggregations.metrics;
+
+import org.codelibs.fesen.search.aggregations.metrics.TDigestExecutionHint;
+import org.codelibs.fesen.search.aggregations.metrics.TDigestState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares collecting values into, and reducing, the {@link TDigestState} sketches backing the {@code percentiles}
+ * aggregation with each {@link TDigestExecutionHint}. The {@link #reduce} benchmark merges one digest per shard the
+ * way the coordinating node does.
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+@SuppressWarnings("unused") //invoked by benchmarking framework
+public class TDigestBenchmark {
+
+    @Param({ "avl_tree", "merging" })
+    private String executionHint;
+
+    @Param({ "100" })
+    private double compression;
+
+    @Param({ "100000" })
+    private int count;
+
+    @Param({ "10", "500" })
+    private int shards;
+
+    private TDigestExecutionHint hint;
+    private double[] values;
+    private List<TDigestState> shardStates;
+
+    @Setup
+    public void setUp() {
+        hint = TDigestExecutionHint.parse(executionHint);
+        final Random random = new Random(0);
+        values = new double[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = random.nextGaussian() * 1000;
+        }
+        shardStates = new ArrayList<>(shards);
+        for (int shard = 0; shard < shards; shard++) {
+            TDigestState state = new TDigestState(compression, hint);
+            for (int i = shard; i < count; i += shards) {
+                state.add(values[i]);
+            }
+            shardStates.add(state);
+        }
+    }
+
+    @Benchmark
+    public double collect() {
+        TDigestState state = new TDigestState(compression, hint);
+        for (double value : values) {
+            state.add(value);
+        }
+        return state.quantile(0.99);
+    }
+
+    @Benchmark
+    public double reduce() {
+        TDigestState merged = new TDigestState(compression, hint);
+        merged.add(shardStates);
+        return merged.quantile(0.99);
+    }
+}
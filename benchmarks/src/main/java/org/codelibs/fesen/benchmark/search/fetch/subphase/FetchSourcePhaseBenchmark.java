@@ -0,0 +1,115 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.codelibs.fesen.benchmark.search.fetch.subphase;
+
+import org.codelibs.fesen.common.bytes.BytesReference;
+import org.codelibs.fesen.common.io.stream.BytesStreamOutput;
+import org.codelibs.fesen.common.xcontent.DeprecationHandler;
+import org.codelibs.fesen.common.xcontent.NamedXContentRegistry;
+import org.codelibs.fesen.common.xcontent.XContentBuilder;
+import org.codelibs.fesen.common.xcontent.XContentHelper;
+import org.codelibs.fesen.common.xcontent.XContentParser;
+import org.codelibs.fesen.common.xcontent.XContentType;
+import org.codelibs.fesen.common.xcontent.json.JsonXContent;
+import org.codelibs.fesen.search.fetch.subphase.FetchSourceContext;
+import org.codelibs.fesen.search.lookup.SourceLookup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the two ways {@code FetchSourcePhase} can apply source filtering to a large document: parsing the source into a
+ * map, filtering the map and serializing it again, and filtering the source bytes directly with
+ * {@link FetchSourceContext#getStreamingFilter()}. The document has a few hundred fields and the filter keeps three of them.
+ */
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@SuppressWarnings("unused") //invoked by benchmarking framework
+public class FetchSourcePhaseBenchmark {
+
+    @Param({ "50" })
+    private int sizeInKb;
+
+    private BytesReference source;
+    private FetchSourceContext fetchContext;
+
+    @Setup
+    public void setUp() throws IOException {
+        final Random random = new Random(42);
+        final BytesStreamOutput out = new BytesStreamOutput();
+        XContentBuilder builder = new XContentBuilder(JsonXContent.jsonXContent, out).startObject();
+        builder.field("title", "a large document");
+        builder.field("timestamp", 1603974896789L);
+        for (int i = 0; out.size() < sizeInKb * 1024; i++) {
+            builder.startObject("object_" + i);
+            builder.field("text", randomText(random, 64));
+            builder.field("number", random.nextLong());
+            builder.startArray("tags").value(randomText(random, 8)).value(randomText(random, 8)).endArray();
+            builder.endObject();
+            builder.flush();
+        }
+        builder.startObject("user").field("name", "John Doe").field("id", 42).endObject();
+        source = BytesReference.bytes(builder.endObject());
+        fetchContext = new FetchSourceContext(true, new String[] { "title", "timestamp", "user.name" }, new String[0]);
+    }
+
+    private static String randomText(Random random, int length) {
+        final StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append((char) ('a' + random.nextInt(26)));
+        }
+        return text.toString();
+    }
+
+    @Benchmark
+    public BytesReference filterMap() throws IOException {
+        SourceLookup lookup = new SourceLookup();
+        lookup.setSource(source);
+        Object value = lookup.filter(fetchContext);
+        return BytesReference.bytes(XContentBuilder.builder(lookup.sourceContentType().xContent()).value(value));
+    }
+
+    @Benchmark
+    public BytesReference filterBytes() throws IOException {
+        try (XContentParser parser = XContentHelper.createParser(NamedXContentRegistry.EMPTY,
+                DeprecationHandler.THROW_UNSUPPORTED_OPERATION, source, XContentType.JSON)) {
+            XContentBuilder builder = XContentBuilder.builder(parser.contentType().xContent());
+            fetchContext.getStreamingFilter().accept(parser, builder);
+            return BytesReference.bytes(builder);
+        }
+    }
+}
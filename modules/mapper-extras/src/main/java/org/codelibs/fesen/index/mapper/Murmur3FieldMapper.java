@@ -0,0 +1,146 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.index.mapper;
+
+import org.apache.lucene.document.SortedNumericDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.BytesRef;
+import org.codelibs.fesen.common.hash.MurmurHash3;
+import org.codelibs.fesen.index.fielddata.IndexFieldData;
+import org.codelibs.fesen.index.fielddata.IndexNumericFieldData.NumericType;
+import org.codelibs.fesen.index.fielddata.plain.SortedNumericIndexFieldData;
+import org.codelibs.fesen.index.query.QueryShardContext;
+import org.codelibs.fesen.index.query.QueryShardException;
+import org.codelibs.fesen.search.lookup.SearchLookup;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * A {@link FieldMapper} that hashes string values with murmur3 at index time and stores the
+ * 64-bit hash as numeric doc values. The {@code cardinality} aggregation uses these hashes
+ * as is, so that it doesn't need to hash long values at search time.
+ */
+public class Murmur3FieldMapper extends ParametrizedFieldMapper {
+    public static final String CONTENT_TYPE = "murmur3";
+
+    private static Murmur3FieldMapper toType(FieldMapper in) {
+        return (Murmur3FieldMapper) in;
+    }
+
+    public static class Builder extends ParametrizedFieldMapper.Builder {
+
+        private final Parameter<Boolean> store = Parameter.storeParam(m -> toType(m).store, false);
+        private final Parameter<Map<String, String>> meta = Parameter.metaParam();
+
+        public Builder(String name) {
+            super(name);
+        }
+
+        @Override
+        protected List<Parameter<?>> getParameters() {
+            return Arrays.asList(store, meta);
+        }
+
+        @Override
+        public Murmur3FieldMapper build(BuilderContext context) {
+            return new Murmur3FieldMapper(name, new Murmur3FieldType(buildFullName(context), store.getValue(), meta.getValue()),
+                multiFieldsBuilder.build(this, context), copyTo.build(), this);
+        }
+    }
+
+    public static TypeParser PARSER = new TypeParser((n, c) -> new Builder(n));
+
+    public static class Murmur3FieldType extends MappedFieldType implements PrecomputedHashFieldType {
+
+        Murmur3FieldType(String name, boolean isStored, Map<String, String> meta) {
+            super(name, false, isStored, true, TextSearchInfo.NONE, meta);
+        }
+
+        @Override
+        public String typeName() {
+            return CONTENT_TYPE;
+        }
+
+        @Override
+        public IndexFieldData.Builder fielddataBuilder(String fullyQualifiedIndexName, Supplier<SearchLookup> searchLookup) {
+            failIfNoDocValues();
+            return new SortedNumericIndexFieldData.Builder(name(), NumericType.LONG);
+        }
+
+        @Override
+        public ValueFetcher valueFetcher(MapperService mapperService, SearchLookup searchLookup, String format) {
+            return SourceValueFetcher.toString(name(), mapperService, format);
+        }
+
+        @Override
+        public Query termQuery(Object value, QueryShardContext context) {
+            throw new QueryShardException(context, "Murmur3 fields are not searchable: [" + name() + "]");
+        }
+    }
+
+    private final boolean store;
+
+    protected Murmur3FieldMapper(String simpleName, MappedFieldType mappedFieldType,
+                                 MultiFields multiFields, CopyTo copyTo, Builder builder) {
+        super(simpleName, mappedFieldType, multiFields, copyTo);
+        this.store = builder.store.getValue();
+    }
+
+    @Override
+    protected void parseCreateField(ParseContext context) throws IOException {
+        final Object value;
+        if (context.externalValueSet()) {
+            value = context.externalValue();
+        } else {
+            value = context.parser().textOrNull();
+        }
+        if (value == null) {
+            return;
+        }
+        final long hash = hash(new BytesRef(value.toString()));
+        context.doc().add(new SortedNumericDocValuesField(fieldType().name(), hash));
+        if (store) {
+            context.doc().add(new StoredField(name(), hash));
+        }
+    }
+
+    /**
+     * The hash of a value, the same as the one the {@code cardinality} aggregation computes
+     * for string values so that counts on {@code murmur3} and {@code keyword} fields can be merged.
+     */
+    static long hash(BytesRef bytes) {
+        return MurmurHash3.hash128(bytes.bytes, bytes.offset, bytes.length, 0, new MurmurHash3.Hash128()).h1;
+    }
+
+    @Override
+    protected String contentType() {
+        return CONTENT_TYPE;
+    }
+
+    @Override
+    public ParametrizedFieldMapper.Builder getMergeBuilder() {
+        return new Builder(simpleName()).init(this);
+    }
+}
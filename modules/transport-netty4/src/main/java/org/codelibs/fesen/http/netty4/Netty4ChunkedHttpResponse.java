@@ -0,0 +1,72 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.codelibs.fesen.http.netty4;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+
+import org.codelibs.fesen.http.HttpResponse;
+import org.codelibs.fesen.rest.ChunkedRestResponseBody;
+import org.codelibs.fesen.rest.RestStatus;
+
+/**
+ * A response whose content is serialized while it is written to the channel, see {@link Netty4HttpResponseCreator}. Its first
+ * chunk is serialized upfront by the thread that creates the response.
+ */
+public class Netty4ChunkedHttpResponse extends DefaultHttpResponse implements HttpResponse {
+
+    private final HttpHeaders requestHeaders;
+    private final ChunkedRestResponseBody body;
+    private final ByteBuf firstChunk;
+
+    Netty4ChunkedHttpResponse(HttpHeaders requestHeaders, HttpVersion version, RestStatus status, ChunkedRestResponseBody body,
+                              ByteBuf firstChunk) {
+        super(version, HttpResponseStatus.valueOf(status.getStatus()));
+        this.requestHeaders = requestHeaders;
+        this.body = body;
+        this.firstChunk = firstChunk;
+    }
+
+    @Override
+    public void addHeader(String name, String value) {
+        headers().add(name, value);
+    }
+
+    @Override
+    public boolean containsHeader(String name) {
+        return headers().contains(name);
+    }
+
+    public HttpHeaders requestHeaders() {
+        return requestHeaders;
+    }
+
+    public ChunkedRestResponseBody body() {
+        return body;
+    }
+
+    public ByteBuf firstChunk() {
+        return firstChunk;
+    }
+}
@@ -27,16 +27,21 @@ import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.HttpHeaderNames;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpVersion;
 import io.netty.handler.codec.http.cookie.Cookie;
 import io.netty.handler.codec.http.cookie.ServerCookieDecoder;
 import io.netty.handler.codec.http.cookie.ServerCookieEncoder;
 
 import org.codelibs.fesen.common.bytes.BytesReference;
+import org.codelibs.fesen.common.bytes.CompositeBytesReference;
 import org.codelibs.fesen.http.HttpRequest;
+import org.codelibs.fesen.rest.ChunkedRestResponseBody;
 import org.codelibs.fesen.rest.RestRequest;
 import org.codelibs.fesen.rest.RestStatus;
 import org.codelibs.fesen.transport.netty4.Netty4Utils;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.AbstractMap;
 import java.util.Collection;
 import java.util.Collections;
@@ -200,6 +205,23 @@ public class Netty4HttpRequest implements HttpRequest {
         return new Netty4HttpResponse(request.headers(), request.protocolVersion(), status, content);
     }
 
+    @Override
+    public Netty4ChunkedHttpResponse createResponse(RestStatus status, ChunkedRestResponseBody content) {
+        // serialize the first chunk on the thread that sends the response rather than on the event loop
+        BytesReference firstChunk;
+        try {
+            firstChunk = content.encodeChunk(Netty4HttpResponseCreator.SPLIT_THRESHOLD);
+            if (content.isDone() == false && HttpVersion.HTTP_1_0.equals(request.protocolVersion())) {
+                // HTTP/1.0 does not support chunked transfer encoding
+                firstChunk = CompositeBytesReference.of(firstChunk, content.encodeRemaining());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new Netty4ChunkedHttpResponse(request.headers(), request.protocolVersion(), status, content,
+            Netty4Utils.toByteBuf(firstChunk));
+    }
+
     @Override
     public Exception getInboundException() {
         return inboundException;
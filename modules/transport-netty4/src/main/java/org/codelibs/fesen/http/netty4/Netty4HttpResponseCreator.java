@@ -20,30 +20,47 @@
 package org.codelibs.fesen.http.netty4;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.MessageToMessageEncoder;
 import io.netty.handler.codec.compression.JdkZlibEncoder;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
 import io.netty.handler.codec.http.DefaultHttpContent;
 import io.netty.handler.codec.http.DefaultHttpResponse;
 import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.EmptyHttpHeaders;
+import io.netty.handler.codec.http.HttpChunkedInput;
 import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.stream.ChunkedInput;
+import io.netty.handler.stream.ChunkedWriteHandler;
 
+import org.codelibs.fesen.common.util.concurrent.AbstractRunnable;
 import org.codelibs.fesen.core.Booleans;
+import org.codelibs.fesen.rest.ChunkedRestResponseBody;
 import org.codelibs.fesen.transport.NettyAllocator;
+import org.codelibs.fesen.transport.netty4.Netty4Utils;
 
 import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Split up large responses to prevent batch compression {@link JdkZlibEncoder} down the pipeline.
+ * <p>
+ * Chunked responses are serialized lazily: their first chunk is serialized by the thread that sends the response and, if
+ * the response does not fit in it, the remaining chunks are serialized one at a time on the given executor and handed to the
+ * {@link ChunkedWriteHandler} down the pipeline, so that only a bounded part of the response is held in memory at any time
+ * and the event loop never serializes content.
  */
 @ChannelHandler.Sharable
-class Netty4HttpResponseCreator extends MessageToMessageEncoder<Netty4HttpResponse> {
+class Netty4HttpResponseCreator extends MessageToMessageEncoder<HttpResponse> {
 
     private static final String DO_NOT_SPLIT = "es.unsafe.do_not_split_http_responses";
 
     private static final boolean DO_NOT_SPLIT_HTTP_RESPONSES;
-    private static final int SPLIT_THRESHOLD;
+    static final int SPLIT_THRESHOLD;
 
     static {
         DO_NOT_SPLIT_HTTP_RESPONSES = Booleans.parseBoolean(System.getProperty(DO_NOT_SPLIT), false);
@@ -51,8 +68,27 @@ class Netty4HttpResponseCreator extends MessageToMessageEncoder<Netty4HttpRespon
         SPLIT_THRESHOLD = (int) (NettyAllocator.suggestedMaxAllocationSize() * 0.99);
     }
 
+    private final Executor executor;
+
+    Netty4HttpResponseCreator(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public boolean acceptOutboundMessage(Object msg) {
+        return msg instanceof Netty4HttpResponse || msg instanceof Netty4ChunkedHttpResponse;
+    }
+
     @Override
-    protected void encode(ChannelHandlerContext ctx, Netty4HttpResponse msg, List<Object> out) {
+    protected void encode(ChannelHandlerContext ctx, HttpResponse msg, List<Object> out) {
+        if (msg instanceof Netty4ChunkedHttpResponse) {
+            encodeChunked(ctx, (Netty4ChunkedHttpResponse) msg, out);
+        } else {
+            encodeFull((Netty4HttpResponse) msg, out);
+        }
+    }
+
+    private static void encodeFull(Netty4HttpResponse msg, List<Object> out) {
         if (DO_NOT_SPLIT_HTTP_RESPONSES || msg.content().readableBytes() <= SPLIT_THRESHOLD) {
             out.add(msg.retain());
         } else {
@@ -65,4 +101,116 @@ class Netty4HttpResponseCreator extends MessageToMessageEncoder<Netty4HttpRespon
             out.add(new DefaultLastHttpContent(content.readRetainedSlice(content.readableBytes())));
         }
     }
+
+    private void encodeChunked(ChannelHandlerContext ctx, Netty4ChunkedHttpResponse msg, List<Object> out) {
+        final ChunkedRestResponseBody body = msg.body();
+        final ByteBuf firstChunk = msg.firstChunk();
+        if (body.isDone()) {
+            // the response fits in a single chunk, send it with a content length like other responses
+            HttpResponse response = new DefaultFullHttpResponse(msg.protocolVersion(), msg.status(), firstChunk, msg.headers(),
+                EmptyHttpHeaders.INSTANCE);
+            HttpUtil.setContentLength(response, firstChunk.readableBytes());
+            out.add(response);
+        } else {
+            HttpUtil.setTransferEncodingChunked(msg, true);
+            out.add(new DefaultHttpResponse(msg.protocolVersion(), msg.status(), msg.headers()));
+            final ChunkedWriteHandler writer = ctx.pipeline().get(ChunkedWriteHandler.class);
+            out.add(new HttpChunkedInput(new ChunkedResponseInput(body, firstChunk, executor, ctx.executor(), writer)));
+        }
+    }
+
+    /**
+     * Hands the chunks of a response to the {@link ChunkedWriteHandler}. Each chunk is serialized on the executor while the
+     * previous one is written, and the transfer is resumed on the event loop once it is ready.
+     */
+    private static final class ChunkedResponseInput implements ChunkedInput<ByteBuf> {
+
+        private final ChunkedRestResponseBody body;
+        private final Executor executor;
+        private final Executor eventLoop;
+        private final ChunkedWriteHandler writer;
+        // the next chunk to write, set by the thread that serialized it and cleared by the event loop
+        private final AtomicReference<ByteBuf> next;
+        // whether a chunk is being serialized, cleared once it is available in next
+        private volatile boolean encoding;
+        private volatile Exception failure;
+        private long progress;
+
+        ChunkedResponseInput(ChunkedRestResponseBody body, ByteBuf firstChunk, Executor executor, Executor eventLoop,
+                             ChunkedWriteHandler writer) {
+            this.body = body;
+            this.executor = executor;
+            this.eventLoop = eventLoop;
+            this.writer = writer;
+            this.next = new AtomicReference<>(firstChunk);
+        }
+
+        @Override
+        public boolean isEndOfInput() {
+            return failure == null && encoding == false && next.get() == null && body.isDone();
+        }
+
+        @Override
+        public void close() {
+            final ByteBuf pending = next.getAndSet(null);
+            if (pending != null) {
+                pending.release();
+            }
+        }
+
+        @Deprecated
+        @Override
+        public ByteBuf readChunk(ChannelHandlerContext ctx) throws Exception {
+            return readChunk(ctx.alloc());
+        }
+
+        @Override
+        public ByteBuf readChunk(ByteBufAllocator allocator) throws Exception {
+            if (failure != null) {
+                throw failure;
+            }
+            final ByteBuf chunk = next.getAndSet(null);
+            if (chunk == null) {
+                // the next chunk is still being serialized, the transfer is resumed once it is ready
+                return null;
+            }
+            progress += chunk.readableBytes();
+            if (body.isDone() == false) {
+                encodeNextChunk();
+            }
+            return chunk;
+        }
+
+        private void encodeNextChunk() {
+            encoding = true;
+            executor.execute(new AbstractRunnable() {
+                @Override
+                protected void doRun() throws Exception {
+                    next.set(Netty4Utils.toByteBuf(body.encodeChunk(SPLIT_THRESHOLD)));
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    failure = e;
+                }
+
+                @Override
+                public void onAfter() {
+                    encoding = false;
+                    // always go through the event loop so that the transfer is never resumed from within readChunk
+                    eventLoop.execute(writer::resumeTransfer);
+                }
+            });
+        }
+
+        @Override
+        public long length() {
+            return -1;
+        }
+
+        @Override
+        public long progress() {
+            return progress;
+        }
+    }
 }
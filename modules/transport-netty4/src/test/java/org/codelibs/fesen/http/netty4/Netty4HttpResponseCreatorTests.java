@@ -0,0 +1,157 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.codelibs.fesen.http.netty4;
+
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.stream.ChunkedWriteHandler;
+
+import org.codelibs.fesen.common.Strings;
+import org.codelibs.fesen.common.collect.Iterators;
+import org.codelibs.fesen.common.xcontent.ChunkedToXContent;
+import org.codelibs.fesen.common.xcontent.ToXContent;
+import org.codelibs.fesen.rest.ChunkedRestResponseBody;
+import org.codelibs.fesen.rest.RestStatus;
+import org.codelibs.fesen.test.ESTestCase;
+import org.codelibs.fesen.test.rest.FakeRestChannel;
+import org.codelibs.fesen.test.rest.FakeRestRequest;
+import org.codelibs.fesen.threadpool.TestThreadPool;
+import org.codelibs.fesen.threadpool.ThreadPool;
+import org.codelibs.fesen.transport.NettyAllocator;
+import org.junit.After;
+import org.junit.Before;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.not;
+
+public class Netty4HttpResponseCreatorTests extends ESTestCase {
+
+    private ThreadPool threadPool;
+
+    @Before
+    public void setUpThreadPool() {
+        threadPool = new TestThreadPool(getTestName());
+    }
+
+    @After
+    public void shutDownThreadPool() {
+        terminate(threadPool);
+    }
+
+    public void testSmallChunkedResponseIsSentInFull() throws IOException {
+        final ChunkedToXContent content = chunkedToXContent(randomIntBetween(1, 10), () -> {});
+        final EmbeddedChannel channel = new EmbeddedChannel(new ChunkedWriteHandler(),
+            new Netty4HttpResponseCreator(threadPool.generic()));
+        channel.writeAndFlush(createResponse(content));
+
+        final Object message = channel.readOutbound();
+        assertThat(message, instanceOf(FullHttpResponse.class));
+        final FullHttpResponse response = (FullHttpResponse) message;
+        assertThat(HttpUtil.getContentLength(response), equalTo((long) response.content().readableBytes()));
+        assertThat(response.content().toString(StandardCharsets.UTF_8), equalTo(Strings.toString(content)));
+        response.release();
+    }
+
+    public void testLargeChunkedResponseIsStreamed() throws Exception {
+        // make sure the response spans several chunks
+        final int numValues = (int) (3 * NettyAllocator.suggestedMaxAllocationSize() / 1024) + 1;
+        final Thread eventLoopThread = Thread.currentThread();
+        final AtomicBoolean written = new AtomicBoolean();
+        final AtomicBoolean serializedOnEventLoop = new AtomicBoolean();
+        // once the response is handed to the channel, the event loop (the test thread here) must not serialize any of it
+        final ChunkedToXContent content = chunkedToXContent(numValues, () -> {
+            if (written.get() && Thread.currentThread() == eventLoopThread) {
+                serializedOnEventLoop.set(true);
+            }
+        });
+        final EmbeddedChannel channel = new EmbeddedChannel(new ChunkedWriteHandler(),
+            new Netty4HttpResponseCreator(threadPool.generic()));
+        final Netty4ChunkedHttpResponse chunkedResponse = createResponse(content);
+        written.set(true);
+        channel.writeAndFlush(chunkedResponse);
+
+        final Object message = channel.readOutbound();
+        assertThat(message, instanceOf(HttpResponse.class));
+        assertThat(message, not(instanceOf(FullHttpResponse.class)));
+        assertTrue(HttpUtil.isTransferEncodingChunked((HttpResponse) message));
+
+        final StringBuilder body = new StringBuilder();
+        final AtomicInteger numChunks = new AtomicInteger();
+        final AtomicBoolean last = new AtomicBoolean();
+        assertBusy(() -> {
+            // run the resumptions of the transfer that the executor scheduled on the event loop
+            channel.runPendingTasks();
+            Object chunk;
+            while (last.get() == false && (chunk = channel.readOutbound()) != null) {
+                assertThat(chunk, instanceOf(HttpContent.class));
+                final HttpContent httpContent = (HttpContent) chunk;
+                body.append(new String(ByteBufUtil.getBytes(httpContent.content()), StandardCharsets.UTF_8));
+                httpContent.release();
+                numChunks.incrementAndGet();
+                last.set(chunk instanceof LastHttpContent);
+            }
+            assertTrue(last.get());
+        });
+        assertThat(numChunks.get(), greaterThan(2));
+        assertFalse(serializedOnEventLoop.get());
+        written.set(false);
+        assertThat(body.toString(), equalTo(Strings.toString(content)));
+    }
+
+    private static Netty4ChunkedHttpResponse createResponse(ChunkedToXContent content) throws IOException {
+        final FakeRestChannel restChannel = new FakeRestChannel(new FakeRestRequest(), true, 1);
+        final Netty4HttpRequest request = new Netty4HttpRequest(new DefaultFullHttpRequest(HTTP_1_1, HttpMethod.GET, "/"));
+        return request.createResponse(RestStatus.OK, ChunkedRestResponseBody.fromXContent(content, ToXContent.EMPTY_PARAMS, restChannel));
+    }
+
+    private static ChunkedToXContent chunkedToXContent(int numValues, Runnable onSerialize) {
+        final List<ToXContent> values = new ArrayList<>();
+        for (int i = 0; i < numValues; i++) {
+            final String value = randomAlphaOfLength(1024);
+            values.add((builder, params) -> {
+                onSerialize.run();
+                return builder.value(value);
+            });
+        }
+        return params -> Iterators.concat(
+            Collections.<ToXContent>singletonList((builder, p) -> builder.startObject().startArray("values")).iterator(),
+            values.iterator(),
+            Collections.<ToXContent>singletonList((builder, p) -> builder.endArray().endObject()).iterator());
+    }
+}
@@ -20,6 +20,7 @@
 package org.codelibs.fesen.action.admin.indices.stats;
 
 import org.apache.lucene.store.AlreadyClosedException;
+import org.codelibs.fesen.Version;
 import org.codelibs.fesen.common.io.stream.StreamInput;
 import org.codelibs.fesen.common.io.stream.StreamOutput;
 import org.codelibs.fesen.common.io.stream.Writeable;
@@ -30,6 +31,7 @@ import org.codelibs.fesen.common.xcontent.XContentBuilder;
 import org.codelibs.fesen.core.Nullable;
 import org.codelibs.fesen.index.cache.query.QueryCacheStats;
 import org.codelibs.fesen.index.cache.request.RequestCacheStats;
+import org.codelibs.fesen.index.cache.significance.BackgroundFrequencyCacheStats;
 import org.codelibs.fesen.index.engine.SegmentsStats;
 import org.codelibs.fesen.index.fielddata.FieldDataStats;
 import org.codelibs.fesen.index.flush.FlushStats;
@@ -44,6 +46,7 @@ import org.codelibs.fesen.index.shard.IndexingStats;
 import org.codelibs.fesen.index.store.StoreStats;
 import org.codelibs.fesen.index.translog.TranslogStats;
 import org.codelibs.fesen.index.warmer.WarmerStats;
+import org.codelibs.fesen.indices.IndicesBackgroundFrequencyCache;
 import org.codelibs.fesen.indices.IndicesQueryCache;
 import org.codelibs.fesen.search.suggest.completion.CompletionStats;
 
@@ -102,6 +105,9 @@ public class CommonStats implements Writeable, ToXContentFragment {
     @Nullable
     public RecoveryStats recoveryStats;
 
+    @Nullable
+    public BackgroundFrequencyCacheStats backgroundFrequencyCache;
+
     public CommonStats() {
         this(CommonStatsFlags.NONE);
     }
@@ -159,6 +165,9 @@ public class CommonStats implements Writeable, ToXContentFragment {
                 case Recovery:
                     recoveryStats = new RecoveryStats();
                     break;
+                case BackgroundFrequencyCache:
+                    backgroundFrequencyCache = new BackgroundFrequencyCacheStats();
+                    break;
                 default:
                     throw new IllegalStateException("Unknown Flag: " + flag);
             }
@@ -166,6 +175,11 @@ public class CommonStats implements Writeable, ToXContentFragment {
     }
 
     public CommonStats(IndicesQueryCache indicesQueryCache, IndexShard indexShard, CommonStatsFlags flags) {
+        this(indicesQueryCache, null, indexShard, flags);
+    }
+
+    public CommonStats(IndicesQueryCache indicesQueryCache, @Nullable IndicesBackgroundFrequencyCache indicesBackgroundFrequencyCache,
+                       IndexShard indexShard, CommonStatsFlags flags) {
         CommonStatsFlags.Flag[] setFlags = flags.getFlags();
         for (CommonStatsFlags.Flag flag : setFlags) {
             try {
@@ -213,11 +227,15 @@ public class CommonStats implements Writeable, ToXContentFragment {
                         translog = indexShard.translogStats();
                         break;
                     case RequestCache:
-                        requestCache = indexShard.requestCache().stats();
+                        requestCache = indexShard.requestCache().stats(indexShard.hitsRequestCache());
                         break;
                     case Recovery:
                         recoveryStats = indexShard.recoveryStats();
                         break;
+                    case BackgroundFrequencyCache:
+                        backgroundFrequencyCache = indicesBackgroundFrequencyCache == null ? new BackgroundFrequencyCacheStats()
+                            : indicesBackgroundFrequencyCache.getStats(indexShard.shardId());
+                        break;
                     default:
                         throw new IllegalStateException("Unknown Flag: " + flag);
                 }
@@ -244,6 +262,9 @@ public class CommonStats implements Writeable, ToXContentFragment {
         translog = in.readOptionalWriteable(TranslogStats::new);
         requestCache = in.readOptionalWriteable(RequestCacheStats::new);
         recoveryStats = in.readOptionalWriteable(RecoveryStats::new);
+        if (in.getVersion().onOrAfter(Version.V_0_17_0)) {
+            backgroundFrequencyCache = in.readOptionalWriteable(BackgroundFrequencyCacheStats::new);
+        }
     }
 
     @Override
@@ -264,6 +285,9 @@ public class CommonStats implements Writeable, ToXContentFragment {
         out.writeOptionalWriteable(translog);
         out.writeOptionalWriteable(requestCache);
         out.writeOptionalWriteable(recoveryStats);
+        if (out.getVersion().onOrAfter(Version.V_0_17_0)) {
+            out.writeOptionalWriteable(backgroundFrequencyCache);
+        }
     }
 
     public void add(CommonStats stats) {
@@ -396,6 +420,14 @@ public class CommonStats implements Writeable, ToXContentFragment {
         } else {
             recoveryStats.add(stats.getRecoveryStats());
         }
+        if (backgroundFrequencyCache == null) {
+            if (stats.getBackgroundFrequencyCache() != null) {
+                backgroundFrequencyCache = new BackgroundFrequencyCacheStats();
+                backgroundFrequencyCache.add(stats.getBackgroundFrequencyCache());
+            }
+        } else {
+            backgroundFrequencyCache.add(stats.getBackgroundFrequencyCache());
+        }
     }
 
     @Nullable
@@ -478,6 +510,11 @@ public class CommonStats implements Writeable, ToXContentFragment {
         return recoveryStats;
     }
 
+    @Nullable
+    public BackgroundFrequencyCacheStats getBackgroundFrequencyCache() {
+        return backgroundFrequencyCache;
+    }
+
     /**
      * Utility method which computes total memory by adding
      * FieldData, PercolatorCache, Segments (memory, index writer, version map)
@@ -504,7 +541,7 @@ public class CommonStats implements Writeable, ToXContentFragment {
     public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
         final Stream<ToXContent> stream = Arrays.stream(new ToXContent[] {
             docs, store, indexing, get, search, merge, refresh, flush, warmer, queryCache,
-            fieldData, completion, segments, translog, requestCache, recoveryStats})
+            fieldData, completion, segments, translog, requestCache, recoveryStats, backgroundFrequencyCache})
             .filter(Objects::nonNull);
         for (ToXContent toXContent : ((Iterable<ToXContent>)stream::iterator)) {
             toXContent.toXContent(builder, params);
@@ -242,7 +242,8 @@ public class CommonStatsFlags implements Writeable, Cloneable {
         Translog("translog", 13),
         // 14 was previously used for Suggest
         RequestCache("request_cache", 15),
-        Recovery("recovery", 16);
+        Recovery("recovery", 16),
+        BackgroundFrequencyCache("background_frequency_cache", 17);
 
         private final String restName;
         private final int index;
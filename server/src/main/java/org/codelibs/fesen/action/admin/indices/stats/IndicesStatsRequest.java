@@ -262,6 +262,15 @@ public class IndicesStatsRequest extends BroadcastRequest<IndicesStatsRequest> {
         return flags.isSet(Flag.RequestCache);
     }
 
+    public IndicesStatsRequest backgroundFrequencyCache(boolean backgroundFrequencyCache) {
+        flags.set(Flag.BackgroundFrequencyCache, backgroundFrequencyCache);
+        return this;
+    }
+
+    public boolean backgroundFrequencyCache() {
+        return flags.isSet(Flag.BackgroundFrequencyCache);
+    }
+
     public IndicesStatsRequest recovery(boolean recovery) {
         flags.set(Flag.Recovery, recovery);
         return this;
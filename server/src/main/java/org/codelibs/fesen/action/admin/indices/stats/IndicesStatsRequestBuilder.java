@@ -153,6 +153,11 @@ public class IndicesStatsRequestBuilder
         return this;
     }
 
+    public IndicesStatsRequestBuilder setBackgroundFrequencyCache(boolean backgroundFrequencyCache) {
+        request.backgroundFrequencyCache(backgroundFrequencyCache);
+        return this;
+    }
+
     public IndicesStatsRequestBuilder setRecovery(boolean recovery) {
         request.recovery(recovery);
         return this;
@@ -102,7 +102,8 @@ public class TransportIndicesStatsAction extends TransportBroadcastByNodeAction<
             throw new ShardNotFoundException(indexShard.shardId());
         }
 
-        CommonStats commonStats = new CommonStats(indicesService.getIndicesQueryCache(), indexShard, request.flags());
+        CommonStats commonStats = new CommonStats(indicesService.getIndicesQueryCache(), indicesService.getBackgroundFrequencyCache(),
+            indexShard, request.flags());
         CommitStats commitStats;
         SeqNoStats seqNoStats;
         RetentionLeaseStats retentionLeaseStats;
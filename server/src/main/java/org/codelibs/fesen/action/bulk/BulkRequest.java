@@ -51,6 +51,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 /**
  * A bulk request holds an ordered {@link IndexRequest}s, {@link DeleteRequest}s and {@link UpdateRequest}s
@@ -307,11 +308,24 @@ public class BulkRequest extends ActionRequest implements CompositeIndicesReques
                            @Nullable String defaultRouting, @Nullable FetchSourceContext defaultFetchSourceContext,
                            @Nullable String defaultPipeline, @Nullable Boolean defaultRequireAlias, boolean allowExplicitIndex,
                            XContentType xContentType) throws IOException {
+        return add(data, defaultIndex, defaultType, defaultRouting, defaultFetchSourceContext, defaultPipeline, defaultRequireAlias,
+            allowExplicitIndex, xContentType, null, 1);
+    }
+
+    /**
+     * Adds a framed data in binary format, parsing its items on up to {@code parseParallelism} threads forked to
+     * {@code parseExecutor}. Item sources remain slices of {@code data}.
+     */
+    public BulkRequest add(BytesReference data, @Nullable String defaultIndex, @Nullable String defaultType,
+                           @Nullable String defaultRouting, @Nullable FetchSourceContext defaultFetchSourceContext,
+                           @Nullable String defaultPipeline, @Nullable Boolean defaultRequireAlias, boolean allowExplicitIndex,
+                           XContentType xContentType, @Nullable Executor parseExecutor, int parseParallelism) throws IOException {
         String routing = valueOrDefault(defaultRouting, globalRouting);
         String pipeline = valueOrDefault(defaultPipeline, globalPipeline);
         Boolean requireAlias = valueOrDefault(defaultRequireAlias, globalRequireAlias);
-        new BulkRequestParser(true).parse(data, defaultIndex, defaultType, routing, defaultFetchSourceContext, pipeline, requireAlias,
-                allowExplicitIndex, xContentType, this::internalAdd, this::internalAdd, this::add);
+        new BulkRequestParser(true, parseExecutor, parseParallelism).parse(data, defaultIndex, defaultType, routing,
+                defaultFetchSourceContext, pipeline, requireAlias, allowExplicitIndex, xContentType,
+                this::internalAdd, this::internalAdd, this::add);
         return this;
     }
 
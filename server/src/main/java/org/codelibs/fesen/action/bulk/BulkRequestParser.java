@@ -42,8 +42,11 @@ import org.codelibs.fesen.search.fetch.subphase.FetchSourceContext;
 import static org.codelibs.fesen.index.seqno.SequenceNumbers.UNASSIGNED_PRIMARY_TERM;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
@@ -68,14 +71,38 @@ public final class BulkRequestParser {
     private static final ParseField IF_PRIMARY_TERM = new ParseField("if_primary_term");
     private static final ParseField REQUIRE_ALIAS = new ParseField(DocWriteRequest.REQUIRE_ALIAS);
 
+    /**
+     * The minimum number of items parsed by a single task of the parallel path, below which forking is not worth it.
+     */
+    static final int MIN_ITEMS_PER_CHUNK = 64;
+
     private final boolean warnOnTypeUsage;
+    @Nullable
+    private final Executor executor;
+    private final int parallelism;
 
     /**
      * Create a new parser.
      * @param warnOnTypeUsage whether it warns upon types being explicitly specified
      */
     public BulkRequestParser(boolean warnOnTypeUsage) {
+        this(warnOnTypeUsage, null, 1);
+    }
+
+    /**
+     * Create a new parser that parses action/metadata lines and builds the item requests on up to {@code parallelism} threads,
+     * the calling one included, forking to {@code executor}.
+     * @param warnOnTypeUsage whether it warns upon types being explicitly specified
+     * @param executor the executor to fork parsing tasks to, or {@code null} to always parse on the calling thread
+     * @param parallelism the maximum number of threads parsing a single body
+     */
+    public BulkRequestParser(boolean warnOnTypeUsage, @Nullable Executor executor, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1 but was [" + parallelism + "]");
+        }
         this.warnOnTypeUsage = warnOnTypeUsage;
+        this.executor = executor;
+        this.parallelism = parallelism;
     }
 
     private static int findNextMarker(byte marker, int from, BytesReference data) {
@@ -138,61 +165,292 @@ public final class BulkRequestParser {
             Consumer<IndexRequest> indexRequestConsumer,
             Consumer<UpdateRequest> updateRequestConsumer,
             Consumer<DeleteRequest> deleteRequestConsumer) throws IOException {
+        if (executor != null && parallelism > 1) {
+            parseInParallel(data, defaultIndex, defaultType, defaultRouting, defaultFetchSourceContext, defaultPipeline,
+                defaultRequireAlias, allowExplicitIndex, xContentType, indexRequestConsumer, updateRequestConsumer, deleteRequestConsumer);
+            return;
+        }
         XContent xContent = xContentType.xContent();
         int line = 0;
         int from = 0;
         byte marker = xContent.streamSeparator();
-        boolean typesDeprecationLogged = false;
-        // Bulk requests can contain a lot of repeated strings for the index, pipeline and routing parameters. This map is used to
-        // deduplicate duplicate strings parsed for these parameters. While it does not prevent instantiating the duplicate strings, it
-        // reduces their lifetime to the lifetime of this parse call instead of the lifetime of the full bulk request.
-        final Map<String, String> stringDeduplicator = new HashMap<>();
+        final ItemParser itemParser = new ItemParser(data, defaultIndex, defaultType, defaultRouting, defaultFetchSourceContext,
+            defaultPipeline, defaultRequireAlias, allowExplicitIndex, xContentType);
+        try {
+            while (true) {
+                int nextMarker = findNextMarker(marker, from, data);
+                if (nextMarker == -1) {
+                    break;
+                }
+                line++;
+
+                // now parse the action
+                final ActionMetadata metadata = itemParser.parseActionMetadata(line, from, nextMarker);
+                // move pointers
+                from = nextMarker + 1;
+                if (metadata == null) {
+                    continue;
+                }
+
+                if ("delete".equals(metadata.action)) {
+                    deleteRequestConsumer.accept(itemParser.buildDeleteRequest(metadata));
+                } else {
+                    nextMarker = findNextMarker(marker, from, data);
+                    if (nextMarker == -1) {
+                        break;
+                    }
+                    line++;
+
+                    accept(itemParser.buildRequest(metadata, from, nextMarker),
+                        indexRequestConsumer, updateRequestConsumer, deleteRequestConsumer);
+                    // move pointers
+                    from = nextMarker + 1;
+                }
+            }
+        } finally {
+            maybeWarnOnTypes(itemParser.sawTypes);
+        }
+    }
+
+    /**
+     * Parses the bulk body in two passes: a single scan over the line boundaries that only peeks at the action names to pair
+     * action lines with their source lines, followed by parsing the action/metadata lines and building the requests in chunks on
+     * the parser's executor. Sources are slices of {@code data}, exactly as in the sequential path, and requests are handed to the
+     * consumers in the order they appear in the body.
+     */
+    private void parseInParallel(
+            BytesReference data, @Nullable String defaultIndex, @Nullable String defaultType,
+            @Nullable String defaultRouting, @Nullable FetchSourceContext defaultFetchSourceContext,
+            @Nullable String defaultPipeline, @Nullable Boolean defaultRequireAlias, boolean allowExplicitIndex,
+            XContentType xContentType,
+            Consumer<IndexRequest> indexRequestConsumer,
+            Consumer<UpdateRequest> updateRequestConsumer,
+            Consumer<DeleteRequest> deleteRequestConsumer) throws IOException {
+        final XContent xContent = xContentType.xContent();
+        final byte marker = xContent.streamSeparator();
+        final List<ItemSlice> slices = new ArrayList<>();
+        int line = 0;
+        int from = 0;
         while (true) {
             int nextMarker = findNextMarker(marker, from, data);
             if (nextMarker == -1) {
                 break;
             }
             line++;
-
-            // now parse the action
+            final String action;
             try (XContentParser parser = createParser(data, xContent, from, nextMarker)) {
-                // move pointers
-                from = nextMarker + 1;
+                action = readAction(parser, line);
+            }
+            final int actionFrom = from;
+            from = nextMarker + 1;
+            if (action == null) {
+                continue;
+            }
+            if ("delete".equals(action)) {
+                slices.add(new ItemSlice(line, actionFrom, nextMarker, -1, -1));
+            } else {
+                final int sourceMarker = findNextMarker(marker, from, data);
+                // a trailing action line without its source is still parsed so that malformed metadata fails like it does
+                // in the sequential path, but it does not produce a request
+                slices.add(new ItemSlice(line, actionFrom, nextMarker, sourceMarker == -1 ? -1 : from, sourceMarker));
+                if (sourceMarker == -1) {
+                    break;
+                }
+                line++;
+                from = sourceMarker + 1;
+            }
+        }
 
-                // Move to START_OBJECT
-                XContentParser.Token token = parser.nextToken();
-                if (token == null) {
-                    continue;
+        final DocWriteRequest<?>[] requests = new DocWriteRequest<?>[slices.size()];
+        final int itemCount = slices.size();
+        final int chunkCount = Math.max(1, Math.min(parallelism, itemCount / MIN_ITEMS_PER_CHUNK));
+        // deprecation warnings are recorded in the thread context of the thread that logs them, so chunks only report whether
+        // they saw types and the calling thread warns once they are all done
+        final boolean[] sawTypes = new boolean[chunkCount];
+        try {
+            ChunkedExecution.run(executor, parallelism, chunkCount, chunk -> {
+                // string deduplication is not thread-safe, so every chunk gets its own parser
+                final ItemParser itemParser = new ItemParser(data, defaultIndex, defaultType, defaultRouting,
+                    defaultFetchSourceContext, defaultPipeline, defaultRequireAlias, allowExplicitIndex, xContentType);
+                final int start = (int) ((long) itemCount * chunk / chunkCount);
+                final int end = (int) ((long) itemCount * (chunk + 1) / chunkCount);
+                try {
+                    for (int i = start; i < end; i++) {
+                        final ItemSlice slice = slices.get(i);
+                        final ActionMetadata metadata = itemParser.parseActionMetadata(slice.line, slice.actionFrom, slice.actionTo);
+                        if ("delete".equals(metadata.action)) {
+                            requests[i] = itemParser.buildDeleteRequest(metadata);
+                        } else if (slice.sourceFrom != -1) {
+                            requests[i] = itemParser.buildRequest(metadata, slice.sourceFrom, slice.sourceTo);
+                        }
+                    }
+                } finally {
+                    sawTypes[chunk] = itemParser.sawTypes;
                 }
-                if (token != XContentParser.Token.START_OBJECT) {
-                    throw new IllegalArgumentException("Malformed action/metadata line [" + line + "], expected "
-                            + XContentParser.Token.START_OBJECT + " but found [" + token + "]");
+            });
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while parsing bulk request", e);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        } finally {
+            for (boolean chunkSawTypes : sawTypes) {
+                if (chunkSawTypes) {
+                    maybeWarnOnTypes(true);
+                    break;
                 }
-                // Move to FIELD_NAME, that's the action
-                token = parser.nextToken();
-                if (token != XContentParser.Token.FIELD_NAME) {
-                    throw new IllegalArgumentException("Malformed action/metadata line [" + line + "], expected "
-                            + XContentParser.Token.FIELD_NAME + " but found [" + token + "]");
+            }
+        }
+        for (DocWriteRequest<?> request : requests) {
+            accept(request, indexRequestConsumer, updateRequestConsumer, deleteRequestConsumer);
+        }
+    }
+
+    private void maybeWarnOnTypes(boolean sawTypes) {
+        if (warnOnTypeUsage && sawTypes) {
+            deprecationLogger.deprecate("bulk_with_types", RestBulkAction.TYPES_DEPRECATION_MESSAGE);
+        }
+    }
+
+    private static void accept(@Nullable DocWriteRequest<?> request,
+                               Consumer<IndexRequest> indexRequestConsumer,
+                               Consumer<UpdateRequest> updateRequestConsumer,
+                               Consumer<DeleteRequest> deleteRequestConsumer) {
+        if (request instanceof IndexRequest) {
+            indexRequestConsumer.accept((IndexRequest) request);
+        } else if (request instanceof UpdateRequest) {
+            updateRequestConsumer.accept((UpdateRequest) request);
+        } else if (request instanceof DeleteRequest) {
+            deleteRequestConsumer.accept((DeleteRequest) request);
+        }
+    }
+
+    /**
+     * Moves the parser to the action of an action/metadata line and returns its name, or {@code null} if the line is empty.
+     */
+    @Nullable
+    private static String readAction(XContentParser parser, int line) throws IOException {
+        // Move to START_OBJECT
+        XContentParser.Token token = parser.nextToken();
+        if (token == null) {
+            return null;
+        }
+        if (token != XContentParser.Token.START_OBJECT) {
+            throw new IllegalArgumentException("Malformed action/metadata line [" + line + "], expected "
+                    + XContentParser.Token.START_OBJECT + " but found [" + token + "]");
+        }
+        // Move to FIELD_NAME, that's the action
+        token = parser.nextToken();
+        if (token != XContentParser.Token.FIELD_NAME) {
+            throw new IllegalArgumentException("Malformed action/metadata line [" + line + "], expected "
+                    + XContentParser.Token.FIELD_NAME + " but found [" + token + "]");
+        }
+        return parser.currentName();
+    }
+
+    /**
+     * Byte ranges of one bulk item within the body. {@code sourceFrom} is {@code -1} if the item has no source line.
+     */
+    private static final class ItemSlice {
+        final int line;
+        final int actionFrom;
+        final int actionTo;
+        final int sourceFrom;
+        final int sourceTo;
+
+        ItemSlice(int line, int actionFrom, int actionTo, int sourceFrom, int sourceTo) {
+            this.line = line;
+            this.actionFrom = actionFrom;
+            this.actionTo = actionTo;
+            this.sourceFrom = sourceFrom;
+            this.sourceTo = sourceTo;
+        }
+    }
+
+    /**
+     * The parsed content of an action/metadata line.
+     */
+    private static final class ActionMetadata {
+        final String action;
+        String index;
+        String type;
+        String id;
+        String routing;
+        FetchSourceContext fetchSourceContext;
+        String opType;
+        long version = Versions.MATCH_ANY;
+        VersionType versionType = VersionType.INTERNAL;
+        long ifSeqNo = SequenceNumbers.UNASSIGNED_SEQ_NO;
+        long ifPrimaryTerm = UNASSIGNED_PRIMARY_TERM;
+        int retryOnConflict = 0;
+        String pipeline;
+        boolean requireAlias;
+
+        ActionMetadata(String action) {
+            this.action = action;
+        }
+    }
+
+    /**
+     * Parses the items of one bulk body with a fixed set of defaults. Not thread-safe.
+     */
+    private final class ItemParser {
+        private final BytesReference data;
+        private final XContentType xContentType;
+        private final XContent xContent;
+        private final String defaultIndex;
+        private final String defaultType;
+        private final String defaultRouting;
+        private final FetchSourceContext defaultFetchSourceContext;
+        private final String defaultPipeline;
+        private final Boolean defaultRequireAlias;
+        private final boolean allowExplicitIndex;
+        // Bulk requests can contain a lot of repeated strings for the index, pipeline and routing parameters. This map is used to
+        // deduplicate duplicate strings parsed for these parameters. While it does not prevent instantiating the duplicate strings, it
+        // reduces their lifetime to the lifetime of this parse call instead of the lifetime of the full bulk request.
+        private final Map<String, String> stringDeduplicator = new HashMap<>();
+        // whether any action/metadata line specified a type, the caller warns about it on its own thread
+        private boolean sawTypes = false;
+
+        ItemParser(BytesReference data, @Nullable String defaultIndex, @Nullable String defaultType,
+                   @Nullable String defaultRouting, @Nullable FetchSourceContext defaultFetchSourceContext,
+                   @Nullable String defaultPipeline, @Nullable Boolean defaultRequireAlias, boolean allowExplicitIndex,
+                   XContentType xContentType) {
+            this.data = data;
+            this.xContentType = xContentType;
+            this.xContent = xContentType.xContent();
+            this.defaultIndex = defaultIndex;
+            this.defaultType = defaultType;
+            this.defaultRouting = defaultRouting;
+            this.defaultFetchSourceContext = defaultFetchSourceContext;
+            this.defaultPipeline = defaultPipeline;
+            this.defaultRequireAlias = defaultRequireAlias;
+            this.allowExplicitIndex = allowExplicitIndex;
+        }
+
+        /**
+         * Parses the action/metadata line between {@code from} and {@code nextMarker}, returning {@code null} for empty lines.
+         */
+        @Nullable
+        ActionMetadata parseActionMetadata(int line, int from, int nextMarker) throws IOException {
+            try (XContentParser parser = createParser(data, xContent, from, nextMarker)) {
+                final String action = readAction(parser, line);
+                if (action == null) {
+                    return null;
                 }
-                String action = parser.currentName();
-
-                String index = defaultIndex;
-                String type = defaultType;
-                String id = null;
-                String routing = defaultRouting;
-                FetchSourceContext fetchSourceContext = defaultFetchSourceContext;
-                String opType = null;
-                long version = Versions.MATCH_ANY;
-                VersionType versionType = VersionType.INTERNAL;
-                long ifSeqNo = SequenceNumbers.UNASSIGNED_SEQ_NO;
-                long ifPrimaryTerm = UNASSIGNED_PRIMARY_TERM;
-                int retryOnConflict = 0;
-                String pipeline = defaultPipeline;
-                boolean requireAlias = defaultRequireAlias != null && defaultRequireAlias;
+                final ActionMetadata metadata = new ActionMetadata(action);
+                metadata.index = defaultIndex;
+                metadata.type = defaultType;
+                metadata.routing = defaultRouting;
+                metadata.fetchSourceContext = defaultFetchSourceContext;
+                metadata.pipeline = defaultPipeline;
+                metadata.requireAlias = defaultRequireAlias != null && defaultRequireAlias;
 
                 // at this stage, next token can either be END_OBJECT (and use default index and type, with auto generated id)
                 // or START_OBJECT which will have another set of parameters
-                token = parser.nextToken();
+                XContentParser.Token token = parser.nextToken();
 
                 if (token == XContentParser.Token.START_OBJECT) {
                     String currentFieldName = null;
@@ -204,35 +462,32 @@ public final class BulkRequestParser {
                                 if (!allowExplicitIndex) {
                                     throw new IllegalArgumentException("explicit index in bulk is not allowed");
                                 }
-                                index = stringDeduplicator.computeIfAbsent(parser.text(), Function.identity());
+                                metadata.index = stringDeduplicator.computeIfAbsent(parser.text(), Function.identity());
                             } else if (TYPE.match(currentFieldName, parser.getDeprecationHandler())) {
-                                if (warnOnTypeUsage && typesDeprecationLogged == false) {
-                                    deprecationLogger.deprecate("bulk_with_types", RestBulkAction.TYPES_DEPRECATION_MESSAGE);
-                                    typesDeprecationLogged = true;
-                                }
-                                type = stringDeduplicator.computeIfAbsent(parser.text(), Function.identity());
+                                sawTypes = true;
+                                metadata.type = stringDeduplicator.computeIfAbsent(parser.text(), Function.identity());
                             } else if (ID.match(currentFieldName, parser.getDeprecationHandler())) {
-                                id = parser.text();
+                                metadata.id = parser.text();
                             } else if (ROUTING.match(currentFieldName, parser.getDeprecationHandler())) {
-                                routing = stringDeduplicator.computeIfAbsent(parser.text(), Function.identity());
+                                metadata.routing = stringDeduplicator.computeIfAbsent(parser.text(), Function.identity());
                             } else if (OP_TYPE.match(currentFieldName, parser.getDeprecationHandler())) {
-                                opType = parser.text();
+                                metadata.opType = parser.text();
                             } else if (VERSION.match(currentFieldName, parser.getDeprecationHandler())) {
-                                version = parser.longValue();
+                                metadata.version = parser.longValue();
                             } else if (VERSION_TYPE.match(currentFieldName, parser.getDeprecationHandler())) {
-                                versionType = VersionType.fromString(parser.text());
+                                metadata.versionType = VersionType.fromString(parser.text());
                             } else if (IF_SEQ_NO.match(currentFieldName, parser.getDeprecationHandler())) {
-                                ifSeqNo = parser.longValue();
+                                metadata.ifSeqNo = parser.longValue();
                             } else if (IF_PRIMARY_TERM.match(currentFieldName, parser.getDeprecationHandler())) {
-                                ifPrimaryTerm = parser.longValue();
+                                metadata.ifPrimaryTerm = parser.longValue();
                             } else if (RETRY_ON_CONFLICT.match(currentFieldName, parser.getDeprecationHandler())) {
-                                retryOnConflict = parser.intValue();
+                                metadata.retryOnConflict = parser.intValue();
                             } else if (PIPELINE.match(currentFieldName, parser.getDeprecationHandler())) {
-                                pipeline = stringDeduplicator.computeIfAbsent(parser.text(), Function.identity());
+                                metadata.pipeline = stringDeduplicator.computeIfAbsent(parser.text(), Function.identity());
                             } else if (SOURCE.match(currentFieldName, parser.getDeprecationHandler())) {
-                                fetchSourceContext = FetchSourceContext.fromXContent(parser);
+                                metadata.fetchSourceContext = FetchSourceContext.fromXContent(parser);
                             } else if (REQUIRE_ALIAS.match(currentFieldName, parser.getDeprecationHandler())) {
-                                requireAlias = parser.booleanValue();
+                                metadata.requireAlias = parser.booleanValue();
                             } else {
                                 throw new IllegalArgumentException("Action/metadata line [" + line + "] contains an unknown parameter ["
                                         + currentFieldName + "]");
@@ -242,7 +497,7 @@ public final class BulkRequestParser {
                                     "], expected a simple value for field [" + currentFieldName + "] but found [" + token + "]");
                         } else if (token == XContentParser.Token.START_OBJECT && SOURCE.match(currentFieldName,
                                 parser.getDeprecationHandler())) {
-                            fetchSourceContext = FetchSourceContext.fromXContent(parser);
+                            metadata.fetchSourceContext = FetchSourceContext.fromXContent(parser);
                         } else if (token != XContentParser.Token.VALUE_NULL) {
                             throw new IllegalArgumentException("Malformed action/metadata line [" + line
                                     + "], expected a simple value for field [" + currentFieldName + "] but found [" + token + "]");
@@ -252,67 +507,71 @@ public final class BulkRequestParser {
                     throw new IllegalArgumentException("Malformed action/metadata line [" + line + "], expected "
                             + XContentParser.Token.START_OBJECT + " or " + XContentParser.Token.END_OBJECT + " but found [" + token + "]");
                 }
+                return metadata;
+            }
+        }
 
-                if ("delete".equals(action)) {
-                    deleteRequestConsumer.accept(new DeleteRequest(index, type, id).routing(routing)
-                            .version(version).versionType(versionType).setIfSeqNo(ifSeqNo).setIfPrimaryTerm(ifPrimaryTerm));
-                } else {
-                    nextMarker = findNextMarker(marker, from, data);
-                    if (nextMarker == -1) {
-                        break;
-                    }
-                    line++;
-
-                    // we use internalAdd so we don't fork here, this allows us not to copy over the big byte array to small chunks
-                    // of index request.
-                    if ("index".equals(action)) {
-                        if (opType == null) {
-                            indexRequestConsumer.accept(new IndexRequest(index, type, id).routing(routing)
-                                    .version(version).versionType(versionType)
-                                    .setPipeline(pipeline).setIfSeqNo(ifSeqNo).setIfPrimaryTerm(ifPrimaryTerm)
-                                    .source(sliceTrimmingCarriageReturn(data, from, nextMarker,xContentType), xContentType)
-                                    .setRequireAlias(requireAlias));
-                        } else {
-                            indexRequestConsumer.accept(new IndexRequest(index, type, id).routing(routing)
-                                    .version(version).versionType(versionType)
-                                    .create("create".equals(opType)).setPipeline(pipeline)
-                                    .setIfSeqNo(ifSeqNo).setIfPrimaryTerm(ifPrimaryTerm)
-                                    .source(sliceTrimmingCarriageReturn(data, from, nextMarker, xContentType), xContentType)
-                                    .setRequireAlias(requireAlias));
-                        }
-                    } else if ("create".equals(action)) {
-                        indexRequestConsumer.accept(new IndexRequest(index, type, id).routing(routing)
-                                .version(version).versionType(versionType)
-                                .create(true).setPipeline(pipeline).setIfSeqNo(ifSeqNo).setIfPrimaryTerm(ifPrimaryTerm)
-                                .source(sliceTrimmingCarriageReturn(data, from, nextMarker, xContentType), xContentType)
-                                .setRequireAlias(requireAlias));
-                    } else if ("update".equals(action)) {
-                        if (version != Versions.MATCH_ANY || versionType != VersionType.INTERNAL) {
-                            throw new IllegalArgumentException("Update requests do not support versioning. " +
-                                    "Please use `if_seq_no` and `if_primary_term` instead");
-                        }
-                        UpdateRequest updateRequest = new UpdateRequest(index, type, id).routing(routing).retryOnConflict(retryOnConflict)
-                                .setIfSeqNo(ifSeqNo).setIfPrimaryTerm(ifPrimaryTerm)
-                                .setRequireAlias(requireAlias)
-                                .routing(routing);
-                        try (XContentParser sliceParser = createParser(
-                                sliceTrimmingCarriageReturn(data, from, nextMarker, xContentType), xContent)) {
-                            updateRequest.fromXContent(sliceParser);
-                        }
-                        if (fetchSourceContext != null) {
-                            updateRequest.fetchSource(fetchSourceContext);
-                        }
-                        IndexRequest upsertRequest = updateRequest.upsertRequest();
-                        if (upsertRequest != null) {
-                            upsertRequest.setPipeline(defaultPipeline);
-                        }
+        DeleteRequest buildDeleteRequest(ActionMetadata metadata) {
+            return new DeleteRequest(metadata.index, metadata.type, metadata.id).routing(metadata.routing)
+                    .version(metadata.version).versionType(metadata.versionType)
+                    .setIfSeqNo(metadata.ifSeqNo).setIfPrimaryTerm(metadata.ifPrimaryTerm);
+        }
 
-                        updateRequestConsumer.accept(updateRequest);
-                    }
-                    // move pointers
-                    from = nextMarker + 1;
+        /**
+         * Builds the index, create or update request of {@code metadata} whose source line spans {@code from} to
+         * {@code nextMarker}. Returns {@code null} for unknown actions, which are skipped together with their source line.
+         */
+        @Nullable
+        DocWriteRequest<?> buildRequest(ActionMetadata metadata, int from, int nextMarker) throws IOException {
+            final String action = metadata.action;
+            // we use internalAdd so we don't fork here, this allows us not to copy over the big byte array to small chunks
+            // of index request.
+            if ("index".equals(action)) {
+                if (metadata.opType == null) {
+                    return new IndexRequest(metadata.index, metadata.type, metadata.id).routing(metadata.routing)
+                            .version(metadata.version).versionType(metadata.versionType)
+                            .setPipeline(metadata.pipeline).setIfSeqNo(metadata.ifSeqNo).setIfPrimaryTerm(metadata.ifPrimaryTerm)
+                            .source(sliceTrimmingCarriageReturn(data, from, nextMarker, xContentType), xContentType)
+                            .setRequireAlias(metadata.requireAlias);
+                } else {
+                    return new IndexRequest(metadata.index, metadata.type, metadata.id).routing(metadata.routing)
+                            .version(metadata.version).versionType(metadata.versionType)
+                            .create("create".equals(metadata.opType)).setPipeline(metadata.pipeline)
+                            .setIfSeqNo(metadata.ifSeqNo).setIfPrimaryTerm(metadata.ifPrimaryTerm)
+                            .source(sliceTrimmingCarriageReturn(data, from, nextMarker, xContentType), xContentType)
+                            .setRequireAlias(metadata.requireAlias);
+                }
+            } else if ("create".equals(action)) {
+                return new IndexRequest(metadata.index, metadata.type, metadata.id).routing(metadata.routing)
+                        .version(metadata.version).versionType(metadata.versionType)
+                        .create(true).setPipeline(metadata.pipeline)
+                        .setIfSeqNo(metadata.ifSeqNo).setIfPrimaryTerm(metadata.ifPrimaryTerm)
+                        .source(sliceTrimmingCarriageReturn(data, from, nextMarker, xContentType), xContentType)
+                        .setRequireAlias(metadata.requireAlias);
+            } else if ("update".equals(action)) {
+                if (metadata.version != Versions.MATCH_ANY || metadata.versionType != VersionType.INTERNAL) {
+                    throw new IllegalArgumentException("Update requests do not support versioning. " +
+                            "Please use `if_seq_no` and `if_primary_term` instead");
+                }
+                UpdateRequest updateRequest = new UpdateRequest(metadata.index, metadata.type, metadata.id).routing(metadata.routing)
+                        .retryOnConflict(metadata.retryOnConflict)
+                        .setIfSeqNo(metadata.ifSeqNo).setIfPrimaryTerm(metadata.ifPrimaryTerm)
+                        .setRequireAlias(metadata.requireAlias)
+                        .routing(metadata.routing);
+                try (XContentParser sliceParser = createParser(
+                        sliceTrimmingCarriageReturn(data, from, nextMarker, xContentType), xContent)) {
+                    updateRequest.fromXContent(sliceParser);
+                }
+                if (metadata.fetchSourceContext != null) {
+                    updateRequest.fetchSource(metadata.fetchSourceContext);
+                }
+                IndexRequest upsertRequest = updateRequest.upsertRequest();
+                if (upsertRequest != null) {
+                    upsertRequest.setPipeline(defaultPipeline);
                 }
+                return updateRequest;
             }
+            return null;
         }
     }
 
@@ -0,0 +1,79 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.action.bulk;
+
+import org.codelibs.fesen.common.util.concurrent.EsRejectedExecutionException;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs a fixed number of independent chunks of work on an executor, with the calling thread taking part. The caller claims
+ * chunks like any other worker, so it only ever waits for chunks that are already running elsewhere: a saturated or rejecting
+ * executor degrades to running everything on the calling thread rather than blocking it.
+ */
+final class ChunkedExecution {
+
+    @FunctionalInterface
+    interface Chunk {
+        void run(int chunk) throws Exception;
+    }
+
+    private ChunkedExecution() {}
+
+    /**
+     * Runs {@code chunk} once for every index in {@code [0, chunkCount)} using at most {@code parallelism} threads, including the
+     * calling one. If any chunk fails, the failure of the lowest failing chunk is rethrown once all started chunks completed.
+     */
+    static void run(Executor executor, int parallelism, int chunkCount, Chunk chunk) throws Exception {
+        final Exception[] failures = new Exception[chunkCount];
+        final AtomicInteger nextChunk = new AtomicInteger();
+        final CountDownLatch completed = new CountDownLatch(chunkCount);
+        final Runnable worker = () -> {
+            int current;
+            while ((current = nextChunk.getAndIncrement()) < chunkCount) {
+                try {
+                    chunk.run(current);
+                } catch (Exception e) {
+                    failures[current] = e;
+                } finally {
+                    completed.countDown();
+                }
+            }
+        };
+        final int forked = Math.min(parallelism, chunkCount) - 1;
+        for (int i = 0; i < forked; i++) {
+            try {
+                executor.execute(worker);
+            } catch (EsRejectedExecutionException e) {
+                // the calling thread picks up whatever the rejected worker would have done
+                break;
+            }
+        }
+        worker.run();
+        completed.await();
+        for (Exception failure : failures) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+}
@@ -113,6 +113,8 @@ public class TransportBulkAction extends HandledTransportAction<BulkRequest, Bul
     private final NodeClient client;
     private final IndexNameExpressionResolver indexNameExpressionResolver;
     private static final String DROPPED_ITEM_WITH_AUTO_GENERATED_ID = "auto-generated";
+    // the minimum number of items routed by a single task when resolving the shards of a large bulk in parallel
+    private static final int MIN_ITEMS_PER_ROUTING_CHUNK = 512;
     private final IndexingPressure indexingPressure;
     private final SystemIndices systemIndices;
 
@@ -446,7 +448,7 @@ public class TransportBulkAction extends HandledTransportAction<BulkRequest, Bul
         }
 
         @Override
-        protected void doRun() {
+        protected void doRun() throws Exception {
             assert bulkRequest != null;
             final ClusterState clusterState = observer.setAndGetObservedState();
             if (handleBlockExceptions(clusterState)) {
@@ -516,17 +518,14 @@ public class TransportBulkAction extends HandledTransportAction<BulkRequest, Bul
             }
 
             // first, go over all the requests and create a ShardId -> Operations mapping
+            final ShardId[] shardIds = resolveShardIds(clusterState, concreteIndices);
             Map<ShardId, List<BulkItemRequest>> requestsByShard = new HashMap<>();
-            for (int i = 0; i < bulkRequest.requests.size(); i++) {
-                DocWriteRequest<?> request = bulkRequest.requests.get(i);
-                if (request == null) {
+            for (int i = 0; i < shardIds.length; i++) {
+                if (shardIds[i] == null) {
                     continue;
                 }
-                String concreteIndex = concreteIndices.getConcreteIndex(request.index()).getName();
-                ShardId shardId = clusterService.operationRouting().indexShards(clusterState, concreteIndex, request.id(),
-                    request.routing()).shardId();
-                List<BulkItemRequest> shardRequests = requestsByShard.computeIfAbsent(shardId, shard -> new ArrayList<>());
-                shardRequests.add(new BulkItemRequest(i, request));
+                List<BulkItemRequest> shardRequests = requestsByShard.computeIfAbsent(shardIds[i], shard -> new ArrayList<>());
+                shardRequests.add(new BulkItemRequest(i, bulkRequest.requests.get(i)));
             }
 
             if (requestsByShard.isEmpty()) {
@@ -586,6 +585,35 @@ public class TransportBulkAction extends HandledTransportAction<BulkRequest, Bul
             bulkRequest = null; // allow memory for bulk request items to be reclaimed before all items have been completed
         }
 
+        /**
+         * Resolves the target shard of every remaining item, or {@code null} for items that already failed. Large bulks are routed
+         * in chunks on the write pool, the current thread included, since the routing of an item only depends on the cluster state.
+         */
+        private ShardId[] resolveShardIds(ClusterState clusterState, ConcreteIndices concreteIndices) throws Exception {
+            final List<DocWriteRequest<?>> requests = bulkRequest.requests;
+            final ShardId[] shardIds = new ShardId[requests.size()];
+            final int itemCount = shardIds.length;
+            final int chunkCount;
+            if (itemCount >= 2 * MIN_ITEMS_PER_ROUTING_CHUNK) {
+                chunkCount = Math.max(1, Math.min(threadPool.info(Names.WRITE).getMax(), itemCount / MIN_ITEMS_PER_ROUTING_CHUNK));
+            } else {
+                chunkCount = 1;
+            }
+            ChunkedExecution.run(threadPool.executor(Names.WRITE), chunkCount, chunkCount, chunk -> {
+                final int end = (int) ((long) itemCount * (chunk + 1) / chunkCount);
+                for (int i = (int) ((long) itemCount * chunk / chunkCount); i < end; i++) {
+                    DocWriteRequest<?> request = requests.get(i);
+                    if (request == null) {
+                        continue;
+                    }
+                    String concreteIndex = concreteIndices.getConcreteIndex(request.index()).getName();
+                    shardIds[i] = clusterService.operationRouting().indexShards(clusterState, concreteIndex, request.id(),
+                        request.routing()).shardId();
+                }
+            });
+            return shardIds;
+        }
+
         private boolean handleBlockExceptions(ClusterState state) {
             ClusterBlockException blockException = state.blocks().globalBlockedException(ClusterBlockLevel.WRITE);
             if (blockException != null) {
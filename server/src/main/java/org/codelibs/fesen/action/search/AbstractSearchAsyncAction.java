@@ -37,6 +37,7 @@ import org.codelibs.fesen.common.lease.Releasables;
 import org.codelibs.fesen.common.util.concurrent.AbstractRunnable;
 import org.codelibs.fesen.common.util.concurrent.AtomicArray;
 import org.codelibs.fesen.core.Nullable;
+import org.codelibs.fesen.core.TimeValue;
 import org.codelibs.fesen.index.shard.ShardId;
 import org.codelibs.fesen.search.SearchPhaseResult;
 import org.codelibs.fesen.search.SearchShardTarget;
@@ -44,6 +45,7 @@ import org.codelibs.fesen.search.internal.AliasFilter;
 import org.codelibs.fesen.search.internal.InternalSearchResponse;
 import org.codelibs.fesen.search.internal.SearchContext;
 import org.codelibs.fesen.search.internal.ShardSearchRequest;
+import org.codelibs.fesen.threadpool.Scheduler;
 import org.codelibs.fesen.transport.Transport;
 
 import java.util.ArrayDeque;
@@ -99,6 +101,10 @@ abstract class AbstractSearchAsyncAction<Result extends SearchPhaseResult> exten
     private final int maxConcurrentRequestsPerNode;
     private final Map<String, PendingExecutions> pendingExecutionsPerNode = new ConcurrentHashMap<>();
     private final boolean throttleConcurrentRequests;
+    @Nullable
+    private final ShardRequestHedging hedging;
+    @Nullable
+    private final HedgedShardGroup[] hedgedShardGroups;
 
     private final List<Releasable> releasables = new ArrayList<>();
 
@@ -111,6 +117,19 @@ abstract class AbstractSearchAsyncAction<Result extends SearchPhaseResult> exten
                               SearchTimeProvider timeProvider, ClusterState clusterState,
                               SearchTask task, SearchPhaseResults<Result> resultConsumer, int maxConcurrentRequestsPerNode,
                               SearchResponse.Clusters clusters) {
+        this(name, logger, searchTransportService, nodeIdToConnection, aliasFilter, concreteIndexBoosts, indexRoutings, executor,
+            request, listener, shardsIts, timeProvider, clusterState, task, resultConsumer, maxConcurrentRequestsPerNode, clusters, null);
+    }
+
+    AbstractSearchAsyncAction(String name, Logger logger, SearchTransportService searchTransportService,
+                              BiFunction<String, String, Transport.Connection> nodeIdToConnection,
+                              Map<String, AliasFilter> aliasFilter, Map<String, Float> concreteIndexBoosts,
+                              Map<String, Set<String>> indexRoutings,
+                              Executor executor, SearchRequest request,
+                              ActionListener<SearchResponse> listener, GroupShardsIterator<SearchShardIterator> shardsIts,
+                              SearchTimeProvider timeProvider, ClusterState clusterState,
+                              SearchTask task, SearchPhaseResults<Result> resultConsumer, int maxConcurrentRequestsPerNode,
+                              SearchResponse.Clusters clusters, @Nullable ShardRequestHedging hedging) {
         super(name);
         final List<SearchShardIterator> toSkipIterators = new ArrayList<>();
         final List<SearchShardIterator> iterators = new ArrayList<>();
@@ -145,6 +164,21 @@ abstract class AbstractSearchAsyncAction<Result extends SearchPhaseResult> exten
         this.indexRoutings = indexRoutings;
         this.results = resultConsumer;
         this.clusters = clusters;
+        this.hedging = hedging;
+        if (hedging != null) {
+            this.hedgedShardGroups = new HedgedShardGroup[this.shardsIts.size()];
+            for (int i = 0; i < hedgedShardGroups.length; i++) {
+                hedgedShardGroups[i] = new HedgedShardGroup();
+            }
+            // hedges that are still scheduled when the search completes must not fire anymore
+            addReleasable(() -> {
+                for (HedgedShardGroup group : hedgedShardGroups) {
+                    group.cancelScheduledHedge();
+                }
+            });
+        } else {
+            this.hedgedShardGroups = null;
+        }
     }
 
     @Override
@@ -209,14 +243,37 @@ abstract class AbstractSearchAsyncAction<Result extends SearchPhaseResult> exten
                     throw new SearchPhaseExecutionException(getName(), msg, null, ShardSearchFailure.EMPTY_ARRAY);
                 }
             }
+            beforeInitialShardRequests();
             for (int index = 0; index < shardsIts.size(); index++) {
                 final SearchShardIterator shardRoutings = shardsIts.get(index);
                 assert shardRoutings.skip() == false;
-                performPhaseOnShard(index, shardRoutings, shardRoutings.nextOrNull());
+                final SearchShardTarget shard = shardRoutings.nextOrNull();
+                if (hedgedShardGroups != null && shard != null) {
+                    final HedgedShardGroup group = hedgedShardGroups[index];
+                    synchronized (group) {
+                        group.inFlight++;
+                    }
+                }
+                performPhaseOnShard(index, shardRoutings, shard);
             }
+            afterInitialShardRequests();
         }
     }
 
+    /**
+     * Invoked before the initial request of each shard is sent. Subclasses may hold back the requests passed to
+     * {@link #executePhaseOnShard} until {@link #afterInitialShardRequests()} is invoked, for instance to send all requests that
+     * target the same node in a single message.
+     */
+    protected void beforeInitialShardRequests() {}
+
+    /**
+     * Invoked once the initial request of each shard was passed to {@link #executePhaseOnShard}. Requests that are retried on
+     * another copy of a shard, or that are delayed because of {@code max_concurrent_shard_requests}, may be passed to
+     * {@link #executePhaseOnShard} afterwards.
+     */
+    protected void afterInitialShardRequests() {}
+
     void skipShard(SearchShardIterator iterator) {
         successfulOps.incrementAndGet();
         skippedOps.incrementAndGet();
@@ -225,6 +282,11 @@ abstract class AbstractSearchAsyncAction<Result extends SearchPhaseResult> exten
     }
 
     private void performPhaseOnShard(final int shardIndex, final SearchShardIterator shardIt, final SearchShardTarget shard) {
+        performPhaseOnShard(shardIndex, shardIt, shard, false);
+    }
+
+    private void performPhaseOnShard(final int shardIndex, final SearchShardIterator shardIt, final SearchShardTarget shard,
+                                     final boolean hedge) {
         /*
          * We capture the thread that this phase is starting on. When we are called back after executing the phase, we are either on the
          * same thread (because we never went async, or the same thread was selected from the thread pool) or a different thread. If we
@@ -246,7 +308,7 @@ abstract class AbstractSearchAsyncAction<Result extends SearchPhaseResult> exten
                             @Override
                             public void innerOnResponse(Result result) {
                                 try {
-                                    onShardResult(result, shardIt);
+                                    onShardResponse(shardIndex, result, shardIt, hedge);
                                 } finally {
                                     executeNext(pendingExecutions, thread);
                                 }
@@ -261,6 +323,9 @@ abstract class AbstractSearchAsyncAction<Result extends SearchPhaseResult> exten
                                 }
                             }
                         });
+                    if (hedge == false) {
+                        maybeScheduleHedge(shardIndex, shardIt, shard);
+                    }
                 } catch (final Exception e) {
                     try {
                         /*
@@ -281,6 +346,91 @@ abstract class AbstractSearchAsyncAction<Result extends SearchPhaseResult> exten
         }
     }
 
+    private void onShardResponse(final int shardIndex, final Result result, final SearchShardIterator shardIt, final boolean hedge) {
+        if (hedgedShardGroups == null) {
+            onShardResult(result, shardIt);
+            return;
+        }
+        final HedgedShardGroup group = hedgedShardGroups[shardIndex];
+        final boolean won;
+        synchronized (group) {
+            group.inFlight--;
+            won = group.completed == false;
+            if (won) {
+                group.completed = true;
+                // the requests that are still in flight lost the race, they are accounted for together with this response
+                group.abandoned = group.inFlight;
+                group.cancelScheduledHedge();
+            }
+        }
+        if (won == false) {
+            releaseAbandonedResult(result);
+            return;
+        }
+        if (hedge) {
+            hedging.onHedgedRequestWon();
+        }
+        onShardResult(result, shardIt);
+    }
+
+    /**
+     * Schedules sending the shard request to another copy of the shard in case the request that was just sent to the given
+     * shard is too slow.
+     */
+    private void maybeScheduleHedge(final int shardIndex, final SearchShardIterator shardIt, final SearchShardTarget shard) {
+        if (hedgedShardGroups == null) {
+            return;
+        }
+        final TimeValue delay = hedging.delay(shard.getNodeId());
+        if (delay == null) {
+            return;
+        }
+        final HedgedShardGroup group = hedgedShardGroups[shardIndex];
+        synchronized (group) {
+            if (group.completed || group.hedged || group.scheduledHedge != null || shardIt.remaining() == 0) {
+                return;
+            }
+            group.scheduledHedge = hedging.schedule(() -> fork(() -> sendHedge(shardIndex, shardIt)), delay);
+        }
+    }
+
+    private void sendHedge(final int shardIndex, final SearchShardIterator shardIt) {
+        final HedgedShardGroup group = hedgedShardGroups[shardIndex];
+        final SearchShardTarget shard;
+        synchronized (group) {
+            group.scheduledHedge = null;
+            if (group.completed || group.hedged) {
+                return;
+            }
+            shard = shardIt.nextOrNull();
+            if (shard == null) {
+                return;
+            }
+            group.hedged = true;
+            group.inFlight++;
+        }
+        hedging.onHedgedRequest();
+        if (logger.isTraceEnabled()) {
+            logger.trace("{}: hedging [{}] on [{}]", shardIt.shardId(), request, shard);
+        }
+        performPhaseOnShard(shardIndex, shardIt, shard, true);
+    }
+
+    /**
+     * Releases the reader context of a shard result that arrived after another copy of the same shard already responded.
+     */
+    private void releaseAbandonedResult(final Result result) {
+        if (result.getContextId() != null) {
+            try {
+                final SearchShardTarget searchShardTarget = result.getSearchShardTarget();
+                final Transport.Connection connection = getConnection(searchShardTarget.getClusterAlias(), searchShardTarget.getNodeId());
+                sendReleaseSearchContext(result.getContextId(), connection, searchShardTarget.getOriginalIndices());
+            } catch (Exception e) {
+                logger.trace("failed to release context", e);
+            }
+        }
+    }
+
     /**
      * Sends the request to the actual shard.
      * @param shardIt the shards iterator
@@ -385,11 +535,43 @@ abstract class AbstractSearchAsyncAction<Result extends SearchPhaseResult> exten
     }
 
     private void onShardFailure(final int shardIndex, @Nullable SearchShardTarget shard, final SearchShardIterator shardIt, Exception e) {
-        // we always add the shard failure for a specific shard instance
-        // we do make sure to clean it on a successful response from a shard
-        onShardFailure(shardIndex, shard, e);
-        final SearchShardTarget nextShard = shardIt.nextOrNull();
-        final boolean lastShard = nextShard == null;
+        final SearchShardTarget nextShard;
+        final boolean waitForOtherCopy;
+        if (hedgedShardGroups != null) {
+            final HedgedShardGroup group = hedgedShardGroups[shardIndex];
+            synchronized (group) {
+                if (shard != null) {
+                    group.inFlight--;
+                }
+                if (group.completed) {
+                    // another copy of the shard already responded
+                    return;
+                }
+                waitForOtherCopy = group.inFlight > 0;
+                if (waitForOtherCopy) {
+                    // another copy of the shard is still being searched, so we wait for its response rather than retrying
+                    nextShard = null;
+                } else {
+                    group.cancelScheduledHedge();
+                    nextShard = shardIt.nextOrNull();
+                    if (nextShard == null) {
+                        group.completed = true;
+                    } else {
+                        group.inFlight++;
+                    }
+                }
+            }
+            // we always add the shard failure for a specific shard instance
+            // we do make sure to clean it on a successful response from a shard
+            onShardFailure(shardIndex, shard, e);
+        } else {
+            // we always add the shard failure for a specific shard instance
+            // we do make sure to clean it on a successful response from a shard
+            onShardFailure(shardIndex, shard, e);
+            nextShard = shardIt.nextOrNull();
+            waitForOtherCopy = false;
+        }
+        final boolean lastShard = nextShard == null && waitForOtherCopy == false;
         logger.debug(() -> new ParameterizedMessage("{}: Failed to execute [{}] lastShard [{}]",
             shard != null ? shard : shardIt.shardId(), request, lastShard), e);
         if (lastShard) {
@@ -402,7 +584,7 @@ abstract class AbstractSearchAsyncAction<Result extends SearchPhaseResult> exten
             throw new AssertionError("unexpected higher total ops [" + totalOps + "] compared to expected [" + expectedTotalOps + "]",
                 new SearchPhaseExecutionException(getName(), "Shard failures", null, buildShardFailures()));
         } else {
-            if (lastShard == false) {
+            if (nextShard != null) {
                 performPhaseOnShard(shardIndex, shardIt, nextShard);
             }
         }
@@ -488,17 +670,30 @@ abstract class AbstractSearchAsyncAction<Result extends SearchPhaseResult> exten
         // cause the successor to read a wrong value from successfulOps if second phase is very fast ie. count etc.
         // increment all the "future" shards to update the total ops since we some may work and some may not...
         // and when that happens, we break on total ops, so we must maintain them
-        successfulShardExecution(shardIt);
+        final int abandonedOps;
+        if (hedgedShardGroups != null) {
+            final HedgedShardGroup group = hedgedShardGroups[result.getShardIndex()];
+            synchronized (group) {
+                abandonedOps = group.abandoned;
+            }
+        } else {
+            abandonedOps = 0;
+        }
+        successfulShardExecution(shardIt, abandonedOps);
     }
 
     private void successfulShardExecution(SearchShardIterator shardsIt) {
+        successfulShardExecution(shardsIt, 0);
+    }
+
+    private void successfulShardExecution(SearchShardIterator shardsIt, int abandonedOps) {
         final int remainingOpsOnIterator;
         if (shardsIt.skip()) {
             remainingOpsOnIterator = shardsIt.remaining();
         } else {
             remainingOpsOnIterator = shardsIt.remaining() + 1;
         }
-        final int xTotalOps = totalOps.addAndGet(remainingOpsOnIterator);
+        final int xTotalOps = totalOps.addAndGet(remainingOpsOnIterator + abandonedOps);
         if (xTotalOps == expectedTotalOps) {
             onPhaseDone();
         } else if (xTotalOps > expectedTotalOps) {
@@ -666,6 +861,29 @@ abstract class AbstractSearchAsyncAction<Result extends SearchPhaseResult> exten
         }
     }
 
+    /**
+     * Tracks the requests that are in flight for a single shard when shard requests are hedged. All fields are guarded by the
+     * instance monitor.
+     */
+    private static final class HedgedShardGroup {
+        // the number of copies of the shard that a request was sent to and that did not respond yet
+        private int inFlight;
+        // whether a copy of the shard responded successfully, or all copies failed
+        private boolean completed;
+        // whether the request was already sent to an additional copy of the shard
+        private boolean hedged;
+        // the number of requests that were still in flight when a copy of the shard responded successfully
+        private int abandoned;
+        private Scheduler.Cancellable scheduledHedge;
+
+        synchronized void cancelScheduledHedge() {
+            if (scheduledHedge != null) {
+                scheduledHedge.cancel();
+                scheduledHedge = null;
+            }
+        }
+    }
+
     private static final class PendingExecutions {
         private final int permits;
         private int permitsTaken = 0;
@@ -22,6 +22,7 @@ package org.codelibs.fesen.action.search;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TotalHits;
 import org.codelibs.fesen.action.search.SearchPhaseController.TopDocsStats;
 import org.codelibs.fesen.common.breaker.CircuitBreaker;
 import org.codelibs.fesen.common.breaker.CircuitBreakingException;
@@ -35,6 +36,8 @@ import org.codelibs.fesen.search.SearchShardTarget;
 import org.codelibs.fesen.search.aggregations.InternalAggregations;
 import org.codelibs.fesen.search.aggregations.InternalAggregation.ReduceContextBuilder;
 import org.codelibs.fesen.search.builder.SearchSourceBuilder;
+import org.codelibs.fesen.search.profile.ReduceProfileResult;
+import org.codelibs.fesen.search.profile.SearchProfileShardResults;
 import org.codelibs.fesen.search.query.QuerySearchResult;
 
 import static org.codelibs.fesen.action.search.SearchPhaseController.getTopDocsSize;
@@ -46,7 +49,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
@@ -58,6 +63,12 @@ import java.util.function.Consumer;
  * in the {@link CircuitBreaker#REQUEST} circuit breaker. Before any partial or final reduce, the memory
  * needed to reduce the aggregations is estimated and a {@link CircuitBreakingException} is thrown if it
  * exceeds the maximum memory allowed in this breaker.
+ * <p>
+ * By default partial reductions run one at a time, each of them merging a batch of shard results with the result
+ * of the previous partial reduction. When more concurrent partial reductions are allowed, a batch can be reduced while
+ * other batches are being reduced: each partial reduction merges its batch with the results of all the partial
+ * reductions that completed and are not already being merged, so that partial results are merged in a tree-like
+ * fashion. The results that are left when the last shard result arrives are merged by the final reduction.
  */
 public class QueryPhaseResultConsumer extends ArraySearchPhaseResults<SearchPhaseResult> implements Releasable {
     private static final Logger logger = LogManager.getLogger(QueryPhaseResultConsumer.class);
@@ -89,7 +100,28 @@ public class QueryPhaseResultConsumer extends ArraySearchPhaseResults<SearchPhas
                                     NamedWriteableRegistry namedWriteableRegistry,
                                     int expectedResultSize,
                                     Consumer<Exception> onPartialMergeFailure) {
+        this(request, executor, circuitBreaker, controller, progressListener, namedWriteableRegistry, expectedResultSize, 1,
+            onPartialMergeFailure);
+    }
+
+    /**
+     * Creates a {@link QueryPhaseResultConsumer} that incrementally reduces aggregation results
+     * as shard results are consumed, running up to <code>maxConcurrentReduces</code> partial reductions
+     * concurrently on the provided executor.
+     */
+    public QueryPhaseResultConsumer(SearchRequest request,
+                                    Executor executor,
+                                    CircuitBreaker circuitBreaker,
+                                    SearchPhaseController controller,
+                                    SearchProgressListener progressListener,
+                                    NamedWriteableRegistry namedWriteableRegistry,
+                                    int expectedResultSize,
+                                    int maxConcurrentReduces,
+                                    Consumer<Exception> onPartialMergeFailure) {
         super(expectedResultSize);
+        if (maxConcurrentReduces < 1) {
+            throw new IllegalArgumentException("maxConcurrentReduces must be >= 1 but was [" + maxConcurrentReduces + "]");
+        }
         this.executor = executor;
         this.circuitBreaker = circuitBreaker;
         this.controller = controller;
@@ -104,7 +136,7 @@ public class QueryPhaseResultConsumer extends ArraySearchPhaseResults<SearchPhas
         this.hasTopDocs = source == null || source.size() != 0;
         this.hasAggs = source != null && source.aggregations() != null;
         int batchReduceSize = (hasAggs || hasTopDocs) ? Math.min(request.getBatchedReduceSize(), expectedResultSize)  : expectedResultSize;
-        this.pendingMerges = new PendingMerges(batchReduceSize, request.resolveTrackTotalHitsUpTo());
+        this.pendingMerges = new PendingMerges(batchReduceSize, maxConcurrentReduces, request.resolveTrackTotalHitsUpTo());
     }
 
     @Override
@@ -138,8 +170,16 @@ public class QueryPhaseResultConsumer extends ArraySearchPhaseResults<SearchPhas
             // Add an estimate of the final reduce size
             breakerSize = pendingMerges.addEstimateAndMaybeBreak(pendingMerges.estimateRamBytesUsedForReduce(breakerSize));
         }
+        final long startTime = System.nanoTime();
         SearchPhaseController.ReducedQueryPhase reducePhase = controller.reducedQueryPhase(results.asList(), aggsList,
             topDocsList, topDocsStats, pendingMerges.numReducePhases, false, aggReduceContextBuilder, performFinalReduce);
+        if (reducePhase.shardResults != null) {
+            // profiled searches also report how long the reduction of their results took
+            final ReduceProfileResult reduceProfile = new ReduceProfileResult(pendingMerges.numReducePhases,
+                pendingMerges.partialReduceTime, pendingMerges.maxRunningTasks, System.nanoTime() - startTime);
+            reducePhase = reducePhase.withShardResults(
+                new SearchProfileShardResults(reducePhase.shardResults.getShardResults(), reduceProfile));
+        }
         if (hasAggs) {
             // Update the circuit breaker to replace the estimation with the serialized size of the newly reduced result
             long finalSize = reducePhase.aggregations.getSerializedSize() - breakerSize;
@@ -155,19 +195,21 @@ public class QueryPhaseResultConsumer extends ArraySearchPhaseResults<SearchPhas
     private MergeResult partialReduce(QuerySearchResult[] toConsume,
                                       List<SearchShard> emptyResults,
                                       TopDocsStats topDocsStats,
-                                      MergeResult lastMerge,
-                                      int numReducePhases) {
+                                      List<MergeResult> lastMerges) {
         // ensure consistent ordering
         Arrays.sort(toConsume, Comparator.comparingInt(QuerySearchResult::getShardIndex));
 
-        for (QuerySearchResult result : toConsume) {
-            topDocsStats.add(result.topDocs(), result.searchTimedOut(), result.terminatedEarly());
+        // concurrent partial reductions share the stats
+        synchronized (topDocsStats) {
+            for (QuerySearchResult result : toConsume) {
+                topDocsStats.add(result.topDocs(), result.searchTimedOut(), result.terminatedEarly());
+            }
         }
 
         final TopDocs newTopDocs;
         if (hasTopDocs) {
             List<TopDocs> topDocsList = new ArrayList<>();
-            if (lastMerge != null) {
+            for (MergeResult lastMerge : lastMerges) {
                 topDocsList.add(lastMerge.reducedTopDocs);
             }
             for (QuerySearchResult result : toConsume) {
@@ -185,7 +227,7 @@ public class QueryPhaseResultConsumer extends ArraySearchPhaseResults<SearchPhas
         final InternalAggregations newAggs;
         if (hasAggs) {
             List<InternalAggregations> aggsList = new ArrayList<>();
-            if (lastMerge != null) {
+            for (MergeResult lastMerge : lastMerges) {
                 aggsList.add(lastMerge.reducedAggs);
             }
             for (QuerySearchResult result : toConsume) {
@@ -196,14 +238,13 @@ public class QueryPhaseResultConsumer extends ArraySearchPhaseResults<SearchPhas
             newAggs = null;
         }
         List<SearchShard> processedShards = new ArrayList<>(emptyResults);
-        if (lastMerge != null) {
+        for (MergeResult lastMerge : lastMerges) {
             processedShards.addAll(lastMerge.processedShards);
         }
         for (QuerySearchResult result : toConsume) {
             SearchShardTarget target = result.getSearchShardTarget();
             processedShards.add(new SearchShard(target.getClusterAlias(), target.getShardId()));
         }
-        progressListener.notifyPartialReduce(processedShards, topDocsStats.getTotalHits(), newAggs, numReducePhases);
         // we leave the results un-serialized because serializing is slow but we compute the serialized
         // size as an estimate of the memory used by the newly reduced aggregations.
         long serializedSize = hasAggs ? newAggs.getSerializedSize() : 0;
@@ -216,6 +257,7 @@ public class QueryPhaseResultConsumer extends ArraySearchPhaseResults<SearchPhas
 
     private class PendingMerges implements Releasable {
         private final int batchReduceSize;
+        private final int maxConcurrentReduces;
         private final List<QuerySearchResult> buffer = new ArrayList<>();
         private final List<SearchShard> emptyResults = new ArrayList<>();
         // the memory that is accounted in the circuit breaker for this consumer
@@ -225,16 +267,22 @@ public class QueryPhaseResultConsumer extends ArraySearchPhaseResults<SearchPhas
         private volatile long maxAggsCurrentBufferSize = 0;
 
         private final ArrayDeque<MergeTask> queue = new ArrayDeque<>();
-        private final AtomicReference<MergeTask> runningTask = new AtomicReference<>();
+        private final Set<MergeTask> runningTasks = new HashSet<>();
         private final AtomicReference<Exception> failure = new AtomicReference<>();
 
         private final TopDocsStats topDocsStats;
-        private volatile MergeResult mergeResult;
+        // the results of the partial reduces that are not merged yet
+        private final List<MergeResult> mergeResults = new ArrayList<>();
         private volatile boolean hasPartialReduce;
         private volatile int numReducePhases;
+        // the total time spent in partial reduces, in nanoseconds
+        private volatile long partialReduceTime;
+        // the maximum number of partial reduces that ran concurrently
+        private volatile int maxRunningTasks;
 
-        PendingMerges(int batchReduceSize, int trackTotalHitsUpTo) {
+        PendingMerges(int batchReduceSize, int maxConcurrentReduces, int trackTotalHitsUpTo) {
             this.batchReduceSize = batchReduceSize;
+            this.maxConcurrentReduces = maxConcurrentReduces;
             this.topDocsStats = new TopDocsStats(trackTotalHitsUpTo);
         }
 
@@ -258,8 +306,8 @@ public class QueryPhaseResultConsumer extends ArraySearchPhaseResults<SearchPhas
             return failure.get() != null;
         }
 
-        boolean hasPendingMerges() {
-            return queue.isEmpty() == false || runningTask.get() != null;
+        synchronized boolean hasPendingMerges() {
+            return queue.isEmpty() == false || runningTasks.isEmpty() == false;
         }
 
         void sortBuffer() {
@@ -355,57 +403,74 @@ public class QueryPhaseResultConsumer extends ArraySearchPhaseResults<SearchPhas
                 circuitBreakerBytes = 0;
             }
             failure.compareAndSet(null, exc);
-            MergeTask task = runningTask.get();
-            runningTask.compareAndSet(task, null);
+            List<MergeTask> toCancels = new ArrayList<>(runningTasks);
+            runningTasks.clear();
             onPartialMergeFailure.accept(exc);
-            List<MergeTask> toCancels = new ArrayList<>();
-            if (task != null) {
-                toCancels.add(task);
-            }
             queue.stream().forEach(toCancels::add);
             queue.clear();
-            mergeResult = null;
+            mergeResults.clear();
             for (MergeTask toCancel : toCancels) {
                 toCancel.cancel();
             }
         }
 
-        private void onAfterMerge(MergeTask task, MergeResult newResult, long estimatedSize) {
+        private void onAfterMerge(MergeTask task, MergeResult newResult, long estimatedSize, long tookInNanos) {
+            final TotalHits totalHits;
             synchronized (this) {
                 if (hasFailure()) {
                     return;
                 }
-                runningTask.compareAndSet(task, null);
-                mergeResult = newResult;
+                runningTasks.remove(task);
+                mergeResults.add(newResult);
+                partialReduceTime += tookInNanos;
                 if (hasAggs) {
                     // Update the circuit breaker to remove the size of the source aggregations
                     // and replace the estimation with the serialized size of the newly reduced result.
-                    long newSize = mergeResult.estimatedSize - estimatedSize;
+                    long newSize = newResult.estimatedSize - estimatedSize;
                     addWithoutBreaking(newSize);
                     logger.trace("aggs partial reduction [{}->{}] max [{}]",
-                        estimatedSize, mergeResult.estimatedSize, maxAggsCurrentBufferSize);
+                        estimatedSize, newResult.estimatedSize, maxAggsCurrentBufferSize);
+                }
+                // partial reduces that run concurrently update the stats under their own lock
+                synchronized (topDocsStats) {
+                    totalHits = topDocsStats.getTotalHits();
                 }
-                task.consumeListener();
             }
+            // the listeners may be slow or re-enter the consumer so they are called without holding the lock
+            progressListener.notifyPartialReduce(newResult.processedShards, totalHits, newResult.reducedAggs, task.reducePhase);
+            task.consumeListener();
         }
 
         private void tryExecuteNext() {
-            final MergeTask task;
-            synchronized (this) {
-                if (queue.isEmpty()
-                        || hasFailure()
-                        || runningTask.get() != null) {
-                    return;
+            while (true) {
+                final MergeTask task;
+                synchronized (this) {
+                    if (queue.isEmpty()
+                            || hasFailure()
+                            || runningTasks.size() >= maxConcurrentReduces) {
+                        return;
+                    }
+                    task = queue.poll();
+                    // the task merges its buffer with the results of the partial reduces that completed so far
+                    task.lastMerges = new ArrayList<>(mergeResults);
+                    mergeResults.clear();
+                    task.reducePhase = ++numReducePhases;
+                    runningTasks.add(task);
+                    maxRunningTasks = Math.max(maxRunningTasks, runningTasks.size());
                 }
-                task = queue.poll();
-                runningTask.compareAndSet(null, task);
+                executeMerge(task);
             }
+        }
 
+        private void executeMerge(MergeTask task) {
             executor.execute(new AbstractRunnable() {
                 @Override
                 protected void doRun() {
-                    final MergeResult thisMergeResult = mergeResult;
-                    long estimatedTotalSize = (thisMergeResult != null ? thisMergeResult.estimatedSize : 0) + task.aggsBufferSize;
+                    long estimatedTotalSize = task.aggsBufferSize;
+                    for (MergeResult lastMerge : task.lastMerges) {
+                        estimatedTotalSize += lastMerge.estimatedSize;
+                    }
+                    final long startTime = System.nanoTime();
                     final MergeResult newMerge;
                     try {
                         final QuerySearchResult[] toConsume = task.consumeBuffer();
@@ -415,13 +480,12 @@ public class QueryPhaseResultConsumer extends ArraySearchPhaseResults<SearchPhas
                         long estimatedMergeSize = estimateRamBytesUsedForReduce(estimatedTotalSize);
                         addEstimateAndMaybeBreak(estimatedMergeSize);
                         estimatedTotalSize += estimatedMergeSize;
-                        ++ numReducePhases;
-                        newMerge = partialReduce(toConsume, task.emptyResults, topDocsStats, thisMergeResult, numReducePhases);
+                        newMerge = partialReduce(toConsume, task.emptyResults, topDocsStats, task.lastMerges);
                     } catch (Exception t) {
                         onMergeFailure(t);
                         return;
                     }
-                    onAfterMerge(task, newMerge, estimatedTotalSize);
+                    onAfterMerge(task, newMerge, estimatedTotalSize, System.nanoTime() - startTime);
                     tryExecuteNext();
                 }
 
@@ -433,8 +497,10 @@ public class QueryPhaseResultConsumer extends ArraySearchPhaseResults<SearchPhas
         }
 
         public synchronized TopDocsStats consumeTopDocsStats() {
-            for (QuerySearchResult result : buffer) {
-                topDocsStats.add(result.topDocs(), result.searchTimedOut(), result.terminatedEarly());
+            synchronized (topDocsStats) {
+                for (QuerySearchResult result : buffer) {
+                    topDocsStats.add(result.topDocs(), result.searchTimedOut(), result.terminatedEarly());
+                }
             }
             return topDocsStats;
         }
@@ -444,7 +510,7 @@ public class QueryPhaseResultConsumer extends ArraySearchPhaseResults<SearchPhas
                 return Collections.emptyList();
             }
             List<TopDocs> topDocsList = new ArrayList<>();
-            if (mergeResult != null) {
+            for (MergeResult mergeResult : mergeResults) {
                 topDocsList.add(mergeResult.reducedTopDocs);
             }
             for (QuerySearchResult result : buffer) {
@@ -460,7 +526,7 @@ public class QueryPhaseResultConsumer extends ArraySearchPhaseResults<SearchPhas
                 return Collections.emptyList();
             }
             List<InternalAggregations> aggsList = new ArrayList<>();
-            if (mergeResult != null) {
+            for (MergeResult mergeResult : mergeResults) {
                 aggsList.add(mergeResult.reducedAggs);
             }
             for (QuerySearchResult result : buffer) {
@@ -490,6 +556,9 @@ public class QueryPhaseResultConsumer extends ArraySearchPhaseResults<SearchPhas
         private QuerySearchResult[] buffer;
         private long aggsBufferSize;
         private Runnable next;
+        // the results of previous partial reduces that this task merges, set when the task starts
+        private List<MergeResult> lastMerges;
+        private int reducePhase;
 
         private MergeTask(QuerySearchResult[] buffer, long aggsBufferSize, List<SearchShard> emptyResults, Runnable next) {
             this.buffer = buffer;
@@ -581,6 +581,14 @@ public final class SearchPhaseController {
             this.sortValueFormats = sortValueFormats;
         }
 
+        /**
+         * Returns a copy of this reduced phase with the provided profile results.
+         */
+        ReducedQueryPhase withShardResults(SearchProfileShardResults shardResults) {
+            return new ReducedQueryPhase(totalHits, fetchHits, maxScore, timedOut, terminatedEarly, suggest, aggregations, shardResults,
+                sortedTopDocs, sortValueFormats, numReducePhases, size, from, isEmptyResult);
+        }
+
         /**
          * Creates a new search response from the given merged hits.
          * @see #merge(boolean, ReducedQueryPhase, Collection, IntFunction)
@@ -603,8 +611,22 @@ public final class SearchPhaseController {
                                                    SearchRequest request,
                                                    int numShards,
                                                    Consumer<Exception> onPartialMergeFailure) {
+        return newSearchPhaseResults(executor, circuitBreaker, listener, request, numShards, 1, onPartialMergeFailure);
+    }
+
+    /**
+     * Returns a new {@link QueryPhaseResultConsumer} instance that reduces search responses incrementally,
+     * running up to <code>maxConcurrentReduces</code> partial reductions concurrently.
+     */
+    QueryPhaseResultConsumer newSearchPhaseResults(Executor executor,
+                                                   CircuitBreaker circuitBreaker,
+                                                   SearchProgressListener listener,
+                                                   SearchRequest request,
+                                                   int numShards,
+                                                   int maxConcurrentReduces,
+                                                   Consumer<Exception> onPartialMergeFailure) {
         return new QueryPhaseResultConsumer(request, executor, circuitBreaker,
-            this,  listener, namedWriteableRegistry, numShards, onPartialMergeFailure);
+            this,  listener, namedWriteableRegistry, numShards, maxConcurrentReduces, onPartialMergeFailure);
     }
 
     static final class TopDocsStats {
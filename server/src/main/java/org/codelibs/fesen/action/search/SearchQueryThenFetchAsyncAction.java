@@ -21,9 +21,11 @@ package org.codelibs.fesen.action.search;
 
 import org.apache.logging.log4j.Logger;
 import org.apache.lucene.search.TopFieldDocs;
+import org.codelibs.fesen.Version;
 import org.codelibs.fesen.action.ActionListener;
 import org.codelibs.fesen.cluster.ClusterState;
 import org.codelibs.fesen.cluster.routing.GroupShardsIterator;
+import org.codelibs.fesen.core.Nullable;
 import org.codelibs.fesen.search.SearchPhaseResult;
 import org.codelibs.fesen.search.SearchShardTarget;
 import org.codelibs.fesen.search.internal.AliasFilter;
@@ -34,6 +36,9 @@ import org.codelibs.fesen.transport.Transport;
 
 import static org.codelibs.fesen.action.search.SearchPhaseController.getTopDocsSize;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Executor;
@@ -49,6 +54,11 @@ class SearchQueryThenFetchAsyncAction extends AbstractSearchAsyncAction<SearchPh
     private final int trackTotalHitsUpTo;
     private volatile BottomSortValuesCollector bottomSortCollector;
 
+    private final boolean batchQueryPhase;
+    private final Object pendingShardRequestsMutex = new Object();
+    // the shard requests that are held back per node while the initial shard requests are sent, guarded by pendingShardRequestsMutex
+    private Map<String, List<PendingShardRequest>> pendingShardRequests;
+
     SearchQueryThenFetchAsyncAction(final Logger logger, final SearchTransportService searchTransportService,
                                     final BiFunction<String, String, Transport.Connection> nodeIdToConnection,
                                     final Map<String, AliasFilter> aliasFilter,
@@ -58,14 +68,16 @@ class SearchQueryThenFetchAsyncAction extends AbstractSearchAsyncAction<SearchPh
                                     final ActionListener<SearchResponse> listener,
                                     final GroupShardsIterator<SearchShardIterator> shardsIts,
                                     final TransportSearchAction.SearchTimeProvider timeProvider,
-                                    ClusterState clusterState, SearchTask task, SearchResponse.Clusters clusters) {
+                                    ClusterState clusterState, SearchTask task, SearchResponse.Clusters clusters,
+                                    @Nullable ShardRequestHedging hedging, boolean batchQueryPhase) {
         super("query", logger, searchTransportService, nodeIdToConnection, aliasFilter, concreteIndexBoosts, indexRoutings,
                 executor, request, listener, shardsIts, timeProvider, clusterState, task,
-                resultConsumer, request.getMaxConcurrentShardRequests(), clusters);
+                resultConsumer, request.getMaxConcurrentShardRequests(), clusters, hedging);
         this.topDocsSize = getTopDocsSize(request);
         this.trackTotalHitsUpTo = request.resolveTrackTotalHitsUpTo();
         this.searchPhaseController = searchPhaseController;
         this.progressListener = task.getProgressListener();
+        this.batchQueryPhase = batchQueryPhase;
 
         // register the release of the query consumer to free up the circuit breaker memory
         // at the end of the search
@@ -80,9 +92,79 @@ class SearchQueryThenFetchAsyncAction extends AbstractSearchAsyncAction<SearchPh
                                        final SearchShardTarget shard,
                                        final SearchActionListener<SearchPhaseResult> listener) {
         ShardSearchRequest request = rewriteShardSearchRequest(super.buildShardSearchRequest(shardIt));
+        if (shard.getClusterAlias() == null) {
+            synchronized (pendingShardRequestsMutex) {
+                if (pendingShardRequests != null) {
+                    pendingShardRequests.computeIfAbsent(shard.getNodeId(), n -> new ArrayList<>())
+                        .add(new PendingShardRequest(request, listener));
+                    return;
+                }
+            }
+        }
         getSearchTransport().sendExecuteQuery(getConnection(shard.getClusterAlias(), shard.getNodeId()), request, getTask(), listener);
     }
 
+    @Override
+    protected void beforeInitialShardRequests() {
+        if (batchQueryPhase) {
+            synchronized (pendingShardRequestsMutex) {
+                pendingShardRequests = new HashMap<>();
+            }
+        }
+    }
+
+    @Override
+    protected void afterInitialShardRequests() {
+        final Map<String, List<PendingShardRequest>> requestsPerNode;
+        synchronized (pendingShardRequestsMutex) {
+            requestsPerNode = pendingShardRequests;
+            pendingShardRequests = null;
+        }
+        if (requestsPerNode != null) {
+            for (Map.Entry<String, List<PendingShardRequest>> entry : requestsPerNode.entrySet()) {
+                sendShardRequests(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Sends the given shard requests to a node of the local cluster, in a single message if the node supports it.
+     */
+    private void sendShardRequests(String nodeId, List<PendingShardRequest> requests) {
+        final Transport.Connection connection;
+        try {
+            connection = getConnection(null, nodeId);
+        } catch (Exception e) {
+            for (PendingShardRequest request : requests) {
+                request.listener.onFailure(e);
+            }
+            return;
+        }
+        if (requests.size() == 1 || connection.getVersion().before(Version.V_0_17_0)) {
+            for (PendingShardRequest request : requests) {
+                try {
+                    getSearchTransport().sendExecuteQuery(connection, request.request, getTask(), request.listener);
+                } catch (Exception e) {
+                    request.listener.onFailure(e);
+                }
+            }
+        } else {
+            final List<ShardSearchRequest> shardRequests = new ArrayList<>(requests.size());
+            final List<SearchActionListener<SearchPhaseResult>> listeners = new ArrayList<>(requests.size());
+            for (PendingShardRequest request : requests) {
+                shardRequests.add(request.request);
+                listeners.add(request.listener);
+            }
+            try {
+                getSearchTransport().sendExecuteQueryBatch(connection, shardRequests, getTask(), listeners);
+            } catch (Exception e) {
+                for (SearchActionListener<SearchPhaseResult> listener : listeners) {
+                    listener.onFailure(e);
+                }
+            }
+        }
+    }
+
     @Override
     protected void onShardGroupFailure(int shardIndex, SearchShardTarget shardTarget, Exception exc) {
         progressListener.notifyQueryFailure(shardIndex, shardTarget, exc);
@@ -131,4 +213,14 @@ class SearchQueryThenFetchAsyncAction extends AbstractSearchAsyncAction<SearchPh
         }
         return request;
     }
+
+    private static final class PendingShardRequest {
+        private final ShardSearchRequest request;
+        private final SearchActionListener<SearchPhaseResult> listener;
+
+        private PendingShardRequest(ShardSearchRequest request, SearchActionListener<SearchPhaseResult> listener) {
+            this.request = request;
+            this.listener = listener;
+        }
+    }
 }
@@ -82,6 +82,11 @@ public class SearchRequest extends ActionRequest implements IndicesRequest.Repla
 
     private Boolean requestCache;
 
+    private Boolean concurrentSegmentSearch;
+
+    @Nullable
+    private TimeValue hedgeAfter;
+
     private Boolean allowPartialSearchResults;
 
     private Scroll scroll;
@@ -170,6 +175,8 @@ public class SearchRequest extends ActionRequest implements IndicesRequest.Repla
         this.preference = searchRequest.preference;
         this.preFilterShardSize = searchRequest.preFilterShardSize;
         this.requestCache = searchRequest.requestCache;
+        this.concurrentSegmentSearch = searchRequest.concurrentSegmentSearch;
+        this.hedgeAfter = searchRequest.hedgeAfter;
         this.routing = searchRequest.routing;
         this.scroll = searchRequest.scroll;
         this.searchType = searchRequest.searchType;
@@ -224,6 +231,10 @@ public class SearchRequest extends ActionRequest implements IndicesRequest.Repla
         if (in.getVersion().onOrAfter(Version.V_7_0_0)) {
             ccsMinimizeRoundtrips = in.readBoolean();
         }
+        if (in.getVersion().onOrAfter(Version.V_0_17_0)) {
+            concurrentSegmentSearch = in.readOptionalBoolean();
+            hedgeAfter = in.readOptionalTimeValue();
+        }
     }
 
     @Override
@@ -258,6 +269,10 @@ public class SearchRequest extends ActionRequest implements IndicesRequest.Repla
         if (out.getVersion().onOrAfter(Version.V_7_0_0)) {
             out.writeBoolean(ccsMinimizeRoundtrips);
         }
+        if (out.getVersion().onOrAfter(Version.V_0_17_0)) {
+            out.writeOptionalBoolean(concurrentSegmentSearch);
+            out.writeOptionalTimeValue(hedgeAfter);
+        }
     }
 
     @Override
@@ -545,6 +560,35 @@ public class SearchRequest extends ActionRequest implements IndicesRequest.Repla
         return this.requestCache;
     }
 
+    /**
+     * Sets if the segments of each shard may be searched concurrently. By default (not set, or null,
+     * will default to the index level setting if concurrent segment search is enabled or not).
+     */
+    public SearchRequest concurrentSegmentSearch(Boolean concurrentSegmentSearch) {
+        this.concurrentSegmentSearch = concurrentSegmentSearch;
+        return this;
+    }
+
+    public Boolean concurrentSegmentSearch() {
+        return this.concurrentSegmentSearch;
+    }
+
+    /**
+     * Sets how long a shard request may take before the same request is also sent to another copy of the shard,
+     * the search then uses whichever copy responds first. A negative value disables hedging for this request. By
+     * default (not set, or null) the cluster level setting decides if shard requests are hedged, with a delay that
+     * is derived from the response times of each node.
+     */
+    public SearchRequest hedgeAfter(@Nullable TimeValue hedgeAfter) {
+        this.hedgeAfter = hedgeAfter;
+        return this;
+    }
+
+    @Nullable
+    public TimeValue hedgeAfter() {
+        return this.hedgeAfter;
+    }
+
     /**
      * Sets if this request should allow partial results. (If method is not called,
      * will default to the cluster level setting).
@@ -696,6 +740,8 @@ public class SearchRequest extends ActionRequest implements IndicesRequest.Repla
                 Objects.equals(preference, that.preference) &&
                 Objects.equals(source, that.source) &&
                 Objects.equals(requestCache, that.requestCache)  &&
+                Objects.equals(concurrentSegmentSearch, that.concurrentSegmentSearch) &&
+                Objects.equals(hedgeAfter, that.hedgeAfter) &&
                 Objects.equals(scroll, that.scroll) &&
                 Arrays.equals(types, that.types) &&
                 Objects.equals(batchedReduceSize, that.batchedReduceSize) &&
@@ -712,7 +758,8 @@ public class SearchRequest extends ActionRequest implements IndicesRequest.Repla
     public int hashCode() {
         return Objects.hash(searchType, Arrays.hashCode(indices), routing, preference, source, requestCache,
                 scroll, Arrays.hashCode(types), indicesOptions, batchedReduceSize, maxConcurrentShardRequests, preFilterShardSize,
-                allowPartialSearchResults, localClusterAlias, absoluteStartMillis, ccsMinimizeRoundtrips);
+                allowPartialSearchResults, localClusterAlias, absoluteStartMillis, ccsMinimizeRoundtrips, concurrentSegmentSearch,
+                hedgeAfter);
     }
 
     @Override
@@ -725,6 +772,8 @@ public class SearchRequest extends ActionRequest implements IndicesRequest.Repla
                 ", routing='" + routing + '\'' +
                 ", preference='" + preference + '\'' +
                 ", requestCache=" + requestCache +
+                ", concurrentSegmentSearch=" + concurrentSegmentSearch +
+                ", hedgeAfter=" + hedgeAfter +
                 ", scroll=" + scroll +
                 ", maxConcurrentShardRequests=" + maxConcurrentShardRequests +
                 ", batchedReduceSize=" + batchedReduceSize +
@@ -531,6 +531,24 @@ public class SearchRequestBuilder extends ActionRequestBuilder<SearchRequest, Se
         return this;
     }
 
+    /**
+     * Sets if the segments of each shard may be searched concurrently. By default (not set, or null,
+     * will default to the index level setting if concurrent segment search is enabled or not).
+     */
+    public SearchRequestBuilder setConcurrentSegmentSearch(Boolean concurrentSegmentSearch) {
+        request.concurrentSegmentSearch(concurrentSegmentSearch);
+        return this;
+    }
+
+    /**
+     * Sets how long a shard request may take before it is also sent to another copy of the shard. A negative value
+     * disables hedging. By default (not set, or null, will default to the cluster level setting).
+     */
+    public SearchRequestBuilder setHedgeAfter(TimeValue hedgeAfter) {
+        request.hedgeAfter(hedgeAfter);
+        return this;
+    }
+
 
     /**
      * Sets if this request should allow partial results.  (If method is not called,
@@ -24,10 +24,13 @@ import org.codelibs.fesen.Version;
 import org.codelibs.fesen.action.ActionResponse;
 import org.codelibs.fesen.common.ParseField;
 import org.codelibs.fesen.common.Strings;
+import org.codelibs.fesen.common.collect.Iterators;
 import org.codelibs.fesen.common.io.stream.StreamInput;
 import org.codelibs.fesen.common.io.stream.StreamOutput;
 import org.codelibs.fesen.common.io.stream.Writeable;
+import org.codelibs.fesen.common.xcontent.ChunkedToXContent;
 import org.codelibs.fesen.common.xcontent.StatusToXContentObject;
+import org.codelibs.fesen.common.xcontent.ToXContent;
 import org.codelibs.fesen.common.xcontent.ToXContentFragment;
 import org.codelibs.fesen.common.xcontent.XContentBuilder;
 import org.codelibs.fesen.common.xcontent.XContentParser;
@@ -50,6 +53,8 @@ import static org.codelibs.fesen.common.xcontent.XContentParserUtils.ensureExpec
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -59,7 +64,7 @@ import java.util.function.Supplier;
 /**
  * A response of a search request.
  */
-public class SearchResponse extends ActionResponse implements StatusToXContentObject {
+public class SearchResponse extends ActionResponse implements StatusToXContentObject, ChunkedToXContent {
 
     private static final ParseField SCROLL_ID = new ParseField("_scroll_id");
     private static final ParseField POINT_IN_TIME_ID = new ParseField("pit_id");
@@ -263,7 +268,25 @@ public class SearchResponse extends ActionResponse implements StatusToXContentOb
         return builder;
     }
 
+    /**
+     * Returns the pieces {@link #toXContent(XContentBuilder, Params)} is made of. The hits and the top level aggregations
+     * are rendered one at a time so that large responses can be sent to the client incrementally.
+     */
+    @Override
+    public Iterator<ToXContent> toXContentChunked(Params params) {
+        return Iterators.concat(
+            Collections.<ToXContent>singletonList((builder, p) -> headerToXContent(builder.startObject(), p)).iterator(),
+            internalResponse.toXContentChunked(params),
+            Collections.<ToXContent>singletonList((builder, p) -> builder.endObject()).iterator());
+    }
+
     public XContentBuilder innerToXContent(XContentBuilder builder, Params params) throws IOException {
+        headerToXContent(builder, params);
+        internalResponse.toXContent(builder, params);
+        return builder;
+    }
+
+    private XContentBuilder headerToXContent(XContentBuilder builder, Params params) throws IOException {
         if (scrollId != null) {
             builder.field(SCROLL_ID.getPreferredName(), scrollId);
         }
@@ -281,7 +304,6 @@ public class SearchResponse extends ActionResponse implements StatusToXContentOb
         RestActions.buildBroadcastShardsHeader(builder, params, getTotalShards(), getSuccessfulShards(), getSkippedShards(),
             getFailedShards(), getShardFailures());
         clusters.toXContent(builder, params);
-        internalResponse.toXContent(builder, params);
         return builder;
     }
 
@@ -19,7 +19,9 @@
 
 package org.codelibs.fesen.action.search;
 
+import org.codelibs.fesen.common.collect.Iterators;
 import org.codelibs.fesen.common.io.stream.StreamOutput;
+import org.codelibs.fesen.common.xcontent.ToXContent;
 import org.codelibs.fesen.common.xcontent.ToXContentFragment;
 import org.codelibs.fesen.common.xcontent.XContentBuilder;
 import org.codelibs.fesen.search.SearchHits;
@@ -30,6 +32,7 @@ import org.codelibs.fesen.search.suggest.Suggest;
 
 import java.io.IOException;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.Map;
 
 /**
@@ -116,6 +119,25 @@ public class SearchResponseSections implements ToXContentFragment {
         return builder;
     }
 
+    /**
+     * Returns the pieces {@link #toXContent(XContentBuilder, Params)} is made of, so that the hits and the top level
+     * aggregations can be serialized one at a time.
+     */
+    public final Iterator<ToXContent> toXContentChunked(Params params) {
+        return Iterators.concat(
+            hits.toXContentChunked(params),
+            aggregations == null ? Collections.emptyIterator() : aggregations.toXContentChunked(params),
+            Collections.<ToXContent>singletonList((builder, p) -> {
+                if (suggest != null) {
+                    suggest.toXContent(builder, p);
+                }
+                if (profileResults != null) {
+                    profileResults.toXContent(builder, p);
+                }
+                return builder;
+            }).iterator());
+    }
+
     protected void writeTo(StreamOutput out) throws IOException {
         throw new UnsupportedOperationException();
     }
@@ -30,7 +30,9 @@ import org.codelibs.fesen.cluster.node.DiscoveryNode;
 import org.codelibs.fesen.common.io.stream.StreamInput;
 import org.codelibs.fesen.common.io.stream.StreamOutput;
 import org.codelibs.fesen.common.io.stream.Writeable;
+import org.codelibs.fesen.common.util.concurrent.AtomicArray;
 import org.codelibs.fesen.common.util.concurrent.ConcurrentCollections;
+import org.codelibs.fesen.common.util.concurrent.CountDown;
 import org.codelibs.fesen.core.Nullable;
 import org.codelibs.fesen.search.SearchPhaseResult;
 import org.codelibs.fesen.search.SearchService;
@@ -46,6 +48,8 @@ import org.codelibs.fesen.search.internal.ShardSearchRequest;
 import org.codelibs.fesen.search.query.QuerySearchRequest;
 import org.codelibs.fesen.search.query.QuerySearchResult;
 import org.codelibs.fesen.search.query.ScrollQuerySearchResult;
+import org.codelibs.fesen.tasks.Task;
+import org.codelibs.fesen.tasks.TaskId;
 import org.codelibs.fesen.threadpool.ThreadPool;
 import org.codelibs.fesen.transport.RemoteClusterService;
 import org.codelibs.fesen.transport.Transport;
@@ -57,10 +61,13 @@ import org.codelibs.fesen.transport.TransportResponse;
 import org.codelibs.fesen.transport.TransportService;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.function.BiFunction;
+import java.util.stream.Collectors;
 
 /**
  * An encapsulation of {@link org.codelibs.fesen.search.SearchService} operations exposed through
@@ -73,6 +80,7 @@ public class SearchTransportService {
     public static final String CLEAR_SCROLL_CONTEXTS_ACTION_NAME = "indices:data/read/search[clear_scroll_contexts]";
     public static final String DFS_ACTION_NAME = "indices:data/read/search[phase/dfs]";
     public static final String QUERY_ACTION_NAME = "indices:data/read/search[phase/query]";
+    public static final String QUERY_BATCH_ACTION_NAME = "indices:data/read/search[phase/query/batch]";
     public static final String QUERY_ID_ACTION_NAME = "indices:data/read/search[phase/query/id]";
     public static final String QUERY_SCROLL_ACTION_NAME = "indices:data/read/search[phase/query/scroll]";
     public static final String QUERY_FETCH_SCROLL_ACTION_NAME = "indices:data/read/search[phase/query+fetch/scroll]";
@@ -140,6 +148,53 @@ public class SearchTransportService {
                 new ConnectionCountingHandler<>(handler, reader, clientConnections, connection.getNode().getId()));
     }
 
+    /**
+     * Sends the query phase requests of several shards that are allocated on the same node in a single message. The node
+     * executes them concurrently and responds once all of them completed, each listener is then notified of the result or
+     * failure of its own shard.
+     */
+    @SuppressWarnings("unchecked")
+    public void sendExecuteQueryBatch(Transport.Connection connection, final List<ShardSearchRequest> requests, SearchTask task,
+                                      final List<SearchActionListener<SearchPhaseResult>> listeners) {
+        assert requests.size() == listeners.size() : "expected one listener per request";
+        final boolean fetchDocuments = requests.get(0).numberOfShards() == 1;
+        final Writeable.Reader<SearchPhaseResult> reader = fetchDocuments ? QueryFetchSearchResult::new : QuerySearchResult::new;
+
+        final List<ActionListener<SearchPhaseResult>> handlers = new ArrayList<>(listeners.size());
+        for (SearchActionListener<SearchPhaseResult> listener : listeners) {
+            handlers.add(responseWrapper.apply(connection, listener));
+        }
+        transportService.sendChildRequest(connection, QUERY_BATCH_ACTION_NAME, new NodeQueryRequest(requests), task,
+            new ConnectionCountingHandler<>(new ActionListener<NodeQueryResponse>() {
+                @Override
+                public void onResponse(NodeQueryResponse response) {
+                    notifyShardListeners(response, handlers);
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    for (ActionListener<SearchPhaseResult> handler : handlers) {
+                        handler.onFailure(e);
+                    }
+                }
+            }, in -> new NodeQueryResponse(in, reader), clientConnections, connection.getNode().getId()));
+    }
+
+    /**
+     * Notifies the listener of each shard of a {@link NodeQueryRequest} of the result or failure of that shard.
+     */
+    static void notifyShardListeners(NodeQueryResponse response, List<? extends ActionListener<SearchPhaseResult>> listeners) {
+        assert response.size() == listeners.size() : "expected one result per request";
+        for (int i = 0; i < listeners.size(); i++) {
+            final Exception failure = response.getFailure(i);
+            if (failure != null) {
+                listeners.get(i).onFailure(failure);
+            } else {
+                listeners.get(i).onResponse(response.getResult(i));
+            }
+        }
+    }
+
     public void sendExecuteQuery(Transport.Connection connection, final QuerySearchRequest request, SearchTask task,
                                  final SearchActionListener<QuerySearchResult> listener) {
         transportService.sendChildRequest(connection, QUERY_ID_ACTION_NAME, request, task,
@@ -280,6 +335,132 @@ public class SearchTransportService {
         }
     }
 
+    /**
+     * The query phase requests of several shards that are allocated on the same node.
+     */
+    static class NodeQueryRequest extends TransportRequest {
+        private final List<ShardSearchRequest> shardRequests;
+
+        NodeQueryRequest(List<ShardSearchRequest> shardRequests) {
+            this.shardRequests = Objects.requireNonNull(shardRequests);
+        }
+
+        NodeQueryRequest(StreamInput in) throws IOException {
+            super(in);
+            shardRequests = in.readList(ShardSearchRequest::new);
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            super.writeTo(out);
+            out.writeList(shardRequests);
+        }
+
+        List<ShardSearchRequest> shardRequests() {
+            return shardRequests;
+        }
+
+        @Override
+        public Task createTask(long id, String type, String action, TaskId parentTaskId, Map<String, String> headers) {
+            return new SearchShardTask(id, type, action, getDescription(), parentTaskId, headers);
+        }
+
+        @Override
+        public String getDescription() {
+            return shardRequests.stream().map(r -> r.shardId().toString()).collect(Collectors.joining(",", "shardIds[", "]"));
+        }
+    }
+
+    /**
+     * The result or failure of each shard of a {@link NodeQueryRequest}, in the order of its shard requests.
+     */
+    static class NodeQueryResponse extends TransportResponse {
+        private final SearchPhaseResult[] results;
+        private final Exception[] failures;
+
+        NodeQueryResponse(SearchPhaseResult[] results, Exception[] failures) {
+            assert results.length == failures.length;
+            this.results = results;
+            this.failures = failures;
+        }
+
+        NodeQueryResponse(StreamInput in, Writeable.Reader<SearchPhaseResult> reader) throws IOException {
+            super(in);
+            final int size = in.readVInt();
+            results = new SearchPhaseResult[size];
+            failures = new Exception[size];
+            for (int i = 0; i < size; i++) {
+                if (in.readBoolean()) {
+                    results[i] = reader.read(in);
+                } else {
+                    failures[i] = in.readException();
+                }
+            }
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeVInt(results.length);
+            for (int i = 0; i < results.length; i++) {
+                if (failures[i] == null) {
+                    out.writeBoolean(true);
+                    results[i].writeTo(out);
+                } else {
+                    out.writeBoolean(false);
+                    out.writeException(failures[i]);
+                }
+            }
+        }
+
+        int size() {
+            return results.length;
+        }
+
+        SearchPhaseResult getResult(int index) {
+            return results[index];
+        }
+
+        @Nullable
+        Exception getFailure(int index) {
+            return failures[index];
+        }
+    }
+
+    /**
+     * Executes the query phase of each shard of the given request. The shards are searched concurrently on the search thread
+     * pool, and the listener is notified once all of them completed.
+     */
+    static void executeQueryPhase(SearchService searchService, NodeQueryRequest request, boolean keepStatesInContext,
+                                  SearchShardTask task, ActionListener<NodeQueryResponse> listener) {
+        final List<ShardSearchRequest> shardRequests = request.shardRequests();
+        final AtomicArray<SearchPhaseResult> results = new AtomicArray<>(shardRequests.size());
+        final AtomicArray<Exception> failures = new AtomicArray<>(shardRequests.size());
+        final CountDown countDown = new CountDown(shardRequests.size());
+        for (int i = 0; i < shardRequests.size(); i++) {
+            final int index = i;
+            searchService.executeQueryPhase(shardRequests.get(i), keepStatesInContext, task, new ActionListener<SearchPhaseResult>() {
+                @Override
+                public void onResponse(SearchPhaseResult result) {
+                    results.set(index, result);
+                    onShardDone();
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    failures.set(index, e);
+                    onShardDone();
+                }
+
+                private void onShardDone() {
+                    if (countDown.countDown()) {
+                        listener.onResponse(new NodeQueryResponse(results.toArray(new SearchPhaseResult[results.length()]),
+                            failures.toArray(new Exception[failures.length()])));
+                    }
+                }
+            });
+        }
+    }
+
     static boolean keepStatesInContext(Version version) {
         return version.before(Version.V_7_10_0);
     }
@@ -322,6 +503,12 @@ public class SearchTransportService {
         TransportActionProxy.registerProxyActionWithDynamicResponseType(transportService, QUERY_ACTION_NAME,
             (request) -> ((ShardSearchRequest)request).numberOfShards() == 1 ? QueryFetchSearchResult::new : QuerySearchResult::new);
 
+        transportService.registerRequestHandler(QUERY_BATCH_ACTION_NAME, ThreadPool.Names.SAME, NodeQueryRequest::new,
+            (request, channel, task) -> {
+                executeQueryPhase(searchService, request, keepStatesInContext(channel.getVersion()), (SearchShardTask) task,
+                    new ChannelActionListener<>(channel, QUERY_BATCH_ACTION_NAME, request));
+            });
+
         transportService.registerRequestHandler(QUERY_ID_ACTION_NAME, ThreadPool.Names.SAME, QuerySearchRequest::new,
             (request, channel, task) -> {
                 searchService.executeQueryPhase(request, (SearchShardTask) task,
@@ -0,0 +1,109 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.codelibs.fesen.action.search;
+
+import org.codelibs.fesen.common.settings.ClusterSettings;
+import org.codelibs.fesen.core.Nullable;
+import org.codelibs.fesen.core.TimeValue;
+import org.codelibs.fesen.node.ResponseCollectorService;
+import org.codelibs.fesen.threadpool.Scheduler;
+import org.codelibs.fesen.threadpool.ThreadPool;
+
+import java.util.Optional;
+
+/**
+ * Decides when a shard request of a search is hedged, ie. sent to another copy of the shard because the original request
+ * takes longer than expected. The search then uses the response of whichever copy responds first.
+ * <p>
+ * The delay is either set on the request with {@link SearchRequest#hedgeAfter()}, or derived from the average response time
+ * that the {@link ResponseCollectorService} observed for the node the original request was sent to. In the latter case no
+ * request is hedged until a response time has been observed for the node.
+ */
+final class ShardRequestHedging {
+
+    private final Scheduler scheduler;
+    private final ResponseCollectorService responseCollectorService;
+    @Nullable
+    private final TimeValue fixedDelay;
+    private final TimeValue minDelay;
+    private final double responseTimeFactor;
+
+    ShardRequestHedging(Scheduler scheduler, ResponseCollectorService responseCollectorService, @Nullable TimeValue fixedDelay,
+                        TimeValue minDelay, double responseTimeFactor) {
+        this.scheduler = scheduler;
+        this.responseCollectorService = responseCollectorService;
+        this.fixedDelay = fixedDelay;
+        this.minDelay = minDelay;
+        this.responseTimeFactor = responseTimeFactor;
+    }
+
+    /**
+     * Returns how shard requests of the given search request are hedged, or {@code null} if they are not hedged. Scroll and
+     * point in time searches are never hedged since their shard requests create reader contexts that outlive the search.
+     */
+    @Nullable
+    static ShardRequestHedging create(SearchRequest request, ClusterSettings clusterSettings, ThreadPool threadPool,
+                                      ResponseCollectorService responseCollectorService) {
+        if (request.scroll() != null || request.pointInTimeBuilder() != null) {
+            return null;
+        }
+        final TimeValue hedgeAfter = request.hedgeAfter();
+        if (hedgeAfter != null) {
+            if (hedgeAfter.nanos() < 0) {
+                return null;
+            }
+        } else if (clusterSettings.get(TransportSearchAction.HEDGED_REQUESTS_ENABLED_SETTING) == false) {
+            return null;
+        }
+        return new ShardRequestHedging(threadPool, responseCollectorService, hedgeAfter,
+            clusterSettings.get(TransportSearchAction.HEDGED_REQUESTS_MIN_DELAY_SETTING),
+            clusterSettings.get(TransportSearchAction.HEDGED_REQUESTS_RESPONSE_TIME_FACTOR_SETTING));
+    }
+
+    /**
+     * Returns how long to wait for a shard request sent to the given node before hedging it, or {@code null} if the
+     * request should not be hedged.
+     */
+    @Nullable
+    TimeValue delay(String nodeId) {
+        if (fixedDelay != null) {
+            return fixedDelay;
+        }
+        final Optional<ResponseCollectorService.ComputedNodeStats> stats = responseCollectorService.getNodeStatistics(nodeId);
+        if (stats.isPresent() == false) {
+            return null;
+        }
+        final long delayNanos = (long) (stats.get().responseTime * responseTimeFactor);
+        return delayNanos > minDelay.nanos() ? TimeValue.timeValueNanos(delayNanos) : minDelay;
+    }
+
+    Scheduler.Cancellable schedule(Runnable hedge, TimeValue delay) {
+        return scheduler.schedule(hedge, delay, ThreadPool.Names.SAME);
+    }
+
+    void onHedgedRequest() {
+        responseCollectorService.onHedgedRequest();
+    }
+
+    void onHedgedRequestWon() {
+        responseCollectorService.onHedgedRequestWon();
+    }
+}
@@ -108,6 +108,40 @@ public class TransportSearchAction extends HandledTransportAction<SearchRequest,
     public static final Setting<Long> SHARD_COUNT_LIMIT_SETTING = Setting.longSetting(
             "action.search.shard_count.limit", Long.MAX_VALUE, 1L, Property.Dynamic, Property.NodeScope);
 
+    /**
+     * The maximum number of partial reductions of shard results that a single search request can run concurrently.
+     * Partial reductions are serialized by default, higher values reduce batches of shard results in a tree-like fashion.
+     */
+    public static final Setting<Integer> MAX_CONCURRENT_PARTIAL_REDUCES_SETTING = Setting.intSetting(
+            "action.search.max_concurrent_partial_reduces", 1, 1, Property.Dynamic, Property.NodeScope);
+
+    /**
+     * Whether shard requests of searches that don't set {@link SearchRequest#hedgeAfter()} are hedged, ie. also sent to another
+     * copy of the shard once they take noticeably longer than the node they were sent to usually takes to respond.
+     */
+    public static final Setting<Boolean> HEDGED_REQUESTS_ENABLED_SETTING = Setting.boolSetting(
+            "action.search.hedged_requests.enabled", false, Property.Dynamic, Property.NodeScope);
+
+    /**
+     * The minimum time to wait before hedging a shard request when the delay is derived from response times.
+     */
+    public static final Setting<TimeValue> HEDGED_REQUESTS_MIN_DELAY_SETTING = Setting.timeSetting(
+            "action.search.hedged_requests.min_delay", TimeValue.timeValueMillis(10), TimeValue.ZERO,
+            Property.Dynamic, Property.NodeScope);
+
+    /**
+     * The multiple of the average response time of a node after which a shard request sent to it is hedged.
+     */
+    public static final Setting<Double> HEDGED_REQUESTS_RESPONSE_TIME_FACTOR_SETTING = Setting.doubleSetting(
+            "action.search.hedged_requests.response_time_factor", 2.0, 1.0, Property.Dynamic, Property.NodeScope);
+
+    /**
+     * Whether the query phase requests of the shards that a search targets on the same node are sent to that node in a single
+     * message rather than one message per shard.
+     */
+    public static final Setting<Boolean> BATCHED_QUERY_PHASE_SETTING = Setting.boolSetting(
+            "action.search.batched_query_phase", false, Property.Dynamic, Property.NodeScope);
+
     private final NodeClient client;
     private final ThreadPool threadPool;
     private final ClusterService clusterService;
@@ -802,18 +836,23 @@ public class TransportSearchAction extends HandledTransportAction<SearchRequest,
             }, clusters);
         } else {
             final QueryPhaseResultConsumer queryResultConsumer = searchPhaseController.newSearchPhaseResults(executor,
-                circuitBreaker, task.getProgressListener(), searchRequest, shardIterators.size(), exc -> cancelTask(task, exc));
+                circuitBreaker, task.getProgressListener(), searchRequest, shardIterators.size(),
+                clusterService.getClusterSettings().get(MAX_CONCURRENT_PARTIAL_REDUCES_SETTING), exc -> cancelTask(task, exc));
+            final ShardRequestHedging hedging = ShardRequestHedging.create(searchRequest, clusterService.getClusterSettings(),
+                threadPool, searchService.getResponseCollectorService());
             AbstractSearchAsyncAction<? extends SearchPhaseResult> searchAsyncAction;
             switch (searchRequest.searchType()) {
                 case DFS_QUERY_THEN_FETCH:
                     searchAsyncAction = new SearchDfsQueryThenFetchAsyncAction(logger, searchTransportService, connectionLookup,
                         aliasFilter, concreteIndexBoosts, indexRoutings, searchPhaseController,
-                        executor, queryResultConsumer, searchRequest, listener, shardIterators, timeProvider, clusterState, task, clusters);
+                        executor, queryResultConsumer, searchRequest, listener, shardIterators, timeProvider, clusterState, task, clusters,
+                        hedging);
                     break;
                 case QUERY_THEN_FETCH:
                     searchAsyncAction = new SearchQueryThenFetchAsyncAction(logger, searchTransportService, connectionLookup,
                         aliasFilter, concreteIndexBoosts, indexRoutings, searchPhaseController, executor, queryResultConsumer,
-                        searchRequest, listener, shardIterators, timeProvider, clusterState, task, clusters);
+                        searchRequest, listener, shardIterators, timeProvider, clusterState, task, clusters, hedging,
+                        clusterService.getClusterSettings().get(BATCHED_QUERY_PHASE_SETTING));
                     break;
                 default:
                     throw new IllegalStateException("Unknown search type: [" + searchRequest.searchType() + "]");
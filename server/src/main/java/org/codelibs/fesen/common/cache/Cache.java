@@ -23,19 +23,20 @@ import org.codelibs.fesen.common.util.concurrent.ReleasableLock;
 import org.codelibs.fesen.core.Tuple;
 
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.atomic.LongAdder;
-import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
 import java.util.function.ToLongBiFunction;
 
 /**
@@ -46,23 +47,25 @@ import java.util.function.ToLongBiFunction;
  * accept reduced write performance in exchange for easy-to-understand code. Cache statistics for hits, misses and
  * evictions are exposed.
  * <p>
- * The design of the cache is relatively simple. The cache is segmented into 256 segments which are backed by HashMaps.
- * Each segment is protected by a re-entrant read/write lock. The read/write locks permit multiple concurrent readers
- * without contention, and the segments gives us write throughput without impacting readers (so readers are blocked only
- * if they are reading a segment that a writer is writing to).
+ * The design of the cache is relatively simple. The cache is segmented into 256 segments which are backed by
+ * ConcurrentHashMaps. Reads from a segment do not take any lock, while writes to a segment are serialized by a
+ * re-entrant lock so that the segments gives us write throughput without impacting readers.
  * <p>
  * The LRU functionality is backed by a single doubly-linked list chaining the entries in order of insertion. This
- * LRU list is protected by a lock that serializes all writes to it. There are opportunities for improvements
- * here if write throughput is a concern.
- * <ol>
- * <li>LRU list mutations could be inserted into a blocking queue that a single thread is reading from
- * and applying to the LRU list.</li>
- * <li>Promotions could be deferred for entries that were "recently" promoted.</li>
- * <li>Locks on the list could be taken per node being modified instead of globally.</li>
- * </ol>
+ * LRU list is protected by a lock that serializes all writes to it. In order to keep this lock off the read path,
+ * promotions of read entries are deferred: readers record the entries they accessed in small striped buffers, and the
+ * recorded promotions are applied in bulk by whichever thread holds the LRU lock next (a writer, a reader that filled
+ * a buffer, or {@link #refresh()}). The buffers are lossy, so under heavy contention some promotions may be dropped,
+ * which makes the LRU order approximate.
  * <p>
- * Evictions only occur after a mutation to the cache (meaning an entry promotion, a cache insertion, or a manual
- * invalidation) or an explicit call to {@link #refresh()}.
+ * Optionally (see {@link CacheBuilder#setFrequencyBasedAdmission(boolean)}), the cache can use a TinyLFU-style
+ * admission policy: a {@link FrequencySketch} keeps an estimate of how often keys were accessed recently, and an entry
+ * whose insertion exceeds the maximum weight only evicts the least recently used entry if it was accessed at least as
+ * often. Otherwise the new entry is evicted instead. This keeps entries that are hot from being flushed out by scans of
+ * entries that are only used once.
+ * <p>
+ * Evictions only occur after a mutation to the cache (meaning a cache insertion or a manual invalidation), once the
+ * promotions recorded by readers are applied, or on an explicit call to {@link #refresh()}.
  *
  * @param <K> The type of the keys
  * @param <V> The type of the values
@@ -97,6 +100,12 @@ public class Cache<K, V> {
     private RemovalListener<K, V> removalListener = notification -> {
     };
 
+    // the access frequencies of keys, only set if the cache uses frequency-based admission
+    private FrequencySketch frequencySketch;
+
+    // the hash under which accesses of a key are counted by the frequency sketch
+    private ToIntFunction<K> frequencyHash = Object::hashCode;
+
     // use CacheBuilder to construct
     Cache() {
     }
@@ -144,6 +153,12 @@ public class Cache<K, V> {
         this.removalListener = removalListener;
     }
 
+    void setFrequencyBasedAdmission(ToIntFunction<K> frequencyHash) {
+        Objects.requireNonNull(frequencyHash);
+        this.frequencySketch = new FrequencySketch();
+        this.frequencyHash = frequencyHash;
+    }
+
     /**
      * The relative time used to track time-based evictions.
      *
@@ -165,6 +180,8 @@ public class Cache<K, V> {
         final V value;
         long writeTime;
         volatile long accessTime;
+        // the weight when the entry was last linked, so that values whose weight changes do not skew the weight of the cache
+        long weight;
         Entry<K, V> before;
         Entry<K, V> after;
         State state = State.NEW;
@@ -179,19 +196,18 @@ public class Cache<K, V> {
     /**
      * A cache segment.
      * <p>
-     * A CacheSegment is backed by a HashMap and is protected by a read/write lock.
+     * A CacheSegment is backed by a ConcurrentHashMap that can be read without locking, mutations are protected by a lock.
      *
      * @param <K> the type of the keys
      * @param <V> the type of the values
      */
     private static class CacheSegment<K, V> {
-        // read/write lock protecting mutations to the segment
-        ReadWriteLock segmentLock = new ReentrantReadWriteLock();
+        // lock protecting mutations to the segment
+        ReentrantLock segmentLock = new ReentrantLock();
 
-        ReleasableLock readLock = new ReleasableLock(segmentLock.readLock());
-        ReleasableLock writeLock = new ReleasableLock(segmentLock.writeLock());
+        ReleasableLock writeLock = new ReleasableLock(segmentLock);
 
-        Map<K, CompletableFuture<Entry<K, V>>> map = new HashMap<>();
+        volatile Map<K, CompletableFuture<Entry<K, V>>> map = new ConcurrentHashMap<>();
 
         SegmentStats segmentStats = new SegmentStats();
 
@@ -206,10 +222,7 @@ public class Cache<K, V> {
          * @return the entry if there was one, otherwise null
          */
         Entry<K, V> get(K key, long now, Predicate<Entry<K, V>> isExpired, Consumer<Entry<K, V>> onExpiration) {
-            CompletableFuture<Entry<K, V>> future;
-            try (ReleasableLock ignored = readLock.acquire()) {
-                future = map.get(key);
-            }
+            CompletableFuture<Entry<K, V>> future = map.get(key);
             if (future != null) {
                 Entry<K, V> entry;
                 try {
@@ -247,18 +260,21 @@ public class Cache<K, V> {
         Tuple<Entry<K, V>, Entry<K, V>> put(K key, V value, long now) {
             Entry<K, V> entry = new Entry<>(key, value, now);
             Entry<K, V> existing = null;
+            CompletableFuture<Entry<K, V>> future;
             try (ReleasableLock ignored = writeLock.acquire()) {
+                future = map.put(key, CompletableFuture.completedFuture(entry));
+            }
+            // wait for a pending load of the replaced entry outside of the segment lock: the loading thread may need this
+            // segment lock to evict entries once its value is loaded
+            if (future != null) {
                 try {
-                    CompletableFuture<Entry<K, V>> future = map.put(key, CompletableFuture.completedFuture(entry));
-                    if (future != null) {
-                        existing = future.handle((ok, ex) -> {
-                            if (ok != null) {
-                                return ok;
-                            } else {
-                                return null;
-                            }
-                        }).get();
-                    }
+                    existing = future.handle((ok, ex) -> {
+                        if (ok != null) {
+                            return ok;
+                        } else {
+                            return null;
+                        }
+                    }).get();
                 } catch (ExecutionException | InterruptedException e) {
                     throw new IllegalStateException(e);
                 }
@@ -350,6 +366,70 @@ public class Cache<K, V> {
     // lock protecting mutations to the LRU list
     private final ReleasableLock lruLock = new ReleasableLock(new ReentrantLock());
 
+    /**
+     * A lossy buffer of entries that were read but whose promotion in the LRU list has not been applied yet. Readers append
+     * to it without locking, and it is drained under the LRU lock.
+     */
+    private static final class ReadBuffer<K, V> {
+        static final int SIZE = 16;
+        static final int MASK = SIZE - 1;
+
+        final AtomicReferenceArray<Entry<K, V>> slots = new AtomicReferenceArray<>(SIZE);
+        final AtomicLong writeCounter = new AtomicLong();
+        volatile long readCounter;
+
+        /**
+         * Records a read of the given entry. The read is dropped if the buffer is full or if another reader claimed the
+         * same slot concurrently.
+         *
+         * @return true if the buffer is full and should be drained
+         */
+        boolean offer(Entry<K, V> entry) {
+            final long head = readCounter;
+            final long tail = writeCounter.get();
+            final long size = tail - head;
+            if (size >= SIZE) {
+                return true;
+            }
+            if (writeCounter.compareAndSet(tail, tail + 1)) {
+                slots.lazySet((int) (tail & MASK), entry);
+                return size + 1 >= SIZE;
+            }
+            return false;
+        }
+
+        void drainTo(Consumer<Entry<K, V>> consumer) {
+            long head = readCounter;
+            final long tail = writeCounter.get();
+            for (; head < tail; head++) {
+                final int index = (int) (head & MASK);
+                final Entry<K, V> entry = slots.get(index);
+                if (entry == null) {
+                    // the reader that claimed this slot has not published its entry yet, it will be drained next time
+                    break;
+                }
+                slots.lazySet(index, null);
+                consumer.accept(entry);
+            }
+            readCounter = head;
+        }
+    }
+
+    private static final int NUMBER_OF_READ_BUFFERS = Math.min(64, ceilingPowerOfTwo(Runtime.getRuntime().availableProcessors()));
+
+    // read buffers striped by thread, allocated lazily as many caches are only ever read from a few threads
+    private final AtomicReferenceArray<ReadBuffer<K, V>> readBuffers = new AtomicReferenceArray<>(NUMBER_OF_READ_BUFFERS);
+
+    private final Consumer<Entry<K, V>> onRead = entry -> {
+        // entries that are not linked yet are promoted by the thread that inserts them
+        if (entry.state == State.EXISTING) {
+            relinkAtHead(entry);
+            if (frequencySketch != null) {
+                frequencySketch.increment(frequencyHash.applyAsInt(entry.key));
+            }
+        }
+    };
+
     /**
      * Returns the value to which the specified key is mapped, or null if this map contains no mapping for the key.
      *
@@ -366,11 +446,48 @@ public class Cache<K, V> {
         if (entry == null) {
             return null;
         } else {
-            promote(entry, now);
+            afterRead(entry, now);
             return entry.value;
         }
     }
 
+    private void afterRead(Entry<K, V> entry, long now) {
+        final int index = readBufferIndex();
+        ReadBuffer<K, V> buffer = readBuffers.get(index);
+        if (buffer == null) {
+            readBuffers.compareAndSet(index, null, new ReadBuffer<>());
+            buffer = readBuffers.get(index);
+        }
+        if (buffer.offer(entry)) {
+            // the buffer is full, apply the pending promotions unless another thread is already holding the LRU lock
+            try (ReleasableLock locked = lruLock.tryAcquire()) {
+                if (locked != null) {
+                    evict(now);
+                }
+            }
+        }
+    }
+
+    private static int readBufferIndex() {
+        final long id = Thread.currentThread().getId();
+        return Long.hashCode(id * 0x9E3779B97F4A7C15L) & (NUMBER_OF_READ_BUFFERS - 1);
+    }
+
+    private void drainReadBuffers() {
+        assert lruLock.isHeldByCurrentThread();
+
+        for (int i = 0; i < NUMBER_OF_READ_BUFFERS; i++) {
+            final ReadBuffer<K, V> buffer = readBuffers.get(i);
+            if (buffer != null) {
+                buffer.drainTo(onRead);
+            }
+        }
+    }
+
+    private static int ceilingPowerOfTwo(int value) {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+
     /**
      * If the specified key is not already associated with a value (or is mapped to null), attempts to compute its
      * value using the given mapping function and enters it into this map unless null. The load method for a given key
@@ -390,7 +507,7 @@ public class Cache<K, V> {
         // we have to eagerly evict expired entries or our putIfAbsent call below will fail
         V value = get(key, now, e -> {
             try (ReleasableLock ignored = lruLock.acquire()) {
-                evictEntry(e);
+                evictEntry(e, now);
             }
         });
         if (value == null) {
@@ -537,12 +654,12 @@ public class Cache<K, V> {
         boolean[] haveSegmentLock = new boolean[NUMBER_OF_SEGMENTS];
         try {
             for (int i = 0; i < NUMBER_OF_SEGMENTS; i++) {
-                segments[i].segmentLock.writeLock().lock();
+                segments[i].segmentLock.lock();
                 haveSegmentLock[i] = true;
             }
             try (ReleasableLock ignored = lruLock.acquire()) {
                 h = head;
-                Arrays.stream(segments).forEach(segment -> segment.map = new HashMap<>());
+                Arrays.stream(segments).forEach(segment -> segment.map = new ConcurrentHashMap<>());
                 Entry<K, V> current = head;
                 while (current != null) {
                     current.state = State.DELETED;
@@ -551,11 +668,13 @@ public class Cache<K, V> {
                 head = tail = null;
                 count = 0;
                 weight = 0;
+                // release the references to the deleted entries that are still pending promotion
+                drainReadBuffers();
             }
         } finally {
             for (int i = NUMBER_OF_SEGMENTS - 1; i >= 0; i--) {
                 if (haveSegmentLock[i]) {
-                    segments[i].segmentLock.writeLock().unlock();
+                    segments[i].segmentLock.unlock();
                 }
             }
         }
@@ -602,7 +721,7 @@ public class Cache<K, V> {
      */
     public Iterable<K> keys() {
         return () -> new Iterator<K>() {
-            private CacheIterator iterator = new CacheIterator(head);
+            private CacheIterator iterator = new CacheIterator();
 
             @Override
             public boolean hasNext() {
@@ -630,7 +749,7 @@ public class Cache<K, V> {
      */
     public Iterable<V> values() {
         return () -> new Iterator<V>() {
-            private CacheIterator iterator = new CacheIterator(head);
+            private CacheIterator iterator = new CacheIterator();
 
             @Override
             public boolean hasNext() {
@@ -653,9 +772,13 @@ public class Cache<K, V> {
         private Entry<K, V> current;
         private Entry<K, V> next;
 
-        CacheIterator(Entry<K, V> head) {
+        CacheIterator() {
             current = null;
-            next = head;
+            try (ReleasableLock ignored = lruLock.acquire()) {
+                // apply the pending promotions so that the iteration order reflects the reads so far
+                drainReadBuffers();
+                next = head;
+            }
         }
 
         @Override
@@ -728,7 +851,10 @@ public class Cache<K, V> {
 
     private boolean promote(Entry<K, V> entry, long now) {
         boolean promoted = true;
+        Entry<K, V> inserted = null;
         try (ReleasableLock ignored = lruLock.acquire()) {
+            // reads that happened before this promotion must be applied first to preserve the LRU order
+            drainReadBuffers();
             switch (entry.state) {
                 case DELETED:
                     promoted = false;
@@ -738,38 +864,76 @@ public class Cache<K, V> {
                     break;
                 case NEW:
                     linkAtHead(entry);
+                    if (frequencySketch != null) {
+                        frequencySketch.increment(frequencyHash.applyAsInt(entry.key));
+                    }
+                    inserted = entry;
                     break;
             }
             if (promoted) {
-                evict(now);
+                evict(now, inserted);
             }
         }
         return promoted;
     }
 
     private void evict(long now) {
+        evict(now, null);
+    }
+
+    /**
+     * Evicts entries until the cache is within its bounds.
+     *
+     * @param now       the current time
+     * @param candidate the entry that was just inserted, if any, which may be evicted in place of the least recently used
+     *                  entry if frequency-based admission is enabled
+     */
+    private void evict(long now, Entry<K, V> candidate) {
         assert lruLock.isHeldByCurrentThread();
 
+        drainReadBuffers();
         while (tail != null && shouldPrune(tail, now)) {
-            evictEntry(tail);
+            if (candidate != null && rejectCandidate(candidate, tail, now)) {
+                evictEntry(candidate, now);
+                candidate = null;
+            } else {
+                evictEntry(tail, now);
+            }
         }
     }
 
-    private void evictEntry(Entry<K, V> entry) {
+    /**
+     * Whether the given newly inserted entry should be evicted instead of the given victim, which happens if frequency-based
+     * admission is enabled and the new entry was accessed less often than the victim.
+     */
+    private boolean rejectCandidate(Entry<K, V> candidate, Entry<K, V> victim, long now) {
+        return frequencySketch != null
+            && candidate.state == State.EXISTING
+            && candidate != victim
+            && isExpired(victim, now) == false
+            && frequencySketch.frequency(frequencyHash.applyAsInt(candidate.key))
+                < frequencySketch.frequency(frequencyHash.applyAsInt(victim.key));
+    }
+
+    private void evictEntry(Entry<K, V> entry, long now) {
         assert lruLock.isHeldByCurrentThread();
 
         CacheSegment<K, V> segment = getCacheSegment(entry.key);
         if (segment != null) {
             segment.remove(entry.key, entry.value, f -> {});
         }
-        delete(entry, RemovalNotification.RemovalReason.EVICTED);
+        delete(entry, RemovalNotification.RemovalReason.EVICTED, isExpired(entry, now));
     }
 
     private void delete(Entry<K, V> entry, RemovalNotification.RemovalReason removalReason) {
+        delete(entry, removalReason, false);
+    }
+
+    private void delete(Entry<K, V> entry, RemovalNotification.RemovalReason removalReason, boolean expired) {
         assert lruLock.isHeldByCurrentThread();
 
         if (unlink(entry)) {
-            removalListener.onRemoval(new RemovalNotification<>(entry.key, entry.value, removalReason));
+            removalListener.onRemoval(new RemovalNotification<>(entry.key, entry.value, removalReason, expired));
         }
     }
 
@@ -820,7 +984,7 @@ public class Cache<K, V> {
             }
 
             count--;
-            weight -= weigher.applyAsLong(entry.key, entry.value);
+            weight -= entry.weight;
             entry.state = State.DELETED;
             return true;
         } else {
@@ -842,8 +1006,12 @@ public class Cache<K, V> {
         }
 
         count++;
-        weight += weigher.applyAsLong(entry.key, entry.value);
+        entry.weight = weigher.applyAsLong(entry.key, entry.value);
+        weight += entry.weight;
         entry.state = State.EXISTING;
+        if (frequencySketch != null && count > frequencySketch.capacity()) {
+            frequencySketch.ensureCapacity(2L * count);
+        }
     }
 
     private void relinkAtHead(Entry<K, V> entry) {
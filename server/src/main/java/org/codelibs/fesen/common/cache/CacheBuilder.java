@@ -20,6 +20,7 @@
 package org.codelibs.fesen.common.cache;
 
 import java.util.Objects;
+import java.util.function.ToIntFunction;
 import java.util.function.ToLongBiFunction;
 
 import org.codelibs.fesen.core.TimeValue;
@@ -30,6 +31,7 @@ public class CacheBuilder<K, V> {
     private long expireAfterWriteNanos = -1;
     private ToLongBiFunction<K, V> weigher;
     private RemovalListener<K, V> removalListener;
+    private ToIntFunction<K> frequencyHash;
 
     public static <K, V> CacheBuilder<K, V> builder() {
         return new CacheBuilder<>();
@@ -90,6 +92,30 @@ public class CacheBuilder<K, V> {
         return this;
     }
 
+    /**
+     * Sets whether entries that are inserted into a full cache are only admitted if they were accessed at least as frequently
+     * as the least recently used entry they would evict. This protects frequently accessed entries from being evicted by
+     * scans of entries that are accessed only once. Only applies to caches that have a maximum weight.
+     * <p>
+     * A rejected entry has to be computed again on its next access, so this should only be enabled on caches whose misses
+     * are cheap compared to the cost of losing hot entries.
+     */
+    public CacheBuilder<K, V> setFrequencyBasedAdmission(boolean frequencyBasedAdmission) {
+        this.frequencyHash = frequencyBasedAdmission ? Object::hashCode : null;
+        return this;
+    }
+
+    /**
+     * Enables frequency-based admission (see {@link #setFrequencyBasedAdmission(boolean)}), counting the accesses of keys under
+     * the given hash. Keys that share a hash share their frequency, which allows a new version of an entry (for instance
+     * one that is keyed on a newer index reader) to inherit the popularity of the previous version.
+     */
+    public CacheBuilder<K, V> setFrequencyBasedAdmission(ToIntFunction<K> frequencyHash) {
+        Objects.requireNonNull(frequencyHash);
+        this.frequencyHash = frequencyHash;
+        return this;
+    }
+
     public Cache<K, V> build() {
         Cache<K, V> cache = new Cache<>();
         if (maximumWeight != -1) {
@@ -107,6 +133,9 @@ public class CacheBuilder<K, V> {
         if (removalListener != null) {
             cache.setRemovalListener(removalListener);
         }
+        if (frequencyHash != null && maximumWeight != -1) {
+            cache.setFrequencyBasedAdmission(frequencyHash);
+        }
         return cache;
     }
 }
@@ -0,0 +1,132 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.common.cache;
+
+/**
+ * A count-min sketch estimating how often keys have been accessed, used by {@link Cache} for TinyLFU-style admission.
+ * <p>
+ * Each key is mapped to four 4-bit counters (so a frequency saturates at 15) spread over a table of longs. Once the
+ * number of recorded accesses reaches ten times the table size all counters are halved, so that the sketch keeps
+ * track of recent popularity rather than of the full history of the cache.
+ * <p>
+ * This class is not thread-safe, {@link Cache} only accesses it under its LRU lock.
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = new long[] {
+        0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+    private static final int MINIMUM_CAPACITY = 16;
+
+    private long[] table;
+    private int tableMask;
+    private int sampleSize;
+    private int size;
+
+    FrequencySketch() {
+        ensureCapacity(MINIMUM_CAPACITY);
+    }
+
+    /**
+     * Grows the sketch so that it can accurately track {@code maximumSize} keys. Growing clears the recorded frequencies.
+     */
+    void ensureCapacity(long maximumSize) {
+        final int maximum = (int) Math.min(Math.max(maximumSize, MINIMUM_CAPACITY), Integer.MAX_VALUE >>> 1);
+        if (table != null && table.length >= maximum) {
+            return;
+        }
+        table = new long[Integer.highestOneBit(maximum - 1) << 1];
+        tableMask = table.length - 1;
+        sampleSize = (int) Math.min(10L * table.length, Integer.MAX_VALUE);
+        size = 0;
+    }
+
+    /**
+     * The number of keys the sketch can track before it needs to grow.
+     */
+    int capacity() {
+        return table.length;
+    }
+
+    /**
+     * Returns the estimated number of accesses of the key with the given hash, at most 15.
+     */
+    int frequency(int keyHash) {
+        final int hash = spread(keyHash);
+        final int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            final int offset = (start + i) << 2;
+            final int count = (int) ((table[indexOf(hash, i)] >>> offset) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * Records an access of the key with the given hash.
+     */
+    void increment(int keyHash) {
+        final int hash = spread(keyHash);
+        final int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && ++size >= sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int index, int counter) {
+        final int offset = counter << 2;
+        final long mask = 0xfL << offset;
+        if ((table[index] & mask) != mask) {
+            table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Halves all counters, subtracting the remainders of odd counters from the size.
+     */
+    private void reset() {
+        int odd = 0;
+        for (int i = 0; i < table.length; i++) {
+            odd += Long.bitCount(table[i] & ONE_MASK);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = (size >>> 1) - (odd >>> 2);
+    }
+
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return ((int) h) & tableMask;
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
@@ -25,11 +25,17 @@ public class RemovalNotification<K, V> {
     private final K key;
     private final V value;
     private final RemovalReason removalReason;
+    private final boolean expired;
 
     public RemovalNotification(K key, V value, RemovalReason removalReason) {
+        this(key, value, removalReason, false);
+    }
+
+    public RemovalNotification(K key, V value, RemovalReason removalReason, boolean expired) {
         this.key = key;
         this.value = value;
         this.removalReason = removalReason;
+        this.expired = expired;
     }
 
     public K getKey() {
@@ -43,4 +49,12 @@ public class RemovalNotification<K, V> {
     public RemovalReason getRemovalReason() {
         return removalReason;
     }
+
+    /**
+     * Whether the entry was {@link RemovalReason#EVICTED evicted} because it expired rather than because the cache exceeded
+     * its maximum weight.
+     */
+    public boolean isExpired() {
+        return expired;
+    }
 }
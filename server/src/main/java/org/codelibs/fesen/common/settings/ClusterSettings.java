@@ -66,6 +66,7 @@ import org.codelibs.fesen.common.logging.Loggers;
 import org.codelibs.fesen.common.network.NetworkModule;
 import org.codelibs.fesen.common.network.NetworkService;
 import org.codelibs.fesen.common.settings.Setting.Property;
+import org.codelibs.fesen.common.util.OffHeapPageAllocator;
 import org.codelibs.fesen.common.util.PageCacheRecycler;
 import org.codelibs.fesen.common.util.concurrent.EsExecutors;
 import org.codelibs.fesen.common.util.concurrent.ThreadContext;
@@ -88,9 +89,12 @@ import org.codelibs.fesen.index.IndexModule;
 import org.codelibs.fesen.index.IndexSettings;
 import org.codelibs.fesen.index.IndexingPressure;
 import org.codelibs.fesen.indices.IndexingMemoryController;
+import org.codelibs.fesen.indices.IndicesBackgroundFrequencyCache;
 import org.codelibs.fesen.indices.IndicesQueryCache;
 import org.codelibs.fesen.indices.IndicesRequestCache;
+import org.codelibs.fesen.indices.IndicesSegmentAggregationCache;
 import org.codelibs.fesen.indices.IndicesService;
+import org.codelibs.fesen.indices.IndicesTranslogSyncService;
 import org.codelibs.fesen.indices.ShardLimitValidator;
 import org.codelibs.fesen.indices.analysis.HunspellService;
 import org.codelibs.fesen.indices.breaker.BreakerSettings;
@@ -111,6 +115,7 @@ import org.codelibs.fesen.persistent.decider.EnableAssignmentDecider;
 import org.codelibs.fesen.plugins.PluginsService;
 import org.codelibs.fesen.repositories.fs.FsRepository;
 import org.codelibs.fesen.rest.BaseRestHandler;
+import org.codelibs.fesen.rest.action.document.RestBulkAction;
 import org.codelibs.fesen.script.ScriptService;
 import org.codelibs.fesen.search.SearchModule;
 import org.codelibs.fesen.search.SearchService;
@@ -328,6 +333,11 @@ public final class ClusterSettings extends AbstractScopedSettings {
             SearchService.DEFAULT_ALLOW_PARTIAL_SEARCH_RESULTS,
             ElectMasterService.DISCOVERY_ZEN_MINIMUM_MASTER_NODES_SETTING,
             TransportSearchAction.SHARD_COUNT_LIMIT_SETTING,
+            TransportSearchAction.MAX_CONCURRENT_PARTIAL_REDUCES_SETTING,
+            TransportSearchAction.HEDGED_REQUESTS_ENABLED_SETTING,
+            TransportSearchAction.HEDGED_REQUESTS_MIN_DELAY_SETTING,
+            TransportSearchAction.HEDGED_REQUESTS_RESPONSE_TIME_FACTOR_SETTING,
+            TransportSearchAction.BATCHED_QUERY_PHASE_SETTING,
             RemoteClusterService.REMOTE_CLUSTER_SKIP_UNAVAILABLE,
             RemoteClusterService.SEARCH_REMOTE_CLUSTER_SKIP_UNAVAILABLE,
             SniffConnectionStrategy.REMOTE_CONNECTIONS_PER_CLUSTER,
@@ -431,7 +441,15 @@ public final class ClusterSettings extends AbstractScopedSettings {
             IndicesService.INDICES_CACHE_CLEAN_INTERVAL_SETTING,
             IndicesFieldDataCache.INDICES_FIELDDATA_CACHE_SIZE_KEY,
             IndicesRequestCache.INDICES_CACHE_QUERY_SIZE,
+            IndicesRequestCache.INDICES_CACHE_QUERY_HITS_SIZE,
+            IndicesRequestCache.INDICES_CACHE_QUERY_DISK_SIZE,
+            IndicesRequestCache.INDICES_CACHE_QUERY_DISK_SEGMENT_SIZE,
             IndicesRequestCache.INDICES_CACHE_QUERY_EXPIRE,
+            IndicesSegmentAggregationCache.INDICES_CACHE_SEGMENT_AGGS_SIZE,
+            IndicesSegmentAggregationCache.INDICES_CACHE_SEGMENT_AGGS_MIN_DOCS,
+            IndicesBackgroundFrequencyCache.INDICES_CACHE_BACKGROUND_FREQUENCY_SIZE,
+            IndicesTranslogSyncService.INDICES_TRANSLOG_GROUP_SYNC_ENABLED,
+            IndicesTranslogSyncService.INDICES_TRANSLOG_GROUP_SYNC_MAX_DELAY,
             HunspellService.HUNSPELL_LAZY_LOAD,
             HunspellService.HUNSPELL_IGNORE_CASE,
             HunspellService.HUNSPELL_DICTIONARY_OPTIONS,
@@ -476,6 +494,8 @@ public final class ClusterSettings extends AbstractScopedSettings {
             MultiBucketConsumerService.MAX_BUCKET_SETTING,
             SearchService.LOW_LEVEL_CANCELLATION_SETTING,
             SearchService.MAX_OPEN_SCROLL_CONTEXT,
+            SearchService.AGGS_REDUCE_SPILL_THRESHOLD,
+            SearchService.AGGS_REDUCE_SPILL_MAX_SIZE,
             Node.WRITE_PORTS_FILE_SETTING,
             Node.NODE_NAME_SETTING,
             Node.NODE_ATTRIBUTES,
@@ -483,6 +503,8 @@ public final class ClusterSettings extends AbstractScopedSettings {
             NodeRoleSettings.NODE_ROLES_SETTING,
             AutoCreateIndex.AUTO_CREATE_INDEX_SETTING,
             BaseRestHandler.MULTI_ALLOW_EXPLICIT_INDEX,
+            RestBulkAction.PARALLEL_PARSE_MIN_SIZE_SETTING,
+            RestBulkAction.PARALLEL_PARSE_MAX_THREADS_SETTING,
             ClusterName.CLUSTER_NAME_SETTING,
             Client.CLIENT_TYPE_SETTING_S,
             ClusterModule.SHARDS_ALLOCATOR_TYPE_SETTING,
@@ -509,6 +531,8 @@ public final class ClusterSettings extends AbstractScopedSettings {
             PageCacheRecycler.WEIGHT_LONG_SETTING,
             PageCacheRecycler.WEIGHT_OBJECTS_SETTING,
             PageCacheRecycler.TYPE_SETTING,
+            OffHeapPageAllocator.TYPE_SETTING,
+            OffHeapPageAllocator.DIRECT_MAX_SIZE_SETTING,
             PluginsService.MANDATORY_SETTING,
             BootstrapSettings.SECURITY_FILTER_BAD_DEFAULTS_SETTING,
             BootstrapSettings.MEMORY_LOCK_SETTING,
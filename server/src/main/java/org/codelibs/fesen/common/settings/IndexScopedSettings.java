@@ -50,6 +50,7 @@ import org.codelibs.fesen.index.similarity.SimilarityService;
 import org.codelibs.fesen.index.store.FsDirectoryFactory;
 import org.codelibs.fesen.index.store.Store;
 import org.codelibs.fesen.indices.IndicesRequestCache;
+import org.codelibs.fesen.indices.IndicesSegmentAggregationCache;
 
 /**
  * Encapsulates all valid index level settings.
@@ -133,12 +134,19 @@ public final class IndexScopedSettings extends AbstractScopedSettings {
         IndexSettings.MAX_REFRESH_LISTENERS_PER_SHARD,
         IndexSettings.MAX_SLICES_PER_SCROLL,
         IndexSettings.MAX_REGEX_LENGTH_SETTING,
+        IndexSettings.INDEX_CONCURRENT_SEGMENT_SEARCH_SETTING,
         ShardsLimitAllocationDecider.INDEX_TOTAL_SHARDS_PER_NODE_SETTING,
         IndexSettings.INDEX_GC_DELETES_SETTING,
         IndexSettings.INDEX_SOFT_DELETES_SETTING,
         IndexSettings.INDEX_SOFT_DELETES_RETENTION_OPERATIONS_SETTING,
         IndexSettings.INDEX_SOFT_DELETES_RETENTION_LEASE_PERIOD_SETTING,
+        IndexSettings.INDEX_COMPACT_VERSION_MAP_SETTING,
+        IndexSettings.INDEX_CONCURRENT_CHECKPOINT_TRACKER_SETTING,
+        IndexSettings.INDEX_CODEC_ID_BLOOM_FILTER_SETTING,
+        IndexSettings.INDEX_CODEC_ID_BLOOM_FILTER_FPP_SETTING,
         IndicesRequestCache.INDEX_CACHE_REQUEST_ENABLED_SETTING,
+        IndicesRequestCache.INDEX_CACHE_REQUEST_HITS_ENABLED_SETTING,
+        IndicesSegmentAggregationCache.INDEX_CACHE_SEGMENT_AGGS_ENABLED_SETTING,
         UnassignedInfo.INDEX_DELAYED_NODE_LEFT_TIMEOUT_SETTING,
         EnableAllocationDecider.INDEX_ROUTING_REBALANCE_ENABLE_SETTING,
         EnableAllocationDecider.INDEX_ROUTING_ALLOCATION_ENABLE_SETTING,
@@ -156,7 +156,7 @@ abstract class AbstractBigArray extends AbstractArray {
     }
 
     @Override
-    protected final void doClose() {
+    protected void doClose() {
         if (recycler != null) {
             Releasables.close(cache);
             cache = null;
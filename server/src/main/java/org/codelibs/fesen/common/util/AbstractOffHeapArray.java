@@ -0,0 +1,85 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.common.util;
+
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.RamUsageEstimator;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Common implementation for big arrays that slice data into the off-heap pages of an {@link OffHeapPageAllocator}. Pages
+ * are given back to the allocator when the array is shrunk or closed.
+ */
+abstract class AbstractOffHeapArray extends AbstractBigArray {
+
+    private final OffHeapPageAllocator allocator;
+    protected ByteBuffer[] pages;
+
+    protected AbstractOffHeapArray(int bytesPerElement, long size, BigArrays bigArrays, boolean clearOnResize) {
+        super(OffHeapPageAllocator.PAGE_SIZE_IN_BYTES / bytesPerElement, bigArrays, clearOnResize);
+        assert bigArrays.offHeapAllocator != null;
+        this.allocator = bigArrays.offHeapAllocator;
+        this.size = size;
+        pages = new ByteBuffer[numPages(size)];
+        boolean success = false;
+        try {
+            for (int i = 0; i < pages.length; ++i) {
+                pages[i] = allocator.acquire(clearOnResize);
+            }
+            success = true;
+        } finally {
+            if (success == false) {
+                releasePages(0);
+            }
+        }
+    }
+
+    /** Change the size of this array. Content between indexes <code>0</code> and <code>min(size(), newSize)</code> will be preserved. */
+    @Override
+    public final void resize(long newSize) {
+        final int numPages = numPages(newSize);
+        if (numPages > pages.length) {
+            pages = Arrays.copyOf(pages, ArrayUtil.oversize(numPages, RamUsageEstimator.NUM_BYTES_OBJECT_REF));
+        }
+        // pages are acquired in order so that they stay contiguous if the allocator runs out of memory
+        for (int i = 0; i < numPages; ++i) {
+            if (pages[i] == null) {
+                pages[i] = allocator.acquire(clearOnResize);
+            }
+        }
+        releasePages(numPages);
+        this.size = newSize;
+    }
+
+    @Override
+    protected final void doClose() {
+        super.doClose();
+        releasePages(0);
+    }
+
+    private void releasePages(int from) {
+        for (int i = from; i < pages.length && pages[i] != null; ++i) {
+            allocator.release(pages[i]);
+            pages[i] = null;
+        }
+    }
+}
@@ -31,6 +31,7 @@ import org.codelibs.fesen.core.Nullable;
 import org.codelibs.fesen.indices.breaker.CircuitBreakerService;
 
 import java.util.Arrays;
+import java.util.function.Supplier;
 
 /** Utility class to work with arrays. */
 public class BigArrays {
@@ -362,26 +363,43 @@ public class BigArrays {
     }
 
     final PageCacheRecycler recycler;
+    final OffHeapPageAllocator offHeapAllocator;
     private final CircuitBreakerService breakerService;
     private final boolean checkBreaker;
     private final BigArrays circuitBreakingInstance;
     private final String breakerName;
 
     public BigArrays(PageCacheRecycler recycler, @Nullable final CircuitBreakerService breakerService, String breakerName) {
+        this(recycler, breakerService, breakerName, false, null);
+    }
+
+    /**
+     * Creates a {@link BigArrays} whose byte, int, long and double arrays that are larger than a page are allocated off-heap
+     * using the given allocator, or on heap if the allocator is {@code null}. Off-heap arrays are accounted in the circuit
+     * breaker like on-heap arrays.
+     */
+    public BigArrays(PageCacheRecycler recycler, @Nullable final CircuitBreakerService breakerService, String breakerName,
+                     @Nullable OffHeapPageAllocator offHeapAllocator) {
         // Checking the breaker is disabled if not specified
-        this(recycler, breakerService, breakerName, false);
+        this(recycler, breakerService, breakerName, false, offHeapAllocator);
     }
 
     protected BigArrays(PageCacheRecycler recycler, @Nullable final CircuitBreakerService breakerService, String breakerName,
                         boolean checkBreaker) {
+        this(recycler, breakerService, breakerName, checkBreaker, null);
+    }
+
+    protected BigArrays(PageCacheRecycler recycler, @Nullable final CircuitBreakerService breakerService, String breakerName,
+                        boolean checkBreaker, @Nullable OffHeapPageAllocator offHeapAllocator) {
         this.checkBreaker = checkBreaker;
         this.recycler = recycler;
+        this.offHeapAllocator = offHeapAllocator;
         this.breakerService = breakerService;
         this.breakerName = breakerName;
         if (checkBreaker) {
             this.circuitBreakingInstance = this;
         } else {
-            this.circuitBreakingInstance = new BigArrays(recycler, breakerService, breakerName, true);
+            this.circuitBreakingInstance = new BigArrays(recycler, breakerService, breakerName, true, offHeapAllocator);
         }
     }
 
@@ -442,10 +460,36 @@ public class BigArrays {
             oldMemSize + ", ramBytesEstimated=" + array.ramBytesEstimated(oldSize);
         final long estimatedIncreaseInBytes = array.ramBytesEstimated(newSize) - oldMemSize;
         adjustBreaker(estimatedIncreaseInBytes, false);
-        array.resize(newSize);
+        boolean success = false;
+        try {
+            array.resize(newSize);
+            success = true;
+        } finally {
+            if (success == false) {
+                // off-heap arrays fail to grow when their allocator is out of memory
+                adjustBreaker(-estimatedIncreaseInBytes, false);
+            }
+        }
         return array;
     }
 
+    /**
+     * Creates an off-heap array whose estimated size was already added to the breaker, removing it again if the allocator is
+     * out of memory.
+     */
+    private <T extends BigArray> T newOffHeapArray(long estimatedBytes, Supplier<T> factory) {
+        boolean success = false;
+        try {
+            final T array = factory.get();
+            success = true;
+            return array;
+        } finally {
+            if (success == false) {
+                adjustBreaker(-estimatedBytes, false);
+            }
+        }
+    }
+
     private <T extends BigArray> T validate(T array) {
         boolean success = false;
         try {
@@ -469,6 +513,9 @@ public class BigArrays {
             // when allocating big arrays, we want to first ensure we have the capacity by
             // checking with the circuit breaker before attempting to allocate
             adjustBreaker(BigByteArray.estimateRamBytes(size), false);
+            if (offHeapAllocator != null) {
+                return newOffHeapArray(BigByteArray.estimateRamBytes(size), () -> new OffHeapByteArray(size, this, clearOnResize));
+            }
             return new BigByteArray(size, this, clearOnResize);
         } else if (size >= PageCacheRecycler.BYTE_PAGE_SIZE / 2 && recycler != null) {
             final Recycler.V<byte[]> page = recycler.bytePage(clearOnResize);
@@ -490,6 +537,8 @@ public class BigArrays {
     public ByteArray resize(ByteArray array, long size) {
         if (array instanceof BigByteArray) {
             return resizeInPlace((BigByteArray) array, size);
+        } else if (array instanceof OffHeapByteArray) {
+            return resizeInPlace((OffHeapByteArray) array, size);
         } else {
             AbstractArray arr = (AbstractArray) array;
             final ByteArray newArray = newByteArray(size, arr.clearOnResize);
@@ -553,6 +602,9 @@ public class BigArrays {
             // when allocating big arrays, we want to first ensure we have the capacity by
             // checking with the circuit breaker before attempting to allocate
             adjustBreaker(BigIntArray.estimateRamBytes(size), false);
+            if (offHeapAllocator != null) {
+                return newOffHeapArray(BigIntArray.estimateRamBytes(size), () -> new OffHeapIntArray(size, this, clearOnResize));
+            }
             return new BigIntArray(size, this, clearOnResize);
         } else if (size >= PageCacheRecycler.INT_PAGE_SIZE / 2 && recycler != null) {
             final Recycler.V<int[]> page = recycler.intPage(clearOnResize);
@@ -574,6 +626,8 @@ public class BigArrays {
     public IntArray resize(IntArray array, long size) {
         if (array instanceof BigIntArray) {
             return resizeInPlace((BigIntArray) array, size);
+        } else if (array instanceof OffHeapIntArray) {
+            return resizeInPlace((OffHeapIntArray) array, size);
         } else {
             AbstractArray arr = (AbstractArray) array;
             final IntArray newArray = newIntArray(size, arr.clearOnResize);
@@ -605,6 +659,9 @@ public class BigArrays {
             // when allocating big arrays, we want to first ensure we have the capacity by
             // checking with the circuit breaker before attempting to allocate
             adjustBreaker(BigLongArray.estimateRamBytes(size), false);
+            if (offHeapAllocator != null) {
+                return newOffHeapArray(BigLongArray.estimateRamBytes(size), () -> new OffHeapLongArray(size, this, clearOnResize));
+            }
             return new BigLongArray(size, this, clearOnResize);
         } else if (size >= PageCacheRecycler.LONG_PAGE_SIZE / 2 && recycler != null) {
             final Recycler.V<long[]> page = recycler.longPage(clearOnResize);
@@ -626,6 +683,8 @@ public class BigArrays {
     public LongArray resize(LongArray array, long size) {
         if (array instanceof BigLongArray) {
             return resizeInPlace((BigLongArray) array, size);
+        } else if (array instanceof OffHeapLongArray) {
+            return resizeInPlace((OffHeapLongArray) array, size);
         } else {
             AbstractArray arr = (AbstractArray) array;
             final LongArray newArray = newLongArray(size, arr.clearOnResize);
@@ -657,6 +716,9 @@ public class BigArrays {
             // when allocating big arrays, we want to first ensure we have the capacity by
             // checking with the circuit breaker before attempting to allocate
             adjustBreaker(BigDoubleArray.estimateRamBytes(size), false);
+            if (offHeapAllocator != null) {
+                return newOffHeapArray(BigDoubleArray.estimateRamBytes(size), () -> new OffHeapDoubleArray(size, this, clearOnResize));
+            }
             return new BigDoubleArray(size, this, clearOnResize);
         } else if (size >= PageCacheRecycler.LONG_PAGE_SIZE / 2 && recycler != null) {
             final Recycler.V<long[]> page = recycler.longPage(clearOnResize);
@@ -675,6 +737,8 @@ public class BigArrays {
     public DoubleArray resize(DoubleArray array, long size) {
         if (array instanceof BigDoubleArray) {
             return resizeInPlace((BigDoubleArray) array, size);
+        } else if (array instanceof OffHeapDoubleArray) {
+            return resizeInPlace((OffHeapDoubleArray) array, size);
         } else {
             AbstractArray arr = (AbstractArray) array;
             final DoubleArray newArray = newDoubleArray(size, arr.clearOnResize);
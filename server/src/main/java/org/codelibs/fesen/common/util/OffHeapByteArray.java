@@ -0,0 +1,132 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.common.util;
+
+import org.apache.lucene.util.BytesRef;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Byte array abstraction able to support more than 2B values. This implementation slices data into the off-heap pages of
+ * an {@link OffHeapPageAllocator}.
+ */
+final class OffHeapByteArray extends AbstractOffHeapArray implements ByteArray {
+
+    /** Constructor. */
+    OffHeapByteArray(long size, BigArrays bigArrays, boolean clearOnResize) {
+        super(Byte.BYTES, size, bigArrays, clearOnResize);
+    }
+
+    @Override
+    public byte get(long index) {
+        final int pageIndex = pageIndex(index);
+        final int indexInPage = indexInPage(index);
+        return pages[pageIndex].get(indexInPage);
+    }
+
+    @Override
+    public byte set(long index, byte value) {
+        final int pageIndex = pageIndex(index);
+        final int indexInPage = indexInPage(index);
+        final ByteBuffer page = pages[pageIndex];
+        final byte ret = page.get(indexInPage);
+        page.put(indexInPage, value);
+        return ret;
+    }
+
+    @Override
+    public boolean get(long index, int len, BytesRef ref) {
+        assert index + len <= size();
+        // off-heap pages can't be referenced by a BytesRef, so the slice is always copied. The bytes of the ref can't be reused
+        // for the copy since they may be the page of another array, eg. the on-heap page of a BytesRefHash before it grew off heap
+        int pageIndex = pageIndex(index);
+        int indexInPage = indexInPage(index);
+        ref.bytes = new byte[len];
+        ref.offset = 0;
+        ref.length = 0;
+        while (ref.length < len) {
+            final int copyLength = Math.min(pageSize() - indexInPage, len - ref.length);
+            final ByteBuffer page = pages[pageIndex].duplicate();
+            page.position(indexInPage);
+            page.get(ref.bytes, ref.length, copyLength);
+            ref.length += copyLength;
+            ++pageIndex;
+            indexInPage = 0;
+        }
+        return true;
+    }
+
+    @Override
+    public void set(long index, byte[] buf, int offset, int len) {
+        assert index + len <= size();
+        int pageIndex = pageIndex(index);
+        int indexInPage = indexInPage(index);
+        while (len > 0) {
+            final int copyLength = Math.min(pageSize() - indexInPage, len);
+            final ByteBuffer page = pages[pageIndex].duplicate();
+            page.position(indexInPage);
+            page.put(buf, offset, copyLength);
+            offset += copyLength;
+            len -= copyLength;
+            ++pageIndex;
+            indexInPage = 0;
+        }
+    }
+
+    @Override
+    public void fill(long fromIndex, long toIndex, byte value) {
+        if (fromIndex > toIndex) {
+            throw new IllegalArgumentException();
+        }
+        final int fromPage = pageIndex(fromIndex);
+        final int toPage = pageIndex(toIndex - 1);
+        if (fromPage == toPage) {
+            fill(pages[fromPage], indexInPage(fromIndex), indexInPage(toIndex - 1) + 1, value);
+        } else {
+            fill(pages[fromPage], indexInPage(fromIndex), pageSize(), value);
+            for (int i = fromPage + 1; i < toPage; ++i) {
+                fill(pages[i], 0, pageSize(), value);
+            }
+            fill(pages[toPage], 0, indexInPage(toIndex - 1) + 1, value);
+        }
+    }
+
+    private static void fill(ByteBuffer page, int from, int to, byte value) {
+        for (int i = from; i < to; ++i) {
+            page.put(i, value);
+        }
+    }
+
+    @Override
+    public boolean hasArray() {
+        return false;
+    }
+
+    @Override
+    public byte[] array() {
+        assert false;
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    protected int numBytesPerElement() {
+        return 1;
+    }
+}
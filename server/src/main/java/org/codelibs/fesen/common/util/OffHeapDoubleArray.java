@@ -0,0 +1,92 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.common.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Double array abstraction able to support more than 2B values. This implementation slices data into the off-heap pages of
+ * an {@link OffHeapPageAllocator}.
+ */
+final class OffHeapDoubleArray extends AbstractOffHeapArray implements DoubleArray {
+
+    private static final int SHIFT = 3;
+
+    /** Constructor. */
+    OffHeapDoubleArray(long size, BigArrays bigArrays, boolean clearOnResize) {
+        super(Double.BYTES, size, bigArrays, clearOnResize);
+    }
+
+    @Override
+    public double get(long index) {
+        final int pageIndex = pageIndex(index);
+        final int indexInPage = indexInPage(index);
+        return pages[pageIndex].getDouble(indexInPage << SHIFT);
+    }
+
+    @Override
+    public double set(long index, double value) {
+        final int pageIndex = pageIndex(index);
+        final int offset = indexInPage(index) << SHIFT;
+        final ByteBuffer page = pages[pageIndex];
+        final double ret = page.getDouble(offset);
+        page.putDouble(offset, value);
+        return ret;
+    }
+
+    @Override
+    public double increment(long index, double inc) {
+        final int pageIndex = pageIndex(index);
+        final int offset = indexInPage(index) << SHIFT;
+        final ByteBuffer page = pages[pageIndex];
+        final double newVal = page.getDouble(offset) + inc;
+        page.putDouble(offset, newVal);
+        return newVal;
+    }
+
+    @Override
+    public void fill(long fromIndex, long toIndex, double value) {
+        if (fromIndex > toIndex) {
+            throw new IllegalArgumentException();
+        }
+        final int fromPage = pageIndex(fromIndex);
+        final int toPage = pageIndex(toIndex - 1);
+        if (fromPage == toPage) {
+            fill(pages[fromPage], indexInPage(fromIndex), indexInPage(toIndex - 1) + 1, value);
+        } else {
+            fill(pages[fromPage], indexInPage(fromIndex), pageSize(), value);
+            for (int i = fromPage + 1; i < toPage; ++i) {
+                fill(pages[i], 0, pageSize(), value);
+            }
+            fill(pages[toPage], 0, indexInPage(toIndex - 1) + 1, value);
+        }
+    }
+
+    private static void fill(ByteBuffer page, int from, int to, double value) {
+        for (int i = from; i < to; ++i) {
+            page.putDouble(i << SHIFT, value);
+        }
+    }
+
+    @Override
+    protected int numBytesPerElement() {
+        return Double.BYTES;
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.common.util;
+
+import org.codelibs.fesen.common.breaker.CircuitBreaker;
+import org.codelibs.fesen.common.breaker.CircuitBreakingException;
+import org.codelibs.fesen.common.settings.Setting;
+import org.codelibs.fesen.common.settings.Setting.Property;
+import org.codelibs.fesen.common.settings.Settings;
+import org.codelibs.fesen.common.unit.ByteSizeValue;
+import org.codelibs.fesen.core.Nullable;
+import org.codelibs.fesen.monitor.jvm.JvmInfo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Hands out the pages of the off-heap {@link BigArrays} implementations. Pages have the same size as the pages of
+ * {@link PageCacheRecycler} so that off-heap arrays are accounted in the circuit breaker exactly like their on-heap
+ * counterparts. They are carved out of larger chunks that are either allocated as direct memory or mapped from a
+ * scratch file, and pages that are released are kept for reuse, so that the allocator retains the high-water mark of
+ * off-heap pages that have been used concurrently until the node is closed.
+ * <p>
+ * Direct memory is shared with the network layer and is not covered by the request circuit breaker, which is sized
+ * relative to the heap. Direct allocators are thus bounded by {@link #DIRECT_MAX_SIZE_SETTING} and trip with a
+ * {@link CircuitBreakingException} once all of it is in use.
+ */
+public abstract class OffHeapPageAllocator implements Closeable {
+
+    public static final Setting<Type> TYPE_SETTING =
+        new Setting<>("node.bigarrays.off_heap.type", Type.NONE.name(), Type::parse, Property.NodeScope);
+    /**
+     * The maximum amount of direct memory used by {@link Type#DIRECT} allocators, half of the direct memory limit by default.
+     */
+    public static final Setting<ByteSizeValue> DIRECT_MAX_SIZE_SETTING = Setting.byteSizeSetting("node.bigarrays.off_heap.direct.max_size",
+        s -> new ByteSizeValue(defaultDirectMaxSizeInBytes()).getStringRep(), Property.NodeScope);
+
+    /** Page size in bytes: 16KB */
+    static final int PAGE_SIZE_IN_BYTES = PageCacheRecycler.PAGE_SIZE_IN_BYTES;
+    /** Chunk size in bytes: 1MB */
+    static final int CHUNK_SIZE_IN_BYTES = 1 << 20;
+
+    private static final byte[] ZERO_PAGE = new byte[PAGE_SIZE_IN_BYTES];
+
+    private final Queue<ByteBuffer> freePages = new ConcurrentLinkedQueue<>();
+    // the chunk new pages are sliced from, guarded by this
+    private ByteBuffer chunk;
+    private int chunkOffset = CHUNK_SIZE_IN_BYTES;
+
+    /**
+     * Creates the allocator configured by {@link #TYPE_SETTING}, or {@code null} if big arrays should stay on heap.
+     *
+     * @param scratchDir the directory of the scratch file of {@link Type#MMAP} allocators
+     */
+    @Nullable
+    public static OffHeapPageAllocator create(Settings settings, Path scratchDir) throws IOException {
+        switch (TYPE_SETTING.get(settings)) {
+            case NONE:
+                return null;
+            case DIRECT:
+                return new DirectPageAllocator(DIRECT_MAX_SIZE_SETTING.get(settings).getBytes());
+            case MMAP:
+                return new MappedPageAllocator(scratchDir);
+            default:
+                throw new AssertionError();
+        }
+    }
+
+    private static long defaultDirectMaxSizeInBytes() {
+        // the direct memory limit defaults to the maximum heap size
+        final JvmInfo.Mem mem = JvmInfo.jvmInfo().getMem();
+        final long directMemoryMax = mem.getDirectMemoryMax().getBytes();
+        return (directMemoryMax > 0 ? directMemoryMax : mem.getHeapMax().getBytes()) / 2;
+    }
+
+    /**
+     * Returns a page in native byte order, filled with zeros if {@code clear} is true.
+     */
+    final ByteBuffer acquire(boolean clear) {
+        ByteBuffer page = freePages.poll();
+        if (page == null) {
+            page = newPage();
+        } else if (clear) {
+            page.clear();
+            page.put(ZERO_PAGE);
+        }
+        return page;
+    }
+
+    /**
+     * Returns a page to the allocator, the page must not be used anymore once released.
+     */
+    final void release(ByteBuffer page) {
+        freePages.add(page);
+    }
+
+    private synchronized ByteBuffer newPage() {
+        if (chunkOffset == CHUNK_SIZE_IN_BYTES) {
+            chunk = newChunk();
+            chunkOffset = 0;
+        }
+        final ByteBuffer page = chunk.duplicate();
+        page.position(chunkOffset).limit(chunkOffset + PAGE_SIZE_IN_BYTES);
+        chunkOffset += PAGE_SIZE_IN_BYTES;
+        // new chunks are zero-filled
+        return page.slice().order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Allocates a new zero-filled chunk of {@link #CHUNK_SIZE_IN_BYTES} bytes.
+     */
+    protected abstract ByteBuffer newChunk();
+
+    @Override
+    public void close() throws IOException {
+        freePages.clear();
+    }
+
+    private static final class DirectPageAllocator extends OffHeapPageAllocator {
+
+        private final long maxSizeInBytes;
+        // guarded by the lock of newPage
+        private long sizeInBytes;
+
+        DirectPageAllocator(long maxSizeInBytes) {
+            this.maxSizeInBytes = maxSizeInBytes;
+        }
+
+        @Override
+        protected ByteBuffer newChunk() {
+            final long newSizeInBytes = sizeInBytes + CHUNK_SIZE_IN_BYTES;
+            if (newSizeInBytes > maxSizeInBytes) {
+                throw new CircuitBreakingException("[off_heap] direct memory of big arrays would be [" + newSizeInBytes + "/"
+                    + new ByteSizeValue(newSizeInBytes) + "], which is larger than the limit of [" + maxSizeInBytes + "/"
+                    + new ByteSizeValue(maxSizeInBytes) + "]", CHUNK_SIZE_IN_BYTES, maxSizeInBytes, CircuitBreaker.Durability.TRANSIENT);
+            }
+            final ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_SIZE_IN_BYTES);
+            sizeInBytes = newSizeInBytes;
+            return chunk;
+        }
+    }
+
+    private static final class MappedPageAllocator extends OffHeapPageAllocator {
+
+        private final FileChannel channel;
+        private long fileLength;
+
+        MappedPageAllocator(Path scratchDir) throws IOException {
+            final Path file = Files.createTempFile(scratchDir, "bigarrays-", ".scratch");
+            this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+        }
+
+        @Override
+        protected ByteBuffer newChunk() {
+            try {
+                // mapping past the end of the file grows it, the new bytes read as zeros
+                final ByteBuffer chunk = channel.map(FileChannel.MapMode.READ_WRITE, fileLength, CHUNK_SIZE_IN_BYTES);
+                fileLength += CHUNK_SIZE_IN_BYTES;
+                return chunk;
+            } catch (IOException e) {
+                throw new UncheckedIOException("failed to map a new chunk of the big arrays scratch file", e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            super.close();
+            // mapped chunks stay valid until they are garbage collected, only the file name goes away
+            channel.close();
+        }
+    }
+
+    public enum Type {
+        /** Big arrays are allocated on heap. */
+        NONE,
+        /** Big arrays are allocated in direct memory, which is bounded by {@code -XX:MaxDirectMemorySize}. */
+        DIRECT,
+        /** Big arrays are allocated in a memory-mapped scratch file in the temporary directory of the node. */
+        MMAP;
+
+        public static Type parse(String type) {
+            try {
+                return Type.valueOf(type.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("no type support [" + type + "]");
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.codelibs.fesen.common.xcontent;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * An object that can render itself as a sequence of {@link ToXContent} pieces, so that large responses can be serialized and sent
+ * incrementally rather than being built in memory at once. Rendering all the pieces one after the other into the same builder produces
+ * the same output as {@link #toXContent(XContentBuilder, Params)}.
+ */
+public interface ChunkedToXContent extends ToXContentObject {
+
+    /**
+     * Returns the pieces of this object in the order they need to be rendered.
+     */
+    Iterator<? extends ToXContent> toXContentChunked(Params params);
+
+    @Override
+    default XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        Iterator<? extends ToXContent> chunks = toXContentChunked(params);
+        while (chunks.hasNext()) {
+            chunks.next().toXContent(builder, params);
+        }
+        return builder;
+    }
+}
@@ -24,12 +24,16 @@ import org.apache.lucene.util.automaton.Automaton;
 import org.apache.lucene.util.automaton.CharacterRunAutomaton;
 import org.apache.lucene.util.automaton.Operations;
 import org.codelibs.fesen.FesenParseException;
+import org.codelibs.fesen.common.CheckedBiConsumer;
 import org.codelibs.fesen.common.Numbers;
 import org.codelibs.fesen.common.Strings;
 import org.codelibs.fesen.common.regex.Regex;
+import org.codelibs.fesen.common.xcontent.XContentBuilder;
+import org.codelibs.fesen.common.xcontent.XContentParser;
 import org.codelibs.fesen.core.Booleans;
 import org.codelibs.fesen.core.TimeValue;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -203,16 +207,55 @@ public class XContentMapValues {
      */
     public static Function<Map<String, ?>, Map<String, Object>> filter(String[] includes, String[] excludes) {
         CharacterRunAutomaton matchAllAutomaton = new CharacterRunAutomaton(Automata.makeAnyString());
+        CharacterRunAutomaton include = includeAutomaton(includes, matchAllAutomaton);
+        CharacterRunAutomaton exclude = excludeAutomaton(excludes);
 
-        CharacterRunAutomaton include;
+        // NOTE: We cannot use Operations.minus because of the special case that
+        // we want all sub properties to match as soon as an object matches
+
+        return (map) -> filter(map,
+            include, 0,
+            exclude, 0,
+            matchAllAutomaton);
+    }
+
+    /**
+     * Returns a function that filters a document based on the given include and exclude rules like
+     * {@link #filter(String[], String[])}, but reads the document from a parser and copies the matching
+     * properties to a builder as it goes instead of going through a map. Properties that are kept as a
+     * whole are copied token by token, and the order of properties in the document is preserved.
+     * <p>
+     * The parser must be positioned before or on the start of the document, which must be an object.
+     * @see #filter(Map, String[], String[]) for details
+     */
+    public static CheckedBiConsumer<XContentParser, XContentBuilder, IOException> streamingFilter(String[] includes,
+                                                                                                  String[] excludes) {
+        CharacterRunAutomaton matchAllAutomaton = new CharacterRunAutomaton(Automata.makeAnyString());
+        CharacterRunAutomaton include = includeAutomaton(includes, matchAllAutomaton);
+        CharacterRunAutomaton exclude = excludeAutomaton(excludes);
+
+        return (parser, builder) -> {
+            XContentParser.Token token = parser.currentToken() == null ? parser.nextToken() : parser.currentToken();
+            if (token != XContentParser.Token.START_OBJECT) {
+                throw new FesenParseException("Expected an object but got [{}]", token);
+            }
+            PendingContainer root = new PendingContainer(null, null, false);
+            filter(parser, builder, root, include, 0, exclude, 0, matchAllAutomaton);
+            root.start(builder);
+            root.end(builder);
+        };
+    }
+
+    private static CharacterRunAutomaton includeAutomaton(String[] includes, CharacterRunAutomaton matchAllAutomaton) {
         if (includes == null || includes.length == 0) {
-            include = matchAllAutomaton;
-        } else {
-            Automaton includeA = Regex.simpleMatchToAutomaton(includes);
-            includeA = makeMatchDotsInFieldNames(includeA);
-            include = new CharacterRunAutomaton(includeA);
+            return matchAllAutomaton;
         }
+        Automaton includeA = Regex.simpleMatchToAutomaton(includes);
+        includeA = makeMatchDotsInFieldNames(includeA);
+        return new CharacterRunAutomaton(includeA);
+    }
 
+    private static CharacterRunAutomaton excludeAutomaton(String[] excludes) {
         Automaton excludeA;
         if (excludes == null || excludes.length == 0) {
             excludeA = Automata.makeEmpty();
@@ -220,15 +263,7 @@ public class XContentMapValues {
             excludeA = Regex.simpleMatchToAutomaton(excludes);
             excludeA = makeMatchDotsInFieldNames(excludeA);
         }
-        CharacterRunAutomaton exclude = new CharacterRunAutomaton(excludeA);
-
-        // NOTE: We cannot use Operations.minus because of the special case that
-        // we want all sub properties to match as soon as an object matches
-
-        return (map) -> filter(map,
-            include, 0,
-            exclude, 0,
-            matchAllAutomaton);
+        return new CharacterRunAutomaton(excludeA);
     }
 
     /** Make matches on objects also match dots in field names.
@@ -353,6 +388,164 @@ public class XContentMapValues {
         return filtered;
     }
 
+    /**
+     * An object or array of the filtered document that is only written to the builder once it gets its first
+     * property or value, so that objects and arrays that end up empty can be left out like the map based filter does.
+     */
+    private static final class PendingContainer {
+        private final PendingContainer parent;
+        private final String fieldName;
+        private final boolean array;
+        private boolean started;
+
+        PendingContainer(PendingContainer parent, String fieldName, boolean array) {
+            this.parent = parent;
+            this.fieldName = fieldName;
+            this.array = array;
+        }
+
+        void start(XContentBuilder builder) throws IOException {
+            if (started) {
+                return;
+            }
+            if (parent != null) {
+                parent.start(builder);
+            }
+            if (fieldName != null) {
+                builder.field(fieldName);
+            }
+            if (array) {
+                builder.startArray();
+            } else {
+                builder.startObject();
+            }
+            started = true;
+        }
+
+        void end(XContentBuilder builder) throws IOException {
+            if (started) {
+                if (array) {
+                    builder.endArray();
+                } else {
+                    builder.endObject();
+                }
+            }
+        }
+    }
+
+    private static void filter(XContentParser parser, XContentBuilder builder, PendingContainer container,
+            CharacterRunAutomaton includeAutomaton, int initialIncludeState,
+            CharacterRunAutomaton excludeAutomaton, int initialExcludeState,
+            CharacterRunAutomaton matchAllAutomaton) throws IOException {
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            assert token == XContentParser.Token.FIELD_NAME : token;
+            String key = parser.currentName();
+            token = parser.nextToken();
+
+            int includeState = step(includeAutomaton, key, initialIncludeState);
+            if (includeState == -1) {
+                parser.skipChildren();
+                continue;
+            }
+
+            int excludeState = step(excludeAutomaton, key, initialExcludeState);
+            if (excludeState != -1 && excludeAutomaton.isAccept(excludeState)) {
+                parser.skipChildren();
+                continue;
+            }
+
+            CharacterRunAutomaton subIncludeAutomaton = includeAutomaton;
+            int subIncludeState = includeState;
+            if (includeAutomaton.isAccept(includeState)) {
+                if (excludeState == -1 || excludeAutomaton.step(excludeState, '.') == -1) {
+                    // the exclude has no chances to match inner properties
+                    container.start(builder);
+                    builder.field(key);
+                    builder.copyCurrentStructure(parser);
+                    continue;
+                } else {
+                    // the object matched, so consider that the include matches every inner property
+                    // we only care about excludes now
+                    subIncludeAutomaton = matchAllAutomaton;
+                    subIncludeState = 0;
+                }
+            }
+
+            if (token == XContentParser.Token.START_OBJECT) {
+
+                subIncludeState = subIncludeAutomaton.step(subIncludeState, '.');
+                if (subIncludeState == -1) {
+                    parser.skipChildren();
+                    continue;
+                }
+                if (excludeState != -1) {
+                    excludeState = excludeAutomaton.step(excludeState, '.');
+                }
+
+                PendingContainer object = new PendingContainer(container, key, false);
+                filter(parser, builder, object,
+                        subIncludeAutomaton, subIncludeState, excludeAutomaton, excludeState, matchAllAutomaton);
+                if (includeAutomaton.isAccept(includeState)) {
+                    object.start(builder);
+                }
+                object.end(builder);
+
+            } else if (token == XContentParser.Token.START_ARRAY) {
+
+                PendingContainer array = new PendingContainer(container, key, true);
+                filterArray(parser, builder, array,
+                        subIncludeAutomaton, subIncludeState, excludeAutomaton, excludeState, matchAllAutomaton);
+                if (includeAutomaton.isAccept(includeState)) {
+                    array.start(builder);
+                }
+                array.end(builder);
+
+            } else if (includeAutomaton.isAccept(includeState)) {
+
+                // leaf property, the exclude can't have matched it or it would have been skipped above
+                container.start(builder);
+                builder.field(key);
+                builder.copyCurrentStructure(parser);
+
+            }
+        }
+    }
+
+    private static void filterArray(XContentParser parser, XContentBuilder builder, PendingContainer container,
+            CharacterRunAutomaton includeAutomaton, int initialIncludeState,
+            CharacterRunAutomaton excludeAutomaton, int initialExcludeState,
+            CharacterRunAutomaton matchAllAutomaton) throws IOException {
+        boolean isInclude = includeAutomaton.isAccept(initialIncludeState);
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+            if (token == XContentParser.Token.START_OBJECT) {
+                int includeState = includeAutomaton.step(initialIncludeState, '.');
+                if (includeState == -1) {
+                    parser.skipChildren();
+                    continue;
+                }
+                int excludeState = initialExcludeState;
+                if (excludeState != -1) {
+                    excludeState = excludeAutomaton.step(excludeState, '.');
+                }
+                PendingContainer object = new PendingContainer(container, null, false);
+                filter(parser, builder, object,
+                        includeAutomaton, includeState, excludeAutomaton, excludeState, matchAllAutomaton);
+                object.end(builder);
+            } else if (token == XContentParser.Token.START_ARRAY) {
+                PendingContainer array = new PendingContainer(container, null, true);
+                filterArray(parser, builder, array,
+                        includeAutomaton, initialIncludeState, excludeAutomaton, initialExcludeState, matchAllAutomaton);
+                array.end(builder);
+            } else if (isInclude) {
+                // #22557: only accept this array value if the key we are on is accepted:
+                container.start(builder);
+                builder.copyCurrentStructure(parser);
+            }
+        }
+    }
+
     public static boolean isObject(Object node) {
         return node instanceof Map;
     }
@@ -31,6 +31,7 @@ import org.codelibs.fesen.common.util.BigArrays;
 import org.codelibs.fesen.common.util.concurrent.ThreadContext;
 import org.codelibs.fesen.core.Nullable;
 import org.codelibs.fesen.rest.AbstractRestChannel;
+import org.codelibs.fesen.rest.ChunkedRestResponse;
 import org.codelibs.fesen.rest.RestChannel;
 import org.codelibs.fesen.rest.RestRequest;
 import org.codelibs.fesen.rest.RestResponse;
@@ -94,25 +95,30 @@ public class DefaultRestChannel extends AbstractRestChannel implements RestChann
         }
 
         boolean success = false;
+        boolean chunked = false;
         String opaque = null;
         String contentLength = null;
         try {
-            final BytesReference content = restResponse.content();
-            if (content instanceof Releasable) {
-                toClose.add((Releasable) content);
-            }
-
-            BytesReference finalContent = content;
+            boolean headRequest = false;
             try {
-                if (request.method() == RestRequest.Method.HEAD) {
-                    finalContent = BytesArray.EMPTY;
-                }
+                headRequest = request.method() == RestRequest.Method.HEAD;
             } catch (IllegalArgumentException ignored) {
                 assert restResponse.status() == RestStatus.METHOD_NOT_ALLOWED :
                     "request HTTP method is unsupported but HTTP status is not METHOD_NOT_ALLOWED(405)";
             }
 
-            final HttpResponse httpResponse = httpRequest.createResponse(restResponse.status(), finalContent);
+            final HttpResponse httpResponse;
+            if (restResponse instanceof ChunkedRestResponse && headRequest == false) {
+                // the content is serialized while it is sent, the http implementation sets the content length or the transfer encoding
+                chunked = true;
+                httpResponse = httpRequest.createResponse(restResponse.status(), ((ChunkedRestResponse) restResponse).body());
+            } else {
+                final BytesReference content = restResponse.content();
+                if (content instanceof Releasable) {
+                    toClose.add((Releasable) content);
+                }
+                httpResponse = httpRequest.createResponse(restResponse.status(), headRequest ? BytesArray.EMPTY : content);
+            }
 
             corsHandler.setCorsResponseHeaders(httpRequest, httpResponse);
 
@@ -127,9 +133,11 @@ public class DefaultRestChannel extends AbstractRestChannel implements RestChann
 
             // If our response doesn't specify a content-type header, set one
             setHeaderField(httpResponse, CONTENT_TYPE, restResponse.contentType(), false);
-            // If our response has no content-length, calculate and set one
-            contentLength = String.valueOf(restResponse.content().length());
-            setHeaderField(httpResponse, CONTENT_LENGTH, contentLength, false);
+            if (chunked == false) {
+                // If our response has no content-length, calculate and set one
+                contentLength = String.valueOf(restResponse.content().length());
+                setHeaderField(httpResponse, CONTENT_LENGTH, contentLength, false);
+            }
 
             addCookies(httpResponse);
 
@@ -138,7 +146,16 @@ public class DefaultRestChannel extends AbstractRestChannel implements RestChann
                 toClose.add((Releasable) bytesStreamOutput);
             }
 
-            ActionListener<Void> listener = ActionListener.wrap(() -> Releasables.close(toClose));
+            final ActionListener<Void> listener;
+            if (chunked) {
+                // a chunked response that fails part way through has already sent its headers and cannot be completed
+                listener = ActionListener.wrap(ignored -> Releasables.close(toClose), e -> {
+                    CloseableChannel.closeChannel(httpChannel);
+                    Releasables.close(toClose);
+                });
+            } else {
+                listener = ActionListener.wrap(() -> Releasables.close(toClose));
+            }
             httpChannel.sendResponse(httpResponse, listener);
             success = true;
         } finally {
@@ -23,6 +23,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.codelibs.fesen.common.bytes.BytesReference;
+import org.codelibs.fesen.rest.ChunkedRestResponseBody;
 import org.codelibs.fesen.rest.RestRequest;
 import org.codelibs.fesen.rest.RestStatus;
 
@@ -76,6 +77,11 @@ public class HttpPipelinedRequest implements HttpRequest, HttpPipelinedMessage {
         return new HttpPipelinedResponse(sequence, delegate.createResponse(status, content));
     }
 
+    @Override
+    public HttpPipelinedResponse createResponse(RestStatus status, ChunkedRestResponseBody content) {
+        return new HttpPipelinedResponse(sequence, delegate.createResponse(status, content));
+    }
+
     @Override
     public void release() {
         delegate.release();
@@ -21,9 +21,12 @@ package org.codelibs.fesen.http;
 
 import org.codelibs.fesen.common.bytes.BytesReference;
 import org.codelibs.fesen.core.Nullable;
+import org.codelibs.fesen.rest.ChunkedRestResponseBody;
 import org.codelibs.fesen.rest.RestRequest;
 import org.codelibs.fesen.rest.RestStatus;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -86,6 +89,22 @@ public interface HttpRequest {
      */
     HttpResponse createResponse(RestStatus status, BytesReference content);
 
+    /**
+     * Create an http response from this request and the supplied status and content that is serialized while it is sent.
+     * Implementations that cannot send a response in chunks serialize the whole content upfront, which is the default.
+     */
+    default HttpResponse createResponse(RestStatus status, ChunkedRestResponseBody content) {
+        final BytesReference bytes;
+        try {
+            bytes = content.encodeRemaining();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        final HttpResponse response = createResponse(status, bytes);
+        response.addHeader(DefaultRestChannel.CONTENT_LENGTH, String.valueOf(bytes.length()));
+        return response;
+    }
+
     @Nullable
     Exception getInboundException();
 
@@ -40,6 +40,7 @@ import org.codelibs.fesen.common.settings.Setting.Property;
 import org.codelibs.fesen.common.util.BigArrays;
 import org.codelibs.fesen.common.xcontent.NamedXContentRegistry;
 import org.codelibs.fesen.core.CheckedFunction;
+import org.codelibs.fesen.core.Nullable;
 import org.codelibs.fesen.core.internal.io.IOUtils;
 import org.codelibs.fesen.env.NodeEnvironment;
 import org.codelibs.fesen.index.analysis.AnalysisRegistry;
@@ -56,6 +57,7 @@ import org.codelibs.fesen.index.shard.SearchOperationListener;
 import org.codelibs.fesen.index.similarity.SimilarityService;
 import org.codelibs.fesen.index.store.FsDirectoryFactory;
 import org.codelibs.fesen.indices.IndicesQueryCache;
+import org.codelibs.fesen.indices.IndicesTranslogSyncService;
 import org.codelibs.fesen.indices.breaker.CircuitBreakerService;
 import org.codelibs.fesen.indices.fielddata.cache.IndicesFieldDataCache;
 import org.codelibs.fesen.indices.mapper.MapperRegistry;
@@ -413,7 +415,8 @@ public final class IndexModule {
                                         IndicesFieldDataCache indicesFieldDataCache,
                                         NamedWriteableRegistry namedWriteableRegistry,
                                         BooleanSupplier idFieldDataEnabled,
-                                        ValuesSourceRegistry valuesSourceRegistry) throws IOException {
+                                        ValuesSourceRegistry valuesSourceRegistry,
+                                        @Nullable IndicesTranslogSyncService translogSyncService) throws IOException {
         final IndexEventListener eventListener = freeze();
         Function<IndexService, CheckedFunction<DirectoryReader, DirectoryReader, IOException>> readerWrapperFactory =
             indexReaderWrapper.get() == null ? (shard) -> null : indexReaderWrapper.get();
@@ -442,7 +445,7 @@ public final class IndexModule {
                 engineFactory, circuitBreakerService, bigArrays, threadPool, scriptService, clusterService, client, queryCache,
                 directoryFactory, eventListener, readerWrapperFactory, mapperRegistry, indicesFieldDataCache, searchOperationListeners,
                 indexOperationListeners, namedWriteableRegistry, idFieldDataEnabled, allowExpensiveQueries, expressionResolver,
-                valuesSourceRegistry, recoveryStateFactory);
+                valuesSourceRegistry, recoveryStateFactory, translogSyncService);
             success = true;
             return indexService;
         } finally {
@@ -76,6 +76,7 @@ import org.codelibs.fesen.index.shard.ShardPath;
 import org.codelibs.fesen.index.similarity.SimilarityService;
 import org.codelibs.fesen.index.store.Store;
 import org.codelibs.fesen.index.translog.Translog;
+import org.codelibs.fesen.indices.IndicesTranslogSyncService;
 import org.codelibs.fesen.indices.breaker.CircuitBreakerService;
 import org.codelibs.fesen.indices.cluster.IndicesClusterStateService;
 import org.codelibs.fesen.indices.fielddata.cache.IndicesFieldDataCache;
@@ -118,6 +119,8 @@ public class IndexService extends AbstractIndexComponent implements IndicesClust
     private final ShardStoreDeleter shardStoreDeleter;
     private final IndexStorePlugin.DirectoryFactory directoryFactory;
     private final IndexStorePlugin.RecoveryStateFactory recoveryStateFactory;
+    @Nullable
+    private final IndicesTranslogSyncService translogSyncService;
     private final CheckedFunction<DirectoryReader, DirectoryReader, IOException> readerWrapper;
     private final IndexCache indexCache;
     private final MapperService mapperService;
@@ -179,7 +182,8 @@ public class IndexService extends AbstractIndexComponent implements IndicesClust
             BooleanSupplier allowExpensiveQueries,
             IndexNameExpressionResolver expressionResolver,
             ValuesSourceRegistry valuesSourceRegistry,
-            IndexStorePlugin.RecoveryStateFactory recoveryStateFactory) {
+            IndexStorePlugin.RecoveryStateFactory recoveryStateFactory,
+            @Nullable IndicesTranslogSyncService translogSyncService) {
         super(indexSettings);
         this.allowExpensiveQueries = allowExpensiveQueries;
         this.indexSettings = indexSettings;
@@ -229,6 +233,7 @@ public class IndexService extends AbstractIndexComponent implements IndicesClust
         this.nodeEnv = nodeEnv;
         this.directoryFactory = directoryFactory;
         this.recoveryStateFactory = recoveryStateFactory;
+        this.translogSyncService = translogSyncService;
         this.engineFactory = Objects.requireNonNull(engineFactory);
         // initialize this last -- otherwise if the wrapper requires any other member to be non-null we fail with an NPE
         this.readerWrapper = wrapperFactory.apply(this);
@@ -480,7 +485,8 @@ public class IndexService extends AbstractIndexComponent implements IndicesClust
                     indexingOperationListeners,
                     () -> globalCheckpointSyncer.accept(shardId),
                     retentionLeaseSyncer,
-                    circuitBreakerService);
+                    circuitBreakerService,
+                    translogSyncService);
             eventListener.indexShardStateChanged(indexShard, null, indexShard.state(), "shard created");
             eventListener.afterIndexShardCreated(indexShard);
             shards = newMapBuilder(shards).put(shardId.id(), indexShard).immutableMap();
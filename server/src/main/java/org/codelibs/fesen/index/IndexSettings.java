@@ -296,6 +296,34 @@ public final class IndexSettings {
                     Property.Dynamic,
                     Property.IndexScope);
 
+    /**
+     * Whether the engine keeps the versions of documents indexed since the last refresh in compact, paged arrays that are accounted
+     * for in the accounting circuit breaker rather than in a concurrent hash map. This saves memory and garbage for update heavy
+     * indices with many distinct ids between refreshes.
+     */
+    public static final Setting<Boolean> INDEX_COMPACT_VERSION_MAP_SETTING =
+        Setting.boolSetting("index.engine.compact_version_map.enabled", false, Property.IndexScope);
+
+    /**
+     * Whether the engine tracks the processed and persisted sequence numbers without taking a lock, see
+     * {@link org.codelibs.fesen.index.seqno.ConcurrentLocalCheckpointTracker}.
+     */
+    public static final Setting<Boolean> INDEX_CONCURRENT_CHECKPOINT_TRACKER_SETTING =
+        Setting.boolSetting("index.engine.concurrent_checkpoint_tracker.enabled", false, Property.IndexScope);
+
+    /**
+     * Whether new segments carry a bloom filter of their {@code _id} terms so that id lookups can skip segments that can't contain
+     * the id.
+     */
+    public static final Setting<Boolean> INDEX_CODEC_ID_BLOOM_FILTER_SETTING =
+        Setting.boolSetting("index.codec.id_bloom_filter.enabled", false, Property.IndexScope);
+
+    /**
+     * The false positive probability the {@code _id} bloom filters of new segments are sized for.
+     */
+    public static final Setting<Double> INDEX_CODEC_ID_BLOOM_FILTER_FPP_SETTING =
+        Setting.doubleSetting("index.codec.id_bloom_filter.false_positive_probability", 0.01, 0.0001, 0.5, Property.IndexScope);
+
     /**
      * The maximum number of refresh listeners allows on this shard.
      */
@@ -308,6 +336,12 @@ public final class IndexSettings {
     public static final Setting<Integer> MAX_SLICES_PER_SCROLL = Setting.intSetting("index.max_slices_per_scroll",
         1024, 1, Property.Dynamic, Property.IndexScope);
 
+    /**
+     * Whether the query phase may collect slices of the segments of a shard concurrently. Can be overridden per request.
+     */
+    public static final Setting<Boolean> INDEX_CONCURRENT_SEGMENT_SEARCH_SETTING =
+        Setting.boolSetting("index.search.concurrent_segment_search.enabled", false, Property.Dynamic, Property.IndexScope);
+
     /**
      * The maximum length of regex string allowed in a regexp query.
      */
@@ -423,6 +457,11 @@ public final class IndexSettings {
      */
     private volatile int maxSlicesPerScroll;
 
+    /**
+     * Whether segments of a shard may be searched concurrently.
+     */
+    private volatile boolean concurrentSegmentSearch;
+
     /**
      * The maximum length of regex string allowed in a regexp query.
      */
@@ -528,6 +567,7 @@ public final class IndexSettings {
         maxAnalyzedOffset = scopedSettings.get(MAX_ANALYZED_OFFSET_SETTING);
         maxTermsCount = scopedSettings.get(MAX_TERMS_COUNT_SETTING);
         maxRegexLength = scopedSettings.get(MAX_REGEX_LENGTH_SETTING);
+        concurrentSegmentSearch = scopedSettings.get(INDEX_CONCURRENT_SEGMENT_SEARCH_SETTING);
         this.mergePolicyConfig = new MergePolicyConfig(logger, this);
         this.indexSortConfig = new IndexSortConfig(this);
         searchIdleAfter = scopedSettings.get(INDEX_SEARCH_IDLE_AFTER);
@@ -587,6 +627,7 @@ public final class IndexSettings {
         scopedSettings.addSettingsUpdateConsumer(DEFAULT_FIELD_SETTING, this::setDefaultFields);
         scopedSettings.addSettingsUpdateConsumer(INDEX_SEARCH_IDLE_AFTER, this::setSearchIdleAfter);
         scopedSettings.addSettingsUpdateConsumer(MAX_REGEX_LENGTH_SETTING, this::setMaxRegexLength);
+        scopedSettings.addSettingsUpdateConsumer(INDEX_CONCURRENT_SEGMENT_SEARCH_SETTING, this::setConcurrentSegmentSearch);
         scopedSettings.addSettingsUpdateConsumer(DEFAULT_PIPELINE, this::setDefaultPipeline);
         scopedSettings.addSettingsUpdateConsumer(FINAL_PIPELINE, this::setRequiredPipeline);
         scopedSettings.addSettingsUpdateConsumer(INDEX_SOFT_DELETES_RETENTION_OPERATIONS_SETTING, this::setSoftDeleteRetentionOperations);
@@ -1009,6 +1050,17 @@ public final class IndexSettings {
         this.maxSlicesPerScroll = value;
     }
 
+    /**
+     * Returns <code>true</code> if the segments of a shard may be searched concurrently.
+     */
+    public boolean isConcurrentSegmentSearchEnabled() {
+        return concurrentSegmentSearch;
+    }
+
+    private void setConcurrentSegmentSearch(boolean concurrentSegmentSearch) {
+        this.concurrentSegmentSearch = concurrentSegmentSearch;
+    }
+
     /**
      * The maximum length of regex string allowed in a regexp query.
      */
@@ -19,6 +19,7 @@
 
 package org.codelibs.fesen.index.cache.request;
 
+import org.codelibs.fesen.Version;
 import org.codelibs.fesen.common.io.stream.StreamInput;
 import org.codelibs.fesen.common.io.stream.StreamOutput;
 import org.codelibs.fesen.common.io.stream.Writeable;
@@ -34,6 +35,10 @@ public class RequestCacheStats implements Writeable, ToXContentFragment {
     private long evictions;
     private long hitCount;
     private long missCount;
+    private long hitsMemorySize;
+    private long hitsEvictions;
+    private long hitsHitCount;
+    private long hitsMissCount;
 
     public RequestCacheStats() {
     }
@@ -43,6 +48,12 @@ public class RequestCacheStats implements Writeable, ToXContentFragment {
         evictions = in.readVLong();
         hitCount = in.readVLong();
         missCount = in.readVLong();
+        if (in.getVersion().onOrAfter(Version.V_0_17_0)) {
+            hitsMemorySize = in.readVLong();
+            hitsEvictions = in.readVLong();
+            hitsHitCount = in.readVLong();
+            hitsMissCount = in.readVLong();
+        }
     }
 
     public RequestCacheStats(long memorySize, long evictions, long hitCount, long missCount) {
@@ -52,11 +63,24 @@ public class RequestCacheStats implements Writeable, ToXContentFragment {
         this.missCount = missCount;
     }
 
+    public RequestCacheStats(long memorySize, long evictions, long hitCount, long missCount,
+                             long hitsMemorySize, long hitsEvictions, long hitsHitCount, long hitsMissCount) {
+        this(memorySize, evictions, hitCount, missCount);
+        this.hitsMemorySize = hitsMemorySize;
+        this.hitsEvictions = hitsEvictions;
+        this.hitsHitCount = hitsHitCount;
+        this.hitsMissCount = hitsMissCount;
+    }
+
     public void add(RequestCacheStats stats) {
         this.memorySize += stats.memorySize;
         this.evictions += stats.evictions;
         this.hitCount += stats.hitCount;
         this.missCount += stats.missCount;
+        this.hitsMemorySize += stats.hitsMemorySize;
+        this.hitsEvictions += stats.hitsEvictions;
+        this.hitsHitCount += stats.hitsHitCount;
+        this.hitsMissCount += stats.hitsMissCount;
     }
 
     public long getMemorySizeInBytes() {
@@ -79,12 +103,41 @@ public class RequestCacheStats implements Writeable, ToXContentFragment {
         return this.missCount;
     }
 
+    /**
+     * The memory used by cached results of requests that return hits.
+     */
+    public long getHitsMemorySizeInBytes() {
+        return this.hitsMemorySize;
+    }
+
+    public ByteSizeValue getHitsMemorySize() {
+        return new ByteSizeValue(hitsMemorySize);
+    }
+
+    public long getHitsEvictions() {
+        return this.hitsEvictions;
+    }
+
+    public long getHitsHitCount() {
+        return this.hitsHitCount;
+    }
+
+    public long getHitsMissCount() {
+        return this.hitsMissCount;
+    }
+
     @Override
     public void writeTo(StreamOutput out) throws IOException {
         out.writeVLong(memorySize);
         out.writeVLong(evictions);
         out.writeVLong(hitCount);
         out.writeVLong(missCount);
+        if (out.getVersion().onOrAfter(Version.V_0_17_0)) {
+            out.writeVLong(hitsMemorySize);
+            out.writeVLong(hitsEvictions);
+            out.writeVLong(hitsHitCount);
+            out.writeVLong(hitsMissCount);
+        }
     }
 
     @Override
@@ -94,6 +147,12 @@ public class RequestCacheStats implements Writeable, ToXContentFragment {
         builder.field(Fields.EVICTIONS, getEvictions());
         builder.field(Fields.HIT_COUNT, getHitCount());
         builder.field(Fields.MISS_COUNT, getMissCount());
+        builder.startObject(Fields.HITS);
+        builder.humanReadableField(Fields.MEMORY_SIZE_IN_BYTES, Fields.MEMORY_SIZE, getHitsMemorySize());
+        builder.field(Fields.EVICTIONS, getHitsEvictions());
+        builder.field(Fields.HIT_COUNT, getHitsHitCount());
+        builder.field(Fields.MISS_COUNT, getHitsMissCount());
+        builder.endObject();
         builder.endObject();
         return builder;
     }
@@ -105,5 +164,6 @@ public class RequestCacheStats implements Writeable, ToXContentFragment {
         static final String EVICTIONS = "evictions";
         static final String HIT_COUNT = "hit_count";
         static final String MISS_COUNT = "miss_count";
+        static final String HITS = "hits";
     }
 }
@@ -37,6 +37,14 @@ public final class ShardRequestCache {
         return new RequestCacheStats(totalMetric.count(), evictionsMetric.count(), hitCount.count(), missCount.count());
     }
 
+    /**
+     * Returns the stats of this cache together with the stats of the cache that holds results of requests returning hits.
+     */
+    public RequestCacheStats stats(ShardRequestCache hitsCache) {
+        return new RequestCacheStats(totalMetric.count(), evictionsMetric.count(), hitCount.count(), missCount.count(),
+            hitsCache.totalMetric.count(), hitsCache.evictionsMetric.count(), hitsCache.hitCount.count(), hitsCache.missCount.count());
+    }
+
     public void onHit() {
         hitCount.inc();
     }
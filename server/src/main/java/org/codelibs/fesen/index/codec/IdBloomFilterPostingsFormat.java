@@ -0,0 +1,393 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.index.codec;
+
+import org.apache.lucene.codecs.CodecUtil;
+import org.apache.lucene.codecs.FieldsConsumer;
+import org.apache.lucene.codecs.FieldsProducer;
+import org.apache.lucene.codecs.NormsProducer;
+import org.apache.lucene.codecs.PostingsFormat;
+import org.apache.lucene.index.FieldInfo;
+import org.apache.lucene.index.Fields;
+import org.apache.lucene.index.FilterLeafReader;
+import org.apache.lucene.index.IndexFileNames;
+import org.apache.lucene.index.SegmentReadState;
+import org.apache.lucene.index.SegmentWriteState;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.store.ChecksumIndexInput;
+import org.apache.lucene.store.DataInput;
+import org.apache.lucene.store.DataOutput;
+import org.apache.lucene.store.IndexOutput;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.Accountables;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.IOUtils;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.codelibs.fesen.common.hash.MurmurHash3;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link PostingsFormat} that writes a bloom filter of the terms of each field next to the postings of a delegate format, and
+ * answers {@link TermsEnum#seekExact(BytesRef)} for terms that the filter rules out without touching the terms dictionary.
+ * <p>
+ * This is meant for the {@code _id} field: the engine looks up the id of every document that isn't an append in every segment of
+ * the shard, and most of those lookups miss because the id lives in at most one segment. The filter is sized for the number of
+ * documents of the segment and the configured false positive probability, is held on heap and counts how often it saved a seek
+ * and how often it failed to, see {@link BloomFilteredTerms}.
+ */
+public final class IdBloomFilterPostingsFormat extends PostingsFormat {
+
+    public static final String NAME = "FesenIdBloom";
+
+    static final String BLOOM_CODEC_NAME = "FesenIdBloomFilter";
+    static final int VERSION_START = 0;
+    static final int VERSION_CURRENT = VERSION_START;
+    static final String BLOOM_EXTENSION = "bfi";
+
+    private final PostingsFormat delegate;
+    private final double falsePositiveProbability;
+
+    /**
+     * Only used to read segments, the delegate and the sizing of the filters are read from the index.
+     */
+    public IdBloomFilterPostingsFormat() {
+        super(NAME);
+        this.delegate = null;
+        this.falsePositiveProbability = Double.NaN;
+    }
+
+    public IdBloomFilterPostingsFormat(PostingsFormat delegate, double falsePositiveProbability) {
+        super(NAME);
+        if (falsePositiveProbability <= 0 || falsePositiveProbability >= 1) {
+            throw new IllegalArgumentException("false positive probability must be in (0, 1) but was [" + falsePositiveProbability + "]");
+        }
+        this.delegate = delegate;
+        this.falsePositiveProbability = falsePositiveProbability;
+    }
+
+    @Override
+    public FieldsConsumer fieldsConsumer(SegmentWriteState state) throws IOException {
+        if (delegate == null) {
+            throw new UnsupportedOperationException("this postings format can only be used to read segments");
+        }
+        return new BloomFilteredFieldsConsumer(delegate, delegate.fieldsConsumer(state), state, falsePositiveProbability);
+    }
+
+    @Override
+    public FieldsProducer fieldsProducer(SegmentReadState state) throws IOException {
+        return new BloomFilteredFieldsProducer(state);
+    }
+
+    @Override
+    public String toString() {
+        return NAME + "(" + delegate + ")";
+    }
+
+    private static String bloomFileName(String segmentName, String segmentSuffix) {
+        return IndexFileNames.segmentFileName(segmentName, segmentSuffix, BLOOM_EXTENSION);
+    }
+
+    private static final class BloomFilteredFieldsConsumer extends FieldsConsumer {
+        private final PostingsFormat delegateFormat;
+        private final FieldsConsumer delegate;
+        private final SegmentWriteState state;
+        private final double falsePositiveProbability;
+
+        BloomFilteredFieldsConsumer(PostingsFormat delegateFormat, FieldsConsumer delegate, SegmentWriteState state,
+                                    double falsePositiveProbability) {
+            this.delegateFormat = delegateFormat;
+            this.delegate = delegate;
+            this.state = state;
+            this.falsePositiveProbability = falsePositiveProbability;
+        }
+
+        @Override
+        public void write(Fields fields, NormsProducer norms) throws IOException {
+            delegate.write(fields, norms);
+            // the number of documents bounds the number of ids, which is all that is known up front without an extra pass
+            final long expectedTerms = Math.max(1, state.segmentInfo.maxDoc());
+            final List<FieldInfo> fieldInfos = new ArrayList<>();
+            final List<BloomFilter> filters = new ArrayList<>();
+            for (String field : fields) {
+                final Terms terms = fields.terms(field);
+                if (terms == null) {
+                    continue;
+                }
+                final BloomFilter filter = BloomFilter.create(expectedTerms, falsePositiveProbability);
+                final TermsEnum termsEnum = terms.iterator();
+                for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next()) {
+                    filter.add(term);
+                }
+                fieldInfos.add(state.fieldInfos.fieldInfo(field));
+                filters.add(filter);
+            }
+            final String fileName = bloomFileName(state.segmentInfo.name, state.segmentSuffix);
+            try (IndexOutput out = state.directory.createOutput(fileName, state.context)) {
+                CodecUtil.writeIndexHeader(out, BLOOM_CODEC_NAME, VERSION_CURRENT, state.segmentInfo.getId(), state.segmentSuffix);
+                out.writeString(delegateFormat.getName());
+                out.writeVInt(filters.size());
+                for (int i = 0; i < filters.size(); i++) {
+                    out.writeVInt(fieldInfos.get(i).number);
+                    filters.get(i).writeTo(out);
+                }
+                CodecUtil.writeFooter(out);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+    }
+
+    private static final class BloomFilteredFieldsProducer extends FieldsProducer {
+        private final FieldsProducer delegate;
+        private final Map<String, BloomFilter> filters;
+
+        BloomFilteredFieldsProducer(SegmentReadState state) throws IOException {
+            final String fileName = bloomFileName(state.segmentInfo.name, state.segmentSuffix);
+            final Map<String, BloomFilter> filters = new HashMap<>();
+            final String delegateName;
+            try (ChecksumIndexInput in = state.directory.openChecksumInput(fileName, state.context)) {
+                Throwable priorE = null;
+                String name = null;
+                try {
+                    CodecUtil.checkIndexHeader(in, BLOOM_CODEC_NAME, VERSION_START, VERSION_CURRENT, state.segmentInfo.getId(),
+                        state.segmentSuffix);
+                    name = in.readString();
+                    final int numFields = in.readVInt();
+                    for (int i = 0; i < numFields; i++) {
+                        final FieldInfo fieldInfo = state.fieldInfos.fieldInfo(in.readVInt());
+                        filters.put(fieldInfo.name, BloomFilter.readFrom(in));
+                    }
+                } catch (Throwable t) {
+                    priorE = t;
+                } finally {
+                    CodecUtil.checkFooter(in, priorE);
+                }
+                delegateName = name;
+            }
+            this.filters = Collections.unmodifiableMap(filters);
+            this.delegate = PostingsFormat.forName(delegateName).fieldsProducer(state);
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return delegate.iterator();
+        }
+
+        @Override
+        public Terms terms(String field) throws IOException {
+            final Terms terms = delegate.terms(field);
+            final BloomFilter filter = filters.get(field);
+            if (terms == null || filter == null) {
+                return terms;
+            }
+            return new BloomFilteredTerms(terms, filter);
+        }
+
+        @Override
+        public int size() {
+            return delegate.size();
+        }
+
+        @Override
+        public void checkIntegrity() throws IOException {
+            // the filters are verified against their checksum when they are loaded
+            delegate.checkIntegrity();
+        }
+
+        @Override
+        public long ramBytesUsed() {
+            long ramBytesUsed = delegate.ramBytesUsed();
+            for (BloomFilter filter : filters.values()) {
+                ramBytesUsed += filter.ramBytesUsed();
+            }
+            return ramBytesUsed;
+        }
+
+        @Override
+        public Collection<Accountable> getChildResources() {
+            final List<Accountable> resources = new ArrayList<>(Accountables.namedAccountables("bloom filter", filters));
+            resources.add(Accountables.namedAccountable("delegate", delegate));
+            return Collections.unmodifiableList(resources);
+        }
+
+        @Override
+        public void close() throws IOException {
+            IOUtils.close(delegate);
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + "(fields=" + filters.keySet() + ",delegate=" + delegate + ")";
+        }
+    }
+
+    /**
+     * The {@link Terms} of a field with a bloom filter. Exposes the memory used by the filter and how it performed on the
+     * {@link TermsEnum#seekExact(BytesRef) exact seeks} of this segment so far.
+     */
+    public static final class BloomFilteredTerms extends FilterLeafReader.FilterTerms {
+        private final BloomFilter filter;
+
+        BloomFilteredTerms(Terms in, BloomFilter filter) {
+            super(in);
+            this.filter = filter;
+        }
+
+        @Override
+        public TermsEnum iterator() throws IOException {
+            return new BloomFilteredTermsEnum(in.iterator(), filter);
+        }
+
+        /** The heap used by the bloom filter. */
+        public long filterRamBytesUsed() {
+            return filter.ramBytesUsed();
+        }
+
+        /** The number of exact seeks that were checked against the filter. */
+        public long lookups() {
+            return filter.lookups.sum();
+        }
+
+        /** The number of exact seeks that the filter answered without seeking the terms dictionary. */
+        public long skippedLookups() {
+            return filter.skipped.sum();
+        }
+
+        /** The number of exact seeks that passed the filter but didn't find the term. */
+        public long falsePositives() {
+            return filter.falsePositives.sum();
+        }
+    }
+
+    private static final class BloomFilteredTermsEnum extends FilterLeafReader.FilterTermsEnum {
+        private final BloomFilter filter;
+
+        BloomFilteredTermsEnum(TermsEnum in, BloomFilter filter) {
+            super(in);
+            this.filter = filter;
+        }
+
+        @Override
+        public boolean seekExact(BytesRef text) throws IOException {
+            filter.lookups.increment();
+            if (filter.mightContain(text) == false) {
+                filter.skipped.increment();
+                return false;
+            }
+            final boolean found = in.seekExact(text);
+            if (found == false) {
+                filter.falsePositives.increment();
+            }
+            return found;
+        }
+    }
+
+    /**
+     * A bloom filter over the murmur3 hashes of terms, using double hashing to derive the bit positions.
+     */
+    static final class BloomFilter implements Accountable {
+        private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(BloomFilter.class)
+            + 3 * RamUsageEstimator.shallowSizeOfInstance(LongAdder.class);
+        private static final int MAX_HASH_FUNCTIONS = 16;
+
+        private final long[] bits;
+        private final long numBits;
+        private final int numHashFunctions;
+        private final MurmurHash3.Hash128 hash = new MurmurHash3.Hash128();
+
+        final LongAdder lookups = new LongAdder();
+        final LongAdder skipped = new LongAdder();
+        final LongAdder falsePositives = new LongAdder();
+
+        private BloomFilter(long[] bits, int numHashFunctions) {
+            this.bits = bits;
+            this.numBits = (long) bits.length * Long.SIZE;
+            this.numHashFunctions = numHashFunctions;
+        }
+
+        static BloomFilter create(long expectedInsertions, double falsePositiveProbability) {
+            final double ln2 = Math.log(2);
+            final long optimalBits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveProbability) / (ln2 * ln2));
+            final int numWords = Math.toIntExact(Math.max(1, (optimalBits + Long.SIZE - 1) / Long.SIZE));
+            final long numBits = (long) numWords * Long.SIZE;
+            final long optimalHashFunctions = Math.round((double) numBits / expectedInsertions * ln2);
+            final int numHashFunctions = (int) Math.max(1, Math.min(MAX_HASH_FUNCTIONS, optimalHashFunctions));
+            return new BloomFilter(new long[numWords], numHashFunctions);
+        }
+
+        void add(BytesRef term) {
+            final MurmurHash3.Hash128 hash = MurmurHash3.hash128(term.bytes, term.offset, term.length, 0, this.hash);
+            long combined = hash.h1;
+            for (int i = 0; i < numHashFunctions; i++) {
+                final long bit = (combined & Long.MAX_VALUE) % numBits;
+                bits[(int) (bit >>> 6)] |= 1L << bit;
+                combined += hash.h2;
+            }
+        }
+
+        boolean mightContain(BytesRef term) {
+            final MurmurHash3.Hash128 hash = MurmurHash3.hash128(term.bytes, term.offset, term.length, 0, new MurmurHash3.Hash128());
+            long combined = hash.h1;
+            for (int i = 0; i < numHashFunctions; i++) {
+                final long bit = (combined & Long.MAX_VALUE) % numBits;
+                if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                    return false;
+                }
+                combined += hash.h2;
+            }
+            return true;
+        }
+
+        void writeTo(DataOutput out) throws IOException {
+            out.writeVInt(numHashFunctions);
+            out.writeVInt(bits.length);
+            for (long word : bits) {
+                out.writeLong(word);
+            }
+        }
+
+        static BloomFilter readFrom(DataInput in) throws IOException {
+            final int numHashFunctions = in.readVInt();
+            final long[] bits = new long[in.readVInt()];
+            for (int i = 0; i < bits.length; i++) {
+                bits[i] = in.readLong();
+            }
+            return new BloomFilter(bits, numHashFunctions);
+        }
+
+        @Override
+        public long ramBytesUsed() {
+            return BASE_RAM_BYTES_USED + RamUsageEstimator.sizeOf(bits);
+        }
+    }
+}
@@ -23,7 +23,9 @@ import org.apache.logging.log4j.Logger;
 import org.apache.lucene.codecs.Codec;
 import org.apache.lucene.codecs.PostingsFormat;
 import org.codelibs.fesen.common.lucene.Lucene;
+import org.codelibs.fesen.index.IndexSettings;
 import org.codelibs.fesen.index.mapper.CompletionFieldMapper;
+import org.codelibs.fesen.index.mapper.IdFieldMapper;
 import org.codelibs.fesen.index.mapper.MappedFieldType;
 import org.codelibs.fesen.index.mapper.MapperService;
 import org.apache.lucene.codecs.lucene87.Lucene87Codec;
@@ -35,10 +37,13 @@ import org.apache.lucene.codecs.lucene87.Lucene87Codec;
  * allows users to change the low level postings format for individual fields
  * per index in real time via the mapping API. If no specific postings format is
  * configured for a specific field the default postings format is used.
+ * If {@link IndexSettings#INDEX_CODEC_ID_BLOOM_FILTER_SETTING enabled} the
+ * {@code _id} field is written with an {@link IdBloomFilterPostingsFormat}.
  */
 public class PerFieldMappingPostingFormatCodec extends Lucene87Codec {
     private final Logger logger;
     private final MapperService mapperService;
+    private final PostingsFormat idPostingsFormat;
 
     static {
         assert Codec.forName(Lucene.LATEST_CODEC).getClass().isAssignableFrom(PerFieldMappingPostingFormatCodec.class) :
@@ -49,6 +54,13 @@ public class PerFieldMappingPostingFormatCodec extends Lucene87Codec {
         super(compressionMode);
         this.mapperService = mapperService;
         this.logger = logger;
+        final IndexSettings indexSettings = mapperService.getIndexSettings();
+        if (indexSettings.getValue(IndexSettings.INDEX_CODEC_ID_BLOOM_FILTER_SETTING)) {
+            this.idPostingsFormat = new IdBloomFilterPostingsFormat(super.getPostingsFormatForField(IdFieldMapper.NAME),
+                indexSettings.getValue(IndexSettings.INDEX_CODEC_ID_BLOOM_FILTER_FPP_SETTING));
+        } else {
+            this.idPostingsFormat = null;
+        }
     }
 
     @Override
@@ -58,6 +70,8 @@ public class PerFieldMappingPostingFormatCodec extends Lucene87Codec {
             logger.warn("no index mapper found for field: [{}] returning default postings format", field);
         } else if (fieldType instanceof CompletionFieldMapper.CompletionFieldType) {
             return CompletionFieldMapper.CompletionFieldType.postingsFormat();
+        } else if (idPostingsFormat != null && IdFieldMapper.NAME.equals(field)) {
+            return idPostingsFormat;
         }
         return super.getPostingsFormatForField(field);
     }
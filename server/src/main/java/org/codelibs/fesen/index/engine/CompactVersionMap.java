@@ -0,0 +1,308 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.index.engine;
+
+import com.carrotsearch.hppc.BitMixer;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.codelibs.fesen.common.lease.Releasable;
+import org.codelibs.fesen.common.lease.Releasables;
+import org.codelibs.fesen.common.util.BigArrays;
+import org.codelibs.fesen.common.util.BytesRefHash;
+import org.codelibs.fesen.common.util.IntArray;
+import org.codelibs.fesen.common.util.LongArray;
+import org.codelibs.fesen.index.translog.Translog;
+
+import java.util.AbstractMap;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A map from _uid to {@link IndexVersionValue} for the {@link LiveVersionMap} of update-heavy indices. Rather than a
+ * concurrent hash map with an entry, a key and a value object per document, the ids are packed into the byte pages of a
+ * {@link BytesRefHash} and the versions, sequence numbers, terms and translog locations live in parallel arrays, all of them
+ * allocated through {@link BigArrays} and accounted for by their actual size. Values are materialized on lookup.
+ * <p>
+ * The map is split into segments that are each guarded by their own lock, so indexing threads working on different ids rarely
+ * contend. Removed ids keep their slot until the map is released, which happens on refresh, and reuse it if they are added
+ * again. Once {@link #close() closed} the map behaves as if it was empty and ignores puts and removes: a lookup or a write that
+ * still holds on to a map dropped by a refresh falls back to the reader that refresh opened, exactly as if it had seen the
+ * new map, and like the concurrent hash maps it replaces, which are simply left to the garbage collector.
+ */
+final class CompactVersionMap extends AbstractMap<BytesRef, VersionValue> implements Accountable, Releasable {
+
+    private static final int SEGMENT_BITS = 4;
+    private static final int NUM_SEGMENTS = 1 << SEGMENT_BITS;
+    private static final long MIN_SEGMENT_CAPACITY = 16;
+
+    private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(CompactVersionMap.class)
+        + RamUsageEstimator.shallowSizeOf(new Segment[NUM_SEGMENTS])
+        + NUM_SEGMENTS * RamUsageEstimator.shallowSizeOfInstance(Segment.class);
+
+    /** Location size of entries that were removed. */
+    private static final int REMOVED = -2;
+    /** Location size of entries that have no translog location. */
+    private static final int NO_LOCATION = -1;
+
+    private final Segment[] segments = new Segment[NUM_SEGMENTS];
+
+    CompactVersionMap(BigArrays bigArrays, int expectedSize) {
+        final long segmentCapacity = Math.max(MIN_SEGMENT_CAPACITY, expectedSize / NUM_SEGMENTS);
+        boolean success = false;
+        try {
+            for (int i = 0; i < NUM_SEGMENTS; i++) {
+                segments[i] = new Segment(bigArrays, segmentCapacity);
+            }
+            success = true;
+        } finally {
+            if (success == false) {
+                close();
+            }
+        }
+    }
+
+    private Segment segment(int hash) {
+        // BytesRefHash picks slots from the low bits of the same mixed hash, so use the high bits to pick the segment
+        return segments[BitMixer.mix32(hash) >>> (Integer.SIZE - SEGMENT_BITS)];
+    }
+
+    @Override
+    public VersionValue get(Object key) {
+        if (key instanceof BytesRef == false) {
+            return null;
+        }
+        final BytesRef uid = (BytesRef) key;
+        final int hash = uid.hashCode();
+        return segment(hash).get(uid, hash);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public VersionValue put(BytesRef uid, VersionValue value) {
+        if (value instanceof IndexVersionValue == false) {
+            throw new IllegalArgumentException("only index versions can be stored, got [" + value + "]");
+        }
+        final int hash = uid.hashCode();
+        return segment(hash).put(uid, hash, value);
+    }
+
+    @Override
+    public VersionValue remove(Object key) {
+        if (key instanceof BytesRef == false) {
+            return null;
+        }
+        final BytesRef uid = (BytesRef) key;
+        final int hash = uid.hashCode();
+        return segment(hash).remove(uid, hash);
+    }
+
+    @Override
+    public int size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return (int) Math.min(Integer.MAX_VALUE, size);
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (Segment segment : segments) {
+            if (segment.size() > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns a point in time copy of the entries of this map. This materializes every entry and is meant for tests and
+     * assertions only.
+     */
+    @Override
+    public Set<Entry<BytesRef, VersionValue>> entrySet() {
+        final Map<BytesRef, VersionValue> copy = new HashMap<>();
+        for (Segment segment : segments) {
+            segment.copyTo(copy);
+        }
+        return Collections.unmodifiableMap(copy).entrySet();
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        long ramBytesUsed = BASE_RAM_BYTES_USED;
+        for (Segment segment : segments) {
+            if (segment != null) {
+                ramBytesUsed += segment.ramBytesUsed();
+            }
+        }
+        return ramBytesUsed;
+    }
+
+    @Override
+    public void close() {
+        Releasables.close(segments);
+    }
+
+    private static final class Segment implements Releasable {
+        private final BigArrays bigArrays;
+        private final BytesRef spare = new BytesRef();
+        private BytesRefHash ids;
+        private LongArray versions;
+        private LongArray seqNos;
+        private LongArray terms;
+        private LongArray locationGenerations;
+        private LongArray locationOffsets;
+        private IntArray locationSizes;
+        private long size;
+        private boolean closed;
+
+        Segment(BigArrays bigArrays, long capacity) {
+            this.bigArrays = bigArrays;
+            boolean success = false;
+            try {
+                ids = new BytesRefHash(capacity, bigArrays);
+                versions = bigArrays.newLongArray(capacity, false);
+                seqNos = bigArrays.newLongArray(capacity, false);
+                terms = bigArrays.newLongArray(capacity, false);
+                locationGenerations = bigArrays.newLongArray(capacity, false);
+                locationOffsets = bigArrays.newLongArray(capacity, false);
+                locationSizes = bigArrays.newIntArray(capacity, false);
+                success = true;
+            } finally {
+                if (success == false) {
+                    close();
+                }
+            }
+        }
+
+        synchronized VersionValue get(BytesRef uid, int hash) {
+            if (closed) {
+                return null;
+            }
+            final long id = ids.find(uid, hash);
+            if (id < 0 || locationSizes.get(id) == REMOVED) {
+                return null;
+            }
+            return valueAt(id);
+        }
+
+        synchronized VersionValue put(BytesRef uid, int hash, VersionValue value) {
+            if (closed) {
+                // an indexing thread may still hold on to a map that a refresh released, its document is in the reader
+                // that refresh opened, so the version can be dropped like a concurrent hash map would have been
+                return null;
+            }
+            long id = ids.add(uid, hash);
+            final VersionValue previous;
+            if (id < 0) {
+                id = -1 - id;
+                if (locationSizes.get(id) == REMOVED) {
+                    previous = null;
+                    size++;
+                } else {
+                    previous = valueAt(id);
+                }
+            } else {
+                versions = bigArrays.grow(versions, id + 1);
+                seqNos = bigArrays.grow(seqNos, id + 1);
+                terms = bigArrays.grow(terms, id + 1);
+                locationGenerations = bigArrays.grow(locationGenerations, id + 1);
+                locationOffsets = bigArrays.grow(locationOffsets, id + 1);
+                locationSizes = bigArrays.grow(locationSizes, id + 1);
+                previous = null;
+                size++;
+            }
+            versions.set(id, value.version);
+            seqNos.set(id, value.seqNo);
+            terms.set(id, value.term);
+            final Translog.Location location = value.getLocation();
+            if (location == null) {
+                locationSizes.set(id, NO_LOCATION);
+            } else {
+                assert location.size >= 0 : "negative location size [" + location.size + "]";
+                locationGenerations.set(id, location.generation);
+                locationOffsets.set(id, location.translogLocation);
+                locationSizes.set(id, location.size);
+            }
+            return previous;
+        }
+
+        synchronized VersionValue remove(BytesRef uid, int hash) {
+            if (closed) {
+                return null;
+            }
+            final long id = ids.find(uid, hash);
+            if (id < 0 || locationSizes.get(id) == REMOVED) {
+                return null;
+            }
+            final VersionValue previous = valueAt(id);
+            locationSizes.set(id, REMOVED);
+            size--;
+            return previous;
+        }
+
+        synchronized long size() {
+            return closed ? 0 : size;
+        }
+
+        synchronized void copyTo(Map<BytesRef, VersionValue> map) {
+            if (closed) {
+                return;
+            }
+            for (long id = 0; id < ids.size(); id++) {
+                if (locationSizes.get(id) != REMOVED) {
+                    map.put(BytesRef.deepCopyOf(ids.get(id, spare)), valueAt(id));
+                }
+            }
+        }
+
+        private VersionValue valueAt(long id) {
+            final int locationSize = locationSizes.get(id);
+            assert locationSize != REMOVED;
+            final Translog.Location location = locationSize == NO_LOCATION ? null
+                : new Translog.Location(locationGenerations.get(id), locationOffsets.get(id), locationSize);
+            return new IndexVersionValue(location, versions.get(id), seqNos.get(id), terms.get(id));
+        }
+
+        synchronized long ramBytesUsed() {
+            if (closed) {
+                return 0;
+            }
+            return ids.ramBytesUsed() + versions.ramBytesUsed() + seqNos.ramBytesUsed() + terms.ramBytesUsed()
+                + locationGenerations.ramBytesUsed() + locationOffsets.ramBytesUsed() + locationSizes.ramBytesUsed();
+        }
+
+        @Override
+        public synchronized void close() {
+            if (closed == false) {
+                closed = true;
+                Releasables.close(ids, versions, seqNos, terms, locationGenerations, locationOffsets, locationSizes);
+            }
+        }
+    }
+}
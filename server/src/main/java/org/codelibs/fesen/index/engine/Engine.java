@@ -30,6 +30,7 @@ import org.apache.lucene.index.SegmentCommitInfo;
 import org.apache.lucene.index.SegmentInfos;
 import org.apache.lucene.index.SegmentReader;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.index.Terms;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.QueryCache;
 import org.apache.lucene.search.QueryCachingPolicy;
@@ -63,6 +64,8 @@ import org.codelibs.fesen.core.CheckedRunnable;
 import org.codelibs.fesen.core.Nullable;
 import org.codelibs.fesen.core.TimeValue;
 import org.codelibs.fesen.index.VersionType;
+import org.codelibs.fesen.index.codec.IdBloomFilterPostingsFormat.BloomFilteredTerms;
+import org.codelibs.fesen.index.mapper.IdFieldMapper;
 import org.codelibs.fesen.index.mapper.MapperService;
 import org.codelibs.fesen.index.mapper.Mapping;
 import org.codelibs.fesen.index.mapper.ParsedDocument;
@@ -831,6 +834,17 @@ public abstract class Engine implements Closeable {
         stats.addNormsMemoryInBytes(guardedRamBytesUsed(segmentReader.getNormsReader()));
         stats.addPointsMemoryInBytes(guardedRamBytesUsed(segmentReader.getPointsReader()));
         stats.addDocValuesMemoryInBytes(guardedRamBytesUsed(segmentReader.getDocValuesReader()));
+        final Terms idTerms;
+        try {
+            idTerms = segmentReader.terms(IdFieldMapper.NAME);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (idTerms instanceof BloomFilteredTerms) {
+            final BloomFilteredTerms bloomFilteredTerms = (BloomFilteredTerms) idTerms;
+            stats.addIdBloomFilterStats(bloomFilteredTerms.filterRamBytesUsed(), bloomFilteredTerms.lookups(),
+                bloomFilteredTerms.skippedLookups(), bloomFilteredTerms.falsePositives());
+        }
 
         if (includeSegmentFileSizes) {
             // TODO: consider moving this to StoreStats
@@ -55,6 +55,7 @@ import org.apache.lucene.util.InfoStream;
 import org.codelibs.fesen.Assertions;
 import org.codelibs.fesen.ExceptionsHelper;
 import org.codelibs.fesen.action.index.IndexRequest;
+import org.codelibs.fesen.common.breaker.CircuitBreaker;
 import org.codelibs.fesen.common.lease.Releasable;
 import org.codelibs.fesen.common.lucene.LoggerInfoStream;
 import org.codelibs.fesen.common.lucene.Lucene;
@@ -64,6 +65,7 @@ import org.codelibs.fesen.common.lucene.uid.VersionsAndSeqNoResolver;
 import org.codelibs.fesen.common.lucene.uid.VersionsAndSeqNoResolver.DocIdAndSeqNo;
 import org.codelibs.fesen.common.metrics.CounterMetric;
 import org.codelibs.fesen.common.unit.ByteSizeValue;
+import org.codelibs.fesen.common.util.BigArrays;
 import org.codelibs.fesen.common.util.concurrent.AbstractRunnable;
 import org.codelibs.fesen.common.util.concurrent.KeyedLock;
 import org.codelibs.fesen.common.util.concurrent.ReleasableLock;
@@ -84,6 +86,7 @@ import org.codelibs.fesen.index.mapper.SourceFieldMapper;
 import org.codelibs.fesen.index.mapper.Uid;
 import org.codelibs.fesen.index.merge.MergeStats;
 import org.codelibs.fesen.index.merge.OnGoingMerge;
+import org.codelibs.fesen.index.seqno.ConcurrentLocalCheckpointTracker;
 import org.codelibs.fesen.index.seqno.LocalCheckpointTracker;
 import org.codelibs.fesen.index.seqno.SeqNoStats;
 import org.codelibs.fesen.index.seqno.SequenceNumbers;
@@ -142,7 +145,7 @@ public class InternalEngine extends Engine {
 
     // A uid (in the form of BytesRef) to the version map
     // we use the hashed variant since we iterate over it and check removal and additions on existing keys
-    private final LiveVersionMap versionMap = new LiveVersionMap();
+    private final LiveVersionMap versionMap;
 
     private volatile SegmentInfos lastCommittedSegmentInfos;
 
@@ -202,12 +205,26 @@ public class InternalEngine extends Engine {
     private volatile String forceMergeUUID;
 
     public InternalEngine(EngineConfig engineConfig) {
-        this(engineConfig, IndexWriter.MAX_DOCS, LocalCheckpointTracker::new);
+        this(engineConfig, IndexWriter.MAX_DOCS, localCheckpointTrackerSupplier(engineConfig.getIndexSettings()));
+    }
+
+    private static BiFunction<Long, Long, LocalCheckpointTracker> localCheckpointTrackerSupplier(IndexSettings indexSettings) {
+        if (indexSettings.getValue(IndexSettings.INDEX_CONCURRENT_CHECKPOINT_TRACKER_SETTING)) {
+            return ConcurrentLocalCheckpointTracker::new;
+        }
+        return LocalCheckpointTracker::new;
     }
 
     InternalEngine(EngineConfig engineConfig, int maxDocs, BiFunction<Long, Long, LocalCheckpointTracker> localCheckpointTrackerSupplier) {
         super(engineConfig);
         this.maxDocs = maxDocs;
+        if (engineConfig.getIndexSettings().getValue(IndexSettings.INDEX_COMPACT_VERSION_MAP_SETTING)) {
+            // account for the compact maps without tripping the breaker: by the time a version is put the document is already indexed
+            versionMap = new LiveVersionMap(
+                new BigArrays(null, engineConfig.getCircuitBreakerService(), CircuitBreaker.ACCOUNTING));
+        } else {
+            versionMap = new LiveVersionMap();
+        }
         if (engineConfig.isAutoGeneratedIDsOptimizationEnabled() == false) {
             updateAutoIdTimestamp(Long.MAX_VALUE, true);
         }
@@ -24,8 +24,10 @@ import org.apache.lucene.util.Accountable;
 import org.apache.lucene.util.BytesRef;
 import org.apache.lucene.util.RamUsageEstimator;
 import org.codelibs.fesen.common.lease.Releasable;
+import org.codelibs.fesen.common.util.BigArrays;
 import org.codelibs.fesen.common.util.concurrent.ConcurrentCollections;
 import org.codelibs.fesen.common.util.concurrent.KeyedLock;
+import org.codelibs.fesen.core.Nullable;
 
 import java.io.IOException;
 import java.util.Collection;
@@ -47,6 +49,9 @@ final class LiveVersionMap implements ReferenceManager.RefreshListener, Accounta
 
         private static final VersionLookup EMPTY = new VersionLookup(Collections.emptyMap());
         private final Map<BytesRef, VersionValue> map;
+        /** Set if {@link #map} is a {@link CompactVersionMap}, which accounts for its own memory. */
+        @Nullable
+        private final CompactVersionMap compactMap;
 
         // each version map has a notion of safe / unsafe which allows us to apply certain optimization in the auto-generated ID usecase
         // where we know that documents can't have any duplicates so we can skip the version map entirely. This reduces
@@ -66,6 +71,7 @@ final class LiveVersionMap implements ReferenceManager.RefreshListener, Accounta
 
         private VersionLookup(Map<BytesRef, VersionValue> map) {
             this.map = map;
+            this.compactMap = map instanceof CompactVersionMap ? (CompactVersionMap) map : null;
         }
 
         VersionValue get(BytesRef key) {
@@ -101,10 +107,34 @@ final class LiveVersionMap implements ReferenceManager.RefreshListener, Accounta
             minDeleteTimestamp.updateAndGet(prev -> Math.min(time, prev));
         }
 
+        void adjustRam(long value) {
+            if (compactMap == null && value != 0) {
+                long v = ramBytesUsed.addAndGet(value);
+                assert v >= 0 : "bytes=" + v;
+            }
+        }
+
+        long ramBytesUsed() {
+            return compactMap == null ? ramBytesUsed.get() : compactMap.ramBytesUsed();
+        }
+
+        /**
+         * Releases the memory held by a compact map. Lookups that still race with this see an empty map and fall back to the
+         * reader that made its entries visible.
+         */
+        void release() {
+            if (compactMap != null) {
+                compactMap.close();
+            }
+        }
     }
 
     private static final class Maps {
 
+        // the big arrays to build compact maps with, or null to use plain concurrent hash maps
+        @Nullable
+        final BigArrays bigArrays;
+
         // All writes (adds and deletes) go into here:
         final VersionLookup current;
 
@@ -117,15 +147,23 @@ final class LiveVersionMap implements ReferenceManager.RefreshListener, Accounta
         final boolean previousMapsNeededSafeAccess;
 
 
-        Maps(VersionLookup current, VersionLookup old, boolean previousMapsNeededSafeAccess) {
+        Maps(@Nullable BigArrays bigArrays, VersionLookup current, VersionLookup old, boolean previousMapsNeededSafeAccess) {
+            this.bigArrays = bigArrays;
             this.current = current;
             this.old = old;
             this.previousMapsNeededSafeAccess = previousMapsNeededSafeAccess;
         }
 
-        Maps() {
-            this(new VersionLookup(ConcurrentCollections.newConcurrentMapWithAggressiveConcurrency()),
-                VersionLookup.EMPTY, false);
+        Maps(@Nullable BigArrays bigArrays) {
+            this(bigArrays, newVersionLookup(bigArrays, 0), VersionLookup.EMPTY, false);
+        }
+
+        private static VersionLookup newVersionLookup(@Nullable BigArrays bigArrays, int expectedSize) {
+            if (bigArrays == null) {
+                return new VersionLookup(expectedSize == 0 ? ConcurrentCollections.newConcurrentMapWithAggressiveConcurrency()
+                    : ConcurrentCollections.newConcurrentMapWithAggressiveConcurrency(expectedSize));
+            }
+            return new VersionLookup(new CompactVersionMap(bigArrays, expectedSize));
         }
 
         boolean isSafeAccessMode() {
@@ -143,15 +181,14 @@ final class LiveVersionMap implements ReferenceManager.RefreshListener, Accounta
          * Builds a new map for the refresh transition this should be called in beforeRefresh()
          */
         Maps buildTransitionMap() {
-            return new Maps(new VersionLookup(ConcurrentCollections.newConcurrentMapWithAggressiveConcurrency(current.size())), current,
-                shouldInheritSafeAccess());
+            return new Maps(bigArrays, newVersionLookup(bigArrays, current.size()), current, shouldInheritSafeAccess());
         }
 
         /**
          * builds a new map that invalidates the old map but maintains the current. This should be called in afterRefresh()
          */
         Maps invalidateOldMap() {
-            return new Maps(current, VersionLookup.EMPTY, previousMapsNeededSafeAccess);
+            return new Maps(bigArrays, current, VersionLookup.EMPTY, previousMapsNeededSafeAccess);
         }
 
         void put(BytesRef uid, VersionValue version) {
@@ -159,14 +196,7 @@ final class LiveVersionMap implements ReferenceManager.RefreshListener, Accounta
             long ramAccounting = BASE_BYTES_PER_CHM_ENTRY + version.ramBytesUsed() + uidRAMBytesUsed;
             VersionValue previousValue = current.put(uid, version);
             ramAccounting += previousValue == null ? 0 : -(BASE_BYTES_PER_CHM_ENTRY + previousValue.ramBytesUsed() + uidRAMBytesUsed);
-            adjustRam(ramAccounting);
-        }
-
-        void adjustRam(long value) {
-            if (value != 0) {
-                long v = current.ramBytesUsed.addAndGet(value);
-                assert v >= 0 : "bytes=" + v;
-            }
+            current.adjustRam(ramAccounting);
         }
 
         void remove(BytesRef uid, DeleteVersionValue deleted) {
@@ -174,7 +204,7 @@ final class LiveVersionMap implements ReferenceManager.RefreshListener, Accounta
             current.updateMinDeletedTimestamp(deleted);
             if (previousValue != null) {
                 long uidRAMBytesUsed = BASE_BYTES_PER_BYTESREF + uid.bytes.length;
-                adjustRam(-(BASE_BYTES_PER_CHM_ENTRY + previousValue.ramBytesUsed() + uidRAMBytesUsed));
+                current.adjustRam(-(BASE_BYTES_PER_CHM_ENTRY + previousValue.ramBytesUsed() + uidRAMBytesUsed));
             }
             if (old != VersionLookup.EMPTY) {
                 // we also need to remove it from the old map here to make sure we don't read this stale value while
@@ -191,10 +221,10 @@ final class LiveVersionMap implements ReferenceManager.RefreshListener, Accounta
     // All deletes also go here, and delete "tombstones" are retained after refresh:
     private final Map<BytesRef, DeleteVersionValue> tombstones = ConcurrentCollections.newConcurrentMapWithAggressiveConcurrency();
 
-    private volatile Maps maps = new Maps();
+    private volatile Maps maps;
     // we maintain a second map that only receives the updates that we skip on the actual map (unsafe ops)
     // this map is only maintained if assertions are enabled
-    private volatile Maps unsafeKeysMap = new Maps();
+    private volatile Maps unsafeKeysMap = new Maps(null);
 
     /**
      * Bytes consumed for each BytesRef UID:
@@ -236,6 +266,18 @@ final class LiveVersionMap implements ReferenceManager.RefreshListener, Accounta
      */
     private final AtomicLong ramBytesUsedTombstones = new AtomicLong();
 
+    LiveVersionMap() {
+        this(null);
+    }
+
+    /**
+     * @param bigArrays if not {@code null} the live versions are kept in {@link CompactVersionMap}s allocated from these big arrays,
+     *                  otherwise in concurrent hash maps
+     */
+    LiveVersionMap(@Nullable BigArrays bigArrays) {
+        this.maps = new Maps(bigArrays);
+    }
+
     @Override
     public void beforeRefresh() throws IOException {
         // Start sending all updates after this point to the new
@@ -257,7 +299,9 @@ final class LiveVersionMap implements ReferenceManager.RefreshListener, Accounta
         // reopen, and so any concurrent indexing requests can still sneak in a few additions to that current map that are in fact
         // reflected in the previous reader.   We don't touch tombstones here: they expire on their own index.gc_deletes timeframe:
 
-        maps = maps.invalidateOldMap();
+        final Maps previousMaps = maps;
+        maps = previousMaps.invalidateOldMap();
+        previousMaps.old.release();
         assert (unsafeKeysMap = unsafeKeysMap.invalidateOldMap()) != null;
 
     }
@@ -415,7 +459,11 @@ final class LiveVersionMap implements ReferenceManager.RefreshListener, Accounta
      * Called when this index is closed.
      */
     synchronized void clear() {
-        maps = new Maps();
+        final Maps previousMaps = maps;
+        // the engine is closed, don't allocate another compact map for it
+        maps = new Maps(null);
+        previousMaps.current.release();
+        previousMaps.old.release();
         tombstones.clear();
         // NOTE: we can't zero this here, because a refresh thread could be calling InternalEngine.pruneDeletedTombstones at the same time,
         // and this will lead to an assert trip.  Presumably it's fine if our ramBytesUsedTombstones is non-zero after clear since the
@@ -425,7 +473,7 @@ final class LiveVersionMap implements ReferenceManager.RefreshListener, Accounta
 
     @Override
     public long ramBytesUsed() {
-        return maps.current.ramBytesUsed.get() + ramBytesUsedTombstones.get();
+        return maps.current.ramBytesUsed() + ramBytesUsedTombstones.get();
     }
 
     /**
@@ -433,7 +481,7 @@ final class LiveVersionMap implements ReferenceManager.RefreshListener, Accounta
      * don't clear on refresh.
      */
     long ramBytesUsedForRefresh() {
-        return maps.current.ramBytesUsed.get();
+        return maps.current.ramBytesUsed();
     }
 
     /**
@@ -441,7 +489,7 @@ final class LiveVersionMap implements ReferenceManager.RefreshListener, Accounta
      * except does not include tombstones because they don't clear on refresh.
      */
     long getRefreshingBytes() {
-        return maps.old.ramBytesUsed.get();
+        return maps.old.ramBytesUsed();
     }
 
     @Override
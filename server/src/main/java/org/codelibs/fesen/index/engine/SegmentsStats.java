@@ -21,6 +21,7 @@ package org.codelibs.fesen.index.engine;
 
 import com.carrotsearch.hppc.cursors.ObjectObjectCursor;
 
+import org.codelibs.fesen.Version;
 import org.codelibs.fesen.common.collect.ImmutableOpenMap;
 import org.codelibs.fesen.common.io.stream.StreamInput;
 import org.codelibs.fesen.common.io.stream.StreamOutput;
@@ -45,6 +46,10 @@ public class SegmentsStats implements Writeable, ToXContentFragment {
     private long versionMapMemoryInBytes;
     private long maxUnsafeAutoIdTimestamp = Long.MIN_VALUE;
     private long bitsetMemoryInBytes;
+    private long idBloomFilterMemoryInBytes;
+    private long idBloomFilterLookups;
+    private long idBloomFilterSkippedLookups;
+    private long idBloomFilterFalsePositives;
     private ImmutableOpenMap<String, Long> fileSizes = ImmutableOpenMap.of();
 
     /*
@@ -73,6 +78,7 @@ public class SegmentsStats implements Writeable, ToXContentFragment {
             .fPut("tvd", "Term Vector Documents")
             .fPut("tvf", "Term Vector Fields")
             .fPut("liv", "Live Documents")
+            .fPut("bfi", "Id Bloom Filter")
             .build();
 
     public SegmentsStats() {}
@@ -90,6 +96,12 @@ public class SegmentsStats implements Writeable, ToXContentFragment {
         versionMapMemoryInBytes = in.readLong();
         bitsetMemoryInBytes = in.readLong();
         maxUnsafeAutoIdTimestamp = in.readLong();
+        if (in.getVersion().onOrAfter(Version.V_0_17_0)) {
+            idBloomFilterMemoryInBytes = in.readLong();
+            idBloomFilterLookups = in.readVLong();
+            idBloomFilterSkippedLookups = in.readVLong();
+            idBloomFilterFalsePositives = in.readVLong();
+        }
 
         int size = in.readVInt();
         ImmutableOpenMap.Builder<String, Long> map = ImmutableOpenMap.builder(size);
@@ -146,6 +158,13 @@ public class SegmentsStats implements Writeable, ToXContentFragment {
         this.bitsetMemoryInBytes += bitsetMemoryInBytes;
     }
 
+    public void addIdBloomFilterStats(long memoryInBytes, long lookups, long skippedLookups, long falsePositives) {
+        this.idBloomFilterMemoryInBytes += memoryInBytes;
+        this.idBloomFilterLookups += lookups;
+        this.idBloomFilterSkippedLookups += skippedLookups;
+        this.idBloomFilterFalsePositives += falsePositives;
+    }
+
     public void addFileSizes(ImmutableOpenMap<String, Long> fileSizes) {
         ImmutableOpenMap.Builder<String, Long> map = ImmutableOpenMap.builder(this.fileSizes);
 
@@ -176,6 +195,8 @@ public class SegmentsStats implements Writeable, ToXContentFragment {
         addIndexWriterMemoryInBytes(mergeStats.indexWriterMemoryInBytes);
         addVersionMapMemoryInBytes(mergeStats.versionMapMemoryInBytes);
         addBitsetMemoryInBytes(mergeStats.bitsetMemoryInBytes);
+        addIdBloomFilterStats(mergeStats.idBloomFilterMemoryInBytes, mergeStats.idBloomFilterLookups,
+            mergeStats.idBloomFilterSkippedLookups, mergeStats.idBloomFilterFalsePositives);
         addFileSizes(mergeStats.fileSizes);
     }
 
@@ -296,6 +317,46 @@ public class SegmentsStats implements Writeable, ToXContentFragment {
         return new ByteSizeValue(bitsetMemoryInBytes);
     }
 
+    /**
+     * Estimation of the memory used by the bloom filters of the {@code _id} field.
+     */
+    public long getIdBloomFilterMemoryInBytes() {
+        return idBloomFilterMemoryInBytes;
+    }
+
+    public ByteSizeValue getIdBloomFilterMemory() {
+        return new ByteSizeValue(idBloomFilterMemoryInBytes);
+    }
+
+    /**
+     * The number of id lookups that were checked against the bloom filters of the {@code _id} field.
+     */
+    public long getIdBloomFilterLookups() {
+        return idBloomFilterLookups;
+    }
+
+    /**
+     * The number of id lookups that the bloom filters of the {@code _id} field answered without seeking the terms dictionary.
+     */
+    public long getIdBloomFilterSkippedLookups() {
+        return idBloomFilterSkippedLookups;
+    }
+
+    /**
+     * The number of id lookups of ids that weren't in the segment but passed its bloom filter nevertheless.
+     */
+    public long getIdBloomFilterFalsePositives() {
+        return idBloomFilterFalsePositives;
+    }
+
+    /**
+     * The observed share of lookups of absent ids that the bloom filters of the {@code _id} field failed to rule out.
+     */
+    public double getIdBloomFilterFalsePositiveRate() {
+        final long negatives = idBloomFilterSkippedLookups + idBloomFilterFalsePositives;
+        return negatives == 0 ? 0 : (double) idBloomFilterFalsePositives / negatives;
+    }
+
     public ImmutableOpenMap<String, Long> getFileSizes() {
         return fileSizes;
     }
@@ -322,6 +383,13 @@ public class SegmentsStats implements Writeable, ToXContentFragment {
         builder.humanReadableField(Fields.INDEX_WRITER_MEMORY_IN_BYTES, Fields.INDEX_WRITER_MEMORY, getIndexWriterMemory());
         builder.humanReadableField(Fields.VERSION_MAP_MEMORY_IN_BYTES, Fields.VERSION_MAP_MEMORY, getVersionMapMemory());
         builder.humanReadableField(Fields.FIXED_BIT_SET_MEMORY_IN_BYTES, Fields.FIXED_BIT_SET, getBitsetMemory());
+        builder.startObject(Fields.ID_BLOOM_FILTER);
+        builder.humanReadableField(Fields.MEMORY_IN_BYTES, Fields.MEMORY, getIdBloomFilterMemory());
+        builder.field(Fields.LOOKUPS, idBloomFilterLookups);
+        builder.field(Fields.SKIPPED_LOOKUPS, idBloomFilterSkippedLookups);
+        builder.field(Fields.FALSE_POSITIVES, idBloomFilterFalsePositives);
+        builder.field(Fields.FALSE_POSITIVE_RATE, getIdBloomFilterFalsePositiveRate());
+        builder.endObject();
         builder.field(Fields.MAX_UNSAFE_AUTO_ID_TIMESTAMP, maxUnsafeAutoIdTimestamp);
         builder.startObject(Fields.FILE_SIZES);
         for (ObjectObjectCursor<String, Long> entry : fileSizes) {
@@ -359,6 +427,11 @@ public class SegmentsStats implements Writeable, ToXContentFragment {
         static final String MAX_UNSAFE_AUTO_ID_TIMESTAMP = "max_unsafe_auto_id_timestamp";
         static final String FIXED_BIT_SET = "fixed_bit_set";
         static final String FIXED_BIT_SET_MEMORY_IN_BYTES = "fixed_bit_set_memory_in_bytes";
+        static final String ID_BLOOM_FILTER = "id_bloom_filter";
+        static final String LOOKUPS = "lookups";
+        static final String SKIPPED_LOOKUPS = "skipped_lookups";
+        static final String FALSE_POSITIVES = "false_positives";
+        static final String FALSE_POSITIVE_RATE = "false_positive_rate";
         static final String FILE_SIZES = "file_sizes";
         static final String SIZE = "size";
         static final String SIZE_IN_BYTES = "size_in_bytes";
@@ -379,6 +452,12 @@ public class SegmentsStats implements Writeable, ToXContentFragment {
         out.writeLong(versionMapMemoryInBytes);
         out.writeLong(bitsetMemoryInBytes);
         out.writeLong(maxUnsafeAutoIdTimestamp);
+        if (out.getVersion().onOrAfter(Version.V_0_17_0)) {
+            out.writeLong(idBloomFilterMemoryInBytes);
+            out.writeVLong(idBloomFilterLookups);
+            out.writeVLong(idBloomFilterSkippedLookups);
+            out.writeVLong(idBloomFilterFalsePositives);
+        }
 
         out.writeVInt(fileSizes.size());
         for (ObjectObjectCursor<String, Long> entry : fileSizes) {
@@ -19,6 +19,7 @@
 
 package org.codelibs.fesen.index.fielddata;
 
+import org.codelibs.fesen.Version;
 import org.codelibs.fesen.common.FieldMemoryStats;
 import org.codelibs.fesen.common.io.stream.StreamInput;
 import org.codelibs.fesen.common.io.stream.StreamOutput;
@@ -27,6 +28,7 @@ import org.codelibs.fesen.common.unit.ByteSizeValue;
 import org.codelibs.fesen.common.xcontent.ToXContentFragment;
 import org.codelibs.fesen.common.xcontent.XContentBuilder;
 import org.codelibs.fesen.core.Nullable;
+import org.codelibs.fesen.core.TimeValue;
 
 import java.io.IOException;
 import java.util.Objects;
@@ -38,8 +40,16 @@ public class FieldDataStats implements Writeable, ToXContentFragment {
     private static final String MEMORY_SIZE_IN_BYTES = "memory_size_in_bytes";
     private static final String EVICTIONS = "evictions";
     private static final String FIELDS = "fields";
+    private static final String GLOBAL_ORDINALS = "global_ordinals";
+    private static final String BUILDS = "builds";
+    private static final String INCREMENTAL_BUILDS = "incremental_builds";
+    private static final String BUILD_TIME = "build_time";
+    private static final String BUILD_TIME_IN_MILLIS = "build_time_in_millis";
     private long memorySize;
     private long evictions;
+    private long globalOrdinalsBuilds;
+    private long globalOrdinalsIncrementalBuilds;
+    private long globalOrdinalsBuildTimeInMillis;
     @Nullable
     private FieldMemoryStats fields;
 
@@ -51,17 +61,33 @@ public class FieldDataStats implements Writeable, ToXContentFragment {
         memorySize = in.readVLong();
         evictions = in.readVLong();
         fields = in.readOptionalWriteable(FieldMemoryStats::new);
+        if (in.getVersion().onOrAfter(Version.V_0_17_0)) {
+            globalOrdinalsBuilds = in.readVLong();
+            globalOrdinalsIncrementalBuilds = in.readVLong();
+            globalOrdinalsBuildTimeInMillis = in.readVLong();
+        }
     }
 
     public FieldDataStats(long memorySize, long evictions, @Nullable FieldMemoryStats fields) {
+        this(memorySize, evictions, fields, 0, 0, 0);
+    }
+
+    public FieldDataStats(long memorySize, long evictions, @Nullable FieldMemoryStats fields, long globalOrdinalsBuilds,
+                          long globalOrdinalsIncrementalBuilds, long globalOrdinalsBuildTimeInMillis) {
         this.memorySize = memorySize;
         this.evictions = evictions;
         this.fields = fields;
+        this.globalOrdinalsBuilds = globalOrdinalsBuilds;
+        this.globalOrdinalsIncrementalBuilds = globalOrdinalsIncrementalBuilds;
+        this.globalOrdinalsBuildTimeInMillis = globalOrdinalsBuildTimeInMillis;
     }
 
     public void add(FieldDataStats stats) {
         this.memorySize += stats.memorySize;
         this.evictions += stats.evictions;
+        this.globalOrdinalsBuilds += stats.globalOrdinalsBuilds;
+        this.globalOrdinalsIncrementalBuilds += stats.globalOrdinalsIncrementalBuilds;
+        this.globalOrdinalsBuildTimeInMillis += stats.globalOrdinalsBuildTimeInMillis;
         if (stats.fields != null) {
             if (fields == null) {
                 fields = stats.fields.copy();
@@ -83,6 +109,31 @@ public class FieldDataStats implements Writeable, ToXContentFragment {
         return this.evictions;
     }
 
+    /**
+     * The number of times global ordinals were built.
+     */
+    public long getGlobalOrdinalsBuilds() {
+        return globalOrdinalsBuilds;
+    }
+
+    /**
+     * The number of times global ordinals were built incrementally from the global ordinals of a previous reader.
+     */
+    public long getGlobalOrdinalsIncrementalBuilds() {
+        return globalOrdinalsIncrementalBuilds;
+    }
+
+    /**
+     * The total time spent building global ordinals.
+     */
+    public TimeValue getGlobalOrdinalsBuildTime() {
+        return new TimeValue(globalOrdinalsBuildTimeInMillis);
+    }
+
+    public long getGlobalOrdinalsBuildTimeInMillis() {
+        return globalOrdinalsBuildTimeInMillis;
+    }
+
     @Nullable
     public FieldMemoryStats getFields() {
         return fields;
@@ -93,6 +144,11 @@ public class FieldDataStats implements Writeable, ToXContentFragment {
         out.writeVLong(memorySize);
         out.writeVLong(evictions);
         out.writeOptionalWriteable(fields);
+        if (out.getVersion().onOrAfter(Version.V_0_17_0)) {
+            out.writeVLong(globalOrdinalsBuilds);
+            out.writeVLong(globalOrdinalsIncrementalBuilds);
+            out.writeVLong(globalOrdinalsBuildTimeInMillis);
+        }
     }
 
     @Override
@@ -100,6 +156,11 @@ public class FieldDataStats implements Writeable, ToXContentFragment {
         builder.startObject(FIELDDATA);
         builder.humanReadableField(MEMORY_SIZE_IN_BYTES, MEMORY_SIZE, getMemorySize());
         builder.field(EVICTIONS, getEvictions());
+        builder.startObject(GLOBAL_ORDINALS);
+        builder.field(BUILDS, globalOrdinalsBuilds);
+        builder.field(INCREMENTAL_BUILDS, globalOrdinalsIncrementalBuilds);
+        builder.humanReadableField(BUILD_TIME_IN_MILLIS, BUILD_TIME, getGlobalOrdinalsBuildTime());
+        builder.endObject();
         if (fields != null) {
             fields.toXContent(builder, FIELDS, MEMORY_SIZE_IN_BYTES, MEMORY_SIZE);
         }
@@ -114,11 +175,15 @@ public class FieldDataStats implements Writeable, ToXContentFragment {
         FieldDataStats that = (FieldDataStats) o;
         return memorySize == that.memorySize &&
             evictions == that.evictions &&
+            globalOrdinalsBuilds == that.globalOrdinalsBuilds &&
+            globalOrdinalsIncrementalBuilds == that.globalOrdinalsIncrementalBuilds &&
+            globalOrdinalsBuildTimeInMillis == that.globalOrdinalsBuildTimeInMillis &&
             Objects.equals(fields, that.fields);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(memorySize, evictions, fields);
+        return Objects.hash(memorySize, evictions, fields, globalOrdinalsBuilds, globalOrdinalsIncrementalBuilds,
+            globalOrdinalsBuildTimeInMillis);
     }
 }
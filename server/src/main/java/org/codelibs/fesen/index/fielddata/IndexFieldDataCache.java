@@ -22,6 +22,7 @@ package org.codelibs.fesen.index.fielddata;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.util.Accountable;
+import org.codelibs.fesen.core.Nullable;
 import org.codelibs.fesen.index.shard.ShardId;
 
 /**
@@ -34,6 +35,15 @@ public interface IndexFieldDataCache {
     <FD extends LeafFieldData, IFD extends IndexFieldData.Global<FD>> IFD load(DirectoryReader indexReader, IFD indexFieldData)
         throws Exception;
 
+    /**
+     * Returns the global field data that was last loaded for the given shard if it is still cached, so that the global field
+     * data of a newer reader of the shard can be built from it.
+     */
+    @Nullable
+    default Accountable lastLoadedGlobal(ShardId shardId) {
+        return null;
+    }
+
     /**
      * Clears all the field data stored cached in on this index.
      */
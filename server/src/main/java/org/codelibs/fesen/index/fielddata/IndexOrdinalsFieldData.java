@@ -22,6 +22,7 @@ package org.codelibs.fesen.index.fielddata;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.OrdinalMap;
+import org.apache.lucene.util.LongValues;
 
 
 /**
@@ -48,6 +49,16 @@ public interface IndexOrdinalsFieldData extends IndexFieldData.Global<LeafOrdina
      */
     OrdinalMap getOrdinalMap();
 
+    /**
+     * Returns the mapping from the ordinals of the segment with the given index to global ordinals, or null if global
+     * ordinals are not needed. Prefer this over {@link #getOrdinalMap}, which may have to build an {@link OrdinalMap} if
+     * the global ordinals were built incrementally.
+     */
+    default LongValues getGlobalOrds(int segmentIndex) {
+        final OrdinalMap ordinalMap = getOrdinalMap();
+        return ordinalMap == null ? null : ordinalMap.getGlobalOrds(segmentIndex);
+    }
+
     /**
      * Whether this field data is able to provide a mapping between global and segment ordinals,
      * by returning the underlying {@link OrdinalMap}. If this method returns false, then calling
@@ -26,16 +26,21 @@ import org.codelibs.fesen.common.metrics.CounterMetric;
 import org.codelibs.fesen.common.regex.Regex;
 import org.codelibs.fesen.common.util.CollectionUtils;
 import org.codelibs.fesen.common.util.concurrent.ConcurrentCollections;
+import org.codelibs.fesen.index.fielddata.ordinals.GlobalOrdinalsIndexFieldData;
 import org.codelibs.fesen.index.shard.ShardId;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 public class ShardFieldData implements IndexFieldDataCache.Listener {
 
     private final CounterMetric evictionsMetric = new CounterMetric();
     private final CounterMetric totalMetric = new CounterMetric();
     private final ConcurrentMap<String, CounterMetric> perFieldTotals = ConcurrentCollections.newConcurrentMap();
+    private final CounterMetric globalOrdinalsBuilds = new CounterMetric();
+    private final CounterMetric globalOrdinalsIncrementalBuilds = new CounterMetric();
+    private final CounterMetric globalOrdinalsBuildTimeInNanos = new CounterMetric();
 
     public FieldDataStats stats(String... fields) {
         ObjectLongHashMap<String> fieldTotals = null;
@@ -48,11 +53,20 @@ public class ShardFieldData implements IndexFieldDataCache.Listener {
             }
         }
         return new FieldDataStats(totalMetric.count(), evictionsMetric.count(), fieldTotals == null ? null :
-            new FieldMemoryStats(fieldTotals));
+            new FieldMemoryStats(fieldTotals), globalOrdinalsBuilds.count(), globalOrdinalsIncrementalBuilds.count(),
+            TimeUnit.NANOSECONDS.toMillis(globalOrdinalsBuildTimeInNanos.count()));
     }
 
     @Override
     public void onCache(ShardId shardId, String fieldName, Accountable ramUsage) {
+        if (ramUsage instanceof GlobalOrdinalsIndexFieldData) {
+            final GlobalOrdinalsIndexFieldData globalOrdinals = (GlobalOrdinalsIndexFieldData) ramUsage;
+            globalOrdinalsBuilds.inc();
+            if (globalOrdinals.isIncremental()) {
+                globalOrdinalsIncrementalBuilds.inc();
+            }
+            globalOrdinalsBuildTimeInNanos.inc(globalOrdinals.getBuildTimeInNanos());
+        }
         totalMetric.inc(ramUsage.ramBytesUsed());
         CounterMetric total = perFieldTotals.get(fieldName);
         if (total != null) {
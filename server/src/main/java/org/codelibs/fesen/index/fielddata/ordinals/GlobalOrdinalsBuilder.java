@@ -22,11 +22,10 @@ package org.codelibs.fesen.index.fielddata.ordinals;
 import org.apache.logging.log4j.Logger;
 import org.apache.lucene.index.DocValues;
 import org.apache.lucene.index.IndexReader;
-import org.apache.lucene.index.OrdinalMap;
 import org.apache.lucene.index.SortedSetDocValues;
 import org.apache.lucene.util.Accountable;
-import org.apache.lucene.util.packed.PackedInts;
 import org.codelibs.fesen.common.breaker.CircuitBreaker;
+import org.codelibs.fesen.core.Nullable;
 import org.codelibs.fesen.core.TimeValue;
 import org.codelibs.fesen.index.fielddata.IndexOrdinalsFieldData;
 import org.codelibs.fesen.index.fielddata.LeafOrdinalsFieldData;
@@ -52,6 +51,17 @@ public enum GlobalOrdinalsBuilder {
     public static IndexOrdinalsFieldData build(final IndexReader indexReader, IndexOrdinalsFieldData indexFieldData,
             CircuitBreakerService breakerService, Logger logger,
             Function<SortedSetDocValues, ScriptDocValues<?>> scriptFunction) throws IOException {
+        return build(indexReader, indexFieldData, breakerService, logger, scriptFunction, null);
+    }
+
+    /**
+     * Build global ordinals for the provided {@link IndexReader}, incrementally from the global ordinals of a previous
+     * reader of the same shard if the provided reader contains all segments of the previous one.
+     */
+    public static IndexOrdinalsFieldData build(final IndexReader indexReader, IndexOrdinalsFieldData indexFieldData,
+            CircuitBreakerService breakerService, Logger logger,
+            Function<SortedSetDocValues, ScriptDocValues<?>> scriptFunction,
+            @Nullable GlobalOrdinalsIndexFieldData previous) throws IOException {
         assert indexReader.leaves().size() > 1;
         long startTimeNS = System.nanoTime();
 
@@ -61,20 +71,29 @@ public enum GlobalOrdinalsBuilder {
             atomicFD[i] = indexFieldData.load(indexReader.leaves().get(i));
             subs[i] = atomicFD[i].getOrdinalsValues();
         }
-        final OrdinalMap ordinalMap = OrdinalMap.build(null, subs, PackedInts.DEFAULT);
+        IncrementalOrdinalMap ordinalMap = null;
+        if (previous != null) {
+            ordinalMap = IncrementalOrdinalMap.buildIncrementally(indexReader, subs, previous.getIncrementalOrdinalMap());
+        }
+        if (ordinalMap == null) {
+            ordinalMap = IncrementalOrdinalMap.build(indexReader, subs);
+        }
         final long memorySizeInBytes = ordinalMap.ramBytesUsed();
-        breakerService.getBreaker(CircuitBreaker.FIELDDATA).addWithoutBreaking(memorySizeInBytes);
+        final CircuitBreaker breaker = breakerService.getBreaker(CircuitBreaker.FIELDDATA);
+        breaker.addWithoutBreaking(memorySizeInBytes);
 
+        final long buildTimeInNanos = System.nanoTime() - startTimeNS;
         if (logger.isDebugEnabled()) {
             logger.debug(
-                    "global-ordinals [{}][{}] took [{}]",
+                    "global-ordinals [{}][{}] took [{}]{}",
                     indexFieldData.getFieldName(),
                     ordinalMap.getValueCount(),
-                    new TimeValue(System.nanoTime() - startTimeNS, TimeUnit.NANOSECONDS)
+                    new TimeValue(buildTimeInNanos, TimeUnit.NANOSECONDS),
+                    ordinalMap.isIncremental() ? " incrementally" : ""
             );
         }
         return new GlobalOrdinalsIndexFieldData(indexFieldData.getFieldName(), indexFieldData.getValuesSourceType(),
-                atomicFD, ordinalMap, memorySizeInBytes, scriptFunction
+                atomicFD, ordinalMap, memorySizeInBytes, buildTimeInNanos, scriptFunction, breaker
         );
     }
 
@@ -106,9 +125,9 @@ public enum GlobalOrdinalsBuilder {
             };
             subs[i] = atomicFD[i].getOrdinalsValues();
         }
-        final OrdinalMap ordinalMap = OrdinalMap.build(null, subs, PackedInts.DEFAULT);
+        final IncrementalOrdinalMap ordinalMap = IncrementalOrdinalMap.build(indexReader, subs);
         return new GlobalOrdinalsIndexFieldData(indexFieldData.getFieldName(), indexFieldData.getValuesSourceType(),
-                atomicFD, ordinalMap, 0, AbstractLeafOrdinalsFieldData.DEFAULT_SCRIPT_FUNCTION
+                atomicFD, ordinalMap, 0, 0, AbstractLeafOrdinalsFieldData.DEFAULT_SCRIPT_FUNCTION, null
         );
     }
 
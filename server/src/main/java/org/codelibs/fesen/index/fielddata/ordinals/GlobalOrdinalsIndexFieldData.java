@@ -25,6 +25,8 @@ import org.apache.lucene.index.SortedSetDocValues;
 import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.LongValues;
+import org.codelibs.fesen.common.breaker.CircuitBreaker;
 import org.codelibs.fesen.common.util.BigArrays;
 import org.codelibs.fesen.core.Nullable;
 import org.codelibs.fesen.index.fielddata.IndexOrdinalsFieldData;
@@ -43,6 +45,7 @@ import java.io.UncheckedIOException;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.function.Function;
+import java.util.function.LongConsumer;
 
 /**
  * Concrete implementation of {@link IndexOrdinalsFieldData} for global ordinals.
@@ -58,23 +61,95 @@ public final class GlobalOrdinalsIndexFieldData implements IndexOrdinalsFieldDat
     private final String fieldName;
     private final ValuesSourceType valuesSourceType;
     private final long memorySizeInBytes;
+    private final long buildTimeInNanos;
 
-    private final OrdinalMap ordinalMap;
+    private final IncrementalOrdinalMap ordinalMap;
     private final LeafOrdinalsFieldData[] segmentAfd;
     private final Function<SortedSetDocValues, ScriptDocValues<?>> scriptFunction;
+    @Nullable
+    private final CircuitBreaker breaker;
+    // the Lucene equivalent of the ordinal map, built lazily if the ordinal map was built incrementally
+    private volatile OrdinalMap luceneOrdinalMap;
+    private volatile long luceneOrdinalMapSizeInBytes;
+    private volatile LongConsumer luceneOrdinalMapListener = sizeInBytes -> {};
 
     protected GlobalOrdinalsIndexFieldData(String fieldName,
                                            ValuesSourceType valuesSourceType,
                                            LeafOrdinalsFieldData[] segmentAfd,
-                                           OrdinalMap ordinalMap,
+                                           IncrementalOrdinalMap ordinalMap,
                                            long memorySizeInBytes,
-                                           Function<SortedSetDocValues, ScriptDocValues<?>> scriptFunction) {
+                                           long buildTimeInNanos,
+                                           Function<SortedSetDocValues, ScriptDocValues<?>> scriptFunction,
+                                           @Nullable CircuitBreaker breaker) {
         this.fieldName = fieldName;
         this.valuesSourceType = valuesSourceType;
         this.memorySizeInBytes = memorySizeInBytes;
+        this.buildTimeInNanos = buildTimeInNanos;
         this.ordinalMap = ordinalMap;
         this.segmentAfd = segmentAfd;
         this.scriptFunction = scriptFunction;
+        this.breaker = breaker;
+    }
+
+    /**
+     * The map from the ordinals of the segments to global ordinals, which the global ordinals of the next reader of the
+     * shard may be built from.
+     */
+    IncrementalOrdinalMap getIncrementalOrdinalMap() {
+        return ordinalMap;
+    }
+
+    /**
+     * Whether these global ordinals were built from the global ordinals of a previous reader.
+     */
+    public boolean isIncremental() {
+        return ordinalMap.isIncremental();
+    }
+
+    /**
+     * How long it took to build these global ordinals, in nanoseconds.
+     */
+    public long getBuildTimeInNanos() {
+        return buildTimeInNanos;
+    }
+
+    /**
+     * Sets the listener that is notified of the size of the Lucene {@link OrdinalMap} when it is built lazily, so that it can
+     * be accounted for like the memory that was used when these global ordinals were loaded.
+     */
+    public void setLuceneOrdinalMapListener(LongConsumer listener) {
+        this.luceneOrdinalMapListener = listener;
+    }
+
+    private OrdinalMap luceneOrdinalMap() {
+        OrdinalMap map = luceneOrdinalMap;
+        if (map == null) {
+            synchronized (this) {
+                map = luceneOrdinalMap;
+                if (map == null) {
+                    final SortedSetDocValues[] subs = new SortedSetDocValues[segmentAfd.length];
+                    for (int i = 0; i < subs.length; i++) {
+                        subs[i] = segmentAfd[i].getOrdinalsValues();
+                    }
+                    try {
+                        map = ordinalMap.toOrdinalMap(subs);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Failed to build ordinal map", e);
+                    }
+                    if (ordinalMap.isIncremental()) {
+                        // the map of a full build is part of the memory size already, the one built here comes on top of it
+                        final long sizeInBytes = map.ramBytesUsed();
+                        if (breaker != null) {
+                            breaker.addWithoutBreaking(sizeInBytes);
+                        }
+                        luceneOrdinalMapSizeInBytes = sizeInBytes;
+                        luceneOrdinalMapListener.accept(sizeInBytes);
+                    }
+                    luceneOrdinalMap = map;
+                }
+            }
+        }
+        return map;
     }
 
     public IndexOrdinalsFieldData newConsumer(DirectoryReader source) {
@@ -119,7 +194,7 @@ public final class GlobalOrdinalsIndexFieldData implements IndexOrdinalsFieldDat
 
     @Override
     public long ramBytesUsed() {
-        return memorySizeInBytes;
+        return memorySizeInBytes + luceneOrdinalMapSizeInBytes;
     }
 
     @Override
@@ -135,7 +210,12 @@ public final class GlobalOrdinalsIndexFieldData implements IndexOrdinalsFieldDat
 
     @Override
     public OrdinalMap getOrdinalMap() {
-        return ordinalMap;
+        return luceneOrdinalMap();
+    }
+
+    @Override
+    public LongValues getGlobalOrds(int segmentIndex) {
+        return ordinalMap.getGlobalOrds(segmentIndex);
     }
 
     @Override
@@ -210,7 +290,7 @@ public final class GlobalOrdinalsIndexFieldData implements IndexOrdinalsFieldDat
 
         @Override
         public long ramBytesUsed() {
-            return memorySizeInBytes;
+            return GlobalOrdinalsIndexFieldData.this.ramBytesUsed();
         }
 
         @Override
@@ -256,7 +336,12 @@ public final class GlobalOrdinalsIndexFieldData implements IndexOrdinalsFieldDat
 
         @Override
         public OrdinalMap getOrdinalMap() {
-            return ordinalMap;
+            return luceneOrdinalMap();
+        }
+
+        @Override
+        public LongValues getGlobalOrds(int segmentIndex) {
+            return ordinalMap.getGlobalOrds(segmentIndex);
         }
 
     }
@@ -0,0 +1,312 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.codelibs.fesen.index.fielddata.ordinals;
+
+import org.apache.lucene.index.BaseTermsEnum;
+import org.apache.lucene.index.ImpactsEnum;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.OrdinalMap;
+import org.apache.lucene.index.PostingsEnum;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.index.TermState;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefBuilder;
+import org.apache.lucene.util.LongValues;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.apache.lucene.util.packed.PackedInts;
+import org.apache.lucene.util.packed.PackedLongValues;
+import org.codelibs.fesen.core.Nullable;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps the ordinals of the segments of a reader to global ordinals, like Lucene's {@link OrdinalMap}.
+ * <p>
+ * Most refreshes only add segments to the reader of a shard. The map of such a reader can be built incrementally from the
+ * map of the previous reader: the terms of the new segments are merged into the global terms of the previous map, and the
+ * ordinals of the segments that were already in the previous reader are remapped to the new global ordinals without
+ * comparing their terms again.
+ */
+public final class IncrementalOrdinalMap implements Accountable {
+
+    private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(IncrementalOrdinalMap.class);
+
+    // the core cache keys of the segments, or null if a segment can't be identified across readers
+    private final IndexReader.CacheKey[] segmentKeys;
+    // the map over all segments if it was built from scratch, and over the previous global terms and the new segments otherwise
+    private final OrdinalMap ordinalMap;
+    // null if the map was built from scratch, the global ordinals of each segment otherwise
+    private final LongValues[] globalOrds;
+    private final PackedLongValues firstSegmentNumbers;
+    private final PackedLongValues firstSegmentOrds;
+    private final long ramBytesUsed;
+
+    private IncrementalOrdinalMap(IndexReader.CacheKey[] segmentKeys, OrdinalMap ordinalMap, LongValues[] globalOrds,
+                                  PackedLongValues firstSegmentNumbers, PackedLongValues firstSegmentOrds, long ramBytesUsed) {
+        this.segmentKeys = segmentKeys;
+        this.ordinalMap = ordinalMap;
+        this.globalOrds = globalOrds;
+        this.firstSegmentNumbers = firstSegmentNumbers;
+        this.firstSegmentOrds = firstSegmentOrds;
+        this.ramBytesUsed = ramBytesUsed;
+    }
+
+    /**
+     * Builds the map of the given reader by merging the terms of all its segments.
+     */
+    public static IncrementalOrdinalMap build(IndexReader reader, SortedSetDocValues[] subs) throws IOException {
+        final OrdinalMap ordinalMap = OrdinalMap.build(null, subs, PackedInts.DEFAULT);
+        return new IncrementalOrdinalMap(segmentKeys(reader), ordinalMap, null, null, null,
+            BASE_RAM_BYTES_USED + ordinalMap.ramBytesUsed());
+    }
+
+    /**
+     * Builds the map of the given reader from the map of a previous reader of the same shard. Returns {@code null} if the
+     * reader doesn't contain all segments of the previous reader, in which case the map needs to be built from scratch.
+     */
+    @Nullable
+    public static IncrementalOrdinalMap buildIncrementally(IndexReader reader, SortedSetDocValues[] subs,
+                                                           IncrementalOrdinalMap previous) throws IOException {
+        final IndexReader.CacheKey[] segmentKeys = segmentKeys(reader);
+        final Map<IndexReader.CacheKey, Integer> previousSegments = new HashMap<>();
+        for (int i = 0; i < previous.segmentKeys.length; i++) {
+            if (previous.segmentKeys[i] == null) {
+                return null;
+            }
+            previousSegments.put(previous.segmentKeys[i], i);
+        }
+        // the index of each previous segment in the reader and of each segment of the reader in the previous reader
+        final int[] previousToCurrent = new int[previous.segmentKeys.length];
+        final int[] currentToPrevious = new int[segmentKeys.length];
+        Arrays.fill(previousToCurrent, -1);
+        int newSegments = 0;
+        for (int i = 0; i < segmentKeys.length; i++) {
+            final Integer previousIndex = segmentKeys[i] == null ? null : previousSegments.get(segmentKeys[i]);
+            if (previousIndex == null) {
+                currentToPrevious[i] = -1;
+                newSegments++;
+            } else {
+                currentToPrevious[i] = previousIndex;
+                previousToCurrent[previousIndex] = i;
+            }
+        }
+        for (int segment : previousToCurrent) {
+            if (segment == -1) {
+                // a merge removed segments whose terms may no longer exist
+                return null;
+            }
+        }
+
+        // merge the terms of the new segments into the previous global terms
+        final TermsEnum[] termsEnums = new TermsEnum[1 + newSegments];
+        final long[] weights = new long[termsEnums.length];
+        final int[] newSegmentIndices = new int[newSegments];
+        termsEnums[0] = new PreviousGlobalTermsEnum(previous, subs, previousToCurrent);
+        weights[0] = previous.getValueCount();
+        for (int i = 0, j = 0; i < subs.length; i++) {
+            if (currentToPrevious[i] == -1) {
+                newSegmentIndices[j] = i;
+                termsEnums[1 + j] = subs[i].termsEnum();
+                weights[1 + j] = subs[i].getValueCount();
+                j++;
+            }
+        }
+        final OrdinalMap ordinalMap = OrdinalMap.build(null, termsEnums, weights, PackedInts.DEFAULT);
+        long ramBytesUsed = BASE_RAM_BYTES_USED + ordinalMap.ramBytesUsed();
+
+        final LongValues previousToGlobal = ordinalMap.getGlobalOrds(0);
+        final LongValues[] globalOrds = new LongValues[subs.length];
+        for (int i = 0, j = 0; i < subs.length; i++) {
+            if (currentToPrevious[i] == -1) {
+                globalOrds[i] = ordinalMap.getGlobalOrds(1 + j++);
+            } else {
+                final LongValues previousGlobalOrds = previous.getGlobalOrds(currentToPrevious[i]);
+                final PackedLongValues.Builder builder = PackedLongValues.monotonicBuilder(PackedInts.COMPACT);
+                for (long ord = 0; ord < subs[i].getValueCount(); ord++) {
+                    builder.add(previousToGlobal.get(previousGlobalOrds.get(ord)));
+                }
+                final PackedLongValues values = builder.build();
+                ramBytesUsed += values.ramBytesUsed();
+                globalOrds[i] = values;
+            }
+        }
+
+        final PackedLongValues.Builder firstSegmentNumbers = PackedLongValues.packedBuilder(PackedInts.COMPACT);
+        final PackedLongValues.Builder firstSegmentOrds = PackedLongValues.deltaPackedBuilder(PackedInts.COMPACT);
+        for (long globalOrd = 0; globalOrd < ordinalMap.getValueCount(); globalOrd++) {
+            final int sub = ordinalMap.getFirstSegmentNumber(globalOrd);
+            final long subOrd = ordinalMap.getFirstSegmentOrd(globalOrd);
+            if (sub == 0) {
+                firstSegmentNumbers.add(previousToCurrent[previous.getFirstSegmentNumber(subOrd)]);
+                firstSegmentOrds.add(previous.getFirstSegmentOrd(subOrd));
+            } else {
+                firstSegmentNumbers.add(newSegmentIndices[sub - 1]);
+                firstSegmentOrds.add(subOrd);
+            }
+        }
+        final PackedLongValues numbers = firstSegmentNumbers.build();
+        final PackedLongValues ords = firstSegmentOrds.build();
+        ramBytesUsed += numbers.ramBytesUsed() + ords.ramBytesUsed();
+        return new IncrementalOrdinalMap(segmentKeys, ordinalMap, globalOrds, numbers, ords, ramBytesUsed);
+    }
+
+    private static IndexReader.CacheKey[] segmentKeys(IndexReader reader) {
+        final IndexReader.CacheKey[] keys = new IndexReader.CacheKey[reader.leaves().size()];
+        for (int i = 0; i < keys.length; i++) {
+            final IndexReader.CacheHelper cacheHelper = reader.leaves().get(i).reader().getCoreCacheHelper();
+            keys[i] = cacheHelper == null ? null : cacheHelper.getKey();
+        }
+        return keys;
+    }
+
+    /**
+     * Whether this map was built from the map of a previous reader.
+     */
+    public boolean isIncremental() {
+        return globalOrds != null;
+    }
+
+    /**
+     * Returns the total number of unique terms in the global ordinal space.
+     */
+    public long getValueCount() {
+        return ordinalMap.getValueCount();
+    }
+
+    /**
+     * Returns a mapping from the ordinals of the segment with the given index to global ordinals.
+     */
+    public LongValues getGlobalOrds(int segmentIndex) {
+        return globalOrds == null ? ordinalMap.getGlobalOrds(segmentIndex) : globalOrds[segmentIndex];
+    }
+
+    /**
+     * Returns the index of a segment that contains the term with the given global ordinal.
+     */
+    public int getFirstSegmentNumber(long globalOrd) {
+        return firstSegmentNumbers == null ? ordinalMap.getFirstSegmentNumber(globalOrd) : (int) firstSegmentNumbers.get(globalOrd);
+    }
+
+    /**
+     * Returns the ordinal of the term with the given global ordinal in the segment returned by
+     * {@link #getFirstSegmentNumber(long)}.
+     */
+    public long getFirstSegmentOrd(long globalOrd) {
+        return firstSegmentOrds == null ? ordinalMap.getFirstSegmentOrd(globalOrd) : firstSegmentOrds.get(globalOrd);
+    }
+
+    /**
+     * Returns the equivalent Lucene {@link OrdinalMap}, which needs to be built if this map was built incrementally.
+     */
+    OrdinalMap toOrdinalMap(SortedSetDocValues[] subs) throws IOException {
+        return globalOrds == null ? ordinalMap : OrdinalMap.build(null, subs, PackedInts.DEFAULT);
+    }
+
+    @Override
+    public long ramBytesUsed() {
+        return ramBytesUsed;
+    }
+
+    /**
+     * Enumerates the global terms of a previous map in order, looking them up in the segments of the current reader that
+     * contain them.
+     */
+    private static class PreviousGlobalTermsEnum extends BaseTermsEnum {
+        private final IncrementalOrdinalMap previous;
+        private final SortedSetDocValues[] subs;
+        private final int[] previousToCurrent;
+        private final TermsEnum[] lookups;
+        private final BytesRefBuilder term = new BytesRefBuilder();
+        private long ord = -1;
+
+        PreviousGlobalTermsEnum(IncrementalOrdinalMap previous, SortedSetDocValues[] subs, int[] previousToCurrent) {
+            this.previous = previous;
+            this.subs = subs;
+            this.previousToCurrent = previousToCurrent;
+            this.lookups = new TermsEnum[subs.length];
+        }
+
+        @Override
+        public BytesRef next() throws IOException {
+            if (++ord >= previous.getValueCount()) {
+                return null;
+            }
+            final int segment = previousToCurrent[previous.getFirstSegmentNumber(ord)];
+            if (lookups[segment] == null) {
+                lookups[segment] = subs[segment].termsEnum();
+            }
+            lookups[segment].seekExact(previous.getFirstSegmentOrd(ord));
+            // copy the term since the lookups of the segments are repositioned for the next terms
+            term.copyBytes(lookups[segment].term());
+            return term.get();
+        }
+
+        @Override
+        public BytesRef term() {
+            return term.get();
+        }
+
+        @Override
+        public long ord() {
+            return ord;
+        }
+
+        @Override
+        public SeekStatus seekCeil(BytesRef text) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void seekExact(long ord) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int docFreq() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long totalTermFreq() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public PostingsEnum postings(PostingsEnum reuse, int flags) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ImpactsEnum impacts(int flags) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public TermState termState() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
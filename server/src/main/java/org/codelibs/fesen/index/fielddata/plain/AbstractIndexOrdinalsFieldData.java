@@ -26,6 +26,7 @@ import org.apache.lucene.index.OrdinalMap;
 import org.apache.lucene.index.SortedSetDocValues;
 import org.apache.lucene.index.Terms;
 import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.util.Accountable;
 import org.apache.lucene.util.BytesRef;
 import org.codelibs.fesen.FesenException;
 import org.codelibs.fesen.index.fielddata.IndexFieldDataCache;
@@ -35,6 +36,8 @@ import org.codelibs.fesen.index.fielddata.RamAccountingTermsEnum;
 import org.codelibs.fesen.index.fielddata.ScriptDocValues;
 import org.codelibs.fesen.index.fielddata.ordinals.GlobalOrdinalsBuilder;
 import org.codelibs.fesen.index.fielddata.ordinals.GlobalOrdinalsIndexFieldData;
+import org.codelibs.fesen.index.shard.ShardId;
+import org.codelibs.fesen.index.shard.ShardUtils;
 import org.codelibs.fesen.indices.breaker.CircuitBreakerService;
 import org.codelibs.fesen.search.aggregations.support.ValuesSourceType;
 
@@ -148,12 +151,15 @@ public abstract class AbstractIndexOrdinalsFieldData implements IndexOrdinalsFie
 
     @Override
     public IndexOrdinalsFieldData loadGlobalDirect(DirectoryReader indexReader) throws Exception {
+        final ShardId shardId = ShardUtils.extractShardId(indexReader);
+        final Accountable previous = shardId == null ? null : cache.lastLoadedGlobal(shardId);
         return GlobalOrdinalsBuilder.build(
             indexReader,
             this,
             breakerService,
             logger,
-            scriptFunction
+            scriptFunction,
+            previous instanceof GlobalOrdinalsIndexFieldData ? (GlobalOrdinalsIndexFieldData) previous : null
         );
     }
 
@@ -0,0 +1,29 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.index.mapper;
+
+/**
+ * Implemented by {@link org.codelibs.fesen.index.mapper.MappedFieldType} whose numeric doc values
+ * are the 64-bit murmur3 hashes of the original values, as computed by
+ * {@code MurmurHash3.hash128(bytes, offset, length, 0, hash).h1}. Aggregations that hash values,
+ * like {@code cardinality}, can use them as is instead of hashing them again.
+ */
+public interface PrecomputedHashFieldType {
+}
@@ -396,6 +396,13 @@ public class QueryShardContext extends QueryRewriteContext {
         return indexSettings.getIndex();
     }
 
+    /**
+     * Returns the script service, used to reduce aggregations on the shard without compiling new scripts.
+     */
+    public ScriptService getScriptService() {
+        return scriptService;
+    }
+
     /** Compile script using script service */
     public <FactoryType> FactoryType compile(Script script, ScriptContext<FactoryType> context) {
         FactoryType factory = scriptService.compile(script, context);
@@ -0,0 +1,299 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.index.seqno;
+
+import org.codelibs.fesen.core.SuppressForbidden;
+
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A {@link LocalCheckpointTracker} that marks sequence numbers without taking a lock, for shards that many threads index into
+ * concurrently.
+ * <p>
+ * Sequence numbers above a checkpoint are tracked in a ring of bit sets. Each bit set covers {@link #BIT_SET_SIZE} consecutive
+ * sequence numbers and knows which ones, so a slot of the ring is reused by installing a fresh bit set once the checkpoint moved
+ * past the sequence numbers of the previous one, and bits are never cleared. Marking a sequence number sets its bit with a compare
+ * and swap and then tries to advance the checkpoint. Only one thread advances a checkpoint at a time, a word at a time; threads
+ * that find it busy leave their bit to that thread, which checks for newly set bits before it gives up. Sequence numbers that are
+ * too far ahead of the checkpoint to fit into the ring are parked in a concurrent set until the checkpoint catches up.
+ */
+public class ConcurrentLocalCheckpointTracker extends LocalCheckpointTracker {
+
+    /**
+     * The number of bit sets in each ring, so the ring covers {@code RING_SIZE * BIT_SET_SIZE} sequence numbers above the checkpoint.
+     */
+    static final int RING_SIZE = 64;
+
+    private final SeqNoRing processed = new SeqNoRing(processedCheckpoint, this::onProcessedCheckpointAdvanced);
+    private final SeqNoRing persisted = new SeqNoRing(persistedCheckpoint, () -> {});
+
+    /**
+     * The number of threads waiting in {@link #waitForProcessedOpsToComplete(long)}, so that advancing the processed checkpoint only
+     * takes the monitor if somebody needs to be notified.
+     */
+    private final AtomicInteger processedWaiters = new AtomicInteger();
+
+    public ConcurrentLocalCheckpointTracker(final long maxSeqNo, final long localCheckpoint) {
+        super(maxSeqNo, localCheckpoint);
+    }
+
+    @Override
+    public void markSeqNoAsProcessed(final long seqNo) {
+        markSeqNo(seqNo, processed);
+    }
+
+    @Override
+    public void markSeqNoAsPersisted(final long seqNo) {
+        markSeqNo(seqNo, persisted);
+    }
+
+    private void markSeqNo(final long seqNo, final SeqNoRing ring) {
+        // make sure we track highest seen sequence number, before the checkpoint can move to it
+        advanceMaxSeqNo(seqNo);
+        ring.mark(seqNo);
+    }
+
+    @Override
+    public SeqNoStats getStats(final long globalCheckpoint) {
+        // read the checkpoint first: it never passes the max seq no, which is advanced before a sequence number is marked
+        final long persistedCheckpoint = getPersistedCheckpoint();
+        return new SeqNoStats(getMaxSeqNo(), persistedCheckpoint, globalCheckpoint);
+    }
+
+    @Override
+    @SuppressForbidden(reason = "Object#wait")
+    public void waitForProcessedOpsToComplete(final long seqNo) throws InterruptedException {
+        if (processedCheckpoint.get() >= seqNo) {
+            return;
+        }
+        synchronized (this) {
+            processedWaiters.incrementAndGet();
+            try {
+                while (processedCheckpoint.get() < seqNo) {
+                    // notified by onProcessedCheckpointAdvanced
+                    this.wait();
+                }
+            } finally {
+                processedWaiters.decrementAndGet();
+            }
+        }
+    }
+
+    @SuppressForbidden(reason = "Object#notifyAll")
+    private void onProcessedCheckpointAdvanced() {
+        if (processedWaiters.get() > 0) {
+            synchronized (this) {
+                this.notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public boolean hasProcessed(final long seqNo) {
+        assert seqNo >= 0 : "invalid seq_no=" + seqNo;
+        if (seqNo >= nextSeqNo.get()) {
+            return false;
+        }
+        return processed.contains(seqNo);
+    }
+
+    /**
+     * A bit set for the sequence numbers from {@code key * BIT_SET_SIZE} to {@code (key + 1) * BIT_SET_SIZE - 1}.
+     */
+    private static final class SeqNoBitSet {
+        private final long key;
+        private final AtomicLongArray words = new AtomicLongArray(BIT_SET_SIZE / Long.SIZE);
+
+        SeqNoBitSet(long key) {
+            this.key = key;
+        }
+
+        void set(long seqNo) {
+            final int offset = offset(seqNo);
+            final int wordIndex = offset >>> 6;
+            final long mask = 1L << offset;
+            long word;
+            do {
+                word = words.get(wordIndex);
+                if ((word & mask) != 0) {
+                    return;
+                }
+            } while (words.compareAndSet(wordIndex, word, word | mask) == false);
+        }
+
+        boolean get(long seqNo) {
+            final int offset = offset(seqNo);
+            return (words.get(offset >>> 6) & (1L << offset)) != 0;
+        }
+
+        /**
+         * Returns the number of consecutive set bits starting at the given sequence number, up to the end of its word.
+         */
+        int consecutiveFrom(long seqNo) {
+            final int offset = offset(seqNo);
+            final int bitInWord = offset & (Long.SIZE - 1);
+            final long word = words.get(offset >>> 6) >>> bitInWord;
+            return Math.min(Long.numberOfTrailingZeros(~word), Long.SIZE - bitInWord);
+        }
+
+        private static int offset(long seqNo) {
+            return (int) (seqNo % BIT_SET_SIZE);
+        }
+    }
+
+    /**
+     * Tracks the sequence numbers above a checkpoint and advances that checkpoint.
+     */
+    private static final class SeqNoRing {
+        private final AtomicLong checkpoint;
+        private final Runnable onAdvance;
+        private final AtomicReferenceArray<SeqNoBitSet> bitSets = new AtomicReferenceArray<>(RING_SIZE);
+        private final AtomicBoolean advancing = new AtomicBoolean();
+        /** sequence numbers that were marked while they were too far ahead of the checkpoint to fit into the ring */
+        private final ConcurrentSkipListSet<Long> overflow = new ConcurrentSkipListSet<>();
+
+        SeqNoRing(AtomicLong checkpoint, Runnable onAdvance) {
+            this.checkpoint = checkpoint;
+            this.onAdvance = onAdvance;
+        }
+
+        void mark(long seqNo) {
+            if (seqNo <= checkpoint.get()) {
+                // this is possible during recovery where we might replay an operation that was also replicated
+                return;
+            }
+            if (fitsInRing(seqNo)) {
+                setInRing(seqNo);
+            } else {
+                overflow.add(seqNo);
+                // the checkpoint may have caught up and drained the overflow before we added to it
+                if (fitsInRing(seqNo)) {
+                    moveToRing(seqNo);
+                }
+            }
+            tryAdvance();
+        }
+
+        /**
+         * Whether the given sequence number maps to a slot whose previous bit set the checkpoint is done with. The checkpoint never
+         * moves back so once this holds, it holds forever.
+         */
+        private boolean fitsInRing(long seqNo) {
+            return getBitSetKey(seqNo) < getBitSetKey(checkpoint.get() + 1) + RING_SIZE;
+        }
+
+        private void setInRing(long seqNo) {
+            final long key = getBitSetKey(seqNo);
+            final int slot = (int) (key % RING_SIZE);
+            while (true) {
+                final SeqNoBitSet bitSet = bitSets.get(slot);
+                if (bitSet != null && bitSet.key == key) {
+                    bitSet.set(seqNo);
+                    return;
+                } else if (bitSet != null && bitSet.key > key) {
+                    // the slot was reused already, so the checkpoint has passed this sequence number
+                    assert seqNo <= checkpoint.get();
+                    return;
+                }
+                // the checkpoint is done with the previous bit set of this slot, if several threads race to replace it one wins
+                bitSets.compareAndSet(slot, bitSet, new SeqNoBitSet(key));
+            }
+        }
+
+        /**
+         * Sets the bit of an overflowed sequence number before removing it from the overflow, so that it can always be found in one
+         * of them. Setting a bit twice is harmless, so both the marking thread and the one advancing the checkpoint may do this.
+         */
+        private void moveToRing(long seqNo) {
+            assert fitsInRing(seqNo);
+            if (seqNo > checkpoint.get()) {
+                setInRing(seqNo);
+            }
+            overflow.remove(seqNo);
+        }
+
+        /**
+         * Advances the checkpoint unless another thread is doing so; that thread picks up our bits before it stops.
+         */
+        private void tryAdvance() {
+            while (isNextSet() && advancing.compareAndSet(false, true)) {
+                try {
+                    advance();
+                } finally {
+                    advancing.set(false);
+                }
+                // bits set while we were advancing by threads that found us busy are picked up by the next iteration
+            }
+        }
+
+        private boolean isNextSet() {
+            return isSetInRing(checkpoint.get() + 1);
+        }
+
+        private void advance() {
+            assert advancing.get();
+            boolean advanced = false;
+            while (true) {
+                final long next = checkpoint.get() + 1;
+                final long key = getBitSetKey(next);
+                final SeqNoBitSet bitSet = bitSets.get((int) (key % RING_SIZE));
+                final int count = bitSet == null || bitSet.key != key ? 0 : bitSet.consecutiveFrom(next);
+                if (count == 0) {
+                    break;
+                }
+                checkpoint.set(next + count - 1);
+                advanced = true;
+                drainOverflow();
+            }
+            if (advanced) {
+                onAdvance.run();
+            }
+        }
+
+        private void drainOverflow() {
+            if (overflow.isEmpty()) {
+                return;
+            }
+            for (Long seqNo = overflow.ceiling(Long.MIN_VALUE); seqNo != null && fitsInRing(seqNo); seqNo = overflow.higher(seqNo)) {
+                moveToRing(seqNo);
+            }
+        }
+
+        boolean contains(long seqNo) {
+            // a sequence number moves from the overflow to the ring and from the ring below the checkpoint, check in that order
+            return seqNo <= checkpoint.get() || overflow.contains(seqNo) || isSetInRing(seqNo) || seqNo <= checkpoint.get();
+        }
+
+        private boolean isSetInRing(long seqNo) {
+            final long key = getBitSetKey(seqNo);
+            final SeqNoBitSet bitSet = bitSets.get((int) (key % RING_SIZE));
+            return bitSet != null && bitSet.key == key && bitSet.get(seqNo);
+        }
+
+        private static long getBitSetKey(final long seqNo) {
+            return seqNo / BIT_SET_SIZE;
+        }
+    }
+}
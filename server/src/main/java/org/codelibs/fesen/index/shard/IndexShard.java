@@ -139,6 +139,7 @@ import org.codelibs.fesen.index.warmer.ShardIndexWarmerService;
 import org.codelibs.fesen.index.warmer.WarmerStats;
 import org.codelibs.fesen.indices.IndexingMemoryController;
 import org.codelibs.fesen.indices.IndicesService;
+import org.codelibs.fesen.indices.IndicesTranslogSyncService;
 import org.codelibs.fesen.indices.TypeMissingException;
 import org.codelibs.fesen.indices.breaker.CircuitBreakerService;
 import org.codelibs.fesen.indices.cluster.IndicesClusterStateService;
@@ -197,6 +198,7 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
     private final ShardGetService getService;
     private final ShardIndexWarmerService shardWarmerService;
     private final ShardRequestCache requestCacheStats;
+    private final ShardRequestCache hitsRequestCacheStats;
     private final ShardFieldData shardFieldData;
     private final ShardBitsetFilterCache shardBitsetFilterCache;
     private final Object mutex = new Object();
@@ -296,7 +298,8 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
             final List<IndexingOperationListener> listeners,
             final Runnable globalCheckpointSyncer,
             final RetentionLeaseSyncer retentionLeaseSyncer,
-            final CircuitBreakerService circuitBreakerService) throws IOException {
+            final CircuitBreakerService circuitBreakerService,
+            final @Nullable IndicesTranslogSyncService translogSyncService) throws IOException {
         super(shardRouting.shardId(), indexSettings);
         assert shardRouting.initializing();
         this.shardRouting = shardRouting;
@@ -311,6 +314,8 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
         this.indexEventListener = indexEventListener;
         this.threadPool = threadPool;
         this.translogSyncProcessor = createTranslogSyncProcessor(logger, threadPool.getThreadContext(), this::getEngine);
+        this.translogSyncService = translogSyncService;
+        this.translogSyncTarget = createTranslogSyncTarget(this::getEngine);
         this.mapperService = mapperService;
         this.indexCache = indexCache;
         this.internalIndexingStats = new InternalIndexingStats();
@@ -325,6 +330,7 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
         this.getService = new ShardGetService(indexSettings, this, mapperService);
         this.shardWarmerService = new ShardIndexWarmerService(shardId, indexSettings);
         this.requestCacheStats = new ShardRequestCache();
+        this.hitsRequestCacheStats = new ShardRequestCache();
         this.shardFieldData = new ShardFieldData();
         this.shardBitsetFilterCache = new ShardBitsetFilterCache(shardId, indexSettings);
         state = IndexShardState.CREATED;
@@ -417,6 +423,13 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
         return this.requestCacheStats;
     }
 
+    /**
+     * Tracks the portion of the request cache that holds results of requests returning hits.
+     */
+    public ShardRequestCache hitsRequestCache() {
+        return this.hitsRequestCacheStats;
+    }
+
     public ShardFieldData fieldData() {
         return this.shardFieldData;
     }
@@ -3097,6 +3110,19 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
     }
 
     private final AsyncIOProcessor<Translog.Location> translogSyncProcessor;
+    @Nullable
+    private final IndicesTranslogSyncService translogSyncService;
+    private final IndicesTranslogSyncService.SyncTarget translogSyncTarget;
+
+    private static IndicesTranslogSyncService.SyncTarget createTranslogSyncTarget(Supplier<Engine> engineSupplier) {
+        return locations -> {
+            try {
+                engineSupplier.get().ensureTranslogSynced(locations);
+            } catch (AlreadyClosedException ex) {
+                // that's fine since we already synced everything on engine close
+            }
+        };
+    }
 
     private static AsyncIOProcessor<Translog.Location> createTranslogSyncProcessor(Logger logger, ThreadContext threadContext,
                                                                                    Supplier<Engine> engineSupplier) {
@@ -3124,10 +3150,16 @@ public class IndexShard extends AbstractIndexShardComponent implements IndicesCl
      * one thread blocking on the sync an all others can continue indexing.
      * NOTE: if the syncListener throws an exception when it's processed the exception will only be logged. Users should make sure that the
      * listener handles all exception cases internally.
+     * If translog group syncs are enabled on this node, the sync is batched with the syncs of the other shards on the same data
+     * path instead, see {@link IndicesTranslogSyncService}.
      */
     public final void sync(Translog.Location location, Consumer<Exception> syncListener) {
         verifyNotClosed();
-        translogSyncProcessor.put(location, syncListener);
+        if (translogSyncService != null) {
+            translogSyncService.sync(path.getRootDataPath(), translogSyncTarget, location, syncListener);
+        } else {
+            translogSyncProcessor.put(location, syncListener);
+        }
     }
 
     public void sync() throws IOException {
@@ -33,6 +33,7 @@ import org.codelibs.fesen.common.io.stream.StreamOutput;
 import org.codelibs.fesen.common.lease.Releasable;
 import org.codelibs.fesen.common.lease.Releasables;
 import org.codelibs.fesen.common.lucene.uid.Versions;
+import org.codelibs.fesen.common.metrics.MeanMetric;
 import org.codelibs.fesen.common.util.BigArrays;
 import org.codelibs.fesen.common.util.concurrent.ReleasableLock;
 import org.codelibs.fesen.core.Nullable;
@@ -63,6 +64,7 @@ import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.OptionalLong;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -125,6 +127,7 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
 
     protected final TragicExceptionHolder tragedy = new TragicExceptionHolder();
     private final AtomicBoolean closed = new AtomicBoolean();
+    private final MeanMetric syncMetric = new MeanMetric();
     private final TranslogConfig config;
     private final LongSupplier globalCheckpointSupplier;
     private final LongSupplier primaryTermSupplier;
@@ -711,7 +714,7 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
     public void sync() throws IOException {
         try (ReleasableLock lock = readLock.acquire()) {
             if (closed.get() == false) {
-                current.sync();
+                syncCurrentUpTo(Long.MAX_VALUE);
             }
         } catch (final Exception ex) {
             closeOnTragicEvent(ex);
@@ -783,7 +786,7 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
         try (ReleasableLock lock = readLock.acquire()) {
             if (location.generation == current.getGeneration()) { // if we have a new one it's already synced
                 ensureOpen();
-                return current.syncUpTo(location.translogLocation + location.size);
+                return syncCurrentUpTo(location.translogLocation + location.size);
             }
         } catch (final Exception ex) {
             closeOnTragicEvent(ex);
@@ -792,6 +795,18 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
         return false;
     }
 
+    /**
+     * Syncs the current writer up to the given offset, recording the sync in the translog stats if it fsynced.
+     */
+    private boolean syncCurrentUpTo(long offset) throws IOException {
+        final long startTimeNanos = System.nanoTime();
+        final boolean synced = current.syncUpTo(offset);
+        if (synced) {
+            syncMetric.inc(System.nanoTime() - startTimeNanos);
+        }
+        return synced;
+    }
+
     /**
      * Ensures that all locations in the given stream have been synced / written to the underlying storage.
      * This method allows for internal optimization to minimize the amount of fsync operations if multiple
@@ -845,7 +860,8 @@ public class Translog extends AbstractIndexShardComponent implements IndexShardC
         try (ReleasableLock lock = readLock.acquire()) {
             long uncommittedGen = getMinGenerationForSeqNo(deletionPolicy.getLocalCheckpointOfSafeCommit() + 1).translogFileGeneration;
             return new TranslogStats(totalOperations(), sizeInBytes(), totalOperationsByMinGen(uncommittedGen),
-                sizeInBytesByMinGen(uncommittedGen), earliestLastModifiedAge());
+                sizeInBytesByMinGen(uncommittedGen), earliestLastModifiedAge(), syncMetric.count(),
+                TimeUnit.NANOSECONDS.toMillis(syncMetric.sum()));
         }
     }
 
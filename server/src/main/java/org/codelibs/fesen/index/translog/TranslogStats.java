@@ -26,6 +26,7 @@ import org.codelibs.fesen.common.io.stream.Writeable;
 import org.codelibs.fesen.common.unit.ByteSizeValue;
 import org.codelibs.fesen.common.xcontent.ToXContentFragment;
 import org.codelibs.fesen.common.xcontent.XContentBuilder;
+import org.codelibs.fesen.core.TimeValue;
 
 import java.io.IOException;
 
@@ -36,6 +37,8 @@ public class TranslogStats implements Writeable, ToXContentFragment {
     private long uncommittedSizeInBytes;
     private int  uncommittedOperations;
     private long earliestLastModifiedAge;
+    private long syncCount;
+    private long syncTimeInMillis;
 
     public TranslogStats() {
     }
@@ -53,10 +56,19 @@ public class TranslogStats implements Writeable, ToXContentFragment {
         if (in.getVersion().onOrAfter(Version.V_6_3_0)) {
             earliestLastModifiedAge = in.readVLong();
         }
+        if (in.getVersion().onOrAfter(Version.V_0_17_0)) {
+            syncCount = in.readVLong();
+            syncTimeInMillis = in.readVLong();
+        }
     }
 
     public TranslogStats(int numberOfOperations, long translogSizeInBytes, int uncommittedOperations, long uncommittedSizeInBytes,
                          long earliestLastModifiedAge) {
+        this(numberOfOperations, translogSizeInBytes, uncommittedOperations, uncommittedSizeInBytes, earliestLastModifiedAge, 0, 0);
+    }
+
+    public TranslogStats(int numberOfOperations, long translogSizeInBytes, int uncommittedOperations, long uncommittedSizeInBytes,
+                         long earliestLastModifiedAge, long syncCount, long syncTimeInMillis) {
         if (numberOfOperations < 0) {
             throw new IllegalArgumentException("numberOfOperations must be >= 0");
         }
@@ -72,11 +84,19 @@ public class TranslogStats implements Writeable, ToXContentFragment {
         if (earliestLastModifiedAge < 0) {
             throw new IllegalArgumentException("earliestLastModifiedAge must be >= 0");
         }
+        if (syncCount < 0) {
+            throw new IllegalArgumentException("syncCount must be >= 0");
+        }
+        if (syncTimeInMillis < 0) {
+            throw new IllegalArgumentException("syncTimeInMillis must be >= 0");
+        }
         this.numberOfOperations = numberOfOperations;
         this.translogSizeInBytes = translogSizeInBytes;
         this.uncommittedSizeInBytes = uncommittedSizeInBytes;
         this.uncommittedOperations = uncommittedOperations;
         this.earliestLastModifiedAge = earliestLastModifiedAge;
+        this.syncCount = syncCount;
+        this.syncTimeInMillis = syncTimeInMillis;
     }
 
     public void add(TranslogStats translogStats) {
@@ -94,6 +114,8 @@ public class TranslogStats implements Writeable, ToXContentFragment {
             this.earliestLastModifiedAge =
                 Math.min(this.earliestLastModifiedAge, translogStats.earliestLastModifiedAge);
         }
+        this.syncCount += translogStats.syncCount;
+        this.syncTimeInMillis += translogStats.syncTimeInMillis;
     }
 
     public long getTranslogSizeInBytes() {
@@ -116,6 +138,16 @@ public class TranslogStats implements Writeable, ToXContentFragment {
 
     public long getEarliestLastModifiedAge() { return earliestLastModifiedAge; }
 
+    /** the number of fsyncs of the translog that wrote out buffered operations or a new checkpoint */
+    public long getSyncCount() {
+        return syncCount;
+    }
+
+    /** the total time spent in the fsyncs counted by {@link #getSyncCount()}, including waiting for a concurrent fsync */
+    public long getSyncTimeInMillis() {
+        return syncTimeInMillis;
+    }
+
     @Override
     public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
         builder.startObject("translog");
@@ -124,6 +156,8 @@ public class TranslogStats implements Writeable, ToXContentFragment {
         builder.field("uncommitted_operations", uncommittedOperations);
         builder.humanReadableField("uncommitted_size_in_bytes", "uncommitted_size", new ByteSizeValue(uncommittedSizeInBytes));
         builder.field("earliest_last_modified_age", earliestLastModifiedAge);
+        builder.field("sync_count", syncCount);
+        builder.humanReadableField("sync_time_in_millis", "sync_time", new TimeValue(syncTimeInMillis));
         builder.endObject();
         return builder;
     }
@@ -144,5 +178,9 @@ public class TranslogStats implements Writeable, ToXContentFragment {
         if (out.getVersion().onOrAfter(Version.V_6_3_0)) {
             out.writeVLong(earliestLastModifiedAge);
         }
+        if (out.getVersion().onOrAfter(Version.V_0_17_0)) {
+            out.writeVLong(syncCount);
+            out.writeVLong(syncTimeInMillis);
+        }
     }
 }
@@ -0,0 +1,297 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.indices;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.message.ParameterizedMessage;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefIterator;
+import org.codelibs.fesen.common.bytes.BytesArray;
+import org.codelibs.fesen.common.bytes.BytesReference;
+import org.codelibs.fesen.core.internal.io.IOUtils;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * A second cache tier that keeps values on local disk, used by {@link IndicesRequestCache} to hold the entries that
+ * are evicted from its on-heap cache.
+ * <p>
+ * Values are appended to segment files of bounded size while keys and the location of their values stay on heap.
+ * When a new segment would exceed the maximum size of the tier, the oldest segment is dropped along with all entries
+ * it still holds, so that eviction never requires compacting files. Segments are accessed through positional reads
+ * and writes rather than mapped into memory so that the files of dropped segments, and of segments whose entries
+ * have all been removed, are closed and deleted right away and the disk usage never exceeds the maximum size.
+ * <p>
+ * The content of the tier does not survive restarts: the directory is cleared when the tier is created and deleted
+ * when it is closed.
+ */
+final class DiskCacheTier<K> implements Closeable {
+
+    private static final Logger logger = LogManager.getLogger(DiskCacheTier.class);
+
+    private final Path path;
+    private final long maxSizeInBytes;
+    private final int segmentSizeInBytes;
+
+    // all fields below are guarded by this
+    private final Map<K, Entry<K>> entries = new HashMap<>();
+    private final Deque<Segment<K>> segments = new ArrayDeque<>();
+    private long nextSegmentId;
+    private long sizeInBytes;
+    private boolean closed;
+
+    DiskCacheTier(Path path, long maxSizeInBytes, int segmentSizeInBytes) throws IOException {
+        if (maxSizeInBytes <= 0) {
+            throw new IllegalArgumentException("the maximum size of the disk tier must be positive but was [" + maxSizeInBytes + "]");
+        }
+        if (segmentSizeInBytes <= 0) {
+            throw new IllegalArgumentException("the segment size of the disk tier must be positive but was [" + segmentSizeInBytes + "]");
+        }
+        this.path = path;
+        this.maxSizeInBytes = maxSizeInBytes;
+        this.segmentSizeInBytes = (int) Math.min(segmentSizeInBytes, maxSizeInBytes);
+        // entries of a previous run refer to readers that no longer exist
+        IOUtils.rm(path);
+        Files.createDirectories(path);
+    }
+
+    /**
+     * Stores a value, replacing the previous value of the key if any. Returns <code>false</code> if the value could not be
+     * stored because it is larger than a segment or because the tier is closed or failed to create a segment.
+     */
+    synchronized boolean put(K key, BytesReference value) {
+        final int length = value.length();
+        if (closed || length > segmentSizeInBytes) {
+            return false;
+        }
+        removeEntry(key, entries.remove(key));
+        Segment<K> segment = segments.peekLast();
+        if (segment == null || segment.remaining() < length) {
+            try {
+                segment = newSegment();
+            } catch (IOException e) {
+                logger.warn(new ParameterizedMessage("failed to create request cache segment in [{}]", path), e);
+                return false;
+            }
+        }
+        final int offset;
+        try {
+            offset = segment.append(value);
+        } catch (IOException e) {
+            logger.warn(new ParameterizedMessage("failed to write to request cache segment [{}]", segment.file), e);
+            return false;
+        }
+        segment.keys.add(key);
+        entries.put(key, new Entry<>(segment, offset, length));
+        sizeInBytes += length;
+        return true;
+    }
+
+    /**
+     * Removes the value associated with the key and returns it, or <code>null</code> if the tier holds no value for the key.
+     */
+    synchronized BytesReference remove(K key) {
+        final Entry<K> entry = entries.remove(key);
+        if (entry == null) {
+            return null;
+        }
+        BytesReference value;
+        try {
+            value = entry.segment.read(entry.offset, entry.length);
+        } catch (IOException e) {
+            logger.warn(new ParameterizedMessage("failed to read from request cache segment [{}]", entry.segment.file), e);
+            value = null;
+        }
+        removeEntry(key, entry);
+        return value;
+    }
+
+    /**
+     * Removes the value associated with the key, if any, without reading it.
+     */
+    synchronized void invalidate(K key) {
+        removeEntry(key, entries.remove(key));
+    }
+
+    /**
+     * Removes all values whose key matches the given predicate.
+     */
+    synchronized void removeIf(Predicate<K> predicate) {
+        for (Iterator<Map.Entry<K, Entry<K>>> iterator = entries.entrySet().iterator(); iterator.hasNext(); ) {
+            final Map.Entry<K, Entry<K>> entry = iterator.next();
+            if (predicate.test(entry.getKey())) {
+                iterator.remove();
+                removeEntry(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Removes all values.
+     */
+    synchronized void clear() {
+        entries.clear();
+        sizeInBytes = 0;
+        while (segments.isEmpty() == false) {
+            deleteSegment(segments.pollFirst());
+        }
+    }
+
+    /**
+     * Returns the number of values held by the tier.
+     */
+    synchronized int count() {
+        return entries.size();
+    }
+
+    /**
+     * Returns the total size of the values held by the tier.
+     */
+    synchronized long sizeInBytes() {
+        return sizeInBytes;
+    }
+
+    /**
+     * Returns the number of segment files of the tier.
+     */
+    synchronized int numberOfSegments() {
+        return segments.size();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed == false) {
+            closed = true;
+            clear();
+            IOUtils.rm(path);
+        }
+    }
+
+    private void removeEntry(K key, Entry<K> entry) {
+        if (entry != null) {
+            sizeInBytes -= entry.length;
+            entry.segment.keys.remove(key);
+            // the last segment is still being appended to
+            if (entry.segment.keys.isEmpty() && entry.segment != segments.peekLast()) {
+                segments.remove(entry.segment);
+                deleteSegment(entry.segment);
+            }
+        }
+    }
+
+    private Segment<K> newSegment() throws IOException {
+        while (segments.isEmpty() == false && (segments.size() + 1L) * segmentSizeInBytes > maxSizeInBytes) {
+            final Segment<K> oldest = segments.pollFirst();
+            for (K key : oldest.keys) {
+                sizeInBytes -= entries.remove(key).length;
+            }
+            deleteSegment(oldest);
+        }
+        final Path file = path.resolve("segment-" + nextSegmentId++);
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        final Segment<K> segment = new Segment<>(file, channel, segmentSizeInBytes);
+        segments.addLast(segment);
+        return segment;
+    }
+
+    private void deleteSegment(Segment<K> segment) {
+        segment.keys.clear();
+        try {
+            // some file systems require the file to be closed before it can be deleted
+            IOUtils.close(segment.channel);
+            Files.deleteIfExists(segment.file);
+        } catch (IOException e) {
+            logger.debug(new ParameterizedMessage("failed to delete request cache segment [{}]", segment.file), e);
+        }
+    }
+
+    private static final class Entry<K> {
+        final Segment<K> segment;
+        final int offset;
+        final int length;
+
+        Entry(Segment<K> segment, int offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private static final class Segment<K> {
+        final Path file;
+        final FileChannel channel;
+        final int capacity;
+        final Set<K> keys = new HashSet<>();
+        int position;
+
+        Segment(Path file, FileChannel channel, int capacity) {
+            this.file = file;
+            this.channel = channel;
+            this.capacity = capacity;
+        }
+
+        int remaining() {
+            return capacity - position;
+        }
+
+        int append(BytesReference value) throws IOException {
+            final int offset = position;
+            long filePosition = offset;
+            final BytesRefIterator iterator = value.iterator();
+            BytesRef ref;
+            while ((ref = iterator.next()) != null) {
+                final ByteBuffer source = ByteBuffer.wrap(ref.bytes, ref.offset, ref.length);
+                while (source.hasRemaining()) {
+                    filePosition += channel.write(source, filePosition);
+                }
+            }
+            position += value.length();
+            return offset;
+        }
+
+        BytesReference read(int offset, int length) throws IOException {
+            final byte[] bytes = new byte[length];
+            final ByteBuffer target = ByteBuffer.wrap(bytes);
+            while (target.hasRemaining()) {
+                if (channel.read(target, offset + target.position()) < 0) {
+                    throw new EOFException("read past the end of request cache segment [" + file + "]");
+                }
+            }
+            return new BytesArray(bytes);
+        }
+    }
+}
@@ -0,0 +1,315 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.indices;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.codelibs.fesen.common.CheckedSupplier;
+import org.codelibs.fesen.common.cache.Cache;
+import org.codelibs.fesen.common.cache.CacheBuilder;
+import org.codelibs.fesen.common.cache.RemovalNotification;
+import org.codelibs.fesen.common.metrics.CounterMetric;
+import org.codelibs.fesen.common.settings.Setting;
+import org.codelibs.fesen.common.settings.Setting.Property;
+import org.codelibs.fesen.common.settings.Settings;
+import org.codelibs.fesen.common.unit.ByteSizeValue;
+import org.codelibs.fesen.common.util.concurrent.ConcurrentCollections;
+import org.codelibs.fesen.core.Nullable;
+import org.codelibs.fesen.index.cache.significance.BackgroundFrequencyCacheStats;
+import org.codelibs.fesen.index.shard.ShardId;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the background frequencies that {@code significant_terms} and {@code significant_text} look up for every
+ * candidate term, as well as the number of documents matching their background filter, so that repeated significance
+ * analyses on the same point-in-time view of a shard don't have to seek the terms dictionary or count the background
+ * filter again.
+ * <p>
+ * Entries are keyed on the shard, the cache key of its top-level reader, the field, the background filter and the term.
+ * Background filters are held once per reader: a dedicated entry maps each distinct filter to an id, which the entries of
+ * the filter are keyed on, and accounts for the memory of the filter. Every refresh that changes the shard opens a new
+ * reader and thus starts over with new entries, the entries of the closed reader are removed by {@link #cleanCache()},
+ * which is called periodically.
+ * <p>
+ * Like the request and query caches, the cache is bounded by its own size setting rather than accounted in a circuit
+ * breaker: its entries are small and can be dropped at any time, so the cache evicts rather than failing the requests
+ * that fill it. Its usage is reported per shard in the {@code background_frequency_cache} section of the stats.
+ */
+public final class IndicesBackgroundFrequencyCache implements Closeable {
+
+    public static final Setting<ByteSizeValue> INDICES_CACHE_BACKGROUND_FREQUENCY_SIZE =
+        Setting.memorySizeSetting("indices.significance.background_frequency_cache.size", "1%", Property.NodeScope);
+
+    private static final long LONG_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(Long.class);
+    // the estimate of the query cache for queries that don't account for their memory
+    private static final long QUERY_DEFAULT_RAM_BYTES_USED = 1024;
+    private static final long NO_FILTER = -1;
+
+    private final Cache<Key, Long> cache;
+    private final ConcurrentMap<IndexReader.CacheKey, Boolean> registeredReaders = ConcurrentCollections.newConcurrentMap();
+    private final Set<IndexReader.CacheKey> readersToClean = ConcurrentCollections.newConcurrentSet();
+    private final ConcurrentMap<ShardId, ShardStats> shardStats = ConcurrentCollections.newConcurrentMap();
+    private final AtomicLong nextFilterId = new AtomicLong();
+
+    IndicesBackgroundFrequencyCache(Settings settings) {
+        this.cache = CacheBuilder.<Key, Long>builder()
+            .setMaximumWeight(INDICES_CACHE_BACKGROUND_FREQUENCY_SIZE.get(settings).getBytes())
+            .weigher((k, v) -> weight(k))
+            .removalListener(this::onRemoval)
+            .build();
+    }
+
+    private static long weight(Key key) {
+        return key.ramBytesUsed() + LONG_RAM_BYTES_USED;
+    }
+
+    /**
+     * Returns the cached frequency of the given term, or loads and caches it.
+     *
+     * @param shardId the shard the reader belongs to
+     * @param readerCacheHelper the cache helper of the top-level reader of the shard
+     * @param field the field the term belongs to
+     * @param backgroundFilter the background filter of the significance analysis, or {@code null} if it has none
+     * @param term the term, or {@code null} to cache the number of documents matching the background filter
+     * @param loader computes the frequency on a cache miss
+     */
+    public long getOrCompute(ShardId shardId, IndexReader.CacheHelper readerCacheHelper, String field, @Nullable Query backgroundFilter,
+                             @Nullable BytesRef term, CheckedSupplier<Long, IOException> loader) throws IOException {
+        final ShardStats stats = shardStats.computeIfAbsent(shardId, k -> new ShardStats());
+        final long filterId = backgroundFilter == null ? NO_FILTER : filterId(shardId, readerCacheHelper, backgroundFilter, stats);
+        final Key key = new Key(shardId, readerCacheHelper.getKey(), field, null, filterId, term);
+        final Long cached = cache.get(key);
+        if (cached != null) {
+            stats.hitCount.inc();
+            return cached;
+        }
+        stats.missCount.inc();
+        final long freq = loader.get();
+        final Key copy = key.copyTerm();
+        // accounted before the put, which may evict the entry right away
+        stats.onCached(weight(copy));
+        // concurrent misses on the same term compute the same frequency, so the last put wins without harm
+        cache.put(copy, freq);
+        registerReader(readerCacheHelper);
+        return freq;
+    }
+
+    /**
+     * Returns the id that the entries of the given background filter are keyed on, so that only one entry per reader
+     * holds the filter. Looking the id up isn't counted as a hit or a miss.
+     */
+    private long filterId(ShardId shardId, IndexReader.CacheHelper readerCacheHelper, Query backgroundFilter, ShardStats stats) {
+        final Key key = new Key(shardId, readerCacheHelper.getKey(), null, backgroundFilter, NO_FILTER, null);
+        final Long cached = cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        // concurrent misses on the same filter put different ids, the entries of the replaced id are never looked up again
+        // and are evicted like any other unused entry
+        final long filterId = nextFilterId.incrementAndGet();
+        stats.onCached(weight(key));
+        cache.put(key, filterId);
+        registerReader(readerCacheHelper);
+        return filterId;
+    }
+
+    private void registerReader(IndexReader.CacheHelper readerCacheHelper) {
+        if (registeredReaders.putIfAbsent(readerCacheHelper.getKey(), Boolean.TRUE) == null) {
+            readerCacheHelper.addClosedListener(readerKey -> {
+                if (registeredReaders.remove(readerKey) != null) {
+                    readersToClean.add(readerKey);
+                }
+            });
+        }
+    }
+
+    private void onRemoval(RemovalNotification<Key, Long> notification) {
+        final ShardStats stats = shardStats.get(notification.getKey().shardId);
+        if (stats != null) {
+            stats.onRemoval(weight(notification.getKey()), notification.getRemovalReason() == RemovalNotification.RemovalReason.EVICTED);
+        }
+    }
+
+    /**
+     * Returns the statistics of the entries of the given shard.
+     */
+    public BackgroundFrequencyCacheStats getStats(ShardId shardId) {
+        final ShardStats stats = shardStats.get(shardId);
+        return stats == null ? new BackgroundFrequencyCacheStats() : stats.toStats();
+    }
+
+    /**
+     * Removes the entries and the statistics of the given shard, which was closed.
+     */
+    void onClose(ShardId shardId) {
+        clear(shardId);
+        shardStats.remove(shardId);
+    }
+
+    /**
+     * Removes the entries of the given shard.
+     */
+    void clear(ShardId shardId) {
+        for (Iterator<Key> iterator = cache.keys().iterator(); iterator.hasNext(); ) {
+            if (shardId.equals(iterator.next().shardId)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes the entries of the readers that were closed.
+     */
+    void cleanCache() {
+        if (readersToClean.isEmpty() == false) {
+            final Set<IndexReader.CacheKey> currentReadersToClean = new HashSet<>();
+            for (Iterator<IndexReader.CacheKey> iterator = readersToClean.iterator(); iterator.hasNext(); ) {
+                currentReadersToClean.add(iterator.next());
+                iterator.remove();
+            }
+            for (Iterator<Key> iterator = cache.keys().iterator(); iterator.hasNext(); ) {
+                if (currentReadersToClean.contains(iterator.next().readerKey)) {
+                    iterator.remove();
+                }
+            }
+        }
+        cache.refresh();
+    }
+
+    @Override
+    public void close() {
+        cache.invalidateAll();
+    }
+
+    private static final class ShardStats {
+        final CounterMetric hitCount = new CounterMetric();
+        final CounterMetric missCount = new CounterMetric();
+        final CounterMetric evictions = new CounterMetric();
+        final CounterMetric cacheCount = new CounterMetric();
+        final CounterMetric memorySize = new CounterMetric();
+
+        void onCached(long weight) {
+            cacheCount.inc();
+            memorySize.inc(weight);
+        }
+
+        void onRemoval(long weight, boolean evicted) {
+            if (evicted) {
+                evictions.inc();
+            }
+            cacheCount.dec();
+            memorySize.dec(weight);
+        }
+
+        BackgroundFrequencyCacheStats toStats() {
+            return new BackgroundFrequencyCacheStats(memorySize.count(), evictions.count(), hitCount.count(), missCount.count(),
+                cacheCount.count());
+        }
+    }
+
+    static final class Key implements Accountable {
+        private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(Key.class)
+            + RamUsageEstimator.shallowSizeOfInstance(BytesRef.class);
+
+        final ShardId shardId;
+        final IndexReader.CacheKey readerKey;
+        // only set on the entries of frequencies
+        @Nullable
+        final String field;
+        // only set on the entry that maps a background filter to its id, which is the only entry that holds the filter
+        @Nullable
+        final Query backgroundFilter;
+        final long filterId;
+        @Nullable
+        final BytesRef term;
+
+        Key(ShardId shardId, IndexReader.CacheKey readerKey, @Nullable String field, @Nullable Query backgroundFilter, long filterId,
+            @Nullable BytesRef term) {
+            this.shardId = Objects.requireNonNull(shardId);
+            this.readerKey = Objects.requireNonNull(readerKey);
+            this.field = field;
+            this.backgroundFilter = backgroundFilter;
+            this.filterId = filterId;
+            this.term = term;
+        }
+
+        /**
+         * Returns a copy of this key that doesn't share the bytes of the term with the caller, which may reuse them.
+         */
+        Key copyTerm() {
+            return term == null ? this : new Key(shardId, readerKey, field, backgroundFilter, filterId, BytesRef.deepCopyOf(term));
+        }
+
+        @Override
+        public long ramBytesUsed() {
+            long ramBytesUsed = BASE_RAM_BYTES_USED;
+            if (term != null) {
+                ramBytesUsed += RamUsageEstimator.sizeOf(term.bytes);
+            }
+            if (backgroundFilter != null) {
+                ramBytesUsed += backgroundFilter instanceof Accountable
+                    ? ((Accountable) backgroundFilter).ramBytesUsed()
+                    : QUERY_DEFAULT_RAM_BYTES_USED;
+            }
+            return ramBytesUsed;
+        }
+
+        @Override
+        public Collection<Accountable> getChildResources() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return readerKey.equals(key.readerKey)
+                && shardId.equals(key.shardId)
+                && filterId == key.filterId
+                && Objects.equals(field, key.field)
+                && Objects.equals(backgroundFilter, key.backgroundFilter)
+                && Objects.equals(term, key.term);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = readerKey.hashCode();
+            result = 31 * result + Objects.hashCode(field);
+            result = 31 * result + Objects.hashCode(backgroundFilter);
+            result = 31 * result + Long.hashCode(filterId);
+            result = 31 * result + Objects.hashCode(term);
+            return result;
+        }
+    }
+}
@@ -34,22 +34,36 @@ import org.codelibs.fesen.common.cache.CacheBuilder;
 import org.codelibs.fesen.common.cache.CacheLoader;
 import org.codelibs.fesen.common.cache.RemovalListener;
 import org.codelibs.fesen.common.cache.RemovalNotification;
+import org.codelibs.fesen.common.cache.RemovalNotification.RemovalReason;
 import org.codelibs.fesen.common.lucene.index.FesenDirectoryReader;
 import org.codelibs.fesen.common.settings.Setting;
 import org.codelibs.fesen.common.settings.Settings;
 import org.codelibs.fesen.common.settings.Setting.Property;
+import org.codelibs.fesen.common.unit.ByteSizeUnit;
 import org.codelibs.fesen.common.unit.ByteSizeValue;
 import org.codelibs.fesen.common.util.concurrent.ConcurrentCollections;
+import org.codelibs.fesen.common.util.concurrent.EsExecutors;
+import org.codelibs.fesen.core.Nullable;
 import org.codelibs.fesen.core.TimeValue;
+import org.codelibs.fesen.core.internal.io.IOUtils;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 /**
  * The indices request cache allows to cache a shard level request stage responses, helping with improving
@@ -58,8 +72,16 @@ import java.util.concurrent.ConcurrentMap;
  * eviction to evict old reader associated cache entries as well as scheduler reaper to clean readers that
  * are no longer used or closed shards.
  * <p>
- * Currently, the cache is only enabled for count requests, and can only be opted in on an index
- * level setting that can be dynamically changed and defaults to false.
+ * By default, the cache is only enabled for requests that do not return hits (size=0). Requests that return
+ * hits can be opted in with the {@link #INDEX_CACHE_REQUEST_HITS_ENABLED_SETTING} index level setting, in which case
+ * their results are kept in a dedicated instance with its own size budget so that large top-N results do not evict
+ * the (usually much smaller) aggregation results.
+ * <p>
+ * When {@link #INDICES_CACHE_QUERY_DISK_SIZE} is set, entries that are evicted from the heap because of its size limit
+ * are spilled to a {@link DiskCacheTier} on local disk instead of being discarded, and moved back to the heap on their
+ * next access. Spilled entries are keyed by reader like on-heap entries and are thus invalidated on reader change.
+ * Evictions happen while the on-heap cache holds its eviction lock, so entries are only queued there and written to disk
+ * by a background task. Entries that are evicted because they expired are not spilled.
  * <p>
  * There are still several TODOs left in this class, some easily addressable, some more complex, but the support
  * is functional.
@@ -74,8 +96,24 @@ public final class IndicesRequestCache implements RemovalListener<IndicesRequest
      */
     public static final Setting<Boolean> INDEX_CACHE_REQUEST_ENABLED_SETTING =
         Setting.boolSetting("index.requests.cache.enable", true, Property.Dynamic, Property.IndexScope);
+    /**
+     * A setting to also cache requests that return hits (size &gt; 0) on an index level. Dynamic for the same
+     * reason as {@link #INDEX_CACHE_REQUEST_ENABLED_SETTING}.
+     */
+    public static final Setting<Boolean> INDEX_CACHE_REQUEST_HITS_ENABLED_SETTING =
+        Setting.boolSetting("index.requests.cache.hits.enable", false, Property.Dynamic, Property.IndexScope);
     public static final Setting<ByteSizeValue> INDICES_CACHE_QUERY_SIZE =
         Setting.memorySizeSetting("indices.requests.cache.size", "1%", Property.NodeScope);
+    public static final Setting<ByteSizeValue> INDICES_CACHE_QUERY_HITS_SIZE =
+        Setting.memorySizeSetting("indices.requests.cache.hits.size", "1%", Property.NodeScope);
+    /**
+     * The size of the on-disk tier that holds the entries evicted from the heap, disabled if zero.
+     */
+    public static final Setting<ByteSizeValue> INDICES_CACHE_QUERY_DISK_SIZE =
+        Setting.byteSizeSetting("indices.requests.cache.disk.size", new ByteSizeValue(0), Property.NodeScope);
+    public static final Setting<ByteSizeValue> INDICES_CACHE_QUERY_DISK_SEGMENT_SIZE =
+        Setting.byteSizeSetting("indices.requests.cache.disk.segment_size", new ByteSizeValue(16, ByteSizeUnit.MB),
+            new ByteSizeValue(1, ByteSizeUnit.KB), new ByteSizeValue(1, ByteSizeUnit.GB), Property.NodeScope);
     public static final Setting<TimeValue> INDICES_CACHE_QUERY_EXPIRE =
         Setting.positiveTimeSetting("indices.requests.cache.expire", new TimeValue(0), Property.NodeScope);
 
@@ -84,22 +122,69 @@ public final class IndicesRequestCache implements RemovalListener<IndicesRequest
     private final ByteSizeValue size;
     private final TimeValue expire;
     private final Cache<Key, BytesReference> cache;
+    @Nullable
+    private final DiskCacheTier<Key> diskTier;
+    private final Executor spillExecutor;
+    // entries evicted from the heap that wait to be written to the disk tier, bounded by the size of a disk segment
+    private final ConcurrentMap<Key, BytesReference> pendingSpills = ConcurrentCollections.newConcurrentMap();
+    private final AtomicLong pendingSpillsSizeInBytes = new AtomicLong();
+    private final long maxPendingSpillsSizeInBytes;
+    private final AtomicBoolean spilling = new AtomicBoolean();
 
     IndicesRequestCache(Settings settings) {
-        this.size = INDICES_CACHE_QUERY_SIZE.get(settings);
+        this(settings, null, EsExecutors.newDirectExecutorService());
+    }
+
+    /**
+     * Creates the cache, with an on-disk tier in the given directory if {@link #INDICES_CACHE_QUERY_DISK_SIZE} is set. Entries
+     * evicted from the heap are written to the disk tier on the given executor.
+     */
+    IndicesRequestCache(Settings settings, @Nullable Path diskTierPath, Executor spillExecutor) {
+        this(INDICES_CACHE_QUERY_SIZE.get(settings), settings, createDiskTier(settings, diskTierPath), spillExecutor);
+    }
+
+    private IndicesRequestCache(ByteSizeValue size, Settings settings, @Nullable DiskCacheTier<Key> diskTier, Executor spillExecutor) {
+        this.size = size;
+        this.diskTier = diskTier;
+        this.spillExecutor = spillExecutor;
+        this.maxPendingSpillsSizeInBytes = INDICES_CACHE_QUERY_DISK_SEGMENT_SIZE.get(settings).getBytes();
         this.expire = INDICES_CACHE_QUERY_EXPIRE.exists(settings) ? INDICES_CACHE_QUERY_EXPIRE.get(settings) : null;
         long sizeInBytes = size.getBytes();
         CacheBuilder<Key, BytesReference> cacheBuilder = CacheBuilder.<Key, BytesReference>builder()
-            .setMaximumWeight(sizeInBytes).weigher((k, v) -> k.ramBytesUsed() + v.ramBytesUsed()).removalListener(this);
+            .setMaximumWeight(sizeInBytes).weigher((k, v) -> k.ramBytesUsed() + v.ramBytesUsed()).removalListener(this)
+            // count accesses independently of the reader so that popular requests keep their frequency across refreshes
+            .setFrequencyBasedAdmission(k -> 31 * k.entity.getCacheIdentity().hashCode() + k.value.hashCode());
         if (expire != null) {
             cacheBuilder.setExpireAfterAccess(expire);
         }
         cache = cacheBuilder.build();
     }
 
+    /**
+     * Creates the cache that holds the results of requests that return hits, bounded by {@link #INDICES_CACHE_QUERY_HITS_SIZE}.
+     */
+    static IndicesRequestCache hitsCache(Settings settings) {
+        return new IndicesRequestCache(INDICES_CACHE_QUERY_HITS_SIZE.get(settings), settings, null,
+            EsExecutors.newDirectExecutorService());
+    }
+
+    private static DiskCacheTier<Key> createDiskTier(Settings settings, @Nullable Path path) {
+        final long sizeInBytes = INDICES_CACHE_QUERY_DISK_SIZE.get(settings).getBytes();
+        if (path == null || sizeInBytes == 0) {
+            return null;
+        }
+        try {
+            return new DiskCacheTier<>(path, sizeInBytes, (int) INDICES_CACHE_QUERY_DISK_SEGMENT_SIZE.get(settings).getBytes());
+        } catch (IOException e) {
+            throw new UncheckedIOException("failed to create the request cache disk tier in [" + path + "]", e);
+        }
+    }
+
     @Override
-    public void close() {
+    public void close() throws IOException {
         cache.invalidateAll();
+        removePendingSpills(key -> true);
+        IOUtils.close(diskTier);
     }
 
     void clear(CacheEntity entity) {
@@ -109,14 +194,92 @@ public final class IndicesRequestCache implements RemovalListener<IndicesRequest
 
     @Override
     public void onRemoval(RemovalNotification<Key, BytesReference> notification) {
-        notification.getKey().entity.onRemoval(notification);
+        final Key key = notification.getKey();
+        if (diskTier != null && notification.getRemovalReason() == RemovalReason.EVICTED && notification.isExpired() == false
+                && isSpillable(key)) {
+            addPendingSpill(key, notification.getValue());
+        }
+        key.entity.onRemoval(notification);
+    }
+
+    /**
+     * Only entries whose reader is still open are spilled, others can never be accessed again.
+     */
+    private boolean isSpillable(Key key) {
+        return key.entity.isOpen() && registeredClosedListeners.containsKey(new CleanupKey(key.entity, key.readerCacheKey));
+    }
+
+    private void addPendingSpill(Key key, BytesReference value) {
+        final long length = value.length();
+        if (pendingSpillsSizeInBytes.addAndGet(length) > maxPendingSpillsSizeInBytes) {
+            // the disk can not keep up, drop the entry rather than holding on to more heap
+            pendingSpillsSizeInBytes.addAndGet(-length);
+            return;
+        }
+        final BytesReference previous = pendingSpills.put(key, value);
+        if (previous != null) {
+            pendingSpillsSizeInBytes.addAndGet(-previous.length());
+        }
+        maybeScheduleSpills();
+    }
+
+    private BytesReference removePendingSpill(Key key) {
+        final BytesReference value = pendingSpills.remove(key);
+        if (value != null) {
+            pendingSpillsSizeInBytes.addAndGet(-value.length());
+        }
+        return value;
+    }
+
+    private void removePendingSpills(Predicate<Key> predicate) {
+        for (Iterator<Map.Entry<Key, BytesReference>> iterator = pendingSpills.entrySet().iterator(); iterator.hasNext(); ) {
+            final Map.Entry<Key, BytesReference> entry = iterator.next();
+            if (predicate.test(entry.getKey()) && pendingSpills.remove(entry.getKey(), entry.getValue())) {
+                pendingSpillsSizeInBytes.addAndGet(-entry.getValue().length());
+            }
+        }
+    }
+
+    private void maybeScheduleSpills() {
+        while (pendingSpills.isEmpty() == false && spilling.compareAndSet(false, true)) {
+            try {
+                spillExecutor.execute(this::spillPending);
+                return;
+            } catch (RejectedExecutionException e) {
+                // the node is shutting down
+                spilling.set(false);
+                removePendingSpills(key -> true);
+            }
+        }
+    }
+
+    private void spillPending() {
+        try {
+            for (Map.Entry<Key, BytesReference> entry : pendingSpills.entrySet()) {
+                final Key key = entry.getKey();
+                final BytesReference value = entry.getValue();
+                final boolean stored = isSpillable(key) && diskTier.put(key, value);
+                if (pendingSpills.remove(key, value)) {
+                    pendingSpillsSizeInBytes.addAndGet(-value.length());
+                } else if (stored) {
+                    // the entry was loaded back or invalidated while it was written, the copy on disk must not outlive it
+                    diskTier.invalidate(key);
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("failed to spill request cache entries to disk", e);
+        } finally {
+            spilling.set(false);
+        }
+        // entries might have been added after the iteration but before the flag was reset
+        maybeScheduleSpills();
     }
 
     BytesReference getOrCompute(CacheEntity cacheEntity, CheckedSupplier<BytesReference, IOException> loader,
                                 DirectoryReader reader, BytesReference cacheKey) throws Exception {
         assert reader.getReaderCacheHelper() != null;
         final Key key =  new Key(cacheEntity, reader.getReaderCacheHelper().getKey(), cacheKey);
-        Loader cacheLoader = new Loader(cacheEntity, loader);
+        Loader cacheLoader = new Loader(cacheEntity, loader, this::loadSpilled);
         BytesReference value = cache.computeIfAbsent(key, cacheLoader);
         if (cacheLoader.isLoaded()) {
             key.entity.onMiss();
@@ -142,18 +305,38 @@ public final class IndicesRequestCache implements RemovalListener<IndicesRequest
      */
     void invalidate(CacheEntity cacheEntity, DirectoryReader reader, BytesReference cacheKey) {
         assert reader.getReaderCacheHelper() != null;
-        cache.invalidate(new Key(cacheEntity, reader.getReaderCacheHelper().getKey(), cacheKey));
+        final Key key = new Key(cacheEntity, reader.getReaderCacheHelper().getKey(), cacheKey);
+        cache.invalidate(key);
+        if (diskTier != null) {
+            removePendingSpill(key);
+            diskTier.invalidate(key);
+        }
+    }
+
+    /**
+     * Returns the value of an entry that was evicted from the heap, whether it still waits to be spilled or already is on disk,
+     * and removes it from the disk tier.
+     */
+    @Nullable
+    private BytesReference loadSpilled(Key key) {
+        if (diskTier == null) {
+            return null;
+        }
+        final BytesReference value = removePendingSpill(key);
+        return value != null ? value : diskTier.remove(key);
     }
 
     private static class Loader implements CacheLoader<Key, BytesReference> {
 
         private final CacheEntity entity;
         private final CheckedSupplier<BytesReference, IOException> loader;
+        private final Function<Key, BytesReference> spilledLoader;
         private boolean loaded;
 
-        Loader(CacheEntity entity, CheckedSupplier<BytesReference, IOException> loader) {
+        Loader(CacheEntity entity, CheckedSupplier<BytesReference, IOException> loader, Function<Key, BytesReference> spilledLoader) {
             this.entity = entity;
             this.loader = loader;
+            this.spilledLoader = spilledLoader;
         }
 
         public boolean isLoaded() {
@@ -162,9 +345,13 @@ public final class IndicesRequestCache implements RemovalListener<IndicesRequest
 
         @Override
         public BytesReference load(Key key) throws Exception {
-            BytesReference value = loader.get();
+            // an entry found on disk moves back to the heap and counts as a hit
+            BytesReference value = spilledLoader.apply(key);
+            if (value == null) {
+                value = loader.get();
+                loaded = true;
+            }
             entity.onCached(key, value);
-            loaded = true;
             return value;
         }
     }
@@ -316,6 +503,12 @@ public final class IndicesRequestCache implements RemovalListener<IndicesRequest
                     }
                 }
             }
+            if (diskTier != null) {
+                final Predicate<Key> predicate = key -> currentFullClean.contains(key.entity.getCacheIdentity())
+                    || currentKeysToClean.contains(new CleanupKey(key.entity, key.readerCacheKey));
+                removePendingSpills(predicate);
+                diskTier.removeIf(predicate);
+            }
         }
 
         cache.refresh();
@@ -329,6 +522,13 @@ public final class IndicesRequestCache implements RemovalListener<IndicesRequest
         return cache.count();
     }
 
+    /**
+     * Returns the number of entries held on disk
+     */
+    int diskCount() {
+        return diskTier == null ? 0 : diskTier.count();
+    }
+
     int numRegisteredCloseListeners() { // for testing
         return registeredClosedListeners.size();
     }
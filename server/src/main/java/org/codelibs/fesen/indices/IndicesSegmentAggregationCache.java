@@ -0,0 +1,285 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.indices;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.codelibs.fesen.common.bytes.BytesReference;
+import org.codelibs.fesen.common.cache.Cache;
+import org.codelibs.fesen.common.cache.CacheBuilder;
+import org.codelibs.fesen.common.io.stream.BytesStreamOutput;
+import org.codelibs.fesen.common.io.stream.NamedWriteableAwareStreamInput;
+import org.codelibs.fesen.common.io.stream.NamedWriteableRegistry;
+import org.codelibs.fesen.common.io.stream.StreamInput;
+import org.codelibs.fesen.common.lucene.ShardCoreKeyMap;
+import org.codelibs.fesen.common.metrics.CounterMetric;
+import org.codelibs.fesen.common.settings.Setting;
+import org.codelibs.fesen.common.settings.Setting.Property;
+import org.codelibs.fesen.common.settings.Settings;
+import org.codelibs.fesen.common.unit.ByteSizeValue;
+import org.codelibs.fesen.common.util.set.Sets;
+import org.codelibs.fesen.core.Nullable;
+import org.codelibs.fesen.index.shard.ShardId;
+import org.codelibs.fesen.search.aggregations.AggregationBuilder;
+import org.codelibs.fesen.search.aggregations.AggregatorFactories;
+import org.codelibs.fesen.search.aggregations.InternalAggregations;
+import org.codelibs.fesen.search.builder.SearchSourceBuilder;
+import org.codelibs.fesen.search.internal.SearchContext;
+import org.codelibs.fesen.search.internal.ShardSearchRequest;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Caches the shard level aggregation results of single segments, so that searches only need to collect the segments
+ * that changed since the last time the same request was executed and can merge the results of the other segments from
+ * the cache. This complements the {@link IndicesRequestCache}, which is keyed on the whole reader and thus invalidated
+ * by every refresh that changes the shard.
+ * <p>
+ * Entries are keyed on the core cache key of the segment, its number of deleted documents and a fingerprint of the
+ * request. Only segments that have at least {@link #INDICES_CACHE_SEGMENT_AGGS_MIN_DOCS} documents are cached, smaller
+ * segments are collected by the regular aggregators. Segments are tracked with a {@link ShardCoreKeyMap}, the entries of
+ * segments that were closed are removed by {@link #cleanCache()}, which is called periodically.
+ * <p>
+ * Only aggregations whose shard level results can be merged without losing accuracy are cached, see
+ * {@link #canCache(SearchContext)}.
+ */
+public final class IndicesSegmentAggregationCache implements Closeable {
+
+    /**
+     * A setting to enable caching aggregation results per segment on an index level.
+     */
+    public static final Setting<Boolean> INDEX_CACHE_SEGMENT_AGGS_ENABLED_SETTING =
+        Setting.boolSetting("index.requests.cache.segment_aggs.enable", false, Property.Dynamic, Property.IndexScope);
+    public static final Setting<ByteSizeValue> INDICES_CACHE_SEGMENT_AGGS_SIZE =
+        Setting.memorySizeSetting("indices.requests.cache.segment_aggs.size", "1%", Property.NodeScope);
+    /**
+     * The minimum number of documents of a segment for its aggregation results to be cached.
+     */
+    public static final Setting<Integer> INDICES_CACHE_SEGMENT_AGGS_MIN_DOCS =
+        Setting.intSetting("indices.requests.cache.segment_aggs.min_segment_docs", 10_000, 0, Property.NodeScope);
+
+    // aggregations whose shard level results can be reduced exactly like the results of the shards of an index, the t-digest
+    // sketches of percentiles, percentile_ranks and median_absolute_deviation are left out since their merges are approximate
+    // and depend on the order of the merged results, so that per-segment results would not match a shard level collection
+    private static final Set<String> CACHEABLE_AGGREGATIONS = Collections.unmodifiableSet(Sets.newHashSet(
+        "avg", "cardinality", "date_histogram", "date_range", "extended_stats", "filter", "filters", "geo_bounds",
+        "geo_centroid", "histogram", "max", "min", "missing", "range", "stats", "sum", "value_count", "weighted_avg"));
+
+    private final ShardCoreKeyMap shardKeyMap = new ShardCoreKeyMap();
+    private final NamedWriteableRegistry namedWriteableRegistry;
+    private final int minSegmentDocs;
+    private final Cache<Key, BytesReference> cache;
+    private final CounterMetric hitCount = new CounterMetric();
+    private final CounterMetric missCount = new CounterMetric();
+
+    IndicesSegmentAggregationCache(Settings settings, NamedWriteableRegistry namedWriteableRegistry) {
+        this.namedWriteableRegistry = namedWriteableRegistry;
+        this.minSegmentDocs = INDICES_CACHE_SEGMENT_AGGS_MIN_DOCS.get(settings);
+        this.cache = CacheBuilder.<Key, BytesReference>builder()
+            .setMaximumWeight(INDICES_CACHE_SEGMENT_AGGS_SIZE.get(settings).getBytes())
+            .weigher((k, v) -> k.ramBytesUsed() + v.ramBytesUsed())
+            .build();
+    }
+
+    /**
+     * Can the aggregations of this search be cached per segment?
+     */
+    public boolean canCache(SearchContext context) {
+        final ShardSearchRequest request = context.request();
+        if (context.indexShard().indexSettings().getValue(INDEX_CACHE_SEGMENT_AGGS_ENABLED_SETTING) == false
+                || Boolean.FALSE.equals(request.requestCache())) {
+            return false;
+        }
+        // scrolls and profiled searches collect differently, the minimum score and terminate after depend on the other segments
+        if (request.scroll() != null || context.getProfilers() != null || context.minimumScore() != null
+                || context.terminateAfter() != SearchContext.DEFAULT_TERMINATE_AFTER) {
+            return false;
+        }
+        if (context.getQueryShardContext().isCacheable() == false) {
+            return false;
+        }
+        final SearchSourceBuilder source = request.source();
+        return source != null && source.aggregations() != null && isCacheable(source.aggregations());
+    }
+
+    private static boolean isCacheable(AggregatorFactories.Builder aggregations) {
+        return isCacheable(aggregations.getAggregatorFactories());
+    }
+
+    private static boolean isCacheable(Collection<AggregationBuilder> aggregations) {
+        for (AggregationBuilder aggregation : aggregations) {
+            // pipeline aggregations are only executed on the final reduce, after the segment results are merged
+            if (CACHEABLE_AGGREGATIONS.contains(aggregation.getType()) == false || isCacheable(aggregation.getSubAggregations()) == false) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the part of the cache key that identifies the request: its query, its aggregations and its alias filter.
+     */
+    public BytesReference fingerprint(ShardSearchRequest request) throws IOException {
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            out.writeOptionalNamedWriteable(request.source().query());
+            request.source().aggregations().writeTo(out);
+            request.getAliasFilter().writeTo(out);
+            return out.bytes();
+        }
+    }
+
+    /**
+     * The minimum number of documents of a segment for its aggregation results to be cached.
+     */
+    public int minSegmentDocs() {
+        return minSegmentDocs;
+    }
+
+    /**
+     * Returns the cached aggregation results of the given segment, or {@code null} if they are not cached.
+     */
+    @Nullable
+    public InternalAggregations get(LeafReader reader, BytesReference fingerprint) throws IOException {
+        final BytesReference value = cache.get(key(reader, fingerprint));
+        if (value == null) {
+            missCount.inc();
+            return null;
+        }
+        hitCount.inc();
+        try (StreamInput in = new NamedWriteableAwareStreamInput(value.streamInput(), namedWriteableRegistry)) {
+            return InternalAggregations.readFrom(in);
+        }
+    }
+
+    /**
+     * Caches the aggregation results of the given segment.
+     */
+    public void put(LeafReader reader, BytesReference fingerprint, InternalAggregations aggregations) throws IOException {
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            aggregations.writeTo(out);
+            cache.put(key(reader, fingerprint), out.bytes());
+        }
+    }
+
+    private Key key(LeafReader reader, BytesReference fingerprint) {
+        // registers the segment so that its entries can be cleaned once it is closed
+        shardKeyMap.add(reader);
+        return new Key(reader.getCoreCacheHelper().getKey(), reader.numDeletedDocs(), fingerprint);
+    }
+
+    /**
+     * Removes the entries of the segments of the given shard.
+     */
+    void clear(ShardId shardId) {
+        for (Iterator<Key> iterator = cache.keys().iterator(); iterator.hasNext(); ) {
+            if (shardId.equals(shardKeyMap.getShardId(iterator.next().coreKey))) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes the entries of the segments that were closed.
+     */
+    void cleanCache() {
+        for (Iterator<Key> iterator = cache.keys().iterator(); iterator.hasNext(); ) {
+            // the shard key map stops tracking segments as soon as they are closed
+            if (shardKeyMap.getShardId(iterator.next().coreKey) == null) {
+                iterator.remove();
+            }
+        }
+        cache.refresh();
+    }
+
+    /**
+     * The number of segments whose aggregation results were found in the cache.
+     */
+    public long hitCount() {
+        return hitCount.count();
+    }
+
+    /**
+     * The number of segments whose aggregation results were not found in the cache.
+     */
+    public long missCount() {
+        return missCount.count();
+    }
+
+    /**
+     * The number of cached segment results.
+     */
+    public int count() {
+        return cache.count();
+    }
+
+    @Override
+    public void close() {
+        cache.invalidateAll();
+    }
+
+    static final class Key implements Accountable {
+        private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(Key.class);
+
+        final IndexReader.CacheKey coreKey;
+        // deletes don't change the core key of a segment but only ever grow
+        final int numDeletedDocs;
+        final BytesReference fingerprint;
+
+        Key(IndexReader.CacheKey coreKey, int numDeletedDocs, BytesReference fingerprint) {
+            this.coreKey = Objects.requireNonNull(coreKey);
+            this.numDeletedDocs = numDeletedDocs;
+            this.fingerprint = fingerprint;
+        }
+
+        @Override
+        public long ramBytesUsed() {
+            return BASE_RAM_BYTES_USED + fingerprint.length();
+        }
+
+        @Override
+        public Collection<Accountable> getChildResources() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return numDeletedDocs == key.numDeletedDocs && coreKey.equals(key.coreKey) && fingerprint.equals(key.fingerprint);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = coreKey.hashCode();
+            result = 31 * result + numDeletedDocs;
+            result = 31 * result + fingerprint.hashCode();
+            return result;
+        }
+    }
+}
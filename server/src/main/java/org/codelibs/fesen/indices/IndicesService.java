@@ -179,6 +179,7 @@ public class IndicesService extends AbstractLifecycleComponent
     private static final Logger logger = LogManager.getLogger(IndicesService.class);
 
     public static final String INDICES_SHARDS_CLOSED_TIMEOUT = "indices.shards_closed_timeout";
+    private static final String REQUEST_CACHE_FOLDER = "request_cache";
     public static final Setting<TimeValue> INDICES_CACHE_CLEAN_INTERVAL_SETTING =
         Setting.positiveTimeSetting("indices.cache.cleanup_interval", TimeValue.timeValueMinutes(1), Property.NodeScope);
     public static final Setting<Boolean> INDICES_ID_FIELD_DATA_ENABLED_SETTING =
@@ -218,6 +219,11 @@ public class IndicesService extends AbstractLifecycleComponent
     private final IndexingMemoryController indexingMemoryController;
     private final TimeValue cleanInterval;
     final IndicesRequestCache indicesRequestCache; // pkg-private for testing
+    final IndicesRequestCache indicesHitsRequestCache; // pkg-private for testing
+    private final IndicesSegmentAggregationCache indicesSegmentAggregationCache;
+    private final IndicesBackgroundFrequencyCache indicesBackgroundFrequencyCache;
+    @Nullable
+    private final IndicesTranslogSyncService indicesTranslogSyncService;
     private final IndicesQueryCache indicesQueryCache;
     private final MetaStateService metaStateService;
     private final Collection<Function<IndexSettings, Optional<EngineFactory>>> engineFactoryProviders;
@@ -257,7 +263,13 @@ public class IndicesService extends AbstractLifecycleComponent
         this.shardsClosedTimeout = settings.getAsTime(INDICES_SHARDS_CLOSED_TIMEOUT, new TimeValue(1, TimeUnit.DAYS));
         this.analysisRegistry = analysisRegistry;
         this.indexNameExpressionResolver = indexNameExpressionResolver;
-        this.indicesRequestCache = new IndicesRequestCache(settings);
+        // nodes without data paths, such as some tools, can not spill request cache entries to disk
+        this.indicesRequestCache = new IndicesRequestCache(settings,
+            nodeEnv != null && nodeEnv.hasNodeFile() ? nodeEnv.nodeDataPaths()[0].resolve(REQUEST_CACHE_FOLDER) : null,
+            threadPool.generic());
+        this.indicesHitsRequestCache = IndicesRequestCache.hitsCache(settings);
+        this.indicesSegmentAggregationCache = new IndicesSegmentAggregationCache(settings, namedWriteableRegistry);
+        this.indicesBackgroundFrequencyCache = new IndicesBackgroundFrequencyCache(settings);
         this.indicesQueryCache = new IndicesQueryCache(settings);
         this.mapperRegistry = mapperRegistry;
         this.namedWriteableRegistry = namedWriteableRegistry;
@@ -271,6 +283,10 @@ public class IndicesService extends AbstractLifecycleComponent
         this.clusterService = clusterService;
         this.client = client;
         this.idFieldDataEnabled = INDICES_ID_FIELD_DATA_ENABLED_SETTING.get(clusterService.getSettings());
+        this.indicesTranslogSyncService = IndicesTranslogSyncService.INDICES_TRANSLOG_GROUP_SYNC_ENABLED.get(settings)
+            ? new IndicesTranslogSyncService(settings, clusterService.getClusterSettings(), threadPool.getThreadContext(),
+                threadPool.generic())
+            : null;
         clusterService.getClusterSettings().addSettingsUpdateConsumer(INDICES_ID_FIELD_DATA_ENABLED_SETTING, this::setIdFieldDataEnabled);
         this.indicesFieldDataCache = new IndicesFieldDataCache(settings, new IndexFieldDataCache.Listener() {
             @Override
@@ -281,7 +297,8 @@ public class IndicesService extends AbstractLifecycleComponent
             }
         });
         this.cleanInterval = INDICES_CACHE_CLEAN_INTERVAL_SETTING.get(settings);
-        this.cacheCleaner = new CacheCleaner(indicesFieldDataCache, indicesRequestCache,  logger, threadPool, this.cleanInterval);
+        this.cacheCleaner = new CacheCleaner(indicesFieldDataCache, indicesRequestCache, indicesHitsRequestCache,
+            indicesSegmentAggregationCache, indicesBackgroundFrequencyCache, logger, threadPool, this.cleanInterval);
         this.metaStateService = metaStateService;
         this.engineFactoryProviders = engineFactoryProviders;
 
@@ -309,6 +326,9 @@ public class IndicesService extends AbstractLifecycleComponent
                             indicesFieldDataCache,
                             cacheCleaner,
                             indicesRequestCache,
+                            indicesHitsRequestCache,
+                            indicesSegmentAggregationCache,
+                            indicesBackgroundFrequencyCache,
                             indicesQueryCache);
                 } catch (IOException e) {
                     throw new UncheckedIOException(e);
@@ -468,7 +488,8 @@ public class IndicesService extends AbstractLifecycleComponent
                         new ShardStats(
                                 indexShard.routingEntry(),
                                 indexShard.shardPath(),
-                                new CommonStats(indicesService.getIndicesQueryCache(), indexShard, flags),
+                                new CommonStats(indicesService.getIndicesQueryCache(), indicesService.getBackgroundFrequencyCache(),
+                                    indexShard, flags),
                                 commitStats,
                                 seqNoStats,
                                 retentionLeaseStats)
@@ -547,6 +568,7 @@ public class IndicesService extends AbstractLifecycleComponent
             public void onStoreClosed(ShardId shardId) {
                 try {
                     indicesQueryCache.onClose(shardId);
+                    indicesBackgroundFrequencyCache.onClose(shardId);
                 } finally {
                     indicesRefCount.decRef();
                 }
@@ -668,7 +690,8 @@ public class IndicesService extends AbstractLifecycleComponent
                 indicesFieldDataCache,
                 namedWriteableRegistry,
                 this::isIdFieldDataEnabled,
-                valuesSourceRegistry
+                valuesSourceRegistry,
+                indicesTranslogSyncService
         );
     }
 
@@ -820,6 +843,28 @@ public class IndicesService extends AbstractLifecycleComponent
         return circuitBreakerService;
     }
 
+    /**
+     * Returns the cache of the aggregation results of single segments.
+     */
+    public IndicesSegmentAggregationCache getSegmentAggregationCache() {
+        return indicesSegmentAggregationCache;
+    }
+
+    /**
+     * Returns the cache of the background frequencies of significance analyses.
+     */
+    public IndicesBackgroundFrequencyCache getBackgroundFrequencyCache() {
+        return indicesBackgroundFrequencyCache;
+    }
+
+    /**
+     * Returns the coordinator of the translog syncs of the shards of this node, or {@code null} if group syncs are disabled.
+     */
+    @Nullable
+    public IndicesTranslogSyncService getTranslogSyncService() {
+        return indicesTranslogSyncService;
+    }
+
     public IndicesQueryCache getIndicesQueryCache() {
         return indicesQueryCache;
     }
@@ -1278,14 +1323,23 @@ public class IndicesService extends AbstractLifecycleComponent
         private final TimeValue interval;
         private final AtomicBoolean closed = new AtomicBoolean(false);
         private final IndicesRequestCache requestCache;
+        private final IndicesRequestCache hitsRequestCache;
+        private final IndicesSegmentAggregationCache segmentAggregationCache;
+        private final IndicesBackgroundFrequencyCache backgroundFrequencyCache;
 
         CacheCleaner(IndicesFieldDataCache cache,
                      IndicesRequestCache requestCache,
+                     IndicesRequestCache hitsRequestCache,
+                     IndicesSegmentAggregationCache segmentAggregationCache,
+                     IndicesBackgroundFrequencyCache backgroundFrequencyCache,
                      Logger logger,
                      ThreadPool threadPool,
                      TimeValue interval) {
             this.cache = cache;
             this.requestCache = requestCache;
+            this.hitsRequestCache = hitsRequestCache;
+            this.segmentAggregationCache = segmentAggregationCache;
+            this.backgroundFrequencyCache = backgroundFrequencyCache;
             this.logger = logger;
             this.threadPool = threadPool;
             this.interval = interval;
@@ -1309,6 +1363,9 @@ public class IndicesService extends AbstractLifecycleComponent
 
             try {
                 this.requestCache.cleanCache();
+                this.hitsRequestCache.cleanCache();
+                this.segmentAggregationCache.cleanCache();
+                this.backgroundFrequencyCache.cleanCache();
             } catch (Exception e) {
                 logger.warn("Exception during periodic request cache cleanup:", e);
             }
@@ -1354,9 +1411,10 @@ public class IndicesService extends AbstractLifecycleComponent
         if (request.requestCache() == null) {
             if (settings.getValue(IndicesRequestCache.INDEX_CACHE_REQUEST_ENABLED_SETTING) == false) {
                 return false;
-            } else if (context.size() != 0) {
+            } else if (context.size() != 0 && settings.getValue(IndicesRequestCache.INDEX_CACHE_REQUEST_HITS_ENABLED_SETTING) == false) {
                 // If no request cache query parameter and shard request cache
                 // is enabled in settings don't cache for requests with size > 0
+                // unless caching of hits is enabled as well
                 return false;
             }
         } else if (request.requestCache() == false) {
@@ -1379,14 +1437,17 @@ public class IndicesService extends AbstractLifecycleComponent
      * Loads the cache result, computing it if needed by executing the query phase and otherwise deserializing the cached
      * value into the {@link SearchContext#queryResult() context's query result}. The combination of load + compute allows
      * to have a single load operation that will cause other requests with the same key to wait till its loaded an reuse
-     * the same cache.
+     * the same cache. Results of requests that return hits only because the index enables caching of hits are kept in a dedicated
+     * cache so that they are bounded by their own size budget. Requests that explicitly set {@code request_cache=true} keep using
+     * the regular request cache whatever their size.
      */
     public void loadIntoContext(ShardSearchRequest request, SearchContext context, QueryPhase queryPhase) throws Exception {
         assert canCache(request, context);
         final DirectoryReader directoryReader = context.searcher().getDirectoryReader();
+        final boolean hits = request.requestCache() == null && context.size() != 0;
 
         boolean[] loadedFromCache = new boolean[] { true };
-        BytesReference bytesReference = cacheShardLevelResult(context.indexShard(), directoryReader, request.cacheKey(),
+        BytesReference bytesReference = cacheShardLevelResult(context.indexShard(), hits, directoryReader, request.cacheKey(),
             out -> {
             queryPhase.execute(context);
             context.queryResult().writeToNoId(out);
@@ -1407,7 +1468,7 @@ public class IndicesService extends AbstractLifecycleComponent
             // key invalidate the result in the thread that caused the timeout. This will end up to be simpler and eventually correct since
             // running a search that times out concurrently will likely timeout again if it's run while we have this `stale` result in the
             // cache. One other option is to not cache requests with a timeout at all...
-            indicesRequestCache.invalidate(new IndexShardCacheEntity(context.indexShard()), directoryReader, request.cacheKey());
+            requestCache(hits).invalidate(new IndexShardCacheEntity(context.indexShard(), hits), directoryReader, request.cacheKey());
             if (logger.isTraceEnabled()) {
                 logger.trace("Query timed out, invalidating cache entry for request on shard [{}]:\n {}", request.shardId(),
                         request.source());
@@ -1422,14 +1483,15 @@ public class IndicesService extends AbstractLifecycleComponent
     /**
      * Cache something calculated at the shard level.
      * @param shard the shard this item is part of
+     * @param hits whether the item is the result of a request that returns hits
      * @param reader a reader for this shard. Used to invalidate the cache when there are changes.
      * @param cacheKey key for the thing being cached within this shard
      * @param loader loads the data into the cache if needed
      * @return the contents of the cache or the result of calling the loader
      */
-    private BytesReference cacheShardLevelResult(IndexShard shard, DirectoryReader reader, BytesReference cacheKey,
+    private BytesReference cacheShardLevelResult(IndexShard shard, boolean hits, DirectoryReader reader, BytesReference cacheKey,
             CheckedConsumer<StreamOutput, IOException> loader) throws Exception {
-        IndexShardCacheEntity cacheEntity = new IndexShardCacheEntity(shard);
+        IndexShardCacheEntity cacheEntity = new IndexShardCacheEntity(shard, hits);
         CheckedSupplier<BytesReference, IOException> supplier = () -> {
             /* BytesStreamOutput allows to pass the expected size but by default uses
              * BigArrays.PAGE_SIZE_IN_BYTES which is 16k. A common cached result ie.
@@ -1446,20 +1508,30 @@ public class IndicesService extends AbstractLifecycleComponent
                 return out.bytes();
             }
         };
-        return indicesRequestCache.getOrCompute(cacheEntity, supplier, reader, cacheKey);
+        return requestCache(hits).getOrCompute(cacheEntity, supplier, reader, cacheKey);
+    }
+
+    private IndicesRequestCache requestCache(boolean hits) {
+        return hits ? indicesHitsRequestCache : indicesRequestCache;
     }
 
     static final class IndexShardCacheEntity extends AbstractIndexShardCacheEntity {
         private static final long BASE_RAM_BYTES_USED = RamUsageEstimator.shallowSizeOfInstance(IndexShardCacheEntity.class);
         private final IndexShard indexShard;
+        private final boolean hits;
 
         protected IndexShardCacheEntity(IndexShard indexShard) {
+            this(indexShard, false);
+        }
+
+        protected IndexShardCacheEntity(IndexShard indexShard, boolean hits) {
             this.indexShard = indexShard;
+            this.hits = hits;
         }
 
         @Override
         protected ShardRequestCache stats() {
-            return indexShard.requestCache();
+            return hits ? indexShard.hitsRequestCache() : indexShard.requestCache();
         }
 
         @Override
@@ -1504,6 +1576,10 @@ public class IndicesService extends AbstractLifecycleComponent
         return new AliasFilter(ShardSearchRequest.parseAliasFilter(filterParser, indexMetadata, aliases), aliases);
     }
 
+    public NamedWriteableRegistry getNamedWriteableRegistry() {
+        return namedWriteableRegistry;
+    }
+
     /**
      * Returns a new {@link QueryRewriteContext} with the given {@code now} provider
      */
@@ -1522,6 +1598,9 @@ public class IndicesService extends AbstractLifecycleComponent
             final boolean clearedAtLeastOne = service.clearCaches(queryCache, fieldDataCache, fields);
             if ((requestCache || (clearedAtLeastOne == false && fields.length == 0)) && shard != null) {
                 indicesRequestCache.clear(new IndexShardCacheEntity(shard));
+                indicesHitsRequestCache.clear(new IndexShardCacheEntity(shard, true));
+                indicesSegmentAggregationCache.clear(shardId);
+                indicesBackgroundFrequencyCache.clear(shardId);
             }
         }
     }
@@ -0,0 +1,224 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.indices;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codelibs.fesen.common.settings.ClusterSettings;
+import org.codelibs.fesen.common.settings.Setting;
+import org.codelibs.fesen.common.settings.Setting.Property;
+import org.codelibs.fesen.common.settings.Settings;
+import org.codelibs.fesen.common.util.concurrent.ConcurrentCollections;
+import org.codelibs.fesen.common.util.concurrent.ThreadContext;
+import org.codelibs.fesen.core.TimeValue;
+import org.codelibs.fesen.index.translog.Translog;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Coordinates the translog syncs of all shards of this node that share a data path, so that a wave of writes to many shards
+ * results in one group commit per data path instead of one independent fsync stream per shard.
+ * <p>
+ * The first shard asking for a sync on an idle data path becomes the leader of the next sync window: it waits up to
+ * {@link #INDICES_TRANSLOG_GROUP_SYNC_MAX_DELAY} for other shards to join, then syncs the translogs of all shards that asked,
+ * each up to the highest location requested for it, and notifies their listeners. The translogs of the window are synced
+ * concurrently, the leader syncing one of them and forking the others, and the window completes once all of them are synced,
+ * so a window takes about as long as its slowest fsync rather than the sum of them. Requests arriving while the leader syncs
+ * are picked up by the leader in the next window, like {@link org.codelibs.fesen.common.util.concurrent.AsyncIOProcessor} does
+ * for a single shard.
+ */
+public final class IndicesTranslogSyncService {
+
+    private static final Logger logger = LogManager.getLogger(IndicesTranslogSyncService.class);
+
+    public static final Setting<Boolean> INDICES_TRANSLOG_GROUP_SYNC_ENABLED =
+        Setting.boolSetting("indices.translog.group_sync.enabled", false, Property.NodeScope);
+    public static final Setting<TimeValue> INDICES_TRANSLOG_GROUP_SYNC_MAX_DELAY =
+        Setting.timeSetting("indices.translog.group_sync.max_delay", TimeValue.ZERO, TimeValue.ZERO, TimeValue.timeValueMillis(100),
+            Property.Dynamic, Property.NodeScope);
+
+    /**
+     * The translog of a single shard.
+     */
+    @FunctionalInterface
+    public interface SyncTarget {
+        /**
+         * Ensures that all given locations have been synced to disk.
+         */
+        void ensureSynced(Stream<Translog.Location> locations) throws IOException;
+    }
+
+    private final ThreadContext threadContext;
+    private final Executor executor;
+    private final ConcurrentMap<Path, SyncGroup> groups = ConcurrentCollections.newConcurrentMap();
+    private volatile long maxDelayNanos;
+
+    IndicesTranslogSyncService(Settings settings, ClusterSettings clusterSettings, ThreadContext threadContext, Executor executor) {
+        this.threadContext = threadContext;
+        this.executor = executor;
+        setMaxDelay(INDICES_TRANSLOG_GROUP_SYNC_MAX_DELAY.get(settings));
+        clusterSettings.addSettingsUpdateConsumer(INDICES_TRANSLOG_GROUP_SYNC_MAX_DELAY, this::setMaxDelay);
+    }
+
+    private void setMaxDelay(TimeValue maxDelay) {
+        this.maxDelayNanos = maxDelay.nanos();
+    }
+
+    /**
+     * Syncs the translog of {@code target} up to {@code location} in the next sync window of {@code dataPath} and notifies
+     * {@code listener} once it is done. The calling thread may be hijacked to lead the window, in which case this method
+     * returns once no more syncs are pending on the data path.
+     */
+    public void sync(Path dataPath, SyncTarget target, Translog.Location location, Consumer<Exception> listener) {
+        Objects.requireNonNull(target, "target must not be null");
+        Objects.requireNonNull(location, "location must not be null");
+        Objects.requireNonNull(listener, "listener must not be null");
+        groups.computeIfAbsent(dataPath, path -> new SyncGroup()).sync(new PendingSync(target, location, listener));
+    }
+
+    private final class SyncGroup {
+        private List<PendingSync> pending = new ArrayList<>();
+        private boolean leading = false;
+
+        void sync(PendingSync pendingSync) {
+            synchronized (this) {
+                pending.add(pendingSync);
+                if (leading) {
+                    return;
+                }
+                leading = true;
+            }
+            lead();
+        }
+
+        private void lead() {
+            waitForWindow();
+            while (true) {
+                final List<PendingSync> window;
+                synchronized (this) {
+                    if (pending.isEmpty()) {
+                        leading = false;
+                        return;
+                    }
+                    window = pending;
+                    pending = new ArrayList<>();
+                }
+                runWindow(window);
+            }
+        }
+
+        private void waitForWindow() {
+            final long maxDelayNanos = IndicesTranslogSyncService.this.maxDelayNanos;
+            if (maxDelayNanos > 0) {
+                try {
+                    Thread.sleep(maxDelayNanos / 1_000_000L, (int) (maxDelayNanos % 1_000_000L));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private void runWindow(List<PendingSync> window) {
+        // a shard may ask several times per window, its translog only needs to be synced once up to the highest location
+        final Map<SyncTarget, List<PendingSync>> byTarget = new LinkedHashMap<>();
+        for (PendingSync pendingSync : window) {
+            byTarget.computeIfAbsent(pendingSync.target, target -> new ArrayList<>()).add(pendingSync);
+        }
+        final CountDownLatch done = new CountDownLatch(byTarget.size());
+        final Iterator<Map.Entry<SyncTarget, List<PendingSync>>> iterator = byTarget.entrySet().iterator();
+        final Map.Entry<SyncTarget, List<PendingSync>> first = iterator.next();
+        while (iterator.hasNext()) {
+            final Map.Entry<SyncTarget, List<PendingSync>> entry = iterator.next();
+            try {
+                executor.execute(() -> syncTarget(entry.getKey(), entry.getValue(), done));
+            } catch (RejectedExecutionException e) {
+                syncTarget(entry.getKey(), entry.getValue(), done);
+            }
+        }
+        syncTarget(first.getKey(), first.getValue(), done);
+        // the next window must not start before the syncs of this one are done, or a shard could be synced concurrently
+        boolean interrupted = false;
+        while (true) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void syncTarget(SyncTarget target, List<PendingSync> syncs, CountDownLatch done) {
+        try {
+            Exception exception = null;
+            try {
+                target.ensureSynced(syncs.stream().map(pendingSync -> pendingSync.location));
+            } catch (Exception e) {
+                logger.debug("failed to sync translog", e);
+                exception = e;
+            }
+            for (PendingSync pendingSync : syncs) {
+                pendingSync.notifyListener(exception);
+            }
+        } finally {
+            done.countDown();
+        }
+    }
+
+    private final class PendingSync {
+        final SyncTarget target;
+        final Translog.Location location;
+        final Consumer<Exception> listener;
+        final Supplier<ThreadContext.StoredContext> context;
+
+        PendingSync(SyncTarget target, Translog.Location location, Consumer<Exception> listener) {
+            this.target = target;
+            this.location = location;
+            this.listener = listener;
+            this.context = threadContext.newRestorableContext(false);
+        }
+
+        void notifyListener(Exception exception) {
+            try (ThreadContext.StoredContext ignore = context.get()) {
+                listener.accept(exception);
+            } catch (Exception e) {
+                logger.warn("failed to notify translog sync listener", e);
+            }
+        }
+    }
+}
@@ -31,6 +31,7 @@ import org.codelibs.fesen.core.Nullable;
 import org.codelibs.fesen.index.Index;
 import org.codelibs.fesen.index.cache.query.QueryCacheStats;
 import org.codelibs.fesen.index.cache.request.RequestCacheStats;
+import org.codelibs.fesen.index.cache.significance.BackgroundFrequencyCacheStats;
 import org.codelibs.fesen.index.engine.SegmentsStats;
 import org.codelibs.fesen.index.fielddata.FieldDataStats;
 import org.codelibs.fesen.index.flush.FlushStats;
@@ -152,6 +153,11 @@ public class NodeIndicesStats implements Writeable, ToXContentFragment {
         return stats.getRequestCache();
     }
 
+    @Nullable
+    public BackgroundFrequencyCacheStats getBackgroundFrequencyCache() {
+        return stats.getBackgroundFrequencyCache();
+    }
+
     @Nullable
     public CompletionStats getCompletion() {
         return stats.getCompletion();
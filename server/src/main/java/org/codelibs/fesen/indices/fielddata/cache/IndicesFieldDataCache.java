@@ -28,6 +28,7 @@ import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.LeafReaderContext;
 import org.apache.lucene.index.IndexReader.CacheKey;
 import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.Accountables;
 import org.codelibs.fesen.common.cache.Cache;
 import org.codelibs.fesen.common.cache.CacheBuilder;
 import org.codelibs.fesen.common.cache.RemovalListener;
@@ -38,17 +39,20 @@ import org.codelibs.fesen.common.settings.Setting;
 import org.codelibs.fesen.common.settings.Settings;
 import org.codelibs.fesen.common.settings.Setting.Property;
 import org.codelibs.fesen.common.unit.ByteSizeValue;
+import org.codelibs.fesen.common.util.concurrent.ConcurrentCollections;
 import org.codelibs.fesen.core.Nullable;
 import org.codelibs.fesen.index.Index;
 import org.codelibs.fesen.index.fielddata.IndexFieldData;
 import org.codelibs.fesen.index.fielddata.IndexFieldDataCache;
 import org.codelibs.fesen.index.fielddata.LeafFieldData;
+import org.codelibs.fesen.index.fielddata.ordinals.GlobalOrdinalsIndexFieldData;
 import org.codelibs.fesen.index.shard.ShardId;
 import org.codelibs.fesen.index.shard.ShardUtils;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.function.ToLongBiFunction;
 
 public class IndicesFieldDataCache implements RemovalListener<IndicesFieldDataCache.Key, Accountable>, Releasable{
@@ -90,6 +94,7 @@ public class IndicesFieldDataCache implements RemovalListener<IndicesFieldDataCa
         assert key != null && key.listeners != null;
         IndexFieldCache indexCache = key.indexCache;
         final Accountable value = notification.getValue();
+        indexCache.lastLoadedGlobals.values().remove(value);
         for (IndexFieldDataCache.Listener listener : key.listeners) {
             try {
                 listener.onRemoval(
@@ -120,6 +125,8 @@ public class IndicesFieldDataCache implements RemovalListener<IndicesFieldDataCa
         final String fieldName;
         private final Cache<Key, Accountable> cache;
         private final Listener[] listeners;
+        // the global field data that was last loaded per shard, as long as it is cached
+        final Map<ShardId, Accountable> lastLoadedGlobals = ConcurrentCollections.newConcurrentMap();
 
         IndexFieldCache(Logger logger,final Cache<Key, Accountable> cache, Index index, String fieldName, Listener... listeners) {
             this.logger = logger;
@@ -172,6 +179,21 @@ public class IndicesFieldDataCache implements RemovalListener<IndicesFieldDataCa
                 FesenDirectoryReader.addReaderCloseListener(indexReader, IndexFieldCache.this);
                 Collections.addAll(k.listeners, this.listeners);
                 final Accountable ifd = (Accountable) indexFieldData.loadGlobalDirect(indexReader);
+                if (ifd instanceof GlobalOrdinalsIndexFieldData) {
+                    // the map used by joins might be built later, it is released along with the global ordinals
+                    ((GlobalOrdinalsIndexFieldData) ifd).setLuceneOrdinalMapListener(sizeInBytes -> {
+                        for (Listener listener : k.listeners) {
+                            try {
+                                listener.onCache(shardId, fieldName, Accountables.namedAccountable("ordinal map", sizeInBytes));
+                            } catch (Exception e) {
+                                logger.error("Failed to call listener on ordinal map loading", e);
+                            }
+                        }
+                    });
+                }
+                if (shardId != null) {
+                    lastLoadedGlobals.put(shardId, ifd);
+                }
                 for (Listener listener : k.listeners) {
                     try {
                         listener.onCache(shardId, fieldName, ifd);
@@ -185,6 +207,11 @@ public class IndicesFieldDataCache implements RemovalListener<IndicesFieldDataCa
             return (IFD) accountable;
         }
 
+        @Override
+        public Accountable lastLoadedGlobal(ShardId shardId) {
+            return lastLoadedGlobals.get(shardId);
+        }
+
         @Override
         public void onClose(CacheKey key) throws IOException {
             cache.invalidate(new Key(this, key, null));
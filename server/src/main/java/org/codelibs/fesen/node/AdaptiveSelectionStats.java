@@ -19,6 +19,7 @@
 
 package org.codelibs.fesen.node;
 
+import org.codelibs.fesen.Version;
 import org.codelibs.fesen.common.io.stream.StreamInput;
 import org.codelibs.fesen.common.io.stream.StreamOutput;
 import org.codelibs.fesen.common.io.stream.Writeable;
@@ -38,28 +39,51 @@ import java.util.stream.Collectors;
 /**
  * Class representing statistics about adaptive replica selection. This includes
  * EWMA of queue size, service time, and response time, as well as outgoing
- * searches to each node and the "rank" based on the ARS formula.
+ * searches to each node and the "rank" based on the ARS formula. It also counts
+ * the hedged shard requests that were sent to another copy of a slow shard, and
+ * how many of them responded before the original request.
  */
 public class AdaptiveSelectionStats implements Writeable, ToXContentFragment {
 
     private final Map<String, Long> clientOutgoingConnections;
     private final Map<String, ResponseCollectorService.ComputedNodeStats> nodeComputedStats;
+    private final long hedgedRequests;
+    private final long hedgedRequestsWon;
 
     public AdaptiveSelectionStats(Map<String, Long> clientConnections,
                                   Map<String, ResponseCollectorService.ComputedNodeStats> nodeComputedStats) {
+        this(clientConnections, nodeComputedStats, 0, 0);
+    }
+
+    public AdaptiveSelectionStats(Map<String, Long> clientConnections,
+                                  Map<String, ResponseCollectorService.ComputedNodeStats> nodeComputedStats,
+                                  long hedgedRequests, long hedgedRequestsWon) {
         this.clientOutgoingConnections = clientConnections;
         this.nodeComputedStats = nodeComputedStats;
+        this.hedgedRequests = hedgedRequests;
+        this.hedgedRequestsWon = hedgedRequestsWon;
     }
 
     public AdaptiveSelectionStats(StreamInput in) throws IOException {
         this.clientOutgoingConnections = in.readMap(StreamInput::readString, StreamInput::readLong);
         this.nodeComputedStats = in.readMap(StreamInput::readString, ResponseCollectorService.ComputedNodeStats::new);
+        if (in.getVersion().onOrAfter(Version.V_0_17_0)) {
+            this.hedgedRequests = in.readVLong();
+            this.hedgedRequestsWon = in.readVLong();
+        } else {
+            this.hedgedRequests = 0;
+            this.hedgedRequestsWon = 0;
+        }
     }
 
     @Override
     public void writeTo(StreamOutput out) throws IOException {
         out.writeMap(this.clientOutgoingConnections, StreamOutput::writeString, StreamOutput::writeLong);
         out.writeMap(this.nodeComputedStats, StreamOutput::writeString, (stream, stats) -> stats.writeTo(stream));
+        if (out.getVersion().onOrAfter(Version.V_0_17_0)) {
+            out.writeVLong(hedgedRequests);
+            out.writeVLong(hedgedRequestsWon);
+        }
     }
 
     @Override
@@ -85,6 +109,10 @@ public class AdaptiveSelectionStats implements Writeable, ToXContentFragment {
             }
             builder.endObject();
         }
+        builder.startObject("hedged_requests");
+        builder.field("total", hedgedRequests);
+        builder.field("won", hedgedRequestsWon);
+        builder.endObject();
         builder.endObject();
         return builder;
     }
@@ -103,6 +131,21 @@ public class AdaptiveSelectionStats implements Writeable, ToXContentFragment {
         return nodeComputedStats;
     }
 
+    /**
+     * Returns the number of shard requests that were hedged, ie. sent to another copy of the shard because the original
+     * request was slow
+     */
+    public long getHedgedRequests() {
+        return hedgedRequests;
+    }
+
+    /**
+     * Returns the number of hedged shard requests that responded before the original request
+     */
+    public long getHedgedRequestsWon() {
+        return hedgedRequestsWon;
+    }
+
     /**
      * Returns a map of node id to the ranking of the nodes based on the adaptive replica formula
      */
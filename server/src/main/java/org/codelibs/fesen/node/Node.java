@@ -88,6 +88,7 @@ import org.codelibs.fesen.common.settings.Setting.Property;
 import org.codelibs.fesen.common.transport.BoundTransportAddress;
 import org.codelibs.fesen.common.transport.TransportAddress;
 import org.codelibs.fesen.common.util.BigArrays;
+import org.codelibs.fesen.common.util.OffHeapPageAllocator;
 import org.codelibs.fesen.common.util.PageCacheRecycler;
 import org.codelibs.fesen.common.xcontent.NamedXContentRegistry;
 import org.codelibs.fesen.core.TimeValue;
@@ -283,6 +284,7 @@ public class Node implements Closeable {
     private final Collection<LifecycleComponent> pluginLifecycleComponents;
     private final LocalNodeFactory localNodeFactory;
     private final NodeService nodeService;
+    private final OffHeapPageAllocator offHeapPageAllocator;
 
     public Node(Environment environment) {
         this(environment, Collections.emptyList(), true);
@@ -459,6 +461,8 @@ public class Node implements Closeable {
 
 
             PageCacheRecycler pageCacheRecycler = createPageCacheRecycler(settings);
+            this.offHeapPageAllocator = OffHeapPageAllocator.create(settings, environment.tmpFile());
+            resourcesToClose.add(offHeapPageAllocator);
             BigArrays bigArrays = createBigArrays(pageCacheRecycler, circuitBreakerService);
             modules.add(settingsModule);
             List<NamedWriteableRegistry.Entry> namedWriteables = Stream.of(
@@ -1013,6 +1017,9 @@ public class Node implements Closeable {
         toClose.add(() -> stopWatch.stop().start("gateway_meta_state"));
         toClose.add(injector.getInstance(GatewayMetaState.class));
 
+        toClose.add(() -> stopWatch.stop().start("off_heap_page_allocator"));
+        toClose.add(offHeapPageAllocator);
+
         toClose.add(() -> stopWatch.stop().start("node_environment"));
         toClose.add(injector.getInstance(NodeEnvironment.class));
         toClose.add(stopWatch::stop);
@@ -1124,7 +1131,7 @@ public class Node implements Closeable {
      * This method can be overwritten by subclasses to change their {@link BigArrays} implementation for instance for testing
      */
     BigArrays createBigArrays(PageCacheRecycler pageCacheRecycler, CircuitBreakerService circuitBreakerService) {
-        return new BigArrays(pageCacheRecycler, circuitBreakerService, CircuitBreaker.REQUEST);
+        return new BigArrays(pageCacheRecycler, circuitBreakerService, CircuitBreaker.REQUEST, offHeapPageAllocator);
     }
 
     /**
@@ -1143,7 +1150,7 @@ public class Node implements Closeable {
                                              FetchPhase fetchPhase, ResponseCollectorService responseCollectorService,
                                              CircuitBreakerService circuitBreakerService) {
         return new SearchService(clusterService, indicesService, threadPool,
-            scriptService, bigArrays, fetchPhase, responseCollectorService, circuitBreakerService);
+            scriptService, bigArrays, fetchPhase, responseCollectorService, circuitBreakerService, environment.tmpFile());
     }
 
     /**
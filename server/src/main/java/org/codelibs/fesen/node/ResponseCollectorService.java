@@ -34,6 +34,7 @@ import org.codelibs.fesen.common.ExponentiallyWeightedMovingAverage;
 import org.codelibs.fesen.common.io.stream.StreamInput;
 import org.codelibs.fesen.common.io.stream.StreamOutput;
 import org.codelibs.fesen.common.io.stream.Writeable;
+import org.codelibs.fesen.common.metrics.CounterMetric;
 import org.codelibs.fesen.common.util.concurrent.ConcurrentCollections;
 
 /**
@@ -46,6 +47,8 @@ public final class ResponseCollectorService implements ClusterStateListener {
     private static final double ALPHA = 0.3;
 
     private final ConcurrentMap<String, NodeStatistics> nodeIdToStats = ConcurrentCollections.newConcurrentMap();
+    private final CounterMetric hedgedRequests = new CounterMetric();
+    private final CounterMetric hedgedRequestsWon = new CounterMetric();
 
     public ResponseCollectorService(ClusterService clusterService) {
         clusterService.addListener(this);
@@ -90,7 +93,22 @@ public final class ResponseCollectorService implements ClusterStateListener {
     }
 
     public AdaptiveSelectionStats getAdaptiveStats(Map<String, Long> clientSearchConnections) {
-        return new AdaptiveSelectionStats(clientSearchConnections, getAllNodeStatistics());
+        return new AdaptiveSelectionStats(clientSearchConnections, getAllNodeStatistics(), hedgedRequests.count(),
+            hedgedRequestsWon.count());
+    }
+
+    /**
+     * Called when a shard request is sent to another copy of the shard because the original request is slow.
+     */
+    public void onHedgedRequest() {
+        hedgedRequests.inc();
+    }
+
+    /**
+     * Called when a hedged shard request responded before the original request.
+     */
+    public void onHedgedRequestWon() {
+        hedgedRequestsWon.inc();
     }
 
     /**
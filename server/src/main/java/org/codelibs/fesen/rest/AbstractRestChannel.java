@@ -95,6 +95,16 @@ public abstract class AbstractRestChannel implements RestChannel {
     @Override
     public XContentBuilder newBuilder(@Nullable XContentType requestContentType, @Nullable XContentType responseContentType,
             boolean useFiltering) throws IOException {
+        return newBuilder(requestContentType, responseContentType, useFiltering, Streams.flushOnCloseStream(bytesOutput()));
+    }
+
+    /**
+     * Creates a new {@link XContentBuilder} for a response to be sent using this channel, with the same logic as
+     * {@link #newBuilder(XContentType, XContentType, boolean)}, that writes to the provided output stream.
+     */
+    @Override
+    public XContentBuilder newBuilder(@Nullable XContentType requestContentType, @Nullable XContentType responseContentType,
+            boolean useFiltering, OutputStream outputStream) throws IOException {
         if (responseContentType == null) {
             responseContentType = XContentType.fromMediaTypeOrFormat(format);
         }
@@ -119,9 +129,8 @@ public abstract class AbstractRestChannel implements RestChannel {
             excludes = filters.stream().filter(EXCLUDE_FILTER).map(f -> f.substring(1)).collect(toSet());
         }
 
-        OutputStream unclosableOutputStream = Streams.flushOnCloseStream(bytesOutput());
         XContentBuilder builder =
-            new XContentBuilder(XContentFactory.xContent(responseContentType), unclosableOutputStream, includes, excludes);
+            new XContentBuilder(XContentFactory.xContent(responseContentType), outputStream, includes, excludes);
         if (pretty) {
             builder.prettyPrint().lfAtEnd();
         }
@@ -0,0 +1,145 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.codelibs.fesen.rest;
+
+import org.codelibs.fesen.common.bytes.BytesReference;
+import org.codelibs.fesen.common.io.stream.BytesStreamOutput;
+import org.codelibs.fesen.common.xcontent.ChunkedToXContent;
+import org.codelibs.fesen.common.xcontent.ToXContent;
+import org.codelibs.fesen.common.xcontent.XContentBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+/**
+ * The body of a {@link ChunkedRestResponse}. The response is serialized on demand, one chunk of roughly the requested
+ * size at a time, so that the channel sending it never needs to hold the whole serialized response in memory.
+ * <p>
+ * Channels that cannot create a builder writing to another stream get the whole response serialized in their own buffer
+ * and sent as a single chunk.
+ */
+public final class ChunkedRestResponseBody {
+
+    private final Iterator<? extends ToXContent> pieces;
+    private final ToXContent.Params params;
+    private final XContentBuilder builder;
+    private final String contentType;
+    // the whole response, only set if the channel does not support streaming and until it has been returned
+    private BytesReference buffered;
+
+    // the stream the current chunk is written to, only set while a chunk is being encoded
+    private BytesStreamOutput target;
+    // read without the lock by the http layer while the next chunk may be encoded by another thread
+    private volatile boolean done;
+
+    private ChunkedRestResponseBody(ChunkedToXContent chunkedToXContent, ToXContent.Params params, RestChannel channel) throws IOException {
+        this.pieces = chunkedToXContent.toXContentChunked(params);
+        this.params = params;
+        XContentBuilder streamingBuilder;
+        try {
+            streamingBuilder = channel.newBuilder(channel.request().getXContentType(), null, true, new OutputStream() {
+                @Override
+                public void write(int b) {
+                    target.writeByte((byte) b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    target.writeBytes(b, off, len);
+                }
+            });
+        } catch (UnsupportedOperationException e) {
+            streamingBuilder = null;
+        }
+        if (streamingBuilder != null) {
+            this.builder = streamingBuilder;
+            this.contentType = builder.contentType().mediaType();
+        } else {
+            final XContentBuilder bufferingBuilder = channel.newBuilder(channel.request().getXContentType(), null, true);
+            while (pieces.hasNext()) {
+                pieces.next().toXContent(bufferingBuilder, params);
+            }
+            this.builder = null;
+            this.contentType = bufferingBuilder.contentType().mediaType();
+            this.buffered = BytesReference.bytes(bufferingBuilder);
+        }
+    }
+
+    /**
+     * Creates a body that serializes the provided object using a builder obtained from the provided channel.
+     */
+    public static ChunkedRestResponseBody fromXContent(ChunkedToXContent chunkedToXContent, ToXContent.Params params,
+                                                       RestChannel channel) throws IOException {
+        return new ChunkedRestResponseBody(chunkedToXContent, params, channel);
+    }
+
+    /**
+     * Returns <code>true</code> once the whole response has been encoded.
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Serializes the next pieces of the response until at least <code>sizeHint</code> bytes have been produced or the
+     * response is complete, and returns the produced bytes.
+     */
+    public synchronized BytesReference encodeChunk(int sizeHint) throws IOException {
+        if (done) {
+            throw new IllegalStateException("the response has already been fully encoded");
+        }
+        if (buffered != null) {
+            final BytesReference chunk = buffered;
+            buffered = null;
+            done = true;
+            return chunk;
+        }
+        target = new BytesStreamOutput(Math.min(sizeHint, 1 << 16));
+        try {
+            while (target.size() < sizeHint && pieces.hasNext()) {
+                pieces.next().toXContent(builder, params);
+                builder.flush();
+            }
+            if (pieces.hasNext() == false) {
+                builder.close();
+                done = true;
+            }
+            return target.bytes();
+        } finally {
+            target = null;
+        }
+    }
+
+    /**
+     * Serializes the remaining pieces of the response at once, for channels that cannot send a response in chunks.
+     */
+    public BytesReference encodeRemaining() throws IOException {
+        return encodeChunk(Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the content type of the response.
+     */
+    public String getResponseContentTypeString() {
+        return contentType;
+    }
+}
@@ -25,6 +25,7 @@ import org.codelibs.fesen.common.xcontent.XContentType;
 import org.codelibs.fesen.core.Nullable;
 
 import java.io.IOException;
+import java.io.OutputStream;
 
 /**
  * A channel used to construct bytes / builder based outputs, and send responses.
@@ -40,6 +41,16 @@ public interface RestChannel {
     XContentBuilder newBuilder(@Nullable XContentType xContentType, @Nullable XContentType responseContentType,
             boolean useFiltering) throws IOException;
 
+    /**
+     * Creates a new {@link XContentBuilder} like {@link #newBuilder(XContentType, XContentType, boolean)} that writes to the
+     * provided output stream instead of the channel level {@link #bytesOutput()}. Channels that do not support this throw an
+     * {@link UnsupportedOperationException}, in which case callers fall back to building the response in {@link #bytesOutput()}.
+     */
+    default XContentBuilder newBuilder(@Nullable XContentType xContentType, @Nullable XContentType responseContentType,
+            boolean useFiltering, OutputStream outputStream) throws IOException {
+        throw new UnsupportedOperationException("[" + getClass().getName() + "] does not support writing to another output stream");
+    }
+
     BytesStreamOutput bytesOutput();
 
     RestRequest request();
@@ -51,6 +51,7 @@ import static org.codelibs.fesen.rest.RestStatus.OK;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -484,6 +485,12 @@ public class RestController implements HttpServerTransport.Dispatcher {
             return delegate.newBuilder(xContentType, responseContentType, useFiltering);
         }
 
+        @Override
+        public XContentBuilder newBuilder(XContentType xContentType, XContentType responseContentType, boolean useFiltering,
+                                          OutputStream outputStream) throws IOException {
+            return delegate.newBuilder(xContentType, responseContentType, useFiltering, outputStream);
+        }
+
         @Override
         public BytesStreamOutput bytesOutput() {
             return delegate.bytesOutput();
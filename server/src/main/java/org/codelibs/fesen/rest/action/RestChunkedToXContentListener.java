@@ -0,0 +1,45 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.codelibs.fesen.rest.action;
+
+import org.codelibs.fesen.common.xcontent.ChunkedToXContent;
+import org.codelibs.fesen.common.xcontent.StatusToXContentObject;
+import org.codelibs.fesen.rest.ChunkedRestResponse;
+import org.codelibs.fesen.rest.ChunkedRestResponseBody;
+import org.codelibs.fesen.rest.RestChannel;
+import org.codelibs.fesen.rest.RestResponse;
+
+/**
+ * A REST based action listener for responses that can be rendered in chunks, see {@link ChunkedToXContent}. The response
+ * is serialized incrementally while it is sent to the client instead of being fully built in memory first.
+ */
+public class RestChunkedToXContentListener<Response extends StatusToXContentObject & ChunkedToXContent>
+    extends RestResponseListener<Response> {
+
+    public RestChunkedToXContentListener(RestChannel channel) {
+        super(channel);
+    }
+
+    @Override
+    public RestResponse buildResponse(Response response) throws Exception {
+        return new ChunkedRestResponse(response.status(), ChunkedRestResponseBody.fromXContent(response, channel.request(), channel));
+    }
+}
@@ -28,14 +28,21 @@ import org.codelibs.fesen.action.bulk.BulkShardRequest;
 import org.codelibs.fesen.action.support.ActiveShardCount;
 import org.codelibs.fesen.client.Requests;
 import org.codelibs.fesen.client.node.NodeClient;
+import org.codelibs.fesen.common.bytes.BytesReference;
 import org.codelibs.fesen.common.logging.DeprecationLogger;
+import org.codelibs.fesen.common.settings.Setting;
+import org.codelibs.fesen.common.settings.Setting.Property;
 import org.codelibs.fesen.common.settings.Settings;
+import org.codelibs.fesen.common.unit.ByteSizeUnit;
+import org.codelibs.fesen.common.unit.ByteSizeValue;
+import org.codelibs.fesen.common.util.concurrent.EsExecutors;
 import org.codelibs.fesen.index.mapper.MapperService;
 import org.codelibs.fesen.rest.BaseRestHandler;
 import org.codelibs.fesen.rest.RestRequest;
 import org.codelibs.fesen.rest.action.RestStatusToXContentListener;
 import org.codelibs.fesen.rest.action.search.RestSearchAction;
 import org.codelibs.fesen.search.fetch.subphase.FetchSourceContext;
+import org.codelibs.fesen.threadpool.ThreadPool;
 
 import static java.util.Arrays.asList;
 import static java.util.Collections.unmodifiableList;
@@ -53,13 +60,27 @@ import static org.codelibs.fesen.rest.RestRequest.Method.PUT;
  */
 public class RestBulkAction extends BaseRestHandler {
 
+    /**
+     * Bulk bodies at least this large are parsed on several threads of the write pool, the HTTP worker included.
+     */
+    public static final Setting<ByteSizeValue> PARALLEL_PARSE_MIN_SIZE_SETTING =
+        Setting.byteSizeSetting("rest.action.bulk.parallel_parse.min_size", new ByteSizeValue(8, ByteSizeUnit.MB), Property.NodeScope);
+    public static final Setting<Integer> PARALLEL_PARSE_MAX_THREADS_SETTING =
+        new Setting<>("rest.action.bulk.parallel_parse.max_threads",
+            (s) -> Integer.toString(Math.max(1, Math.min(8, EsExecutors.allocatedProcessors(s) / 2))),
+            (s) -> Setting.parseInt(s, 1, "rest.action.bulk.parallel_parse.max_threads"), Property.NodeScope);
+
     private final boolean allowExplicitIndex;
+    private final long parallelParseMinSize;
+    private final int parallelParseMaxThreads;
     private static final DeprecationLogger deprecationLogger = DeprecationLogger.getLogger(RestSearchAction.class);
     public static final String TYPES_DEPRECATION_MESSAGE = "[types removal]" +
     " Specifying types in bulk requests is deprecated.";
 
     public RestBulkAction(Settings settings) {
         this.allowExplicitIndex = MULTI_ALLOW_EXPLICIT_INDEX.get(settings);
+        this.parallelParseMinSize = PARALLEL_PARSE_MIN_SIZE_SETTING.get(settings).getBytes();
+        this.parallelParseMaxThreads = PARALLEL_PARSE_MAX_THREADS_SETTING.get(settings);
     }
 
     @Override
@@ -99,8 +120,15 @@ public class RestBulkAction extends BaseRestHandler {
         Boolean defaultRequireAlias = request.paramAsBoolean(DocWriteRequest.REQUIRE_ALIAS, null);
         bulkRequest.timeout(request.paramAsTime("timeout", BulkShardRequest.DEFAULT_TIMEOUT));
         bulkRequest.setRefreshPolicy(request.param("refresh"));
-        bulkRequest.add(request.requiredContent(), defaultIndex, defaultType, defaultRouting,
-            defaultFetchSourceContext, defaultPipeline, defaultRequireAlias, allowExplicitIndex, request.getXContentType());
+        final BytesReference content = request.requiredContent();
+        if (parallelParseMaxThreads > 1 && content.length() >= parallelParseMinSize) {
+            bulkRequest.add(content, defaultIndex, defaultType, defaultRouting, defaultFetchSourceContext, defaultPipeline,
+                defaultRequireAlias, allowExplicitIndex, request.getXContentType(),
+                client.threadPool().executor(ThreadPool.Names.WRITE), parallelParseMaxThreads);
+        } else {
+            bulkRequest.add(content, defaultIndex, defaultType, defaultRouting,
+                defaultFetchSourceContext, defaultPipeline, defaultRequireAlias, allowExplicitIndex, request.getXContentType());
+        }
 
         return channel -> client.bulk(bulkRequest, new RestStatusToXContentListener<>(channel));
     }
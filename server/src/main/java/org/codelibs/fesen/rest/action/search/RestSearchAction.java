@@ -36,7 +36,7 @@ import org.codelibs.fesen.rest.BaseRestHandler;
 import org.codelibs.fesen.rest.RestRequest;
 import org.codelibs.fesen.rest.action.RestActions;
 import org.codelibs.fesen.rest.action.RestCancellableNodeClient;
-import org.codelibs.fesen.rest.action.RestStatusToXContentListener;
+import org.codelibs.fesen.rest.action.RestChunkedToXContentListener;
 import org.codelibs.fesen.search.Scroll;
 import org.codelibs.fesen.search.builder.SearchSourceBuilder;
 import org.codelibs.fesen.search.fetch.StoredFieldsContext;
@@ -118,7 +118,7 @@ public class RestSearchAction extends BaseRestHandler {
 
         return channel -> {
             RestCancellableNodeClient cancelClient = new RestCancellableNodeClient(client, request.getHttpChannel());
-            cancelClient.execute(SearchAction.INSTANCE, searchRequest, new RestStatusToXContentListener<>(channel));
+            cancelClient.execute(SearchAction.INSTANCE, searchRequest, new RestChunkedToXContentListener<>(channel));
         };
     }
 
@@ -173,6 +173,9 @@ public class RestSearchAction extends BaseRestHandler {
         }
         parseSearchSource(searchRequest.source(), request, setSize);
         searchRequest.requestCache(request.paramAsBoolean("request_cache", searchRequest.requestCache()));
+        searchRequest.concurrentSegmentSearch(request.paramAsBoolean("concurrent_segment_search",
+            searchRequest.concurrentSegmentSearch()));
+        searchRequest.hedgeAfter(request.paramAsTime("hedge_after", searchRequest.hedgeAfter()));
 
         String scroll = request.param("scroll");
         if (scroll != null) {
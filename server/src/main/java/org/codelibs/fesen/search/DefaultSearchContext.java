@@ -68,6 +68,7 @@ import org.codelibs.fesen.search.rescore.RescoreContext;
 import org.codelibs.fesen.search.slice.SliceBuilder;
 import org.codelibs.fesen.search.sort.SortAndFormats;
 import org.codelibs.fesen.search.suggest.SuggestionSearchContext;
+import org.codelibs.fesen.threadpool.ThreadPool;
 import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.BoostQuery;
 import org.apache.lucene.search.Collector;
@@ -82,6 +83,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.function.LongSupplier;
 
 final class DefaultSearchContext extends SearchContext {
@@ -178,8 +180,12 @@ final class DefaultSearchContext extends SearchContext {
         this.indexShard = readerContext.indexShard();
         this.clusterService = clusterService;
         this.engineSearcher = readerContext.acquireSearcher("search");
+        final boolean concurrentSegmentSearch = request.concurrentSegmentSearch() != null
+            ? request.concurrentSegmentSearch()
+            : indexService.getIndexSettings().isConcurrentSegmentSearchEnabled();
+        final Executor executor = concurrentSegmentSearch ? indexShard.getThreadPool().executor(ThreadPool.Names.INDEX_SEARCHER) : null;
         this.searcher = new ContextIndexSearcher(engineSearcher.getIndexReader(), engineSearcher.getSimilarity(),
-            engineSearcher.getQueryCache(), engineSearcher.getQueryCachingPolicy(), lowLevelCancellation);
+            engineSearcher.getQueryCache(), engineSearcher.getQueryCachingPolicy(), lowLevelCancellation, executor);
         this.relativeTimeSupplier = relativeTimeSupplier;
         this.timeout = timeout;
         this.minNodeVersion = minNodeVersion;
@@ -26,7 +26,9 @@ import org.codelibs.fesen.Version;
 import org.codelibs.fesen.common.io.stream.StreamInput;
 import org.codelibs.fesen.common.io.stream.StreamOutput;
 import org.codelibs.fesen.common.io.stream.Writeable;
+import org.codelibs.fesen.common.collect.Iterators;
 import org.codelibs.fesen.common.lucene.Lucene;
+import org.codelibs.fesen.common.xcontent.ToXContent;
 import org.codelibs.fesen.common.xcontent.ToXContentFragment;
 import org.codelibs.fesen.common.xcontent.XContentBuilder;
 import org.codelibs.fesen.common.xcontent.XContentParser;
@@ -38,6 +40,7 @@ import static org.codelibs.fesen.common.xcontent.XContentParserUtils.ensureExpec
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Objects;
@@ -195,6 +198,25 @@ public final class SearchHits implements Writeable, ToXContentFragment, Iterable
 
     @Override
     public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        headerToXContent(builder, params);
+        for (SearchHit hit : hits) {
+            hit.toXContent(builder, params);
+        }
+        return footerToXContent(builder);
+    }
+
+    /**
+     * Returns the pieces {@link #toXContent(XContentBuilder, Params)} is made of: the start of the hits object, each
+     * hit on its own and the end of the hits object.
+     */
+    public Iterator<ToXContent> toXContentChunked(Params params) {
+        return Iterators.concat(
+            Collections.<ToXContent>singletonList(this::headerToXContent).iterator(),
+            Arrays.<ToXContent>asList(hits).iterator(),
+            Collections.<ToXContent>singletonList((builder, p) -> footerToXContent(builder)).iterator());
+    }
+
+    private XContentBuilder headerToXContent(XContentBuilder builder, Params params) throws IOException {
         builder.startObject(Fields.HITS);
         boolean totalHitAsInt = params.paramAsBoolean(RestSearchAction.TOTAL_HITS_AS_INT_PARAM, false);
         if (totalHitAsInt) {
@@ -212,13 +234,12 @@ public final class SearchHits implements Writeable, ToXContentFragment, Iterable
             builder.field(Fields.MAX_SCORE, maxScore);
         }
         builder.field(Fields.HITS);
-        builder.startArray();
-        for (SearchHit hit : hits) {
-            hit.toXContent(builder, params);
-        }
+        return builder.startArray();
+    }
+
+    private static XContentBuilder footerToXContent(XContentBuilder builder) throws IOException {
         builder.endArray();
-        builder.endObject();
-        return builder;
+        return builder.endObject();
     }
 
     public static SearchHits fromXContent(XContentParser parser) throws IOException {
@@ -141,7 +141,9 @@ import org.codelibs.fesen.search.aggregations.bucket.range.InternalRange;
 import org.codelibs.fesen.search.aggregations.bucket.range.IpRangeAggregationBuilder;
 import org.codelibs.fesen.search.aggregations.bucket.range.RangeAggregationBuilder;
 import org.codelibs.fesen.search.aggregations.bucket.sampler.DiversifiedAggregationBuilder;
+import org.codelibs.fesen.search.aggregations.bucket.sampler.InternalRandomSampler;
 import org.codelibs.fesen.search.aggregations.bucket.sampler.InternalSampler;
+import org.codelibs.fesen.search.aggregations.bucket.sampler.RandomSamplerAggregationBuilder;
 import org.codelibs.fesen.search.aggregations.bucket.sampler.SamplerAggregationBuilder;
 import org.codelibs.fesen.search.aggregations.bucket.sampler.UnmappedSampler;
 import org.codelibs.fesen.search.aggregations.bucket.terms.DoubleTerms;
@@ -433,6 +435,8 @@ public class SearchModule {
         registerAggregation(new AggregationSpec(DiversifiedAggregationBuilder.NAME, DiversifiedAggregationBuilder::new,
                 DiversifiedAggregationBuilder.PARSER).setAggregatorRegistrar(DiversifiedAggregationBuilder::registerAggregators)
                     /* Reuses result readers from SamplerAggregator*/, builder);
+        registerAggregation(new AggregationSpec(RandomSamplerAggregationBuilder.NAME, RandomSamplerAggregationBuilder::new,
+                RandomSamplerAggregationBuilder::parse).addResultReader(InternalRandomSampler::new), builder);
         registerAggregation(new AggregationSpec(TermsAggregationBuilder.NAME, TermsAggregationBuilder::new,
                 TermsAggregationBuilder.PARSER)
                     .addResultReader(StringTerms.NAME, StringTerms::new)
@@ -47,6 +47,8 @@ import org.codelibs.fesen.common.lucene.Lucene;
 import org.codelibs.fesen.common.settings.Setting;
 import org.codelibs.fesen.common.settings.Settings;
 import org.codelibs.fesen.common.settings.Setting.Property;
+import org.codelibs.fesen.common.unit.ByteSizeUnit;
+import org.codelibs.fesen.common.unit.ByteSizeValue;
 import org.codelibs.fesen.common.util.BigArrays;
 import org.codelibs.fesen.common.util.CollectionUtils;
 import org.codelibs.fesen.common.util.concurrent.ConcurrentCollections;
@@ -81,6 +83,7 @@ import org.codelibs.fesen.search.aggregations.InternalAggregation;
 import org.codelibs.fesen.search.aggregations.MultiBucketConsumerService;
 import org.codelibs.fesen.search.aggregations.SearchContextAggregations;
 import org.codelibs.fesen.search.aggregations.InternalAggregation.ReduceContext;
+import org.codelibs.fesen.search.aggregations.bucket.SpilledBucketRuns;
 import org.codelibs.fesen.search.aggregations.pipeline.PipelineAggregator.PipelineTree;
 import org.codelibs.fesen.search.builder.SearchSourceBuilder;
 import org.codelibs.fesen.search.collapse.CollapseContext;
@@ -126,6 +129,7 @@ import static org.codelibs.fesen.core.TimeValue.timeValueMillis;
 import static org.codelibs.fesen.core.TimeValue.timeValueMinutes;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -168,6 +172,22 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
     public static final Setting<Integer> MAX_OPEN_SCROLL_CONTEXT =
         Setting.intSetting("search.max_open_scroll_context", 500, 0, Property.Dynamic, Property.NodeScope);
 
+    /**
+     * The number of buckets a terms aggregation has to receive during a final coordinating reduce
+     * before it writes them to sorted runs on local disk and merges those back instead of merging
+     * them on heap. {@code -1} disables spilling.
+     */
+    public static final Setting<Integer> AGGS_REDUCE_SPILL_THRESHOLD =
+        Setting.intSetting("search.aggs.reduce_spill_threshold", -1, -1, Property.Dynamic, Property.NodeScope);
+
+    /**
+     * The disk space that the spilled runs of all the reduces of the node may take at the same time.
+     * Reduces whose runs don't fit merge their buckets on heap instead.
+     */
+    public static final Setting<ByteSizeValue> AGGS_REDUCE_SPILL_MAX_SIZE =
+        Setting.byteSizeSetting("search.aggs.reduce_spill_max_size", new ByteSizeValue(1, ByteSizeUnit.GB),
+            Property.Dynamic, Property.NodeScope);
+
     public static final int DEFAULT_SIZE = 10;
     public static final int DEFAULT_FROM = 0;
 
@@ -201,6 +221,12 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
 
     private volatile int maxOpenScrollContext;
 
+    private volatile int aggsReduceSpillThreshold;
+
+    private final Path aggsReduceSpillDirectory;
+
+    private final SpilledBucketRuns.DiskBudget aggsReduceSpillBudget;
+
     private final Cancellable keepAliveReaper;
 
     private final AtomicLong idGenerator = new AtomicLong();
@@ -214,7 +240,8 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
 
     public SearchService(ClusterService clusterService, IndicesService indicesService,
                          ThreadPool threadPool, ScriptService scriptService, BigArrays bigArrays, FetchPhase fetchPhase,
-                         ResponseCollectorService responseCollectorService, CircuitBreakerService circuitBreakerService) {
+                         ResponseCollectorService responseCollectorService, CircuitBreakerService circuitBreakerService,
+                         Path tmpDirectory) {
         Settings settings = clusterService.getSettings();
         this.threadPool = threadPool;
         this.clusterService = clusterService;
@@ -247,6 +274,13 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
 
         lowLevelCancellation = LOW_LEVEL_CANCELLATION_SETTING.get(settings);
         clusterService.getClusterSettings().addSettingsUpdateConsumer(LOW_LEVEL_CANCELLATION_SETTING, this::setLowLevelCancellation);
+
+        aggsReduceSpillThreshold = AGGS_REDUCE_SPILL_THRESHOLD.get(settings);
+        clusterService.getClusterSettings().addSettingsUpdateConsumer(AGGS_REDUCE_SPILL_THRESHOLD, this::setAggsReduceSpillThreshold);
+        aggsReduceSpillDirectory = tmpDirectory.resolve("agg-reduce");
+        aggsReduceSpillBudget = new SpilledBucketRuns.DiskBudget(AGGS_REDUCE_SPILL_MAX_SIZE.get(settings).getBytes());
+        clusterService.getClusterSettings().addSettingsUpdateConsumer(AGGS_REDUCE_SPILL_MAX_SIZE,
+            maxSize -> aggsReduceSpillBudget.setLimit(maxSize.getBytes()));
     }
 
     private void validateKeepAlives(TimeValue defaultKeepAlive, TimeValue maxKeepAlive) {
@@ -283,6 +317,10 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
         this.lowLevelCancellation = lowLevelCancellation;
     }
 
+    private void setAggsReduceSpillThreshold(int aggsReduceSpillThreshold) {
+        this.aggsReduceSpillThreshold = aggsReduceSpillThreshold;
+    }
+
     @Override
     public void afterIndexRemoved(Index index, IndexSettings indexSettings, IndexRemovalReason reason) {
         // once an index is removed due to deletion or closing, we can just clean up all the pending search context information
@@ -933,7 +971,10 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
         if (source.aggregations() != null && includeAggregations) {
             try {
                 AggregatorFactories factories = source.aggregations().build(queryShardContext, null);
-                context.aggregations(new SearchContextAggregations(factories, multiBucketConsumerService.create()));
+                SearchContextAggregations aggregations = new SearchContextAggregations(factories, multiBucketConsumerService.create());
+                aggregations.segmentCache(indicesService.getSegmentAggregationCache());
+                aggregations.backgroundFrequencyCache(indicesService.getBackgroundFrequencyCache());
+                context.aggregations(aggregations);
             } catch (IOException e) {
                 throw new AggregationInitializationException("Failed to create aggregators", e);
             }
@@ -1237,18 +1278,30 @@ public class SearchService extends AbstractLifecycleComponent implements IndexEv
             @Override
             public InternalAggregation.ReduceContext forPartialReduction() {
                 return InternalAggregation.ReduceContext.forPartialReduction(bigArrays, scriptService,
-                        () -> requestToPipelineTree(request));
+                        () -> requestToPipelineTree(request), bucketSpill());
             }
 
             @Override
             public ReduceContext forFinalReduction() {
                 PipelineTree pipelineTree = requestToPipelineTree(request);
                 return InternalAggregation.ReduceContext.forFinalReduction(
-                        bigArrays, scriptService, multiBucketConsumerService.create(), pipelineTree);
+                        bigArrays, scriptService, multiBucketConsumerService.create(), pipelineTree, bucketSpill());
             }
         };
     }
 
+    /**
+     * Where and when reduces spill their buckets to disk or {@code null} if spilling is disabled.
+     */
+    private SpilledBucketRuns.Config bucketSpill() {
+        final int threshold = aggsReduceSpillThreshold;
+        if (threshold < 0) {
+            return null;
+        }
+        return new SpilledBucketRuns.Config(aggsReduceSpillDirectory, threshold, aggsReduceSpillBudget,
+            indicesService.getNamedWriteableRegistry());
+    }
+
     private static PipelineTree requestToPipelineTree(SearchRequest request) {
         if (request.source() == null || request.source().aggregations() == null) {
             return PipelineTree.EMPTY;
@@ -54,6 +54,8 @@ import org.codelibs.fesen.search.aggregations.bucket.range.IpRangeAggregationBui
 import org.codelibs.fesen.search.aggregations.bucket.range.Range;
 import org.codelibs.fesen.search.aggregations.bucket.range.RangeAggregationBuilder;
 import org.codelibs.fesen.search.aggregations.bucket.sampler.DiversifiedAggregationBuilder;
+import org.codelibs.fesen.search.aggregations.bucket.sampler.RandomSampler;
+import org.codelibs.fesen.search.aggregations.bucket.sampler.RandomSamplerAggregationBuilder;
 import org.codelibs.fesen.search.aggregations.bucket.sampler.Sampler;
 import org.codelibs.fesen.search.aggregations.bucket.sampler.SamplerAggregationBuilder;
 import org.codelibs.fesen.search.aggregations.bucket.terms.SignificantTerms;
@@ -206,6 +208,13 @@ public class AggregationBuilders {
         return new DiversifiedAggregationBuilder(name);
     }
 
+    /**
+     * Create a new {@link RandomSampler} aggregation with the given name and sampling probability.
+     */
+    public static RandomSamplerAggregationBuilder randomSampler(String name, double probability) {
+        return new RandomSamplerAggregationBuilder(name, probability);
+    }
+
     /**
      * Create a new {@link Global} aggregation with the given name.
      */
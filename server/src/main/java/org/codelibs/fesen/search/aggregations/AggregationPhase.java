@@ -22,7 +22,9 @@ import org.apache.lucene.search.Collector;
 import org.apache.lucene.search.Query;
 import org.codelibs.fesen.common.inject.Inject;
 import org.codelibs.fesen.common.lucene.search.Queries;
+import org.codelibs.fesen.indices.IndicesSegmentAggregationCache;
 import org.codelibs.fesen.search.aggregations.bucket.global.GlobalAggregator;
+import org.codelibs.fesen.search.aggregations.bucket.terms.TermsAggregator;
 import org.codelibs.fesen.search.internal.SearchContext;
 import org.codelibs.fesen.search.profile.query.CollectorResult;
 import org.codelibs.fesen.search.profile.query.InternalProfileCollector;
@@ -58,6 +60,12 @@ public class AggregationPhase {
                 if (!collectors.isEmpty()) {
                     Collector collector = MultiBucketCollector.wrap(collectors);
                     ((BucketCollector)collector).preCollection();
+                    final IndicesSegmentAggregationCache segmentCache = context.aggregations().segmentCache();
+                    if (segmentCache != null && segmentCache.canCache(context)) {
+                        final SegmentCachedAggregations cachedSegments = new SegmentCachedAggregations(context, segmentCache);
+                        context.aggregations().cachedSegments(cachedSegments);
+                        collector = cachedSegments.wrap(collector);
+                    }
                     if (context.getProfilers() != null) {
                         collector = new InternalProfileCollector(collector, CollectorResult.REASON_AGGREGATION,
                                 // TODO: report on child aggs as well
@@ -71,6 +79,33 @@ public class AggregationPhase {
         }
     }
 
+    /**
+     * Creates a collector for an additional slice of a concurrent segment search. The collector feeds its own
+     * instances of the top level aggregators, which are merged with the main ones in {@link #execute(SearchContext)}.
+     * Global aggregators are not part of the slices since they are executed separately.
+     */
+    public static Collector createSliceCollector(SearchContext context) throws IOException {
+        assert context.aggregations() != null;
+        assert context.getProfilers() == null : "profiled aggregations can't be collected concurrently";
+        List<Aggregator> collectors = new ArrayList<>();
+        Aggregator[] aggregators;
+        try {
+            aggregators = context.aggregations().factories().createTopLevelAggregators(context);
+        } catch (IOException e) {
+            throw new AggregationInitializationException("Could not initialize aggregators", e);
+        }
+        for (int i = 0; i < aggregators.length; i++) {
+            if (aggregators[i] instanceof GlobalAggregator == false) {
+                collectors.add(aggregators[i]);
+            }
+        }
+        context.aggregations().addSliceAggregators(collectors.toArray(new Aggregator[0]));
+        BucketCollector collector = MultiBucketCollector.wrap(collectors);
+        collector.preCollection();
+        final SegmentCachedAggregations cachedSegments = context.aggregations().cachedSegments();
+        return cachedSegments == null ? collector : cachedSegments.wrap(collector);
+    }
+
     public void execute(SearchContext context) {
         if (context.aggregations() == null) {
             context.queryResult().aggregations(null);
@@ -115,9 +150,82 @@ public class AggregationPhase {
             }
         }
 
+        List<Aggregator[]> unmergedSliceAggregators = mergeSlices(aggregators, context.aggregations().sliceAggregators());
+        List<InternalAggregation> aggregations = buildAggregations(context, aggregators);
+        final SegmentCachedAggregations cachedSegments = context.aggregations().cachedSegments();
+        if (unmergedSliceAggregators.isEmpty() == false || cachedSegments != null) {
+            // merge the results of the slices of a concurrent segment search and of the segments whose results are cached
+            // like the coordinating node merges shard results
+            List<InternalAggregations> slices = new ArrayList<>();
+            slices.add(InternalAggregations.from(aggregations));
+            for (Aggregator[] sliceAggregators : unmergedSliceAggregators) {
+                slices.add(InternalAggregations.from(buildAggregations(context, sliceAggregators)));
+            }
+            if (cachedSegments != null) {
+                try {
+                    slices.addAll(cachedSegments.results());
+                } catch (IOException e) {
+                    throw new AggregationExecutionException("Failed to cache the aggregation results of segments", e);
+                }
+            }
+            InternalAggregation.ReduceContext reduceContext = InternalAggregation.ReduceContext.forPartialReduction(
+                context.bigArrays(), context.getQueryShardContext().getScriptService(),
+                context.request().source().aggregations()::buildPipelineTree);
+            aggregations = InternalAggregations.reduce(slices, reduceContext).copyResults();
+        }
+        context.queryResult().aggregations(new InternalAggregations(aggregations,
+                context.request().source().aggregations()::buildPipelineTree));
+
+        // disable aggregations so that they don't run on next pages in case of scrolling
+        context.aggregations(null);
+        context.queryCollectors().remove(AggregationPhase.class);
+    }
+
+    /**
+     * Merges the buckets collected by the aggregators of the slices of a concurrent segment search into the matching top
+     * level aggregators when they support it, so that their results are built once from exact shard-level doc counts
+     * instead of being built per slice and reduced. Returns the aggregators of the slices that could not be merged and
+     * still need to be built and reduced.
+     */
+    static List<Aggregator[]> mergeSlices(Aggregator[] aggregators, List<Aggregator[]> sliceAggregators) {
+        if (sliceAggregators.isEmpty()) {
+            return sliceAggregators;
+        }
+        // slices don't have global aggregators
+        List<Aggregator> collectors = new ArrayList<>();
+        for (Aggregator aggregator : aggregators) {
+            if (aggregator instanceof GlobalAggregator == false) {
+                collectors.add(aggregator);
+            }
+        }
+        List<Aggregator[]> unmerged = new ArrayList<>(sliceAggregators.size());
+        for (Aggregator[] slice : sliceAggregators) {
+            assert slice.length == collectors.size();
+            List<Aggregator> remaining = new ArrayList<>(slice.length);
+            for (int i = 0; i < slice.length; i++) {
+                Aggregator target = collectors.get(i);
+                if (target instanceof TermsAggregator && ((TermsAggregator) target).canMergeSlice(slice[i])) {
+                    try {
+                        slice[i].postCollection();
+                        ((TermsAggregator) target).mergeSlice(slice[i]);
+                    } catch (IOException e) {
+                        throw new AggregationExecutionException("Failed to merge the slices of aggregation [" + target.name() + "]", e);
+                    }
+                } else {
+                    remaining.add(slice[i]);
+                }
+            }
+            if (remaining.isEmpty() == false) {
+                unmerged.add(remaining.toArray(new Aggregator[0]));
+            }
+        }
+        return unmerged;
+    }
+
+    static List<InternalAggregation> buildAggregations(SearchContext context, Aggregator[] aggregators) {
         List<InternalAggregation> aggregations = new ArrayList<>(aggregators.length);
         context.aggregations().resetBucketMultiConsumer();
-        for (Aggregator aggregator : context.aggregations().aggregators()) {
+        for (Aggregator aggregator : aggregators) {
             try {
                 aggregator.postCollection();
                 aggregations.add(aggregator.buildTopLevel());
@@ -125,11 +233,6 @@ public class AggregationPhase {
                 throw new AggregationExecutionException("Failed to build aggregation [" + aggregator.name() + "]", e);
             }
         }
-        context.queryResult().aggregations(new InternalAggregations(aggregations,
-                context.request().source().aggregations()::buildPipelineTree));
-
-        // disable aggregations so that they don't run on next pages in case of scrolling
-        context.aggregations(null);
-        context.queryCollectors().remove(AggregationPhase.class);
+        return aggregations;
     }
 }
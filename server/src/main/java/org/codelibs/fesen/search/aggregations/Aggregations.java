@@ -20,6 +20,8 @@ package org.codelibs.fesen.search.aggregations;
 
 import org.apache.lucene.util.SetOnce;
 import org.codelibs.fesen.common.ParsingException;
+import org.codelibs.fesen.common.collect.Iterators;
+import org.codelibs.fesen.common.xcontent.ToXContent;
 import org.codelibs.fesen.common.xcontent.ToXContentFragment;
 import org.codelibs.fesen.common.xcontent.XContentBuilder;
 import org.codelibs.fesen.common.xcontent.XContentParser;
@@ -122,6 +124,19 @@ public class Aggregations implements Iterable<Aggregation>, ToXContentFragment {
         return builder.endObject();
     }
 
+    /**
+     * Returns the pieces {@link #toXContent(XContentBuilder, Params)} is made of, with each top level aggregation on its own.
+     */
+    public Iterator<ToXContent> toXContentChunked(Params params) {
+        if (aggregations.isEmpty()) {
+            return Collections.emptyIterator();
+        }
+        return Iterators.concat(
+            Collections.<ToXContent>singletonList((builder, p) -> builder.startObject(AGGREGATIONS_FIELD)).iterator(),
+            aggregations.iterator(),
+            Collections.<ToXContent>singletonList((builder, p) -> builder.endObject()).iterator());
+    }
+
     /**
      * Directly write all the aggregations without their bounding object. Used by sub-aggregations (non top level aggs)
      */
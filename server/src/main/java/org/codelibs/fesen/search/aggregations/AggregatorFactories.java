@@ -227,6 +227,19 @@ public class AggregatorFactories {
         return factories.length;
     }
 
+    /**
+     * @return <code>true</code> if all the aggregators of this tree support concurrent segment search
+     * @see AggregatorFactory#supportsConcurrentSegmentSearch()
+     */
+    public boolean supportsConcurrentSegmentSearch() {
+        for (AggregatorFactory factory : factories) {
+            if (factory.supportsConcurrentSegmentSearch() == false) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * A mutable collection of {@link AggregationBuilder}s and
      * {@link PipelineAggregationBuilder}s.
@@ -81,6 +81,14 @@ public abstract class AggregatorFactory {
         return parent;
     }
 
+    /**
+     * Returns <code>true</code> if the aggregators created by this factory, and by its sub-factories, can collect
+     * disjoint slices of the segments of a shard in separate instances whose results are merged with a partial reduce.
+     */
+    public boolean supportsConcurrentSegmentSearch() {
+        return factories.supportsConcurrentSegmentSearch();
+    }
+
     /**
      * Returns the aggregation subtype for nodes usage stats.
      * <p>
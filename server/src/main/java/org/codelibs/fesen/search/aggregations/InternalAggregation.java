@@ -23,15 +23,20 @@ import org.codelibs.fesen.common.Strings;
 import org.codelibs.fesen.common.io.stream.NamedWriteable;
 import org.codelibs.fesen.common.io.stream.StreamInput;
 import org.codelibs.fesen.common.io.stream.StreamOutput;
+import org.codelibs.fesen.common.io.stream.Writeable;
 import org.codelibs.fesen.common.util.BigArrays;
 import org.codelibs.fesen.common.xcontent.XContentBuilder;
+import org.codelibs.fesen.core.Nullable;
 import org.codelibs.fesen.rest.action.search.RestSearchAction;
 import org.codelibs.fesen.script.ScriptService;
+import org.codelibs.fesen.search.aggregations.bucket.SpilledBucketRuns;
 import org.codelibs.fesen.search.aggregations.pipeline.PipelineAggregator;
 import org.codelibs.fesen.search.aggregations.pipeline.PipelineAggregator.PipelineTree;
 import org.codelibs.fesen.search.aggregations.support.AggregationPath;
+import org.codelibs.fesen.search.aggregations.support.SamplingContext;
 
 import java.io.IOException;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -71,13 +76,24 @@ public abstract class InternalAggregation implements Aggregation, NamedWriteable
          * to them.
          */
         private final Supplier<PipelineTree> pipelineTreeForBwcSerialization;
+        @Nullable
+        private final SpilledBucketRuns.Config bucketSpill;
 
         /**
          * Build a {@linkplain ReduceContext} to perform a partial reduction.
          */
         public static ReduceContext forPartialReduction(BigArrays bigArrays, ScriptService scriptService,
                 Supplier<PipelineTree> pipelineTreeForBwcSerialization) {
-            return new ReduceContext(bigArrays, scriptService, (s) -> {}, null, pipelineTreeForBwcSerialization);
+            return forPartialReduction(bigArrays, scriptService, pipelineTreeForBwcSerialization, null);
+        }
+
+        /**
+         * Build a {@linkplain ReduceContext} to perform a partial reduction.
+         * @param bucketSpill where and when to spill buckets to disk, {@code null} to always reduce on heap
+         */
+        public static ReduceContext forPartialReduction(BigArrays bigArrays, ScriptService scriptService,
+                Supplier<PipelineTree> pipelineTreeForBwcSerialization, @Nullable SpilledBucketRuns.Config bucketSpill) {
+            return new ReduceContext(bigArrays, scriptService, (s) -> {}, null, pipelineTreeForBwcSerialization, bucketSpill);
         }
 
         /**
@@ -86,17 +102,29 @@ public abstract class InternalAggregation implements Aggregation, NamedWriteable
          */
         public static ReduceContext forFinalReduction(BigArrays bigArrays, ScriptService scriptService,
                 IntConsumer multiBucketConsumer, PipelineTree pipelineTreeRoot) {
+            return forFinalReduction(bigArrays, scriptService, multiBucketConsumer, pipelineTreeRoot, null);
+        }
+
+        /**
+         * Build a {@linkplain ReduceContext} to perform the final reduction.
+         * @param pipelineTreeRoot The root of tree of pipeline aggregations for this request
+         * @param bucketSpill where and when to spill buckets to disk, {@code null} to always reduce on heap
+         */
+        public static ReduceContext forFinalReduction(BigArrays bigArrays, ScriptService scriptService,
+                IntConsumer multiBucketConsumer, PipelineTree pipelineTreeRoot, @Nullable SpilledBucketRuns.Config bucketSpill) {
             return new ReduceContext(bigArrays, scriptService, multiBucketConsumer,
-                    requireNonNull(pipelineTreeRoot, "prefer EMPTY to null"), () -> pipelineTreeRoot);
+                    requireNonNull(pipelineTreeRoot, "prefer EMPTY to null"), () -> pipelineTreeRoot, bucketSpill);
         }
 
         private ReduceContext(BigArrays bigArrays, ScriptService scriptService, IntConsumer multiBucketConsumer,
-                PipelineTree pipelineTreeRoot, Supplier<PipelineTree> pipelineTreeForBwcSerialization) {
+                PipelineTree pipelineTreeRoot, Supplier<PipelineTree> pipelineTreeForBwcSerialization,
+                @Nullable SpilledBucketRuns.Config bucketSpill) {
             this.bigArrays = bigArrays;
             this.scriptService = scriptService;
             this.multiBucketConsumer = multiBucketConsumer;
             this.pipelineTreeRoot = pipelineTreeRoot;
             this.pipelineTreeForBwcSerialization = pipelineTreeForBwcSerialization;
+            this.bucketSpill = bucketSpill;
         }
 
         /**
@@ -140,6 +168,22 @@ public abstract class InternalAggregation implements Aggregation, NamedWriteable
             multiBucketConsumer.accept(size);
         }
 
+        /**
+         * Returns <code>true</code> if a reduce that received {@code bucketCount} buckets should
+         * sort them into runs on local disk and merge those instead of merging them on heap.
+         */
+        public boolean shouldSpillBuckets(long bucketCount) {
+            return bucketSpill != null && bucketSpill.shouldSpill(bucketCount);
+        }
+
+        /**
+         * Start a new set of spilled bucket runs. Only valid if {@link #shouldSpillBuckets} returned <code>true</code>.
+         */
+        public <B extends Writeable> SpilledBucketRuns<B> newSpilledBucketRuns(Comparator<? super B> comparator) {
+            assert bucketSpill != null;
+            return bucketSpill.newRuns(comparator);
+        }
+
     }
 
     protected final String name;
@@ -250,6 +294,18 @@ public abstract class InternalAggregation implements Aggregation, NamedWriteable
         return reducedAggs;
     }
 
+    /**
+     * Scales this final reduced aggregation up to all the documents when it was computed from a random sample of them,
+     * dividing its doc counts and the metrics that add up over documents by the sampling probability. Aggregations whose
+     * values don't depend on the number of documents, like min, max or avg, return themselves. The default implementation
+     * throws, as {@link org.codelibs.fesen.search.aggregations.bucket.sampler.RandomSamplerAggregationBuilder} rejects the
+     * aggregations that can't be extrapolated from a sample before they ever run.
+     */
+    public InternalAggregation finalizeSampling(SamplingContext samplingContext) {
+        throw new UnsupportedOperationException("aggregation [" + getName() + "] of type [" + getWriteableName()
+            + "] doesn't support sampling");
+    }
+
     /**
      * Reduces the given aggregations to a single one and returns it. In <b>most</b> cases, the assumption will be the all given
      * aggregations are of the same type (the same type as this aggregation). For best efficiency, when implementing,
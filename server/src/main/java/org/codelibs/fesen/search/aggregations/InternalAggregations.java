@@ -39,6 +39,7 @@ import org.codelibs.fesen.search.aggregations.pipeline.PipelineAggregator;
 import org.codelibs.fesen.search.aggregations.pipeline.SiblingPipelineAggregator;
 import org.codelibs.fesen.search.aggregations.pipeline.PipelineAggregator.PipelineTree;
 import org.codelibs.fesen.search.aggregations.support.AggregationPath;
+import org.codelibs.fesen.search.aggregations.support.SamplingContext;
 
 import static java.util.Collections.emptyList;
 import static java.util.stream.Collectors.toList;
@@ -273,6 +274,19 @@ public final class InternalAggregations extends Aggregations implements Writeabl
         return reduce(aggregationsList, context, InternalAggregations::from);
     }
 
+    /**
+     * Scales these final reduced aggregations up to all the documents when they were computed from a random sample of them.
+     *
+     * @see InternalAggregation#finalizeSampling(SamplingContext)
+     */
+    public InternalAggregations finalizeSampling(SamplingContext samplingContext) {
+        List<InternalAggregation> scaled = new ArrayList<>(aggregations.size());
+        for (InternalAggregation aggregation : getInternalAggregations()) {
+            scaled.add(aggregation.finalizeSampling(samplingContext));
+        }
+        return from(scaled);
+    }
+
     /**
      * Returns the number of bytes required to serialize these aggregations in binary form.
      */
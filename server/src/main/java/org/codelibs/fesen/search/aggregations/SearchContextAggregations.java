@@ -20,6 +20,13 @@ package org.codelibs.fesen.search.aggregations;
 
 import static org.codelibs.fesen.search.aggregations.MultiBucketConsumerService.MultiBucketConsumer;
 
+import org.codelibs.fesen.core.Nullable;
+import org.codelibs.fesen.indices.IndicesBackgroundFrequencyCache;
+import org.codelibs.fesen.indices.IndicesSegmentAggregationCache;
+
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * The aggregation context that is part of the search context.
  */
@@ -28,6 +35,10 @@ public class SearchContextAggregations {
     private final AggregatorFactories factories;
     private final MultiBucketConsumer multiBucketConsumer;
     private Aggregator[] aggregators;
+    private final List<Aggregator[]> sliceAggregators = new ArrayList<>();
+    private IndicesSegmentAggregationCache segmentCache;
+    private IndicesBackgroundFrequencyCache backgroundFrequencyCache;
+    private SegmentCachedAggregations cachedSegments;
 
     /**
      * Creates a new aggregation context with the parsed aggregator factories
@@ -54,6 +65,63 @@ public class SearchContextAggregations {
         this.aggregators = aggregators;
     }
 
+    /**
+     * Returns the top level aggregators that collect the additional slices of a concurrent segment search.
+     */
+    public List<Aggregator[]> sliceAggregators() {
+        return sliceAggregators;
+    }
+
+    /**
+     * Registers top level aggregators that collect an additional slice of a concurrent segment search. Their results
+     * are merged with the ones of the {@link #aggregators()} once the collection is done.
+     */
+    public void addSliceAggregators(Aggregator[] aggregators) {
+        this.sliceAggregators.add(aggregators);
+    }
+
+    /**
+     * Returns the cache of the aggregation results of single segments, or {@code null} if the results of this search
+     * should not be cached per segment.
+     */
+    @Nullable
+    public IndicesSegmentAggregationCache segmentCache() {
+        return segmentCache;
+    }
+
+    /**
+     * Sets the cache of the aggregation results of single segments, which is used if the aggregations of the search can be
+     * cached.
+     */
+    public void segmentCache(IndicesSegmentAggregationCache segmentCache) {
+        this.segmentCache = segmentCache;
+    }
+
+    /**
+     * Returns the cache of the background frequencies of significance analyses, or {@code null} if they should not
+     * be cached.
+     */
+    @Nullable
+    public IndicesBackgroundFrequencyCache backgroundFrequencyCache() {
+        return backgroundFrequencyCache;
+    }
+
+    /**
+     * Sets the cache of the background frequencies of significance analyses.
+     */
+    public void backgroundFrequencyCache(IndicesBackgroundFrequencyCache backgroundFrequencyCache) {
+        this.backgroundFrequencyCache = backgroundFrequencyCache;
+    }
+
+    @Nullable
+    SegmentCachedAggregations cachedSegments() {
+        return cachedSegments;
+    }
+
+    void cachedSegments(SegmentCachedAggregations cachedSegments) {
+        this.cachedSegments = cachedSegments;
+    }
+
     /**
      * Returns a consumer for multi bucket aggregation that checks the total number of buckets
      * created in the response
@@ -0,0 +1,113 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.search.aggregations;
+
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.CollectionTerminatedException;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.FilterCollector;
+import org.apache.lucene.search.LeafCollector;
+import org.codelibs.fesen.common.bytes.BytesReference;
+import org.codelibs.fesen.indices.IndicesSegmentAggregationCache;
+import org.codelibs.fesen.search.internal.SearchContext;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The segments of a search whose aggregation results are cached per segment by the {@link IndicesSegmentAggregationCache}.
+ * Segments whose results are cached are not collected, and segments that are large enough to be cached but are not yet
+ * are collected by their own top level aggregators, whose results are cached once the collection is done. Smaller
+ * segments are collected by the aggregators of the {@link SearchContextAggregations}.
+ */
+final class SegmentCachedAggregations {
+
+    private final SearchContext context;
+    private final IndicesSegmentAggregationCache cache;
+    private final BytesReference fingerprint;
+    // guarded by this, segments may be collected concurrently by the slices of a concurrent segment search
+    private final List<InternalAggregations> cachedResults = new ArrayList<>();
+    private final List<CollectedSegment> collectedSegments = new ArrayList<>();
+
+    SegmentCachedAggregations(SearchContext context, IndicesSegmentAggregationCache cache) throws IOException {
+        this.context = context;
+        this.cache = cache;
+        this.fingerprint = cache.fingerprint(context.request());
+    }
+
+    /**
+     * Wraps the collector of the aggregators of the search so that it only collects the segments that are too small to be
+     * cached.
+     */
+    Collector wrap(Collector aggregationsCollector) {
+        return new FilterCollector(aggregationsCollector) {
+            @Override
+            public LeafCollector getLeafCollector(LeafReaderContext context) throws IOException {
+                if (context.reader().maxDoc() < cache.minSegmentDocs()) {
+                    return super.getLeafCollector(context);
+                }
+                return getCachingLeafCollector(context);
+            }
+        };
+    }
+
+    private synchronized LeafCollector getCachingLeafCollector(LeafReaderContext ctx) throws IOException {
+        final InternalAggregations cached = cache.get(ctx.reader(), fingerprint);
+        if (cached != null) {
+            cachedResults.add(cached);
+            throw new CollectionTerminatedException();
+        }
+        final Aggregator[] aggregators = context.aggregations().factories().createTopLevelAggregators(context);
+        final BucketCollector collector = MultiBucketCollector.wrap(Arrays.asList(aggregators));
+        collector.preCollection();
+        collectedSegments.add(new CollectedSegment(ctx.reader(), aggregators));
+        return collector.getLeafCollector(ctx);
+    }
+
+    /**
+     * Returns the results of the segments that were found in the cache or collected on their own, and caches the latter
+     * unless the collection was interrupted.
+     */
+    synchronized List<InternalAggregations> results() throws IOException {
+        final boolean complete = context.queryResult().searchTimedOut() == false;
+        final List<InternalAggregations> results = new ArrayList<>(cachedResults);
+        for (CollectedSegment segment : collectedSegments) {
+            final InternalAggregations result = InternalAggregations.from(AggregationPhase.buildAggregations(context, segment.aggregators));
+            if (complete) {
+                cache.put(segment.reader, fingerprint, result);
+            }
+            results.add(result);
+        }
+        return results;
+    }
+
+    private static final class CollectedSegment {
+        final LeafReader reader;
+        final Aggregator[] aggregators;
+
+        CollectedSegment(LeafReader reader, Aggregator[] aggregators) {
+            this.reader = reader;
+            this.aggregators = aggregators;
+        }
+    }
+}
@@ -0,0 +1,459 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.codelibs.fesen.search.aggregations.bucket;
+
+import org.apache.lucene.document.DoublePoint;
+import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.document.LongPoint;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.PointValues;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.BoostQuery;
+import org.apache.lucene.search.BulkScorer;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.IndexOrDocValuesQuery;
+import org.apache.lucene.search.LeafCollector;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.PointInSetQuery;
+import org.apache.lucene.search.PointRangeQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorable;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.ScorerSupplier;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.Weight;
+import org.codelibs.fesen.core.Nullable;
+import org.codelibs.fesen.index.fielddata.IndexNumericFieldData;
+import org.codelibs.fesen.index.mapper.DateFieldMapper;
+import org.codelibs.fesen.index.mapper.MappedFieldType;
+import org.codelibs.fesen.index.mapper.NumberFieldMapper;
+import org.codelibs.fesen.search.aggregations.Aggregator;
+import org.codelibs.fesen.search.aggregations.AggregatorFactories;
+import org.codelibs.fesen.search.aggregations.support.ValuesSource;
+import org.codelibs.fesen.search.aggregations.support.ValuesSourceConfig;
+import org.codelibs.fesen.search.internal.SearchContext;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/**
+ * Counts the documents whose values of a numeric field fall into each of a fixed set of ranges "filter by filter": rather
+ * than reading the doc values of every document that matches the top level query, it runs one range query on the points of
+ * the field per range. If the top level query matches all documents of a segment that has no deletions and a single value
+ * per document, the counts are computed directly from the points of the segment.
+ * <p>
+ * This only works if the document counts are all the aggregation needs, ie. if it is a top level aggregation without
+ * sub-aggregations, and if the points of the field hold the values that the aggregation reads from doc values, ie. if it
+ * targets an indexed field without script or missing value. Since the top level query is run once per range, it also needs to
+ * be cheap to run or to match most of the documents of the shard.
+ */
+public final class FilterByFilterRangeCounter {
+
+    /**
+     * Integral values that are compared to range bounds as doubles only compare exactly if the bounds are within this
+     * magnitude.
+     */
+    private static final double MAX_ACCURATE_BOUND = 1L << 53;
+
+    /**
+     * The minimum share of the documents of the shard that a top level query that isn't cheap to run again needs to match for
+     * its documents to be counted filter by filter.
+     */
+    private static final double MIN_MATCHING_DOCS_RATIO = 0.5;
+
+    private enum PointType {
+        INT(Integer.BYTES),
+        LONG(Long.BYTES),
+        DOUBLE(Double.BYTES);
+
+        private final int bytes;
+
+        PointType(int bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    private final SearchContext context;
+    private final String field;
+    private final int bytesPerDim;
+    // the inclusive bounds of each range as encoded in the points of the field, null for ranges that can't match
+    private final byte[][] lowers;
+    private final byte[][] uppers;
+    private final Query[] queries;
+    private final boolean matchAll;
+    private Weight[] weights;
+    private int segmentsCountedFromPoints;
+    private int segmentsCountedWithQueries;
+    private int segmentsCollected;
+
+    private FilterByFilterRangeCounter(SearchContext context, String field, PointType type, byte[][] lowers, byte[][] uppers,
+                                       Query[] queries) throws IOException {
+        this.context = context;
+        this.field = field;
+        this.bytesPerDim = type.bytes;
+        this.lowers = lowers;
+        this.uppers = uppers;
+        this.queries = queries;
+        this.matchAll = isMatchAll(context.searcher().rewrite(context.query()));
+    }
+
+    /**
+     * Builds a counter for the given ranges, each of which includes its {@code from} and excludes its {@code to}, like the ranges
+     * of the {@code range} aggregation. Returns {@code null} if the documents can't be counted filter by filter.
+     */
+    @Nullable
+    public static FilterByFilterRangeCounter fromDoubleRanges(SearchContext context, @Nullable Aggregator parent,
+                                                              AggregatorFactories factories, ValuesSourceConfig config,
+                                                              double[] froms, double[] tos) throws IOException {
+        final PointType type = pointType(context, parent, factories, config);
+        if (type == null) {
+            return null;
+        }
+        final String field = config.fieldType().name();
+        final byte[][] lowers = new byte[froms.length][];
+        final byte[][] uppers = new byte[froms.length][];
+        final Query[] queries = new Query[froms.length];
+        for (int i = 0; i < froms.length; i++) {
+            final double from = froms[i];
+            final double to = tos[i];
+            if (Double.isNaN(from) || Double.isNaN(to)) {
+                return null;
+            }
+            if (type == PointType.DOUBLE) {
+                if (from >= to) {
+                    continue;
+                }
+                // doc values compare -0.0 and 0.0 as equal while points sort -0.0 first
+                final double lower = from == 0d ? -0d : from;
+                final double upper = Math.nextDown(to);
+                lowers[i] = new byte[Double.BYTES];
+                uppers[i] = new byte[Double.BYTES];
+                DoublePoint.encodeDimension(lower, lowers[i], 0);
+                DoublePoint.encodeDimension(upper, uppers[i], 0);
+                queries[i] = DoublePoint.newRangeQuery(field, lower, upper);
+            } else {
+                if ((Double.isInfinite(from) == false && Math.abs(from) >= MAX_ACCURATE_BOUND)
+                        || (Double.isInfinite(to) == false && Math.abs(to) >= MAX_ACCURATE_BOUND)) {
+                    return null;
+                }
+                final long lower = from == Double.NEGATIVE_INFINITY ? Long.MIN_VALUE : (long) Math.ceil(from);
+                final long upper = to == Double.POSITIVE_INFINITY ? Long.MAX_VALUE : (long) Math.ceil(to) - 1;
+                setLongRange(type, field, i, lower, upper, lowers, uppers, queries);
+            }
+        }
+        return new FilterByFilterRangeCounter(context, field, type, lowers, uppers, queries);
+    }
+
+    /**
+     * Builds a counter for the given ranges, each of which includes its {@code from} and excludes its {@code to}. Returns
+     * {@code null} if the documents can't be counted filter by filter, or if the field doesn't hold integral values.
+     */
+    @Nullable
+    public static FilterByFilterRangeCounter fromLongRanges(SearchContext context, @Nullable Aggregator parent,
+                                                            AggregatorFactories factories, ValuesSourceConfig config,
+                                                            long[] froms, long[] tos) throws IOException {
+        final PointType type = pointType(context, parent, factories, config);
+        if (type == null || type == PointType.DOUBLE) {
+            return null;
+        }
+        final String field = config.fieldType().name();
+        final byte[][] lowers = new byte[froms.length][];
+        final byte[][] uppers = new byte[froms.length][];
+        final Query[] queries = new Query[froms.length];
+        for (int i = 0; i < froms.length; i++) {
+            if (froms[i] < tos[i]) {
+                setLongRange(type, field, i, froms[i], tos[i] - 1, lowers, uppers, queries);
+            }
+        }
+        return new FilterByFilterRangeCounter(context, field, type, lowers, uppers, queries);
+    }
+
+    /**
+     * Returns how the field targeted by the aggregation is indexed, or {@code null} if the aggregation can't count documents
+     * filter by filter.
+     */
+    @Nullable
+    private static PointType pointType(SearchContext context, @Nullable Aggregator parent, AggregatorFactories factories,
+                                       ValuesSourceConfig config) throws IOException {
+        if (parent != null || factories.countAggregators() > 0) {
+            return null;
+        }
+        // counting documents with queries only works if the top level query alone decides which documents are collected
+        if (context.query() == null || context.minimumScore() != null
+                || context.terminateAfter() != SearchContext.DEFAULT_TERMINATE_AFTER) {
+            return null;
+        }
+        // scripts and missing values wrap the values source of the field
+        if (config.hasValues() == false || config.getValuesSource() instanceof ValuesSource.Numeric.FieldData == false) {
+            return null;
+        }
+        final PointType type = pointType(config.fieldType());
+        if (type == null || isQueryCheapEnough(context) == false) {
+            return null;
+        }
+        return type;
+    }
+
+    /**
+     * Returns whether running the top level query once per range is cheaper than collecting its matches. This is the case if it
+     * matches all documents, or if it is a single term or point query which is cheap to run again. Other queries are only run
+     * once per range if they match at least {@link #MIN_MATCHING_DOCS_RATIO} of the documents of the shard: reading the doc
+     * values of fewer matches costs less than intersecting the query with the points of every range.
+     */
+    private static boolean isQueryCheapEnough(SearchContext context) throws IOException {
+        final Query query = unwrap(context.searcher().rewrite(context.query()));
+        if (query instanceof MatchAllDocsQuery || isCheapFilter(query)) {
+            return true;
+        }
+        final IndexReader reader = context.searcher().getIndexReader();
+        // Lucene 8 has no Weight#count, so the number of matches is estimated from the cost of the scorers. The weight is
+        // created from the query rather than the searcher so that the estimate doesn't go through the query cache.
+        final Weight weight = query.createWeight(context.searcher(), ScoreMode.COMPLETE_NO_SCORES, 1f);
+        long cost = 0;
+        for (LeafReaderContext leaf : reader.leaves()) {
+            final ScorerSupplier scorerSupplier = weight.scorerSupplier(leaf);
+            if (scorerSupplier != null) {
+                cost += scorerSupplier.cost();
+            }
+        }
+        return cost >= reader.maxDoc() * MIN_MATCHING_DOCS_RATIO;
+    }
+
+    private static boolean isCheapFilter(Query query) {
+        if (query instanceof IndexOrDocValuesQuery) {
+            // numeric range queries, which are run on the points of the field here
+            return isCheapFilter(((IndexOrDocValuesQuery) query).getIndexQuery());
+        }
+        return query instanceof TermQuery || query instanceof PointRangeQuery || query instanceof PointInSetQuery;
+    }
+
+    @Nullable
+    private static PointType pointType(@Nullable MappedFieldType fieldType) {
+        if (fieldType == null || fieldType.isSearchable() == false) {
+            return null;
+        }
+        if (fieldType instanceof DateFieldMapper.DateFieldType) {
+            // date_nanos fields index nanoseconds but aggregate milliseconds
+            return ((DateFieldMapper.DateFieldType) fieldType).resolution() == DateFieldMapper.Resolution.MILLISECONDS
+                ? PointType.LONG : null;
+        }
+        if (fieldType instanceof NumberFieldMapper.NumberFieldType) {
+            final IndexNumericFieldData.NumericType numericType = ((NumberFieldMapper.NumberFieldType) fieldType).numericType();
+            switch (numericType) {
+                case BYTE:
+                case SHORT:
+                case INT:
+                    return PointType.INT;
+                case LONG:
+                    return PointType.LONG;
+                case DOUBLE:
+                    return PointType.DOUBLE;
+                default:
+                    // the values of float and half_float fields are rounded differently in points and doc values
+                    return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the minimum and maximum values that the points of the given field hold in the shard, or {@code null} if the field
+     * has no points or doesn't hold integral values.
+     */
+    @Nullable
+    public static long[] integralPointBounds(SearchContext context, @Nullable MappedFieldType fieldType) throws IOException {
+        final PointType type = pointType(fieldType);
+        if (type == null || type == PointType.DOUBLE) {
+            return null;
+        }
+        final IndexReader reader = context.searcher().getIndexReader();
+        final byte[] min = PointValues.getMinPackedValue(reader, fieldType.name());
+        final byte[] max = PointValues.getMaxPackedValue(reader, fieldType.name());
+        if (min == null || max == null) {
+            return null;
+        }
+        if (type == PointType.INT) {
+            return new long[] { IntPoint.decodeDimension(min, 0), IntPoint.decodeDimension(max, 0) };
+        }
+        return new long[] { LongPoint.decodeDimension(min, 0), LongPoint.decodeDimension(max, 0) };
+    }
+
+    private static void setLongRange(PointType type, String field, int index, long lower, long upper,
+                                     byte[][] lowers, byte[][] uppers, Query[] queries) {
+        if (type == PointType.INT) {
+            lower = Math.max(lower, Integer.MIN_VALUE);
+            upper = Math.min(upper, Integer.MAX_VALUE);
+        }
+        if (lower > upper) {
+            return;
+        }
+        lowers[index] = new byte[type.bytes];
+        uppers[index] = new byte[type.bytes];
+        if (type == PointType.INT) {
+            IntPoint.encodeDimension((int) lower, lowers[index], 0);
+            IntPoint.encodeDimension((int) upper, uppers[index], 0);
+            queries[index] = IntPoint.newRangeQuery(field, (int) lower, (int) upper);
+        } else {
+            LongPoint.encodeDimension(lower, lowers[index], 0);
+            LongPoint.encodeDimension(upper, uppers[index], 0);
+            queries[index] = LongPoint.newRangeQuery(field, lower, upper);
+        }
+    }
+
+    private static boolean isMatchAll(Query query) {
+        return unwrap(query) instanceof MatchAllDocsQuery;
+    }
+
+    /**
+     * Strips the wrappers that only change the score of a query.
+     */
+    private static Query unwrap(Query query) {
+        while (true) {
+            if (query instanceof ConstantScoreQuery) {
+                query = ((ConstantScoreQuery) query).getQuery();
+            } else if (query instanceof BoostQuery) {
+                query = ((BoostQuery) query).getQuery();
+            } else {
+                return query;
+            }
+        }
+    }
+
+    /**
+     * Counts the documents of the given segment that match the top level query, per range. Returns {@code null} if the segment
+     * has values for the field that aren't indexed as points, in which case its documents need to be collected.
+     */
+    @Nullable
+    public long[] countSegment(LeafReaderContext ctx) throws IOException {
+        final PointValues points = ctx.reader().getPointValues(field);
+        if (points == null) {
+            if (ctx.reader().getFieldInfos().fieldInfo(field) != null) {
+                segmentsCollected++;
+                return null;
+            }
+            return new long[queries.length];
+        }
+        final long[] counts = new long[queries.length];
+        if (matchAll && ctx.reader().getLiveDocs() == null && points.size() == points.getDocCount()) {
+            segmentsCountedFromPoints++;
+            for (int i = 0; i < queries.length; i++) {
+                if (lowers[i] != null) {
+                    counts[i] = countPoints(points, lowers[i], uppers[i]);
+                }
+            }
+        } else {
+            segmentsCountedWithQueries++;
+            if (weights == null) {
+                weights = new Weight[queries.length];
+                for (int i = 0; i < queries.length; i++) {
+                    if (queries[i] != null) {
+                        final Query query = matchAll ? queries[i] : new BooleanQuery.Builder()
+                            .add(context.query(), BooleanClause.Occur.FILTER)
+                            .add(queries[i], BooleanClause.Occur.FILTER)
+                            .build();
+                        weights[i] = context.searcher().createWeight(context.searcher().rewrite(query),
+                            ScoreMode.COMPLETE_NO_SCORES, 1f);
+                    }
+                }
+            }
+            for (int i = 0; i < weights.length; i++) {
+                if (weights[i] != null) {
+                    counts[i] = countDocs(weights[i], ctx);
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * Counts the points of a segment whose value is within the given bounds. Since the caller checked that the segment has a
+     * single value per document, this is also the number of documents.
+     */
+    private long countPoints(PointValues points, byte[] lower, byte[] upper) throws IOException {
+        if (relate(points.getMinPackedValue(), points.getMaxPackedValue(), lower, upper) == PointValues.Relation.CELL_INSIDE_QUERY) {
+            return points.size();
+        }
+        final long[] count = new long[1];
+        points.intersect(new PointValues.IntersectVisitor() {
+            @Override
+            public void visit(int docID) {
+                count[0]++;
+            }
+
+            @Override
+            public void visit(int docID, byte[] packedValue) {
+                if (Arrays.compareUnsigned(packedValue, 0, bytesPerDim, lower, 0, bytesPerDim) >= 0
+                        && Arrays.compareUnsigned(packedValue, 0, bytesPerDim, upper, 0, bytesPerDim) <= 0) {
+                    count[0]++;
+                }
+            }
+
+            @Override
+            public PointValues.Relation compare(byte[] minPackedValue, byte[] maxPackedValue) {
+                return relate(minPackedValue, maxPackedValue, lower, upper);
+            }
+        });
+        return count[0];
+    }
+
+    private PointValues.Relation relate(byte[] minPackedValue, byte[] maxPackedValue, byte[] lower, byte[] upper) {
+        if (Arrays.compareUnsigned(minPackedValue, 0, bytesPerDim, upper, 0, bytesPerDim) > 0
+                || Arrays.compareUnsigned(maxPackedValue, 0, bytesPerDim, lower, 0, bytesPerDim) < 0) {
+            return PointValues.Relation.CELL_OUTSIDE_QUERY;
+        }
+        if (Arrays.compareUnsigned(minPackedValue, 0, bytesPerDim, lower, 0, bytesPerDim) >= 0
+                && Arrays.compareUnsigned(maxPackedValue, 0, bytesPerDim, upper, 0, bytesPerDim) <= 0) {
+            return PointValues.Relation.CELL_INSIDE_QUERY;
+        }
+        return PointValues.Relation.CELL_CROSSES_QUERY;
+    }
+
+    private static long countDocs(Weight weight, LeafReaderContext ctx) throws IOException {
+        final BulkScorer scorer = weight.bulkScorer(ctx);
+        if (scorer == null) {
+            return 0;
+        }
+        final long[] count = new long[1];
+        scorer.score(new LeafCollector() {
+            @Override
+            public void setScorer(Scorable scorer) {
+            }
+
+            @Override
+            public void collect(int doc) {
+                count[0]++;
+            }
+        }, ctx.reader().getLiveDocs());
+        return count[0];
+    }
+
+    /**
+     * Adds how the documents were counted to the profile of the aggregation.
+     */
+    public void collectDebugInfo(BiConsumer<String, Object> add) {
+        add.accept("segments_counted_from_points", segmentsCountedFromPoints);
+        add.accept("segments_counted_with_queries", segmentsCountedWithQueries);
+        add.accept("segments_collected", segmentsCollected);
+    }
+}
@@ -26,6 +26,7 @@ import org.codelibs.fesen.search.aggregations.InternalAggregation;
 import org.codelibs.fesen.search.aggregations.InternalAggregations;
 import org.codelibs.fesen.search.aggregations.pipeline.PipelineAggregator.PipelineTree;
 import org.codelibs.fesen.search.aggregations.support.AggregationPath;
+import org.codelibs.fesen.search.aggregations.support.SamplingContext;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -113,6 +114,11 @@ public abstract class InternalSingleBucketAggregation extends InternalAggregatio
         return newAggregation(getName(), docCount, aggs);
     }
 
+    @Override
+    public InternalAggregation finalizeSampling(SamplingContext samplingContext) {
+        return newAggregation(getName(), samplingContext.scaleUp(docCount), aggregations.finalizeSampling(samplingContext));
+    }
+
     /**
      * Amulti-bucket agg needs to first reduce the buckets and *their* pipelines
      * before allowing sibling pipelines to materialize.
@@ -0,0 +1,322 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.search.aggregations.bucket;
+
+import org.codelibs.fesen.common.io.stream.InputStreamStreamInput;
+import org.codelibs.fesen.common.io.stream.NamedWriteableAwareStreamInput;
+import org.codelibs.fesen.common.io.stream.NamedWriteableRegistry;
+import org.codelibs.fesen.common.io.stream.OutputStreamStreamOutput;
+import org.codelibs.fesen.common.io.stream.StreamInput;
+import org.codelibs.fesen.common.io.stream.StreamOutput;
+import org.codelibs.fesen.common.io.stream.Writeable;
+import org.codelibs.fesen.core.internal.io.IOUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Sorted runs of buckets written to temporary files on local disk so that a reduce can merge
+ * them back with a streaming k-way merge instead of holding every intermediate bucket on heap.
+ * Every run must be sorted with the comparator the runs were created with. The runs of all the
+ * reduces of a node share a {@link DiskBudget}. All files are deleted, and their space returned to
+ * the budget, on {@link #close()}.
+ */
+public final class SpilledBucketRuns<B extends Writeable> implements Closeable {
+
+    /**
+     * The number of bytes that the runs of all the reduces of a node may take on disk at the same time.
+     */
+    public static final class DiskBudget {
+        private final AtomicLong used = new AtomicLong();
+        private volatile long limit;
+
+        public DiskBudget(long limit) {
+            setLimit(limit);
+        }
+
+        public void setLimit(long limit) {
+            if (limit < 0) {
+                throw new IllegalArgumentException("[limit] must be >= 0 but was [" + limit + "]");
+            }
+            this.limit = limit;
+        }
+
+        /**
+         * The number of bytes currently taken by runs.
+         */
+        public long used() {
+            return used.get();
+        }
+
+        boolean tryReserve(long bytes) {
+            while (true) {
+                final long current = used.get();
+                if (current + bytes > limit) {
+                    return false;
+                }
+                if (used.compareAndSet(current, current + bytes)) {
+                    return true;
+                }
+            }
+        }
+
+        void release(long bytes) {
+            final long remaining = used.addAndGet(-bytes);
+            assert remaining >= 0 : "released more bytes than were reserved";
+        }
+    }
+
+    /**
+     * Where and when reduces spill their buckets to disk.
+     */
+    public static final class Config {
+        private final Path directory;
+        private final int threshold;
+        private final DiskBudget diskBudget;
+        private final NamedWriteableRegistry namedWriteableRegistry;
+
+        /**
+         * @param directory the directory to create the run files in
+         * @param threshold the number of buckets a reduce has to receive before it spills them
+         * @param diskBudget the disk space that the runs may take, shared with the other reduces of the node
+         * @param namedWriteableRegistry used to read back the sub-aggregations of spilled buckets
+         */
+        public Config(Path directory, int threshold, DiskBudget diskBudget, NamedWriteableRegistry namedWriteableRegistry) {
+            if (threshold < 0) {
+                throw new IllegalArgumentException("[threshold] must be >= 0 but was [" + threshold + "]");
+            }
+            this.directory = directory;
+            this.threshold = threshold;
+            this.diskBudget = diskBudget;
+            this.namedWriteableRegistry = namedWriteableRegistry;
+        }
+
+        public int threshold() {
+            return threshold;
+        }
+
+        /**
+         * Should a reduce that received {@code bucketCount} buckets spill them?
+         */
+        public boolean shouldSpill(long bucketCount) {
+            return bucketCount > 0 && bucketCount >= threshold;
+        }
+
+        /**
+         * Start a new set of runs sorted by {@code comparator}.
+         */
+        public <B extends Writeable> SpilledBucketRuns<B> newRuns(Comparator<? super B> comparator) {
+            return new SpilledBucketRuns<>(directory, diskBudget, namedWriteableRegistry, comparator);
+        }
+    }
+
+    private final Path directory;
+    private final DiskBudget diskBudget;
+    private final NamedWriteableRegistry namedWriteableRegistry;
+    private final Comparator<? super B> comparator;
+    private final List<Run<B>> runs = new ArrayList<>();
+
+    private SpilledBucketRuns(Path directory, DiskBudget diskBudget, NamedWriteableRegistry namedWriteableRegistry,
+                              Comparator<? super B> comparator) {
+        this.directory = directory;
+        this.diskBudget = diskBudget;
+        this.namedWriteableRegistry = namedWriteableRegistry;
+        this.comparator = comparator;
+    }
+
+    /**
+     * Write a run of buckets to disk.
+     * @param buckets the buckets, sorted by the comparator of these runs
+     * @param reader reads the buckets of this run back
+     * @return {@code false} if the run doesn't fit in the disk budget, in which case these runs can't be merged and the
+     *         caller has to reduce the buckets on heap instead
+     */
+    public boolean addRun(List<B> buckets, Writeable.Reader<B> reader) throws IOException {
+        if (buckets.isEmpty()) {
+            return true;
+        }
+        Files.createDirectories(directory);
+        final Path file = Files.createTempFile(directory, "agg-reduce-", ".run");
+        // register the run before writing it so close() cleans the file up if writing fails
+        final Run<B> run = new Run<>(file, buckets.size(), reader);
+        runs.add(run);
+        final CountingOutputStream counting = new CountingOutputStream(Files.newOutputStream(file));
+        try (StreamOutput out = new OutputStreamStreamOutput(new BufferedOutputStream(counting))) {
+            B previous = null;
+            for (B bucket : buckets) {
+                assert previous == null || comparator.compare(previous, bucket) < 0 : "runs must be sorted by key";
+                bucket.writeTo(out);
+                // only the bytes flushed to the file so far are counted, the rest is reserved once the run is closed
+                if (reserve(run, counting.count) == false) {
+                    return false;
+                }
+                previous = bucket;
+            }
+        }
+        return reserve(run, counting.count);
+    }
+
+    private boolean reserve(Run<B> run, long bytes) {
+        if (bytes > run.reservedBytes) {
+            if (diskBudget.tryReserve(bytes - run.reservedBytes) == false) {
+                return false;
+            }
+            run.reservedBytes = bytes;
+        }
+        return true;
+    }
+
+    /**
+     * The number of runs written so far.
+     */
+    public int runCount() {
+        return runs.size();
+    }
+
+    /**
+     * Merge all runs, calling {@code consumer} once per key with the buckets of every run that
+     * contains that key, in the order of the comparator. Only one bucket per run is held on heap
+     * besides the group handed to the consumer. The merge stops early if the consumer returns
+     * {@code false}.
+     */
+    public void merge(Predicate<List<B>> consumer) throws IOException {
+        final List<RunReader<B>> readers = new ArrayList<>(runs.size());
+        try {
+            final PriorityQueue<RunReader<B>> pq = new PriorityQueue<>(Math.max(1, runs.size()),
+                (a, b) -> comparator.compare(a.current, b.current));
+            for (Run<B> run : runs) {
+                RunReader<B> reader = new RunReader<>(run, namedWriteableRegistry);
+                readers.add(reader);
+                if (reader.next()) {
+                    pq.add(reader);
+                }
+            }
+            List<B> sameKey = new ArrayList<>();
+            while (pq.isEmpty() == false) {
+                final RunReader<B> top = pq.poll();
+                if (sameKey.isEmpty() == false && comparator.compare(top.current, sameKey.get(0)) != 0) {
+                    if (consumer.test(sameKey) == false) {
+                        return;
+                    }
+                    sameKey = new ArrayList<>();
+                }
+                sameKey.add(top.current);
+                if (top.next()) {
+                    pq.add(top);
+                }
+            }
+            if (sameKey.isEmpty() == false) {
+                consumer.test(sameKey);
+            }
+        } finally {
+            IOUtils.close(readers);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        final List<Path> files = new ArrayList<>(runs.size());
+        long reservedBytes = 0;
+        for (Run<B> run : runs) {
+            files.add(run.file);
+            reservedBytes += run.reservedBytes;
+        }
+        runs.clear();
+        try {
+            IOUtils.rm(files.toArray(new Path[0]));
+        } finally {
+            diskBudget.release(reservedBytes);
+        }
+    }
+
+    private static class Run<B> {
+        private final Path file;
+        private final int size;
+        private final Writeable.Reader<B> reader;
+        private long reservedBytes;
+
+        private Run(Path file, int size, Writeable.Reader<B> reader) {
+            this.file = file;
+            this.size = size;
+            this.reader = reader;
+        }
+    }
+
+    private static class RunReader<B> implements Closeable {
+        private final Run<B> run;
+        private final StreamInput in;
+        private int remaining;
+        private B current;
+
+        private RunReader(Run<B> run, NamedWriteableRegistry namedWriteableRegistry) throws IOException {
+            this.run = run;
+            this.in = new NamedWriteableAwareStreamInput(
+                new InputStreamStreamInput(new BufferedInputStream(Files.newInputStream(run.file))), namedWriteableRegistry);
+            this.remaining = run.size;
+        }
+
+        boolean next() throws IOException {
+            if (remaining == 0) {
+                current = null;
+                return false;
+            }
+            remaining--;
+            current = run.reader.read(in);
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
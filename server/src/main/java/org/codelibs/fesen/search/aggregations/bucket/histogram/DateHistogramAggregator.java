@@ -34,13 +34,16 @@ import org.codelibs.fesen.search.aggregations.InternalAggregation;
 import org.codelibs.fesen.search.aggregations.LeafBucketCollector;
 import org.codelibs.fesen.search.aggregations.LeafBucketCollectorBase;
 import org.codelibs.fesen.search.aggregations.bucket.BucketsAggregator;
+import org.codelibs.fesen.search.aggregations.bucket.FilterByFilterRangeCounter;
 import org.codelibs.fesen.search.aggregations.bucket.terms.LongKeyedBucketOrds;
 import org.codelibs.fesen.search.aggregations.support.ValuesSource;
 import org.codelibs.fesen.search.aggregations.support.ValuesSourceConfig;
 import org.codelibs.fesen.search.internal.SearchContext;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.function.BiConsumer;
 
@@ -52,6 +55,12 @@ import java.util.function.BiConsumer;
  */
 class DateHistogramAggregator extends BucketsAggregator implements SizedBucketAggregator {
 
+    /**
+     * The maximum number of buckets whose documents are counted filter by filter, beyond which running one range query per
+     * bucket costs more than collecting the documents.
+     */
+    static final int MAX_FILTER_BY_FILTER_BUCKETS = 1024;
+
     private final ValuesSource.Numeric valuesSource;
     private final DocValueFormat formatter;
     private final Rounding rounding;
@@ -68,6 +77,16 @@ class DateHistogramAggregator extends BucketsAggregator implements SizedBucketAg
 
     private final LongKeyedBucketOrds bucketOrds;
 
+    /**
+     * The keys of the buckets that {@link #filterByFilter} counts documents for.
+     */
+    private final long[] filterByFilterKeys;
+    /**
+     * Counts the documents of each bucket from the points of the field rather than by collecting them, or {@code null} if the
+     * documents need to be collected.
+     */
+    private final FilterByFilterRangeCounter filterByFilter;
+
     DateHistogramAggregator(
         String name,
         AggregatorFactories factories,
@@ -99,6 +118,49 @@ class DateHistogramAggregator extends BucketsAggregator implements SizedBucketAg
         this.formatter = valuesSourceConfig.format();
 
         bucketOrds = LongKeyedBucketOrds.build(context.bigArrays(), cardinality);
+
+        final long[] keys = filterByFilterKeys(valuesSourceConfig);
+        this.filterByFilter = keys == null ? null : FilterByFilterRangeCounter.fromLongRanges(context, parent, factories,
+            valuesSourceConfig, keys, nextRoundingValues(keys));
+        this.filterByFilterKeys = filterByFilter == null ? null : keys;
+    }
+
+    /**
+     * Returns the keys of all buckets between the minimum and the maximum value of the field in the shard, or {@code null} if
+     * the field has no values or if there are too many buckets to count their documents filter by filter.
+     */
+    private long[] filterByFilterKeys(ValuesSourceConfig valuesSourceConfig) throws IOException {
+        if (valuesSource == null) {
+            return null;
+        }
+        final long[] bounds = FilterByFilterRangeCounter.integralPointBounds(context, valuesSourceConfig.fieldType());
+        if (bounds == null) {
+            return null;
+        }
+        final List<Long> keys = new ArrayList<>();
+        long key = preparedRounding.round(bounds[0]);
+        while (key <= bounds[1]) {
+            if (hardBounds == null || hardBounds.contain(key)) {
+                if (keys.size() == MAX_FILTER_BY_FILTER_BUCKETS) {
+                    return null;
+                }
+                keys.add(key);
+            }
+            final long next = preparedRounding.nextRoundingValue(key);
+            if (next <= key) {
+                return null;
+            }
+            key = next;
+        }
+        return keys.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private long[] nextRoundingValues(long[] keys) {
+        final long[] next = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            next[i] = preparedRounding.nextRoundingValue(keys[i]);
+        }
+        return next;
     }
 
     @Override
@@ -114,6 +176,21 @@ class DateHistogramAggregator extends BucketsAggregator implements SizedBucketAg
         if (valuesSource == null) {
             return LeafBucketCollector.NO_OP_COLLECTOR;
         }
+        if (filterByFilter != null) {
+            final long[] counts = filterByFilter.countSegment(ctx);
+            if (counts != null) {
+                for (int i = 0; i < counts.length; i++) {
+                    if (counts[i] > 0) {
+                        long bucketOrd = bucketOrds.add(0, filterByFilterKeys[i]);
+                        if (bucketOrd < 0) { // already seen
+                            bucketOrd = -1 - bucketOrd;
+                        }
+                        incrementBucketDocCount(bucketOrd, (int) counts[i]);
+                    }
+                }
+                return LeafBucketCollector.NO_OP_COLLECTOR;
+            }
+        }
         SortedNumericDocValues values = valuesSource.longValues(ctx);
         return new LeafBucketCollectorBase(sub, values) {
             @Override
@@ -181,6 +258,10 @@ class DateHistogramAggregator extends BucketsAggregator implements SizedBucketAg
     @Override
     public void collectDebugInfo(BiConsumer<String, Object> add) {
         add.accept("total_buckets", bucketOrds.size());
+        add.accept("strategy", filterByFilter == null ? "collect" : "filter_by_filter");
+        if (filterByFilter != null) {
+            filterByFilter.collectDebugInfo(add);
+        }
     }
 
     /**
@@ -34,6 +34,7 @@ import org.codelibs.fesen.search.aggregations.InternalOrder;
 import org.codelibs.fesen.search.aggregations.KeyComparable;
 import org.codelibs.fesen.search.aggregations.bucket.IteratorAndCurrent;
 import org.codelibs.fesen.search.aggregations.bucket.MultiBucketsAggregation;
+import org.codelibs.fesen.search.aggregations.support.SamplingContext;
 
 import java.io.IOException;
 import java.time.Instant;
@@ -443,6 +444,16 @@ public final class InternalDateHistogram extends InternalMultiBucketAggregation<
                 format, keyed, getMetadata());
     }
 
+    @Override
+    public InternalAggregation finalizeSampling(SamplingContext samplingContext) {
+        List<Bucket> scaled = new ArrayList<>(buckets.size());
+        for (Bucket bucket : buckets) {
+            scaled.add(createBucket(bucket.key, samplingContext.scaleUp(bucket.docCount),
+                bucket.aggregations.finalizeSampling(samplingContext)));
+        }
+        return create(scaled);
+    }
+
     @Override
     public XContentBuilder doXContentBody(XContentBuilder builder, Params params) throws IOException {
         if (keyed) {
@@ -33,7 +33,6 @@ import org.codelibs.fesen.search.aggregations.support.CoreValuesSourceType;
 import org.codelibs.fesen.search.aggregations.support.ValuesSourceAggregatorFactory;
 import org.codelibs.fesen.search.aggregations.support.ValuesSourceConfig;
 import org.codelibs.fesen.search.aggregations.support.ValuesSourceRegistry;
-import org.codelibs.fesen.search.aggregations.support.ValuesSource.Numeric;
 import org.codelibs.fesen.search.internal.SearchContext;
 
 public class AbstractRangeAggregatorFactory<R extends Range> extends ValuesSourceAggregatorFactory {
@@ -91,8 +90,7 @@ public class AbstractRangeAggregatorFactory<R extends Range> extends ValuesSourc
             .build(
                 name,
                 factories,
-                (Numeric) config.getValuesSource(),
-                config.format(),
+                config,
                 rangeFactory,
                 ranges,
                 keyed,
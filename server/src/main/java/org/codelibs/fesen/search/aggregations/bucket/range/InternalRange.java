@@ -28,6 +28,7 @@ import org.codelibs.fesen.search.aggregations.InternalAggregation;
 import org.codelibs.fesen.search.aggregations.InternalAggregations;
 import org.codelibs.fesen.search.aggregations.InternalMultiBucketAggregation;
 import org.codelibs.fesen.search.aggregations.support.CoreValuesSourceType;
+import org.codelibs.fesen.search.aggregations.support.SamplingContext;
 import org.codelibs.fesen.search.aggregations.support.ValueType;
 import org.codelibs.fesen.search.aggregations.support.ValuesSourceType;
 
@@ -325,6 +326,16 @@ public class InternalRange<B extends InternalRange.Bucket, R extends InternalRan
         return getFactory().createBucket(prototype.key, prototype.from, prototype.to, docCount, aggs, keyed, format);
     }
 
+    @Override
+    public InternalAggregation finalizeSampling(SamplingContext samplingContext) {
+        final List<B> scaled = new ArrayList<>(ranges.size());
+        for (Bucket range : ranges) {
+            scaled.add(getFactory().createBucket(range.key, range.from, range.to, samplingContext.scaleUp(range.docCount),
+                range.aggregations.finalizeSampling(samplingContext), keyed, format));
+        }
+        return getFactory().create(name, scaled, format, keyed, getMetadata());
+    }
+
     @Override
     public XContentBuilder doXContentBody(XContentBuilder builder, Params params) throws IOException {
         if (keyed) {
@@ -41,16 +41,20 @@ import org.codelibs.fesen.search.aggregations.LeafBucketCollector;
 import org.codelibs.fesen.search.aggregations.LeafBucketCollectorBase;
 import org.codelibs.fesen.search.aggregations.NonCollectingAggregator;
 import org.codelibs.fesen.search.aggregations.bucket.BucketsAggregator;
+import org.codelibs.fesen.search.aggregations.bucket.FilterByFilterRangeCounter;
 import org.codelibs.fesen.search.aggregations.support.ValuesSource;
+import org.codelibs.fesen.search.aggregations.support.ValuesSourceConfig;
 import org.codelibs.fesen.search.internal.SearchContext;
 
 import static org.codelibs.fesen.common.xcontent.ConstructingObjectParser.optionalConstructorArg;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.function.BiConsumer;
 
 public class RangeAggregator extends BucketsAggregator {
 
@@ -223,9 +227,31 @@ public class RangeAggregator extends BucketsAggregator {
 
     final double[] maxTo;
 
+    /**
+     * Counts the documents of each range from the points of the field rather than by collecting them, or {@code null} if the
+     * documents need to be collected.
+     */
+    private final FilterByFilterRangeCounter filterByFilter;
+
+    public RangeAggregator(String name, AggregatorFactories factories, ValuesSourceConfig valuesSourceConfig,
+            InternalRange.Factory rangeFactory, Range[] ranges, boolean keyed, SearchContext context,
+            Aggregator parent, CardinalityUpperBound cardinality, Map<String, Object> metadata) throws IOException {
+        this(name, factories, (ValuesSource.Numeric) valuesSourceConfig.getValuesSource(), valuesSourceConfig.format(), rangeFactory,
+            ranges, keyed, context, parent, cardinality, metadata, FilterByFilterRangeCounter.fromDoubleRanges(context, parent,
+                factories, valuesSourceConfig, Arrays.stream(ranges).mapToDouble(r -> r.from).toArray(),
+                Arrays.stream(ranges).mapToDouble(r -> r.to).toArray()));
+    }
+
     public RangeAggregator(String name, AggregatorFactories factories, ValuesSource.Numeric valuesSource, DocValueFormat format,
             InternalRange.Factory rangeFactory, Range[] ranges, boolean keyed, SearchContext context,
             Aggregator parent, CardinalityUpperBound cardinality, Map<String, Object> metadata) throws IOException {
+        this(name, factories, valuesSource, format, rangeFactory, ranges, keyed, context, parent, cardinality, metadata, null);
+    }
+
+    private RangeAggregator(String name, AggregatorFactories factories, ValuesSource.Numeric valuesSource, DocValueFormat format,
+            InternalRange.Factory rangeFactory, Range[] ranges, boolean keyed, SearchContext context,
+            Aggregator parent, CardinalityUpperBound cardinality, Map<String, Object> metadata,
+            FilterByFilterRangeCounter filterByFilter) throws IOException {
 
         super(name, factories, context, parent, cardinality.multiply(ranges.length), metadata);
         assert valuesSource != null;
@@ -235,6 +261,7 @@ public class RangeAggregator extends BucketsAggregator {
         this.rangeFactory = rangeFactory;
 
         this.ranges = ranges;
+        this.filterByFilter = filterByFilter;
 
         maxTo = new double[this.ranges.length];
         maxTo[0] = this.ranges[0].to;
@@ -255,6 +282,17 @@ public class RangeAggregator extends BucketsAggregator {
     @Override
     public LeafBucketCollector getLeafCollector(LeafReaderContext ctx,
             final LeafBucketCollector sub) throws IOException {
+        if (filterByFilter != null) {
+            final long[] counts = filterByFilter.countSegment(ctx);
+            if (counts != null) {
+                for (int i = 0; i < counts.length; i++) {
+                    if (counts[i] > 0) {
+                        incrementBucketDocCount(subBucketOrdinal(0, i), (int) counts[i]);
+                    }
+                }
+                return LeafBucketCollector.NO_OP_COLLECTOR;
+            }
+        }
         final SortedNumericDoubleValues values = valuesSource.doubleValues(ctx);
         return new LeafBucketCollectorBase(sub, values) {
             @Override
@@ -332,6 +370,14 @@ public class RangeAggregator extends BucketsAggregator {
             }, buckets -> rangeFactory.create(name, buckets, format, keyed, metadata()));
     }
 
+    @Override
+    public void collectDebugInfo(BiConsumer<String, Object> add) {
+        add.accept("strategy", filterByFilter == null ? "collect" : "filter_by_filter");
+        if (filterByFilter != null) {
+            filterByFilter.collectDebugInfo(add);
+        }
+    }
+
     @Override
     public InternalAggregation buildEmptyAggregation() {
         InternalAggregations subAggs = buildEmptySubAggregations();
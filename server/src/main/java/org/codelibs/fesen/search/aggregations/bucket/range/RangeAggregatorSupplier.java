@@ -21,18 +21,16 @@ package org.codelibs.fesen.search.aggregations.bucket.range;
 import java.io.IOException;
 import java.util.Map;
 
-import org.codelibs.fesen.search.DocValueFormat;
 import org.codelibs.fesen.search.aggregations.Aggregator;
 import org.codelibs.fesen.search.aggregations.AggregatorFactories;
 import org.codelibs.fesen.search.aggregations.CardinalityUpperBound;
-import org.codelibs.fesen.search.aggregations.support.ValuesSource;
+import org.codelibs.fesen.search.aggregations.support.ValuesSourceConfig;
 import org.codelibs.fesen.search.internal.SearchContext;
 
 public interface RangeAggregatorSupplier {
     Aggregator build(String name,
                      AggregatorFactories factories,
-                     ValuesSource.Numeric valuesSource,
-                     DocValueFormat format,
+                     ValuesSourceConfig valuesSourceConfig,
                      InternalRange.Factory rangeFactory,
                      RangeAggregator.Range[] ranges,
                      boolean keyed,
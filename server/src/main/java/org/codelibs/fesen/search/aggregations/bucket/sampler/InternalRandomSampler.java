@@ -0,0 +1,124 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.codelibs.fesen.search.aggregations.bucket.sampler;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import org.codelibs.fesen.common.io.stream.StreamInput;
+import org.codelibs.fesen.common.io.stream.StreamOutput;
+import org.codelibs.fesen.common.xcontent.XContentBuilder;
+import org.codelibs.fesen.search.aggregations.InternalAggregation;
+import org.codelibs.fesen.search.aggregations.InternalAggregations;
+import org.codelibs.fesen.search.aggregations.bucket.InternalSingleBucketAggregation;
+import org.codelibs.fesen.search.aggregations.support.SamplingContext;
+
+/**
+ * Result of the {@code random_sampler} aggregation. Until the final reduction the doc count
+ * and the sub-aggregations are those of the sampled documents, the final reduction scales
+ * them up by the inverse of the sampling probability.
+ */
+public class InternalRandomSampler extends InternalSingleBucketAggregation implements RandomSampler {
+    public static final String NAME = "random_sampler";
+
+    private final int seed;
+    private final double probability;
+
+    InternalRandomSampler(String name, long docCount, int seed, double probability, InternalAggregations subAggregations,
+                          Map<String, Object> metadata) {
+        super(name, docCount, subAggregations, metadata);
+        this.seed = seed;
+        this.probability = probability;
+    }
+
+    /**
+     * Read from a stream.
+     */
+    public InternalRandomSampler(StreamInput in) throws IOException {
+        super(in);
+        seed = in.readInt();
+        probability = in.readDouble();
+    }
+
+    @Override
+    protected void doWriteTo(StreamOutput out) throws IOException {
+        super.doWriteTo(out);
+        out.writeInt(seed);
+        out.writeDouble(probability);
+    }
+
+    @Override
+    public String getWriteableName() {
+        return NAME;
+    }
+
+    public int getSeed() {
+        return seed;
+    }
+
+    public double getProbability() {
+        return probability;
+    }
+
+    @Override
+    protected InternalSingleBucketAggregation newAggregation(String name, long docCount, InternalAggregations subAggregations) {
+        return new InternalRandomSampler(name, docCount, seed, probability, subAggregations, metadata);
+    }
+
+    @Override
+    public InternalAggregation reduce(List<InternalAggregation> aggregations, ReduceContext reduceContext) {
+        InternalAggregation reduced = super.reduce(aggregations, reduceContext);
+        if (reduceContext.isFinalReduce()) {
+            return reduced.finalizeSampling(new SamplingContext(probability));
+        }
+        return reduced;
+    }
+
+    /**
+     * The standard error of the scaled doc count. The number {@code n} of sampled documents
+     * follows a binomial distribution, so the error of {@code n / p} is about {@code sqrt(n * (1 - p)) / p}.
+     */
+    public double getDocCountStandardError() {
+        return Math.sqrt(getDocCount() * (1 - probability) / probability);
+    }
+
+    @Override
+    public XContentBuilder doXContentBody(XContentBuilder builder, Params params) throws IOException {
+        builder.field(RandomSamplerAggregationBuilder.PROBABILITY_FIELD.getPreferredName(), probability);
+        builder.field(RandomSamplerAggregationBuilder.SEED_FIELD.getPreferredName(), seed);
+        builder.field("doc_count_standard_error", getDocCountStandardError());
+        return super.doXContentBody(builder, params);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null || getClass() != obj.getClass()) return false;
+        if (super.equals(obj) == false) return false;
+        InternalRandomSampler other = (InternalRandomSampler) obj;
+        return seed == other.seed && probability == other.probability;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(super.hashCode(), seed, probability);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.codelibs.fesen.search.aggregations.bucket.sampler;
+
+import org.codelibs.fesen.common.xcontent.XContentBuilder;
+import org.codelibs.fesen.common.xcontent.XContentParser;
+import org.codelibs.fesen.search.aggregations.bucket.ParsedSingleBucketAggregation;
+
+import java.io.IOException;
+
+public class ParsedRandomSampler extends ParsedSingleBucketAggregation implements RandomSampler {
+
+    private static final String DOC_COUNT_STANDARD_ERROR = "doc_count_standard_error";
+
+    private double probability;
+    private int seed;
+    private double docCountStandardError;
+
+    @Override
+    public String getType() {
+        return RandomSamplerAggregationBuilder.NAME;
+    }
+
+    public double getProbability() {
+        return probability;
+    }
+
+    public int getSeed() {
+        return seed;
+    }
+
+    public double getDocCountStandardError() {
+        return docCountStandardError;
+    }
+
+    @Override
+    protected void parseValue(String fieldName, XContentParser parser) throws IOException {
+        if (RandomSamplerAggregationBuilder.PROBABILITY_FIELD.getPreferredName().equals(fieldName)) {
+            probability = parser.doubleValue();
+        } else if (RandomSamplerAggregationBuilder.SEED_FIELD.getPreferredName().equals(fieldName)) {
+            seed = parser.intValue();
+        } else if (DOC_COUNT_STANDARD_ERROR.equals(fieldName)) {
+            docCountStandardError = parser.doubleValue();
+        }
+    }
+
+    @Override
+    public XContentBuilder doXContentBody(XContentBuilder builder, Params params) throws IOException {
+        builder.field(RandomSamplerAggregationBuilder.PROBABILITY_FIELD.getPreferredName(), probability);
+        builder.field(RandomSamplerAggregationBuilder.SEED_FIELD.getPreferredName(), seed);
+        builder.field(DOC_COUNT_STANDARD_ERROR, docCountStandardError);
+        return super.doXContentBody(builder, params);
+    }
+
+    public static ParsedRandomSampler fromXContent(XContentParser parser, final String name) throws IOException {
+        return parseXContent(parser, new ParsedRandomSampler(), name);
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.codelibs.fesen.search.aggregations.bucket.sampler;
+
+import org.codelibs.fesen.common.ParseField;
+import org.codelibs.fesen.common.ParsingException;
+import org.codelibs.fesen.common.Randomness;
+import org.codelibs.fesen.common.io.stream.StreamInput;
+import org.codelibs.fesen.common.io.stream.StreamOutput;
+import org.codelibs.fesen.common.xcontent.XContentBuilder;
+import org.codelibs.fesen.common.xcontent.XContentParser;
+import org.codelibs.fesen.index.query.QueryShardContext;
+import org.codelibs.fesen.search.aggregations.AbstractAggregationBuilder;
+import org.codelibs.fesen.search.aggregations.AggregationBuilder;
+import org.codelibs.fesen.search.aggregations.AggregatorFactory;
+import org.codelibs.fesen.search.aggregations.AggregatorFactories.Builder;
+import org.codelibs.fesen.search.aggregations.bucket.filter.FilterAggregationBuilder;
+import org.codelibs.fesen.search.aggregations.bucket.histogram.DateHistogramAggregationBuilder;
+import org.codelibs.fesen.search.aggregations.bucket.histogram.HistogramAggregationBuilder;
+import org.codelibs.fesen.search.aggregations.bucket.missing.MissingAggregationBuilder;
+import org.codelibs.fesen.search.aggregations.bucket.nested.NestedAggregationBuilder;
+import org.codelibs.fesen.search.aggregations.bucket.nested.ReverseNestedAggregationBuilder;
+import org.codelibs.fesen.search.aggregations.bucket.range.DateRangeAggregationBuilder;
+import org.codelibs.fesen.search.aggregations.bucket.range.GeoDistanceAggregationBuilder;
+import org.codelibs.fesen.search.aggregations.bucket.range.RangeAggregationBuilder;
+import org.codelibs.fesen.search.aggregations.bucket.terms.TermsAggregationBuilder;
+import org.codelibs.fesen.search.aggregations.metrics.AvgAggregationBuilder;
+import org.codelibs.fesen.search.aggregations.metrics.ExtendedStatsAggregationBuilder;
+import org.codelibs.fesen.search.aggregations.metrics.GeoBoundsAggregationBuilder;
+import org.codelibs.fesen.search.aggregations.metrics.MaxAggregationBuilder;
+import org.codelibs.fesen.search.aggregations.metrics.MinAggregationBuilder;
+import org.codelibs.fesen.search.aggregations.metrics.StatsAggregationBuilder;
+import org.codelibs.fesen.search.aggregations.metrics.SumAggregationBuilder;
+import org.codelibs.fesen.search.aggregations.metrics.ValueCountAggregationBuilder;
+import org.codelibs.fesen.search.aggregations.metrics.WeightedAvgAggregationBuilder;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+public class RandomSamplerAggregationBuilder extends AbstractAggregationBuilder<RandomSamplerAggregationBuilder> {
+    public static final String NAME = "random_sampler";
+
+    static final ParseField PROBABILITY_FIELD = new ParseField("probability");
+    static final ParseField SEED_FIELD = new ParseField("seed");
+
+    /**
+     * The types of the aggregations that know how to scale their results up from the sample to all the documents,
+     * see {@link org.codelibs.fesen.search.aggregations.InternalAggregation#finalizeSampling}. Aggregations like
+     * cardinality, percentiles or significant_terms can't be extrapolated from a sample and are rejected, and so are the
+     * sampler and diversified_sampler aggregations whose doc counts aren't scaled.
+     */
+    static final Set<String> SUPPORTED_SUB_AGGREGATIONS = Set.of(
+        FilterAggregationBuilder.NAME, MissingAggregationBuilder.NAME, NestedAggregationBuilder.NAME,
+        ReverseNestedAggregationBuilder.NAME, TermsAggregationBuilder.NAME, HistogramAggregationBuilder.NAME,
+        DateHistogramAggregationBuilder.NAME, RangeAggregationBuilder.NAME, DateRangeAggregationBuilder.NAME,
+        GeoDistanceAggregationBuilder.NAME, SumAggregationBuilder.NAME, ValueCountAggregationBuilder.NAME,
+        StatsAggregationBuilder.NAME, ExtendedStatsAggregationBuilder.NAME, MinAggregationBuilder.NAME, MaxAggregationBuilder.NAME,
+        AvgAggregationBuilder.NAME, WeightedAvgAggregationBuilder.NAME, GeoBoundsAggregationBuilder.NAME);
+
+    private final double probability;
+    private int seed = Randomness.get().nextInt();
+
+    public RandomSamplerAggregationBuilder(String name, double probability) {
+        super(name);
+        if (probability <= 0 || probability > 1) {
+            throw new IllegalArgumentException("[" + PROBABILITY_FIELD.getPreferredName() + "] must be greater than 0 and "
+                + "less than or equal to 1 in [" + name + "] but was [" + probability + "]");
+        }
+        this.probability = probability;
+    }
+
+    protected RandomSamplerAggregationBuilder(RandomSamplerAggregationBuilder clone, Builder factoriesBuilder,
+                                              Map<String, Object> metadata) {
+        super(clone, factoriesBuilder, metadata);
+        this.probability = clone.probability;
+        this.seed = clone.seed;
+    }
+
+    @Override
+    protected AggregationBuilder shallowCopy(Builder factoriesBuilder, Map<String, Object> metadata) {
+        return new RandomSamplerAggregationBuilder(this, factoriesBuilder, metadata);
+    }
+
+    /**
+     * Read from a stream.
+     */
+    public RandomSamplerAggregationBuilder(StreamInput in) throws IOException {
+        super(in);
+        probability = in.readDouble();
+        seed = in.readInt();
+    }
+
+    @Override
+    protected void doWriteTo(StreamOutput out) throws IOException {
+        out.writeDouble(probability);
+        out.writeInt(seed);
+    }
+
+    /**
+     * Get the probability with which each matching document is sampled.
+     */
+    public double probability() {
+        return probability;
+    }
+
+    /**
+     * Set the seed of the sample. Requests with the same seed sample the same
+     * documents as long as the shards haven't changed.
+     */
+    public RandomSamplerAggregationBuilder seed(int seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Get the seed of the sample.
+     */
+    public int seed() {
+        return seed;
+    }
+
+    @Override
+    public RandomSamplerAggregationBuilder subAggregation(AggregationBuilder aggregation) {
+        if (aggregation != null) {
+            validateSubAggregations(name, Collections.singleton(aggregation));
+        }
+        return super.subAggregation(aggregation);
+    }
+
+    @Override
+    public RandomSamplerAggregationBuilder subAggregations(Builder subFactories) {
+        if (subFactories != null) {
+            validateSubAggregations(name, subFactories.getAggregatorFactories());
+        }
+        return super.subAggregations(subFactories);
+    }
+
+    private static void validateSubAggregations(String name, Collection<AggregationBuilder> aggregations) {
+        for (AggregationBuilder aggregation : aggregations) {
+            if (SUPPORTED_SUB_AGGREGATIONS.contains(aggregation.getType()) == false) {
+                throw new IllegalArgumentException("[" + NAME + "] aggregation [" + name + "] doesn't support sub-aggregation ["
+                    + aggregation.getName() + "] of type [" + aggregation.getType() + "]");
+            }
+            validateSubAggregations(name, aggregation.getSubAggregations());
+        }
+    }
+
+    @Override
+    public BucketCardinality bucketCardinality() {
+        return BucketCardinality.ONE;
+    }
+
+    @Override
+    protected RandomSamplerAggregatorFactory doBuild(QueryShardContext queryShardContext, AggregatorFactory parent,
+                                                     Builder subFactoriesBuilder) throws IOException {
+        // sub-aggregations read from a stream or added to a child after the fact haven't been validated yet
+        validateSubAggregations(name, subFactoriesBuilder.getAggregatorFactories());
+        return new RandomSamplerAggregatorFactory(name, seed, probability, queryShardContext, parent, subFactoriesBuilder, metadata);
+    }
+
+    @Override
+    protected XContentBuilder internalXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject();
+        builder.field(PROBABILITY_FIELD.getPreferredName(), probability);
+        builder.field(SEED_FIELD.getPreferredName(), seed);
+        builder.endObject();
+        return builder;
+    }
+
+    public static RandomSamplerAggregationBuilder parse(String aggregationName, XContentParser parser) throws IOException {
+        XContentParser.Token token;
+        String currentFieldName = null;
+        Double probability = null;
+        Integer seed = null;
+
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            if (token == XContentParser.Token.FIELD_NAME) {
+                currentFieldName = parser.currentName();
+            } else if (token == XContentParser.Token.VALUE_NUMBER) {
+                if (PROBABILITY_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    probability = parser.doubleValue();
+                } else if (SEED_FIELD.match(currentFieldName, parser.getDeprecationHandler())) {
+                    seed = parser.intValue();
+                } else {
+                    throw new ParsingException(parser.getTokenLocation(),
+                            "Unsupported property \"" + currentFieldName + "\" for aggregation \"" + aggregationName);
+                }
+            } else {
+                throw new ParsingException(parser.getTokenLocation(),
+                        "Unsupported property \"" + currentFieldName + "\" for aggregation \"" + aggregationName);
+            }
+        }
+
+        if (probability == null) {
+            throw new ParsingException(parser.getTokenLocation(),
+                    "Missing required property \"" + PROBABILITY_FIELD.getPreferredName() + "\" for aggregation \"" + aggregationName);
+        }
+        RandomSamplerAggregationBuilder factory = new RandomSamplerAggregationBuilder(aggregationName, probability);
+        if (seed != null) {
+            factory.seed(seed);
+        }
+        return factory;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(super.hashCode(), probability, seed);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) return true;
+        if (obj == null || getClass() != obj.getClass()) return false;
+        if (super.equals(obj) == false) return false;
+        RandomSamplerAggregationBuilder other = (RandomSamplerAggregationBuilder) obj;
+        return Objects.equals(probability, other.probability)
+            && Objects.equals(seed, other.seed);
+    }
+
+    @Override
+    public String getType() {
+        return NAME;
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.codelibs.fesen.search.aggregations.bucket.sampler;
+
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.search.CollectionTerminatedException;
+import org.apache.lucene.search.ConjunctionDISI;
+import org.apache.lucene.search.ConstantScoreScorer;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.Bits;
+import org.codelibs.fesen.search.aggregations.Aggregator;
+import org.codelibs.fesen.search.aggregations.AggregatorFactories;
+import org.codelibs.fesen.search.aggregations.CardinalityUpperBound;
+import org.codelibs.fesen.search.aggregations.InternalAggregation;
+import org.codelibs.fesen.search.aggregations.LeafBucketCollector;
+import org.codelibs.fesen.search.aggregations.LeafBucketCollectorBase;
+import org.codelibs.fesen.search.aggregations.bucket.BucketsAggregator;
+import org.codelibs.fesen.search.aggregations.bucket.SingleBucketAggregator;
+import org.codelibs.fesen.search.internal.ContextIndexSearcher;
+import org.codelibs.fesen.search.internal.SearchContext;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Aggregate a uniform random sample of the docs that match the query. Each matching doc is
+ * kept with the configured probability, independently of the other docs. When the sampler is a top
+ * level aggregation, it intersects the query with the sample instead of collecting every matching
+ * doc, so the docs that aren't sampled are skipped rather than matched and then dropped.
+ */
+public class RandomSamplerAggregator extends BucketsAggregator implements SingleBucketAggregator {
+
+    /**
+     * The number of sampled docs between two checks for cancellation or timeout, the same as the searcher uses when it collects.
+     */
+    private static final int CHECK_CANCELLED_INTERVAL = 1 << 11;
+
+    private final int seed;
+    private final double probability;
+    private final long shardSeed;
+    private final boolean intersectQuery;
+    private Weight queryWeight;
+
+    RandomSamplerAggregator(String name,
+                            int seed,
+                            double probability,
+                            AggregatorFactories factories,
+                            SearchContext context,
+                            Aggregator parent,
+                            CardinalityUpperBound cardinality,
+                            Map<String, Object> metadata) throws IOException {
+        super(name, factories, context, parent, cardinality, metadata);
+        this.seed = seed;
+        this.probability = probability;
+        // different shards of the same index must not sample the same doc ids
+        this.shardSeed = 31L * seed + context.indexShard().shardId().hashCode();
+        // the query alone must decide which docs are collected, and the sub-aggregations must not need the scores
+        this.intersectQuery = parent == null && context.query() != null && context.minimumScore() == null
+            && context.terminateAfter() == SearchContext.DEFAULT_TERMINATE_AFTER && scoreMode().needsScores() == false;
+    }
+
+    @Override
+    public LeafBucketCollector getLeafCollector(LeafReaderContext ctx, final LeafBucketCollector sub) throws IOException {
+        // seeded by the ord of the segment so that the sample doesn't depend on how segments are sliced
+        final RandomSamplingIterator sample = new RandomSamplingIterator(ctx.reader().maxDoc(), probability, 31L * shardSeed + ctx.ord);
+        if (intersectQuery) {
+            collectSample(ctx, sample, sub);
+            // the sampled docs have been collected, we don't need to collect the hits of this segment.
+            throw new CollectionTerminatedException();
+        }
+        return new LeafBucketCollectorBase(sub, null) {
+            @Override
+            public void collect(int doc, long bucket) throws IOException {
+                if (sample.docID() < doc) {
+                    sample.advance(doc);
+                }
+                if (sample.docID() == doc) {
+                    collectBucket(sub, doc, bucket);
+                }
+            }
+        };
+    }
+
+    private void collectSample(LeafReaderContext ctx, RandomSamplingIterator sample, LeafBucketCollector sub) throws IOException {
+        if (queryWeight == null) {
+            queryWeight = context.searcher().createWeight(context.searcher().rewrite(context.query()), ScoreMode.COMPLETE_NO_SCORES, 1f);
+        }
+        final Scorer scorer = queryWeight.scorer(ctx);
+        if (scorer == null) {
+            return;
+        }
+        final DocIdSetIterator docs = ConjunctionDISI.intersectScorers(Arrays.asList(scorer,
+            new ConstantScoreScorer(queryWeight, 1f, ScoreMode.COMPLETE_NO_SCORES, sample)));
+        final Bits liveDocs = ctx.reader().getLiveDocs();
+        // the sample is collected outside of the searcher, so it has to check for cancellation and timeout itself
+        final ContextIndexSearcher searcher = context.searcher();
+        final Runnable checkCancelled = searcher.hasCancellations() ? searcher::checkCancelled : () -> {};
+        checkCancelled.run();
+        int seen = 0;
+        for (int doc = docs.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = docs.nextDoc()) {
+            if (++seen % CHECK_CANCELLED_INTERVAL == 0) {
+                checkCancelled.run();
+            }
+            if (liveDocs == null || liveDocs.get(doc)) {
+                collectBucket(sub, doc, 0);
+            }
+        }
+    }
+
+    @Override
+    public InternalAggregation[] buildAggregations(long[] owningBucketOrds) throws IOException {
+        return buildAggregationsForSingleBucket(owningBucketOrds, (owningBucketOrd, subAggregationResults) ->
+            new InternalRandomSampler(name, bucketDocCount(owningBucketOrd), seed, probability, subAggregationResults, metadata()));
+    }
+
+    @Override
+    public InternalAggregation buildEmptyAggregation() {
+        return new InternalRandomSampler(name, 0, seed, probability, buildEmptySubAggregations(), metadata());
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.codelibs.fesen.search.aggregations.bucket.sampler;
+
+import org.apache.lucene.search.DocIdSetIterator;
+
+import java.util.SplittableRandom;
+
+/**
+ * A {@link DocIdSetIterator} over a Bernoulli sample of the doc ids of a segment. Rather than
+ * drawing a random number for every document, the gap to the next sampled document is drawn
+ * from the geometric distribution, so the cost is proportional to the number of sampled documents.
+ */
+final class RandomSamplingIterator extends DocIdSetIterator {
+
+    private final int maxDoc;
+    private final double probability;
+    private final double logOneMinusProbability;
+    private final SplittableRandom random;
+    private int doc = -1;
+
+    RandomSamplingIterator(int maxDoc, double probability, long seed) {
+        assert probability > 0 && probability <= 1 : probability;
+        this.maxDoc = maxDoc;
+        this.probability = probability;
+        this.logOneMinusProbability = Math.log1p(-probability);
+        this.random = new SplittableRandom(seed);
+    }
+
+    @Override
+    public int docID() {
+        return doc;
+    }
+
+    @Override
+    public int nextDoc() {
+        return advance(doc + 1);
+    }
+
+    /**
+     * The geometric distribution is memoryless, so the next sampled document at or after
+     * {@code target} can be drawn without replaying the gaps between the current document
+     * and {@code target}.
+     */
+    @Override
+    public int advance(int target) {
+        final long next = (long) target + gap();
+        doc = next >= maxDoc ? NO_MORE_DOCS : (int) next;
+        return doc;
+    }
+
+    private long gap() {
+        if (probability == 1) {
+            return 0;
+        }
+        // 1 - nextDouble() is in (0, 1] so that the logarithm is always finite
+        final double gap = Math.floor(Math.log(1 - random.nextDouble()) / logOneMinusProbability);
+        return gap >= maxDoc ? maxDoc : (long) gap;
+    }
+
+    @Override
+    public long cost() {
+        return (long) Math.ceil(maxDoc * probability);
+    }
+}
@@ -39,6 +39,12 @@ public class SamplerAggregatorFactory extends AggregatorFactory {
         this.shardSize = shardSize;
     }
 
+    @Override
+    public boolean supportsConcurrentSegmentSearch() {
+        // the sample is made of the best scoring documents of the whole shard
+        return false;
+    }
+
     @Override
     public Aggregator createInternal(SearchContext searchContext,
                                         Aggregator parent,
@@ -192,6 +192,25 @@ public class GlobalOrdinalsStringTermsAggregator extends AbstractStringTermsAggr
         });
     }
 
+    @Override
+    public boolean canMergeSlice(Aggregator slice) {
+        // global ordinals are shared by all the slices of the shard but the bucket ordinals of sub-aggregations are not
+        return slice.getClass() == getClass()
+            && parent == null
+            && subAggregators.length == 0
+            && resultStrategy instanceof StandardTermsResults
+            && collectionStrategy.getClass() == ((GlobalOrdinalsStringTermsAggregator) slice).collectionStrategy.getClass();
+    }
+
+    @Override
+    public void mergeSlice(Aggregator slice) throws IOException {
+        assert canMergeSlice(slice);
+        GlobalOrdinalsStringTermsAggregator other = (GlobalOrdinalsStringTermsAggregator) slice;
+        other.collectionStrategy.forEachCollected(
+            (globalOrd, bucketOrd, docCount) -> incrementBucketDocCount(collectionStrategy.addGlobalOrd(0, globalOrd), (int) docCount)
+        );
+    }
+
     @Override
     public InternalAggregation[] buildAggregations(long[] owningBucketOrds) throws IOException {
         return resultStrategy.buildAggregations(owningBucketOrds);
@@ -411,6 +430,16 @@ public class GlobalOrdinalsStringTermsAggregator extends AbstractStringTermsAggr
          * they'll skip all global ords that weren't collected.
          */
         abstract void forEach(long owningBucketOrd, BucketInfoConsumer consumer) throws IOException;
+        /**
+         * Convert a global ordinal of a top level aggregator into a bucket
+         * ordinal, assigning a new bucket ordinal if it wasn't collected yet.
+         */
+        abstract long addGlobalOrd(long owningBucketOrd, long globalOrd);
+        /**
+         * Iterate the buckets of a top level aggregator that collected at
+         * least one document, regardless of the {@link BucketCountThresholds}.
+         */
+        abstract void forEachCollected(BucketInfoConsumer consumer) throws IOException;
     }
     interface BucketInfoConsumer {
         void accept(long globalOrd, long bucketOrd, long docCount) throws IOException;
@@ -460,6 +489,22 @@ public class GlobalOrdinalsStringTermsAggregator extends AbstractStringTermsAggr
             }
         }
 
+        @Override
+        long addGlobalOrd(long owningBucketOrd, long globalOrd) {
+            assert owningBucketOrd == 0;
+            return globalOrd;
+        }
+
+        @Override
+        void forEachCollected(BucketInfoConsumer consumer) throws IOException {
+            for (long globalOrd = 0; globalOrd < maxBucketOrd(); globalOrd++) {
+                long docCount = bucketDocCount(globalOrd);
+                if (docCount > 0) {
+                    consumer.accept(globalOrd, globalOrd, docCount);
+                }
+            }
+        }
+
         @Override
         public void close() {}
     }
@@ -541,6 +586,20 @@ public class GlobalOrdinalsStringTermsAggregator extends AbstractStringTermsAggr
             }
         }
 
+        @Override
+        long addGlobalOrd(long owningBucketOrd, long globalOrd) {
+            long bucketOrd = bucketOrds.add(owningBucketOrd, globalOrd);
+            return bucketOrd < 0 ? -1 - bucketOrd : bucketOrd;
+        }
+
+        @Override
+        void forEachCollected(BucketInfoConsumer consumer) throws IOException {
+            LongKeyedBucketOrds.BucketOrdsEnum ordsEnum = bucketOrds.ordsEnum(0);
+            while (ordsEnum.next()) {
+                consumer.accept(ordsEnum.value(), ordsEnum.ord(), bucketDocCount(ordsEnum.ord()));
+            }
+        }
+
         @Override
         public void close() {
             bucketOrds.close();
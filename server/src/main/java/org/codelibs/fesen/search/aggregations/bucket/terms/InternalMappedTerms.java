@@ -24,8 +24,11 @@ import org.codelibs.fesen.common.io.stream.StreamOutput;
 import org.codelibs.fesen.common.xcontent.XContentBuilder;
 import org.codelibs.fesen.search.DocValueFormat;
 import org.codelibs.fesen.search.aggregations.BucketOrder;
+import org.codelibs.fesen.search.aggregations.InternalAggregation;
+import org.codelibs.fesen.search.aggregations.support.SamplingContext;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -113,6 +116,18 @@ public abstract class InternalMappedTerms<A extends InternalTerms<A, B>, B exten
         return bucketMap.get(term);
     }
 
+    @Override
+    public InternalAggregation finalizeSampling(SamplingContext samplingContext) {
+        List<B> scaled = new ArrayList<>(buckets.size());
+        for (B bucket : buckets) {
+            long bucketDocCountError = bucket.docCountError == -1 ? -1 : samplingContext.scaleUp(bucket.docCountError);
+            scaled.add(createBucket(samplingContext.scaleUp(bucket.docCount), bucket.aggregations.finalizeSampling(samplingContext),
+                bucketDocCountError, bucket));
+        }
+        return create(name, scaled, reduceOrder, docCountError == -1 ? -1 : samplingContext.scaleUp(docCountError),
+            samplingContext.scaleUp(otherDocCount));
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (this == obj) return true;
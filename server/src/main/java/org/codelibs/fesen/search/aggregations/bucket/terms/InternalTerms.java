@@ -23,6 +23,7 @@ import org.codelibs.fesen.Version;
 import org.codelibs.fesen.common.ParseField;
 import org.codelibs.fesen.common.io.stream.StreamInput;
 import org.codelibs.fesen.common.io.stream.StreamOutput;
+import org.codelibs.fesen.common.io.stream.Writeable;
 import org.codelibs.fesen.common.xcontent.XContentBuilder;
 import org.codelibs.fesen.search.DocValueFormat;
 import org.codelibs.fesen.search.aggregations.AggregationExecutionException;
@@ -35,6 +36,7 @@ import org.codelibs.fesen.search.aggregations.InternalOrder;
 import org.codelibs.fesen.search.aggregations.KeyComparable;
 import org.codelibs.fesen.search.aggregations.bucket.IteratorAndCurrent;
 import org.codelibs.fesen.search.aggregations.bucket.MultiBucketsAggregation;
+import org.codelibs.fesen.search.aggregations.bucket.SpilledBucketRuns;
 
 import static org.codelibs.fesen.search.aggregations.InternalOrder.isKeyAsc;
 import static org.codelibs.fesen.search.aggregations.InternalOrder.isKeyOrder;
@@ -47,6 +49,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.function.Consumer;
 
 public abstract class InternalTerms<A extends InternalTerms<A, B>, B extends InternalTerms.Bucket<B>>
         extends InternalMultiBucketAggregation<A, B> implements Terms {
@@ -306,6 +309,85 @@ public abstract class InternalTerms<A extends InternalTerms<A, B>, B extends Int
         return reducedBuckets;
     }
 
+    /**
+     * Offers a reduced bucket to the final priority queue.
+     * @return the doc count of the bucket that was evicted from the queue, if any
+     */
+    private long addToFinalQueue(B bucket, BucketPriorityQueue<B> ordered, long sumDocCountError, ReduceContext reduceContext) {
+        if (sumDocCountError == -1) {
+            bucket.docCountError = -1;
+        } else {
+            bucket.docCountError += sumDocCountError;
+        }
+        if (bucket.docCount >= minDocCount) {
+            B removed = ordered.insertWithOverflow(bucket);
+            if (removed != null) {
+                reduceContext.consumeBucketsAndMaybeBreak(-countInnerBucket(removed));
+                return removed.getDocCount();
+            } else {
+                reduceContext.consumeBucketsAndMaybeBreak(1);
+            }
+        } else {
+            reduceContext.consumeBucketsAndMaybeBreak(-countInnerBucket(bucket));
+        }
+        return 0;
+    }
+
+    private static long countBuckets(List<InternalAggregation> aggregations) {
+        long count = 0;
+        for (InternalAggregation aggregation : aggregations) {
+            count += ((InternalTerms<?, ?>) aggregation).getBuckets().size();
+        }
+        return count;
+    }
+
+    /**
+     * Writes the buckets of every aggregation to a run on local disk, sorted by key, and
+     * merges the runs back one term at a time. This replaces the per term map of
+     * {@link #reduceLegacy} and the fully reduced list of {@link #reduceMergeSort}, so
+     * only the buckets that make it into the final queue stay on heap.
+     * @return {@code false}, without passing any bucket to the consumer, if the runs don't fit in the disk budget
+     */
+    private boolean reduceSpilled(List<InternalAggregation> aggregations, BucketOrder thisReduceOrder,
+                                  ReduceContext reduceContext, Consumer<B> consumer) {
+        final boolean sortedByKey = isKeyOrder(thisReduceOrder);
+        final Comparator<MultiBucketsAggregation.Bucket> cmp = sortedByKey
+            ? thisReduceOrder.comparator()
+            : InternalOrder.key(true).comparator();
+        try (SpilledBucketRuns<B> runs = reduceContext.newSpilledBucketRuns(cmp)) {
+            for (InternalAggregation aggregation : aggregations) {
+                @SuppressWarnings("unchecked")
+                InternalTerms<A, B> terms = (InternalTerms<A, B>) aggregation;
+                if (terms.getBuckets().isEmpty()) {
+                    continue;
+                }
+                List<B> buckets = terms.getBuckets();
+                if (sortedByKey == false) {
+                    buckets = new ArrayList<>(buckets);
+                    buckets.sort(cmp);
+                }
+                if (runs.addRun(buckets, terms.spilledBucketReader()) == false) {
+                    return false;
+                }
+            }
+            runs.merge(sameTerm -> {
+                consumer.accept(reduceBucket(sameTerm, reduceContext));
+                return true;
+            });
+            return true;
+        } catch (IOException e) {
+            throw new AggregationExecutionException("failed to spill the buckets of [" + name + "] to disk", e);
+        }
+    }
+
+    private List<B> reduceOnHeap(List<InternalAggregation> aggregations, BucketOrder thisReduceOrder, ReduceContext reduceContext) {
+        if (isKeyOrder(thisReduceOrder)) {
+            return reduceMergeSort(aggregations, thisReduceOrder, reduceContext);
+        } else {
+            return reduceLegacy(aggregations, reduceContext);
+        }
+    }
+
     private List<B> reduceLegacy(List<InternalAggregation> aggregations, ReduceContext reduceContext) {
         Map<Object, List<B>> bucketMap = new HashMap<>();
         for (InternalAggregation aggregation : aggregations) {
@@ -371,7 +453,6 @@ public abstract class InternalTerms<A extends InternalTerms<A, B>, B extends Int
             }
         }
 
-        final List<B> reducedBuckets;
         /**
          * Buckets returned by a partial reduce or a shard response are sorted by key since {@link Version#V_7_10_0}.
          * That allows to perform a merge sort when reducing multiple aggregations together.
@@ -382,31 +463,29 @@ public abstract class InternalTerms<A extends InternalTerms<A, B>, B extends Int
         if (isKeyOrder(thisReduceOrder)) {
             // extract the primary sort in case this is a compound order.
             thisReduceOrder = InternalOrder.key(isKeyAsc(thisReduceOrder) ? true : false);
-            reducedBuckets = reduceMergeSort(aggregations, thisReduceOrder, reduceContext);
-        } else {
-            reducedBuckets = reduceLegacy(aggregations, reduceContext);
         }
         final B[] list;
         if (reduceContext.isFinalReduce()) {
-            final int size = Math.min(requiredSize, reducedBuckets.size());
-            // final comparator
-            final BucketPriorityQueue<B> ordered = new BucketPriorityQueue<>(size, order.comparator());
-            for (B bucket : reducedBuckets) {
-                if (sumDocCountError == -1) {
-                    bucket.docCountError = -1;
-                } else {
-                    bucket.docCountError += sumDocCountError;
+            final long bucketCount = countBuckets(aggregations);
+            BucketPriorityQueue<B> ordered = null;
+            if (reduceContext.shouldSpillBuckets(bucketCount)) {
+                // the spilled runs are merged straight into the final priority queue
+                final BucketPriorityQueue<B> spilledQueue = new BucketPriorityQueue<>((int) Math.min(requiredSize, bucketCount),
+                    order.comparator());
+                final long finalSumDocCountError = sumDocCountError;
+                final long[] evictedDocCount = new long[1];
+                if (reduceSpilled(aggregations, thisReduceOrder, reduceContext,
+                        bucket -> evictedDocCount[0] += addToFinalQueue(bucket, spilledQueue, finalSumDocCountError, reduceContext))) {
+                    ordered = spilledQueue;
+                    otherDocCount += evictedDocCount[0];
                 }
-                if (bucket.docCount >= minDocCount) {
-                    B removed = ordered.insertWithOverflow(bucket);
-                    if (removed != null) {
-                        otherDocCount += removed.getDocCount();
-                        reduceContext.consumeBucketsAndMaybeBreak(-countInnerBucket(removed));
-                    } else {
-                        reduceContext.consumeBucketsAndMaybeBreak(1);
-                    }
-                } else {
-                    reduceContext.consumeBucketsAndMaybeBreak(-countInnerBucket(bucket));
+            }
+            if (ordered == null) {
+                final List<B> reducedBuckets = reduceOnHeap(aggregations, thisReduceOrder, reduceContext);
+                // final comparator
+                ordered = new BucketPriorityQueue<>(Math.min(requiredSize, reducedBuckets.size()), order.comparator());
+                for (B bucket : reducedBuckets) {
+                    otherDocCount += addToFinalQueue(bucket, ordered, sumDocCountError, reduceContext);
                 }
             }
             list = createBucketsArray(ordered.size());
@@ -414,6 +493,7 @@ public abstract class InternalTerms<A extends InternalTerms<A, B>, B extends Int
                 list[i] = ordered.pop();
             }
         } else {
+            final List<B> reducedBuckets = reduceOnHeap(aggregations, thisReduceOrder, reduceContext);
             // we can prune the list on partial reduce if the aggregation is ordered by key
             // and not filtered (minDocCount == 0)
             int size = isKeyOrder(order) && minDocCount == 0 ? Math.min(requiredSize, reducedBuckets.size()) : reducedBuckets.size();
@@ -475,6 +555,11 @@ public abstract class InternalTerms<A extends InternalTerms<A, B>, B extends Int
 
     abstract B createBucket(long docCount, InternalAggregations aggs, long docCountError, B prototype);
 
+    /**
+     * Reads back the buckets of this aggregation that a reduce spilled to disk.
+     */
+    abstract Writeable.Reader<B> spilledBucketReader();
+
     @Override
     public boolean equals(Object obj) {
         if (this == obj) return true;
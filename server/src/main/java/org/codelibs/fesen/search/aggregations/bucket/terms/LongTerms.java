@@ -20,6 +20,7 @@ package org.codelibs.fesen.search.aggregations.bucket.terms;
 
 import org.codelibs.fesen.common.io.stream.StreamInput;
 import org.codelibs.fesen.common.io.stream.StreamOutput;
+import org.codelibs.fesen.common.io.stream.Writeable;
 import org.codelibs.fesen.common.xcontent.XContentBuilder;
 import org.codelibs.fesen.search.DocValueFormat;
 import org.codelibs.fesen.search.aggregations.BucketOrder;
@@ -190,6 +191,11 @@ public class LongTerms extends InternalMappedTerms<LongTerms, LongTerms.Bucket>
         return new Bucket(prototype.term, docCount, aggs, prototype.showDocCountError, docCountError, format);
     }
 
+    @Override
+    Writeable.Reader<Bucket> spilledBucketReader() {
+        return in -> new Bucket(in, format, showTermDocCountError);
+    }
+
     /**
      * Converts a {@link LongTerms} into a {@link DoubleTerms}, returning the value of the specified long terms as doubles.
      */
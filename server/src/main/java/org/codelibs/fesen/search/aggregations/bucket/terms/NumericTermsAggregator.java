@@ -135,6 +135,29 @@ public class NumericTermsAggregator extends TermsAggregator {
         return resultStrategy.buildEmptyResult();
     }
 
+    @Override
+    public boolean canMergeSlice(Aggregator slice) {
+        // sub-aggregations key their state on our bucket ordinals, which differ between slices
+        return slice.getClass() == getClass()
+            && parent == null
+            && subAggregators.length == 0
+            && resultStrategy instanceof StandardTermsResultStrategy;
+    }
+
+    @Override
+    public void mergeSlice(Aggregator slice) throws IOException {
+        assert canMergeSlice(slice);
+        NumericTermsAggregator other = (NumericTermsAggregator) slice;
+        BucketOrdsEnum ordsEnum = other.bucketOrds.ordsEnum(0);
+        while (ordsEnum.next()) {
+            long bucketOrd = bucketOrds.add(0, ordsEnum.value());
+            if (bucketOrd < 0) {
+                bucketOrd = -1 - bucketOrd;
+            }
+            incrementBucketDocCount(bucketOrd, other.bucketDocCount(ordsEnum.ord()));
+        }
+    }
+
     @Override
     public void doClose() {
         Releasables.close(super::doClose, bucketOrds, resultStrategy);
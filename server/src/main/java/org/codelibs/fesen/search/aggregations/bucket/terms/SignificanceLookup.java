@@ -29,6 +29,8 @@ import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.util.BytesRef;
+import org.codelibs.fesen.common.CheckedSupplier;
+import org.codelibs.fesen.common.Numbers;
 import org.codelibs.fesen.common.lease.Releasable;
 import org.codelibs.fesen.common.lease.Releasables;
 import org.codelibs.fesen.common.lucene.index.FilterableTermsEnum;
@@ -36,12 +38,16 @@ import org.codelibs.fesen.common.util.BigArrays;
 import org.codelibs.fesen.common.util.BytesRefHash;
 import org.codelibs.fesen.common.util.LongArray;
 import org.codelibs.fesen.common.util.LongHash;
+import org.codelibs.fesen.core.Nullable;
 import org.codelibs.fesen.index.mapper.MappedFieldType;
 import org.codelibs.fesen.index.query.QueryBuilder;
 import org.codelibs.fesen.index.query.QueryShardContext;
+import org.codelibs.fesen.index.shard.ShardId;
+import org.codelibs.fesen.indices.IndicesBackgroundFrequencyCache;
 import org.codelibs.fesen.search.DocValueFormat;
 import org.codelibs.fesen.search.aggregations.CardinalityUpperBound;
 import org.codelibs.fesen.search.aggregations.bucket.terms.heuristic.SignificanceHeuristic;
+import org.codelibs.fesen.search.internal.SearchContext;
 
 import java.io.IOException;
 
@@ -68,21 +74,43 @@ class SignificanceLookup {
     private final DocValueFormat format;
     private final Query backgroundFilter;
     private final int supersetNumDocs;
+    @Nullable
+    private final IndicesBackgroundFrequencyCache cache;
+    @Nullable
+    private final ShardId shardId;
+    @Nullable
+    private final IndexReader.CacheHelper readerCacheHelper;
     private TermsEnum termsEnum;
 
-    SignificanceLookup(QueryShardContext context, MappedFieldType fieldType, DocValueFormat format, QueryBuilder backgroundFilter)
-        throws IOException {
+    SignificanceLookup(QueryShardContext context, MappedFieldType fieldType, DocValueFormat format, QueryBuilder backgroundFilter,
+                       @Nullable IndicesBackgroundFrequencyCache cache) throws IOException {
         this.context = context;
         this.fieldType = fieldType;
         this.format = format;
         this.backgroundFilter = backgroundFilter == null ? null : backgroundFilter.toQuery(context);
+        IndexSearcher searcher = context.searcher();
+        this.readerCacheHelper = cache == null ? null : searcher.getIndexReader().getReaderCacheHelper();
+        // only cache if the frequencies depend on nothing but the reader, for example not on the current time
+        this.cache = readerCacheHelper != null && context.isCacheable() ? cache : null;
+        this.shardId = this.cache == null ? null : new ShardId(context.getFullyQualifiedIndex(), context.getShardId());
         /*
          * We need to use a superset size that includes deleted docs or we
          * could end up blowing up with bad statistics that cause us to blow
          * up later on.
          */
-        IndexSearcher searcher = context.searcher();
-        supersetNumDocs = backgroundFilter == null ? searcher.getIndexReader().maxDoc() : searcher.count(this.backgroundFilter);
+        if (backgroundFilter == null) {
+            supersetNumDocs = searcher.getIndexReader().maxDoc();
+        } else {
+            supersetNumDocs = (int) cachedFrequency(null, () -> (long) searcher.count(this.backgroundFilter));
+        }
+    }
+
+    /**
+     * The cache to share background frequencies across requests, or {@code null} if the search doesn't have one.
+     */
+    @Nullable
+    static IndicesBackgroundFrequencyCache backgroundFrequencyCache(SearchContext searchContext) {
+        return searchContext.aggregations() == null ? null : searchContext.aggregations().backgroundFrequencyCache();
     }
 
     /**
@@ -134,7 +162,7 @@ class SignificanceLookup {
      * Get the background frequency of a {@link BytesRef} term.
      */
     private long getBackgroundFrequency(BytesRef term) throws IOException {
-        return getBackgroundFrequency(fieldType.termQuery(format.format(term).toString(), context));
+        return cachedFrequency(term, () -> getBackgroundFrequency(fieldType.termQuery(format.format(term).toString(), context)));
     }
 
     /**
@@ -179,7 +207,19 @@ class SignificanceLookup {
      * Get the background frequency of a {@code long} term.
      */
     private long getBackgroundFrequency(long term) throws IOException {
-        return getBackgroundFrequency(fieldType.termQuery(format.format(term).toString(), context));
+        return cachedFrequency(new BytesRef(Numbers.longToBytes(term)),
+            () -> getBackgroundFrequency(fieldType.termQuery(format.format(term).toString(), context)));
+    }
+
+    /**
+     * Looks the frequency up in the shared cache, if there is one, and computes it on a miss.
+     * @param term the term or {@code null} for the number of documents matching the background filter
+     */
+    private long cachedFrequency(@Nullable BytesRef term, CheckedSupplier<Long, IOException> loader) throws IOException {
+        if (cache == null) {
+            return loader.get();
+        }
+        return cache.getOrCompute(shardId, readerCacheHelper, fieldType.name(), backgroundFilter, term, loader);
     }
 
     private long getBackgroundFrequency(Query query) throws IOException {
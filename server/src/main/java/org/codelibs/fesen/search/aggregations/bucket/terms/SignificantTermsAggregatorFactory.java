@@ -194,6 +194,12 @@ public class SignificantTermsAggregatorFactory extends ValuesSourceAggregatorFac
         };
     }
 
+    @Override
+    public boolean supportsConcurrentSegmentSearch() {
+        // background frequencies are computed for the whole shard and would be counted once per slice
+        return false;
+    }
+
     @Override
     protected Aggregator doCreateInternal(
         SearchContext searchContext,
@@ -225,7 +231,8 @@ public class SignificantTermsAggregatorFactory extends ValuesSourceAggregatorFac
             queryShardContext,
             config.fieldContext().fieldType(),
             config.format(),
-            backgroundFilter
+            backgroundFilter,
+            SignificanceLookup.backgroundFrequencyCache(searchContext)
         );
 
         return aggregatorSupplier.build(
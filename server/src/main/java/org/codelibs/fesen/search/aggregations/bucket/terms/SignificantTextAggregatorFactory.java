@@ -98,6 +98,12 @@ public class SignificantTextAggregatorFactory extends AggregatorFactory {
         this.significanceHeuristic = significanceHeuristic;
     }
 
+    @Override
+    public boolean supportsConcurrentSegmentSearch() {
+        // background frequencies are computed for the whole shard and would be counted once per slice
+        return false;
+    }
+
     @Override
     protected Aggregator createInternal(SearchContext searchContext, Aggregator parent, CardinalityUpperBound cardinality,
                                         Map<String, Object> metadata) throws IOException {
@@ -127,7 +133,8 @@ public class SignificantTextAggregatorFactory extends AggregatorFactory {
             sourceFieldNames,
             filterDuplicateText
         );
-        SignificanceLookup lookup = new SignificanceLookup(queryShardContext, fieldType, DocValueFormat.RAW, backgroundFilter);
+        SignificanceLookup lookup = new SignificanceLookup(queryShardContext, fieldType, DocValueFormat.RAW, backgroundFilter,
+            SignificanceLookup.backgroundFrequencyCache(searchContext));
         return new MapStringTermsAggregator(
             name,
             factories,
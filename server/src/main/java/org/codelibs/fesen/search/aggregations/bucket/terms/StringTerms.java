@@ -21,6 +21,7 @@ package org.codelibs.fesen.search.aggregations.bucket.terms;
 import org.apache.lucene.util.BytesRef;
 import org.codelibs.fesen.common.io.stream.StreamInput;
 import org.codelibs.fesen.common.io.stream.StreamOutput;
+import org.codelibs.fesen.common.io.stream.Writeable;
 import org.codelibs.fesen.common.xcontent.XContentBuilder;
 import org.codelibs.fesen.search.DocValueFormat;
 import org.codelibs.fesen.search.aggregations.BucketOrder;
@@ -139,6 +140,11 @@ public class StringTerms extends InternalMappedTerms<StringTerms, StringTerms.Bu
         return new Bucket(prototype.termBytes, docCount, aggs, prototype.showDocCountError, docCountError, format);
     }
 
+    @Override
+    Writeable.Reader<Bucket> spilledBucketReader() {
+        return in -> new Bucket(in, format, showTermDocCountError);
+    }
+
     @Override
     protected StringTerms create(String name, List<Bucket> buckets, BucketOrder reduceOrder, long docCountError, long otherDocCount) {
         return new StringTerms(name, reduceOrder, order, requiredSize, minDocCount, getMetadata(), format, shardSize,
@@ -233,4 +233,23 @@ public abstract class TermsAggregator extends DeferableBucketAggregator {
         return collectMode == SubAggCollectionMode.BREADTH_FIRST
                 && !aggsUsedForSorting.contains(aggregator);
     }
+
+    /**
+     * Returns {@code true} if the buckets collected by {@code slice}, another instance of this top level aggregator that
+     * collected a disjoint slice of the segments of the shard during a concurrent segment search, can be merged into
+     * this aggregator with {@link #mergeSlice}. Merging the bucket ordinals and doc counts before building the result
+     * avoids truncating each slice to {@code shard_size} buckets, so the merged counts are exact.
+     */
+    public boolean canMergeSlice(Aggregator slice) {
+        return false;
+    }
+
+    /**
+     * Adds the buckets and doc counts collected by {@code slice} to the buckets of this aggregator. Must only be called
+     * once the collection is done, after {@link Aggregator#postCollection()} was called on {@code slice}, and only if
+     * {@link #canMergeSlice} returned {@code true}.
+     */
+    public void mergeSlice(Aggregator slice) throws IOException {
+        throw new UnsupportedOperationException("[" + name() + "] can't merge the buckets of other slices");
+    }
 }
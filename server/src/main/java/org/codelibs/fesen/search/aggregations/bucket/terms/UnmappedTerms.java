@@ -20,11 +20,13 @@ package org.codelibs.fesen.search.aggregations.bucket.terms;
 
 import org.codelibs.fesen.common.io.stream.StreamInput;
 import org.codelibs.fesen.common.io.stream.StreamOutput;
+import org.codelibs.fesen.common.io.stream.Writeable;
 import org.codelibs.fesen.common.xcontent.XContentBuilder;
 import org.codelibs.fesen.search.DocValueFormat;
 import org.codelibs.fesen.search.aggregations.BucketOrder;
 import org.codelibs.fesen.search.aggregations.InternalAggregation;
 import org.codelibs.fesen.search.aggregations.InternalAggregations;
+import org.codelibs.fesen.search.aggregations.support.SamplingContext;
 
 import java.io.IOException;
 import java.util.Collections;
@@ -96,11 +98,22 @@ public class UnmappedTerms extends InternalTerms<UnmappedTerms, UnmappedTerms.Bu
         throw new UnsupportedOperationException("not supported for UnmappedTerms");
     }
 
+    @Override
+    Writeable.Reader<Bucket> spilledBucketReader() {
+        throw new UnsupportedOperationException("not supported for UnmappedTerms");
+    }
+
     @Override
     public InternalAggregation reduce(List<InternalAggregation> aggregations, ReduceContext reduceContext) {
         return new UnmappedTerms(name, order, requiredSize, minDocCount, metadata);
     }
 
+    @Override
+    public InternalAggregation finalizeSampling(SamplingContext samplingContext) {
+        // there are no buckets to scale
+        return this;
+    }
+
     @Override
     public boolean isMapped() {
         return false;
@@ -26,6 +26,7 @@ import org.codelibs.fesen.search.DocValueFormat;
 import org.codelibs.fesen.search.aggregations.InternalAggregation;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -103,14 +104,12 @@ abstract class AbstractInternalTDigestPercentiles extends InternalNumericMetrics
 
     @Override
     public AbstractInternalTDigestPercentiles reduce(List<InternalAggregation> aggregations, ReduceContext reduceContext) {
-        TDigestState merged = null;
+        List<TDigestState> states = new ArrayList<>(aggregations.size());
         for (InternalAggregation aggregation : aggregations) {
-            final AbstractInternalTDigestPercentiles percentiles = (AbstractInternalTDigestPercentiles) aggregation;
-            if (merged == null) {
-                merged = new TDigestState(percentiles.state.compression());
-            }
-            merged.add(percentiles.state);
+            states.add(((AbstractInternalTDigestPercentiles) aggregation).state);
         }
+        TDigestState merged = new TDigestState(states.get(0).compression(), states.get(0).executionHint());
+        merged.add(states);
         return createReduced(getName(), keys, merged, keyed, getMetadata());
     }
 
@@ -47,10 +47,11 @@ abstract class AbstractTDigestPercentilesAggregator extends NumericMetricsAggreg
     protected final DocValueFormat formatter;
     protected ObjectArray<TDigestState> states;
     protected final double compression;
+    protected final TDigestExecutionHint executionHint;
     protected final boolean keyed;
 
     AbstractTDigestPercentilesAggregator(String name, ValuesSource valuesSource, SearchContext context, Aggregator parent,
-            double[] keys, double compression, boolean keyed, DocValueFormat formatter,
+            double[] keys, double compression, TDigestExecutionHint executionHint, boolean keyed, DocValueFormat formatter,
             Map<String, Object> metadata) throws IOException {
         super(name, context, parent, metadata);
         this.valuesSource = valuesSource;
@@ -59,6 +60,7 @@ abstract class AbstractTDigestPercentilesAggregator extends NumericMetricsAggreg
         this.states = context.bigArrays().newObjectArray(1);
         this.keys = keys;
         this.compression = compression;
+        this.executionHint = executionHint;
     }
 
     @Override
@@ -92,7 +94,7 @@ abstract class AbstractTDigestPercentilesAggregator extends NumericMetricsAggreg
         states = bigArrays.grow(states, bucket + 1);
         TDigestState state = states.get(bucket);
         if (state == null) {
-            state = new TDigestState(compression);
+            state = new TDigestState(compression, executionHint);
             states.set(bucket, state);
         }
         return state;
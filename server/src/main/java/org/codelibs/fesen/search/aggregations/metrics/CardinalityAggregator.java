@@ -38,6 +38,7 @@ import org.codelibs.fesen.common.util.ObjectArray;
 import org.codelibs.fesen.core.Nullable;
 import org.codelibs.fesen.index.fielddata.SortedBinaryDocValues;
 import org.codelibs.fesen.index.fielddata.SortedNumericDoubleValues;
+import org.codelibs.fesen.index.mapper.PrecomputedHashFieldType;
 import org.codelibs.fesen.search.aggregations.Aggregator;
 import org.codelibs.fesen.search.aggregations.InternalAggregation;
 import org.codelibs.fesen.search.aggregations.LeafBucketCollector;
@@ -56,6 +57,7 @@ public class CardinalityAggregator extends NumericMetricsAggregator.SingleValue
 
     private final int precision;
     private final ValuesSource valuesSource;
+    private final boolean precomputedHashes;
 
     // Expensive to initialize, so we only initialize it when we have an actual value source
     @Nullable
@@ -68,6 +70,7 @@ public class CardinalityAggregator extends NumericMetricsAggregator.SingleValue
     private int ordinalsCollectorsUsed;
     private int ordinalsCollectorsOverheadTooHigh;
     private int stringHashingCollectorsUsed;
+    private int precomputedHashCollectorsUsed;
 
     public CardinalityAggregator(
             String name,
@@ -79,6 +82,8 @@ public class CardinalityAggregator extends NumericMetricsAggregator.SingleValue
         super(name, context, parent, metadata);
         // TODO: Stop using nulls here
         this.valuesSource = valuesSourceConfig.hasValues() ? valuesSourceConfig.getValuesSource() : null;
+        // the values of a script are not the indexed hashes
+        this.precomputedHashes = valuesSourceConfig.fieldType() instanceof PrecomputedHashFieldType && valuesSourceConfig.script() == null;
         this.precision = precision;
         this.counts = valuesSource == null ? null : new HyperLogLogPlusPlus(precision, context.bigArrays(), 1);
     }
@@ -94,6 +99,11 @@ public class CardinalityAggregator extends NumericMetricsAggregator.SingleValue
             return new EmptyCollector();
         }
 
+        if (precomputedHashes && valuesSource instanceof ValuesSource.Numeric) {
+            precomputedHashCollectorsUsed++;
+            return new DirectCollector(counts, MurmurHash3Values.precomputed(((ValuesSource.Numeric) valuesSource).longValues(ctx)));
+        }
+
         if (valuesSource instanceof ValuesSource.Numeric) {
             ValuesSource.Numeric source = (ValuesSource.Numeric) valuesSource;
             MurmurHash3Values hashValues = source.isFloatingPoint() ?
@@ -184,6 +194,7 @@ public class CardinalityAggregator extends NumericMetricsAggregator.SingleValue
         add.accept("ordinals_collectors_used", ordinalsCollectorsUsed);
         add.accept("ordinals_collectors_overhead_too_high", ordinalsCollectorsOverheadTooHigh);
         add.accept("string_hashing_collectors_used", stringHashingCollectorsUsed);
+        add.accept("precomputed_hash_collectors_used", precomputedHashCollectorsUsed);
     }
 
     private abstract static class Collector extends LeafBucketCollector implements Releasable {
@@ -359,6 +370,37 @@ public class CardinalityAggregator extends NumericMetricsAggregator.SingleValue
             return new Bytes(values);
         }
 
+        /**
+         * Return a {@link MurmurHash3Values} instance that returns long values that are already hashes as is.
+         */
+        public static MurmurHash3Values precomputed(SortedNumericDocValues values) {
+            return new Precomputed(values);
+        }
+
+        private static class Precomputed extends MurmurHash3Values {
+
+            private final SortedNumericDocValues values;
+
+            Precomputed(SortedNumericDocValues values) {
+                this.values = values;
+            }
+
+            @Override
+            public boolean advanceExact(int docId) throws IOException {
+                return values.advanceExact(docId);
+            }
+
+            @Override
+            public int count() {
+                return values.docValueCount();
+            }
+
+            @Override
+            public long nextValue() throws IOException {
+                return values.nextValue();
+            }
+        }
+
         private static class Long extends MurmurHash3Values {
 
             private final SortedNumericDocValues values;
@@ -23,6 +23,7 @@ import org.codelibs.fesen.common.io.stream.StreamOutput;
 import org.codelibs.fesen.common.xcontent.XContentBuilder;
 import org.codelibs.fesen.search.DocValueFormat;
 import org.codelibs.fesen.search.aggregations.InternalAggregation;
+import org.codelibs.fesen.search.aggregations.support.SamplingContext;
 
 import java.io.IOException;
 import java.util.List;
@@ -344,6 +345,12 @@ public class InternalExtendedStats extends InternalStats implements ExtendedStat
         return Objects.hash(super.hashCode(), sumOfSqrs, sigma);
     }
 
+    @Override
+    public InternalAggregation finalizeSampling(SamplingContext samplingContext) {
+        return new InternalExtendedStats(name, samplingContext.scaleUp(count), samplingContext.scaleUp(sum), min, max,
+            samplingContext.scaleUp(sumOfSqrs), sigma, format, getMetadata());
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (this == obj) return true;
@@ -25,6 +25,7 @@ import org.codelibs.fesen.common.io.stream.StreamInput;
 import org.codelibs.fesen.common.io.stream.StreamOutput;
 import org.codelibs.fesen.common.xcontent.XContentBuilder;
 import org.codelibs.fesen.search.aggregations.InternalAggregation;
+import org.codelibs.fesen.search.aggregations.support.SamplingContext;
 
 import java.io.IOException;
 import java.util.List;
@@ -116,6 +117,12 @@ public class InternalGeoBounds extends InternalAggregation implements GeoBounds
         return new InternalGeoBounds(name, top, bottom, posLeft, posRight, negLeft, negRight, wrapLongitude, getMetadata());
     }
 
+    @Override
+    public InternalAggregation finalizeSampling(SamplingContext samplingContext) {
+        // the bounds of a sample are an estimate of the bounds of all the documents
+        return this;
+    }
+
     @Override
     protected boolean mustReduceOnSingleInternalAgg() {
         return false;
@@ -19,6 +19,7 @@
 
 package org.codelibs.fesen.search.aggregations.metrics;
 
+import org.codelibs.fesen.Version;
 import org.codelibs.fesen.common.io.stream.StreamInput;
 import org.codelibs.fesen.common.io.stream.StreamOutput;
 import org.codelibs.fesen.common.io.stream.Writeable;
@@ -97,6 +98,7 @@ public abstract class PercentilesConfig implements ToXContent, Writeable {
     public static class TDigest extends PercentilesConfig {
         static final double DEFAULT_COMPRESSION = 100.0;
         private double compression;
+        private TDigestExecutionHint executionHint = TDigestExecutionHint.DEFAULT;
 
         public TDigest() {
             this(DEFAULT_COMPRESSION);
@@ -109,6 +111,9 @@ public abstract class PercentilesConfig implements ToXContent, Writeable {
 
         TDigest(StreamInput in) throws IOException {
             this(in.readDouble());
+            if (in.getVersion().onOrAfter(Version.V_0_17_0)) {
+                executionHint = TDigestExecutionHint.readFromStream(in);
+            }
         }
 
         public void setCompression(double compression) {
@@ -123,31 +128,49 @@ public abstract class PercentilesConfig implements ToXContent, Writeable {
             return compression;
         }
 
+        /**
+         * Set the digest implementation used to collect and merge the values.
+         */
+        public void setExecutionHint(TDigestExecutionHint executionHint) {
+            this.executionHint = Objects.requireNonNull(executionHint, "[execution_hint] must not be null");
+        }
+
+        public TDigestExecutionHint getExecutionHint() {
+            return executionHint;
+        }
+
         @Override
         public Aggregator createPercentilesAggregator(String name, ValuesSource valuesSource, SearchContext context, Aggregator parent,
                                                       double[] values, boolean keyed, DocValueFormat formatter,
                                                       Map<String, Object> metadata) throws IOException {
-            return new TDigestPercentilesAggregator(name, valuesSource, context, parent, values, compression, keyed, formatter, metadata);
+            return new TDigestPercentilesAggregator(name, valuesSource, context, parent, values, compression, executionHint, keyed,
+                formatter, metadata);
         }
 
         @Override
         Aggregator createPercentileRanksAggregator(String name, ValuesSource valuesSource, SearchContext context, Aggregator parent,
                                                    double[] values, boolean keyed, DocValueFormat formatter,
                                                    Map<String, Object> metadata) throws IOException {
-            return new TDigestPercentileRanksAggregator(name, valuesSource, context, parent, values, compression, keyed,
-                formatter, metadata);
+            return new TDigestPercentileRanksAggregator(name, valuesSource, context, parent, values, compression, executionHint,
+                keyed, formatter, metadata);
         }
 
         @Override
         public void writeTo(StreamOutput out) throws IOException {
             super.writeTo(out);
             out.writeDouble(compression);
+            if (out.getVersion().onOrAfter(Version.V_0_17_0)) {
+                executionHint.writeTo(out);
+            }
         }
 
         @Override
         public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
             builder.startObject(getMethod().toString());
             builder.field(PercentilesMethod.COMPRESSION_FIELD.getPreferredName(), compression);
+            if (executionHint != TDigestExecutionHint.DEFAULT) {
+                builder.field(PercentilesMethod.EXECUTION_HINT_FIELD.getPreferredName(), executionHint.toString());
+            }
             builder.endObject();
             return builder;
         }
@@ -159,12 +182,13 @@ public abstract class PercentilesConfig implements ToXContent, Writeable {
             if (super.equals(obj) == false) return false;
 
             TDigest other = (TDigest) obj;
-            return compression == other.getCompression();
+            return compression == other.getCompression()
+                && executionHint == other.getExecutionHint();
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(super.hashCode(), compression);
+            return Objects.hash(super.hashCode(), compression, executionHint);
         }
     }
 
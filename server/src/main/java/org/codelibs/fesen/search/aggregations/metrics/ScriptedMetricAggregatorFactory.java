@@ -78,6 +78,12 @@ class ScriptedMetricAggregatorFactory extends AggregatorFactory {
         this.aggParams = aggParams;
     }
 
+    @Override
+    public boolean supportsConcurrentSegmentSearch() {
+        // the combine script must see the state of all the documents of the shard
+        return false;
+    }
+
     @Override
     public Aggregator createInternal(SearchContext searchContext,
                                         Aggregator parent,
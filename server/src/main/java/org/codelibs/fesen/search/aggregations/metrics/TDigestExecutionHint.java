@@ -0,0 +1,65 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.codelibs.fesen.search.aggregations.metrics;
+
+import org.codelibs.fesen.common.io.stream.StreamInput;
+import org.codelibs.fesen.common.io.stream.StreamOutput;
+import org.codelibs.fesen.common.io.stream.Writeable;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * The digest implementation backing a {@link TDigestState}.
+ */
+public enum TDigestExecutionHint implements Writeable {
+    /**
+     * Centroids are kept in an AVL tree. This is the historical implementation.
+     */
+    AVL_TREE,
+    /**
+     * Values are buffered and merged into a sorted array of centroids. Collection
+     * and merging are faster and allocate less than with {@link #AVL_TREE}.
+     */
+    MERGING;
+
+    public static final TDigestExecutionHint DEFAULT = AVL_TREE;
+
+    public static TDigestExecutionHint parse(String value) {
+        try {
+            return valueOf(value.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown [execution_hint] [" + value + "], expected one of [avl_tree, merging]");
+        }
+    }
+
+    public static TDigestExecutionHint readFromStream(StreamInput in) throws IOException {
+        return in.readEnum(TDigestExecutionHint.class);
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeEnum(this);
+    }
+
+    @Override
+    public String toString() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -35,10 +35,11 @@ class TDigestPercentileRanksAggregator extends AbstractTDigestPercentilesAggrega
                                          Aggregator parent,
                                         double[] percents,
                                         double compression,
+                                        TDigestExecutionHint executionHint,
                                         boolean keyed,
                                         DocValueFormat formatter,
                                         Map<String, Object> metadata) throws IOException {
-        super(name, valuesSource, context, parent, percents, compression, keyed, formatter, metadata);
+        super(name, valuesSource, context, parent, percents, compression, executionHint, keyed, formatter, metadata);
     }
 
     @Override
@@ -53,7 +54,8 @@ class TDigestPercentileRanksAggregator extends AbstractTDigestPercentilesAggrega
 
     @Override
     public InternalAggregation buildEmptyAggregation() {
-        return new InternalTDigestPercentileRanks(name, keys, new TDigestState(compression), keyed, formatter, metadata());
+        TDigestState state = new TDigestState(compression, executionHint);
+        return new InternalTDigestPercentileRanks(name, keys, state, keyed, formatter, metadata());
     }
 
     @Override
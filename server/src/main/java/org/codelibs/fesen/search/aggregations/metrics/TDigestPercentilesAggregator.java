@@ -35,10 +35,11 @@ class TDigestPercentilesAggregator extends AbstractTDigestPercentilesAggregator
                                     Aggregator parent,
                                     double[] percents,
                                     double compression,
+                                    TDigestExecutionHint executionHint,
                                     boolean keyed,
                                     DocValueFormat formatter,
                                     Map<String, Object> metadata) throws IOException {
-        super(name, valuesSource, context, parent, percents, compression, keyed, formatter, metadata);
+        super(name, valuesSource, context, parent, percents, compression, executionHint, keyed, formatter, metadata);
     }
 
     @Override
@@ -63,6 +64,7 @@ class TDigestPercentilesAggregator extends AbstractTDigestPercentilesAggregator
 
     @Override
     public InternalAggregation buildEmptyAggregation() {
-        return new InternalTDigestPercentiles(name, keys, new TDigestState(compression), keyed, formatter, metadata());
+        TDigestState state = new TDigestState(compression, executionHint);
+        return new InternalTDigestPercentiles(name, keys, state, keyed, formatter, metadata());
     }
 }
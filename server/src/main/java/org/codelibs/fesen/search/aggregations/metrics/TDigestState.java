@@ -20,32 +20,107 @@ package org.codelibs.fesen.search.aggregations.metrics;
 
 import com.tdunning.math.stats.AVLTreeDigest;
 import com.tdunning.math.stats.Centroid;
+import com.tdunning.math.stats.MergingDigest;
+import com.tdunning.math.stats.TDigest;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 
+import org.codelibs.fesen.Version;
 import org.codelibs.fesen.common.io.stream.StreamInput;
 import org.codelibs.fesen.common.io.stream.StreamOutput;
 
 /**
- * Extension of {@link com.tdunning.math.stats.TDigest} with custom serialization.
+ * A {@link com.tdunning.math.stats.TDigest} with custom serialization, backed by the
+ * implementation selected by its {@link TDigestExecutionHint}.
  */
-public class TDigestState extends AVLTreeDigest {
+public class TDigestState {
 
     private final double compression;
+    private final TDigestExecutionHint executionHint;
+    private final TDigest digest;
 
     public TDigestState(double compression) {
-        super(compression);
+        this(compression, TDigestExecutionHint.DEFAULT);
+    }
+
+    public TDigestState(double compression, TDigestExecutionHint executionHint) {
         this.compression = compression;
+        this.executionHint = executionHint;
+        this.digest = executionHint == TDigestExecutionHint.MERGING ? new MergingDigest(compression) : new AVLTreeDigest(compression);
     }
 
-    @Override
     public double compression() {
         return compression;
     }
 
+    public TDigestExecutionHint executionHint() {
+        return executionHint;
+    }
+
+    public void add(double x) {
+        digest.add(x);
+    }
+
+    public void add(double x, int w) {
+        digest.add(x, w);
+    }
+
+    public void add(TDigestState other) {
+        digest.add(other.digest);
+    }
+
+    /**
+     * Add all the given digests. The merging digest merges them in a single pass
+     * over their centroids rather than one digest at a time.
+     */
+    public void add(List<TDigestState> others) {
+        if (executionHint == TDigestExecutionHint.MERGING) {
+            List<TDigest> digests = new ArrayList<>(others.size());
+            for (TDigestState other : others) {
+                digests.add(other.digest);
+            }
+            ((MergingDigest) digest).add(digests);
+        } else {
+            for (TDigestState other : others) {
+                digest.add(other.digest);
+            }
+        }
+    }
+
+    public long size() {
+        return digest.size();
+    }
+
+    public double quantile(double q) {
+        return digest.quantile(q);
+    }
+
+    public double cdf(double x) {
+        return digest.cdf(x);
+    }
+
+    public int centroidCount() {
+        return digest.centroidCount();
+    }
+
+    public Collection<Centroid> centroids() {
+        return digest.centroids();
+    }
+
+    public int byteSize() {
+        return digest.byteSize();
+    }
+
     public static void write(TDigestState state, StreamOutput out) throws IOException {
         out.writeDouble(state.compression);
+        if (out.getVersion().onOrAfter(Version.V_0_17_0)) {
+            // the hint selects the implementation that the digests are merged with on the coordinating node
+            state.executionHint.writeTo(out);
+        }
         out.writeVInt(state.centroidCount());
         for (Centroid centroid : state.centroids()) {
             out.writeDouble(centroid.mean());
@@ -55,7 +130,11 @@ public class TDigestState extends AVLTreeDigest {
 
     public static TDigestState read(StreamInput in) throws IOException {
         double compression = in.readDouble();
-        TDigestState state = new TDigestState(compression);
+        TDigestExecutionHint executionHint = TDigestExecutionHint.DEFAULT;
+        if (in.getVersion().onOrAfter(Version.V_0_17_0)) {
+            executionHint = TDigestExecutionHint.readFromStream(in);
+        }
+        TDigestState state = new TDigestState(compression, executionHint);
         int n = in.readVInt();
         for (int i = 0; i < n; i++) {
             state.add(in.readDouble(), in.readVInt());
@@ -69,7 +148,7 @@ public class TDigestState extends AVLTreeDigest {
             return false;
         }
         TDigestState that = (TDigestState) obj;
-        if (compression != that.compression) {
+        if (compression != that.compression || executionHint != that.executionHint) {
             return false;
         }
         Iterator<? extends Centroid> thisCentroids = centroids().iterator();
@@ -91,6 +170,7 @@ public class TDigestState extends AVLTreeDigest {
     public int hashCode() {
         int h = getClass().hashCode();
         h = 31 * h + Double.hashCode(compression);
+        h = 31 * h + executionHint.ordinal();
         for (Centroid centroid : centroids()) {
             h = 31 * h + Double.hashCode(centroid.mean());
             h = 31 * h + centroid.count();
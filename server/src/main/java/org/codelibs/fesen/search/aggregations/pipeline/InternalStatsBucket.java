@@ -27,6 +27,7 @@ import org.codelibs.fesen.common.io.stream.StreamInput;
 import org.codelibs.fesen.search.DocValueFormat;
 import org.codelibs.fesen.search.aggregations.InternalAggregation;
 import org.codelibs.fesen.search.aggregations.metrics.InternalStats;
+import org.codelibs.fesen.search.aggregations.support.SamplingContext;
 
 public class InternalStatsBucket extends InternalStats implements StatsBucket {
     public InternalStatsBucket(String name, long count, double sum, double min, double max, DocValueFormat formatter,
@@ -50,4 +51,10 @@ public class InternalStatsBucket extends InternalStats implements StatsBucket {
     public InternalStats reduce(List<InternalAggregation> aggregations, ReduceContext reduceContext) {
         throw new UnsupportedOperationException("Not supported");
     }
+
+    @Override
+    public InternalAggregation finalizeSampling(SamplingContext samplingContext) {
+        // computed from the buckets of its sibling aggregation, which are already scaled
+        return this;
+    }
 }
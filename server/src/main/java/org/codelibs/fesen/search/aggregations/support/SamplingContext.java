@@ -0,0 +1,63 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.search.aggregations.support;
+
+/**
+ * Describes how the documents that an aggregation was computed from were randomly sampled, so that its final result can
+ * be scaled up to the whole set of documents.
+ *
+ * @see org.codelibs.fesen.search.aggregations.InternalAggregation#finalizeSampling(SamplingContext)
+ */
+public final class SamplingContext {
+
+    private final double probability;
+
+    /**
+     * @param probability the probability with which each document was sampled, in (0, 1]
+     */
+    public SamplingContext(double probability) {
+        if (probability <= 0 || probability > 1) {
+            throw new IllegalArgumentException("sampling probability must be in (0, 1] but was [" + probability + "]");
+        }
+        this.probability = probability;
+    }
+
+    /**
+     * The probability with which each document was sampled.
+     */
+    public double probability() {
+        return probability;
+    }
+
+    /**
+     * Scales a count of sampled documents up to an estimate of the count of all documents.
+     */
+    public long scaleUp(long value) {
+        return Math.round(value / probability);
+    }
+
+    /**
+     * Scales a value that is the sum of per-document values of sampled documents up to an estimate of the sum over all
+     * documents.
+     */
+    public double scaleUp(double value) {
+        return value / probability;
+    }
+}
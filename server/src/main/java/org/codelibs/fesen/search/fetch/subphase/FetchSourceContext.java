@@ -19,6 +19,7 @@
 
 package org.codelibs.fesen.search.fetch.subphase;
 
+import org.codelibs.fesen.common.CheckedBiConsumer;
 import org.codelibs.fesen.common.ParseField;
 import org.codelibs.fesen.common.ParsingException;
 import org.codelibs.fesen.common.Strings;
@@ -53,6 +54,7 @@ public class FetchSourceContext implements Writeable, ToXContentObject {
     private final String[] includes;
     private final String[] excludes;
     private Function<Map<String, ?>, Map<String, Object>> filter;
+    private CheckedBiConsumer<XContentParser, XContentBuilder, IOException> streamingFilter;
 
     public FetchSourceContext(boolean fetchSource, String[] includes, String[] excludes) {
         this.fetchSource = fetchSource;
@@ -234,4 +236,15 @@ public class FetchSourceContext implements Writeable, ToXContentObject {
         }
         return filter;
     }
+
+    /**
+     * Returns a filter function that reads the source from a parser and writes the
+     * filtered source to a builder, without materializing the source as a map.
+     */
+    public CheckedBiConsumer<XContentParser, XContentBuilder, IOException> getStreamingFilter() {
+        if (streamingFilter == null) {
+            streamingFilter = XContentMapValues.streamingFilter(includes, excludes);
+        }
+        return streamingFilter;
+    }
 }
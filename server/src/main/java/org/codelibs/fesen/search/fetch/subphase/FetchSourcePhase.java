@@ -23,7 +23,12 @@ import org.apache.lucene.index.LeafReaderContext;
 import org.codelibs.fesen.FesenException;
 import org.codelibs.fesen.common.bytes.BytesReference;
 import org.codelibs.fesen.common.io.stream.BytesStreamOutput;
+import org.codelibs.fesen.common.xcontent.DeprecationHandler;
+import org.codelibs.fesen.common.xcontent.NamedXContentRegistry;
 import org.codelibs.fesen.common.xcontent.XContentBuilder;
+import org.codelibs.fesen.common.xcontent.XContentHelper;
+import org.codelibs.fesen.common.xcontent.XContentParser;
+import org.codelibs.fesen.common.xcontent.XContentType;
 import org.codelibs.fesen.search.SearchHit;
 import org.codelibs.fesen.search.fetch.FetchContext;
 import org.codelibs.fesen.search.fetch.FetchSubPhase;
@@ -77,6 +82,13 @@ public final class FetchSourcePhase implements FetchSubPhase {
             return;
         }
 
+        // If this is a parent document whose source hasn't been parsed yet, then filter the source bytes directly
+        // instead of parsing them into a map and serializing the filtered map again.
+        if (nestedHit == false && source.source() == null) {
+            hitContext.hit().sourceRef(filterSourceBytes(fetchSourceContext, source.internalSourceRef()));
+            return;
+        }
+
         // Otherwise, filter the source and add it to the hit.
         Object value = source.filter(fetchSourceContext);
         if (nestedHit) {
@@ -104,6 +116,20 @@ public final class FetchSourcePhase implements FetchSubPhase {
         }
     }
 
+    private static BytesReference filterSourceBytes(FetchSourceContext fetchSourceContext, BytesReference sourceRef) {
+        // the content type of the source isn't recorded, it is detected the same way as when the source is parsed into a map
+        final XContentType contentType = XContentHelper.xContentTypeMayCompressed(sourceRef);
+        try (XContentParser parser = XContentHelper.createParser(NamedXContentRegistry.EMPTY,
+                DeprecationHandler.THROW_UNSUPPORTED_OPERATION, sourceRef, contentType)) {
+            BytesStreamOutput streamOutput = new BytesStreamOutput(Math.min(1024, sourceRef.length()));
+            XContentBuilder builder = new XContentBuilder(contentType.xContent(), streamOutput);
+            fetchSourceContext.getStreamingFilter().accept(parser, builder);
+            return BytesReference.bytes(builder);
+        } catch (IOException e) {
+            throw new FesenException("Error filtering source", e);
+        }
+    }
+
     private static boolean containsFilters(FetchSourceContext context) {
         return context.includes().length != 0 || context.excludes().length != 0;
     }
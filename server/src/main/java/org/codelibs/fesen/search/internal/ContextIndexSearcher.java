@@ -49,8 +49,10 @@ import org.apache.lucene.util.BitSetIterator;
 import org.apache.lucene.util.Bits;
 import org.apache.lucene.util.CombinedBitSet;
 import org.apache.lucene.util.SparseFixedBitSet;
+import org.apache.lucene.util.ThreadInterruptedException;
 import org.codelibs.fesen.common.lease.Releasable;
 import org.codelibs.fesen.common.lucene.search.TopDocsAndMaxScore;
+import org.codelibs.fesen.core.Nullable;
 import org.codelibs.fesen.search.DocValueFormat;
 import org.codelibs.fesen.search.dfs.AggregatedDfs;
 import org.codelibs.fesen.search.profile.Timer;
@@ -63,10 +65,17 @@ import org.codelibs.fesen.search.query.QuerySearchResult;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Context-aware extension of {@link IndexSearcher}.
@@ -85,14 +94,26 @@ public class ContextIndexSearcher extends IndexSearcher implements Releasable {
     public ContextIndexSearcher(IndexReader reader, Similarity similarity,
                                 QueryCache queryCache, QueryCachingPolicy queryCachingPolicy,
                                 boolean wrapWithExitableDirectoryReader) throws IOException {
-        this(reader, similarity, queryCache, queryCachingPolicy, new MutableQueryTimeout(), wrapWithExitableDirectoryReader);
+        this(reader, similarity, queryCache, queryCachingPolicy, wrapWithExitableDirectoryReader, null);
+    }
+
+    /**
+     * Creates a searcher that collects the slices of the provided <code>reader</code> concurrently
+     * when searching with a {@link CollectorManager} and an <code>executor</code> is provided.
+     */
+    public ContextIndexSearcher(IndexReader reader, Similarity similarity,
+                                QueryCache queryCache, QueryCachingPolicy queryCachingPolicy,
+                                boolean wrapWithExitableDirectoryReader, @Nullable Executor executor) throws IOException {
+        this(reader, similarity, queryCache, queryCachingPolicy, new MutableQueryTimeout(), wrapWithExitableDirectoryReader, executor);
     }
 
     private ContextIndexSearcher(IndexReader reader, Similarity similarity,
                                  QueryCache queryCache, QueryCachingPolicy queryCachingPolicy,
                                  MutableQueryTimeout cancellable,
-                                 boolean wrapWithExitableDirectoryReader) throws IOException {
-        super(wrapWithExitableDirectoryReader ? new ExitableDirectoryReader((DirectoryReader) reader, cancellable) : reader);
+                                 boolean wrapWithExitableDirectoryReader,
+                                 @Nullable Executor executor) throws IOException {
+        super(wrapWithExitableDirectoryReader ? new ExitableDirectoryReader((DirectoryReader) reader, cancellable) : reader,
+            executor);
         setSimilarity(similarity);
         setQueryCache(queryCache);
         setQueryCachingPolicy(queryCachingPolicy);
@@ -132,6 +153,14 @@ public class ContextIndexSearcher extends IndexSearcher implements Releasable {
         return this.cancellable.isEnabled();
     }
 
+    /**
+     * Checks for query cancellation or timeout. Only needed by collection loops that don't go through
+     * {@link #search(List, Weight, Collector)}, which checks them on its own.
+     */
+    public void checkCancelled() {
+        this.cancellable.checkCancelled();
+    }
+
     public void setAggregatedDfs(AggregatedDfs aggregatedDfs) {
         this.aggregatedDfs = aggregatedDfs;
     }
@@ -193,6 +222,103 @@ public class ContextIndexSearcher extends IndexSearcher implements Releasable {
         result.topDocs(new TopDocsAndMaxScore(mergedTopDocs, Float.NaN), formats);
     }
 
+    /**
+     * Groups the leaves like {@link IndexSearcher} does but keeps the slices, and the leaves of each slice, in index order
+     * so that merging the top docs of the slices tie-breaks on the doc id like a sequential collection.
+     */
+    @Override
+    protected LeafSlice[] slices(List<LeafReaderContext> leaves) {
+        final LeafSlice[] slices = super.slices(leaves);
+        for (LeafSlice slice : slices) {
+            Arrays.sort(slice.leaves, Comparator.comparingInt(leaf -> leaf.ord));
+        }
+        Arrays.sort(slices, Comparator.comparingInt(slice -> slice.leaves[0].ord));
+        return slices;
+    }
+
+    /**
+     * Returns <code>true</code> if searches with a {@link CollectorManager} collect several slices of
+     * the index concurrently.
+     */
+    public boolean isConcurrent() {
+        final LeafSlice[] slices = getSlices();
+        return slices != null && slices.length > 1 && profiler == null;
+    }
+
+    /**
+     * Searches the slices of this searcher concurrently if it {@link #isConcurrent() is concurrent}, or all leaves
+     * with a single collector otherwise. The calling thread takes part in the collection and processes the slices
+     * that the executor did not pick up, so this method never waits for a slice that has not been started yet. It
+     * returns, or rethrows the first failure, only once all the slices are done so that collectors are never
+     * accessed concurrently with the collection.
+     */
+    @Override
+    public <C extends Collector, T> T search(Query query, CollectorManager<C, T> collectorManager) throws IOException {
+        if (isConcurrent() == false) {
+            final C collector = collectorManager.newCollector();
+            search(query, collector);
+            return collectorManager.reduce(Collections.singletonList(collector));
+        }
+        final LeafSlice[] slices = getSlices();
+        final List<C> collectors = new ArrayList<>(slices.length);
+        ScoreMode scoreMode = null;
+        for (int i = 0; i < slices.length; i++) {
+            final C collector = collectorManager.newCollector();
+            if (scoreMode == null) {
+                scoreMode = collector.scoreMode();
+            } else if (scoreMode != collector.scoreMode()) {
+                throw new IllegalStateException("CollectorManager does not always produce collectors with the same score mode");
+            }
+            collectors.add(collector);
+        }
+        final Weight weight = createWeight(rewrite(query), scoreMode, 1);
+        searchSlices(slices, weight, collectors);
+        return collectorManager.reduce(collectors);
+    }
+
+    private void searchSlices(LeafSlice[] slices, Weight weight, List<? extends Collector> collectors) throws IOException {
+        final AtomicInteger nextSlice = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(slices.length);
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        final Runnable worker = () -> {
+            for (int i = nextSlice.getAndIncrement(); i < slices.length; i = nextSlice.getAndIncrement()) {
+                try {
+                    if (failure.get() == null) {
+                        search(Arrays.asList(slices[i].leaves), weight, collectors.get(i));
+                    }
+                } catch (Exception e) {
+                    if (failure.compareAndSet(null, e) == false) {
+                        failure.get().addSuppressed(e);
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }
+        };
+        final Executor executor = getExecutor();
+        try {
+            for (int i = 1; i < slices.length; i++) {
+                executor.execute(worker);
+            }
+        } catch (RejectedExecutionException e) {
+            // the remaining slices are processed by the calling thread
+        }
+        worker.run();
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ThreadInterruptedException(e);
+        }
+        final Exception e = failure.get();
+        if (e != null) {
+            if (e instanceof IOException) {
+                throw (IOException) e;
+            }
+            throw (RuntimeException) e;
+        }
+    }
+
     @Override
     protected void search(List<LeafReaderContext> leaves, Weight weight, Collector collector) throws IOException {
         for (LeafReaderContext ctx : leaves) { // search each subreader
@@ -76,6 +76,7 @@ public class ShardSearchRequest extends TransportRequest implements IndicesReque
     private final String[] types;
     private final float indexBoost;
     private final Boolean requestCache;
+    private final Boolean concurrentSegmentSearch;
     private final long nowInMillis;
     private final boolean allowPartialSearchResults;
     private final String[] indexRoutings;
@@ -122,6 +123,7 @@ public class ShardSearchRequest extends TransportRequest implements IndicesReque
             searchRequest.source(),
             searchRequest.types(),
             searchRequest.requestCache(),
+            searchRequest.concurrentSegmentSearch(),
             aliasFilter,
             indexBoost,
             searchRequest.allowPartialSearchResults(),
@@ -142,7 +144,7 @@ public class ShardSearchRequest extends TransportRequest implements IndicesReque
                               long nowInMillis,
                               AliasFilter aliasFilter) {
         this(OriginalIndices.NONE, shardId, -1, SearchType.QUERY_THEN_FETCH, null, types,
-            null, aliasFilter, 1.0f, false, Strings.EMPTY_ARRAY, null, null, nowInMillis, null, null, null);
+            null, null, aliasFilter, 1.0f, false, Strings.EMPTY_ARRAY, null, null, nowInMillis, null, null, null);
     }
 
     private ShardSearchRequest(OriginalIndices originalIndices,
@@ -152,6 +154,7 @@ public class ShardSearchRequest extends TransportRequest implements IndicesReque
                                SearchSourceBuilder source,
                                String[] types,
                                Boolean requestCache,
+                               Boolean concurrentSegmentSearch,
                                AliasFilter aliasFilter,
                                float indexBoost,
                                boolean allowPartialSearchResults,
@@ -168,6 +171,7 @@ public class ShardSearchRequest extends TransportRequest implements IndicesReque
         this.source = source;
         this.types = types;
         this.requestCache = requestCache;
+        this.concurrentSegmentSearch = concurrentSegmentSearch;
         this.aliasFilter = aliasFilter;
         this.indexBoost = indexBoost;
         this.allowPartialSearchResults = allowPartialSearchResults;
@@ -223,6 +227,11 @@ public class ShardSearchRequest extends TransportRequest implements IndicesReque
             this.readerId = null;
             this.keepAlive = null;
         }
+        if (in.getVersion().onOrAfter(Version.V_0_17_0)) {
+            concurrentSegmentSearch = in.readOptionalBoolean();
+        } else {
+            concurrentSegmentSearch = null;
+        }
         originalIndices = OriginalIndices.readOriginalIndices(in);
         assert keepAlive == null || readerId != null : "readerId: " + readerId + " keepAlive: " + keepAlive;
     }
@@ -238,6 +247,7 @@ public class ShardSearchRequest extends TransportRequest implements IndicesReque
         this.indexBoost = clone.indexBoost;
         this.nowInMillis = clone.nowInMillis;
         this.requestCache = clone.requestCache;
+        this.concurrentSegmentSearch = clone.concurrentSegmentSearch;
         this.clusterAlias = clone.clusterAlias;
         this.allowPartialSearchResults = clone.allowPartialSearchResults;
         this.indexRoutings = clone.indexRoutings;
@@ -291,6 +301,9 @@ public class ShardSearchRequest extends TransportRequest implements IndicesReque
             out.writeOptionalWriteable(readerId);
             out.writeOptionalTimeValue(keepAlive);
         }
+        if (out.getVersion().onOrAfter(Version.V_0_17_0) && asKey == false) {
+            out.writeOptionalBoolean(concurrentSegmentSearch);
+        }
     }
 
     @Override
@@ -353,6 +366,14 @@ public class ShardSearchRequest extends TransportRequest implements IndicesReque
         return requestCache;
     }
 
+    /**
+     * Returns whether the segments of the shard may be searched concurrently, or <code>null</code>
+     * to use the index level setting.
+     */
+    public Boolean concurrentSegmentSearch() {
+        return concurrentSegmentSearch;
+    }
+
     public boolean allowPartialSearchResults() {
         return allowPartialSearchResults;
     }
@@ -0,0 +1,156 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.search.profile;
+
+import org.codelibs.fesen.common.ParseField;
+import org.codelibs.fesen.common.io.stream.StreamInput;
+import org.codelibs.fesen.common.io.stream.StreamOutput;
+import org.codelibs.fesen.common.io.stream.Writeable;
+import org.codelibs.fesen.common.xcontent.ConstructingObjectParser;
+import org.codelibs.fesen.common.xcontent.ToXContentObject;
+import org.codelibs.fesen.common.xcontent.XContentBuilder;
+import org.codelibs.fesen.common.xcontent.XContentParser;
+import org.codelibs.fesen.core.TimeValue;
+
+import static org.codelibs.fesen.common.xcontent.ConstructingObjectParser.constructorArg;
+
+import java.io.IOException;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The profile of the reduction of shard results on the coordinating node: how many partial reductions were performed
+ * while shard results were arriving, the time they took in total, how many of them ran concurrently at most, and the
+ * time taken by the final reduction.
+ */
+public final class ReduceProfileResult implements Writeable, ToXContentObject {
+    public static final String REDUCE_FIELD = "reduce";
+
+    static final ParseField PARTIAL_REDUCES = new ParseField("partial_reduces");
+    static final ParseField PARTIAL_REDUCE_TIME = new ParseField("partial_reduce_time");
+    static final ParseField PARTIAL_REDUCE_TIME_RAW = new ParseField("partial_reduce_time_in_nanos");
+    static final ParseField MAX_CONCURRENT_PARTIAL_REDUCES = new ParseField("max_concurrent_partial_reduces");
+    static final ParseField FINAL_REDUCE_TIME = new ParseField("final_reduce_time");
+    static final ParseField FINAL_REDUCE_TIME_RAW = new ParseField("final_reduce_time_in_nanos");
+
+    private final int partialReduces;
+    private final long partialReduceTime;
+    private final int maxConcurrentPartialReduces;
+    private final long finalReduceTime;
+
+    public ReduceProfileResult(int partialReduces, long partialReduceTime, int maxConcurrentPartialReduces, long finalReduceTime) {
+        this.partialReduces = partialReduces;
+        this.partialReduceTime = partialReduceTime;
+        this.maxConcurrentPartialReduces = maxConcurrentPartialReduces;
+        this.finalReduceTime = finalReduceTime;
+    }
+
+    /**
+     * Read from a stream.
+     */
+    public ReduceProfileResult(StreamInput in) throws IOException {
+        partialReduces = in.readVInt();
+        partialReduceTime = in.readVLong();
+        maxConcurrentPartialReduces = in.readVInt();
+        finalReduceTime = in.readVLong();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        out.writeVInt(partialReduces);
+        out.writeVLong(partialReduceTime);
+        out.writeVInt(maxConcurrentPartialReduces);
+        out.writeVLong(finalReduceTime);
+    }
+
+    /**
+     * The number of partial reductions performed before the final reduction.
+     */
+    public int getPartialReduces() {
+        return partialReduces;
+    }
+
+    /**
+     * The total time spent in partial reductions, in nanoseconds. Partial reductions that ran concurrently are summed.
+     */
+    public long getPartialReduceTime() {
+        return partialReduceTime;
+    }
+
+    /**
+     * The maximum number of partial reductions that ran at the same time.
+     */
+    public int getMaxConcurrentPartialReduces() {
+        return maxConcurrentPartialReduces;
+    }
+
+    /**
+     * The time spent in the final reduction, in nanoseconds.
+     */
+    public long getFinalReduceTime() {
+        return finalReduceTime;
+    }
+
+    @Override
+    public XContentBuilder toXContent(XContentBuilder builder, Params params) throws IOException {
+        builder.startObject();
+        builder.field(PARTIAL_REDUCES.getPreferredName(), partialReduces);
+        if (builder.humanReadable()) {
+            builder.field(PARTIAL_REDUCE_TIME.getPreferredName(), new TimeValue(partialReduceTime, TimeUnit.NANOSECONDS).toString());
+        }
+        builder.field(PARTIAL_REDUCE_TIME_RAW.getPreferredName(), partialReduceTime);
+        builder.field(MAX_CONCURRENT_PARTIAL_REDUCES.getPreferredName(), maxConcurrentPartialReduces);
+        if (builder.humanReadable()) {
+            builder.field(FINAL_REDUCE_TIME.getPreferredName(), new TimeValue(finalReduceTime, TimeUnit.NANOSECONDS).toString());
+        }
+        builder.field(FINAL_REDUCE_TIME_RAW.getPreferredName(), finalReduceTime);
+        return builder.endObject();
+    }
+
+    private static final ConstructingObjectParser<ReduceProfileResult, Void> PARSER = new ConstructingObjectParser<>(
+        "reduce_profile_result", true, args -> new ReduceProfileResult((int) args[0], (long) args[1], (int) args[2], (long) args[3]));
+    static {
+        PARSER.declareInt(constructorArg(), PARTIAL_REDUCES);
+        PARSER.declareLong(constructorArg(), PARTIAL_REDUCE_TIME_RAW);
+        PARSER.declareInt(constructorArg(), MAX_CONCURRENT_PARTIAL_REDUCES);
+        PARSER.declareLong(constructorArg(), FINAL_REDUCE_TIME_RAW);
+    }
+
+    public static ReduceProfileResult fromXContent(XContentParser parser) throws IOException {
+        return PARSER.parse(parser, null);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        ReduceProfileResult other = (ReduceProfileResult) obj;
+        return partialReduces == other.partialReduces
+            && partialReduceTime == other.partialReduceTime
+            && maxConcurrentPartialReduces == other.maxConcurrentPartialReduces
+            && finalReduceTime == other.finalReduceTime;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(partialReduces, partialReduceTime, maxConcurrentPartialReduces, finalReduceTime);
+    }
+}
@@ -1,5 +1,6 @@
 package org.codelibs.fesen.search.profile;
 
+import org.codelibs.fesen.Version;
 import org.codelibs.fesen.common.io.stream.StreamInput;
 import org.codelibs.fesen.common.io.stream.StreamOutput;
 import org.codelibs.fesen.common.io.stream.Writeable;
@@ -7,6 +8,7 @@ import org.codelibs.fesen.common.xcontent.ToXContentFragment;
 import org.codelibs.fesen.common.xcontent.XContentBuilder;
 import org.codelibs.fesen.common.xcontent.XContentParser;
 import org.codelibs.fesen.common.xcontent.ToXContent.Params;
+import org.codelibs.fesen.core.Nullable;
 import org.codelibs.fesen.search.profile.aggregation.AggregationProfileShardResult;
 import org.codelibs.fesen.search.profile.aggregation.AggregationProfiler;
 import org.codelibs.fesen.search.profile.query.QueryProfileShardResult;
@@ -24,7 +26,8 @@ import java.util.TreeSet;
 
 /**
  * A container class to hold all the profile results across all shards.  Internally
- * holds a map of shard ID -&gt; Profiled results
+ * holds a map of shard ID -&gt; Profiled results, and optionally the profile of the
+ * reduction of these results on the coordinating node.
  */
 public final class SearchProfileShardResults implements Writeable, ToXContentFragment {
 
@@ -34,9 +37,16 @@ public final class SearchProfileShardResults implements Writeable, ToXContentFra
     public static final String PROFILE_FIELD = "profile";
 
     private Map<String, ProfileShardResult> shardResults;
+    @Nullable
+    private final ReduceProfileResult reduceResult;
 
     public SearchProfileShardResults(Map<String, ProfileShardResult> shardResults) {
+        this(shardResults, null);
+    }
+
+    public SearchProfileShardResults(Map<String, ProfileShardResult> shardResults, @Nullable ReduceProfileResult reduceResult) {
         this.shardResults =  Collections.unmodifiableMap(shardResults);
+        this.reduceResult = reduceResult;
     }
 
     public SearchProfileShardResults(StreamInput in) throws IOException {
@@ -49,12 +59,25 @@ public final class SearchProfileShardResults implements Writeable, ToXContentFra
             shardResults.put(key, shardResult);
         }
         shardResults = Collections.unmodifiableMap(shardResults);
+        if (in.getVersion().onOrAfter(Version.V_0_17_0)) {
+            reduceResult = in.readOptionalWriteable(ReduceProfileResult::new);
+        } else {
+            reduceResult = null;
+        }
     }
 
     public Map<String, ProfileShardResult> getShardResults() {
         return this.shardResults;
     }
 
+    /**
+     * Returns the profile of the reduction of the shard results on the coordinating node, or <code>null</code> if unknown.
+     */
+    @Nullable
+    public ReduceProfileResult getReduceResult() {
+        return reduceResult;
+    }
+
     @Override
     public void writeTo(StreamOutput out) throws IOException {
         out.writeInt(shardResults.size());
@@ -62,6 +85,9 @@ public final class SearchProfileShardResults implements Writeable, ToXContentFra
             out.writeString(entry.getKey());
             entry.getValue().writeTo(out);
         }
+        if (out.getVersion().onOrAfter(Version.V_0_17_0)) {
+            out.writeOptionalWriteable(reduceResult);
+        }
     }
 
     @Override
@@ -82,7 +108,11 @@ public final class SearchProfileShardResults implements Writeable, ToXContentFra
             profileShardResult.getAggregationProfileResults().toXContent(builder, params);
             builder.endObject();
         }
-        builder.endArray().endObject();
+        builder.endArray();
+        if (reduceResult != null) {
+            builder.field(ReduceProfileResult.REDUCE_FIELD, reduceResult);
+        }
+        builder.endObject();
         return builder;
     }
 
@@ -90,6 +120,7 @@ public final class SearchProfileShardResults implements Writeable, ToXContentFra
         XContentParser.Token token = parser.currentToken();
         ensureExpectedToken(XContentParser.Token.START_OBJECT, token, parser);
         Map<String, ProfileShardResult> searchProfileResults = new HashMap<>();
+        ReduceProfileResult reduceResult = null;
         while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
             if (token == XContentParser.Token.START_ARRAY) {
                 if (SHARDS_FIELD.equals(parser.currentName())) {
@@ -100,10 +131,14 @@ public final class SearchProfileShardResults implements Writeable, ToXContentFra
                     parser.skipChildren();
                 }
             } else if (token == XContentParser.Token.START_OBJECT) {
-                parser.skipChildren();
+                if (ReduceProfileResult.REDUCE_FIELD.equals(parser.currentName())) {
+                    reduceResult = ReduceProfileResult.fromXContent(parser);
+                } else {
+                    parser.skipChildren();
+                }
             }
         }
-        return new SearchProfileShardResults(searchProfileResults);
+        return new SearchProfileShardResults(searchProfileResults, reduceResult);
     }
 
     private static void parseSearchProfileResultsEntry(XContentParser parser,
@@ -0,0 +1,277 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.search.query;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.CollectorManager;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.MultiCollector;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Sort;
+import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopDocsCollector;
+import org.apache.lucene.search.TopFieldCollector;
+import org.apache.lucene.search.TopFieldDocs;
+import org.apache.lucene.search.TopScoreDocCollector;
+import org.apache.lucene.search.TotalHitCountCollector;
+import org.apache.lucene.search.TotalHits;
+import org.codelibs.fesen.action.search.MaxScoreCollector;
+import org.codelibs.fesen.common.lucene.Lucene;
+import org.codelibs.fesen.common.lucene.search.TopDocsAndMaxScore;
+import org.codelibs.fesen.search.aggregations.AggregationPhase;
+import org.codelibs.fesen.search.internal.ContextIndexSearcher;
+import org.codelibs.fesen.search.internal.SearchContext;
+import org.codelibs.fesen.search.rescore.RescoreContext;
+import org.codelibs.fesen.search.sort.SortAndFormats;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static org.codelibs.fesen.search.query.QueryCollectorContext.createFilteredCollectorContext;
+import static org.codelibs.fesen.search.query.QueryCollectorContext.createMinScoreCollectorContext;
+import static org.codelibs.fesen.search.query.QueryCollectorContext.createMultiCollectorContext;
+import static org.codelibs.fesen.search.query.TopDocsCollectorContext.hasInfMaxScore;
+import static org.codelibs.fesen.search.query.TopDocsCollectorContext.shortcutTotalHitCount;
+
+/**
+ * A {@link CollectorManager} that creates the collector chain of the query phase for each slice of a
+ * concurrent segment search. The top docs collectors of the slices share the minimum competitive score
+ * and the total hits threshold, while each slice collects the aggregations into its own aggregators that
+ * are merged by the {@link AggregationPhase}. The post filter and the minimum score are applied in the same
+ * order as in the sequential collector chain.
+ */
+class ConcurrentQueryCollectorManager implements CollectorManager<Collector, Void> {
+    private final SearchContext searchContext;
+    private final ContextIndexSearcher searcher;
+    private final int numHits;
+    private final boolean rescore;
+    private final int totalHitsThreshold;
+    // the total hits when they are not computed by the collectors
+    private final TotalHits totalHits;
+    private final CollectorManager<? extends TopDocsCollector<?>, ?> topDocsManager;
+
+    private final List<TopDocsCollector<?>> topDocsCollectors = new ArrayList<>();
+    private final List<TotalHitCountCollector> hitCountCollectors = new ArrayList<>();
+    private final List<EarlyTerminatingCollector> earlyTerminatingCollectors = new ArrayList<>();
+    private final List<MaxScoreCollector> maxScoreCollectors = new ArrayList<>();
+    private int numSlices;
+
+    /**
+     * Ctr
+     * @param searchContext The search context
+     * @param query The query to execute
+     * @param hasFilterCollector True if the collector chain contains at least one collector that can filters document
+     */
+    ConcurrentQueryCollectorManager(SearchContext searchContext, Query query, boolean hasFilterCollector) throws IOException {
+        this.searchContext = searchContext;
+        this.searcher = searchContext.searcher();
+        final IndexReader reader = searcher.getIndexReader();
+        final SortAndFormats sortAndFormats = searchContext.sort();
+        final int trackTotalHitsUpTo = searchContext.trackTotalHitsUpTo();
+        // implicit total hit counts are valid only when there is no filter collector in the chain
+        final int hitCount = hasFilterCollector ? -1 : shortcutTotalHitCount(reader, query);
+        if (searchContext.size() == 0) {
+            this.numHits = 0;
+            this.rescore = false;
+            this.topDocsManager = null;
+            if (trackTotalHitsUpTo == SearchContext.TRACK_TOTAL_HITS_DISABLED) {
+                // for bwc hit count is set to 0, it will be converted to -1 by the coordinating node
+                this.totalHitsThreshold = 0;
+                this.totalHits = new TotalHits(0, TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO);
+            } else if (hitCount == -1) {
+                this.totalHitsThreshold = trackTotalHitsUpTo;
+                this.totalHits = null;
+            } else {
+                this.totalHitsThreshold = 0;
+                this.totalHits = new TotalHits(hitCount, TotalHits.Relation.EQUAL_TO);
+            }
+        } else {
+            int numDocs = Math.min(searchContext.from() + searchContext.size(), Math.max(1, reader.numDocs()));
+            this.rescore = searchContext.rescore().isEmpty() == false;
+            if (rescore) {
+                assert sortAndFormats == null;
+                for (RescoreContext rescoreContext : searchContext.rescore()) {
+                    numDocs = Math.max(numDocs, rescoreContext.getWindowSize());
+                }
+            }
+            this.numHits = numDocs;
+            if ((sortAndFormats == null || SortField.FIELD_SCORE.equals(sortAndFormats.sort.getSort()[0]))
+                    && hasInfMaxScore(query)) {
+                // disable max score optimization since we have a mandatory clause
+                // that doesn't track the maximum score
+                this.totalHitsThreshold = Integer.MAX_VALUE;
+                this.totalHits = null;
+            } else if (trackTotalHitsUpTo == SearchContext.TRACK_TOTAL_HITS_DISABLED) {
+                // don't compute hit counts via the collector
+                this.totalHitsThreshold = 1;
+                this.totalHits = new TotalHits(0, TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO);
+            } else if (hitCount == -1) {
+                this.totalHitsThreshold = trackTotalHitsUpTo;
+                this.totalHits = null;
+            } else {
+                // don't compute hit counts via the collector
+                this.totalHitsThreshold = 1;
+                this.totalHits = new TotalHits(hitCount, TotalHits.Relation.EQUAL_TO);
+            }
+            final FieldDoc searchAfter = searchContext.searchAfter();
+            if (sortAndFormats == null) {
+                this.topDocsManager = TopScoreDocCollector.createSharedManager(numHits, searchAfter, totalHitsThreshold);
+            } else {
+                this.topDocsManager = TopFieldCollector.createSharedManager(sortAndFormats.sort, numHits, searchAfter,
+                    totalHitsThreshold);
+            }
+        }
+    }
+
+    /**
+     * Returns true if the top docs should be re-scored after initial search
+     */
+    boolean shouldRescore() {
+        return rescore;
+    }
+
+    @Override
+    public Collector newCollector() throws IOException {
+        Collector collector = newTopDocsCollector();
+        if (searchContext.parsedPostFilter() != null) {
+            // add post filters before aggregations
+            // it will only be applied to top hits
+            collector = createFilteredCollectorContext(searcher, searchContext.parsedPostFilter().query()).create(collector);
+        }
+        if (searchContext.queryCollectors().isEmpty() == false) {
+            // the first slice uses the aggregators that were created by the aggregation phase
+            final Collection<Collector> subs = numSlices == 0
+                ? searchContext.queryCollectors().values()
+                : Collections.singletonList(AggregationPhase.createSliceCollector(searchContext));
+            collector = createMultiCollectorContext(subs).create(collector);
+        }
+        if (searchContext.minimumScore() != null) {
+            // apply the minimum score after multi collector so we filter aggs as well
+            collector = createMinScoreCollectorContext(searchContext.minimumScore()).create(collector);
+        }
+        numSlices++;
+        return collector;
+    }
+
+    private Collector newTopDocsCollector() throws IOException {
+        if (topDocsManager == null) {
+            final TotalHitCountCollector hitCountCollector = new TotalHitCountCollector();
+            hitCountCollectors.add(hitCountCollector);
+            if (totalHitsThreshold == SearchContext.TRACK_TOTAL_HITS_ACCURATE) {
+                return hitCountCollector;
+            }
+            final EarlyTerminatingCollector collector = new EarlyTerminatingCollector(hitCountCollector, totalHitsThreshold, false);
+            earlyTerminatingCollectors.add(collector);
+            return collector;
+        }
+        final TopDocsCollector<?> topDocsCollector = topDocsManager.newCollector();
+        topDocsCollectors.add(topDocsCollector);
+        MaxScoreCollector maxScoreCollector = null;
+        if (searchContext.sort() != null && searchContext.trackScores()) {
+            maxScoreCollector = new MaxScoreCollector();
+            maxScoreCollectors.add(maxScoreCollector);
+        }
+        return MultiCollector.wrap(topDocsCollector, maxScoreCollector);
+    }
+
+    /**
+     * Merges the top docs of the slices into the query result. Aggregations are merged later by the {@link AggregationPhase}.
+     * This method is also called with partial results when the search timed out.
+     */
+    @Override
+    public Void reduce(Collection<Collector> collectors) throws IOException {
+        final SortAndFormats sortAndFormats = searchContext.sort();
+        final TopDocsAndMaxScore topDocs;
+        if (topDocsManager == null) {
+            final TotalHits hits;
+            if (totalHits != null) {
+                hits = totalHits;
+            } else {
+                long count = 0;
+                for (TotalHitCountCollector collector : hitCountCollectors) {
+                    count += collector.getTotalHits();
+                }
+                boolean earlyTerminated = false;
+                for (EarlyTerminatingCollector collector : earlyTerminatingCollectors) {
+                    earlyTerminated |= collector.hasEarlyTerminated();
+                }
+                hits = new TotalHits(count, earlyTerminated ? TotalHits.Relation.GREATER_THAN_OR_EQUAL_TO : TotalHits.Relation.EQUAL_TO);
+            }
+            if (sortAndFormats != null) {
+                topDocs = new TopDocsAndMaxScore(new TopFieldDocs(hits, Lucene.EMPTY_SCORE_DOCS, sortAndFormats.sort.getSort()), Float.NaN);
+            } else {
+                topDocs = new TopDocsAndMaxScore(new TopDocs(hits, Lucene.EMPTY_SCORE_DOCS), Float.NaN);
+            }
+            searchContext.queryResult().topDocs(topDocs, null);
+            return null;
+        }
+
+        TopDocs merged;
+        if (sortAndFormats == null) {
+            final TopDocs[] slices = new TopDocs[topDocsCollectors.size()];
+            for (int i = 0; i < slices.length; i++) {
+                slices[i] = topDocsCollectors.get(i).topDocs();
+            }
+            merged = TopDocs.merge(0, numHits, slices, true);
+        } else {
+            final Sort sort = sortAndFormats.sort;
+            final TopFieldDocs[] slices = new TopFieldDocs[topDocsCollectors.size()];
+            for (int i = 0; i < slices.length; i++) {
+                slices[i] = (TopFieldDocs) topDocsCollectors.get(i).topDocs();
+            }
+            merged = TopDocs.merge(sort, 0, numHits, slices, true);
+        }
+        // Lucene sets shards indexes during merging of topDocs from different collectors
+        // We need to reset shard index; ES will set shard index later during reduce stage
+        for (ScoreDoc scoreDoc : merged.scoreDocs) {
+            scoreDoc.shardIndex = -1;
+        }
+        if (totalHits != null) {
+            if (merged instanceof TopFieldDocs) {
+                merged = new TopFieldDocs(totalHits, merged.scoreDocs, ((TopFieldDocs) merged).fields);
+            } else {
+                merged = new TopDocs(totalHits, merged.scoreDocs);
+            }
+        }
+
+        float maxScore = Float.NaN;
+        if (sortAndFormats == null) {
+            if (merged.scoreDocs.length > 0) {
+                maxScore = merged.scoreDocs[0].score;
+            }
+        } else {
+            for (MaxScoreCollector collector : maxScoreCollectors) {
+                final float sliceMaxScore = collector.getMaxScore();
+                if (Float.isNaN(maxScore) || sliceMaxScore > maxScore) {
+                    maxScore = sliceMaxScore;
+                }
+            }
+        }
+        searchContext.queryResult().topDocs(new TopDocsAndMaxScore(merged, maxScore),
+            sortAndFormats == null ? null : sortAndFormats.formats);
+        return null;
+    }
+}
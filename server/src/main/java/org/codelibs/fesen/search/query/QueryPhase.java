@@ -292,6 +292,8 @@ public class QueryPhase {
                 // if we are optimizing sort and there are no other collectors
                 if (sortAndFormatsForRewrittenNumericSort!=null && collectors.size()==0 && searchContext.getProfilers()==null) {
                     shouldRescore = searchWithCollectorManager(searchContext, searcher, query, leafSorter, timeoutSet);
+                } else if (canSearchConcurrently(searchContext)) {
+                    shouldRescore = searchWithConcurrentCollectorManager(searchContext, searcher, query, hasFilterCollector, timeoutSet);
                 } else {
                     shouldRescore = searchWithCollector(searchContext, searcher, query, collectors, hasFilterCollector, timeoutSet);
                 }
@@ -406,6 +408,49 @@ public class QueryPhase {
         return false; // no rescoring when sorting by field
     }
 
+    /**
+     * Returns true if the slices of the searcher can be collected concurrently. This requires a searcher with an executor
+     * and no profiling, and excludes the features that need to see the documents of the shard in order: scroll, field
+     * collapsing, terminate_after and aggregations that don't support concurrent segment search.
+     */
+    static boolean canSearchConcurrently(SearchContext searchContext) {
+        if (searchContext.searcher().isConcurrent() == false) return false;
+        if (searchContext.getProfilers() != null) return false;
+        if (searchContext.scrollContext() != null) return false;
+        if (searchContext.collapse() != null) return false;
+        if (searchContext.terminateAfter() != SearchContext.DEFAULT_TERMINATE_AFTER) return false;
+        for (Class<?> key : searchContext.queryCollectors().keySet()) {
+            // plugins may register collectors that can't be created per slice
+            if (key != AggregationPhase.class) return false;
+        }
+        if (searchContext.aggregations() != null
+                && searchContext.aggregations().factories().supportsConcurrentSegmentSearch() == false) return false;
+        return true;
+    }
+
+    /*
+     * We use a concurrent collector manager when the index or the request enables concurrent segment search.
+     * Each slice of the searcher is collected by its own collector chain and the results are merged once all
+     * slices are done.
+     */
+    private static boolean searchWithConcurrentCollectorManager(SearchContext searchContext, ContextIndexSearcher searcher, Query query,
+            boolean hasFilterCollector, boolean timeoutSet) throws IOException {
+        final ConcurrentQueryCollectorManager manager = new ConcurrentQueryCollectorManager(searchContext, query, hasFilterCollector);
+        try {
+            searcher.search(query, manager);
+        } catch (TimeExceededException e) {
+            assert timeoutSet : "TimeExceededException thrown even though timeout wasn't set";
+            if (searchContext.request().allowPartialSearchResults() == false) {
+                // Can't rethrow TimeExceededException because not serializable
+                throw new QueryPhaseExecutionException(searchContext.shardTarget(), "Time exceeded");
+            }
+            searchContext.queryResult().searchTimedOut(true);
+            // all slices are done, merge what they collected before the timeout
+            manager.reduce(Collections.emptyList());
+        }
+        return manager.shouldRescore();
+    }
+
     private static Query tryRewriteLongSort(SearchContext searchContext, IndexReader reader,
                                             Query query, boolean hasFilterCollector) throws IOException {
         if ((searchContext.from() + searchContext.size()) <= 0) return null;
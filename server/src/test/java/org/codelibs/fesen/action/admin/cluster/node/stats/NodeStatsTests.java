@@ -304,6 +304,8 @@ public class NodeStatsTests extends ESTestCase {
                 } else {
                     assertEquals(adaptiveStats.getOutgoingConnections(), deserializedAdaptiveStats.getOutgoingConnections());
                     assertEquals(adaptiveStats.getRanks(), deserializedAdaptiveStats.getRanks());
+                    assertEquals(adaptiveStats.getHedgedRequests(), deserializedAdaptiveStats.getHedgedRequests());
+                    assertEquals(adaptiveStats.getHedgedRequestsWon(), deserializedAdaptiveStats.getHedgedRequestsWon());
                     adaptiveStats.getComputedStats().forEach((k, v) -> {
                         ResponseCollectorService.ComputedNodeStats aStats = adaptiveStats.getComputedStats().get(k);
                         ResponseCollectorService.ComputedNodeStats bStats = deserializedAdaptiveStats.getComputedStats().get(k);
@@ -513,7 +515,9 @@ public class NodeStatsTests extends ESTestCase {
                     nodeStats.put(nodeId, stats);
                 }
             }
-            adaptiveSelectionStats = new AdaptiveSelectionStats(nodeConnections, nodeStats);
+            long hedgedRequests = randomLongBetween(0, 1000);
+            adaptiveSelectionStats = new AdaptiveSelectionStats(nodeConnections, nodeStats, hedgedRequests,
+                randomLongBetween(0, hedgedRequests));
         }
         ScriptCacheStats scriptCacheStats = scriptStats != null ? scriptStats.toScriptCacheStats() : null;
         //TODO NodeIndicesStats are not tested here, way too complicated to create, also they need to be migrated to Writeable yet
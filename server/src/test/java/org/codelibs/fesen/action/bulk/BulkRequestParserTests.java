@@ -19,12 +19,16 @@
 
 package org.codelibs.fesen.action.bulk;
 
+import org.codelibs.fesen.action.DocWriteRequest;
 import org.codelibs.fesen.action.bulk.BulkRequestParser;
 import org.codelibs.fesen.action.index.IndexRequest;
+import org.codelibs.fesen.action.update.UpdateRequest;
 import org.codelibs.fesen.common.bytes.BytesArray;
 import org.codelibs.fesen.common.xcontent.XContentType;
 import org.codelibs.fesen.rest.action.document.RestBulkAction;
 import org.codelibs.fesen.test.ESTestCase;
+import org.codelibs.fesen.threadpool.TestThreadPool;
+import org.codelibs.fesen.threadpool.ThreadPool;
 import org.hamcrest.Matchers;
 
 import java.io.IOException;
@@ -161,6 +165,29 @@ public class BulkRequestParserTests extends ESTestCase {
         assertWarnings(RestBulkAction.TYPES_DEPRECATION_MESSAGE);
     }
 
+    public void testParallelParseTypeWarning() throws Exception {
+        final int numItems = BulkRequestParser.MIN_ITEMS_PER_CHUNK * 4;
+        // only the last item has a type, its chunk may be parsed on a forked thread or on the calling one
+        final StringBuilder body = new StringBuilder();
+        for (int i = 0; i < numItems - 1; i++) {
+            body.append("{ \"index\":{ \"_id\": \"").append(i).append("\" } }\n{}\n");
+        }
+        body.append("{ \"index\":{ \"_type\": \"quux\", \"_id\": \"bar\" } }\n{}\n");
+        final BytesArray request = new BytesArray(body.toString());
+        final ThreadPool threadPool = new TestThreadPool(getTestName());
+        try {
+            final List<DocWriteRequest<?>> requests = new ArrayList<>();
+            new BulkRequestParser(true, threadPool.generic(), 4).parse(request, "foo", null, null, null, null, false,
+                    XContentType.JSON, requests::add, req -> fail(), req -> fail());
+            assertThat(requests, Matchers.hasSize(numItems));
+            assertEquals("quux", requests.get(numItems - 1).type());
+        } finally {
+            terminate(threadPool);
+        }
+
+        assertWarnings(RestBulkAction.TYPES_DEPRECATION_MESSAGE);
+    }
+
     public void testParseDeduplicatesParameterStrings() throws IOException {
         BytesArray request = new BytesArray(
                 "{ \"index\":{ \"_index\": \"bar\", \"pipeline\": \"foo\", \"routing\": \"blub\"} }\n{}\n"
@@ -177,4 +204,83 @@ public class BulkRequestParserTests extends ESTestCase {
         assertSame(first.getPipeline(), second.getPipeline());
         assertSame(first.routing(), second.routing());
     }
+
+    public void testParallelParseMatchesSequentialParse() throws Exception {
+        final int numItems = randomIntBetween(1, BulkRequestParser.MIN_ITEMS_PER_CHUNK * 8);
+        final StringBuilder body = new StringBuilder();
+        for (int i = 0; i < numItems; i++) {
+            switch (randomIntBetween(0, 3)) {
+                case 0:
+                    body.append("{ \"index\":{ \"_id\": \"").append(i).append("\", \"routing\": \"r").append(i % 7).append("\" } }\n");
+                    body.append("{ \"field\": ").append(i).append(" }\n");
+                    break;
+                case 1:
+                    body.append("{ \"create\":{ \"_index\": \"idx").append(i % 3).append("\", \"_id\": \"").append(i).append("\" } }\n");
+                    body.append("{ \"field\": ").append(i).append(" }\n");
+                    break;
+                case 2:
+                    body.append("{ \"update\":{ \"_id\": \"").append(i).append("\" } }\n");
+                    body.append("{ \"doc\": { \"field\": ").append(i).append(" } }\n");
+                    break;
+                default:
+                    body.append("{ \"delete\":{ \"_id\": \"").append(i).append("\" } }\n");
+                    break;
+            }
+            if (rarely()) {
+                body.append("\n");
+            }
+        }
+        final BytesArray request = new BytesArray(body.toString());
+        final List<DocWriteRequest<?>> expected = new ArrayList<>();
+        new BulkRequestParser(false).parse(request, "foo", null, null, null, null, true, XContentType.JSON,
+                expected::add, expected::add, expected::add);
+        assertThat(expected, Matchers.hasSize(numItems));
+
+        final ThreadPool threadPool = new TestThreadPool(getTestName());
+        try {
+            final List<DocWriteRequest<?>> actual = new ArrayList<>();
+            new BulkRequestParser(false, threadPool.generic(), randomIntBetween(2, 8)).parse(request, "foo", null, null, null, null,
+                    true, XContentType.JSON, actual::add, actual::add, actual::add);
+            assertThat(actual, Matchers.hasSize(numItems));
+            for (int i = 0; i < numItems; i++) {
+                final DocWriteRequest<?> expectedRequest = expected.get(i);
+                final DocWriteRequest<?> actualRequest = actual.get(i);
+                assertEquals(expectedRequest.opType(), actualRequest.opType());
+                assertEquals(expectedRequest.index(), actualRequest.index());
+                assertEquals(expectedRequest.id(), actualRequest.id());
+                assertEquals(expectedRequest.routing(), actualRequest.routing());
+                if (expectedRequest instanceof IndexRequest) {
+                    assertEquals(((IndexRequest) expectedRequest).source(), ((IndexRequest) actualRequest).source());
+                } else if (expectedRequest instanceof UpdateRequest) {
+                    assertEquals(((UpdateRequest) expectedRequest).doc().source(), ((UpdateRequest) actualRequest).doc().source());
+                }
+            }
+        } finally {
+            terminate(threadPool);
+        }
+    }
+
+    public void testParallelParseReportsFirstMalformedLine() throws Exception {
+        final int numItems = BulkRequestParser.MIN_ITEMS_PER_CHUNK * 4;
+        final int malformed = randomIntBetween(numItems / 2, numItems - 1);
+        final StringBuilder body = new StringBuilder();
+        for (int i = 0; i < numItems; i++) {
+            if (i == malformed || i == numItems - 1) {
+                body.append("{ \"index\":{ \"_id\": \"").append(i).append("\", \"unknown\": 1 } }\n{}\n");
+            } else {
+                body.append("{ \"index\":{ \"_id\": \"").append(i).append("\" } }\n{}\n");
+            }
+        }
+        final BytesArray request = new BytesArray(body.toString());
+        final ThreadPool threadPool = new TestThreadPool(getTestName());
+        try {
+            BulkRequestParser parser = new BulkRequestParser(false, threadPool.generic(), 4);
+            IllegalArgumentException e = expectThrows(IllegalArgumentException.class,
+                () -> parser.parse(request, "foo", null, null, null, null, false, XContentType.JSON,
+                    req -> fail(), req -> fail(), req -> fail()));
+            assertEquals("Action/metadata line [" + (2 * malformed + 1) + "] contains an unknown parameter [unknown]", e.getMessage());
+        } finally {
+            terminate(threadPool);
+        }
+    }
 }
@@ -129,6 +129,56 @@ public class QueryPhaseResultConsumerTests extends ESTestCase {
         assertEquals(1, searchProgressListener.onFinalReduce.get());
     }
 
+    public void testProgressListenerIsCalledWithoutHoldingTheLock() throws Exception {
+        CountDownLatch allConsumed = new CountDownLatch(1);
+        AtomicReference<Boolean> consumedWhileNotifying = new AtomicReference<>();
+        List<TotalHits> partialTotalHits = Collections.synchronizedList(new ArrayList<>());
+        SearchProgressListener searchProgressListener = new SearchProgressListener() {
+            @Override
+            protected void onPartialReduce(List<SearchShard> shards, TotalHits totalHits, InternalAggregations aggs, int reducePhase) {
+                partialTotalHits.add(totalHits);
+                if (consumedWhileNotifying.get() == null) {
+                    // the remaining results can only be consumed if the consumer isn't locked by this notification
+                    try {
+                        consumedWhileNotifying.set(allConsumed.await(10, TimeUnit.SECONDS));
+                    } catch (InterruptedException e) {
+                        throw new AssertionError(e);
+                    }
+                }
+            }
+        };
+
+        SearchRequest searchRequest = new SearchRequest("index");
+        searchRequest.setBatchedReduceSize(2);
+        AtomicReference<Exception> onPartialMergeFailure = new AtomicReference<>();
+        QueryPhaseResultConsumer queryPhaseResultConsumer = new QueryPhaseResultConsumer(searchRequest, executor,
+            new NoopCircuitBreaker(CircuitBreaker.REQUEST), searchPhaseController, searchProgressListener,
+            writableRegistry(), 10, onPartialMergeFailure::set);
+
+        CountDownLatch partialReduceLatch = new CountDownLatch(10);
+        for (int i = 0; i < 10; i++) {
+            SearchShardTarget searchShardTarget = new SearchShardTarget("node", new ShardId("index", "uuid", i),
+                null, OriginalIndices.NONE);
+            QuerySearchResult querySearchResult = new QuerySearchResult();
+            TopDocs topDocs = new TopDocs(new TotalHits(1, TotalHits.Relation.EQUAL_TO), new ScoreDoc[0]);
+            querySearchResult.topDocs(new TopDocsAndMaxScore(topDocs, Float.NaN), new DocValueFormat[0]);
+            querySearchResult.setSearchShardTarget(searchShardTarget);
+            querySearchResult.setShardIndex(i);
+            queryPhaseResultConsumer.consumeResult(querySearchResult, partialReduceLatch::countDown);
+        }
+        allConsumed.countDown();
+
+        assertTrue(partialReduceLatch.await(10, TimeUnit.SECONDS));
+        assertNull(onPartialMergeFailure.get());
+        assertEquals(Boolean.TRUE, consumedWhileNotifying.get());
+        long previous = 0;
+        for (TotalHits totalHits : partialTotalHits) {
+            assertTrue(totalHits.value >= previous);
+            previous = totalHits.value;
+        }
+        assertEquals(10, queryPhaseResultConsumer.reduce().totalHits.value);
+    }
+
     private static class ThrowingSearchProgressListener extends SearchProgressListener {
         private final AtomicInteger onQueryResult = new AtomicInteger(0);
         private final AtomicInteger onPartialReduce = new AtomicInteger(0);
@@ -39,17 +39,23 @@ import org.codelibs.fesen.cluster.routing.GroupShardsIterator;
 import org.codelibs.fesen.cluster.routing.RecoverySource;
 import org.codelibs.fesen.cluster.routing.ShardRouting;
 import org.codelibs.fesen.cluster.routing.UnassignedInfo;
+import org.codelibs.fesen.cluster.service.ClusterService;
 import org.codelibs.fesen.common.Strings;
 import org.codelibs.fesen.common.UUIDs;
 import org.codelibs.fesen.common.io.stream.StreamOutput;
+import org.codelibs.fesen.core.TimeValue;
 import org.codelibs.fesen.index.Index;
 import org.codelibs.fesen.index.shard.ShardId;
+import org.codelibs.fesen.node.AdaptiveSelectionStats;
+import org.codelibs.fesen.node.ResponseCollectorService;
 import org.codelibs.fesen.search.SearchPhaseResult;
 import org.codelibs.fesen.search.SearchShardTarget;
 import org.codelibs.fesen.search.internal.AliasFilter;
 import org.codelibs.fesen.search.internal.InternalSearchResponse;
 import org.codelibs.fesen.search.internal.ShardSearchContextId;
 import org.codelibs.fesen.test.ESTestCase;
+import org.codelibs.fesen.threadpool.TestThreadPool;
+import org.codelibs.fesen.threadpool.ThreadPool;
 import org.codelibs.fesen.transport.Transport;
 import org.codelibs.fesen.transport.TransportException;
 import org.codelibs.fesen.transport.TransportRequest;
@@ -74,6 +80,7 @@ import static org.codelibs.fesen.common.util.concurrent.ConcurrentCollections.ne
 import static org.codelibs.fesen.common.util.concurrent.ConcurrentCollections.newConcurrentSet;
 import static org.hamcrest.Matchers.containsString;
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.mockito.Mockito.mock;
 
 public class SearchAsyncActionTests extends ESTestCase {
 
@@ -592,6 +599,115 @@ public class SearchAsyncActionTests extends ESTestCase {
         assertThat(numFailReplicas.get(), greaterThanOrEqualTo(1));
     }
 
+    public void testHedgeSlowShardRequests() throws Exception {
+        SearchRequest request = new SearchRequest();
+        request.allowPartialSearchResults(true);
+        AtomicReference<TestSearchResponse> response = new AtomicReference<>();
+        ActionListener<SearchResponse> responseListener = ActionListener.wrap(
+            searchResponse -> response.set((TestSearchResponse) searchResponse),
+            (e) -> { throw new AssertionError("unexpected", e);});
+        DiscoveryNode primaryNode = new DiscoveryNode("node_1", buildNewFakeTransportAddress(), Version.CURRENT);
+        DiscoveryNode replicaNode = new DiscoveryNode("node_2", buildNewFakeTransportAddress(), Version.CURRENT);
+
+        AtomicInteger contextIdGenerator = new AtomicInteger(0);
+        int numShards = randomIntBetween(1, 10);
+        // the slow requests must not hold back requests to other shards
+        request.setMaxConcurrentShardRequests(randomIntBetween(numShards, 100));
+        GroupShardsIterator<SearchShardIterator> shardsIter = getShardsIter("idx",
+                new OriginalIndices(new String[]{"idx"}, SearchRequest.DEFAULT_INDICES_OPTIONS),
+                numShards, true, primaryNode, replicaNode);
+        Set<ShardSearchContextId> freedContexts = newConcurrentSet();
+        SearchTransportService transportService = new SearchTransportService(null, null) {
+            @Override
+            public void sendFreeContext(Transport.Connection connection, ShardSearchContextId contextId, OriginalIndices originalIndices) {
+                assertTrue(freedContexts.add(contextId));
+            }
+        };
+        Map<String, Transport.Connection> lookup = new HashMap<>();
+        lookup.put(primaryNode.getId(), new MockConnection(primaryNode));
+        lookup.put(replicaNode.getId(), new MockConnection(replicaNode));
+        Map<String, AliasFilter> aliasFilters = Collections.singletonMap("_na_", new AliasFilter(null, Strings.EMPTY_ARRAY));
+        ExecutorService executor = Executors.newFixedThreadPool(randomIntBetween(1, Runtime.getRuntime().availableProcessors()));
+        ThreadPool threadPool = new TestThreadPool(getTestName());
+        ResponseCollectorService responseCollectorService = new ResponseCollectorService(mock(ClusterService.class));
+        ShardRequestHedging hedging = new ShardRequestHedging(threadPool, responseCollectorService, TimeValue.timeValueMillis(1),
+            TimeValue.ZERO, 2.0d);
+        // the first request sent for each shard never responds before the hedged request did
+        Map<ShardId, Runnable> slowResponses = new ConcurrentHashMap<>();
+        Set<ShardSearchContextId> slowContexts = newConcurrentSet();
+        final CountDownLatch latch = new CountDownLatch(1);
+        try {
+            AbstractSearchAsyncAction<TestSearchPhaseResult> asyncAction =
+                new AbstractSearchAsyncAction<TestSearchPhaseResult>(
+                    "test",
+                    logger,
+                    transportService,
+                    (cluster, node) -> {
+                        assert cluster == null : "cluster was not null: " + cluster;
+                        return lookup.get(node); },
+                    aliasFilters,
+                    Collections.emptyMap(),
+                    Collections.emptyMap(),
+                    executor,
+                    request,
+                    responseListener,
+                    shardsIter,
+                    new TransportSearchAction.SearchTimeProvider(0, 0, () -> 0),
+                    ClusterState.EMPTY_STATE,
+                    null,
+                    new ArraySearchPhaseResults<>(shardsIter.size()),
+                    request.getMaxConcurrentShardRequests(),
+                    SearchResponse.Clusters.EMPTY,
+                    hedging) {
+                    TestSearchResponse response = new TestSearchResponse();
+
+                    @Override
+                    protected void executePhaseOnShard(SearchShardIterator shardIt, SearchShardTarget shard,
+                                                       SearchActionListener<TestSearchPhaseResult> listener) {
+                        Transport.Connection connection = getConnection(null, shard.getNodeId());
+                        TestSearchPhaseResult testSearchPhaseResult = new TestSearchPhaseResult(
+                            new ShardSearchContextId(UUIDs.randomBase64UUID(), contextIdGenerator.incrementAndGet()),
+                            connection.getNode());
+                        if (response.queried.add(shard.getShardId())) {
+                            slowContexts.add(testSearchPhaseResult.getContextId());
+                            slowResponses.put(shard.getShardId(), () -> listener.onResponse(testSearchPhaseResult));
+                        } else {
+                            new Thread(() -> listener.onResponse(testSearchPhaseResult)).start();
+                        }
+                    }
+
+                    @Override
+                    protected SearchPhase getNextPhase(SearchPhaseResults<TestSearchPhaseResult> results, SearchPhaseContext context) {
+                        return new SearchPhase("test") {
+                            @Override
+                            public void run() {
+                                for (int i = 0; i < results.getNumShards(); i++) {
+                                    TestSearchPhaseResult result = results.getAtomicArray().get(i);
+                                    assertFalse(slowContexts.contains(result.getContextId()));
+                                }
+                                responseListener.onResponse(response);
+                                latch.countDown();
+                            }
+                        };
+                    }
+                };
+            asyncAction.start();
+            latch.await();
+            assertNotNull(response.get());
+            assertEquals(numShards, slowResponses.size());
+            AdaptiveSelectionStats stats = responseCollectorService.getAdaptiveStats(Collections.emptyMap());
+            assertEquals(numShards, stats.getHedgedRequests());
+            assertEquals(numShards, stats.getHedgedRequestsWon());
+            // the slow responses lose the race and their reader contexts are released
+            assertTrue(freedContexts.isEmpty());
+            slowResponses.values().forEach(Runnable::run);
+            assertEquals(slowContexts, freedContexts);
+        } finally {
+            executor.shutdown();
+            terminate(threadPool);
+        }
+    }
+
     static GroupShardsIterator<SearchShardIterator> getShardsIter(String index, OriginalIndices originalIndices, int numShards,
                                                      boolean doReplicas, DiscoveryNode primaryNode, DiscoveryNode replicaNode) {
         ArrayList<SearchShardIterator> list = new ArrayList<>();
@@ -69,6 +69,9 @@ import org.codelibs.fesen.search.fetch.FetchSearchResult;
 import org.codelibs.fesen.search.internal.InternalSearchResponse;
 import org.codelibs.fesen.search.internal.SearchContext;
 import org.codelibs.fesen.search.internal.ShardSearchContextId;
+import org.codelibs.fesen.search.profile.ProfileShardResult;
+import org.codelibs.fesen.search.profile.ReduceProfileResult;
+import org.codelibs.fesen.search.profile.aggregation.AggregationProfileShardResult;
 import org.codelibs.fesen.search.query.QuerySearchResult;
 import org.codelibs.fesen.search.suggest.SortBy;
 import org.codelibs.fesen.search.suggest.Suggest;
@@ -554,6 +557,70 @@ public class SearchPhaseControllerTests extends ESTestCase {
         assertNull(reduce.sortedTopDocs.collapseValues);
     }
 
+    public void testConsumerConcurrentPartialReduces() throws Exception {
+        int expectedNumResults = randomIntBetween(20, 200);
+        int bufferSize = randomIntBetween(2, 10);
+        int maxConcurrentReduces = randomIntBetween(2, 4);
+        EsThreadPoolExecutor reduceExecutor = EsExecutors.newFixed("test_reduce", maxConcurrentReduces, 100,
+            EsExecutors.daemonThreadFactory("test_reduce"), threadPool.getThreadContext());
+        try {
+            SearchRequest request = randomSearchRequest();
+            request.source(new SearchSourceBuilder().aggregation(AggregationBuilders.avg("foo")));
+            request.setBatchedReduceSize(bufferSize);
+            AssertingCircuitBreaker circuitBreaker = new AssertingCircuitBreaker(CircuitBreaker.REQUEST);
+            QueryPhaseResultConsumer consumer = searchPhaseController.newSearchPhaseResults(reduceExecutor,
+                circuitBreaker, SearchProgressListener.NOOP, request, expectedNumResults, maxConcurrentReduces, exc -> {});
+            AtomicInteger max = new AtomicInteger();
+            Thread[] threads = new Thread[expectedNumResults];
+            CountDownLatch latch = new CountDownLatch(expectedNumResults);
+            for (int i = 0; i < expectedNumResults; i++) {
+                int id = i;
+                threads[i] = new Thread(() -> {
+                    int number = randomIntBetween(1, 1000);
+                    max.updateAndGet(prev -> Math.max(prev, number));
+                    QuerySearchResult result = new QuerySearchResult(new ShardSearchContextId("", id),
+                        new SearchShardTarget("node", new ShardId("a", "b", id), null, OriginalIndices.NONE), null);
+                    result.topDocs(new TopDocsAndMaxScore(
+                            new TopDocs(new TotalHits(1, TotalHits.Relation.EQUAL_TO), new ScoreDoc[] {new ScoreDoc(0, number)}), number),
+                        new DocValueFormat[0]);
+                    InternalAggregations aggs = InternalAggregations.from(Collections.singletonList(
+                        new InternalMax("test", (double) number, DocValueFormat.RAW, Collections.emptyMap())));
+                    result.aggregations(aggs);
+                    result.profileResults(new ProfileShardResult(Collections.emptyList(),
+                        new AggregationProfileShardResult(Collections.emptyList())));
+                    result.setShardIndex(id);
+                    result.size(1);
+                    consumer.consumeResult(result, latch::countDown);
+                });
+                threads[i].start();
+            }
+            for (int i = 0; i < expectedNumResults; i++) {
+                threads[i].join();
+            }
+            latch.await();
+
+            SearchPhaseController.ReducedQueryPhase reduce = consumer.reduce();
+            InternalMax internalMax = (InternalMax) reduce.aggregations.asList().get(0);
+            assertEquals(max.get(), internalMax.getValue(), 0.0D);
+            assertEquals(1, reduce.sortedTopDocs.scoreDocs.length);
+            assertEquals(max.get(), reduce.maxScore, 0.0f);
+            assertEquals(expectedNumResults, reduce.totalHits.value);
+            assertEquals(max.get(), reduce.sortedTopDocs.scoreDocs[0].score, 0.0f);
+
+            ReduceProfileResult reduceProfile = reduce.shardResults.getReduceResult();
+            assertNotNull(reduceProfile);
+            assertEquals(reduce.numReducePhases - 1, reduceProfile.getPartialReduces());
+            assertThat(reduceProfile.getMaxConcurrentPartialReduces(), lessThanOrEqualTo(maxConcurrentReduces));
+            assertThat(reduceProfile.getPartialReduceTime(), greaterThanOrEqualTo(0L));
+            assertThat(reduceProfile.getFinalReduceTime(), greaterThanOrEqualTo(0L));
+
+            consumer.close();
+            assertThat(circuitBreaker.allocated, equalTo(0L));
+        } finally {
+            reduceExecutor.shutdownNow();
+        }
+    }
+
     public void testConsumerOnlyAggs() throws Exception {
         int expectedNumResults = randomIntBetween(1, 100);
         int bufferSize = randomIntBetween(2, 200);
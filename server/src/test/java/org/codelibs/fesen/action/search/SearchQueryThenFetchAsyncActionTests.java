@@ -20,7 +20,9 @@
 package org.codelibs.fesen.action.search;
 
 import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.SortField;
+import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.search.TopFieldDocs;
 import org.apache.lucene.search.TotalHits;
 import org.apache.lucene.search.grouping.CollapseTopFieldDocs;
@@ -45,6 +47,7 @@ import org.codelibs.fesen.common.Strings;
 import org.codelibs.fesen.common.breaker.CircuitBreaker;
 import org.codelibs.fesen.common.breaker.NoopCircuitBreaker;
 import org.codelibs.fesen.common.lucene.search.TopDocsAndMaxScore;
+import org.codelibs.fesen.common.util.concurrent.ConcurrentCollections;
 import org.codelibs.fesen.common.util.concurrent.EsExecutors;
 import org.codelibs.fesen.core.TimeValue;
 import org.codelibs.fesen.index.shard.ShardId;
@@ -60,10 +63,14 @@ import org.codelibs.fesen.search.query.QuerySearchResult;
 import org.codelibs.fesen.search.sort.SortBuilders;
 import org.codelibs.fesen.test.ESTestCase;
 import org.codelibs.fesen.test.InternalAggregationTestCase;
+import org.codelibs.fesen.test.VersionUtils;
 import org.codelibs.fesen.transport.Transport;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executor;
@@ -73,6 +80,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
 
 public class SearchQueryThenFetchAsyncActionTests extends ESTestCase {
     public void testBottomFieldSort() throws Exception {
@@ -87,6 +95,104 @@ public class SearchQueryThenFetchAsyncActionTests extends ESTestCase {
         testCase(false, true);
     }
 
+    public void testBatchedQueryPhase() throws Exception {
+        final TransportSearchAction.SearchTimeProvider timeProvider =
+            new TransportSearchAction.SearchTimeProvider(0, System.nanoTime(), System::nanoTime);
+
+        Map<String, Transport.Connection> lookup = new ConcurrentHashMap<>();
+        // nodes before 0.17.0 don't know the batched action and must get one message per shard
+        Version primaryVersion = randomBoolean() ? Version.CURRENT
+            : VersionUtils.randomVersionBetween(random(), Version.V_0_10_0, VersionUtils.getPreviousVersion(Version.V_0_17_0));
+        DiscoveryNode primaryNode = new DiscoveryNode("node_1", buildNewFakeTransportAddress(), primaryVersion);
+        DiscoveryNode replicaNode = new DiscoveryNode("node_2", buildNewFakeTransportAddress(), Version.CURRENT);
+        lookup.put(primaryNode.getId(), new SearchAsyncActionTests.MockConnection(primaryNode));
+        lookup.put(replicaNode.getId(), new SearchAsyncActionTests.MockConnection(replicaNode));
+
+        int numShards = randomIntBetween(2, 20);
+        Set<ShardId> queried = ConcurrentCollections.newConcurrentSet();
+        Map<String, Integer> batchSizes = new ConcurrentHashMap<>();
+        Map<String, Integer> singleRequests = new ConcurrentHashMap<>();
+        SearchTransportService searchTransportService = new SearchTransportService(null, null) {
+            @Override
+            public void sendExecuteQuery(Transport.Connection connection, ShardSearchRequest request,
+                                         SearchTask task, SearchActionListener<SearchPhaseResult> listener) {
+                singleRequests.merge(connection.getNode().getId(), 1, Integer::sum);
+                respond(connection, request, listener);
+            }
+
+            @Override
+            public void sendExecuteQueryBatch(Transport.Connection connection, List<ShardSearchRequest> requests,
+                                              SearchTask task, List<SearchActionListener<SearchPhaseResult>> listeners) {
+                assertTrue(connection.getVersion().onOrAfter(Version.V_0_17_0));
+                assertNull(batchSizes.put(connection.getNode().getId(), requests.size()));
+                for (int i = 0; i < requests.size(); i++) {
+                    respond(connection, requests.get(i), listeners.get(i));
+                }
+            }
+
+            private void respond(Transport.Connection connection, ShardSearchRequest request,
+                                 SearchActionListener<SearchPhaseResult> listener) {
+                assertTrue(queried.add(request.shardId()));
+                QuerySearchResult queryResult = new QuerySearchResult(new ShardSearchContextId("N/A", request.shardId().id()),
+                    new SearchShardTarget(connection.getNode().getId(), request.shardId(), null, OriginalIndices.NONE), null);
+                queryResult.topDocs(new TopDocsAndMaxScore(new TopDocs(new TotalHits(0, TotalHits.Relation.EQUAL_TO),
+                    new ScoreDoc[0]), Float.NaN), new DocValueFormat[0]);
+                queryResult.from(0);
+                queryResult.size(1);
+                new Thread(() -> listener.onResponse(queryResult)).start();
+            }
+        };
+        CountDownLatch latch = new CountDownLatch(1);
+        GroupShardsIterator<SearchShardIterator> shardsIter = SearchAsyncActionTests.getShardsIter("idx",
+            new OriginalIndices(new String[]{"idx"}, SearchRequest.DEFAULT_INDICES_OPTIONS),
+            numShards, randomBoolean(), primaryNode, replicaNode);
+        final SearchRequest searchRequest = new SearchRequest();
+        searchRequest.setMaxConcurrentShardRequests(numShards);
+        searchRequest.allowPartialSearchResults(false);
+        Executor executor = EsExecutors.newDirectExecutorService();
+        SearchPhaseController controller = new SearchPhaseController(
+            writableRegistry(), r -> InternalAggregationTestCase.emptyReduceContextBuilder());
+        SearchTask task = new SearchTask(0, "n/a", "n/a", () -> "test", null, Collections.emptyMap());
+        QueryPhaseResultConsumer resultConsumer = new QueryPhaseResultConsumer(searchRequest, executor,
+            new NoopCircuitBreaker(CircuitBreaker.REQUEST), controller, task.getProgressListener(), writableRegistry(),
+            shardsIter.size(), exc -> {});
+        SearchQueryThenFetchAsyncAction action = new SearchQueryThenFetchAsyncAction(logger,
+            searchTransportService, (clusterAlias, node) -> lookup.get(node),
+            Collections.singletonMap("_na_", new AliasFilter(null, Strings.EMPTY_ARRAY)),
+            Collections.emptyMap(), Collections.emptyMap(), controller, executor,
+            resultConsumer, searchRequest, null, shardsIter, timeProvider, null,
+            task, SearchResponse.Clusters.EMPTY, null, true) {
+            @Override
+            protected SearchPhase getNextPhase(SearchPhaseResults<SearchPhaseResult> results, SearchPhaseContext context) {
+                return new SearchPhase("test") {
+                    @Override
+                    public void run() {
+                        latch.countDown();
+                    }
+                };
+            }
+        };
+        action.start();
+        latch.await();
+        assertThat(queried.size(), equalTo(numShards));
+        int numSentShards = 0;
+        for (DiscoveryNode node : Arrays.asList(primaryNode, replicaNode)) {
+            final int batchSize = batchSizes.getOrDefault(node.getId(), 0);
+            final int numSingleRequests = singleRequests.getOrDefault(node.getId(), 0);
+            numSentShards += batchSize + numSingleRequests;
+            if (node.getVersion().before(Version.V_0_17_0)) {
+                assertThat(batchSize, equalTo(0));
+            } else if (batchSize > 0) {
+                // all the shards that are searched on the same node are sent in a single message
+                assertThat(batchSize, greaterThanOrEqualTo(2));
+                assertThat(numSingleRequests, equalTo(0));
+            } else {
+                assertThat(numSingleRequests, lessThanOrEqualTo(1));
+            }
+        }
+        assertThat(numSentShards, equalTo(numShards));
+    }
+
     private void testCase(boolean withScroll, boolean withCollapse) throws Exception {
         final TransportSearchAction.SearchTimeProvider timeProvider =
             new TransportSearchAction.SearchTimeProvider(0, System.nanoTime(), System::nanoTime);
@@ -172,7 +278,7 @@ public class SearchQueryThenFetchAsyncActionTests extends ESTestCase {
             Collections.singletonMap("_na_", new AliasFilter(null, Strings.EMPTY_ARRAY)),
             Collections.emptyMap(), Collections.emptyMap(), controller, executor,
             resultConsumer, searchRequest, null, shardsIter, timeProvider, null,
-            task, SearchResponse.Clusters.EMPTY) {
+            task, SearchResponse.Clusters.EMPTY, null, false) {
             @Override
             protected SearchPhase getNextPhase(SearchPhaseResults<SearchPhaseResult> results, SearchPhaseContext context) {
                 return new SearchPhase("test") {
@@ -55,6 +55,7 @@ import org.junit.Before;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 
 import static java.util.Collections.emptyList;
@@ -279,6 +280,21 @@ public class SearchResponseTests extends ESTestCase {
         }
     }
 
+    public void testToXContentChunked() throws IOException {
+        SearchResponse response = createTestItem();
+        XContentType xContentType = randomFrom(XContentType.values());
+        boolean humanReadable = randomBoolean();
+        ToXContent.Params params = new ToXContent.MapParams(singletonMap(RestSearchAction.TYPED_KEYS_PARAM, "true"));
+        BytesReference expected = XContentHelper.toXContent(response, xContentType, params, humanReadable);
+        XContentBuilder builder = XContentBuilder.builder(xContentType.xContent());
+        builder.humanReadable(humanReadable);
+        Iterator<? extends ToXContent> chunks = response.toXContentChunked(params);
+        while (chunks.hasNext()) {
+            chunks.next().toXContent(builder, params);
+        }
+        assertEquals(expected, BytesReference.bytes(builder));
+    }
+
     public void testSerialization() throws IOException {
         SearchResponse searchResponse = createTestItem(false);
         SearchResponse deserialized = copyWriteable(searchResponse, namedWriteableRegistry, SearchResponse::new, Version.CURRENT);
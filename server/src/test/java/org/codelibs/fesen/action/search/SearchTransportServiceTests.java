@@ -0,0 +1,201 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.action.search;
+
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TotalHits;
+import org.codelibs.fesen.FesenException;
+import org.codelibs.fesen.Version;
+import org.codelibs.fesen.action.ActionListener;
+import org.codelibs.fesen.action.OriginalIndices;
+import org.codelibs.fesen.action.search.SearchTransportService.NodeQueryRequest;
+import org.codelibs.fesen.action.search.SearchTransportService.NodeQueryResponse;
+import org.codelibs.fesen.common.Strings;
+import org.codelibs.fesen.common.lucene.search.TopDocsAndMaxScore;
+import org.codelibs.fesen.index.shard.ShardId;
+import org.codelibs.fesen.search.AbstractSearchTestCase;
+import org.codelibs.fesen.search.DocValueFormat;
+import org.codelibs.fesen.search.SearchPhaseResult;
+import org.codelibs.fesen.search.SearchService;
+import org.codelibs.fesen.search.SearchShardTarget;
+import org.codelibs.fesen.search.internal.AliasFilter;
+import org.codelibs.fesen.search.internal.ShardSearchContextId;
+import org.codelibs.fesen.search.internal.ShardSearchRequest;
+import org.codelibs.fesen.search.query.QuerySearchResult;
+import org.codelibs.fesen.tasks.TaskId;
+import org.codelibs.fesen.test.VersionUtils;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class SearchTransportServiceTests extends AbstractSearchTestCase {
+
+    public void testNodeQueryRequestSerialization() throws IOException {
+        final List<ShardSearchRequest> shardRequests = new ArrayList<>();
+        final int numShards = randomIntBetween(1, 5);
+        for (int i = 0; i < numShards; i++) {
+            shardRequests.add(createShardSearchRequest(i, numShards));
+        }
+        final NodeQueryRequest request = new NodeQueryRequest(shardRequests);
+        // the batched action is only sent to nodes on 0.17.0 or later
+        final Version version = VersionUtils.randomVersionBetween(random(), Version.V_0_17_0, Version.CURRENT);
+        final NodeQueryRequest deserialized = copyWriteable(request, namedWriteableRegistry, NodeQueryRequest::new, version);
+        assertThat(deserialized.shardRequests().size(), equalTo(numShards));
+        for (int i = 0; i < numShards; i++) {
+            final ShardSearchRequest expected = shardRequests.get(i);
+            final ShardSearchRequest actual = deserialized.shardRequests().get(i);
+            assertThat(actual.shardId(), equalTo(expected.shardId()));
+            assertThat(actual.cacheKey(), equalTo(expected.cacheKey()));
+        }
+        assertThat(deserialized.getDescription(), equalTo(request.getDescription()));
+    }
+
+    public void testNodeQueryResponseSerialization() throws IOException {
+        final int numShards = randomIntBetween(1, 10);
+        final SearchPhaseResult[] results = new SearchPhaseResult[numShards];
+        final Exception[] failures = new Exception[numShards];
+        for (int i = 0; i < numShards; i++) {
+            if (randomBoolean()) {
+                failures[i] = new FesenException("shard [" + i + "] failed");
+            } else {
+                results[i] = createQueryResult(i);
+            }
+        }
+        final NodeQueryResponse response = new NodeQueryResponse(results, failures);
+        final Version version = VersionUtils.randomVersionBetween(random(), Version.V_0_17_0, Version.CURRENT);
+        final NodeQueryResponse deserialized = copyWriteable(response, namedWriteableRegistry,
+            in -> new NodeQueryResponse(in, QuerySearchResult::new), version);
+        assertResponse(deserialized, failures);
+    }
+
+    public void testNodeHandlerMapsFailuresToTheirShards() throws Exception {
+        final int numShards = randomIntBetween(2, 10);
+        final List<ShardSearchRequest> shardRequests = new ArrayList<>();
+        final boolean[] failing = new boolean[numShards];
+        for (int i = 0; i < numShards; i++) {
+            shardRequests.add(createShardSearchRequest(i, numShards));
+            failing[i] = i == 0 || (i > 1 && randomBoolean());
+        }
+
+        // the shards complete on their own threads, in a random order
+        final SearchService searchService = mock(SearchService.class);
+        doAnswer(invocation -> {
+            final ShardSearchRequest shardRequest = (ShardSearchRequest) invocation.getArguments()[0];
+            @SuppressWarnings("unchecked")
+            final ActionListener<SearchPhaseResult> listener = (ActionListener<SearchPhaseResult>) invocation.getArguments()[3];
+            final int shard = shardRequest.shardId().id();
+            new Thread(() -> {
+                if (failing[shard]) {
+                    listener.onFailure(new FesenException("shard [" + shard + "] failed"));
+                } else {
+                    listener.onResponse(createQueryResult(shard));
+                }
+            }).start();
+            return null;
+        }).when(searchService).executeQueryPhase(any(ShardSearchRequest.class), anyBoolean(), any(SearchShardTask.class),
+            any(ActionListener.class));
+
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<NodeQueryResponse> responseRef = new AtomicReference<>();
+        final SearchShardTask task = new SearchShardTask(0, "n/a", "n/a", "test", TaskId.EMPTY_TASK_ID, Collections.emptyMap());
+        SearchTransportService.executeQueryPhase(searchService, new NodeQueryRequest(shardRequests), false, task,
+            ActionListener.wrap(r -> {
+                responseRef.set(r);
+                latch.countDown();
+            }, e -> {
+                throw new AssertionError(e);
+            }));
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+
+        // send the response over the wire and hand it to the listeners of the coordinating node
+        final NodeQueryResponse response = copyWriteable(responseRef.get(), namedWriteableRegistry,
+            in -> new NodeQueryResponse(in, QuerySearchResult::new), Version.CURRENT);
+        final Exception[] expectedFailures = new Exception[numShards];
+        for (int i = 0; i < numShards; i++) {
+            if (failing[i]) {
+                expectedFailures[i] = new FesenException("shard [" + i + "] failed");
+            }
+        }
+        assertResponse(response, expectedFailures);
+
+        final SearchPhaseResult[] notifiedResults = new SearchPhaseResult[numShards];
+        final Exception[] notifiedFailures = new Exception[numShards];
+        final List<ActionListener<SearchPhaseResult>> listeners = new ArrayList<>();
+        for (int i = 0; i < numShards; i++) {
+            final int shard = i;
+            listeners.add(ActionListener.wrap(r -> notifiedResults[shard] = r, e -> notifiedFailures[shard] = e));
+        }
+        SearchTransportService.notifyShardListeners(response, listeners);
+        for (int i = 0; i < numShards; i++) {
+            if (failing[i]) {
+                assertNull(notifiedResults[i]);
+                assertThat(notifiedFailures[i].getMessage(), equalTo("shard [" + i + "] failed"));
+            } else {
+                assertNull(notifiedFailures[i]);
+                assertThat(notifiedResults[i].getContextId().getId(), equalTo((long) i));
+            }
+        }
+    }
+
+    private static void assertResponse(NodeQueryResponse response, Exception[] expectedFailures) {
+        assertThat(response.size(), equalTo(expectedFailures.length));
+        for (int i = 0; i < expectedFailures.length; i++) {
+            if (expectedFailures[i] != null) {
+                assertNull(response.getResult(i));
+                assertThat(response.getFailure(i), instanceOf(FesenException.class));
+                assertThat(response.getFailure(i).getMessage(), equalTo(expectedFailures[i].getMessage()));
+            } else {
+                assertNull(response.getFailure(i));
+                final QuerySearchResult result = response.getResult(i).queryResult();
+                assertThat(result.getContextId().getId(), equalTo((long) i));
+                assertThat(result.topDocs().topDocs.totalHits.value, equalTo((long) i));
+            }
+        }
+    }
+
+    private ShardSearchRequest createShardSearchRequest(int shard, int numShards) throws IOException {
+        final SearchRequest searchRequest = createSearchRequest();
+        return new ShardSearchRequest(new OriginalIndices(searchRequest), searchRequest, new ShardId("index", "uuid", shard),
+            numShards, new AliasFilter(null, Strings.EMPTY_ARRAY), 1.0f, randomNonNegativeLong(), null, Strings.EMPTY_ARRAY);
+    }
+
+    private static QuerySearchResult createQueryResult(int shard) {
+        final QuerySearchResult result = new QuerySearchResult(new ShardSearchContextId("N/A", shard),
+            new SearchShardTarget("node", new ShardId("index", "uuid", shard), null, OriginalIndices.NONE), null);
+        result.topDocs(new TopDocsAndMaxScore(new TopDocs(new TotalHits(shard, TotalHits.Relation.EQUAL_TO), new ScoreDoc[0]),
+            Float.NaN), new DocValueFormat[0]);
+        result.from(0);
+        result.size(1);
+        return result;
+    }
+}
@@ -172,7 +172,10 @@ public class CacheTests extends ESTestCase {
                 CacheBuilder.<Integer, String>builder()
                         .setMaximumWeight(maximumWeight)
                         .weigher((k, v) -> weight)
-                        .removalListener(notification -> evictions.incrementAndGet())
+                        .removalListener(notification -> {
+                            assertFalse(notification.isExpired());
+                            evictions.incrementAndGet();
+                        })
                         .build();
         for (int i = 0; i < numberOfEntries; i++) {
             cache.put(i, Integer.toString(i));
@@ -237,6 +240,7 @@ public class CacheTests extends ESTestCase {
         List<Integer> evictedKeys = new ArrayList<>();
         cache.setRemovalListener(notification -> {
             assertEquals(RemovalNotification.RemovalReason.EVICTED, notification.getRemovalReason());
+            assertTrue(notification.isExpired());
             evictedKeys.add(notification.getKey());
         });
         now.set(0);
@@ -946,4 +950,81 @@ public class CacheTests extends ESTestCase {
             assertEquals(RemovalNotification.RemovalReason.INVALIDATED, removalNotifications.get(i).getRemovalReason());
         }
     }
+
+    // fill the cache with hot entries that are read regularly while scanning through many entries that are only accessed
+    // once; with frequency-based admission the scan must not flush out the hot entries, while the scanned entries are
+    // still admitted as long as they compete with entries that are not more popular than them
+    public void testFrequencyBasedAdmission() throws ExecutionException {
+        final int maximumWeight = 100;
+        final int numberOfHotEntries = maximumWeight / 2;
+        List<RemovalNotification<Integer, String>> evicted = new ArrayList<>();
+        Cache<Integer, String> cache = CacheBuilder.<Integer, String>builder()
+            .setMaximumWeight(maximumWeight)
+            .setFrequencyBasedAdmission(true)
+            .removalListener(evicted::add)
+            .build();
+        for (int i = 0; i < numberOfHotEntries; i++) {
+            cache.computeIfAbsent(i, Integer::toString);
+        }
+        final int scanStart = numberOfHotEntries;
+        for (int i = scanStart; i < scanStart + numberOfEntries; i++) {
+            cache.computeIfAbsent(i, Integer::toString);
+            if (i % 2 == 0) {
+                int hot = (i / 2) % numberOfHotEntries;
+                assertEquals(Integer.toString(hot), cache.computeIfAbsent(hot, Integer::toString));
+            }
+        }
+        assertEquals(maximumWeight, cache.count());
+        int hotEntries = 0;
+        for (int i = 0; i < numberOfHotEntries; i++) {
+            if (cache.get(i) != null) {
+                hotEntries++;
+            }
+        }
+        // the frequency sketch is probabilistic so a few hot entries may collide with scanned ones
+        assertTrue("only " + hotEntries + " hot entries survived the scan", hotEntries >= numberOfHotEntries * 9 / 10);
+        assertTrue(evicted.stream().allMatch(n -> n.getRemovalReason() == RemovalNotification.RemovalReason.EVICTED));
+        assertEquals(evicted.size(), cache.stats().getEvictions());
+
+        Cache<Integer, String> lru = CacheBuilder.<Integer, String>builder().setMaximumWeight(maximumWeight).build();
+        for (int i = 0; i < numberOfHotEntries; i++) {
+            lru.computeIfAbsent(i, Integer::toString);
+        }
+        for (int i = scanStart; i < scanStart + numberOfEntries; i++) {
+            lru.computeIfAbsent(i, Integer::toString);
+            if (i % 2 == 0) {
+                int hot = (i / 2) % numberOfHotEntries;
+                lru.computeIfAbsent(hot, Integer::toString);
+            }
+        }
+        int lruHotEntries = 0;
+        for (int i = 0; i < numberOfHotEntries; i++) {
+            if (lru.get(i) != null) {
+                lruHotEntries++;
+            }
+        }
+        assertTrue(lruHotEntries < hotEntries);
+    }
+
+    // keys that share a frequency hash share their popularity, so a new version of a popular key is admitted right away
+    public void testFrequencyBasedAdmissionWithFrequencyHash() throws ExecutionException {
+        Cache<String, String> cache = CacheBuilder.<String, String>builder()
+            .setMaximumWeight(2)
+            .setFrequencyBasedAdmission(k -> k.charAt(0))
+            .build();
+        for (int i = 0; i < 5; i++) {
+            cache.computeIfAbsent("a1", k -> k);
+            cache.computeIfAbsent("b1", k -> k);
+        }
+        // c1 was accessed less often than a1, the least recently used entry, so it is not admitted
+        assertEquals("c1", cache.computeIfAbsent("c1", k -> k));
+        assertNull(cache.get("c1"));
+        assertEquals(2, cache.count());
+        // a new version of a1 inherits its frequency and evicts b1, which is the least recently used entry once a1 is read
+        assertNotNull(cache.get("a1"));
+        cache.computeIfAbsent("a2", k -> k);
+        assertNotNull(cache.get("a1"));
+        assertNotNull(cache.get("a2"));
+        assertNull(cache.get("b1"));
+    }
 }
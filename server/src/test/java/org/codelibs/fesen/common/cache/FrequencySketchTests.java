@@ -0,0 +1,75 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.common.cache;
+
+import org.codelibs.fesen.test.ESTestCase;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
+
+public class FrequencySketchTests extends ESTestCase {
+
+    public void testIncrement() {
+        FrequencySketch sketch = new FrequencySketch();
+        final int hash = randomInt();
+        assertThat(sketch.frequency(hash), equalTo(0));
+        final int times = randomIntBetween(1, 15);
+        for (int i = 0; i < times; i++) {
+            sketch.increment(hash);
+        }
+        // a count-min sketch never underestimates
+        assertThat(sketch.frequency(hash), greaterThanOrEqualTo(times));
+    }
+
+    public void testSaturates() {
+        FrequencySketch sketch = new FrequencySketch();
+        final int hash = randomInt();
+        for (int i = 0; i < 20; i++) {
+            sketch.increment(hash);
+        }
+        assertThat(sketch.frequency(hash), equalTo(15));
+    }
+
+    public void testReset() {
+        FrequencySketch sketch = new FrequencySketch();
+        final int hot = randomInt();
+        for (int i = 0; i < 15; i++) {
+            sketch.increment(hot);
+        }
+        // recording many other accesses ages the frequency of the hot key
+        for (int i = 0; i < 10 * sketch.capacity(); i++) {
+            sketch.increment(hot + 1 + i);
+        }
+        assertThat(sketch.frequency(hot), lessThan(15));
+    }
+
+    public void testEnsureCapacity() {
+        FrequencySketch sketch = new FrequencySketch();
+        final int initialCapacity = sketch.capacity();
+        sketch.ensureCapacity(initialCapacity - 1);
+        assertThat(sketch.capacity(), equalTo(initialCapacity));
+        final int capacity = randomIntBetween(initialCapacity + 1, 1 << 16);
+        sketch.ensureCapacity(capacity);
+        assertThat(sketch.capacity(), greaterThanOrEqualTo(capacity));
+        assertThat(sketch.capacity(), lessThan(2 * capacity));
+        assertThat(Integer.bitCount(sketch.capacity()), equalTo(1));
+    }
+}
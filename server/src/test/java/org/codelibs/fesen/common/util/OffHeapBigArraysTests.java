@@ -0,0 +1,321 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.common.util;
+
+import org.apache.lucene.util.BytesRef;
+import org.codelibs.fesen.common.breaker.CircuitBreaker;
+import org.codelibs.fesen.common.breaker.CircuitBreakingException;
+import org.codelibs.fesen.common.lease.Releasables;
+import org.codelibs.fesen.common.settings.ClusterSettings;
+import org.codelibs.fesen.common.settings.Settings;
+import org.codelibs.fesen.common.unit.ByteSizeUnit;
+import org.codelibs.fesen.indices.breaker.HierarchyCircuitBreakerService;
+import org.codelibs.fesen.indices.breaker.NoneCircuitBreakerService;
+import org.codelibs.fesen.test.ESTestCase;
+import org.junit.After;
+import org.junit.Before;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.codelibs.fesen.indices.breaker.HierarchyCircuitBreakerService.REQUEST_CIRCUIT_BREAKER_LIMIT_SETTING;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class OffHeapBigArraysTests extends ESTestCase {
+
+    private OffHeapPageAllocator allocator;
+    private BigArrays bigArrays;
+
+    @Before
+    public void init() throws IOException {
+        allocator = newAllocator(randomFrom(OffHeapPageAllocator.Type.DIRECT, OffHeapPageAllocator.Type.MMAP));
+        bigArrays = new BigArrays(randomBoolean() ? null : new PageCacheRecycler(Settings.EMPTY), new NoneCircuitBreakerService(),
+            CircuitBreaker.REQUEST, allocator);
+    }
+
+    @After
+    public void closeAllocator() throws IOException {
+        allocator.close();
+    }
+
+    private OffHeapPageAllocator newAllocator(OffHeapPageAllocator.Type type) throws IOException {
+        final Settings settings = Settings.builder().put(OffHeapPageAllocator.TYPE_SETTING.getKey(), type.name()).build();
+        return OffHeapPageAllocator.create(settings, createTempDir());
+    }
+
+    public void testNoneType() throws IOException {
+        assertThat(OffHeapPageAllocator.create(Settings.EMPTY, createTempDir()), nullValue());
+        assertThat(new BigArrays(null, null, CircuitBreaker.REQUEST).newLongArray(PageCacheRecycler.LONG_PAGE_SIZE + 1),
+            instanceOf(BigLongArray.class));
+    }
+
+    public void testParseType() {
+        assertThat(OffHeapPageAllocator.Type.parse("mmap"), equalTo(OffHeapPageAllocator.Type.MMAP));
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class, () -> OffHeapPageAllocator.Type.parse("heap"));
+        assertThat(e.getMessage(), equalTo("no type support [heap]"));
+    }
+
+    public void testSmallArraysStayOnHeap() {
+        try (LongArray array = bigArrays.newLongArray(randomIntBetween(1, PageCacheRecycler.LONG_PAGE_SIZE))) {
+            assertFalse(array instanceof AbstractOffHeapArray);
+        }
+    }
+
+    public void testByteArrayGrowth() {
+        final int totalLen = randomIntBetween(1, 4000000);
+        final int startLen = randomIntBetween(PageCacheRecycler.BYTE_PAGE_SIZE + 1, PageCacheRecycler.BYTE_PAGE_SIZE * 4);
+        ByteArray array = bigArrays.newByteArray(startLen, randomBoolean());
+        assertThat(array, instanceOf(OffHeapByteArray.class));
+        byte[] ref = new byte[totalLen];
+        for (int i = 0; i < totalLen; ++i) {
+            ref[i] = randomByte();
+            array = bigArrays.grow(array, i + 1);
+            array.set(i, ref[i]);
+        }
+        for (int i = 0; i < totalLen; ++i) {
+            assertEquals(ref[i], array.get(i));
+        }
+        array.close();
+    }
+
+    public void testIntArrayGrowth() {
+        final int totalLen = randomIntBetween(1, 1000000);
+        final int startLen = randomIntBetween(PageCacheRecycler.INT_PAGE_SIZE + 1, PageCacheRecycler.INT_PAGE_SIZE * 4);
+        IntArray array = bigArrays.newIntArray(startLen, randomBoolean());
+        assertThat(array, instanceOf(OffHeapIntArray.class));
+        int[] ref = new int[totalLen];
+        for (int i = 0; i < totalLen; ++i) {
+            ref[i] = randomInt();
+            array = bigArrays.grow(array, i + 1);
+            array.set(i, ref[i]);
+        }
+        for (int i = 0; i < totalLen; ++i) {
+            assertEquals(ref[i], array.get(i));
+            assertEquals(ref[i] + 1, array.increment(i, 1));
+        }
+        array.close();
+    }
+
+    public void testLongArrayGrowth() {
+        final int totalLen = randomIntBetween(1, 1000000);
+        final int startLen = randomIntBetween(PageCacheRecycler.LONG_PAGE_SIZE + 1, PageCacheRecycler.LONG_PAGE_SIZE * 4);
+        LongArray array = bigArrays.newLongArray(startLen, randomBoolean());
+        assertThat(array, instanceOf(OffHeapLongArray.class));
+        long[] ref = new long[totalLen];
+        for (int i = 0; i < totalLen; ++i) {
+            ref[i] = randomLong();
+            array = bigArrays.grow(array, i + 1);
+            array.set(i, ref[i]);
+        }
+        for (int i = 0; i < totalLen; ++i) {
+            assertEquals(ref[i], array.get(i));
+            assertEquals(ref[i] + 1, array.increment(i, 1));
+        }
+        array.close();
+    }
+
+    public void testDoubleArrayGrowth() {
+        final int totalLen = randomIntBetween(1, 1000000);
+        final int startLen = randomIntBetween(PageCacheRecycler.LONG_PAGE_SIZE + 1, PageCacheRecycler.LONG_PAGE_SIZE * 4);
+        DoubleArray array = bigArrays.newDoubleArray(startLen, randomBoolean());
+        assertThat(array, instanceOf(OffHeapDoubleArray.class));
+        double[] ref = new double[totalLen];
+        for (int i = 0; i < totalLen; ++i) {
+            ref[i] = randomDouble();
+            array = bigArrays.grow(array, i + 1);
+            array.set(i, ref[i]);
+        }
+        for (int i = 0; i < totalLen; ++i) {
+            assertEquals(ref[i], array.get(i), 0.001d);
+        }
+        array.close();
+    }
+
+    public void testLongArrayFill() {
+        final int len = randomIntBetween(PageCacheRecycler.LONG_PAGE_SIZE + 1, 100000);
+        final int fromIndex = randomIntBetween(0, len - 1);
+        final int toIndex = randomBoolean()
+            ? Math.min(fromIndex + randomInt(100), len) // single page
+            : randomIntBetween(fromIndex, len); // likely multiple pages
+        final LongArray array2 = bigArrays.newLongArray(len, randomBoolean());
+        final long[] array1 = new long[len];
+        for (int i = 0; i < len; ++i) {
+            array1[i] = randomLong();
+            array2.set(i, array1[i]);
+        }
+        final long rand = randomLong();
+        Arrays.fill(array1, fromIndex, toIndex, rand);
+        array2.fill(fromIndex, toIndex, rand);
+        for (int i = 0; i < len; ++i) {
+            assertEquals(array1[i], array2.get(i));
+        }
+        array2.close();
+    }
+
+    public void testByteArrayFill() {
+        final int len = randomIntBetween(PageCacheRecycler.BYTE_PAGE_SIZE + 1, 100000);
+        final int fromIndex = randomIntBetween(0, len - 1);
+        final int toIndex = randomIntBetween(fromIndex, len);
+        final ByteArray array2 = bigArrays.newByteArray(len);
+        final byte[] array1 = new byte[len];
+        final byte rand = randomByte();
+        Arrays.fill(array1, fromIndex, toIndex, rand);
+        array2.fill(fromIndex, toIndex, rand);
+        for (int i = 0; i < len; ++i) {
+            assertEquals(array1[i], array2.get(i));
+        }
+        array2.close();
+    }
+
+    public void testByteArrayBulkGetAndSet() {
+        final byte[] array1 = new byte[randomIntBetween(PageCacheRecycler.BYTE_PAGE_SIZE + 1, 4000000)];
+        random().nextBytes(array1);
+        final ByteArray array2 = bigArrays.newByteArray(array1.length, randomBoolean());
+        for (int i = 0; i < array1.length; ) {
+            final int len = Math.min(array1.length - i, randomBoolean() ? randomInt(10) : randomInt(3 * PageCacheRecycler.BYTE_PAGE_SIZE));
+            array2.set(i, array1, i, len);
+            i += len;
+        }
+        final BytesRef ref = new BytesRef();
+        for (int i = 0; i < 100; ++i) {
+            final int offset = randomInt(array1.length - 1);
+            final int len = randomInt(Math.min(randomBoolean() ? 10 : Integer.MAX_VALUE, array1.length - offset));
+            final byte[] previousBytes = ref.bytes;
+            assertTrue(array2.get(offset, len, ref));
+            assertEquals(new BytesRef(array1, offset, len), ref);
+            // the bytes of the ref may belong to another array, so they are never written to
+            assertThat(ref.bytes, not(sameInstance(previousBytes)));
+        }
+        array2.close();
+    }
+
+    public void testBytesRefHashGrowsOffHeap() {
+        // always recycle pages so that the on-heap page of the hash is handed out again once its bytes grew off heap
+        final BigArrays recyclingBigArrays = new BigArrays(new PageCacheRecycler(Settings.EMPTY), new NoneCircuitBreakerService(),
+            CircuitBreaker.REQUEST, allocator);
+        final List<BytesRef> keys = new ArrayList<>();
+        ByteArray other = null;
+        try (BytesRefHash hash = new BytesRefHash(1, recyclingBigArrays)) {
+            long totalBytes = 0;
+            while (totalBytes < 3 * PageCacheRecycler.BYTE_PAGE_SIZE) {
+                final BytesRef key = new BytesRef(randomAlphaOfLengthBetween(1, 100));
+                final long id = hash.add(key);
+                if (id >= 0) {
+                    assertEquals(keys.size(), id);
+                    keys.add(key);
+                    totalBytes += key.length;
+                } else {
+                    assertEquals(keys.get((int) (-1 - id)), key);
+                }
+                // adding an existing key reads it into the spare ref of the hash
+                final int existing = randomInt(keys.size() - 1);
+                assertEquals(-1 - existing, hash.add(keys.get(existing)));
+                if (other == null && totalBytes > PageCacheRecycler.BYTE_PAGE_SIZE) {
+                    other = recyclingBigArrays.newByteArray(PageCacheRecycler.BYTE_PAGE_SIZE, false);
+                    other.fill(0, other.size(), (byte) 42);
+                }
+            }
+            for (int i = 0; i < keys.size(); ++i) {
+                assertEquals(keys.get(i), hash.get(i, new BytesRef()));
+                assertEquals(i, hash.find(keys.get(i)));
+            }
+            assertNotNull(other);
+            for (long i = 0; i < other.size(); ++i) {
+                assertEquals((byte) 42, other.get(i));
+            }
+        } finally {
+            Releasables.close(other);
+        }
+    }
+
+    public void testPagesAreReused() {
+        final ByteBuffer page = allocator.acquire(true);
+        page.putLong(0, randomValueOtherThan(0L, ESTestCase::randomLong));
+        allocator.release(page);
+        final ByteBuffer reused = allocator.acquire(true);
+        assertThat(reused, sameInstance(page));
+        assertThat(reused.getLong(0), equalTo(0L));
+        allocator.release(reused);
+    }
+
+    public void testDirectMemoryLimit() throws Exception {
+        final int maxChunks = randomIntBetween(1, 4);
+        final Settings settings = Settings.builder()
+            .put(OffHeapPageAllocator.TYPE_SETTING.getKey(), OffHeapPageAllocator.Type.DIRECT.name())
+            .put(OffHeapPageAllocator.DIRECT_MAX_SIZE_SETTING.getKey(), maxChunks * OffHeapPageAllocator.CHUNK_SIZE_IN_BYTES + "b")
+            .build();
+        try (OffHeapPageAllocator limitedAllocator = OffHeapPageAllocator.create(settings, createTempDir())) {
+            HierarchyCircuitBreakerService hcbs = new HierarchyCircuitBreakerService(
+                Settings.builder().put(HierarchyCircuitBreakerService.USE_REAL_MEMORY_USAGE_SETTING.getKey(), false).build(),
+                Collections.emptyList(),
+                new ClusterSettings(Settings.EMPTY, ClusterSettings.BUILT_IN_CLUSTER_SETTINGS));
+            BigArrays limitedBigArrays = new BigArrays(null, hcbs, CircuitBreaker.REQUEST, limitedAllocator);
+            final long maxSize = (long) maxChunks * OffHeapPageAllocator.CHUNK_SIZE_IN_BYTES;
+            CircuitBreakingException e = expectThrows(CircuitBreakingException.class, () -> limitedBigArrays.newByteArray(maxSize + 1));
+            assertThat(e.getByteLimit(), equalTo(maxSize));
+            // the bytes of the array that could not be allocated are not accounted for
+            assertEquals(0, hcbs.getBreaker(CircuitBreaker.REQUEST).getUsed());
+
+            ByteArray array = limitedBigArrays.newByteArray(PageCacheRecycler.BYTE_PAGE_SIZE + 1);
+            expectThrows(CircuitBreakingException.class, () -> limitedBigArrays.resize(array, maxSize + 1));
+            assertEquals(array.ramBytesUsed(), hcbs.getBreaker(CircuitBreaker.REQUEST).getUsed());
+            // pages that were released are reused below the limit
+            array.close();
+            try (ByteArray reused = limitedBigArrays.newByteArray(maxSize)) {
+                assertThat(reused, instanceOf(OffHeapByteArray.class));
+            }
+            assertEquals(0, hcbs.getBreaker(CircuitBreaker.REQUEST).getUsed());
+        }
+    }
+
+    public void testBreakerAccounting() throws Exception {
+        final int maxSize = randomIntBetween(1 << 18, 1 << 20);
+        HierarchyCircuitBreakerService hcbs = new HierarchyCircuitBreakerService(
+            Settings.builder()
+                .put(REQUEST_CIRCUIT_BREAKER_LIMIT_SETTING.getKey(), maxSize, ByteSizeUnit.BYTES)
+                .put(HierarchyCircuitBreakerService.USE_REAL_MEMORY_USAGE_SETTING.getKey(), false)
+                .build(),
+            Collections.emptyList(),
+            new ClusterSettings(Settings.EMPTY, ClusterSettings.BUILT_IN_CLUSTER_SETTINGS));
+        BigArrays breakingBigArrays = new BigArrays(null, hcbs, CircuitBreaker.REQUEST, allocator).withCircuitBreaking();
+        LongArray array = breakingBigArrays.newLongArray(PageCacheRecycler.LONG_PAGE_SIZE + 1);
+        assertThat(array, instanceOf(OffHeapLongArray.class));
+        assertEquals(BigLongArray.estimateRamBytes(array.size()), array.ramBytesUsed());
+        assertEquals(array.ramBytesUsed(), hcbs.getBreaker(CircuitBreaker.REQUEST).getUsed());
+        while (true) {
+            try {
+                array = breakingBigArrays.resize(array, array.size() * 2);
+            } catch (CircuitBreakingException e) {
+                break;
+            }
+        }
+        assertEquals(array.ramBytesUsed(), hcbs.getBreaker(CircuitBreaker.REQUEST).getUsed());
+        array.close();
+        assertEquals(0, hcbs.getBreaker(CircuitBreaker.REQUEST).getUsed());
+    }
+}
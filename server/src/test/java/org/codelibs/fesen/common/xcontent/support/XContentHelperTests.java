@@ -19,6 +19,7 @@
 
 package org.codelibs.fesen.common.xcontent.support;
 
+import org.codelibs.fesen.common.bytes.BytesArray;
 import org.codelibs.fesen.common.bytes.BytesReference;
 import org.codelibs.fesen.common.compress.CompressedXContent;
 import org.codelibs.fesen.common.xcontent.DeprecationHandler;
@@ -230,4 +231,13 @@ public class XContentHelperTests extends ESTestCase {
         }
 
     }
+
+    public void testXContentTypeMayCompressed() throws IOException {
+        final XContentType xContentType = randomFrom(XContentType.values());
+        final BytesReference bytes = BytesReference.bytes(XContentBuilder.builder(xContentType.xContent())
+            .startObject().field("field", "value").endObject());
+        assertEquals(xContentType, XContentHelper.xContentTypeMayCompressed(bytes));
+        final BytesReference compressed = new BytesArray(new CompressedXContent(bytes).compressed());
+        assertEquals(xContentType, XContentHelper.xContentTypeMayCompressed(compressed));
+    }
 }
@@ -73,6 +73,11 @@ public class XContentMapValuesTests extends AbstractFilteringTestCase {
         assertEquals("Filtered map must be equal to the expected map",
                 toMap(expected, xContentType, humanReadable),
                 XContentMapValues.filter(toMap(actual, xContentType, humanReadable), sourceIncludes, sourceExcludes));
+
+        ToXContentObject toXContent = (builder, params) -> actual.apply(builder);
+        assertEquals("Streaming filtered source must be equal to the expected map",
+                toMap(expected, xContentType, humanReadable),
+                streamingFilter(toXContent(toXContent, xContentType, humanReadable), xContentType, sourceIncludes, sourceExcludes));
     }
 
     @SuppressWarnings({"unchecked"})
@@ -598,6 +603,66 @@ public class XContentMapValuesTests extends AbstractFilteringTestCase {
         assertEquals(expected, filtered);
     }
 
+    public void testStreamingFilterMatchesMapFilter() throws IOException {
+        final String[] paths = new String[] { "a", "b", "a.b", "b.c", "a.b.c", "a*", "*.c", "c*", "a.*", "*" };
+        for (int i = 0; i < 100; i++) {
+            final Map<String, Object> source = randomSource(3);
+            final String[] includes = randomSubsetOf(randomIntBetween(0, 2), paths).toArray(new String[0]);
+            final String[] excludes = randomSubsetOf(randomIntBetween(0, 2), paths).toArray(new String[0]);
+            final XContentType xContentType = randomFrom(XContentType.values());
+            XContentBuilder builder = XContentBuilder.builder(xContentType.xContent()).map(source);
+            assertEquals("includes " + Arrays.toString(includes) + ", excludes " + Arrays.toString(excludes) + " on " + source,
+                XContentMapValues.filter(source, includes, excludes),
+                streamingFilter(BytesReference.bytes(builder), xContentType, includes, excludes));
+        }
+    }
+
+    public void testStreamingFilterPreservesOrder() throws IOException {
+        XContentBuilder builder = JsonXContent.contentBuilder().startObject()
+            .field("c", 1)
+            .startObject("b").field("z", 1).field("y", 2).field("x", 3).endObject()
+            .field("a", 3)
+            .endObject();
+        try (XContentParser parser = createParser(JsonXContent.jsonXContent, BytesReference.bytes(builder))) {
+            XContentBuilder filtered = JsonXContent.contentBuilder();
+            XContentMapValues.streamingFilter(new String[] { "c", "b", "a" }, new String[] { "b.y" }).accept(parser, filtered);
+            assertEquals("{\"c\":1,\"b\":{\"z\":1,\"x\":3},\"a\":3}", Strings.toString(filtered));
+        }
+    }
+
+    private static Map<String, Object> randomSource(int depth) {
+        final String[] keys = new String[] { "a", "b", "c", "a.b", "b.c" };
+        Map<String, Object> source = new HashMap<>();
+        for (String key : randomSubsetOf(randomIntBetween(0, keys.length), keys)) {
+            source.put(key, randomSourceValue(depth));
+        }
+        return source;
+    }
+
+    private static Object randomSourceValue(int depth) {
+        switch (depth == 0 ? 0 : randomIntBetween(0, 3)) {
+            case 0:
+                return randomFrom(randomAlphaOfLength(3), randomInt(), null);
+            case 1:
+                return randomSource(depth - 1);
+            default:
+                List<Object> values = new ArrayList<>();
+                for (int i = randomIntBetween(0, 3); i > 0; i--) {
+                    values.add(randomSourceValue(depth - 1));
+                }
+                return values;
+        }
+    }
+
+    private Map<String, Object> streamingFilter(BytesReference source, XContentType xContentType,
+                                                String[] includes, String[] excludes) throws IOException {
+        try (XContentParser parser = createParser(xContentType.xContent(), source)) {
+            XContentBuilder builder = XContentBuilder.builder(xContentType.xContent());
+            XContentMapValues.streamingFilter(includes, excludes).accept(parser, builder);
+            return convertToMap(BytesReference.bytes(builder), true, xContentType).v2();
+        }
+    }
+
     private static Map<String, Object> toMap(Builder test, XContentType xContentType, boolean humanReadable) throws IOException {
         ToXContentObject toXContent = (builder, params) -> test.apply(builder);
         return convertToMap(toXContent(toXContent, xContentType, humanReadable), true, xContentType).v2();
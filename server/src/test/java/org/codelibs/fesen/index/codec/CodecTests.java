@@ -37,6 +37,7 @@ import org.codelibs.fesen.index.IndexSettings;
 import org.codelibs.fesen.index.analysis.IndexAnalyzers;
 import org.codelibs.fesen.index.codec.CodecService;
 import org.codelibs.fesen.index.codec.PerFieldMappingPostingFormatCodec;
+import org.codelibs.fesen.index.mapper.IdFieldMapper;
 import org.codelibs.fesen.index.mapper.MapperService;
 import org.codelibs.fesen.index.similarity.SimilarityService;
 import org.codelibs.fesen.indices.mapper.MapperRegistry;
@@ -48,6 +49,7 @@ import java.io.IOException;
 import java.util.Collections;
 
 import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.not;
 
 @SuppressCodecs("*") // we test against default codec so never get a random one here!
 public class CodecTests extends ESTestCase {
@@ -69,6 +71,17 @@ public class CodecTests extends ESTestCase {
         assertCompressionEquals(Mode.BEST_COMPRESSION, codec);
     }
 
+    public void testIdBloomFilter() throws Exception {
+        PerFieldMappingPostingFormatCodec codec = (PerFieldMappingPostingFormatCodec) createCodecService().codec("default");
+        assertThat(codec.getPostingsFormatForField(IdFieldMapper.NAME), not(instanceOf(IdBloomFilterPostingsFormat.class)));
+
+        codec = (PerFieldMappingPostingFormatCodec) createCodecService(Settings.builder()
+            .put(IndexSettings.INDEX_CODEC_ID_BLOOM_FILTER_SETTING.getKey(), true)
+            .build()).codec("default");
+        assertThat(codec.getPostingsFormatForField(IdFieldMapper.NAME), instanceOf(IdBloomFilterPostingsFormat.class));
+        assertThat(codec.getPostingsFormatForField("field"), not(instanceOf(IdBloomFilterPostingsFormat.class)));
+    }
+
     // write some docs with it, inspect .si to see this was the used compression
     private void assertCompressionEquals(Mode expected, Codec actual) throws Exception {
         Directory dir = newDirectory();
@@ -88,10 +101,17 @@ public class CodecTests extends ESTestCase {
     }
 
     private CodecService createCodecService() throws IOException {
+        return createCodecService(Settings.EMPTY);
+    }
+
+    private CodecService createCodecService(Settings indexSettings) throws IOException {
         Settings nodeSettings = Settings.builder()
                 .put(Environment.PATH_HOME_SETTING.getKey(), createTempDir())
                 .build();
-        IndexSettings settings = IndexSettingsModule.newIndexSettings("_na", nodeSettings);
+        IndexSettings settings = IndexSettingsModule.newIndexSettings("_na", Settings.builder()
+                .put(nodeSettings)
+                .put(indexSettings)
+                .build());
         SimilarityService similarityService = new SimilarityService(settings, null, Collections.emptyMap());
         IndexAnalyzers indexAnalyzers = createTestAnalysis(settings, nodeSettings).indexAnalyzers;
         MapperRegistry mapperRegistry = new MapperRegistry(Collections.emptyMap(), Collections.emptyMap(), MapperPlugin.NOOP_FIELD_FILTER);
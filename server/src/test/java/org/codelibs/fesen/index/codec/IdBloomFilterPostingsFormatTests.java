@@ -0,0 +1,122 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.index.codec;
+
+import org.apache.lucene.codecs.Codec;
+import org.apache.lucene.codecs.PostingsFormat;
+import org.apache.lucene.codecs.lucene87.Lucene87Codec;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.Terms;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LuceneTestCase.SuppressCodecs;
+import org.codelibs.fesen.index.codec.IdBloomFilterPostingsFormat.BloomFilteredTerms;
+import org.codelibs.fesen.index.mapper.IdFieldMapper;
+import org.codelibs.fesen.test.ESTestCase;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+
+@SuppressCodecs("*") // we test against our own codec
+public class IdBloomFilterPostingsFormatTests extends ESTestCase {
+
+    private static Codec codec(double falsePositiveProbability) {
+        return new Lucene87Codec() {
+            final PostingsFormat idPostingsFormat =
+                new IdBloomFilterPostingsFormat(super.getPostingsFormatForField(IdFieldMapper.NAME), falsePositiveProbability);
+
+            @Override
+            public PostingsFormat getPostingsFormatForField(String field) {
+                return IdFieldMapper.NAME.equals(field) ? idPostingsFormat : super.getPostingsFormatForField(field);
+            }
+        };
+    }
+
+    public void testSkipsAbsentIds() throws Exception {
+        final Set<String> ids = new HashSet<>();
+        try (Directory dir = newDirectory()) {
+            final IndexWriterConfig iwc = newIndexWriterConfig(null).setCodec(codec(0.01));
+            try (IndexWriter writer = new IndexWriter(dir, iwc)) {
+                final int numDocs = randomIntBetween(1, 2000);
+                for (int i = 0; i < numDocs; i++) {
+                    final String id = "id-" + i;
+                    ids.add(id);
+                    final Document doc = new Document();
+                    doc.add(new StringField(IdFieldMapper.NAME, id, Field.Store.NO));
+                    doc.add(new StringField("field", "value", Field.Store.NO));
+                    writer.addDocument(doc);
+                    if (rarely()) {
+                        writer.flush();
+                    }
+                }
+                if (randomBoolean()) {
+                    writer.forceMerge(1);
+                }
+            }
+            try (DirectoryReader reader = DirectoryReader.open(dir)) {
+                long lookups = 0;
+                for (LeafReaderContext leaf : reader.leaves()) {
+                    final Terms terms = leaf.reader().terms(IdFieldMapper.NAME);
+                    assertThat(terms, instanceOf(BloomFilteredTerms.class));
+                    assertThat(leaf.reader().terms("field"), not(instanceOf(BloomFilteredTerms.class)));
+                    final TermsEnum termsEnum = terms.iterator();
+                    // every id of the segment must be found
+                    for (BytesRef term = termsEnum.next(); term != null; term = termsEnum.next()) {
+                        final BytesRef copy = BytesRef.deepCopyOf(term);
+                        assertTrue(terms.iterator().seekExact(copy));
+                        lookups++;
+                    }
+                    final int absent = 1000;
+                    for (int i = 0; i < absent; i++) {
+                        assertFalse(terms.iterator().seekExact(new BytesRef("absent-" + i)));
+                    }
+                    lookups += absent;
+                    final BloomFilteredTerms bloomFilteredTerms = (BloomFilteredTerms) terms;
+                    assertThat(bloomFilteredTerms.lookups(), equalTo(lookups));
+                    lookups = 0;
+                    assertThat(bloomFilteredTerms.skippedLookups() + bloomFilteredTerms.falsePositives(), equalTo((long) absent));
+                    // sized for 1% false positives, allow for plenty of slack
+                    assertThat(bloomFilteredTerms.falsePositives(), lessThan(100L));
+                    assertThat(bloomFilteredTerms.filterRamBytesUsed(), greaterThan(0L));
+                }
+                assertThat(reader.numDocs(), equalTo(ids.size()));
+            }
+        }
+    }
+
+    public void testInvalidFalsePositiveProbability() {
+        final PostingsFormat delegate = PostingsFormat.forName("Lucene84");
+        expectThrows(IllegalArgumentException.class, () -> new IdBloomFilterPostingsFormat(delegate, 0));
+        expectThrows(IllegalArgumentException.class, () -> new IdBloomFilterPostingsFormat(delegate, 1));
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.index.engine;
+
+import org.apache.lucene.util.BytesRef;
+import org.codelibs.fesen.common.settings.Settings;
+import org.codelibs.fesen.common.util.BigArrays;
+import org.codelibs.fesen.common.util.MockBigArrays;
+import org.codelibs.fesen.common.util.MockPageCacheRecycler;
+import org.codelibs.fesen.index.translog.Translog;
+import org.codelibs.fesen.indices.breaker.NoneCircuitBreakerService;
+import org.codelibs.fesen.test.ESTestCase;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+public class CompactVersionMapTests extends ESTestCase {
+
+    private BigArrays bigArrays() {
+        return new MockBigArrays(new MockPageCacheRecycler(Settings.EMPTY), new NoneCircuitBreakerService());
+    }
+
+    public void testAgainstHashMap() {
+        final Map<BytesRef, VersionValue> expected = new HashMap<>();
+        try (CompactVersionMap map = new CompactVersionMap(bigArrays(), randomIntBetween(0, 1000))) {
+            final int numIds = randomIntBetween(1, 2000);
+            final int numOps = randomIntBetween(1, 10000);
+            for (int i = 0; i < numOps; i++) {
+                final BytesRef uid = new BytesRef(Integer.toString(randomInt(numIds)));
+                if (randomBoolean()) {
+                    final VersionValue value = randomIndexVersionValue();
+                    assertThat(map.put(uid, value), equalTo(expected.put(uid, value)));
+                } else if (randomBoolean()) {
+                    assertThat(map.remove(uid), equalTo(expected.remove(uid)));
+                } else {
+                    assertThat(map.get(uid), equalTo(expected.get(uid)));
+                }
+                assertThat(map.size(), equalTo(expected.size()));
+            }
+            assertThat(map.isEmpty(), equalTo(expected.isEmpty()));
+            assertThat(map.entrySet(), equalTo(expected.entrySet()));
+        }
+    }
+
+    public void testRamBytesUsed() {
+        try (CompactVersionMap map = new CompactVersionMap(bigArrays(), 0)) {
+            final long emptyRamBytesUsed = map.ramBytesUsed();
+            assertThat(emptyRamBytesUsed, greaterThan(0L));
+            for (int i = 0; i < 10000; i++) {
+                map.put(new BytesRef(randomAlphaOfLength(20)), randomIndexVersionValue());
+            }
+            assertThat(map.ramBytesUsed(), greaterThan(emptyRamBytesUsed));
+        }
+    }
+
+    public void testClosedMapIsEmpty() {
+        final CompactVersionMap map = new CompactVersionMap(bigArrays(), 0);
+        final BytesRef uid = new BytesRef("1");
+        map.put(uid, randomIndexVersionValue());
+        map.close();
+        assertNull(map.get(uid));
+        assertNull(map.remove(uid));
+        assertTrue(map.isEmpty());
+        assertTrue(map.entrySet().isEmpty());
+        // writes that race with the release of the map are dropped
+        assertNull(map.put(uid, randomIndexVersionValue()));
+        assertNull(map.get(uid));
+        assertTrue(map.isEmpty());
+        // closing twice is fine
+        map.close();
+    }
+
+    public void testRejectsDeletes() {
+        try (CompactVersionMap map = new CompactVersionMap(bigArrays(), 0)) {
+            expectThrows(IllegalArgumentException.class, () -> map.put(new BytesRef("1"), new DeleteVersionValue(1, 1, 1, 1)));
+        }
+    }
+
+    private IndexVersionValue randomIndexVersionValue() {
+        final Translog.Location location = randomBoolean() ? null
+            : new Translog.Location(randomNonNegativeLong(), randomNonNegativeLong(), randomIntBetween(0, Integer.MAX_VALUE));
+        return new IndexVersionValue(location, randomNonNegativeLong(), randomNonNegativeLong(), randomNonNegativeLong());
+    }
+}
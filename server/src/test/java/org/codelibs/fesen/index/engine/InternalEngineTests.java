@@ -5014,6 +5014,60 @@ public class InternalEngineTests extends EngineTestCase {
         }
     }
 
+    public void testConcurrentIndexingAndRefreshWithCompactVersionMap() throws Exception {
+        IOUtils.close(engine, store);
+        final IndexSettings indexSettings = IndexSettingsModule.newIndexSettings("test",
+            Settings.builder().put(defaultSettings.getSettings())
+                .put(IndexSettings.INDEX_COMPACT_VERSION_MAP_SETTING.getKey(), true).build());
+        try (Store store = createStore();
+             InternalEngine engine = createEngine(config(indexSettings, store, createTempDir(), newMergePolicy(), null))) {
+            final Thread[] threads = new Thread[randomIntBetween(2, 4)];
+            final int numIds = randomIntBetween(1, 20);
+            final int updatesPerThread = scaledRandomIntBetween(100, 500);
+            final CountDownLatch latch = new CountDownLatch(threads.length + 1);
+            final AtomicInteger running = new AtomicInteger(threads.length);
+            final BiFunction<String, Engine.SearcherScope, Engine.Searcher> searcherFactory = engine::acquireSearcher;
+            for (int t = 0; t < threads.length; t++) {
+                final int thread = t;
+                threads[t] = new Thread(() -> {
+                    try {
+                        latch.countDown();
+                        latch.await();
+                        // each thread owns its ids, so the version of an id only depends on how often this thread updated it
+                        for (int i = 0; i < updatesPerThread; i++) {
+                            final String id = thread + "_" + (i % numIds);
+                            final ParsedDocument doc = testParsedDocument(id, null, testDocument(), B_1, null);
+                            final Engine.IndexResult result = engine.index(indexForDoc(doc));
+                            assertThat(result.getVersion(), equalTo((long) (i / numIds) + 1));
+                            try (Engine.GetResult get = engine.get(new Engine.Get(true, false, doc.type(), doc.id(), newUid(doc)),
+                                searcherFactory)) {
+                                assertTrue(get.exists());
+                                assertThat(get.version(), equalTo(result.getVersion()));
+                            }
+                        }
+                    } catch (Exception e) {
+                        throw new AssertionError(e);
+                    } finally {
+                        running.decrementAndGet();
+                    }
+                });
+                threads[t].start();
+            }
+            latch.countDown();
+            latch.await();
+            while (running.get() > 0) {
+                engine.refresh("test", randomFrom(Engine.SearcherScope.values()), randomBoolean());
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            engine.refresh("test");
+            try (Engine.Searcher searcher = engine.acquireSearcher("test")) {
+                assertEquals(threads.length * Math.min(numIds, updatesPerThread), searcher.getIndexReader().numDocs());
+            }
+        }
+    }
+
     public void testAcquireIndexCommit() throws Exception {
         IOUtils.close(engine, store);
         store = createStore();
@@ -25,11 +25,15 @@ import org.apache.lucene.util.Constants;
 import org.apache.lucene.util.RamUsageTester;
 import org.apache.lucene.util.TestUtil;
 import org.codelibs.fesen.common.lease.Releasable;
+import org.codelibs.fesen.common.settings.Settings;
+import org.codelibs.fesen.common.util.MockBigArrays;
+import org.codelibs.fesen.common.util.MockPageCacheRecycler;
 import org.codelibs.fesen.index.engine.DeleteVersionValue;
 import org.codelibs.fesen.index.engine.IndexVersionValue;
 import org.codelibs.fesen.index.engine.LiveVersionMap;
 import org.codelibs.fesen.index.engine.VersionValue;
 import org.codelibs.fesen.index.translog.Translog;
+import org.codelibs.fesen.indices.breaker.NoneCircuitBreakerService;
 import org.codelibs.fesen.test.ESTestCase;
 
 import java.io.IOException;
@@ -450,6 +454,53 @@ public class LiveVersionMapTests extends ESTestCase {
         }
     }
 
+    public void testCompactMaps() throws IOException {
+        final LiveVersionMap map = new LiveVersionMap(
+            new MockBigArrays(new MockPageCacheRecycler(Settings.EMPTY), new NoneCircuitBreakerService()));
+        map.enforceSafeAccess();
+        final Map<BytesRef, VersionValue> expected = new HashMap<>();
+        final int numIds = randomIntBetween(1, 500);
+        for (int i = 0; i < numIds; i++) {
+            final BytesRef uid = uid(Integer.toString(i));
+            try (Releasable r = map.acquireLock(uid)) {
+                final IndexVersionValue value = new IndexVersionValue(
+                    randomBoolean() ? null : new Translog.Location(randomNonNegativeLong(), randomNonNegativeLong(), between(0, 100)),
+                    randomNonNegativeLong(), randomNonNegativeLong(), randomNonNegativeLong());
+                map.putIndexUnderLock(uid, value);
+                expected.put(uid, value);
+                assertEquals(value, map.getUnderLock(uid));
+            }
+        }
+        assertThat(map.getAllCurrent(), equalTo(expected));
+        assertThat(map.ramBytesUsedForRefresh(), greaterThan(0L));
+
+        map.beforeRefresh();
+        assertThat(map.getRefreshingBytes(), greaterThan(0L));
+        for (Map.Entry<BytesRef, VersionValue> entry : expected.entrySet()) {
+            try (Releasable r = map.acquireLock(entry.getKey())) {
+                assertEquals(entry.getValue(), map.getUnderLock(entry.getKey()));
+            }
+        }
+        final BytesRef deleted = uid(Integer.toString(randomInt(numIds - 1)));
+        try (Releasable r = map.acquireLock(deleted)) {
+            map.putDeleteUnderLock(deleted, new DeleteVersionValue(1, 1, 1, 1));
+            assertEquals(new DeleteVersionValue(1, 1, 1, 1), map.getUnderLock(deleted));
+        }
+        map.afterRefresh(randomBoolean());
+        assertThat(map.getRefreshingBytes(), equalTo(0L));
+        for (BytesRef uid : expected.keySet()) {
+            try (Releasable r = map.acquireLock(uid)) {
+                if (uid.equals(deleted)) {
+                    assertEquals(new DeleteVersionValue(1, 1, 1, 1), map.getUnderLock(uid));
+                } else {
+                    assertNull(map.getUnderLock(uid));
+                }
+            }
+        }
+        // releases the remaining compact maps, MockBigArrays verifies that nothing leaked
+        map.clear();
+    }
+
     IndexVersionValue randomIndexVersionValue() {
         return new IndexVersionValue(randomTranslogLocation(), randomNonNegativeLong(), randomNonNegativeLong(), randomNonNegativeLong());
     }
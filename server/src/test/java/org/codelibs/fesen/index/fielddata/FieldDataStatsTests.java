@@ -31,7 +31,8 @@ public class FieldDataStatsTests extends ESTestCase {
 
     public void testSerialize() throws IOException {
         FieldMemoryStats map = randomBoolean() ? null : FieldMemoryStatsTests.randomFieldMemoryStats();
-        FieldDataStats stats = new FieldDataStats(randomNonNegativeLong(), randomNonNegativeLong(), map);
+        FieldDataStats stats = new FieldDataStats(randomNonNegativeLong(), randomNonNegativeLong(), map, randomNonNegativeLong(),
+            randomNonNegativeLong(), randomNonNegativeLong());
         BytesStreamOutput out = new BytesStreamOutput();
         stats.writeTo(out);
         StreamInput input = out.bytes().streamInput();
@@ -40,5 +41,8 @@ public class FieldDataStatsTests extends ESTestCase {
         assertEquals(stats.getEvictions(), read.getEvictions());
         assertEquals(stats.getMemorySize(), read.getMemorySize());
         assertEquals(stats.getFields(), read.getFields());
+        assertEquals(stats.getGlobalOrdinalsBuilds(), read.getGlobalOrdinalsBuilds());
+        assertEquals(stats.getGlobalOrdinalsIncrementalBuilds(), read.getGlobalOrdinalsIncrementalBuilds());
+        assertEquals(stats.getGlobalOrdinalsBuildTime(), read.getGlobalOrdinalsBuildTime());
     }
 }
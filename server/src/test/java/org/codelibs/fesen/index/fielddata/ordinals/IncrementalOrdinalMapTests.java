@@ -0,0 +1,198 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.codelibs.fesen.index.fielddata.ordinals;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.SortedSetDocValuesField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.index.OrdinalMap;
+import org.apache.lucene.index.SortedSetDocValues;
+import org.apache.lucene.index.TermsEnum;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.Accountable;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.LongValues;
+import org.codelibs.fesen.common.breaker.CircuitBreaker;
+import org.codelibs.fesen.common.breaker.NoopCircuitBreaker;
+import org.codelibs.fesen.index.fielddata.LeafOrdinalsFieldData;
+import org.codelibs.fesen.index.fielddata.plain.AbstractLeafOrdinalsFieldData;
+import org.codelibs.fesen.search.aggregations.support.CoreValuesSourceType;
+import org.codelibs.fesen.test.ESTestCase;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class IncrementalOrdinalMapTests extends ESTestCase {
+
+    private static final String FIELD = "field";
+
+    public void testBuildIncrementally() throws IOException {
+        try (Directory dir = newDirectory();
+             IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE))) {
+            addSegments(writer, randomIntBetween(2, 5));
+            DirectoryReader reader = DirectoryReader.open(writer);
+            IncrementalOrdinalMap map = IncrementalOrdinalMap.build(reader, subs(reader));
+            assertFalse(map.isIncremental());
+
+            for (int refresh = 0; refresh < 3; refresh++) {
+                addSegments(writer, randomIntBetween(0, 3));
+                DirectoryReader newReader = DirectoryReader.openIfChanged(reader, writer);
+                if (newReader == null) {
+                    continue;
+                }
+                reader.close();
+                reader = newReader;
+                SortedSetDocValues[] subs = subs(reader);
+                IncrementalOrdinalMap incremental = IncrementalOrdinalMap.buildIncrementally(reader, subs, map);
+                assertTrue(incremental.isIncremental());
+                assertSameMapping(subs, IncrementalOrdinalMap.build(reader, subs(reader)), incremental);
+                map = incremental;
+            }
+
+            // a merge removes the segments the previous map was built from
+            writer.forceMerge(1);
+            DirectoryReader merged = DirectoryReader.openIfChanged(reader, writer);
+            reader.close();
+            assertThat(IncrementalOrdinalMap.buildIncrementally(merged, subs(merged), map), nullValue());
+            merged.close();
+        }
+    }
+
+    public void testAccountLuceneOrdinalMap() throws IOException {
+        try (Directory dir = newDirectory();
+             IndexWriter writer = new IndexWriter(dir, new IndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE))) {
+            addSegments(writer, randomIntBetween(2, 5));
+            DirectoryReader reader = DirectoryReader.open(writer);
+            IncrementalOrdinalMap map = IncrementalOrdinalMap.build(reader, subs(reader));
+            addSegments(writer, randomIntBetween(1, 3));
+            DirectoryReader newReader = DirectoryReader.openIfChanged(reader, writer);
+            reader.close();
+            IncrementalOrdinalMap incremental = IncrementalOrdinalMap.buildIncrementally(newReader, subs(newReader), map);
+
+            AtomicLong used = new AtomicLong();
+            CircuitBreaker breaker = new NoopCircuitBreaker(CircuitBreaker.FIELDDATA) {
+                @Override
+                public long addWithoutBreaking(long bytes) {
+                    return used.addAndGet(bytes);
+                }
+            };
+            LeafOrdinalsFieldData[] segmentAfd = new LeafOrdinalsFieldData[newReader.leaves().size()];
+            for (int i = 0; i < segmentAfd.length; i++) {
+                final int segment = i;
+                segmentAfd[i] = new AbstractLeafOrdinalsFieldData(AbstractLeafOrdinalsFieldData.DEFAULT_SCRIPT_FUNCTION) {
+                    @Override
+                    public SortedSetDocValues getOrdinalsValues() {
+                        try {
+                            return newReader.leaves().get(segment).reader().getSortedSetDocValues(FIELD);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }
+
+                    @Override
+                    public long ramBytesUsed() {
+                        return 0;
+                    }
+
+                    @Override
+                    public Collection<Accountable> getChildResources() {
+                        return Collections.emptyList();
+                    }
+
+                    @Override
+                    public void close() {
+                    }
+                };
+            }
+            GlobalOrdinalsIndexFieldData globalOrdinals = new GlobalOrdinalsIndexFieldData(FIELD, CoreValuesSourceType.BYTES,
+                segmentAfd, incremental, incremental.ramBytesUsed(), 0, AbstractLeafOrdinalsFieldData.DEFAULT_SCRIPT_FUNCTION, breaker);
+            AtomicLong notified = new AtomicLong();
+            globalOrdinals.setLuceneOrdinalMapListener(notified::addAndGet);
+            assertThat(globalOrdinals.ramBytesUsed(), equalTo(incremental.ramBytesUsed()));
+
+            // the map used by joins is accounted for once it is built
+            OrdinalMap ordinalMap = globalOrdinals.getOrdinalMap();
+            assertThat(globalOrdinals.getOrdinalMap(), sameInstance(ordinalMap));
+            assertThat(used.get(), equalTo(ordinalMap.ramBytesUsed()));
+            assertThat(notified.get(), equalTo(ordinalMap.ramBytesUsed()));
+            assertThat(globalOrdinals.ramBytesUsed(), equalTo(incremental.ramBytesUsed() + ordinalMap.ramBytesUsed()));
+            newReader.close();
+        }
+    }
+
+    private void addSegments(IndexWriter writer, int numSegments) throws IOException {
+        for (int i = 0; i < numSegments; i++) {
+            int numDocs = randomIntBetween(1, 50);
+            for (int doc = 0; doc < numDocs; doc++) {
+                Document document = new Document();
+                int numValues = randomIntBetween(1, 3);
+                for (int v = 0; v < numValues; v++) {
+                    document.add(new SortedSetDocValuesField(FIELD, new BytesRef(randomAlphaOfLengthBetween(1, 3))));
+                }
+                writer.addDocument(document);
+            }
+            writer.flush();
+        }
+    }
+
+    private static SortedSetDocValues[] subs(DirectoryReader reader) throws IOException {
+        SortedSetDocValues[] subs = new SortedSetDocValues[reader.leaves().size()];
+        for (int i = 0; i < subs.length; i++) {
+            subs[i] = reader.leaves().get(i).reader().getSortedSetDocValues(FIELD);
+        }
+        return subs;
+    }
+
+    private static void assertSameMapping(SortedSetDocValues[] subs, IncrementalOrdinalMap expected,
+                                          IncrementalOrdinalMap actual) throws IOException {
+        assertThat(actual.getValueCount(), equalTo(expected.getValueCount()));
+        for (int segment = 0; segment < subs.length; segment++) {
+            LongValues expectedOrds = expected.getGlobalOrds(segment);
+            LongValues actualOrds = actual.getGlobalOrds(segment);
+            for (long ord = 0; ord < subs[segment].getValueCount(); ord++) {
+                assertThat(actualOrds.get(ord), equalTo(expectedOrds.get(ord)));
+            }
+        }
+        TermsEnum[] expectedLookups = new TermsEnum[subs.length];
+        TermsEnum[] actualLookups = new TermsEnum[subs.length];
+        for (int segment = 0; segment < subs.length; segment++) {
+            expectedLookups[segment] = subs[segment].termsEnum();
+            actualLookups[segment] = subs[segment].termsEnum();
+        }
+        for (long globalOrd = 0; globalOrd < expected.getValueCount(); globalOrd++) {
+            TermsEnum expectedLookup = expectedLookups[expected.getFirstSegmentNumber(globalOrd)];
+            expectedLookup.seekExact(expected.getFirstSegmentOrd(globalOrd));
+            TermsEnum actualLookup = actualLookups[actual.getFirstSegmentNumber(globalOrd)];
+            actualLookup.seekExact(actual.getFirstSegmentOrd(globalOrd));
+            assertThat(actualLookup.term(), equalTo(expectedLookup.term()));
+        }
+    }
+}
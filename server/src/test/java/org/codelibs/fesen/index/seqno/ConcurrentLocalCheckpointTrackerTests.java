@@ -0,0 +1,215 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.index.seqno;
+
+import org.codelibs.fesen.common.Randomness;
+import org.codelibs.fesen.test.ESTestCase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.codelibs.fesen.index.seqno.ConcurrentLocalCheckpointTracker.RING_SIZE;
+import static org.codelibs.fesen.index.seqno.LocalCheckpointTracker.BIT_SET_SIZE;
+import static org.hamcrest.Matchers.equalTo;
+
+public class ConcurrentLocalCheckpointTrackerTests extends ESTestCase {
+
+    private static ConcurrentLocalCheckpointTracker createEmptyTracker() {
+        return new ConcurrentLocalCheckpointTracker(SequenceNumbers.NO_OPS_PERFORMED, SequenceNumbers.NO_OPS_PERFORMED);
+    }
+
+    public void testSimpleProcessedAndPersisted() {
+        final ConcurrentLocalCheckpointTracker tracker = createEmptyTracker();
+        assertThat(tracker.hasProcessed(randomNonNegativeLong()), equalTo(false));
+        tracker.markSeqNoAsProcessed(0L);
+        assertThat(tracker.getProcessedCheckpoint(), equalTo(0L));
+        assertThat(tracker.hasProcessed(0), equalTo(true));
+        tracker.markSeqNoAsProcessed(2L);
+        assertThat(tracker.getProcessedCheckpoint(), equalTo(0L));
+        assertThat(tracker.hasProcessed(1L), equalTo(false));
+        assertThat(tracker.hasProcessed(2L), equalTo(true));
+        tracker.markSeqNoAsProcessed(1L);
+        assertThat(tracker.getProcessedCheckpoint(), equalTo(2L));
+        assertThat(tracker.getPersistedCheckpoint(), equalTo(SequenceNumbers.NO_OPS_PERFORMED));
+        tracker.markSeqNoAsPersisted(1L);
+        tracker.markSeqNoAsPersisted(0L);
+        assertThat(tracker.getPersistedCheckpoint(), equalTo(1L));
+        assertThat(tracker.getMaxSeqNo(), equalTo(2L));
+        assertThat(tracker.getStats(0L).getLocalCheckpoint(), equalTo(1L));
+        assertThat(tracker.getStats(0L).getMaxSeqNo(), equalTo(2L));
+    }
+
+    public void testDuplicatesAndReplays() {
+        final long localCheckpoint = randomLongBetween(SequenceNumbers.NO_OPS_PERFORMED, 5000);
+        final ConcurrentLocalCheckpointTracker tracker = new ConcurrentLocalCheckpointTracker(localCheckpoint, localCheckpoint);
+        final List<Long> seqNos = LongStream.rangeClosed(0, localCheckpoint + randomIntBetween(1, 5000)).boxed()
+            .collect(Collectors.toList());
+        final List<Long> withDuplicates = new ArrayList<>(seqNos);
+        withDuplicates.addAll(randomSubsetOf(seqNos));
+        Randomness.shuffle(withDuplicates);
+        for (long seqNo : withDuplicates) {
+            tracker.markSeqNoAsProcessed(seqNo);
+        }
+        assertThat(tracker.getProcessedCheckpoint(), equalTo((long) seqNos.size() - 1));
+        assertThat(tracker.getMaxSeqNo(), equalTo((long) seqNos.size() - 1));
+    }
+
+    public void testBeyondRing() {
+        final ConcurrentLocalCheckpointTracker tracker = createEmptyTracker();
+        final long window = (long) RING_SIZE * BIT_SET_SIZE;
+        final long maxSeqNo = randomLongBetween(window, 3 * window);
+        final long gap = randomLongBetween(0, window - 1);
+        final Set<Long> marked = new HashSet<>();
+        for (long seqNo = maxSeqNo; seqNo >= 0; seqNo--) {
+            if (seqNo != gap && (seqNo < window || randomBoolean())) {
+                tracker.markSeqNoAsProcessed(seqNo);
+                marked.add(seqNo);
+            }
+        }
+        assertThat(tracker.getProcessedCheckpoint(), equalTo(gap - 1));
+        for (int i = 0; i < 100; i++) {
+            final long seqNo = randomLongBetween(0, maxSeqNo);
+            assertThat(tracker.hasProcessed(seqNo), equalTo(marked.contains(seqNo)));
+        }
+        for (long seqNo = 0; seqNo <= maxSeqNo; seqNo++) {
+            if (marked.contains(seqNo) == false) {
+                tracker.markSeqNoAsProcessed(seqNo);
+            }
+        }
+        assertThat(tracker.getProcessedCheckpoint(), equalTo(maxSeqNo));
+        assertThat(tracker.hasProcessed(randomLongBetween(0, maxSeqNo)), equalTo(true));
+    }
+
+    public void testConcurrentReplica() throws Exception {
+        final ConcurrentLocalCheckpointTracker tracker = createEmptyTracker();
+        final Thread[] threads = new Thread[randomIntBetween(2, 8)];
+        final int maxOps = randomIntBetween(1, 3 * RING_SIZE * BIT_SET_SIZE);
+        final List<Long> seqNos = LongStream.range(0, maxOps).boxed().collect(Collectors.toList());
+        Collections.shuffle(seqNos, random());
+        final CyclicBarrier barrier = new CyclicBarrier(threads.length);
+        final boolean persisted = randomBoolean();
+        for (int t = 0; t < threads.length; t++) {
+            final int threadId = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    barrier.await();
+                } catch (InterruptedException | BrokenBarrierException e) {
+                    throw new AssertionError(e);
+                }
+                for (int i = threadId; i < seqNos.size(); i += threads.length) {
+                    if (persisted) {
+                        tracker.markSeqNoAsPersisted(seqNos.get(i));
+                    } else {
+                        tracker.markSeqNoAsProcessed(seqNos.get(i));
+                    }
+                }
+            }, "testConcurrentReplica_" + threadId);
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(tracker.getMaxSeqNo(), equalTo(maxOps - 1L));
+        if (persisted) {
+            assertThat(tracker.getPersistedCheckpoint(), equalTo(maxOps - 1L));
+            assertThat(tracker.getProcessedCheckpoint(), equalTo(SequenceNumbers.NO_OPS_PERFORMED));
+        } else {
+            assertThat(tracker.getProcessedCheckpoint(), equalTo(maxOps - 1L));
+            assertThat(tracker.getPersistedCheckpoint(), equalTo(SequenceNumbers.NO_OPS_PERFORMED));
+        }
+    }
+
+    public void testConcurrentPrimaryWithWaiters() throws Exception {
+        final ConcurrentLocalCheckpointTracker tracker = createEmptyTracker();
+        final Thread[] threads = new Thread[randomIntBetween(2, 8)];
+        final int opsPerThread = randomIntBetween(100, 10000);
+        final long maxSeqNo = (long) opsPerThread * threads.length - 1;
+        final long waitFor = randomLongBetween(0, maxSeqNo);
+        final AtomicBoolean complete = new AtomicBoolean();
+        final Thread waiter = new Thread(() -> {
+            try {
+                tracker.waitForProcessedOpsToComplete(waitFor);
+                assertThat(tracker.getProcessedCheckpoint() >= waitFor, equalTo(true));
+                complete.set(true);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        });
+        waiter.start();
+        final CyclicBarrier barrier = new CyclicBarrier(threads.length);
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                try {
+                    barrier.await();
+                } catch (InterruptedException | BrokenBarrierException e) {
+                    throw new AssertionError(e);
+                }
+                for (int i = 0; i < opsPerThread; i++) {
+                    tracker.markSeqNoAsProcessed(tracker.generateSeqNo());
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        waiter.join();
+        assertTrue(complete.get());
+        assertThat(tracker.getProcessedCheckpoint(), equalTo(maxSeqNo));
+    }
+
+    public void testWaitForOpsToComplete() throws Exception {
+        final ConcurrentLocalCheckpointTracker tracker = createEmptyTracker();
+        final int seqNo = randomIntBetween(0, 32);
+        final CyclicBarrier barrier = new CyclicBarrier(2);
+        final AtomicBoolean complete = new AtomicBoolean();
+        final Thread thread = new Thread(() -> {
+            try {
+                barrier.await();
+                tracker.waitForProcessedOpsToComplete(seqNo);
+                complete.set(true);
+                barrier.await();
+            } catch (BrokenBarrierException | InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.start();
+        barrier.await();
+
+        final List<Long> elements = LongStream.rangeClosed(0, seqNo).boxed().collect(Collectors.toList());
+        Randomness.shuffle(elements);
+        for (int i = 0; i < elements.size() - 1; i++) {
+            tracker.markSeqNoAsProcessed(elements.get(i));
+            assertFalse(complete.get());
+        }
+        tracker.markSeqNoAsProcessed(elements.get(elements.size() - 1));
+        barrier.await();
+        assertTrue(complete.get());
+        thread.join();
+    }
+}
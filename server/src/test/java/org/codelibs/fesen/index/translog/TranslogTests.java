@@ -500,7 +500,8 @@ public class TranslogTests extends ESTestCase {
                 builder.endObject();
                 assertThat(Strings.toString(builder), equalTo("{\"translog\":{\"operations\":4,\"size_in_bytes\":" + 355
                     + ",\"uncommitted_operations\":4,\"uncommitted_size_in_bytes\":" + 300
-                    + ",\"earliest_last_modified_age\":" + stats.getEarliestLastModifiedAge() + "}}"));
+                    + ",\"earliest_last_modified_age\":" + stats.getEarliestLastModifiedAge()
+                    + ",\"sync_count\":" + stats.getSyncCount() + ",\"sync_time_in_millis\":" + stats.getSyncTimeInMillis() + "}}"));
             }
         }
         translog.getDeletionPolicy().setLocalCheckpointOfSafeCommit(randomLongBetween(3, Long.MAX_VALUE));
@@ -541,6 +542,24 @@ public class TranslogTests extends ESTestCase {
         }
     }
 
+    public void testSyncStats() throws IOException {
+        final long initialSyncCount = stats().getSyncCount();
+        translog.add(new Translog.Index("test", "1", 0, primaryTerm.get(), new byte[]{1}));
+        translog.sync();
+        assertThat(stats().getSyncCount(), equalTo(initialSyncCount + 1));
+
+        // nothing left to sync
+        translog.sync();
+        assertThat(stats().getSyncCount(), equalTo(initialSyncCount + 1));
+
+        final Translog.Location location = translog.add(new Translog.Index("test", "2", 1, primaryTerm.get(), new byte[]{1}));
+        assertTrue(translog.ensureSynced(location));
+        assertFalse(translog.ensureSynced(location));
+        final TranslogStats stats = stats();
+        assertThat(stats.getSyncCount(), equalTo(initialSyncCount + 2));
+        assertThat(stats.getSyncTimeInMillis(), greaterThanOrEqualTo(0L));
+    }
+
     public void testTotalTests() {
         final TranslogStats total = new TranslogStats();
 
@@ -0,0 +1,153 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.indices;
+
+import org.codelibs.fesen.common.bytes.BytesArray;
+import org.codelibs.fesen.common.bytes.BytesReference;
+import org.codelibs.fesen.common.bytes.CompositeBytesReference;
+import org.codelibs.fesen.test.ESTestCase;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.nullValue;
+
+public class DiskCacheTierTests extends ESTestCase {
+
+    public void testPutAndRemove() throws IOException {
+        final Path path = createTempDir();
+        try (DiskCacheTier<Integer> tier = new DiskCacheTier<>(path, 1 << 20, 1 << 16)) {
+            final Map<Integer, BytesReference> values = new HashMap<>();
+            final int numberOfValues = randomIntBetween(1, 100);
+            long sizeInBytes = 0;
+            for (int i = 0; i < numberOfValues; i++) {
+                final BytesReference value = randomBytesReference(randomIntBetween(0, 1024));
+                values.put(i, value);
+                assertTrue(tier.put(i, value));
+                sizeInBytes += value.length();
+            }
+            assertThat(tier.count(), equalTo(numberOfValues));
+            assertThat(tier.sizeInBytes(), equalTo(sizeInBytes));
+            for (Map.Entry<Integer, BytesReference> entry : values.entrySet()) {
+                assertThat(tier.remove(entry.getKey()), equalTo(entry.getValue()));
+                assertThat(tier.remove(entry.getKey()), nullValue());
+            }
+            assertThat(tier.count(), equalTo(0));
+            assertThat(tier.sizeInBytes(), equalTo(0L));
+        }
+        assertFalse(Files.exists(path));
+    }
+
+    public void testReplace() throws IOException {
+        try (DiskCacheTier<String> tier = new DiskCacheTier<>(createTempDir(), 1 << 20, 1 << 16)) {
+            assertTrue(tier.put("key", new BytesArray("foo")));
+            assertTrue(tier.put("key", new BytesArray("foobar")));
+            assertThat(tier.count(), equalTo(1));
+            assertThat(tier.sizeInBytes(), equalTo(6L));
+            assertThat(tier.remove("key"), equalTo(new BytesArray("foobar")));
+        }
+    }
+
+    public void testCompositeValue() throws IOException {
+        try (DiskCacheTier<String> tier = new DiskCacheTier<>(createTempDir(), 1 << 20, 1 << 16)) {
+            final BytesReference value = CompositeBytesReference.of(new BytesArray("foo"), new BytesArray("bar"));
+            assertTrue(tier.put("key", value));
+            assertThat(tier.remove("key"), equalTo(new BytesArray("foobar")));
+        }
+    }
+
+    public void testValueLargerThanSegment() throws IOException {
+        try (DiskCacheTier<String> tier = new DiskCacheTier<>(createTempDir(), 1 << 20, 1024)) {
+            assertFalse(tier.put("key", randomBytesReference(1025)));
+            assertThat(tier.count(), equalTo(0));
+            assertTrue(tier.put("key", randomBytesReference(1024)));
+            assertThat(tier.count(), equalTo(1));
+        }
+    }
+
+    public void testEvictOldestSegment() throws IOException {
+        final Path path = createTempDir();
+        final int segmentSize = 1024;
+        final int maxSegments = randomIntBetween(1, 5);
+        try (DiskCacheTier<Integer> tier = new DiskCacheTier<>(path, maxSegments * segmentSize, segmentSize)) {
+            // every segment holds four values
+            final int numberOfValues = randomIntBetween(4 * maxSegments + 1, 10 * maxSegments);
+            for (int i = 0; i < numberOfValues; i++) {
+                assertTrue(tier.put(i, randomBytesReference(segmentSize / 4)));
+                assertThat(tier.numberOfSegments(), lessThanOrEqualTo(maxSegments));
+                assertThat(tier.sizeInBytes(), lessThanOrEqualTo((long) maxSegments * segmentSize));
+                try (Stream<Path> files = Files.list(path)) {
+                    assertThat(files.count(), equalTo((long) tier.numberOfSegments()));
+                }
+                // dropped segments free their disk space right away
+                long diskUsage = 0;
+                try (Stream<Path> files = Files.list(path)) {
+                    for (Path file : (Iterable<Path>) files::iterator) {
+                        diskUsage += Files.size(file);
+                    }
+                }
+                assertThat(diskUsage, lessThanOrEqualTo((long) maxSegments * segmentSize));
+            }
+            // values are evicted oldest first, a whole segment at a time
+            final int firstLiveValue = ((numberOfValues - 1) / 4 - maxSegments + 1) * 4;
+            assertThat(tier.count(), equalTo(numberOfValues - firstLiveValue));
+            for (int i = 0; i < firstLiveValue; i++) {
+                assertThat(tier.remove(i), nullValue());
+            }
+        }
+    }
+
+    public void testDeleteEmptySegments() throws IOException {
+        try (DiskCacheTier<Integer> tier = new DiskCacheTier<>(createTempDir(), 1 << 20, 1024)) {
+            for (int i = 0; i < 8; i++) {
+                assertTrue(tier.put(i, randomBytesReference(256)));
+            }
+            assertThat(tier.numberOfSegments(), equalTo(2));
+            tier.removeIf(i -> i < 4);
+            assertThat(tier.numberOfSegments(), equalTo(1));
+            assertThat(tier.count(), equalTo(4));
+            // the segment that is being written to is kept even if it is empty
+            tier.removeIf(i -> true);
+            assertThat(tier.numberOfSegments(), equalTo(1));
+            assertThat(tier.count(), equalTo(0));
+            tier.clear();
+            assertThat(tier.numberOfSegments(), equalTo(0));
+        }
+    }
+
+    public void testClearsExistingFiles() throws IOException {
+        final Path path = createTempDir();
+        Files.createFile(path.resolve("segment-0"));
+        try (DiskCacheTier<String> tier = new DiskCacheTier<>(path, 1 << 20, 1024)) {
+            assertTrue(tier.put("key", new BytesArray("foo")));
+            assertThat(tier.remove("key"), equalTo(new BytesArray("foo")));
+        }
+    }
+
+    private static BytesReference randomBytesReference(int length) {
+        return new BytesArray(randomByteArrayOfLength(length));
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.indices;
+
+import static org.codelibs.fesen.test.hamcrest.FesenAssertions.assertAcked;
+import static org.codelibs.fesen.test.hamcrest.FesenAssertions.assertSearchResponse;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+import org.codelibs.fesen.action.admin.cluster.node.stats.NodesStatsResponse;
+import org.codelibs.fesen.action.search.SearchResponse;
+import org.codelibs.fesen.cluster.metadata.IndexMetadata;
+import org.codelibs.fesen.common.settings.Settings;
+import org.codelibs.fesen.index.cache.significance.BackgroundFrequencyCacheStats;
+import org.codelibs.fesen.index.query.QueryBuilder;
+import org.codelibs.fesen.index.query.QueryBuilders;
+import org.codelibs.fesen.search.aggregations.AggregationBuilders;
+import org.codelibs.fesen.search.aggregations.bucket.terms.SignificantTerms;
+import org.codelibs.fesen.search.aggregations.bucket.terms.SignificantTermsAggregationBuilder;
+import org.codelibs.fesen.test.ESSingleNodeTestCase;
+
+public class IndicesBackgroundFrequencyCacheTests extends ESSingleNodeTestCase {
+
+    public void testCacheBackgroundFrequencies() throws Exception {
+        assertAcked(client().admin().indices().prepareCreate("index").addMapping("type", "s", "type=keyword", "tag", "type=keyword")
+                .setSettings(Settings.builder().put(IndicesRequestCache.INDEX_CACHE_REQUEST_ENABLED_SETTING.getKey(), false)
+                        .put(IndexMetadata.SETTING_NUMBER_OF_SHARDS, 1).put(IndexMetadata.SETTING_NUMBER_OF_REPLICAS, 0))
+                .get());
+        indexAndRefresh(0, 20);
+
+        SignificantTerms first = search(null);
+        BackgroundFrequencyCacheStats stats = stats();
+        final long misses = stats.getMissCount();
+        assertThat(misses, greaterThan(0L));
+        assertThat(stats.getHitCount(), equalTo(0L));
+        assertThat(stats.getCacheCount(), equalTo(misses));
+        assertThat(stats.getMemorySizeInBytes(), greaterThan(0L));
+
+        // the node stats report the cache next to the other caches
+        NodesStatsResponse nodesStats = client().admin().cluster().prepareNodesStats().setIndices(true).get();
+        BackgroundFrequencyCacheStats nodeStats = nodesStats.getNodes().get(0).getIndices().getBackgroundFrequencyCache();
+        assertThat(nodeStats.getCacheCount(), equalTo(stats.getCacheCount()));
+        assertThat(nodeStats.getMemorySizeInBytes(), equalTo(stats.getMemorySizeInBytes()));
+
+        // the same analysis on the same reader only hits the cache and finds the same terms
+        SignificantTerms second = search(null);
+        stats = stats();
+        assertThat(stats.getMissCount(), equalTo(misses));
+        assertThat(stats.getHitCount(), equalTo(misses));
+        assertThat(second.getBuckets().size(), equalTo(first.getBuckets().size()));
+        for (SignificantTerms.Bucket bucket : first.getBuckets()) {
+            assertThat(second.getBucketByKey(bucket.getKeyAsString()).getSupersetDf(), equalTo(bucket.getSupersetDf()));
+        }
+
+        // a background filter is cached separately, including the number of documents it matches
+        search(QueryBuilders.termQuery("tag", "odd"));
+        final long missesWithFilter = stats().getMissCount();
+        assertThat(missesWithFilter, greaterThan(misses));
+        // the filter itself is held, and accounted, by a single entry
+        stats = stats();
+        assertThat(stats.getCacheCount(), equalTo(missesWithFilter + 1));
+        search(QueryBuilders.termQuery("tag", "odd"));
+        assertThat(stats().getMissCount(), equalTo(missesWithFilter));
+
+        // a refresh that changes the shard opens a new reader that starts over
+        indexAndRefresh(21, 30);
+        search(null);
+        assertThat(stats().getMissCount(), greaterThan(missesWithFilter));
+
+        client().admin().indices().prepareClearCache("index").setRequestCache(true).get();
+        stats = stats();
+        assertThat(stats.getCacheCount(), equalTo(0L));
+        assertThat(stats.getMemorySizeInBytes(), equalTo(0L));
+    }
+
+    private BackgroundFrequencyCacheStats stats() {
+        return client().admin().indices().prepareStats("index").clear().setBackgroundFrequencyCache(true).get()
+            .getTotal().getBackgroundFrequencyCache();
+    }
+
+    private void indexAndRefresh(int from, int to) {
+        for (int i = from; i <= to; i++) {
+            client().prepareIndex("index", "type", Integer.toString(i))
+                .setSource("s", "s" + (i % 7), "tag", i % 2 == 0 ? "even" : "odd").get();
+        }
+        client().admin().indices().prepareRefresh("index").get();
+    }
+
+    private SignificantTerms search(QueryBuilder backgroundFilter) {
+        final SignificantTermsAggregationBuilder significantTerms = AggregationBuilders.significantTerms("sig").field("s").minDocCount(1);
+        if (backgroundFilter != null) {
+            significantTerms.backgroundFilter(backgroundFilter);
+        }
+        final SearchResponse response = client().prepareSearch("index").setSize(0)
+            .setQuery(QueryBuilders.termQuery("tag", "even"))
+            .addAggregation(significantTerms)
+            .get();
+        assertSearchResponse(response);
+        return response.getAggregations().get("sig");
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.indices;
+
+import static org.codelibs.fesen.test.hamcrest.FesenAssertions.assertAcked;
+import static org.codelibs.fesen.test.hamcrest.FesenAssertions.assertSearchResponse;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+import org.codelibs.fesen.action.search.SearchResponse;
+import org.codelibs.fesen.action.search.SearchType;
+import org.codelibs.fesen.cluster.metadata.IndexMetadata;
+import org.codelibs.fesen.common.settings.Settings;
+import org.codelibs.fesen.index.cache.request.RequestCacheStats;
+import org.codelibs.fesen.index.query.QueryBuilders;
+import org.codelibs.fesen.search.sort.SortOrder;
+import org.codelibs.fesen.test.ESSingleNodeTestCase;
+
+public class IndicesRequestCacheHitsTests extends ESSingleNodeTestCase {
+
+    public void testHitsAreNotCachedByDefault() throws Exception {
+        createIndex(false);
+        search(3);
+        search(3);
+        RequestCacheStats stats = requestCacheStats();
+        assertThat(stats.getHitsHitCount(), equalTo(0L));
+        assertThat(stats.getHitsMissCount(), equalTo(0L));
+        assertThat(stats.getMissCount(), equalTo(0L));
+    }
+
+    public void testCacheHits() throws Exception {
+        createIndex(true);
+
+        final SearchResponse r1 = search(3);
+        RequestCacheStats stats = requestCacheStats();
+        assertThat(stats.getHitsHitCount(), equalTo(0L));
+        assertThat(stats.getHitsMissCount(), equalTo(1L));
+        assertThat(stats.getHitsMemorySizeInBytes(), greaterThan(0L));
+
+        final SearchResponse r2 = search(3);
+        stats = requestCacheStats();
+        assertThat(stats.getHitsHitCount(), equalTo(1L));
+        assertThat(stats.getHitsMissCount(), equalTo(1L));
+        assertThat(r2.getHits().getHits().length, equalTo(r1.getHits().getHits().length));
+        for (int i = 0; i < r1.getHits().getHits().length; i++) {
+            assertThat(r2.getHits().getAt(i).getId(), equalTo(r1.getHits().getAt(i).getId()));
+            assertThat(r2.getHits().getAt(i).getSourceAsMap(), equalTo(r1.getHits().getAt(i).getSourceAsMap()));
+        }
+
+        // size=0 requests keep using the regular cache
+        search(0);
+        stats = requestCacheStats();
+        assertThat(stats.getMissCount(), equalTo(1L));
+        assertThat(stats.getHitsMissCount(), equalTo(1L));
+
+        // a refresh that changes the reader invalidates the cached hits
+        client().prepareIndex("index", "type", "4").setSource("s", "a", "n", 4).get();
+        client().admin().indices().prepareRefresh("index").get();
+        final SearchResponse r3 = search(3);
+        assertThat(r3.getHits().getTotalHits().value, equalTo(4L));
+        assertThat(r3.getHits().getAt(0).getId(), equalTo("4"));
+        stats = requestCacheStats();
+        assertThat(stats.getHitsHitCount(), equalTo(1L));
+        assertThat(stats.getHitsMissCount(), equalTo(2L));
+
+        client().admin().indices().prepareClearCache("index").setRequestCache(true).get();
+        assertThat(requestCacheStats().getHitsMemorySizeInBytes(), equalTo(0L));
+    }
+
+    public void testExplicitRequestCacheUsesRegularCache() throws Exception {
+        for (boolean cacheHits : new boolean[] { false, true }) {
+            createIndex(cacheHits);
+            search(3, true);
+            search(3, true);
+            RequestCacheStats stats = requestCacheStats();
+            assertThat(stats.getHitCount(), equalTo(1L));
+            assertThat(stats.getMissCount(), equalTo(1L));
+            assertThat(stats.getHitsHitCount(), equalTo(0L));
+            assertThat(stats.getHitsMissCount(), equalTo(0L));
+            assertAcked(client().admin().indices().prepareDelete("index"));
+        }
+    }
+
+    private void createIndex(boolean cacheHits) {
+        assertAcked(client().admin().indices().prepareCreate("index").addMapping("type", "s", "type=keyword", "n", "type=long")
+                .setSettings(Settings.builder().put(IndicesRequestCache.INDEX_CACHE_REQUEST_HITS_ENABLED_SETTING.getKey(), cacheHits)
+                        .put(IndexMetadata.SETTING_NUMBER_OF_SHARDS, 1).put(IndexMetadata.SETTING_NUMBER_OF_REPLICAS, 0))
+                .get());
+        for (int i = 1; i <= 3; i++) {
+            client().prepareIndex("index", "type", Integer.toString(i)).setSource("s", "a", "n", i).get();
+        }
+        client().admin().indices().prepareRefresh("index").get();
+    }
+
+    private SearchResponse search(int size) {
+        return search(size, null);
+    }
+
+    private SearchResponse search(int size, Boolean requestCache) {
+        final SearchResponse response = client().prepareSearch("index").setSearchType(SearchType.QUERY_THEN_FETCH).setSize(size)
+                .setRequestCache(requestCache).setQuery(QueryBuilders.termQuery("s", "a")).addSort("n", SortOrder.DESC).get();
+        assertSearchResponse(response);
+        return response;
+    }
+
+    private RequestCacheStats requestCacheStats() {
+        return client().admin().indices().prepareStats("index").setRequestCache(true).get().getTotal().getRequestCache();
+    }
+}
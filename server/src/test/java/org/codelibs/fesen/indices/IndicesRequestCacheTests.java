@@ -35,6 +35,7 @@ import org.apache.lucene.util.BytesRef;
 import org.codelibs.fesen.common.CheckedSupplier;
 import org.codelibs.fesen.common.bytes.AbstractBytesReference;
 import org.codelibs.fesen.common.bytes.BytesReference;
+import org.codelibs.fesen.common.cache.RemovalNotification;
 import org.codelibs.fesen.common.io.stream.BytesStreamOutput;
 import org.codelibs.fesen.common.lucene.index.FesenDirectoryReader;
 import org.codelibs.fesen.common.settings.Settings;
@@ -50,7 +51,11 @@ import org.codelibs.fesen.indices.IndicesRequestCache;
 import org.codelibs.fesen.test.ESTestCase;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class IndicesRequestCacheTests extends ESTestCase {
@@ -276,6 +281,117 @@ public class IndicesRequestCacheTests extends ESTestCase {
         IOUtils.close(reader, secondReader, thirdReader, writer, dir, cache);
     }
 
+    public void testSpillToDisk() throws Exception {
+        final ByteSizeValue size;
+        {
+            IndicesRequestCache cache = new IndicesRequestCache(Settings.EMPTY);
+            ShardRequestCache requestCacheStats = new ShardRequestCache();
+            Directory dir = newDirectory();
+            IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig());
+            writer.addDocument(newDoc(0, "foo"));
+            DirectoryReader reader = FesenDirectoryReader.wrap(DirectoryReader.open(writer),
+                new ShardId("foo", "bar", 1));
+            BytesReference termBytes = XContentHelper.toXContent(new TermQueryBuilder("id", "0"), XContentType.JSON, false);
+            cache.getOrCompute(new TestEntity(requestCacheStats, new AtomicBoolean(true)), new Loader(reader, 0), reader, termBytes);
+            size = requestCacheStats.stats().getMemorySize();
+            IOUtils.close(reader, writer, dir, cache);
+        }
+        // the heap only holds a single entry
+        final Path diskTierPath = createTempDir();
+        final List<Runnable> spills = new ArrayList<>();
+        IndicesRequestCache cache = new IndicesRequestCache(Settings.builder()
+            .put(IndicesRequestCache.INDICES_CACHE_QUERY_SIZE.getKey(), size.getBytes() + 1 + "b")
+            .put(IndicesRequestCache.INDICES_CACHE_QUERY_DISK_SIZE.getKey(), "1mb")
+            .build(), diskTierPath, spills::add);
+        AtomicBoolean indexShard = new AtomicBoolean(true);
+        ShardRequestCache requestCacheStats = new ShardRequestCache();
+        Directory dir = newDirectory();
+        IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig());
+
+        writer.addDocument(newDoc(0, "foo"));
+        DirectoryReader reader = FesenDirectoryReader.wrap(DirectoryReader.open(writer),
+            new ShardId("foo", "bar", 1));
+        TermQueryBuilder termQuery = new TermQueryBuilder("id", "0");
+        BytesReference termBytes = XContentHelper.toXContent(termQuery, XContentType.JSON, false);
+        TestEntity entity = new TestEntity(requestCacheStats, indexShard);
+
+        writer.updateDocument(new Term("id", "0"), newDoc(0, "bar"));
+        DirectoryReader secondReader = FesenDirectoryReader.wrap(DirectoryReader.open(writer),
+            new ShardId("foo", "bar", 1));
+        TestEntity secondEntity = new TestEntity(requestCacheStats, indexShard);
+
+        assertEquals("foo", cache.getOrCompute(entity, new Loader(reader, 0), reader, termBytes).streamInput().readString());
+        assertEquals("bar", cache.getOrCompute(secondEntity, new Loader(secondReader, 0), secondReader, termBytes)
+            .streamInput().readString());
+        assertEquals(1, cache.count());
+        assertEquals(1, requestCacheStats.stats().getEvictions());
+        // the evicted entry is written to disk in the background
+        assertEquals(0, cache.diskCount());
+        assertEquals(1, spills.size());
+        spills.remove(0).run();
+        assertEquals(1, cache.diskCount());
+
+        // the first entry is read back from disk, which moves the second one to disk
+        Loader loader = new Loader(reader, 0);
+        assertEquals("foo", cache.getOrCompute(entity, loader, reader, termBytes).streamInput().readString());
+        assertTrue(loader.loadedFromCache);
+        assertEquals(1, cache.count());
+        assertEquals(0, cache.diskCount());
+        assertEquals(1, spills.size());
+        spills.remove(0).run();
+        assertEquals(1, cache.diskCount());
+        assertEquals(1, requestCacheStats.stats().getHitCount());
+        assertEquals(2, requestCacheStats.stats().getMissCount());
+        assertEquals(2, requestCacheStats.stats().getEvictions());
+
+        // an entry that was evicted but not written yet is still found
+        cache.getOrCompute(secondEntity, new Loader(secondReader, 0), secondReader, termBytes);
+        assertEquals(1, spills.size());
+        loader = new Loader(reader, 0);
+        assertEquals("foo", cache.getOrCompute(entity, loader, reader, termBytes).streamInput().readString());
+        assertTrue(loader.loadedFromCache);
+        assertEquals(1, spills.size());
+        spills.remove(0).run();
+        assertEquals(1, cache.diskCount());
+
+        // closing a reader invalidates its entries on disk
+        secondReader.close();
+        cache.cleanCache();
+        assertEquals(1, cache.count());
+        assertEquals(0, cache.diskCount());
+
+        IOUtils.close(reader, writer, dir, cache);
+        assertFalse(Files.exists(diskTierPath));
+    }
+
+    public void testExpiredEntriesAreNotSpilled() throws Exception {
+        final List<Runnable> spills = new ArrayList<>();
+        IndicesRequestCache cache = new IndicesRequestCache(Settings.builder()
+            .put(IndicesRequestCache.INDICES_CACHE_QUERY_DISK_SIZE.getKey(), "1mb")
+            .build(), createTempDir(), spills::add);
+        ShardRequestCache requestCacheStats = new ShardRequestCache();
+        Directory dir = newDirectory();
+        IndexWriter writer = new IndexWriter(dir, newIndexWriterConfig());
+        writer.addDocument(newDoc(0, "foo"));
+        DirectoryReader reader = FesenDirectoryReader.wrap(DirectoryReader.open(writer),
+            new ShardId("foo", "bar", 1));
+        BytesReference termBytes = XContentHelper.toXContent(new TermQueryBuilder("id", "0"), XContentType.JSON, false);
+        TestEntity entity = new TestEntity(requestCacheStats, new AtomicBoolean(true));
+        BytesReference value = cache.getOrCompute(entity, new Loader(reader, 0), reader, termBytes);
+        IndicesRequestCache.Key key = new IndicesRequestCache.Key(entity, reader.getReaderCacheHelper().getKey(), termBytes);
+
+        cache.onRemoval(new RemovalNotification<>(key, value, RemovalNotification.RemovalReason.EVICTED, true));
+        assertEquals(0, spills.size());
+        assertEquals(0, cache.diskCount());
+
+        cache.onRemoval(new RemovalNotification<>(key, value, RemovalNotification.RemovalReason.EVICTED, false));
+        assertEquals(1, spills.size());
+        spills.remove(0).run();
+        assertEquals(1, cache.diskCount());
+
+        IOUtils.close(reader, writer, dir, cache);
+    }
+
     public void testClearAllEntityIdentity() throws Exception {
         IndicesRequestCache cache = new IndicesRequestCache(Settings.EMPTY);
         AtomicBoolean indexShard =  new AtomicBoolean(true);
@@ -0,0 +1,124 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.indices;
+
+import static org.codelibs.fesen.test.hamcrest.FesenAssertions.assertAcked;
+import static org.codelibs.fesen.test.hamcrest.FesenAssertions.assertSearchResponse;
+import static org.hamcrest.Matchers.equalTo;
+
+import org.codelibs.fesen.action.search.SearchRequestBuilder;
+import org.codelibs.fesen.action.search.SearchResponse;
+import org.codelibs.fesen.cluster.metadata.IndexMetadata;
+import org.codelibs.fesen.common.settings.Settings;
+import org.codelibs.fesen.index.query.QueryBuilders;
+import org.codelibs.fesen.search.aggregations.AggregationBuilders;
+import org.codelibs.fesen.search.aggregations.bucket.histogram.Histogram;
+import org.codelibs.fesen.search.aggregations.metrics.Max;
+import org.codelibs.fesen.search.aggregations.metrics.Sum;
+import org.codelibs.fesen.test.ESSingleNodeTestCase;
+
+public class IndicesSegmentAggregationCacheTests extends ESSingleNodeTestCase {
+
+    @Override
+    protected Settings nodeSettings() {
+        return Settings.builder().put(super.nodeSettings())
+            .put(IndicesSegmentAggregationCache.INDICES_CACHE_SEGMENT_AGGS_MIN_DOCS.getKey(), 2)
+            .build();
+    }
+
+    public void testCachePerSegment() throws Exception {
+        assertAcked(client().admin().indices().prepareCreate("index").addMapping("type", "s", "type=keyword", "n", "type=long")
+                .setSettings(Settings.builder().put(IndicesSegmentAggregationCache.INDEX_CACHE_SEGMENT_AGGS_ENABLED_SETTING.getKey(), true)
+                        .put(IndicesRequestCache.INDEX_CACHE_REQUEST_ENABLED_SETTING.getKey(), false)
+                        .put(IndexMetadata.SETTING_NUMBER_OF_SHARDS, 1).put(IndexMetadata.SETTING_NUMBER_OF_REPLICAS, 0))
+                .get());
+        // two segments that are large enough to be cached
+        indexAndRefresh(1, 3);
+        indexAndRefresh(4, 5);
+        final IndicesSegmentAggregationCache cache = getInstanceFromNode(IndicesService.class).getSegmentAggregationCache();
+
+        SearchResponse r1 = search();
+        assertResults(r1, 5);
+        assertThat(cache.missCount(), equalTo(2L));
+        assertThat(cache.hitCount(), equalTo(0L));
+        assertThat(cache.count(), equalTo(2));
+
+        SearchResponse r2 = search();
+        assertResults(r2, 5);
+        assertThat(cache.missCount(), equalTo(2L));
+        assertThat(cache.hitCount(), equalTo(2L));
+
+        // a new segment that is too small to be cached is collected with the regular aggregators
+        indexAndRefresh(6, 6);
+        assertResults(search(), 6);
+        assertThat(cache.missCount(), equalTo(2L));
+        assertThat(cache.hitCount(), equalTo(4L));
+
+        // deleting a document of a cached segment invalidates its entry
+        client().prepareDelete("index", "type", "5").get();
+        client().admin().indices().prepareRefresh("index").get();
+        SearchResponse r3 = search();
+        assertSearchResponse(r3);
+        Sum sum = r3.getAggregations().get("sum");
+        assertThat(sum.getValue(), equalTo(16d));
+        assertThat(cache.missCount(), equalTo(3L));
+        assertThat(cache.hitCount(), equalTo(5L));
+
+        // terms aggregations are not cached, their shard level results would lose accuracy
+        assertSearchResponse(client().prepareSearch("index").setSize(0)
+            .addAggregation(AggregationBuilders.terms("terms").field("s")).get());
+        assertThat(cache.missCount(), equalTo(3L));
+        assertThat(cache.hitCount(), equalTo(5L));
+
+        client().admin().indices().prepareClearCache("index").setRequestCache(true).get();
+        assertThat(cache.count(), equalTo(0));
+    }
+
+    private void indexAndRefresh(int from, int to) {
+        for (int i = from; i <= to; i++) {
+            client().prepareIndex("index", "type", Integer.toString(i)).setSource("s", "a", "n", i).get();
+        }
+        client().admin().indices().prepareRefresh("index").get();
+    }
+
+    private SearchResponse search() {
+        final SearchRequestBuilder request = client().prepareSearch("index").setSize(0)
+            .setQuery(QueryBuilders.termQuery("s", "a"))
+            .addAggregation(AggregationBuilders.sum("sum").field("n"))
+            .addAggregation(AggregationBuilders.max("max").field("n"))
+            .addAggregation(AggregationBuilders.histogram("histo").field("n").interval(2));
+        final SearchResponse response = request.get();
+        assertSearchResponse(response);
+        return response;
+    }
+
+    private static void assertResults(SearchResponse response, int numDocs) {
+        Sum sum = response.getAggregations().get("sum");
+        assertThat(sum.getValue(), equalTo(numDocs * (numDocs + 1) / 2d));
+        Max max = response.getAggregations().get("max");
+        assertThat(max.getValue(), equalTo((double) numDocs));
+        Histogram histo = response.getAggregations().get("histo");
+        long count = 0;
+        for (Histogram.Bucket bucket : histo.getBuckets()) {
+            count += bucket.getDocCount();
+        }
+        assertThat(count, equalTo((long) numDocs));
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.indices;
+
+import org.codelibs.fesen.common.settings.ClusterSettings;
+import org.codelibs.fesen.common.settings.Settings;
+import org.codelibs.fesen.common.util.concurrent.EsExecutors;
+import org.codelibs.fesen.common.util.concurrent.ThreadContext;
+import org.codelibs.fesen.index.translog.Translog;
+import org.codelibs.fesen.test.ESTestCase;
+import org.codelibs.fesen.threadpool.TestThreadPool;
+import org.codelibs.fesen.threadpool.ThreadPool;
+import org.junit.After;
+import org.junit.Before;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class IndicesTranslogSyncServiceTests extends ESTestCase {
+
+    private ThreadPool threadPool;
+
+    @Before
+    public void setUpThreadPool() {
+        threadPool = new TestThreadPool(getTestName());
+    }
+
+    @After
+    public void tearDownThreadPool() {
+        ThreadPool.terminate(threadPool, 10, TimeUnit.SECONDS);
+    }
+
+    private IndicesTranslogSyncService newService(Settings settings) {
+        return new IndicesTranslogSyncService(settings, new ClusterSettings(settings, ClusterSettings.BUILT_IN_CLUSTER_SETTINGS),
+            new ThreadContext(Settings.EMPTY), randomBoolean() ? threadPool.generic() : EsExecutors.newDirectExecutorService());
+    }
+
+    public void testSyncsEveryShardUpToItsHighestLocation() throws Exception {
+        final Settings settings = Settings.builder()
+            .put(IndicesTranslogSyncService.INDICES_TRANSLOG_GROUP_SYNC_MAX_DELAY.getKey(), randomFrom("0ms", "1ms", "5ms"))
+            .build();
+        final IndicesTranslogSyncService service = newService(settings);
+        final Path[] dataPaths = new Path[] { createTempDir(), createTempDir() };
+        final int numShards = randomIntBetween(1, 8);
+        final List<RecordingTarget> targets = new ArrayList<>();
+        for (int i = 0; i < numShards; i++) {
+            targets.add(new RecordingTarget());
+        }
+        final int numThreads = randomIntBetween(2, 8);
+        final int syncsPerThread = randomIntBetween(10, 100);
+        // random values are drawn up front since the randomized context is only available to the test thread
+        final int[][] shards = new int[numThreads][syncsPerThread];
+        final long[][] offsets = new long[numThreads][syncsPerThread];
+        for (int t = 0; t < numThreads; t++) {
+            for (int i = 0; i < syncsPerThread; i++) {
+                shards[t][i] = randomIntBetween(0, numShards - 1);
+                offsets[t][i] = randomIntBetween(0, 1 << 20);
+            }
+        }
+        final AtomicInteger notified = new AtomicInteger();
+        final CyclicBarrier barrier = new CyclicBarrier(numThreads);
+        final Thread[] threads = new Thread[numThreads];
+        for (int t = 0; t < numThreads; t++) {
+            final int thread = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    barrier.await();
+                    for (int i = 0; i < syncsPerThread; i++) {
+                        final int shard = shards[thread][i];
+                        final long offset = offsets[thread][i];
+                        final RecordingTarget target = targets.get(shard);
+                        target.requested.accumulateAndGet(offset, Math::max);
+                        service.sync(dataPaths[shard % dataPaths.length], target, new Translog.Location(1, offset, 1), e -> {
+                            assertNull(e);
+                            assertThat(target.synced.get(), greaterThanOrEqualTo(offset));
+                            notified.incrementAndGet();
+                        });
+                    }
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertThat(notified.get(), equalTo(numThreads * syncsPerThread));
+        for (RecordingTarget target : targets) {
+            assertThat(target.synced.get(), equalTo(target.requested.get()));
+        }
+    }
+
+    public void testSyncsTheShardsOfAWindowConcurrently() throws Exception {
+        final IndicesTranslogSyncService service = new IndicesTranslogSyncService(Settings.EMPTY,
+            new ClusterSettings(Settings.EMPTY, ClusterSettings.BUILT_IN_CLUSTER_SETTINGS), new ThreadContext(Settings.EMPTY),
+            threadPool.generic());
+        final Path dataPath = createTempDir();
+        final CountDownLatch leading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Thread leader = new Thread(() -> service.sync(dataPath, locations -> {
+            leading.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        }, new Translog.Location(1, 0, 1), e -> assertNull(e)));
+        leader.start();
+        leading.await();
+
+        // the syncs wait for each other, so they only complete if the window runs them concurrently
+        final int numShards = randomIntBetween(2, 4);
+        final CyclicBarrier barrier = new CyclicBarrier(numShards);
+        final CountDownLatch notified = new CountDownLatch(numShards);
+        final AtomicReference<Exception> failure = new AtomicReference<>();
+        for (int i = 0; i < numShards; i++) {
+            service.sync(dataPath, locations -> {
+                try {
+                    barrier.await(10, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    throw new IOException(e);
+                }
+            }, new Translog.Location(1, i, 1), e -> {
+                if (e != null) {
+                    failure.set(e);
+                }
+                notified.countDown();
+            });
+        }
+        release.countDown();
+        assertTrue(notified.await(30, TimeUnit.SECONDS));
+        assertNull(failure.get());
+        leader.join();
+    }
+
+    public void testFailureOnlyFailsTheShardThatFailedToSync() throws Exception {
+        final IndicesTranslogSyncService service = newService(Settings.EMPTY);
+        final Path dataPath = createTempDir();
+        final IOException failure = new IOException("boom");
+        final RecordingTarget healthy = new RecordingTarget();
+        final CountDownLatch latch = new CountDownLatch(2);
+        final AtomicReference<Exception> healthyResult = new AtomicReference<>();
+        final AtomicReference<Exception> failingResult = new AtomicReference<>();
+        service.sync(dataPath, locations -> { throw failure; }, new Translog.Location(1, 0, 1), e -> {
+            failingResult.set(e);
+            latch.countDown();
+        });
+        service.sync(dataPath, healthy, new Translog.Location(1, 42, 1), e -> {
+            healthyResult.set(e);
+            latch.countDown();
+        });
+        latch.await();
+        assertThat(failingResult.get(), sameInstance(failure));
+        assertNull(healthyResult.get());
+        assertThat(healthy.synced.get(), equalTo(42L));
+    }
+
+    public void testRestoresThreadContextOfListeners() {
+        final ThreadContext threadContext = new ThreadContext(Settings.EMPTY);
+        final IndicesTranslogSyncService service = new IndicesTranslogSyncService(Settings.EMPTY,
+            new ClusterSettings(Settings.EMPTY, ClusterSettings.BUILT_IN_CLUSTER_SETTINGS), threadContext,
+            EsExecutors.newDirectExecutorService());
+        final AtomicReference<String> header = new AtomicReference<>();
+        try (ThreadContext.StoredContext ignore = threadContext.stashContext()) {
+            threadContext.putHeader("test", "value");
+            service.sync(createTempDir(), new RecordingTarget(), new Translog.Location(1, 0, 1),
+                e -> header.set(threadContext.getHeader("test")));
+        }
+        assertThat(header.get(), equalTo("value"));
+    }
+
+    private static final class RecordingTarget implements IndicesTranslogSyncService.SyncTarget {
+        final AtomicLong requested = new AtomicLong(-1);
+        final AtomicLong synced = new AtomicLong(-1);
+
+        @Override
+        public void ensureSynced(Stream<Translog.Location> locations) {
+            locations.mapToLong(location -> location.translogLocation).max()
+                .ifPresent(offset -> synced.accumulateAndGet(offset, Math::max));
+        }
+    }
+}
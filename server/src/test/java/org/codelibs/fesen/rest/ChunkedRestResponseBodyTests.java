@@ -0,0 +1,151 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.codelibs.fesen.rest;
+
+import org.codelibs.fesen.common.Strings;
+import org.codelibs.fesen.common.bytes.BytesReference;
+import org.codelibs.fesen.common.collect.Iterators;
+import org.codelibs.fesen.common.io.stream.BytesStreamOutput;
+import org.codelibs.fesen.common.xcontent.ChunkedToXContent;
+import org.codelibs.fesen.common.xcontent.ToXContent;
+import org.codelibs.fesen.common.xcontent.XContentBuilder;
+import org.codelibs.fesen.common.xcontent.XContentType;
+import org.codelibs.fesen.test.ESTestCase;
+import org.codelibs.fesen.test.rest.FakeRestChannel;
+import org.codelibs.fesen.test.rest.FakeRestRequest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+public class ChunkedRestResponseBodyTests extends ESTestCase {
+
+    public void testEncodeChunks() throws IOException {
+        final ChunkedToXContent chunkedToXContent = randomChunkedToXContent();
+        final ChunkedRestResponseBody body = newBody(chunkedToXContent);
+        assertThat(body.getResponseContentTypeString(), equalTo(XContentType.JSON.mediaType()));
+
+        final int sizeHint = randomIntBetween(1, 128);
+        final BytesStreamOutput out = new BytesStreamOutput();
+        int numChunks = 0;
+        while (body.isDone() == false) {
+            final BytesReference chunk = body.encodeChunk(sizeHint);
+            assertThat(chunk.length(), greaterThan(0));
+            chunk.writeTo(out);
+            numChunks++;
+        }
+        assertThat(numChunks, greaterThan(1));
+        assertThat(out.bytes().utf8ToString(), equalTo(Strings.toString(chunkedToXContent)));
+        expectThrows(IllegalStateException.class, () -> body.encodeChunk(sizeHint));
+    }
+
+    public void testEncodeRemaining() throws IOException {
+        final ChunkedToXContent chunkedToXContent = randomChunkedToXContent();
+        final ChunkedRestResponse response = new ChunkedRestResponse(RestStatus.OK, newBody(chunkedToXContent));
+        assertThat(response.content().utf8ToString(), equalTo(Strings.toString(chunkedToXContent)));
+        assertTrue(response.body().isDone());
+        // the content is only serialized once
+        assertSame(response.content(), response.content());
+    }
+
+    public void testBufferWithoutStreamingSupport() throws IOException {
+        final ChunkedToXContent chunkedToXContent = randomChunkedToXContent();
+        final RestChannel channel = new BufferingRestChannel(new FakeRestChannel(new FakeRestRequest(), true, 1));
+        final ChunkedRestResponseBody body = ChunkedRestResponseBody.fromXContent(chunkedToXContent, ToXContent.EMPTY_PARAMS, channel);
+        assertThat(body.getResponseContentTypeString(), equalTo(XContentType.JSON.mediaType()));
+        assertThat(body.encodeChunk(randomIntBetween(1, 128)).utf8ToString(), equalTo(Strings.toString(chunkedToXContent)));
+        assertTrue(body.isDone());
+    }
+
+    private static ChunkedRestResponseBody newBody(ChunkedToXContent chunkedToXContent) throws IOException {
+        final FakeRestChannel channel = new FakeRestChannel(new FakeRestRequest(), true, 1);
+        return ChunkedRestResponseBody.fromXContent(chunkedToXContent, ToXContent.EMPTY_PARAMS, channel);
+    }
+
+    /**
+     * A channel that relies on the default implementation of the methods it does not implement.
+     */
+    private static final class BufferingRestChannel implements RestChannel {
+        private final RestChannel delegate;
+
+        BufferingRestChannel(RestChannel delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public XContentBuilder newBuilder() throws IOException {
+            return delegate.newBuilder();
+        }
+
+        @Override
+        public XContentBuilder newErrorBuilder() throws IOException {
+            return delegate.newErrorBuilder();
+        }
+
+        @Override
+        public XContentBuilder newBuilder(XContentType xContentType, boolean useFiltering) throws IOException {
+            return delegate.newBuilder(xContentType, useFiltering);
+        }
+
+        @Override
+        public XContentBuilder newBuilder(XContentType xContentType, XContentType responseContentType, boolean useFiltering)
+                throws IOException {
+            return delegate.newBuilder(xContentType, responseContentType, useFiltering);
+        }
+
+        @Override
+        public BytesStreamOutput bytesOutput() {
+            return delegate.bytesOutput();
+        }
+
+        @Override
+        public RestRequest request() {
+            return delegate.request();
+        }
+
+        @Override
+        public boolean detailedErrorsEnabled() {
+            return delegate.detailedErrorsEnabled();
+        }
+
+        @Override
+        public void sendResponse(RestResponse response) {
+            delegate.sendResponse(response);
+        }
+    }
+
+    private static ChunkedToXContent randomChunkedToXContent() {
+        final List<ToXContent> values = new ArrayList<>();
+        final int numValues = randomIntBetween(10, 100);
+        for (int i = 0; i < numValues; i++) {
+            final String value = randomAlphaOfLengthBetween(1, 32);
+            values.add((builder, params) -> builder.value(value));
+        }
+        return params -> Iterators.concat(
+            Collections.<ToXContent>singletonList((builder, p) -> builder.startObject().startArray("values")).iterator(),
+            values.iterator(),
+            Collections.<ToXContent>singletonList((builder, p) -> builder.endArray().endObject()).iterator());
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.codelibs.fesen.search.aggregations.bucket;
+
+import org.codelibs.fesen.common.xcontent.XContentBuilder;
+import org.codelibs.fesen.common.xcontent.XContentParser;
+import org.codelibs.fesen.common.xcontent.json.JsonXContent;
+import org.codelibs.fesen.search.aggregations.AggregatorFactories;
+import org.codelibs.fesen.search.aggregations.BaseAggregationTestCase;
+import org.codelibs.fesen.search.aggregations.bucket.sampler.DiversifiedAggregationBuilder;
+import org.codelibs.fesen.search.aggregations.bucket.sampler.RandomSamplerAggregationBuilder;
+import org.codelibs.fesen.search.aggregations.bucket.sampler.SamplerAggregationBuilder;
+import org.codelibs.fesen.search.aggregations.bucket.terms.TermsAggregationBuilder;
+import org.codelibs.fesen.search.aggregations.metrics.AvgAggregationBuilder;
+import org.codelibs.fesen.search.aggregations.metrics.CardinalityAggregationBuilder;
+import org.codelibs.fesen.search.aggregations.metrics.PercentilesAggregationBuilder;
+
+import static org.hamcrest.Matchers.containsString;
+
+public class RandomSamplerTests extends BaseAggregationTestCase<RandomSamplerAggregationBuilder> {
+
+    @Override
+    protected final RandomSamplerAggregationBuilder createTestAggregatorBuilder() {
+        RandomSamplerAggregationBuilder factory = new RandomSamplerAggregationBuilder(randomAlphaOfLengthBetween(3, 10),
+            randomDoubleBetween(0, 1, false));
+        if (randomBoolean()) {
+            factory.seed(randomInt());
+        }
+        return factory;
+    }
+
+    public void testInvalidProbability() {
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class,
+            () -> new RandomSamplerAggregationBuilder("sampler", randomFrom(0d, -1d, 1.5d)));
+        assertTrue(e.getMessage().contains("[probability] must be greater than 0"));
+    }
+
+    public void testSupportedSubAggregations() {
+        RandomSamplerAggregationBuilder sampler = new RandomSamplerAggregationBuilder("sampler", 0.1)
+            .subAggregation(new TermsAggregationBuilder("terms").field("tag")
+                .subAggregation(new AvgAggregationBuilder("avg").field("price")));
+        assertEquals(1, sampler.getSubAggregations().size());
+    }
+
+    public void testRejectUnsupportedSubAggregation() {
+        RandomSamplerAggregationBuilder sampler = new RandomSamplerAggregationBuilder("sampler", 0.1);
+        IllegalArgumentException e = expectThrows(IllegalArgumentException.class,
+            () -> sampler.subAggregation(new CardinalityAggregationBuilder("distinct").field("user")));
+        assertThat(e.getMessage(), containsString("doesn't support sub-aggregation [distinct] of type [cardinality]"));
+        assertTrue(sampler.getSubAggregations().isEmpty());
+
+        e = expectThrows(IllegalArgumentException.class, () -> sampler.subAggregation(new TermsAggregationBuilder("terms").field("tag")
+            .subAggregation(new PercentilesAggregationBuilder("percentiles").field("price"))));
+        assertThat(e.getMessage(), containsString("doesn't support sub-aggregation [percentiles] of type [percentiles]"));
+
+        // the doc counts of the samplers aren't scaled up
+        e = expectThrows(IllegalArgumentException.class, () -> sampler.subAggregation(new SamplerAggregationBuilder("inner")));
+        assertThat(e.getMessage(), containsString("doesn't support sub-aggregation [inner] of type [sampler]"));
+        e = expectThrows(IllegalArgumentException.class,
+            () -> sampler.subAggregation(new DiversifiedAggregationBuilder("diversified").field("user")));
+        assertThat(e.getMessage(), containsString("doesn't support sub-aggregation [diversified] of type [diversified_sampler]"));
+    }
+
+    public void testRejectUnsupportedSubAggregationWhenParsing() throws Exception {
+        XContentBuilder source = JsonXContent.contentBuilder()
+                .startObject()
+                    .startObject("sample")
+                        .startObject("random_sampler")
+                            .field("probability", 0.1)
+                        .endObject()
+                        .startObject("aggs")
+                            .startObject("distinct")
+                                .startObject("cardinality")
+                                    .field("field", "user")
+                                .endObject()
+                            .endObject()
+                        .endObject()
+                    .endObject()
+                .endObject();
+        XContentParser parser = createParser(source);
+        assertSame(XContentParser.Token.START_OBJECT, parser.nextToken());
+        Exception e = expectThrows(IllegalArgumentException.class, () -> AggregatorFactories.parseAggregators(parser));
+        assertThat(e.getMessage(), containsString("doesn't support sub-aggregation [distinct] of type [cardinality]"));
+    }
+
+}
@@ -0,0 +1,187 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.codelibs.fesen.search.aggregations.bucket;
+
+import org.codelibs.fesen.common.io.stream.NamedWriteableRegistry;
+import org.codelibs.fesen.common.io.stream.StreamInput;
+import org.codelibs.fesen.common.io.stream.StreamOutput;
+import org.codelibs.fesen.common.io.stream.Writeable;
+import org.codelibs.fesen.test.ESTestCase;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class SpilledBucketRunsTests extends ESTestCase {
+
+    private static final Comparator<Value> COMPARATOR = Comparator.comparingLong(v -> v.key);
+
+    public void testMerge() throws IOException {
+        Path dir = createTempDir();
+        SpilledBucketRuns.DiskBudget diskBudget = new SpilledBucketRuns.DiskBudget(Long.MAX_VALUE);
+        SpilledBucketRuns.Config config = new SpilledBucketRuns.Config(dir, 0, diskBudget,
+            new NamedWriteableRegistry(Collections.emptyList()));
+        Map<Long, List<Integer>> expected = new TreeMap<>();
+        try (SpilledBucketRuns<Value> runs = config.newRuns(COMPARATOR)) {
+            int numRuns = randomIntBetween(1, 10);
+            for (int run = 0; run < numRuns; run++) {
+                TreeSet<Long> keys = new TreeSet<>();
+                int numKeys = randomIntBetween(0, 100);
+                for (int i = 0; i < numKeys; i++) {
+                    keys.add((long) randomIntBetween(-50, 50));
+                }
+                List<Value> values = new ArrayList<>();
+                for (long key : keys) {
+                    values.add(new Value(key, run));
+                    expected.computeIfAbsent(key, k -> new ArrayList<>()).add(run);
+                }
+                assertTrue(runs.addRun(values, Value::new));
+            }
+            assertThat(diskBudget.used(), equalTo(sizeOfRuns(dir)));
+            Map<Long, List<Integer>> merged = new TreeMap<>();
+            List<Long> order = new ArrayList<>();
+            runs.merge(sameKey -> {
+                List<Integer> runIds = new ArrayList<>();
+                for (Value value : sameKey) {
+                    assertThat(value.key, equalTo(sameKey.get(0).key));
+                    runIds.add(value.run);
+                }
+                Collections.sort(runIds);
+                assertNull(merged.put(sameKey.get(0).key, runIds));
+                order.add(sameKey.get(0).key);
+                return true;
+            });
+            assertThat(merged, equalTo(expected));
+            assertThat(order, equalTo(new ArrayList<>(expected.keySet())));
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            assertThat(files.count(), equalTo(0L));
+        }
+        assertThat(diskBudget.used(), equalTo(0L));
+    }
+
+    public void testDiskBudget() throws IOException {
+        Path dir = createTempDir();
+        List<Value> values = new ArrayList<>();
+        int numValues = randomIntBetween(1000, 5000);
+        for (int i = 0; i < numValues; i++) {
+            values.add(new Value(i, 0));
+        }
+        long runSize;
+        SpilledBucketRuns.DiskBudget unlimited = new SpilledBucketRuns.DiskBudget(Long.MAX_VALUE);
+        try (SpilledBucketRuns<Value> runs = new SpilledBucketRuns.Config(dir, 0, unlimited,
+                new NamedWriteableRegistry(Collections.emptyList())).newRuns(COMPARATOR)) {
+            assertTrue(runs.addRun(values, Value::new));
+            runSize = unlimited.used();
+        }
+
+        // the budget is shared by all the runs of the node
+        SpilledBucketRuns.DiskBudget diskBudget = new SpilledBucketRuns.DiskBudget(runSize * 2);
+        SpilledBucketRuns.Config config = new SpilledBucketRuns.Config(dir, 0, diskBudget,
+            new NamedWriteableRegistry(Collections.emptyList()));
+        try (SpilledBucketRuns<Value> first = config.newRuns(COMPARATOR);
+             SpilledBucketRuns<Value> second = config.newRuns(COMPARATOR)) {
+            assertTrue(first.addRun(values, Value::new));
+            assertTrue(second.addRun(values, Value::new));
+            assertThat(diskBudget.used(), equalTo(runSize * 2));
+            assertFalse(second.addRun(values, Value::new));
+            assertThat(diskBudget.used(), lessThanOrEqualTo(runSize * 2));
+        }
+        assertThat(diskBudget.used(), equalTo(0L));
+        try (Stream<Path> files = Files.list(dir)) {
+            assertThat(files.count(), equalTo(0L));
+        }
+        expectThrows(IllegalArgumentException.class, () -> diskBudget.setLimit(-1));
+    }
+
+    private static long sizeOfRuns(Path dir) throws IOException {
+        long size = 0;
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                size += Files.size(file);
+            }
+        }
+        return size;
+    }
+
+    public void testStopEarly() throws IOException {
+        SpilledBucketRuns.Config config = new SpilledBucketRuns.Config(createTempDir(), 0,
+            new SpilledBucketRuns.DiskBudget(Long.MAX_VALUE), new NamedWriteableRegistry(Collections.emptyList()));
+        try (SpilledBucketRuns<Value> runs = config.newRuns(COMPARATOR)) {
+            List<Value> values = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                values.add(new Value(i, 0));
+            }
+            runs.addRun(values, Value::new);
+            runs.addRun(values, Value::new);
+            int limit = randomIntBetween(1, 99);
+            List<Long> seen = new ArrayList<>();
+            runs.merge(sameKey -> {
+                assertThat(sameKey.size(), equalTo(2));
+                seen.add(sameKey.get(0).key);
+                return seen.size() < limit;
+            });
+            assertThat(seen.size(), equalTo(limit));
+            assertThat(seen.get(limit - 1), equalTo((long) limit - 1));
+        }
+    }
+
+    public void testShouldSpill() {
+        SpilledBucketRuns.Config config = new SpilledBucketRuns.Config(createTempDir(), 10,
+            new SpilledBucketRuns.DiskBudget(Long.MAX_VALUE), new NamedWriteableRegistry(Collections.emptyList()));
+        assertFalse(config.shouldSpill(0));
+        assertFalse(config.shouldSpill(9));
+        assertTrue(config.shouldSpill(10));
+        expectThrows(IllegalArgumentException.class, () -> new SpilledBucketRuns.Config(createTempDir(), -1,
+            new SpilledBucketRuns.DiskBudget(Long.MAX_VALUE), new NamedWriteableRegistry(Collections.emptyList())));
+    }
+
+    private static class Value implements Writeable {
+        private final long key;
+        private final int run;
+
+        Value(long key, int run) {
+            this.key = key;
+            this.run = run;
+        }
+
+        Value(StreamInput in) throws IOException {
+            key = in.readZLong();
+            run = in.readVInt();
+        }
+
+        @Override
+        public void writeTo(StreamOutput out) throws IOException {
+            out.writeZLong(key);
+            out.writeVInt(run);
+        }
+    }
+}
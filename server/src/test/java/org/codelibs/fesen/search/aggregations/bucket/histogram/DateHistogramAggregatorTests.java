@@ -20,19 +20,27 @@
 package org.codelibs.fesen.search.aggregations.bucket.histogram;
 
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
 import org.apache.lucene.document.LongPoint;
 import org.apache.lucene.document.SortedNumericDocValuesField;
+import org.apache.lucene.document.StringField;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.MatchNoDocsQuery;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.store.Directory;
 import org.codelibs.fesen.common.time.DateFormatters;
 import org.codelibs.fesen.index.mapper.DateFieldMapper;
+import org.codelibs.fesen.index.mapper.MappedFieldType;
 import org.codelibs.fesen.search.aggregations.AggregationBuilder;
+import org.codelibs.fesen.search.aggregations.Aggregator;
 import org.codelibs.fesen.search.aggregations.BucketOrder;
 import org.codelibs.fesen.search.aggregations.bucket.histogram.DateHistogramAggregationBuilder;
 import org.codelibs.fesen.search.aggregations.bucket.histogram.DateHistogramInterval;
@@ -44,10 +52,15 @@ import org.codelibs.fesen.search.aggregations.bucket.terms.TermsAggregationBuild
 import org.codelibs.fesen.search.aggregations.support.AggregationInspectionHelper;
 
 import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Consumer;
 
 import static java.util.stream.Collectors.toList;
@@ -1159,6 +1172,76 @@ public class DateHistogramAggregatorTests extends DateHistogramAggregatorTestCas
         assertWarnings("[interval] on [date_histogram] is deprecated, use [fixed_interval] or [calendar_interval] in the future.");
     }
 
+    public void testFilterByFilter() throws IOException {
+        DateFieldMapper.DateFieldType fieldType = aggregableDateFieldType(false, true);
+        // a term query is cheap to run once per bucket, a disjunction only if it matches most documents
+        Query cheap = new TermQuery(new Term("tag", "rare"));
+        Query dense = new BooleanQuery.Builder()
+            .add(new TermQuery(new Term("tag", "common")), BooleanClause.Occur.SHOULD)
+            .add(new TermQuery(new Term("tag", "rare")), BooleanClause.Occur.SHOULD)
+            .build();
+        Query sparse = new BooleanQuery.Builder()
+            .add(new TermQuery(new Term("tag", "rare")), BooleanClause.Occur.SHOULD)
+            .add(new TermQuery(new Term("tag", "missing")), BooleanClause.Occur.SHOULD)
+            .build();
+        long start = asLong("2010-01-01T00:00:00");
+        long end = asLong("2018-01-01T00:00:00");
+
+        try (Directory directory = newDirectory()) {
+            Map<Long, Long> expectedAll = new HashMap<>();
+            Map<Long, Long> expectedRare = new HashMap<>();
+            try (RandomIndexWriter indexWriter = new RandomIndexWriter(random(), directory)) {
+                int numDocs = randomIntBetween(20, 200);
+                for (int i = 0; i < numDocs; i++) {
+                    long instant = randomLongBetween(start, end - 1);
+                    boolean rare = i % 10 == 0;
+                    Document document = new Document();
+                    document.add(new SortedNumericDocValuesField(AGGREGABLE_DATE, instant));
+                    document.add(new LongPoint(AGGREGABLE_DATE, instant));
+                    document.add(new StringField("tag", rare ? "rare" : "common", Field.Store.NO));
+                    indexWriter.addDocument(document);
+                    int yearOfInstant = Instant.ofEpochMilli(instant).atZone(ZoneOffset.UTC).getYear();
+                    long year = ZonedDateTime.of(yearOfInstant, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC).toInstant().toEpochMilli();
+                    expectedAll.merge(year, 1L, Long::sum);
+                    if (rare) {
+                        expectedRare.merge(year, 1L, Long::sum);
+                    }
+                }
+            }
+
+            try (IndexReader indexReader = DirectoryReader.open(directory)) {
+                IndexSearcher indexSearcher = newSearcher(indexReader, true, true);
+                DateHistogramAggregationBuilder aggregationBuilder = new DateHistogramAggregationBuilder("_name")
+                    .field(AGGREGABLE_DATE).calendarInterval(DateHistogramInterval.YEAR);
+
+                for (Query query : Arrays.asList(new MatchAllDocsQuery(), cheap, dense, sparse)) {
+                    InternalDateHistogram histogram = searchAndReduce(indexSearcher, query, aggregationBuilder, fieldType);
+                    Map<Long, Long> counts = new HashMap<>();
+                    for (Histogram.Bucket bucket : histogram.getBuckets()) {
+                        if (bucket.getDocCount() > 0) {
+                            counts.put(((ZonedDateTime) bucket.getKey()).toInstant().toEpochMilli(), bucket.getDocCount());
+                        }
+                    }
+                    boolean matchesAll = query instanceof MatchAllDocsQuery || query == dense;
+                    assertThat(counts, equalTo(matchesAll ? expectedAll : expectedRare));
+                    assertThat(debugInfo(query, aggregationBuilder, indexSearcher, fieldType).get("strategy"),
+                        equalTo(query == sparse ? "collect" : "filter_by_filter"));
+                }
+            }
+        }
+    }
+
+    private Map<String, Object> debugInfo(Query query, DateHistogramAggregationBuilder aggregationBuilder, IndexSearcher indexSearcher,
+                                          MappedFieldType fieldType) throws IOException {
+        Aggregator aggregator = createAggregator(query, aggregationBuilder, indexSearcher, createIndexSettings(), fieldType);
+        aggregator.preCollection();
+        indexSearcher.search(query, aggregator);
+        aggregator.postCollection();
+        Map<String, Object> debug = new HashMap<>();
+        aggregator.collectDebugInfo(debug::put);
+        return debug;
+    }
+
     private void testSearchCase(Query query, List<String> dataset,
                                 Consumer<DateHistogramAggregationBuilder> configure,
                                 Consumer<InternalDateHistogram> verify, boolean useNanosecondResolution) throws IOException {
@@ -19,6 +19,8 @@
 
 package org.codelibs.fesen.search.aggregations.bucket.range;
 
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.IntPoint;
 import org.apache.lucene.document.NumericDocValuesField;
 import org.apache.lucene.document.SortedNumericDocValuesField;
 import org.apache.lucene.document.SortedSetDocValuesField;
@@ -35,17 +37,21 @@ import org.codelibs.fesen.index.mapper.DateFieldMapper;
 import org.codelibs.fesen.index.mapper.KeywordFieldMapper;
 import org.codelibs.fesen.index.mapper.MappedFieldType;
 import org.codelibs.fesen.index.mapper.NumberFieldMapper;
+import org.codelibs.fesen.search.aggregations.Aggregator;
 import org.codelibs.fesen.search.aggregations.AggregatorTestCase;
 import org.codelibs.fesen.search.aggregations.CardinalityUpperBound;
 import org.codelibs.fesen.search.aggregations.bucket.range.InternalRange;
 import org.codelibs.fesen.search.aggregations.bucket.range.RangeAggregationBuilder;
+import org.codelibs.fesen.search.aggregations.metrics.MaxAggregationBuilder;
 import org.codelibs.fesen.search.aggregations.support.AggregationInspectionHelper;
 
 import java.io.IOException;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Consumer;
 
 import static java.util.Collections.singleton;
@@ -297,6 +303,70 @@ public class RangeAggregatorTests extends AggregatorTestCase {
         });
     }
 
+    public void testFilterByFilter() throws IOException {
+        MappedFieldType fieldType = new NumberFieldMapper.NumberFieldType(NUMBER_FIELD_NAME, NumberFieldMapper.NumberType.INTEGER);
+        RangeAggregationBuilder aggregationBuilder = new RangeAggregationBuilder("test")
+            .field(NUMBER_FIELD_NAME)
+            .addUnboundedTo(-3.5)
+            .addRange(0d, 10d)
+            .addRange(5d, 50.5d)
+            .addUnboundedFrom(50.5d);
+        double[][] ranges = new double[][] {
+            { Double.NEGATIVE_INFINITY, -3.5 }, { 0, 10 }, { 5, 50.5 }, { 50.5, Double.POSITIVE_INFINITY } };
+        Query query = randomBoolean() ? new MatchAllDocsQuery() : IntPoint.newExactQuery("even", 1);
+
+        try (Directory directory = newDirectory()) {
+            long[] expected = new long[ranges.length];
+            RandomIndexWriter indexWriter = new RandomIndexWriter(random(), directory);
+            int numDocs = randomIntBetween(1, 200);
+            for (int i = 0; i < numDocs; i++) {
+                int value = randomIntBetween(-10, 100);
+                boolean even = (i & 1) == 0;
+                Document document = new Document();
+                document.add(new IntPoint(NUMBER_FIELD_NAME, value));
+                document.add(new SortedNumericDocValuesField(NUMBER_FIELD_NAME, value));
+                document.add(new IntPoint("even", even ? 1 : 0));
+                indexWriter.addDocument(document);
+                if (query instanceof MatchAllDocsQuery || even) {
+                    for (int r = 0; r < ranges.length; r++) {
+                        if (value >= ranges[r][0] && value < ranges[r][1]) {
+                            expected[r]++;
+                        }
+                    }
+                }
+            }
+            indexWriter.close();
+
+            try (IndexReader indexReader = DirectoryReader.open(directory)) {
+                IndexSearcher indexSearcher = newSearcher(indexReader, true, true);
+
+                InternalRange<? extends InternalRange.Bucket, ? extends InternalRange> range = searchAndReduce(indexSearcher,
+                    query, aggregationBuilder, fieldType);
+                List<? extends InternalRange.Bucket> buckets = range.getBuckets();
+                assertEquals(ranges.length, buckets.size());
+                for (int r = 0; r < ranges.length; r++) {
+                    assertEquals(expected[r], buckets.get(r).getDocCount());
+                }
+
+                assertThat(debugInfo(query, aggregationBuilder, indexSearcher, fieldType).get("strategy"),
+                    equalTo("filter_by_filter"));
+                aggregationBuilder.subAggregation(new MaxAggregationBuilder("max").field(NUMBER_FIELD_NAME));
+                assertThat(debugInfo(query, aggregationBuilder, indexSearcher, fieldType).get("strategy"), equalTo("collect"));
+            }
+        }
+    }
+
+    private Map<String, Object> debugInfo(Query query, RangeAggregationBuilder aggregationBuilder, IndexSearcher indexSearcher,
+                                          MappedFieldType fieldType) throws IOException {
+        Aggregator aggregator = createAggregator(query, aggregationBuilder, indexSearcher, createIndexSettings(), fieldType);
+        aggregator.preCollection();
+        indexSearcher.search(query, aggregator);
+        aggregator.postCollection();
+        Map<String, Object> debug = new HashMap<>();
+        aggregator.collectDebugInfo(debug::put);
+        return debug;
+    }
+
     private void testCase(Query query,
                           CheckedConsumer<RandomIndexWriter, IOException> buildIndex,
                           Consumer<InternalRange<? extends InternalRange.Bucket, ? extends InternalRange>> verify) throws IOException {
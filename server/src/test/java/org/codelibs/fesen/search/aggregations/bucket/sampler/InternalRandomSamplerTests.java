@@ -0,0 +1,120 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.codelibs.fesen.search.aggregations.bucket.sampler;
+
+import org.codelibs.fesen.search.DocValueFormat;
+import org.codelibs.fesen.search.aggregations.InternalAggregation;
+import org.codelibs.fesen.search.aggregations.InternalAggregations;
+import org.codelibs.fesen.search.aggregations.ParsedAggregation;
+import org.codelibs.fesen.search.aggregations.metrics.InternalMax;
+import org.codelibs.fesen.search.aggregations.metrics.InternalSum;
+import org.codelibs.fesen.test.InternalAggregationTestCase;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.util.Collections.emptyMap;
+
+public class InternalRandomSamplerTests extends InternalAggregationTestCase<InternalRandomSampler> {
+
+    private int seed;
+    private double probability;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        // all the shard results of a request are sampled with the same seed and probability
+        seed = randomInt();
+        probability = randomDoubleBetween(0.01, 1, true);
+    }
+
+    @Override
+    protected InternalRandomSampler createTestInstance(String name, Map<String, Object> metadata) {
+        // we shouldn't use the full long range here since we sum doc count on reduce, and don't want to overflow the long range there
+        long docCount = between(0, Integer.MAX_VALUE);
+        InternalAggregations aggregations = InternalAggregations.from(Arrays.asList(
+            new InternalSum("sum", randomDoubleBetween(0, 1000, true), DocValueFormat.RAW, emptyMap()),
+            new InternalMax("max", randomDouble(), DocValueFormat.RAW, emptyMap())));
+        return new InternalRandomSampler(name, docCount, seed, probability, aggregations, metadata);
+    }
+
+    @Override
+    protected void assertReduced(InternalRandomSampler reduced, List<InternalRandomSampler> inputs) {
+        assertEquals(seed, reduced.getSeed());
+        assertEquals(probability, reduced.getProbability(), 0);
+        // the doc count and the sum are scaled up by the final reduction, the max isn't
+        long docCount = inputs.stream().mapToLong(InternalRandomSampler::getDocCount).sum();
+        assertEquals(Math.round(docCount / probability), reduced.getDocCount());
+        double sum = inputs.stream().mapToDouble(i -> ((InternalSum) i.getAggregations().get("sum")).getValue()).sum();
+        InternalSum reducedSum = reduced.getAggregations().get("sum");
+        assertEquals(sum / probability, reducedSum.getValue(), 1e-6 * sum / probability);
+        double max = inputs.stream().mapToDouble(i -> ((InternalMax) i.getAggregations().get("max")).getValue()).max().getAsDouble();
+        InternalMax reducedMax = reduced.getAggregations().get("max");
+        assertEquals(max, reducedMax.getValue(), 0);
+    }
+
+    @Override
+    protected void assertFromXContent(InternalRandomSampler aggregation, ParsedAggregation parsedAggregation) throws IOException {
+        assertTrue(parsedAggregation instanceof ParsedRandomSampler);
+        ParsedRandomSampler parsed = (ParsedRandomSampler) parsedAggregation;
+        assertEquals(aggregation.getDocCount(), parsed.getDocCount());
+        assertEquals(aggregation.getProbability(), parsed.getProbability(), 0);
+        assertEquals(aggregation.getSeed(), parsed.getSeed());
+        assertEquals(aggregation.getDocCountStandardError(), parsed.getDocCountStandardError(), 0);
+        for (InternalAggregation expected : aggregation.getAggregations().copyResults()) {
+            assertNotNull(parsed.getAggregations().get(expected.getName()));
+        }
+    }
+
+    @Override
+    protected InternalRandomSampler mutateInstance(InternalRandomSampler instance) {
+        String name = instance.getName();
+        long docCount = instance.getDocCount();
+        int seed = instance.getSeed();
+        double probability = instance.getProbability();
+        Map<String, Object> metadata = instance.getMetadata();
+        switch (between(0, 4)) {
+        case 0:
+            name += randomAlphaOfLength(5);
+            break;
+        case 1:
+            docCount += between(1, 2000);
+            break;
+        case 2:
+            seed = randomValueOtherThan(seed, () -> randomInt());
+            break;
+        case 3:
+            probability = randomValueOtherThan(probability, () -> randomDoubleBetween(0.01, 1, true));
+            break;
+        case 4:
+        default:
+            if (metadata == null) {
+                metadata = new HashMap<>(1);
+            } else {
+                metadata = new HashMap<>(instance.getMetadata());
+            }
+            metadata.put(randomAlphaOfLength(15), randomInt());
+            break;
+        }
+        return new InternalRandomSampler(name, docCount, seed, probability, instance.getAggregations(), metadata);
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.codelibs.fesen.search.aggregations.bucket.sampler;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.SortedNumericDocValuesField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.RandomIndexWriter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.store.Directory;
+import org.codelibs.fesen.common.CheckedBiConsumer;
+import org.codelibs.fesen.index.mapper.MappedFieldType;
+import org.codelibs.fesen.index.mapper.NumberFieldMapper;
+import org.codelibs.fesen.search.aggregations.AggregatorTestCase;
+import org.codelibs.fesen.search.aggregations.bucket.histogram.HistogramAggregationBuilder;
+import org.codelibs.fesen.search.aggregations.bucket.histogram.InternalHistogram;
+import org.codelibs.fesen.search.aggregations.metrics.Max;
+import org.codelibs.fesen.search.aggregations.metrics.MaxAggregationBuilder;
+import org.codelibs.fesen.search.aggregations.metrics.Sum;
+import org.codelibs.fesen.search.aggregations.metrics.SumAggregationBuilder;
+import org.codelibs.fesen.search.aggregations.metrics.ValueCount;
+import org.codelibs.fesen.search.aggregations.metrics.ValueCountAggregationBuilder;
+import org.codelibs.fesen.tasks.TaskCancelledException;
+
+import java.io.IOException;
+
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class RandomSamplerAggregatorTests extends AggregatorTestCase {
+
+    private final MappedFieldType fieldType = new NumberFieldMapper.NumberFieldType("number", NumberFieldMapper.NumberType.LONG);
+
+    public void testProbabilityOne() throws IOException {
+        testCase(randomIntBetween(1, 200), (reader, numDocs) -> {
+            RandomSamplerAggregationBuilder builder = new RandomSamplerAggregationBuilder("sampler", 1.0)
+                .subAggregation(new SumAggregationBuilder("sum").field("number"));
+            InternalRandomSampler sampler = searchAndReduce(newSearcher(reader, true, true), new MatchAllDocsQuery(), builder, fieldType);
+            assertEquals(numDocs, sampler.getDocCount());
+            assertEquals(0, sampler.getDocCountStandardError(), 0);
+            Sum sum = sampler.getAggregations().get("sum");
+            assertEquals((long) numDocs * (numDocs + 1) / 2, sum.getValue(), 0);
+        });
+    }
+
+    public void testScaledCounts() throws IOException {
+        testCase(randomIntBetween(2000, 4000), (reader, numDocs) -> {
+            RandomSamplerAggregationBuilder builder = new RandomSamplerAggregationBuilder("sampler", 0.25)
+                .subAggregation(new ValueCountAggregationBuilder("count").field("number"))
+                .subAggregation(new MaxAggregationBuilder("max").field("number"));
+            InternalRandomSampler sampler = searchAndReduce(newSearcher(reader, true, true), new MatchAllDocsQuery(), builder, fieldType);
+            assertThat((double) Math.abs(sampler.getDocCount() - numDocs), lessThanOrEqualTo(6 * sampler.getDocCountStandardError()));
+            ValueCount count = sampler.getAggregations().get("count");
+            assertEquals(sampler.getDocCount(), count.getValue());
+            // max doesn't depend on the number of documents so it isn't scaled
+            Max max = sampler.getAggregations().get("max");
+            assertThat(max.getValue(), lessThanOrEqualTo((double) numDocs));
+        });
+    }
+
+    public void testSameSeedSamplesSameDocuments() throws IOException {
+        testCase(randomIntBetween(100, 1000), (reader, numDocs) -> {
+            int seed = randomInt();
+            double probability = randomDoubleBetween(0.01, 0.5, true);
+            InternalRandomSampler first = searchAndReduce(newSearcher(reader, false, true), new MatchAllDocsQuery(),
+                new RandomSamplerAggregationBuilder("sampler", probability).seed(seed), fieldType);
+            InternalRandomSampler second = searchAndReduce(newSearcher(reader, false, true), new MatchAllDocsQuery(),
+                new RandomSamplerAggregationBuilder("sampler", probability).seed(seed), fieldType);
+            assertEquals(first.getDocCount(), second.getDocCount());
+        });
+    }
+
+    public void testSampleWithinQuery() throws IOException {
+        testCase(randomIntBetween(100, 1000), (reader, numDocs) -> {
+            Query query = SortedNumericDocValuesField.newSlowRangeQuery("number", 1, numDocs / 2);
+            InternalRandomSampler all = searchAndReduce(newSearcher(reader, true, true), query,
+                new RandomSamplerAggregationBuilder("sampler", 1.0), fieldType);
+            assertEquals(numDocs / 2, all.getDocCount());
+
+            RandomSamplerAggregationBuilder builder = new RandomSamplerAggregationBuilder("sampler", 0.25)
+                .subAggregation(new MaxAggregationBuilder("max").field("number"));
+            InternalRandomSampler sampler = searchAndReduce(newSearcher(reader, true, true), query, builder, fieldType);
+            Max max = sampler.getAggregations().get("max");
+            assertThat(max.getValue(), lessThanOrEqualTo((double) numDocs / 2));
+        });
+    }
+
+    public void testNotTopLevel() throws IOException {
+        testCase(randomIntBetween(1, 200), (reader, numDocs) -> {
+            HistogramAggregationBuilder builder = new HistogramAggregationBuilder("histo").field("number").interval(Integer.MAX_VALUE)
+                .subAggregation(new RandomSamplerAggregationBuilder("sampler", 1.0));
+            InternalHistogram histogram = searchAndReduce(newSearcher(reader, true, true), new MatchAllDocsQuery(), builder, fieldType);
+            assertEquals(1, histogram.getBuckets().size());
+            InternalRandomSampler sampler = histogram.getBuckets().get(0).getAggregations().get("sampler");
+            assertEquals(numDocs, sampler.getDocCount());
+        });
+    }
+
+    public void testCancellation() throws IOException {
+        testCase(randomIntBetween(1, 200), (reader, numDocs) -> {
+            Query query = new MatchAllDocsQuery();
+            RandomSamplerAggregator aggregator = createAggregator(query, new RandomSamplerAggregationBuilder("sampler", 1.0),
+                newSearcher(reader, true, true), createIndexSettings(), fieldType);
+            aggregator.context().searcher().addQueryCancellation(() -> {
+                throw new TaskCancelledException("cancelled");
+            });
+            aggregator.preCollection();
+            // the sample of each segment is collected when its leaf collector is created
+            for (LeafReaderContext ctx : aggregator.context().searcher().getIndexReader().leaves()) {
+                expectThrows(TaskCancelledException.class, () -> aggregator.getLeafCollector(ctx));
+            }
+        });
+    }
+
+    public void testSamplingIterator() throws IOException {
+        int maxDoc = randomIntBetween(1, 10000);
+        RandomSamplingIterator all = new RandomSamplingIterator(maxDoc, 1.0, randomLong());
+        for (int doc = 0; doc < maxDoc; doc++) {
+            assertEquals(doc, all.nextDoc());
+        }
+        assertEquals(RandomSamplingIterator.NO_MORE_DOCS, all.nextDoc());
+
+        RandomSamplingIterator sample = new RandomSamplingIterator(maxDoc, randomDoubleBetween(0.001, 1, false), randomLong());
+        int previous = -1;
+        for (int doc = sample.nextDoc(); doc != RandomSamplingIterator.NO_MORE_DOCS; doc = sample.nextDoc()) {
+            assertTrue(doc > previous);
+            assertTrue(doc < maxDoc);
+            previous = doc;
+        }
+    }
+
+    private void testCase(int numDocs, CheckedBiConsumer<IndexReader, Integer, IOException> verify) throws IOException {
+        try (Directory directory = newDirectory()) {
+            try (RandomIndexWriter indexWriter = new RandomIndexWriter(random(), directory)) {
+                for (int i = 1; i <= numDocs; i++) {
+                    Document document = new Document();
+                    document.add(new SortedNumericDocValuesField("number", i));
+                    indexWriter.addDocument(document);
+                    if (rarely()) {
+                        indexWriter.commit();
+                    }
+                }
+            }
+            try (IndexReader reader = DirectoryReader.open(directory)) {
+                verify.accept(reader, numDocs);
+            }
+        }
+    }
+}
@@ -19,13 +19,19 @@
 
 package org.codelibs.fesen.search.aggregations.bucket.terms;
 
+import org.codelibs.fesen.common.util.BigArrays;
+import org.codelibs.fesen.search.aggregations.InternalAggregation;
 import org.codelibs.fesen.search.aggregations.InternalAggregations;
+import org.codelibs.fesen.search.aggregations.bucket.SpilledBucketRuns;
 import org.codelibs.fesen.search.aggregations.bucket.terms.InternalTerms;
 import org.codelibs.fesen.search.aggregations.bucket.terms.Terms;
 import org.codelibs.fesen.search.aggregations.bucket.terms.UnmappedTerms;
+import org.codelibs.fesen.search.aggregations.pipeline.PipelineAggregator.PipelineTree;
 import org.codelibs.fesen.test.InternalMultiBucketAggregationTestCase;
 import org.junit.Before;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -99,6 +105,22 @@ public abstract class InternalTermsTestCase extends InternalMultiBucketAggregati
         }
     }
 
+    public void testReduceSpilled() throws IOException {
+        String name = randomAlphaOfLength(5);
+        List<InternalTerms<?, ?>> inputs = randomResultsToReduce(name, between(1, 20));
+        List<InternalAggregation> toReduce = new ArrayList<>(inputs);
+        // Sort aggs so that unmapped come last.  This mimicks the behavior of InternalAggregations.reduce()
+        inputs.sort(INTERNAL_AGG_COMPARATOR);
+        // a small budget makes the reduce fall back to merging the buckets on heap
+        SpilledBucketRuns.DiskBudget diskBudget = new SpilledBucketRuns.DiskBudget(randomBoolean() ? Long.MAX_VALUE : randomInt(100));
+        InternalAggregation.ReduceContext context = InternalAggregation.ReduceContext.forFinalReduction(
+            BigArrays.NON_RECYCLING_INSTANCE, null, b -> {}, PipelineTree.EMPTY,
+            new SpilledBucketRuns.Config(createTempDir(), 0, diskBudget, getNamedWriteableRegistry()));
+        InternalTerms<?, ?> reduced = (InternalTerms<?, ?>) inputs.get(0).reduce(toReduce, context);
+        assertReduced(reduced, inputs);
+        assertThat(diskBudget.used(), equalTo(0L));
+    }
+
     private static Map<Object, Long> toCounts(Stream<? extends Terms.Bucket> buckets) {
         return buckets.collect(Collectors.toMap(
                 Terms.Bucket::getKey,
@@ -31,6 +31,8 @@ import org.apache.lucene.document.StringField;
 import org.apache.lucene.index.DirectoryReader;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexableField;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NoMergePolicy;
 import org.apache.lucene.index.RandomIndexWriter;
 import org.apache.lucene.search.DocValuesFieldExistsQuery;
 import org.apache.lucene.search.IndexSearcher;
@@ -77,6 +79,7 @@ import org.codelibs.fesen.search.aggregations.AggregatorTestCase;
 import org.codelibs.fesen.search.aggregations.BucketOrder;
 import org.codelibs.fesen.search.aggregations.InternalAggregation;
 import org.codelibs.fesen.search.aggregations.InternalMultiBucketAggregation;
+import org.codelibs.fesen.search.aggregations.LeafBucketCollector;
 import org.codelibs.fesen.search.aggregations.MultiBucketConsumerService;
 import org.codelibs.fesen.search.aggregations.bucket.MultiBucketsAggregation;
 import org.codelibs.fesen.search.aggregations.bucket.filter.Filter;
@@ -104,6 +107,7 @@ import org.codelibs.fesen.search.aggregations.support.AggregationInspectionHelpe
 import org.codelibs.fesen.search.aggregations.support.CoreValuesSourceType;
 import org.codelibs.fesen.search.aggregations.support.ValueType;
 import org.codelibs.fesen.search.aggregations.support.ValuesSourceType;
+import org.codelibs.fesen.search.internal.SearchContext;
 import org.codelibs.fesen.search.sort.FieldSortBuilder;
 import org.codelibs.fesen.search.sort.ScoreSortBuilder;
 import org.codelibs.fesen.test.geo.RandomGeoGenerator;
@@ -1407,6 +1411,76 @@ public class TermsAggregatorTests extends AggregatorTestCase {
         }
     }
 
+    public void testMergeSlices() throws IOException {
+        try (Directory directory = newDirectory()) {
+            try (RandomIndexWriter indexWriter = new RandomIndexWriter(random(), directory,
+                    newIndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE))) {
+                int numSegments = randomIntBetween(2, 10);
+                for (int i = 0; i < numSegments; i++) {
+                    int numDocs = randomIntBetween(1, 50);
+                    for (int j = 0; j < numDocs; j++) {
+                        Document document = new Document();
+                        long value = randomIntBetween(0, 20) * randomIntBetween(0, 20) / 20;
+                        document.add(new SortedSetDocValuesField("string", new BytesRef(Long.toString(value))));
+                        document.add(new SortedNumericDocValuesField("long", value));
+                        indexWriter.addDocument(document);
+                    }
+                    indexWriter.commit();
+                }
+                try (IndexReader indexReader = maybeWrapReaderEs(indexWriter.getReader())) {
+                    IndexSearcher indexSearcher = newIndexSearcher(indexReader);
+                    List<LeafReaderContext> leaves = indexReader.leaves();
+                    int split = randomIntBetween(0, leaves.size());
+                    MappedFieldType stringFieldType = new KeywordFieldMapper.KeywordFieldType("string");
+                    MappedFieldType longFieldType = new NumberFieldMapper.NumberFieldType("long", NumberFieldMapper.NumberType.LONG);
+                    List<TermsAggregationBuilder> builders = asList(
+                        new TermsAggregationBuilder("_name").field("string").executionHint("global_ordinals"),
+                        new TermsAggregationBuilder("_name").field("long")
+                    );
+                    for (TermsAggregationBuilder builder : builders) {
+                        builder.size(3).shardSize(3);
+                        SearchContext context = createSearchContext(indexSearcher, createIndexSettings(), null,
+                            new MultiBucketConsumerService.MultiBucketConsumer(Integer.MAX_VALUE,
+                                new NoneCircuitBreakerService().getBreaker(CircuitBreaker.REQUEST)),
+                            stringFieldType, longFieldType);
+                        TermsAggregator sequential = createAggregator(builder, context);
+                        collectLeaves(sequential, leaves);
+                        TermsAggregator aggregator = createAggregator(builder, context);
+                        collectLeaves(aggregator, leaves.subList(0, split));
+                        TermsAggregator slice = createAggregator(builder, context);
+                        collectLeaves(slice, leaves.subList(split, leaves.size()));
+                        assertTrue(aggregator.canMergeSlice(slice));
+                        aggregator.mergeSlice(slice);
+
+                        Terms expected = reduce(sequential);
+                        Terms result = reduce(aggregator);
+                        assertEquals(expected.getBuckets().size(), result.getBuckets().size());
+                        for (int i = 0; i < expected.getBuckets().size(); i++) {
+                            assertEquals(expected.getBuckets().get(i).getKeyAsString(), result.getBuckets().get(i).getKeyAsString());
+                            assertEquals(expected.getBuckets().get(i).getDocCount(), result.getBuckets().get(i).getDocCount());
+                        }
+                        assertEquals(expected.getSumOfOtherDocCounts(), result.getSumOfOtherDocCounts());
+
+                        builder.subAggregation(new TermsAggregationBuilder("_sub").field("long"));
+                        TermsAggregator withSubAggs = createAggregator(builder, context);
+                        assertFalse(withSubAggs.canMergeSlice(createAggregator(builder, context)));
+                    }
+                }
+            }
+        }
+    }
+
+    private static void collectLeaves(Aggregator aggregator, List<LeafReaderContext> leaves) throws IOException {
+        aggregator.preCollection();
+        for (LeafReaderContext ctx : leaves) {
+            LeafBucketCollector collector = aggregator.getLeafCollector(ctx);
+            for (int doc = 0; doc < ctx.reader().maxDoc(); doc++) {
+                collector.collect(doc);
+            }
+        }
+        aggregator.postCollection();
+    }
+
     private final SeqNoFieldMapper.SequenceIDFields sequenceIDFields = SeqNoFieldMapper.SequenceIDFields.emptySeqID();
     private List<Document> generateDocsWithNested(String id, int value, int[] nestedValues) {
         List<Document> documents = new ArrayList<>();
@@ -20,17 +20,23 @@
 package org.codelibs.fesen.search.aggregations.metrics;
 
 import org.apache.lucene.document.BinaryDocValuesField;
+import org.apache.lucene.document.Document;
 import org.apache.lucene.document.IntPoint;
 import org.apache.lucene.document.NumericDocValuesField;
 import org.apache.lucene.document.SortedNumericDocValuesField;
+import org.apache.lucene.document.SortedSetDocValuesField;
 import org.apache.lucene.index.RandomIndexWriter;
 import org.apache.lucene.search.DocValuesFieldExistsQuery;
 import org.apache.lucene.search.MatchAllDocsQuery;
 import org.apache.lucene.search.Query;
+import org.apache.lucene.util.BytesRef;
 import org.codelibs.fesen.common.geo.GeoPoint;
+import org.codelibs.fesen.common.hash.MurmurHash3;
 import org.codelibs.fesen.core.CheckedConsumer;
+import org.codelibs.fesen.index.mapper.KeywordFieldMapper;
 import org.codelibs.fesen.index.mapper.MappedFieldType;
 import org.codelibs.fesen.index.mapper.NumberFieldMapper;
+import org.codelibs.fesen.index.mapper.PrecomputedHashFieldType;
 import org.codelibs.fesen.index.mapper.RangeFieldMapper;
 import org.codelibs.fesen.index.mapper.RangeType;
 import org.codelibs.fesen.search.aggregations.AggregationBuilder;
@@ -175,6 +181,34 @@ public class CardinalityAggregatorTests extends AggregatorTestCase {
         }, null);
     }
 
+    public void testPrecomputedHashes() throws IOException {
+        MappedFieldType keywordFieldType = new KeywordFieldMapper.KeywordFieldType("keyword");
+        MappedFieldType hashFieldType = new HashFieldType("hash");
+        CheckedConsumer<RandomIndexWriter, IOException> buildIndex = iw -> {
+            MurmurHash3.Hash128 hash = new MurmurHash3.Hash128();
+            for (int i = 0; i < 1000; i++) {
+                BytesRef value = new BytesRef(Integer.toString(i % 700));
+                Document document = new Document();
+                document.add(new SortedSetDocValuesField("keyword", value));
+                document.add(new SortedNumericDocValuesField("hash",
+                    MurmurHash3.hash128(value.bytes, value.offset, value.length, 0, hash).h1));
+                iw.addDocument(document);
+            }
+        };
+        // a low threshold switches to HyperLogLog, whose estimate only matches if the hashes are the same
+        double[] keywordCardinality = new double[1];
+        testAggregation(new CardinalityAggregationBuilder("_name").field("keyword").precisionThreshold(10), new MatchAllDocsQuery(),
+            buildIndex, card -> keywordCardinality[0] = card.getValue(), keywordFieldType);
+        testAggregation(new CardinalityAggregationBuilder("_name").field("hash").precisionThreshold(10), new MatchAllDocsQuery(),
+            buildIndex, card -> assertEquals(keywordCardinality[0], card.getValue(), 0), hashFieldType);
+    }
+
+    private static class HashFieldType extends NumberFieldMapper.NumberFieldType implements PrecomputedHashFieldType {
+        HashFieldType(String name) {
+            super(name, NumberFieldMapper.NumberType.LONG);
+        }
+    }
+
     private void testAggregation(Query query, CheckedConsumer<RandomIndexWriter, IOException> buildIndex,
                           Consumer<InternalCardinality> verify) throws IOException {
         MappedFieldType fieldType = new NumberFieldMapper.NumberFieldType("number", NumberFieldMapper.NumberType.LONG);
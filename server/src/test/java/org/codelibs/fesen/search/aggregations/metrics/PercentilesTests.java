@@ -49,6 +49,10 @@ public class PercentilesTests extends BaseAggregationTestCase<PercentilesAggrega
             factory.numberOfSignificantValueDigits(randomIntBetween(0, 5));
         } else if (randomBoolean()) {
             factory.compression(randomIntBetween(1, 50000));
+        } else if (randomBoolean()) {
+            PercentilesConfig.TDigest tdigest = new PercentilesConfig.TDigest(randomIntBetween(1, 50000));
+            tdigest.setExecutionHint(randomFrom(TDigestExecutionHint.values()));
+            factory.percentilesConfig(tdigest);
         }
         String field = randomNumericField();
         randomFieldOrScript(factory, field);
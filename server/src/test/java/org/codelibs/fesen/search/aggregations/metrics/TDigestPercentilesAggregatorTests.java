@@ -177,6 +177,31 @@ public class TDigestPercentilesAggregatorTests extends AggregatorTestCase {
             "method has already been configured for TDigest"));
     }
 
+    public void testMergingExecutionHint() throws IOException {
+        try (Directory directory = newDirectory()) {
+            try (RandomIndexWriter indexWriter = new RandomIndexWriter(random(), directory)) {
+                for (int i = 1; i <= 1000; i++) {
+                    indexWriter.addDocument(singleton(new SortedNumericDocValuesField("number", i)));
+                }
+            }
+            try (IndexReader indexReader = DirectoryReader.open(directory)) {
+                IndexSearcher indexSearcher = newSearcher(indexReader, true, true);
+                PercentilesConfig.TDigest tdigest = new PercentilesConfig.TDigest();
+                tdigest.setExecutionHint(TDigestExecutionHint.MERGING);
+                PercentilesAggregationBuilder builder = new PercentilesAggregationBuilder("test").field("number")
+                    .percentilesConfig(tdigest)
+                    .percentiles(1, 50, 99);
+                MappedFieldType fieldType = new NumberFieldMapper.NumberFieldType("number", NumberFieldMapper.NumberType.LONG);
+                InternalTDigestPercentiles percentiles = searchAndReduce(indexSearcher, new MatchAllDocsQuery(), builder, fieldType);
+                assertEquals(TDigestExecutionHint.MERGING, percentiles.state.executionHint());
+                assertEquals(1000L, percentiles.state.size());
+                assertEquals(10, percentiles.percentile(1), 2);
+                assertEquals(500, percentiles.percentile(50), 5);
+                assertEquals(990, percentiles.percentile(99), 2);
+            }
+        }
+    }
+
     private void testCase(Query query, CheckedConsumer<RandomIndexWriter, IOException> buildIndex,
                           Consumer<InternalTDigestPercentiles> verify) throws IOException {
         try (Directory directory = newDirectory()) {
@@ -19,8 +19,14 @@
 
 package org.codelibs.fesen.search.aggregations.metrics;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
+import org.codelibs.fesen.Version;
+import org.codelibs.fesen.common.io.stream.BytesStreamOutput;
+import org.codelibs.fesen.common.io.stream.StreamInput;
 import org.codelibs.fesen.search.aggregations.metrics.TDigestState;
 import org.codelibs.fesen.test.ESTestCase;
 
@@ -51,4 +57,67 @@ public class TDigestStateTests extends ESTestCase {
             prev = v;
         }
     }
+
+    public void testMergingDigestMatchesAvlTree() {
+        TDigestState avlTree = new TDigestState(100, TDigestExecutionHint.AVL_TREE);
+        TDigestState merging = new TDigestState(100, TDigestExecutionHint.MERGING);
+        for (int i = 0; i < 10000; i++) {
+            double value = randomDouble();
+            avlTree.add(value);
+            merging.add(value);
+        }
+        assertEquals(avlTree.size(), merging.size());
+        for (double q : new double[] { 0, 0.01, 0.25, 0.5, 0.75, 0.99, 1 }) {
+            assertEquals(avlTree.quantile(q), merging.quantile(q), 0.01);
+        }
+    }
+
+    public void testMergeAll() {
+        TDigestExecutionHint executionHint = randomFrom(TDigestExecutionHint.values());
+        List<TDigestState> states = new ArrayList<>();
+        long size = 0;
+        for (int i = 0; i < randomIntBetween(1, 20); i++) {
+            TDigestState state = new TDigestState(100, executionHint);
+            for (int j = 0; j < randomIntBetween(0, 1000); j++) {
+                state.add(randomDouble());
+            }
+            size += state.size();
+            states.add(state);
+        }
+        TDigestState merged = new TDigestState(100, executionHint);
+        merged.add(states);
+        assertEquals(size, merged.size());
+    }
+
+    public void testSerialization() throws IOException {
+        TDigestState state = new TDigestState(randomDoubleBetween(20, 1000, true), randomFrom(TDigestExecutionHint.values()));
+        for (int i = 0; i < randomIntBetween(0, 1000); i++) {
+            state.add(randomDouble());
+        }
+        TDigestState read = copy(state, Version.CURRENT);
+        assertEquals(state.compression(), read.compression(), 0d);
+        assertEquals(state.executionHint(), read.executionHint());
+        assertEquals(state.size(), read.size());
+        if (state.executionHint() == TDigestExecutionHint.AVL_TREE) {
+            assertEquals(state, read);
+        } else if (state.size() > 0) {
+            // the merging digest merges the centroids it reads again, which may combine some of them
+            assertEquals(state.quantile(0.5), read.quantile(0.5), 0.05);
+        }
+
+        TDigestState legacy = copy(state, Version.V_0_16_0);
+        assertEquals(TDigestExecutionHint.AVL_TREE, legacy.executionHint());
+        assertEquals(state.size(), legacy.size());
+    }
+
+    private static TDigestState copy(TDigestState state, Version version) throws IOException {
+        try (BytesStreamOutput out = new BytesStreamOutput()) {
+            out.setVersion(version);
+            TDigestState.write(state, out);
+            try (StreamInput in = out.bytes().streamInput()) {
+                in.setVersion(version);
+                return TDigestState.read(in);
+            }
+        }
+    }
 }
@@ -38,6 +38,8 @@ import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermsEnum;
 import org.apache.lucene.search.BoostQuery;
 import org.apache.lucene.search.BulkScorer;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.CollectorManager;
 import org.apache.lucene.search.ConstantScoreQuery;
 import org.apache.lucene.search.DocIdSetIterator;
 import org.apache.lucene.search.Explanation;
@@ -48,8 +50,10 @@ import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Scorable;
 import org.apache.lucene.search.ScoreMode;
 import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.SimpleCollector;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopScoreDocCollector;
 import org.apache.lucene.search.Weight;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.util.Accountable;
@@ -75,9 +79,12 @@ import org.codelibs.fesen.test.IndexSettingsModule;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.IdentityHashMap;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.codelibs.fesen.search.internal.ContextIndexSearcher.intersectScorerAndBitSet;
 import static org.codelibs.fesen.search.internal.ExitableDirectoryReader.ExitableLeafReader;
@@ -279,6 +286,77 @@ public class ContextIndexSearcherTests extends ESTestCase {
         IOUtils.close(reader, w, dir);
     }
 
+    public void testConcurrentSearchWithCollectorManager() throws Exception {
+        try (Directory directory = newDirectory()) {
+            IndexWriter iw = new IndexWriter(
+                directory,
+                new IndexWriterConfig(new StandardAnalyzer()).setMergePolicy(NoMergePolicy.INSTANCE)
+            );
+            // more than IndexSearcher#MAX_SEGMENTS_PER_SLICE segments to get several slices
+            final int numSegments = randomIntBetween(6, 20);
+            int numDocs = 0;
+            for (int i = 0; i < numSegments; i++) {
+                final int numSegmentDocs = randomIntBetween(1, 20);
+                for (int j = 0; j < numSegmentDocs; j++) {
+                    Document document = new Document();
+                    document.add(new StringField("field", randomBoolean() ? "value1" : "value2", Field.Store.NO));
+                    iw.addDocument(document);
+                    numDocs++;
+                }
+                iw.commit();
+            }
+            iw.close();
+
+            final ExecutorService executor = Executors.newFixedThreadPool(randomIntBetween(1, 4));
+            try (DirectoryReader directoryReader = DirectoryReader.open(directory)) {
+                ContextIndexSearcher sequential = new ContextIndexSearcher(directoryReader, IndexSearcher.getDefaultSimilarity(),
+                    IndexSearcher.getDefaultQueryCache(), IndexSearcher.getDefaultQueryCachingPolicy(), true);
+                ContextIndexSearcher concurrent = new ContextIndexSearcher(directoryReader, IndexSearcher.getDefaultSimilarity(),
+                    IndexSearcher.getDefaultQueryCache(), IndexSearcher.getDefaultQueryCachingPolicy(), true, executor);
+                assertFalse(sequential.isConcurrent());
+                assertTrue(concurrent.isConcurrent());
+
+                Query query = new TermQuery(new Term("field", "value1"));
+                TopDocs expected = sequential.search(query, TopScoreDocCollector.createSharedManager(numDocs, null, Integer.MAX_VALUE));
+                TopDocs actual = concurrent.search(query, TopScoreDocCollector.createSharedManager(numDocs, null, Integer.MAX_VALUE));
+                assertEquals(expected.totalHits, actual.totalHits);
+                assertEquals(expected.scoreDocs.length, actual.scoreDocs.length);
+                for (int i = 0; i < expected.scoreDocs.length; i++) {
+                    assertEquals(expected.scoreDocs[i].doc, actual.scoreDocs[i].doc);
+                }
+                assertEquals(sequential.count(new MatchAllDocsQuery()), concurrent.count(new MatchAllDocsQuery()));
+                assertEquals(numDocs, concurrent.count(new MatchAllDocsQuery()));
+
+                // the failure of a slice is rethrown once all slices are done
+                IllegalStateException e = expectThrows(IllegalStateException.class,
+                    () -> concurrent.search(new MatchAllDocsQuery(), new CollectorManager<Collector, Void>() {
+                        @Override
+                        public Collector newCollector() {
+                            return new SimpleCollector() {
+                                @Override
+                                public void collect(int doc) {
+                                    throw new IllegalStateException("boom");
+                                }
+
+                                @Override
+                                public ScoreMode scoreMode() {
+                                    return ScoreMode.COMPLETE_NO_SCORES;
+                                }
+                            };
+                        }
+
+                        @Override
+                        public Void reduce(Collection<Collector> collectors) {
+                            throw new AssertionError("reduce should not be called on failures");
+                        }
+                    }));
+                assertEquals("boom", e.getMessage());
+            } finally {
+                terminate(executor);
+            }
+        }
+    }
+
     private SparseFixedBitSet query(LeafReaderContext leaf, String field, String value) throws IOException {
         SparseFixedBitSet sparseFixedBitSet = new SparseFixedBitSet(leaf.reader().maxDoc());
         TermsEnum tenum = leaf.reader().terms(field).iterator();
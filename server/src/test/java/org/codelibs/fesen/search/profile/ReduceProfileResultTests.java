@@ -0,0 +1,73 @@
+/*
+ * Licensed to Elasticsearch under one or more contributor
+ * license agreements. See the NOTICE file distributed with
+ * this work for additional information regarding copyright
+ * ownership. Elasticsearch licenses this file to you under
+ * the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.codelibs.fesen.search.profile;
+
+import org.codelibs.fesen.common.io.stream.Writeable;
+import org.codelibs.fesen.common.xcontent.XContentParser;
+import org.codelibs.fesen.test.AbstractSerializingTestCase;
+
+import java.io.IOException;
+
+public class ReduceProfileResultTests extends AbstractSerializingTestCase<ReduceProfileResult> {
+
+    public static ReduceProfileResult createTestItem() {
+        return new ReduceProfileResult(randomIntBetween(0, 1000), randomNonNegativeLong(), randomIntBetween(0, 16),
+            randomNonNegativeLong());
+    }
+
+    @Override
+    protected ReduceProfileResult createTestInstance() {
+        return createTestItem();
+    }
+
+    @Override
+    protected Writeable.Reader<ReduceProfileResult> instanceReader() {
+        return ReduceProfileResult::new;
+    }
+
+    @Override
+    protected ReduceProfileResult doParseInstance(XContentParser parser) throws IOException {
+        return ReduceProfileResult.fromXContent(parser);
+    }
+
+    @Override
+    protected ReduceProfileResult mutateInstance(ReduceProfileResult instance) {
+        int partialReduces = instance.getPartialReduces();
+        long partialReduceTime = instance.getPartialReduceTime();
+        int maxConcurrentPartialReduces = instance.getMaxConcurrentPartialReduces();
+        long finalReduceTime = instance.getFinalReduceTime();
+        switch (between(0, 3)) {
+            case 0:
+                partialReduces += between(1, 10);
+                break;
+            case 1:
+                partialReduceTime += between(1, 1000);
+                break;
+            case 2:
+                maxConcurrentPartialReduces += between(1, 10);
+                break;
+            default:
+                finalReduceTime += between(1, 1000);
+                break;
+        }
+        return new ReduceProfileResult(partialReduces, partialReduceTime, maxConcurrentPartialReduces, finalReduceTime);
+    }
+}
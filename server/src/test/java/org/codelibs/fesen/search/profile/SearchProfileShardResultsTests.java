@@ -59,7 +59,8 @@ public class SearchProfileShardResultsTests  extends ESTestCase {
             AggregationProfileShardResult aggProfileShardResult = AggregationProfileShardResultTests.createTestItem(1);
             searchProfileResults.put(randomAlphaOfLengthBetween(5, 10), new ProfileShardResult(queryProfileResults, aggProfileShardResult));
         }
-        return new SearchProfileShardResults(searchProfileResults);
+        ReduceProfileResult reduceResult = randomBoolean() ? null : ReduceProfileResultTests.createTestItem();
+        return new SearchProfileShardResults(searchProfileResults, reduceResult);
     }
 
     public void testFromXContent() throws IOException {
@@ -104,6 +104,8 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.codelibs.fesen.search.query.QueryPhase.pointsHaveDuplicateData;
 import static org.codelibs.fesen.search.query.TopDocsCollectorContext.hasInfMaxScore;
@@ -943,6 +945,74 @@ public class QueryPhaseTests extends IndexShardTestCase {
         dir.close();
     }
 
+    public void testConcurrentSegmentSearch() throws Exception {
+        Directory dir = newDirectory();
+        IndexWriterConfig iwc = newIndexWriterConfig().setMergePolicy(NoMergePolicy.INSTANCE);
+        RandomIndexWriter w = new RandomIndexWriter(random(), dir, iwc);
+        final int numSegments = randomIntBetween(6, 20);
+        int numMatches = 0;
+        for (int i = 0; i < numSegments; i++) {
+            final int numDocs = randomIntBetween(1, 10);
+            for (int j = 0; j < numDocs; j++) {
+                Document doc = new Document();
+                if (randomBoolean()) {
+                    doc.add(new StringField("foo", "bar", Store.NO));
+                    numMatches++;
+                }
+                doc.add(new StringField("filter", randomBoolean() ? "f1" : "f2", Store.NO));
+                w.addDocument(doc);
+            }
+            w.commit();
+        }
+        w.close();
+
+        IndexReader reader = DirectoryReader.open(dir);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Query query = new TermQuery(new Term("foo", "bar"));
+            final int size = randomIntBetween(0, 20);
+            ContextIndexSearcher searcher = new ContextIndexSearcher(reader, IndexSearcher.getDefaultSimilarity(),
+                IndexSearcher.getDefaultQueryCache(), IndexSearcher.getDefaultQueryCachingPolicy(), true, executor);
+            assertTrue(searcher.isConcurrent());
+            TestSearchContext context = new TestSearchContext(null, indexShard, searcher);
+            context.parsedQuery(new ParsedQuery(query));
+            context.setTask(new SearchShardTask(123L, "", "", "", null, Collections.emptyMap()));
+            context.setSize(size);
+            assertTrue(QueryPhase.canSearchConcurrently(context));
+            QueryPhase.executeInternal(context);
+
+            TestSearchContext sequentialContext = new TestSearchContext(null, indexShard, newContextSearcher(reader));
+            sequentialContext.parsedQuery(new ParsedQuery(query));
+            sequentialContext.setTask(new SearchShardTask(123L, "", "", "", null, Collections.emptyMap()));
+            sequentialContext.setSize(size);
+            QueryPhase.executeInternal(sequentialContext);
+
+            TopDocs topDocs = context.queryResult().topDocs().topDocs;
+            TopDocs sequentialTopDocs = sequentialContext.queryResult().topDocs().topDocs;
+            assertEquals(numMatches, topDocs.totalHits.value);
+            assertEquals(sequentialTopDocs.totalHits, topDocs.totalHits);
+            assertEquals(sequentialTopDocs.scoreDocs.length, topDocs.scoreDocs.length);
+            for (int i = 0; i < topDocs.scoreDocs.length; i++) {
+                assertEquals(sequentialTopDocs.scoreDocs[i].doc, topDocs.scoreDocs[i].doc);
+                assertEquals(-1, topDocs.scoreDocs[i].shardIndex);
+            }
+
+            context.parsedPostFilter(new ParsedQuery(new TermQuery(new Term("filter", "f1"))));
+            sequentialContext.parsedPostFilter(new ParsedQuery(new TermQuery(new Term("filter", "f1"))));
+            QueryPhase.executeInternal(context);
+            QueryPhase.executeInternal(sequentialContext);
+            assertEquals(sequentialContext.queryResult().topDocs().topDocs.totalHits,
+                context.queryResult().topDocs().topDocs.totalHits);
+
+            context.terminateAfter(1);
+            assertFalse(QueryPhase.canSearchConcurrently(context));
+        } finally {
+            terminate(executor);
+            reader.close();
+            dir.close();
+        }
+    }
+
     public void testCancellationDuringPreprocess() throws IOException {
         try (Directory dir = newDirectory();
              RandomIndexWriter w = new RandomIndexWriter(random(), dir, newIndexWriterConfig())) {
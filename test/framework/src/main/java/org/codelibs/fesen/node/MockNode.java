@@ -137,7 +137,7 @@ public class MockNode extends Node {
                 responseCollectorService, circuitBreakerService);
         }
         return new MockSearchService(clusterService, indicesService, threadPool, scriptService,
-            bigArrays, fetchPhase, circuitBreakerService);
+            bigArrays, fetchPhase, circuitBreakerService, getEnvironment().tmpFile());
     }
 
     @Override
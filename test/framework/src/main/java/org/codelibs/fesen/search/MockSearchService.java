@@ -31,6 +31,7 @@ import org.codelibs.fesen.search.fetch.FetchPhase;
 import org.codelibs.fesen.search.internal.ReaderContext;
 import org.codelibs.fesen.threadpool.ThreadPool;
 
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -73,8 +74,9 @@ public class MockSearchService extends SearchService {
 
     public MockSearchService(ClusterService clusterService,
             IndicesService indicesService, ThreadPool threadPool, ScriptService scriptService,
-            BigArrays bigArrays, FetchPhase fetchPhase, CircuitBreakerService circuitBreakerService) {
-        super(clusterService, indicesService, threadPool, scriptService, bigArrays, fetchPhase, null, circuitBreakerService);
+            BigArrays bigArrays, FetchPhase fetchPhase, CircuitBreakerService circuitBreakerService, Path tmpDirectory) {
+        super(clusterService, indicesService, threadPool, scriptService, bigArrays, fetchPhase, null, circuitBreakerService,
+            tmpDirectory);
     }
 
     @Override
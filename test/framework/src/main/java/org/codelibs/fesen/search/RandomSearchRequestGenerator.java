@@ -106,6 +106,9 @@ public class RandomSearchRequestGenerator {
         if (randomBoolean()) {
             searchRequest.requestCache(randomBoolean());
         }
+        if (randomBoolean()) {
+            searchRequest.hedgeAfter(TimeValue.parseTimeValue(randomPositiveTimeValue(), "hedge_after"));
+        }
         if (randomBoolean()) {
             searchRequest.routing(randomAlphaOfLengthBetween(3, 10));
         }
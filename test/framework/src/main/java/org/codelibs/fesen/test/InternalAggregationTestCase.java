@@ -84,7 +84,9 @@ import org.codelibs.fesen.search.aggregations.bucket.range.ParsedGeoDistance;
 import org.codelibs.fesen.search.aggregations.bucket.range.ParsedRange;
 import org.codelibs.fesen.search.aggregations.bucket.range.RangeAggregationBuilder;
 import org.codelibs.fesen.search.aggregations.bucket.sampler.InternalSampler;
+import org.codelibs.fesen.search.aggregations.bucket.sampler.ParsedRandomSampler;
 import org.codelibs.fesen.search.aggregations.bucket.sampler.ParsedSampler;
+import org.codelibs.fesen.search.aggregations.bucket.sampler.RandomSamplerAggregationBuilder;
 import org.codelibs.fesen.search.aggregations.bucket.terms.DoubleTerms;
 import org.codelibs.fesen.search.aggregations.bucket.terms.LongRareTerms;
 import org.codelibs.fesen.search.aggregations.bucket.terms.LongTerms;
@@ -210,7 +212,7 @@ public abstract class InternalAggregationTestCase<T extends InternalAggregation>
     public static final int DEFAULT_MAX_BUCKETS = 100000;
     protected static final double TOLERANCE = 1e-10;
 
-    private static final Comparator<InternalAggregation> INTERNAL_AGG_COMPARATOR = (agg1, agg2) -> {
+    protected static final Comparator<InternalAggregation> INTERNAL_AGG_COMPARATOR = (agg1, agg2) -> {
         if (agg1.isMapped() == agg2.isMapped()) {
             return 0;
         } else if (agg1.isMapped() && agg2.isMapped() == false) {
@@ -264,6 +266,7 @@ public abstract class InternalAggregationTestCase<T extends InternalAggregation>
         map.put(GlobalAggregationBuilder.NAME, (p, c) -> ParsedGlobal.fromXContent(p, (String) c));
         map.put(FilterAggregationBuilder.NAME, (p, c) -> ParsedFilter.fromXContent(p, (String) c));
         map.put(InternalSampler.PARSER_NAME, (p, c) -> ParsedSampler.fromXContent(p, (String) c));
+        map.put(RandomSamplerAggregationBuilder.NAME, (p, c) -> ParsedRandomSampler.fromXContent(p, (String) c));
         map.put(GeoHashGridAggregationBuilder.NAME, (p, c) -> ParsedGeoHashGrid.fromXContent(p, (String) c));
         map.put(GeoTileGridAggregationBuilder.NAME, (p, c) -> ParsedGeoTileGrid.fromXContent(p, (String) c));
         map.put(RangeAggregationBuilder.NAME, (p, c) -> ParsedRange.fromXContent(p, (String) c));